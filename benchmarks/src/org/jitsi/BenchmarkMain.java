@@ -0,0 +1,72 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the JMH benchmarks of libjitsi with the options given on the command
+ * line and the gc profiler added so that the allocation rate of the measured
+ * code is reported next to its throughput.
+ */
+public class BenchmarkMain
+{
+    /**
+     * Runs the benchmarks selected by specific JMH command line options.
+     *
+     * @param args the JMH command line options
+     * @throws Exception if the options are malformed or a benchmark fails
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+
+        if (cmdOptions.shouldHelp()
+                || cmdOptions.shouldList()
+                || cmdOptions.shouldListProfilers()
+                || cmdOptions.shouldListResultFormats())
+        {
+            // Nothing is to be run, JMH knows what to print.
+            Main.main(args);
+            return;
+        }
+
+        boolean gc = false;
+
+        for (ProfilerConfig profiler : cmdOptions.getProfilers())
+        {
+            String klass = profiler.getKlass();
+
+            if ("gc".equals(klass) || GCProfiler.class.getName().equals(klass))
+            {
+                gc = true;
+                break;
+            }
+        }
+
+        ChainedOptionsBuilder options
+            = new OptionsBuilder().parent(cmdOptions);
+
+        if (!gc)
+            options.addProfiler(GCProfiler.class);
+
+        new Runner(options.build()).run();
+    }
+}
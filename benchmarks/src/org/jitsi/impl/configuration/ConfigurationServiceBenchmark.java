@@ -0,0 +1,187 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.configuration;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.libjitsi.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the loading of a large synthetic configuration file by
+ * <tt>ConfigurationServiceImpl</tt> (done at startup) and the typed and prefix
+ * lookups which components do at class initialization time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class ConfigurationServiceBenchmark
+{
+    /**
+     * The number of components with properties in the configuration file.
+     */
+    private static final int COMPONENT_COUNT = 1024;
+
+    /**
+     * The number of properties of each component.
+     */
+    private static final int PROPERTY_COUNT = 16;
+
+    /**
+     * The <tt>ConfigurationServiceImpl</tt> which is looked up.
+     */
+    private ConfigurationServiceImpl cfg;
+
+    /**
+     * The directory which contains the configuration file.
+     */
+    private File dir;
+
+    /**
+     * The number of lookups so far, which selects the property to look up
+     * next.
+     */
+    private int lookupCount;
+
+    /**
+     * The names of the properties in the configuration file.
+     */
+    private String[] names;
+
+    /**
+     * Gets the prefix of the names of the properties of a component.
+     *
+     * @param component the index of the component.
+     * @return the prefix of the names of the properties of the component.
+     */
+    private static String getPrefix(int component)
+    {
+        return "org.jitsi.benchmark.Component" + component;
+    }
+
+    /**
+     * Looks up a property with an integer value.
+     *
+     * @return the value of the property
+     */
+    @Benchmark
+    public int getInt()
+    {
+        int i = lookupCount++;
+
+        return cfg.getInt(names[(i * 37) & (names.length - 1)], -1);
+    }
+
+    /**
+     * Looks up the names of the properties of a component.
+     *
+     * @return the names of the properties of the component
+     */
+    @Benchmark
+    public List<String> getPropertyNamesByPrefix()
+    {
+        int i = lookupCount++;
+
+        return
+            cfg.getPropertyNamesByPrefix(
+                    getPrefix((i * 37) & (COMPONENT_COUNT - 1)),
+                    true);
+    }
+
+    /**
+     * Writes the configuration file, points <tt>ConfigurationServiceImpl</tt>
+     * to it and loads it.
+     *
+     * @throws IOException if writing the configuration file fails
+     */
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        dir = File.createTempFile("config", "");
+        dir.delete();
+        dir.mkdirs();
+
+        Properties properties = new Properties();
+
+        names = new String[COMPONENT_COUNT * PROPERTY_COUNT];
+        for (int c = 0; c < COMPONENT_COUNT; c++)
+        {
+            for (int p = 0; p < PROPERTY_COUNT; p++)
+            {
+                String name = getPrefix(c) + ".PROPERTY_" + p;
+
+                names[c * PROPERTY_COUNT + p] = name;
+                properties.setProperty(name, Integer.toString(c * p));
+            }
+        }
+
+        File file = new File(dir, "sip-communicator.properties");
+        OutputStream out = new FileOutputStream(file);
+
+        try
+        {
+            properties.store(out, null);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        System.setProperty(
+                ConfigurationService.PNAME_SC_HOME_DIR_LOCATION,
+                dir.getParent());
+        System.setProperty(
+                ConfigurationService.PNAME_SC_HOME_DIR_NAME,
+                dir.getName());
+        System.setProperty(
+                ConfigurationService.PNAME_CONFIGURATION_FILE_IS_READ_ONLY,
+                "true");
+
+        LibJitsi.start();
+        cfg = startup();
+    }
+
+    /**
+     * Loads the configuration file into a new
+     * <tt>ConfigurationServiceImpl</tt>.
+     *
+     * @return the new <tt>ConfigurationServiceImpl</tt>
+     */
+    @Benchmark
+    public ConfigurationServiceImpl startup()
+    {
+        return new ConfigurationServiceImpl();
+    }
+
+    /**
+     * Stops <tt>LibJitsi</tt> and deletes the configuration file.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        LibJitsi.stop();
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the reporting of the audio levels of all speakers of a conference
+ * to <tt>DominantSpeakerIdentification</tt> one by one and at once (as done
+ * for every 20 ms of audio) and the (global) decision about speaker switches
+ * (made every 300 ms).
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class DominantSpeakerIdentificationBenchmark
+{
+    /**
+     * The number of speakers in the conference.
+     */
+    @Param({ "10", "100" })
+    public int speakerCount;
+
+    /**
+     * The <tt>DominantSpeakerIdentification</tt> of the conference.
+     */
+    private DominantSpeakerIdentification dsi;
+
+    /**
+     * The audio levels of the speakers in the format of
+     * {@link DominantSpeakerIdentification#levelsChanged(long[])}.
+     */
+    private long[] levels;
+
+    /**
+     * The time in milliseconds of the next frame of the conference.
+     */
+    private long time;
+
+    /**
+     * Reports a frame of audio levels and makes the (global) decision about
+     * speaker switches.
+     *
+     * @return the dominant speaker
+     */
+    @Benchmark
+    public long decide()
+    {
+        time += 300;
+        dsi.levelsChanged(levels, time);
+        dsi.runInDecisionMaker(time);
+        return dsi.getDominantSpeaker();
+    }
+
+    /**
+     * Reports the audio levels of all speakers one by one.
+     */
+    @Benchmark
+    public void levelChanged()
+    {
+        for (int i = 0; i < levels.length; i += 2)
+            dsi.levelChanged(levels[i], (int) levels[i + 1]);
+    }
+
+    /**
+     * Reports the audio levels of all speakers at once.
+     */
+    @Benchmark
+    public void levelsChanged()
+    {
+        dsi.levelsChanged(levels);
+    }
+
+    /**
+     * Initializes the conference with speakers at random levels.
+     */
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+
+        levels = new long[2 * speakerCount];
+        for (int i = 0; i < speakerCount; i++)
+        {
+            levels[2 * i] = random.nextInt() & 0xFFFFFFFFL;
+            levels[2 * i + 1] = random.nextInt(128);
+        }
+
+        dsi = new DominantSpeakerIdentification();
+        time = System.currentTimeMillis();
+    }
+}
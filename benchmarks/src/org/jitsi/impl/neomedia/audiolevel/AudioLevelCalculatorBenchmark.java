@@ -0,0 +1,77 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.audiolevel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the calculation of the RFC 6465 audio level of 20 ms of 16-bit
+ * linear audio at 8 kHz and at 48 kHz, done for every sent and (with the
+ * audio level listeners of a conference) every received audio packet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class AudioLevelCalculatorBenchmark
+{
+    /**
+     * The length in bytes of the audio: 20 ms of mono 16-bit audio at 8 kHz
+     * or at 48 kHz.
+     */
+    @Param({ "320", "1920" })
+    public int length;
+
+    /**
+     * The audio whose level is calculated.
+     */
+    private byte[] samples;
+
+    /**
+     * Calculates the audio level.
+     *
+     * @return the audio level
+     */
+    @Benchmark
+    public byte calculateAudioLevel()
+    {
+        return
+            AudioLevelCalculator.calculateAudioLevel(samples, 0, length);
+    }
+
+    /**
+     * Initializes the audio with random noise at about -25 dBov.
+     */
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+
+        samples = new byte[length];
+        for (int i = 0; i < length; i += 2)
+        {
+            int sample = random.nextInt(6554) - 3277;
+
+            samples[i] = (byte) sample;
+            samples[i + 1] = (byte) (sample >> 8);
+        }
+    }
+}
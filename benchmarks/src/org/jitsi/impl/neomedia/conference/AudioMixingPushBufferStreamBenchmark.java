@@ -0,0 +1,134 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.conference;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.media.*;
+import javax.media.format.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the mixing of the audio of a specific number of participants by
+ * <tt>AudioMixingPushBufferStream</tt> into 20 ms of 48 kHz mono 16-bit
+ * linear audio as it happens for every participant of an audio conference
+ * every 20 ms.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class AudioMixingPushBufferStreamBenchmark
+{
+    /**
+     * The format of the mixed audio.
+     */
+    private static final AudioFormat FORMAT
+        = new AudioFormat(
+                AudioFormat.LINEAR,
+                48000,
+                16,
+                1,
+                AudioFormat.LITTLE_ENDIAN,
+                AudioFormat.SIGNED,
+                Format.NOT_SPECIFIED,
+                Format.NOT_SPECIFIED,
+                Format.byteArray);
+
+    /**
+     * The number of samples per participant which are mixed.
+     */
+    private static final int SAMPLE_COUNT = 960;
+
+    /**
+     * The <tt>Buffer</tt> which the mixed audio is read into.
+     */
+    private final Buffer buffer = new Buffer();
+
+    /**
+     * The audio of the participants.
+     */
+    private short[][] inSamples;
+
+    /**
+     * The number of participants whose audio is mixed.
+     */
+    @Param({ "2", "5", "20" })
+    public int participantCount;
+
+    /**
+     * The stream which mixes.
+     */
+    private AudioMixingPushBufferStream stream;
+
+    /**
+     * Mixes the audio of the participants.
+     *
+     * @return the <tt>Buffer</tt> which holds the mixed audio
+     * @throws IOException if the mixing fails
+     */
+    @Benchmark
+    public Buffer mix()
+        throws IOException
+    {
+        stream.setInSamples(inSamples, SAMPLE_COUNT, 0);
+        stream.read(buffer);
+        return buffer;
+    }
+
+    /**
+     * Initializes the stream and the audio of the participants with random
+     * noise of varying loudness.
+     */
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+
+        inSamples = new short[participantCount][SAMPLE_COUNT];
+        for (int p = 0; p < participantCount; p++)
+        {
+            int amplitude = Short.MAX_VALUE >> (p % 8);
+
+            for (int i = 0; i < SAMPLE_COUNT; i++)
+            {
+                inSamples[p][i]
+                    = (short) (random.nextInt(2 * amplitude + 1) - amplitude);
+            }
+        }
+
+        stream
+            = new AudioMixingPushBufferStream(null, null)
+            {
+                /**
+                 * {@inheritDoc}
+                 *
+                 * Does not require the <tt>AudioMixerPushBufferStream</tt>
+                 * which the mixed audio is normally read from.
+                 */
+                @Override
+                public AudioFormat getFormat()
+                {
+                    return FORMAT;
+                }
+            };
+    }
+}
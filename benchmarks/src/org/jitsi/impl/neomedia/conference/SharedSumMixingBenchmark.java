@@ -0,0 +1,212 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.conference;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.media.*;
+import javax.media.format.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the mixing of 20 ms of 48 kHz mono 16-bit linear audio for every
+ * participant of an audio conference with a specific number of participants
+ * (each of whom hears everybody else) either by mixing the audio of the other
+ * participants separately for each participant or by deriving the mix of each
+ * participant from a total mix computed by <tt>SharedSumMixer</tt>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class SharedSumMixingBenchmark
+{
+    /**
+     * The format of the mixed audio.
+     */
+    private static final AudioFormat FORMAT
+        = new AudioFormat(
+                AudioFormat.LINEAR,
+                48000,
+                16,
+                1,
+                AudioFormat.LITTLE_ENDIAN,
+                AudioFormat.SIGNED,
+                Format.NOT_SPECIFIED,
+                Format.NOT_SPECIFIED,
+                Format.byteArray);
+
+    /**
+     * The number of samples per participant which are mixed.
+     */
+    private static final int SAMPLE_COUNT = 960;
+
+    /**
+     * The <tt>Buffer</tt> which the mixed audio is read into.
+     */
+    private final Buffer buffer = new Buffer();
+
+    /**
+     * The index of the participant whose audio is not mixed for the
+     * participant for which {@link SharedSumMixer} mixes.
+     */
+    private final int[] excluded = new int[1];
+
+    /**
+     * The audio of the participants.
+     */
+    private short[][] inSamples;
+
+    /**
+     * The maximum number of the loudest participants which are mixed by
+     * {@link SharedSumMixer} or a non-positive value to mix all participants.
+     * Ignored if {@link #sharedSum} is <tt>false</tt>.
+     */
+    @Param({ "0", "3" })
+    public int maxMixedSpeakers;
+
+    /**
+     * The <tt>SharedSumMixer</tt> which mixes if {@link #sharedSum} is
+     * <tt>true</tt>.
+     */
+    private SharedSumMixer mixer;
+
+    /**
+     * The audio of the participants other than a specific one indexed by
+     * participant.
+     */
+    private short[][][] otherInSamples;
+
+    /**
+     * The number of participants whose audio is mixed.
+     */
+    @Param({ "5", "20", "100" })
+    public int participantCount;
+
+    /**
+     * The indicator which determines whether the mix of each participant is
+     * derived from a total mix or the audio of the other participants is
+     * mixed separately for each participant.
+     */
+    @Param({ "false", "true" })
+    public boolean sharedSum;
+
+    /**
+     * The streams which mix for the participants indexed by participant.
+     */
+    private AudioMixingPushBufferStream[] streams;
+
+    /**
+     * Mixes the audio of all participants for each participant.
+     *
+     * @return the <tt>Buffer</tt> which holds the last mixed audio
+     * @throws IOException if the mixing fails
+     */
+    @Benchmark
+    public Buffer mix()
+        throws IOException
+    {
+        if (sharedSum)
+            mixer.sum(inSamples, SAMPLE_COUNT);
+
+        for (int p = 0; p < participantCount; p++)
+        {
+            AudioMixingPushBufferStream stream = streams[p];
+
+            if (sharedSum)
+            {
+                short[] mixSamples = stream.allocateMixSamples(SAMPLE_COUNT);
+
+                excluded[0] = p;
+                mixer.mix(
+                        inSamples,
+                        excluded, 1,
+                        null,
+                        mixSamples, SAMPLE_COUNT);
+                stream.setInSamples(
+                        new short[][] { mixSamples },
+                        SAMPLE_COUNT,
+                        0);
+            }
+            else
+            {
+                stream.setInSamples(otherInSamples[p], SAMPLE_COUNT, 0);
+            }
+            stream.read(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Initializes the streams and the audio of the participants with random
+     * noise of varying loudness.
+     */
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+
+        inSamples = new short[participantCount][SAMPLE_COUNT];
+        for (int p = 0; p < participantCount; p++)
+        {
+            int amplitude = Short.MAX_VALUE >> (p % 8);
+
+            for (int i = 0; i < SAMPLE_COUNT; i++)
+            {
+                inSamples[p][i]
+                    = (short) (random.nextInt(2 * amplitude + 1) - amplitude);
+            }
+        }
+
+        otherInSamples = new short[participantCount][][];
+        streams = new AudioMixingPushBufferStream[participantCount];
+        for (int p = 0; p < participantCount; p++)
+        {
+            short[][] others = new short[participantCount - 1][];
+
+            for (int o = 0, q = 0; q < participantCount; q++)
+            {
+                if (q != p)
+                    others[o++] = inSamples[q];
+            }
+            otherInSamples[p] = others;
+
+            streams[p]
+                = new AudioMixingPushBufferStream(null, null)
+                {
+                    /**
+                     * {@inheritDoc}
+                     *
+                     * Does not require the
+                     * <tt>AudioMixerPushBufferStream</tt> which the mixed
+                     * audio is normally read from.
+                     */
+                    @Override
+                    public AudioFormat getFormat()
+                    {
+                        return FORMAT;
+                    }
+                };
+        }
+
+        mixer = new SharedSumMixer(maxMixedSpeakers);
+    }
+}
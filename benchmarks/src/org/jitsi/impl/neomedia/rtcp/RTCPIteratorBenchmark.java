@@ -0,0 +1,203 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtcp;
+
+import java.util.concurrent.*;
+
+import net.sf.fmj.media.rtp.*;
+import net.sf.fmj.media.rtp.util.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * Measures the parsing of a typical compound RTCP packet received from a
+ * video endpoint (SR, SDES, generic NACK and REMB) by walking it with
+ * <tt>RTCPIterator</tt> and the static header accessors, by walking it with a
+ * reused <tt>RTCPPacketView</tt> and by parsing it with
+ * <tt>RTCPPacketParserEx</tt> into FMJ packets.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class RTCPIteratorBenchmark
+{
+    /**
+     * The SSRC of the sender of the compound packet.
+     */
+    private static final int SENDER_SSRC = 0x1A2B3C4D;
+
+    /**
+     * The SSRC of the media source which the compound packet reports on.
+     */
+    private static final int SOURCE_SSRC = 0x5E6F7081;
+
+    /**
+     * Writes the common header of an RTCP packet.
+     *
+     * @param buf the buffer to write into
+     * @param off the offset in <tt>buf</tt> to write at
+     * @param count the report count or the feedback message type
+     * @param pt the packet type
+     * @param length the length of the RTCP packet in bytes
+     * @return the offset in <tt>buf</tt> after the header
+     */
+    private static int writeHeader(
+            byte[] buf, int off,
+            int count, int pt, int length)
+    {
+        buf[off] = (byte) (0x80 | count);
+        buf[off + 1] = (byte) pt;
+        RTPUtils.writeShort(buf, off + 2, (short) (length / 4 - 1));
+        return off + 4;
+    }
+
+    /**
+     * Writes a 32-bit word.
+     *
+     * @param buf the buffer to write into
+     * @param off the offset in <tt>buf</tt> to write at
+     * @param i the word to write
+     * @return the offset in <tt>buf</tt> after the word
+     */
+    private static int writeInt(byte[] buf, int off, int i)
+    {
+        RTPUtils.writeInt(buf, off, i);
+        return off + 4;
+    }
+
+    /**
+     * The compound RTCP packet which is parsed.
+     */
+    private RawPacket compound;
+
+    /**
+     * The parser of {@link #parseEx()}.
+     */
+    private final RTCPPacketParserEx parser = new RTCPPacketParserEx();
+
+    /**
+     * The view of {@link #view(Blackhole)}.
+     */
+    private final RTCPPacketView view = new RTCPPacketView();
+
+    /**
+     * Iterates over the packets of the compound packet and reads their
+     * headers and the media source SSRCs of the feedback messages.
+     *
+     * @param bh the <tt>Blackhole</tt> which consumes the read values
+     */
+    @Benchmark
+    public void iterate(Blackhole bh)
+    {
+        RTCPIterator it = new RTCPIterator(compound);
+
+        while (it.hasNext())
+        {
+            ByteArrayBuffer baf = it.next();
+
+            bh.consume(RTCPHeaderUtils.getPacketType(baf));
+            bh.consume(RTCPHeaderUtils.getReportCount(baf));
+            bh.consume(RTCPHeaderUtils.getLength(baf));
+            if (RTCPFBPacket.isRTCPFBPacket(baf))
+                bh.consume(RTCPFBPacket.getSourceSSRC(baf));
+        }
+    }
+
+    /**
+     * Parses the compound packet into FMJ <tt>RTCPPacket</tt>s.
+     *
+     * @return the parsed compound packet
+     * @throws BadFormatException if the compound packet is malformed
+     */
+    @Benchmark
+    public RTCPPacket parseEx()
+        throws BadFormatException
+    {
+        return
+            parser.parse(
+                    compound.getBuffer(),
+                    compound.getOffset(),
+                    compound.getLength());
+    }
+
+    /**
+     * Walks the packets of the compound packet with a reused
+     * <tt>RTCPPacketView</tt> and reads the same values as {@link #iterate}.
+     *
+     * @param bh the <tt>Blackhole</tt> which consumes the read values
+     */
+    @Benchmark
+    public void view(Blackhole bh)
+    {
+        view.wrap(compound);
+        while (view.next())
+        {
+            bh.consume(view.getPacketType());
+            bh.consume(view.getReportCount());
+            bh.consume(view.getLength());
+            if (view.isFB())
+                bh.consume(view.getSourceSSRC());
+        }
+    }
+
+    /**
+     * Assembles the compound packet.
+     */
+    @Setup
+    public void setup()
+    {
+        byte[] buf = new byte[120];
+        int off = 0;
+
+        // SR with one report block.
+        off = writeHeader(buf, off, 1, 200, 52);
+        off = writeInt(buf, off, SENDER_SSRC);
+        off += 20; // NTP and RTP timestamps, packet and octet counts
+        off = writeInt(buf, off, SOURCE_SSRC);
+        off += 20; // loss, jitter, LSR and DLSR
+
+        // SDES with the CNAME of the sender.
+        off = writeHeader(buf, off, 1, 202, 28);
+        off = writeInt(buf, off, SENDER_SSRC);
+        buf[off++] = 1; // CNAME
+        buf[off++] = 16;
+        for (int i = 0; i < 16; i++)
+            buf[off++] = (byte) ('a' + i);
+        off += 2; // END and padding
+
+        // Generic NACK of 17 packets.
+        off = writeHeader(buf, off, 1, RTCPFBPacket.RTPFB, 16);
+        off = writeInt(buf, off, SENDER_SSRC);
+        off = writeInt(buf, off, SOURCE_SSRC);
+        off = writeInt(buf, off, 0x1234FFFF);
+
+        // REMB of 1 Mbps.
+        off = writeHeader(buf, off, 15, RTCPFBPacket.PSFB, 24);
+        off = writeInt(buf, off, SENDER_SSRC);
+        off = writeInt(buf, off, 0);
+        off = writeInt(buf, off, 0x52454D42); // "REMB"
+        off = writeInt(buf, off, 0x010BD090); // 1 SSRC, 250000 << 2 bps
+        off = writeInt(buf, off, SOURCE_SSRC);
+
+        compound = new RawPacket(buf, 0, off);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp;
+
+import java.util.concurrent.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the insertion of packets into a <tt>RawPacketCache</tt> (done for
+ * every sent video packet) and the lookups which answer NACKs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class RawPacketCacheBenchmark
+{
+    /**
+     * The number of the most recently cached packets which are looked up.
+     * Below the default size of the cache.
+     */
+    private static final int LOOKUP_DEPTH = 128;
+
+    /**
+     * The length of the payload of the cached packets.
+     */
+    private static final int PAYLOAD_LENGTH = 1200;
+
+    /**
+     * The SSRC of the cached packets.
+     */
+    private static final long SSRC = 0x1A2B3C4DL;
+
+    /**
+     * The cache which is measured.
+     */
+    private RawPacketCache cache;
+
+    /**
+     * The number of lookups so far, which selects the sequence number to look
+     * up next.
+     */
+    private int lookupCount;
+
+    /**
+     * The packet which is cached with a new sequence number by every
+     * {@link #cachePacket()}.
+     */
+    private RawPacket pkt;
+
+    /**
+     * The sequence number of the last cached packet.
+     */
+    private int seq;
+
+    /**
+     * Leases a recently cached packet without copying it and releases it.
+     *
+     * @return the length of the leased packet
+     */
+    @Benchmark
+    public int acquireContainer()
+    {
+        RawPacketCache.Container container
+            = cache.acquireContainer(SSRC, nextLookupSeq());
+
+        try
+        {
+            return container.pkt.getLength();
+        }
+        finally
+        {
+            cache.releaseContainer(container);
+        }
+    }
+
+    /**
+     * Caches a packet with the next sequence number, which evicts the oldest
+     * packet of a full cache.
+     */
+    @Benchmark
+    public void cachePacket()
+    {
+        seq = (seq + 1) & 0xFFFF;
+        pkt.setSequenceNumber(seq);
+        cache.cachePacket(pkt);
+    }
+
+    /**
+     * Gets a copy of a recently cached packet.
+     *
+     * @return the copy of the cached packet
+     */
+    @Benchmark
+    public RawPacket get()
+    {
+        return cache.get(SSRC, nextLookupSeq());
+    }
+
+    /**
+     * Gets the sequence number of the packet to look up next.
+     *
+     * @return the sequence number of the packet to look up next
+     */
+    private int nextLookupSeq()
+    {
+        // Scatter the lookups over the recently cached packets with a stride
+        // which is coprime with the depth.
+        int i = lookupCount;
+
+        lookupCount = i + 1;
+        return (seq - ((i * 37) & (LOOKUP_DEPTH - 1))) & 0xFFFF;
+    }
+
+    /**
+     * Starts <tt>LibJitsi</tt> (which <tt>RawPacketCache</tt> reads its
+     * configuration from) and fills the cache.
+     */
+    @Setup
+    public void setup()
+    {
+        LibJitsi.start();
+
+        cache = new RawPacketCache(0);
+        pkt
+            = new RawPacket(
+                    new byte[RawPacket.FIXED_HEADER_SIZE + PAYLOAD_LENGTH],
+                    0,
+                    RawPacket.FIXED_HEADER_SIZE + PAYLOAD_LENGTH);
+        pkt.setVersion();
+        pkt.setPayloadType((byte) 100);
+        pkt.setSSRC((int) SSRC);
+        for (int i = 0; i < 2 * LOOKUP_DEPTH; i++)
+            cachePacket();
+    }
+
+    /**
+     * Closes the cache and stops <tt>LibJitsi</tt>.
+     *
+     * @throws Exception if the cache fails to close
+     */
+    @TearDown
+    public void tearDown()
+        throws Exception
+    {
+        cache.close();
+        LibJitsi.stop();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp;
+
+import java.util.concurrent.*;
+
+import org.jitsi.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the lookup of the <tt>FrameDesc</tt> of a received video packet
+ * which <tt>SimulcastController</tt> does during pending switches: the
+ * <tt>RTPEncodingDesc</tt> is found by the SSRC of the packet and the frame by
+ * its RTP timestamp. The <tt>MediaStreamTrackReceiver</tt> receives 3-layer
+ * simulcast at 30 fps from {@link #SENDER_COUNT} senders and remembers as many
+ * frames per layer as it does in practice.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class SimulcastFrameLookupBenchmark
+{
+    /**
+     * The number of frames per layer which the packets belong to.
+     */
+    private static final int FRAME_COUNT = 30;
+
+    /**
+     * The number of simulcast layers per sender.
+     */
+    private static final int LAYER_COUNT = 3;
+
+    /**
+     * The number of packets per frame of a layer.
+     */
+    private static final int PACKETS_PER_FRAME = 3;
+
+    /**
+     * The number of senders whose tracks are received.
+     */
+    private static final int SENDER_COUNT = 20;
+
+    /**
+     * The RTP timestamp increment of a 30 fps video stream.
+     */
+    private static final int TS_INCREMENT = 90000 / 30;
+
+    /**
+     * The index in {@link #pkts} of the packet to look up next.
+     */
+    private int index;
+
+    /**
+     * The RTP packets which are looked up in turn, interleaved as they are
+     * received: frame by frame, sender by sender and layer by layer.
+     */
+    private byte[][] pkts;
+
+    /**
+     * The <tt>MediaStreamTrackReceiver</tt> which receives the tracks of the
+     * senders.
+     */
+    private MediaStreamTrackReceiver receiver;
+
+    /**
+     * Looks up the <tt>FrameDesc</tt> of the next packet.
+     *
+     * @return the <tt>FrameDesc</tt> of the packet
+     */
+    @Benchmark
+    public FrameDesc findFrameDesc()
+    {
+        int i = index;
+        byte[] pkt = pkts[i];
+
+        index = (i + 1 == pkts.length) ? 0 : i + 1;
+        return receiver.findFrameDesc(pkt, 0, pkt.length);
+    }
+
+    /**
+     * Sets up the tracks of the senders, fills the frames of their layers and
+     * creates the packets.
+     */
+    @Setup
+    public void setup()
+    {
+        receiver = new MediaStreamTrackReceiver(null);
+
+        MediaStreamTrackDesc[] tracks = new MediaStreamTrackDesc[SENDER_COUNT];
+        RTPEncodingDesc[][] encodings = new RTPEncodingDesc[SENDER_COUNT][];
+
+        for (int s = 0; s < SENDER_COUNT; s++)
+        {
+            encodings[s] = new RTPEncodingDesc[LAYER_COUNT];
+            tracks[s] = new MediaStreamTrackDesc(receiver, encodings[s]);
+            for (int l = 0; l < LAYER_COUNT; l++)
+            {
+                long ssrc = 0x10000000L + 16 * s + 2 * l;
+
+                encodings[s][l]
+                    = new RTPEncodingDesc(
+                            tracks[s], l,
+                            ssrc, ssrc + 1,
+                            -1 /* temporalId */,
+                            null /* dependencyEncodings */);
+            }
+        }
+        receiver.setMediaStreamTracks(tracks);
+
+        // Fill the frame rings up to capacity as a long running call does,
+        // the packets belong to the most recent frames.
+        int historyFrameCount = FrameDescRing.CAPACITY;
+
+        for (int s = 0; s < SENDER_COUNT; s++)
+        {
+            for (int l = 0; l < LAYER_COUNT; l++)
+            {
+                RTPEncodingDesc encoding = encodings[s][l];
+
+                for (int f = 0; f < historyFrameCount; f++)
+                {
+                    encoding.getFrames().add(
+                            new FrameDesc(
+                                    encoding,
+                                    getTimestamp(s, f),
+                                    System.currentTimeMillis()));
+                }
+            }
+        }
+
+        pkts
+            = new byte[FRAME_COUNT * SENDER_COUNT * LAYER_COUNT
+                    * PACKETS_PER_FRAME][];
+
+        int p = 0;
+
+        for (int f = historyFrameCount - FRAME_COUNT;
+                f < historyFrameCount;
+                f++)
+        {
+            for (int s = 0; s < SENDER_COUNT; s++)
+            {
+                for (int l = 0; l < LAYER_COUNT; l++)
+                {
+                    for (int k = 0; k < PACKETS_PER_FRAME; k++)
+                    {
+                        int len = RawPacket.FIXED_HEADER_SIZE + 1000;
+                        RawPacket pkt = new RawPacket(new byte[len], 0, len);
+
+                        pkt.setVersion();
+                        pkt.setPayloadType((byte) 100);
+                        pkt.setSequenceNumber(
+                                (f * PACKETS_PER_FRAME + k) & 0xFFFF);
+                        pkt.setTimestamp(getTimestamp(s, f));
+                        pkt.setSSRC(
+                                (int) encodings[s][l].getPrimarySSRC());
+                        pkts[p++] = pkt.getBuffer();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the RTP timestamp of a specific frame of a specific sender. The
+     * layers of a sender share their timestamps.
+     *
+     * @param sender the index of the sender
+     * @param frame the index of the frame
+     * @return the RTP timestamp of the frame
+     */
+    private static long getTimestamp(int sender, int frame)
+    {
+        return (0x12345678L * (sender + 1) + TS_INCREMENT * (long) frame)
+            & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform;
+
+import java.net.*;
+import java.util.concurrent.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * Compares the reverse-transformation of received datagrams one at a time with
+ * the reverse-transformation of the same datagrams as one batch (as
+ * <tt>SelectorReceiveEngine</tt> hands them to <tt>TransformInputStream</tt>)
+ * through the default video chain. The scores are per datagram.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ReceiveBatchBenchmark.BATCH_SIZE)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class ReceiveBatchBenchmark
+{
+    /**
+     * The number of datagrams in a batch, the default of
+     * <tt>SelectorReceiveEngine.MAX_READS_PER_CHANNEL</tt>.
+     */
+    static final int BATCH_SIZE = 16;
+
+    /**
+     * The number of distinct datagrams which are received in turn. A multiple
+     * of {@link #BATCH_SIZE}.
+     */
+    private static final int PACKET_COUNT = 1024;
+
+    /**
+     * Whether the chain skips inactive engines and stops early.
+     */
+    @Param({ "false", "true" })
+    public boolean skipInactiveEngines;
+
+    /**
+     * The batches of protected datagrams which are received in turn.
+     */
+    private DatagramPacket[][] batches;
+
+    /**
+     * The index in {@link #batches} of the batch to receive next.
+     */
+    private int index;
+
+    /**
+     * The streams whose receiving chain is measured.
+     */
+    private SDesStreamPair pair;
+
+    /**
+     * The input stream which converts and reverse-transforms the datagrams.
+     */
+    private FeedInputStream stream;
+
+    /**
+     * Receives a batch of datagrams with a single invocation of the chain.
+     *
+     * @return the reverse-transformed packets
+     */
+    @Benchmark
+    public RawPacket[] batch()
+    {
+        return stream.createRawPacket(nextBatch(), BATCH_SIZE);
+    }
+
+    /**
+     * Gets the batch of datagrams to receive next.
+     *
+     * @return the batch of datagrams to receive next
+     */
+    private DatagramPacket[] nextBatch()
+    {
+        int i = index;
+
+        index = (i + 1) % batches.length;
+        return batches[i];
+    }
+
+    /**
+     * Starts <tt>LibJitsi</tt> and initializes the stream and the datagrams.
+     *
+     * @throws Exception if the streams cannot be initialized
+     */
+    @Setup
+    public void setup()
+        throws Exception
+    {
+        SDesStreamPair.start(skipInactiveEngines);
+
+        pair = new SDesStreamPair(MediaType.VIDEO);
+
+        byte[][] pkts = pair.protect(pair.createRTPPackets(PACKET_COUNT));
+
+        batches = new DatagramPacket[PACKET_COUNT / BATCH_SIZE][BATCH_SIZE];
+        for (int i = 0; i < PACKET_COUNT; i++)
+        {
+            batches[i / BATCH_SIZE][i % BATCH_SIZE]
+                = new DatagramPacket(pkts[i], pkts[i].length);
+        }
+
+        stream = new FeedInputStream();
+        stream.setTransformer(pair.getReceiverRTPTransformer());
+    }
+
+    /**
+     * Receives a batch of datagrams with one invocation of the chain per
+     * datagram.
+     *
+     * @param bh the <tt>Blackhole</tt> which consumes the reverse-transformed
+     * packets
+     */
+    @Benchmark
+    public void single(Blackhole bh)
+    {
+        for (DatagramPacket datagram : nextBatch())
+            bh.consume(stream.createRawPacket(datagram));
+    }
+
+    /**
+     * Closes the streams and stops <tt>LibJitsi</tt>.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        pair.close();
+        LibJitsi.stop();
+    }
+
+    /**
+     * A <tt>TransformInputStream</tt> without a socket which is fed the
+     * datagrams directly. The <tt>RawPacket</tt>s it creates are not returned
+     * to its pool, so both ways of receiving allocate them alike.
+     */
+    private static class FeedInputStream
+        extends TransformInputStream<DatagramSocket>
+    {
+        /**
+         * Initializes a new <tt>FeedInputStream</tt> which has no socket and,
+         * consequently, does not receive by itself.
+         */
+        FeedInputStream()
+        {
+            super(null);
+        }
+
+        @Override
+        protected void doLogPacket(DatagramPacket packet)
+        {
+        }
+
+        @Override
+        protected void receive(DatagramPacket p)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void setReceiveBufferSize(int receiveBufferSize)
+        {
+        }
+    }
+}
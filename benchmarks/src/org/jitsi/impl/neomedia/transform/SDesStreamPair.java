@@ -0,0 +1,257 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform;
+
+import java.net.*;
+import java.util.*;
+
+import ch.imvs.sdes4j.srtp.*;
+
+import org.jitsi.impl.neomedia.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+
+/**
+ * A sending and a receiving <tt>MediaStream</tt> of a specific
+ * <tt>MediaType</tt> which are keyed with SDES for each other and which are
+ * connected to loopback sockets so that they build their default
+ * <tt>TransformEngineChain</tt>s. The streams are not started, the benchmarks
+ * drive their transform chains directly.
+ */
+class SDesStreamPair
+{
+    /**
+     * The SSRC of the RTP packets created by {@link #createRTPPackets(int)}.
+     */
+    private static final int SSRC = 0x1A2B3C4D;
+
+    /**
+     * Creates a new <tt>MediaStream</tt> which is connected to (unconnected)
+     * loopback sockets.
+     *
+     * @param mediaService the <tt>MediaService</tt> to create the stream with
+     * @param mediaType the <tt>MediaType</tt> of the new stream
+     * @param srtpControl the <tt>SrtpControl</tt> of the new stream
+     * @return the new <tt>MediaStream</tt>
+     * @throws SocketException if the sockets cannot be bound
+     */
+    private static MediaStream createStream(
+            MediaService mediaService,
+            MediaType mediaType,
+            SrtpControl srtpControl)
+        throws SocketException
+    {
+        MediaStream stream
+            = mediaService.createMediaStream(null, mediaType, srtpControl);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        stream.setConnector(
+                new DefaultStreamConnector(
+                        new DatagramSocket(0, loopback),
+                        new DatagramSocket(0, loopback)));
+        return stream;
+    }
+
+    /**
+     * Sets the properties which the benchmarks of the transform chains need
+     * and starts <tt>LibJitsi</tt>. Must be called before any class which
+     * reads the properties at initialization time is loaded.
+     *
+     * @param skipInactiveEngines the value of
+     * {@link TransformEngineChain#SKIP_INACTIVE_ENGINES_PNAME}
+     */
+    static void start(boolean skipInactiveEngines)
+    {
+        // The names are spelled out because referring to the constants would
+        // initialize the classes before the properties are set.
+        System.setProperty(
+                "org.jitsi.impl.neomedia.transform.TransformEngineChain"
+                    + ".SKIP_INACTIVE_ENGINES",
+                Boolean.toString(skipInactiveEngines));
+        // Reverse-transform the same packets over and over again.
+        System.setProperty(
+                "org.jitsi.impl.neomedia.transform.srtp.SRTPCryptoContext"
+                    + ".checkReplay",
+                "false");
+        LibJitsi.start();
+    }
+
+    /**
+     * The <tt>MediaType</tt> of the streams.
+     */
+    private final MediaType mediaType;
+
+    /**
+     * The stream which reverse-transforms the packets of {@link #sender}.
+     */
+    private final MediaStream receiver;
+
+    /**
+     * The stream which transforms the packets for {@link #receiver}.
+     */
+    private final MediaStream sender;
+
+    /**
+     * Initializes a new <tt>SDesStreamPair</tt> instance. <tt>LibJitsi</tt>
+     * must have been started.
+     *
+     * @param mediaType the <tt>MediaType</tt> of the streams
+     * @throws SocketException if the sockets of the streams cannot be bound
+     */
+    SDesStreamPair(MediaType mediaType)
+        throws SocketException
+    {
+        this.mediaType = mediaType;
+
+        MediaService mediaService = LibJitsi.getMediaService();
+        SDesControl senderControl
+            = (SDesControl)
+                mediaService.createSrtpControl(SrtpControlType.SDES);
+        SDesControl receiverControl
+            = (SDesControl)
+                mediaService.createSrtpControl(SrtpControlType.SDES);
+        SrtpCryptoAttribute[] offer
+            = senderControl.getInitiatorCryptoAttributes();
+        SrtpCryptoAttribute answer
+            = receiverControl.responderSelectAttribute(Arrays.asList(offer));
+
+        senderControl.initiatorSelectAttribute(
+                Collections.singletonList(answer));
+
+        sender = createStream(mediaService, mediaType, senderControl);
+        receiver = createStream(mediaService, mediaType, receiverControl);
+    }
+
+    /**
+     * Closes the streams and their sockets.
+     */
+    void close()
+    {
+        sender.close();
+        receiver.close();
+    }
+
+    /**
+     * Creates unprotected RTP packets of the sender with consecutive sequence
+     * numbers. Audio packets have the size of 20 ms of Opus, video packets
+     * have the size of a full VP8 packet.
+     *
+     * @param count the number of packets to create
+     * @return the bytes of the created packets
+     */
+    byte[][] createRTPPackets(int count)
+    {
+        boolean audio = MediaType.AUDIO.equals(mediaType);
+        int payloadLength = audio ? 160 : 1200;
+        byte[][] pkts = new byte[count][];
+
+        for (int i = 0; i < count; i++)
+        {
+            RawPacket pkt
+                = new RawPacket(
+                        new byte[RawPacket.FIXED_HEADER_SIZE + payloadLength],
+                        0,
+                        RawPacket.FIXED_HEADER_SIZE + payloadLength);
+
+            pkt.setVersion();
+            pkt.setPayloadType((byte) (audio ? 111 : 100));
+            pkt.setSequenceNumber(i);
+            pkt.setTimestamp((audio ? 960L : 3000L) * i);
+            pkt.setSSRC(SSRC);
+            for (int j = 0; j < payloadLength; j++)
+            {
+                pkt.getBuffer()[RawPacket.FIXED_HEADER_SIZE + j]
+                    = (byte) (i + j);
+            }
+            pkts[i] = pkt.getBuffer();
+        }
+        return pkts;
+    }
+
+    /**
+     * Gets the RTP <tt>PacketTransformer</tt> of the default
+     * <tt>TransformEngineChain</tt> of the receiving stream.
+     *
+     * @return the RTP <tt>PacketTransformer</tt> of the receiving stream
+     */
+    PacketTransformer getReceiverRTPTransformer()
+    {
+        return getRTPTransformer(receiver);
+    }
+
+    /**
+     * Gets the RTP <tt>PacketTransformer</tt> of the default
+     * <tt>TransformEngineChain</tt> of a specific stream.
+     *
+     * @param stream the stream to get the transformer of
+     * @return the RTP <tt>PacketTransformer</tt> of <tt>stream</tt>
+     */
+    private PacketTransformer getRTPTransformer(MediaStream stream)
+    {
+        return
+            ((MediaStreamImpl) stream).getTransformEngineChain()
+                .getRTPTransformer();
+    }
+
+    /**
+     * Gets the RTP <tt>PacketTransformer</tt> of the default
+     * <tt>TransformEngineChain</tt> of the sending stream.
+     *
+     * @return the RTP <tt>PacketTransformer</tt> of the sending stream
+     */
+    PacketTransformer getSenderRTPTransformer()
+    {
+        return getRTPTransformer(sender);
+    }
+
+    /**
+     * Transforms specific packets with the chain of the sending stream, i.e.
+     * protects them for the receiving stream.
+     *
+     * @param pkts the bytes of the unprotected packets
+     * @return the bytes of the protected packets
+     * @throws IllegalStateException if the chain drops a packet because the
+     * benchmarks would not measure what they claim then
+     */
+    byte[][] protect(byte[][] pkts)
+    {
+        PacketTransformer transformer = getSenderRTPTransformer();
+        byte[][] protectedPkts = new byte[pkts.length][];
+
+        for (int i = 0; i < pkts.length; i++)
+        {
+            byte[] buf = pkts[i];
+            // Leave room for the authentication tag.
+            RawPacket pkt
+                = new RawPacket(Arrays.copyOf(buf, buf.length + 64), 0,
+                        buf.length);
+            RawPacket[] out = transformer.transform(new RawPacket[] { pkt });
+
+            if (out == null || out.length == 0 || out[0] == null)
+            {
+                throw new IllegalStateException(
+                        "The " + mediaType + " chain dropped packet " + i);
+            }
+            pkt = out[0];
+            protectedPkts[i]
+                = Arrays.copyOfRange(
+                        pkt.getBuffer(),
+                        pkt.getOffset(),
+                        pkt.getOffset() + pkt.getLength());
+        }
+        return protectedPkts;
+    }
+}
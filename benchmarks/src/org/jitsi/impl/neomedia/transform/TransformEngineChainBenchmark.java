@@ -0,0 +1,171 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform;
+
+import java.util.concurrent.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the per-packet cost of the default audio and video
+ * <tt>TransformEngineChain</tt>s of <tt>MediaStreamImpl</tt> (SRTP included)
+ * in both directions, with and without
+ * {@link TransformEngineChain#SKIP_INACTIVE_ENGINES_PNAME}. Each parameter
+ * combination runs in its own fork because the property is read once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class TransformEngineChainBenchmark
+{
+    /**
+     * The number of distinct packets which are transformed in turn.
+     */
+    private static final int PACKET_COUNT = 1024;
+
+    /**
+     * Whether the chains skip inactive engines and stop early.
+     */
+    @Param({ "false", "true" })
+    public boolean skipInactiveEngines;
+
+    /**
+     * The index in {@link #pkts} of the packet to transform next.
+     */
+    private int index;
+
+    /**
+     * The <tt>MediaType</tt> of the streams whose chains are measured.
+     */
+    @Param({ "AUDIO", "VIDEO" })
+    public String mediaType;
+
+    /**
+     * The streams whose chains are measured.
+     */
+    private SDesStreamPair pair;
+
+    /**
+     * The unprotected packets which {@link #pkts} are restored from before
+     * they are transformed.
+     */
+    private byte[][] plain;
+
+    /**
+     * The packets which are transformed, one per invocation.
+     */
+    private RawPacket[] pkts;
+
+    /**
+     * The protected versions of {@link #plain} which {@link #pkts} are
+     * restored from before they are reverse-transformed.
+     */
+    private byte[][] protectedPkts;
+
+    /**
+     * The RTP transformer of the chain of the receiving stream.
+     */
+    private PacketTransformer receiverTransformer;
+
+    /**
+     * The RTP transformer of the chain of the sending stream.
+     */
+    private PacketTransformer senderTransformer;
+
+    /**
+     * Restores the next packet from specific bytes into a single-element
+     * array as the input streams pass packets to the chains.
+     *
+     * @param from the bytes of the packets to restore the packet from
+     * @return an array which contains the restored packet only
+     */
+    private RawPacket[] next(byte[][] from)
+    {
+        int i = index;
+        RawPacket pkt = pkts[i];
+        byte[] buf = from[i];
+
+        if (pkt.getBuffer().length < buf.length)
+            pkt.setBuffer(new byte[buf.length + 64]);
+        System.arraycopy(buf, 0, pkt.getBuffer(), 0, buf.length);
+        pkt.setOffset(0);
+        pkt.setLength(buf.length);
+        pkt.setFlags(0);
+        index = (i + 1) & (PACKET_COUNT - 1);
+        return new RawPacket[] { pkt };
+    }
+
+    /**
+     * Reverse-transforms a received packet. Includes the copying of the
+     * protected packet.
+     *
+     * @return the result of the chain
+     */
+    @Benchmark
+    public RawPacket[] reverseTransform()
+    {
+        return receiverTransformer.reverseTransform(next(protectedPkts));
+    }
+
+    /**
+     * Starts <tt>LibJitsi</tt> and initializes the streams and the packets.
+     *
+     * @throws Exception if the streams cannot be initialized
+     */
+    @Setup
+    public void setup()
+        throws Exception
+    {
+        SDesStreamPair.start(skipInactiveEngines);
+
+        pair = new SDesStreamPair(MediaType.parseString(mediaType));
+        senderTransformer = pair.getSenderRTPTransformer();
+        receiverTransformer = pair.getReceiverRTPTransformer();
+        plain = pair.createRTPPackets(PACKET_COUNT);
+        protectedPkts = pair.protect(plain);
+
+        pkts = new RawPacket[PACKET_COUNT];
+        for (int i = 0; i < PACKET_COUNT; i++)
+            pkts[i] = new RawPacket(new byte[1500], 0, 0);
+    }
+
+    /**
+     * Closes the streams and stops <tt>LibJitsi</tt>.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        pair.close();
+        LibJitsi.stop();
+    }
+
+    /**
+     * Transforms a packet to be sent. Includes the copying of the
+     * unprotected packet.
+     *
+     * @return the result of the chain
+     */
+    @Benchmark
+    public RawPacket[] transform()
+    {
+        return senderTransformer.transform(next(plain));
+    }
+}
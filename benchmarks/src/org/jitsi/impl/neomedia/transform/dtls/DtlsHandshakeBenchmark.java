@@ -0,0 +1,285 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.dtls;
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.bouncycastle.crypto.tls.*;
+import org.jitsi.impl.neomedia.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the number of complete DTLS-SRTP handshakes per second between a
+ * <tt>TlsClientImpl</tt> and a <tt>TlsServerImpl</tt> with RSA and with ECDSA
+ * certificates. The handshakes run over <tt>DatagramTransportImpl</tt>s which
+ * send through <tt>RTPConnectorUDPImpl</tt>s on loopback sockets. Since the key
+ * type is read once per JVM, every value of {@link #keyType} runs in its own
+ * fork.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class DtlsHandshakeBenchmark
+{
+    /**
+     * The <tt>DtlsControlImpl</tt> of the client.
+     */
+    private DtlsControlImpl clientControl;
+
+    /**
+     * The type of the keys of the certificates: <tt>RSA</tt> or
+     * <tt>ECDSA</tt>.
+     */
+    @Param({ "RSA", "ECDSA" })
+    public String keyType;
+
+    /**
+     * The <tt>DtlsControlImpl</tt> of the server.
+     */
+    private DtlsControlImpl serverControl;
+
+    /**
+     * The thread which runs the server side of the handshakes.
+     */
+    private ExecutorService serverExecutor;
+
+    /**
+     * Gets the <tt>DtlsPacketTransformer</tt> of the RTP component of a
+     * specific <tt>DtlsControlImpl</tt>.
+     *
+     * @param dtlsControl the <tt>DtlsControlImpl</tt> to get the
+     * <tt>DtlsPacketTransformer</tt> of
+     * @return the <tt>DtlsPacketTransformer</tt> of <tt>dtlsControl</tt>
+     */
+    private static DtlsPacketTransformer getPacketTransformer(
+            DtlsControlImpl dtlsControl)
+    {
+        return
+            (DtlsPacketTransformer)
+                dtlsControl.getTransformEngine().getRTPTransformer();
+    }
+
+    /**
+     * Performs a complete handshake between a new client and a new server
+     * over a new pair of loopback sockets and closes the DTLS connection.
+     *
+     * @throws Exception if the handshake fails
+     */
+    @Benchmark
+    public void handshake()
+        throws Exception
+    {
+        final Endpoint server = new Endpoint();
+        Endpoint client = new Endpoint();
+
+        try
+        {
+            server.connect(client);
+            client.connect(server);
+
+            final TlsServerImpl tlsServer
+                = new TlsServerImpl(getPacketTransformer(serverControl));
+            Future<DTLSTransport> serverTransport
+                = serverExecutor.submit(
+                        new Callable<DTLSTransport>()
+                        {
+                            @Override
+                            public DTLSTransport call()
+                                throws IOException
+                            {
+                                return
+                                    new DTLSServerProtocol(new SecureRandom())
+                                        .accept(tlsServer, server.transport);
+                            }
+                        });
+            DTLSTransport clientTransport
+                = new DTLSClientProtocol(new SecureRandom())
+                    .connect(
+                            new TlsClientImpl(
+                                    getPacketTransformer(clientControl)),
+                            client.transport);
+
+            serverTransport.get().close();
+            clientTransport.close();
+        }
+        finally
+        {
+            client.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Initializes the client and the server <tt>DtlsControlImpl</tt>s and
+     * has them trust each other's certificate.
+     */
+    @Setup
+    public void setup()
+    {
+        // KEY_TYPE_PNAME is a compile-time constant so referring to it does
+        // not initialize DtlsControlImpl before the property is set.
+        System.setProperty(DtlsControlImpl.KEY_TYPE_PNAME, keyType);
+        LibJitsi.start();
+
+        clientControl = new DtlsControlImpl();
+        serverControl = new DtlsControlImpl();
+        clientControl.registerUser(this);
+        serverControl.registerUser(this);
+        clientControl.setSetup(DtlsControl.Setup.ACTIVE);
+        serverControl.setSetup(DtlsControl.Setup.PASSIVE);
+        clientControl.setRemoteFingerprints(
+                Collections.singletonMap(
+                        serverControl.getLocalFingerprintHashFunction(),
+                        serverControl.getLocalFingerprint()));
+        serverControl.setRemoteFingerprints(
+                Collections.singletonMap(
+                        clientControl.getLocalFingerprintHashFunction(),
+                        clientControl.getLocalFingerprint()));
+
+        serverExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Releases the resources acquired by {@link #setup()}.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        serverExecutor.shutdownNow();
+        clientControl.cleanup(this);
+        serverControl.cleanup(this);
+        LibJitsi.stop();
+    }
+
+    /**
+     * One side of a handshake: a <tt>DatagramTransportImpl</tt> which sends
+     * through an <tt>RTPConnectorUDPImpl</tt> on a loopback socket and a
+     * thread which queues the datagrams received on the socket into the
+     * <tt>DatagramTransportImpl</tt> (as <tt>DtlsPacketTransformer</tt> does
+     * for a started <tt>MediaStream</tt>).
+     */
+    private static class Endpoint
+    {
+        /**
+         * The <tt>RTPConnectorUDPImpl</tt> through which {@link #transport}
+         * sends.
+         */
+        final RTPConnectorUDPImpl connector;
+
+        /**
+         * The loopback socket of this <tt>Endpoint</tt>.
+         */
+        final DatagramSocket socket;
+
+        /**
+         * The <tt>DatagramTransportImpl</tt> of the handshake.
+         */
+        final DatagramTransportImpl transport;
+
+        /**
+         * Initializes a new <tt>Endpoint</tt> on a new loopback socket.
+         *
+         * @throws SocketException if the socket cannot be bound
+         */
+        Endpoint()
+            throws SocketException
+        {
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            connector
+                = new RTPConnectorUDPImpl(
+                        new DefaultStreamConnector(socket, null));
+            transport = new DatagramTransportImpl(Component.RTP);
+            transport.setConnector(connector);
+
+            Thread receiveThread
+                = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        receive();
+                    }
+                };
+
+            receiveThread.setDaemon(true);
+            receiveThread.start();
+        }
+
+        /**
+         * Closes the transport and the socket of this <tt>Endpoint</tt> which
+         * also stops its receive thread.
+         *
+         * @throws IOException never
+         */
+        void close()
+            throws IOException
+        {
+            transport.close();
+            connector.close();
+            socket.close();
+        }
+
+        /**
+         * Directs the datagrams sent by this <tt>Endpoint</tt> to a specific
+         * other <tt>Endpoint</tt>.
+         *
+         * @param peer the <tt>Endpoint</tt> to send to
+         * @throws IOException if the output stream of {@link #connector}
+         * cannot be created
+         */
+        void connect(Endpoint peer)
+            throws IOException
+        {
+            connector.getDataOutputStream().addTarget(
+                    peer.socket.getLocalAddress(),
+                    peer.socket.getLocalPort());
+        }
+
+        /**
+         * Queues the datagrams received on {@link #socket} into
+         * {@link #transport} until either of them is closed.
+         */
+        private void receive()
+        {
+            byte[] buf = new byte[1500];
+            DatagramPacket p = new DatagramPacket(buf, buf.length);
+
+            try
+            {
+                while (true)
+                {
+                    p.setLength(buf.length);
+                    socket.receive(p);
+                    transport.queueReceive(
+                            p.getData(), p.getOffset(), p.getLength());
+                }
+            }
+            catch (IOException | IllegalStateException e)
+            {
+                // The socket or the transport has been closed.
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.fec;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jitsi.impl.neomedia.transform.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the reception of a block of media packets with one lost packet
+ * and the recovery of the lost packet from the repair packet which protects
+ * the block with ulpfec (<tt>FECReceiver</tt>) and with a FlexFEC row
+ * (<tt>FlexFECReceiver</tt>). Both protect every {@link #BLOCK_LENGTH} media
+ * packets with one repair packet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class FECRecoveryBenchmark
+{
+    /**
+     * The number of media packets protected by a repair packet.
+     */
+    private static final int BLOCK_LENGTH = 10;
+
+    /**
+     * The length of the payload of the media packets.
+     */
+    private static final int PAYLOAD_LENGTH = 1200;
+
+    /**
+     * The payload type of the repair packets.
+     */
+    private static final byte REPAIR_PT = 117;
+
+    /**
+     * The SSRC of the FlexFEC stream.
+     */
+    private static final long REPAIR_SSRC = 0x5E6F7081L;
+
+    /**
+     * The SSRC of the media packets.
+     */
+    private static final long SSRC = 0x1A2B3C4DL;
+
+    /**
+     * The block of media packets and the FlexFEC repair packet which
+     * protects it.
+     */
+    private RawPacket[] flexfecBlock;
+
+    /**
+     * The receiver of the FlexFEC protected packets.
+     */
+    private FlexFECReceiver flexfecReceiver;
+
+    /**
+     * The number of blocks received so far.
+     */
+    private int nbBlocks;
+
+    /**
+     * The block of media packets and the ulpfec packet which protects it.
+     */
+    private RawPacket[] ulpfecBlock;
+
+    /**
+     * The receiver of the ulpfec protected packets.
+     */
+    private FECReceiver ulpfecReceiver;
+
+    /**
+     * The copies of the packets of a block which are received.
+     */
+    private final RawPacket[] work = new RawPacket[BLOCK_LENGTH + 1];
+
+    /**
+     * Creates a block of media packets with sequence numbers starting at
+     * <tt>0</tt> and the repair packet(s) which protect it.
+     *
+     * @param sender the <tt>PacketTransformer</tt> which adds the repair
+     * packets.
+     * @return the media packets followed by the repair packet(s).
+     */
+    private static RawPacket[] createBlock(PacketTransformer sender)
+    {
+        Random random = new Random(0);
+        List<RawPacket> block = new ArrayList<>();
+
+        for (int i = 0; i < BLOCK_LENGTH; i++)
+        {
+            int len = RawPacket.FIXED_HEADER_SIZE + PAYLOAD_LENGTH - 7 * i;
+            byte[] buf = new byte[len];
+
+            random.nextBytes(buf);
+            Arrays.fill(buf, 0, RawPacket.FIXED_HEADER_SIZE, (byte) 0);
+
+            RawPacket pkt = new RawPacket(buf, 0, len);
+
+            pkt.setVersion();
+            pkt.setPayloadType((byte) 100);
+            pkt.setSequenceNumber(i);
+            pkt.setSSRC((int) SSRC);
+            for (RawPacket p : sender.transform(new RawPacket[] { pkt }))
+            {
+                if (p != null)
+                    block.add(p);
+            }
+        }
+        return block.toArray(new RawPacket[block.size()]);
+    }
+
+    /**
+     * Receives a block of FlexFEC protected packets with one lost media
+     * packet.
+     *
+     * @return the number of packets passed on by the receiver
+     */
+    @Benchmark
+    public int flexfec()
+    {
+        return receive(flexfecReceiver, flexfecBlock, 8);
+    }
+
+    /**
+     * Receives the packets of a block with new sequence numbers, except one
+     * media packet.
+     *
+     * @param receiver the receiver of the packets.
+     * @param block the media and repair packets of the block.
+     * @param snBaseOffset the offset of the SN base of the repair packets
+     * in their FEC header.
+     * @return the number of packets passed on by the receiver
+     */
+    private int receive(
+            PacketTransformer receiver,
+            RawPacket[] block,
+            int snBaseOffset)
+    {
+        int base = (nbBlocks * (BLOCK_LENGTH + 1)) & 0xFFFF;
+        int lost = nbBlocks % BLOCK_LENGTH;
+        int count = 0;
+
+        nbBlocks++;
+        for (int i = 0; i < block.length; i++)
+        {
+            if (i == lost)
+                continue;
+
+            RawPacket template = block[i];
+            RawPacket pkt = work[i];
+
+            System.arraycopy(
+                    template.getBuffer(), template.getOffset(),
+                    pkt.getBuffer(), 0,
+                    template.getLength());
+            pkt.setLength(template.getLength());
+            if (i < BLOCK_LENGTH)
+            {
+                pkt.setSequenceNumber(base + i);
+            }
+            else
+            {
+                int off = pkt.getHeaderLength() + snBaseOffset;
+
+                pkt.setSequenceNumber(base + i);
+                pkt.getBuffer()[off] = (byte) (base >> 8);
+                pkt.getBuffer()[off + 1] = (byte) base;
+            }
+
+            RawPacket[] pkts
+                = receiver.reverseTransform(new RawPacket[] { pkt });
+
+            for (RawPacket p : pkts)
+            {
+                if (p != null)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Starts <tt>LibJitsi</tt> (which the receivers read their configuration
+     * from) and creates the protected blocks and the receivers.
+     */
+    @Setup
+    public void setup()
+    {
+        LibJitsi.start();
+
+        FECSender ulpfecSender = new FECSender(SSRC, BLOCK_LENGTH, REPAIR_PT);
+        FlexFECSender flexfecSender
+            = new FlexFECSender(
+                    SSRC,
+                    REPAIR_SSRC,
+                    new AtomicInteger(),
+                    REPAIR_PT);
+
+        flexfecSender.setProtection(BLOCK_LENGTH, 0, true);
+        ulpfecBlock = createBlock(ulpfecSender);
+        flexfecBlock = createBlock(flexfecSender);
+        ulpfecSender.close();
+        flexfecSender.close();
+
+        for (int i = 0; i < work.length; i++)
+        {
+            int len = RawPacket.FIXED_HEADER_SIZE + 4 + 2 * PAYLOAD_LENGTH;
+
+            work[i] = new RawPacket(new byte[len], 0, len);
+        }
+
+        ulpfecReceiver = new FECReceiver(SSRC, REPAIR_PT);
+        flexfecReceiver = new FlexFECReceiver(SSRC, REPAIR_PT);
+    }
+
+    /**
+     * Closes the receivers and stops <tt>LibJitsi</tt>.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        ulpfecReceiver.close();
+        flexfecReceiver.close();
+        LibJitsi.stop();
+    }
+
+    /**
+     * Receives a block of ulpfec protected packets with one lost media
+     * packet.
+     *
+     * @return the number of packets passed on by the receiver
+     */
+    @Benchmark
+    public int ulpfec()
+    {
+        return receive(ulpfecReceiver, ulpfecBlock, 2);
+    }
+}
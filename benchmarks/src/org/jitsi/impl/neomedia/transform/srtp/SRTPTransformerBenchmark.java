@@ -0,0 +1,241 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the protection and the unprotection of RTP packets by
+ * <tt>SRTPTransformer</tt> with the ciphers negotiated in practice. The replay
+ * check is disabled so that the same pre-protected packets can be unprotected
+ * over and over again.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class SRTPTransformerBenchmark
+{
+    /**
+     * The number of distinct packets which are transformed in turn.
+     */
+    private static final int PACKET_COUNT = 1024;
+
+    /**
+     * The length of the authentication tag of the protected packets (the
+     * longest of all {@link #cipher}s) which the packets have to leave room
+     * for.
+     */
+    private static final int MAX_TAG_LENGTH = 16;
+
+    /**
+     * The cipher of the SRTP policy: <tt>AES_CM</tt> with HMAC-SHA1 (80 bits)
+     * or <tt>AES_GCM</tt> with a 128-bit key.
+     */
+    @Param({ "AES_CM", "AES_GCM" })
+    public String cipher;
+
+    /**
+     * The index in {@link #pkts} of the packet to transform next.
+     */
+    private int index;
+
+    /**
+     * The length of the payload of the packets.
+     */
+    @Param({ "160", "1200" })
+    public int payloadLength;
+
+    /**
+     * The packets which are transformed, one per invocation.
+     */
+    private RawPacket[] pkts;
+
+    /**
+     * The unprotected packets which {@link #pkts} are restored from before
+     * they are protected.
+     */
+    private byte[][] plain;
+
+    /**
+     * The protected versions of {@link #plain} which {@link #pkts} are
+     * restored from before they are unprotected.
+     */
+    private byte[][] protectedPkts;
+
+    /**
+     * The <tt>SRTPTransformer</tt> which unprotects.
+     */
+    private SRTPTransformer receiver;
+
+    /**
+     * The <tt>SRTPTransformer</tt> which protects.
+     */
+    private SRTPTransformer sender;
+
+    /**
+     * Creates the <tt>SRTPContextFactory</tt> of a specific side of an SRTP
+     * session with the policy of {@link #cipher}.
+     *
+     * @param senderFactory <tt>true</tt> to create the factory of the sender
+     * or <tt>false</tt> for the factory of the receiver
+     * @return the new <tt>SRTPContextFactory</tt>
+     */
+    private SRTPContextFactory createFactory(boolean senderFactory)
+    {
+        SRTPPolicy policy;
+        byte[] masterSalt;
+
+        if ("AES_GCM".equals(cipher))
+        {
+            policy
+                = new SRTPPolicy(
+                        SRTPPolicy.AESGCM_ENCRYPTION, 16,
+                        SRTPPolicy.NULL_AUTHENTICATION, 0, 16,
+                        12);
+            masterSalt = new byte[12];
+        }
+        else
+        {
+            policy
+                = new SRTPPolicy(
+                        SRTPPolicy.AESCM_ENCRYPTION, 16,
+                        SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10,
+                        14);
+            masterSalt = new byte[14];
+        }
+
+        byte[] masterKey = new byte[16];
+
+        for (int i = 0; i < masterKey.length; i++)
+            masterKey[i] = (byte) i;
+        for (int i = 0; i < masterSalt.length; i++)
+            masterSalt[i] = (byte) (0xA0 + i);
+
+        return
+            new SRTPContextFactory(
+                    senderFactory,
+                    masterKey, masterSalt,
+                    policy, policy);
+    }
+
+    /**
+     * Restores the next packet from specific bytes.
+     *
+     * @param from the bytes of the packets to restore the packet from
+     * @return the restored packet
+     */
+    private RawPacket next(byte[][] from)
+    {
+        int i = index;
+        RawPacket pkt = pkts[i];
+        byte[] buf = from[i];
+
+        System.arraycopy(buf, 0, pkt.getBuffer(), 0, buf.length);
+        pkt.setOffset(0);
+        pkt.setLength(buf.length);
+        index = (i + 1) & (PACKET_COUNT - 1);
+        return pkt;
+    }
+
+    /**
+     * Unprotects a packet. Includes the copying of the protected packet.
+     *
+     * @return the unprotected packet
+     */
+    @Benchmark
+    public RawPacket reverseTransform()
+    {
+        return receiver.reverseTransform(next(protectedPkts));
+    }
+
+    /**
+     * Initializes the transformers and the packets.
+     */
+    @Setup
+    public void setup()
+    {
+        // Unprotect the same packets over and over again.
+        System.setProperty(SRTPCryptoContext.CHECK_REPLAY_PNAME, "false");
+        LibJitsi.start();
+
+        sender = new SRTPTransformer(createFactory(true));
+        receiver = new SRTPTransformer(createFactory(false));
+
+        int length = RawPacket.FIXED_HEADER_SIZE + payloadLength;
+
+        pkts = new RawPacket[PACKET_COUNT];
+        plain = new byte[PACKET_COUNT][];
+        protectedPkts = new byte[PACKET_COUNT][];
+        for (int i = 0; i < PACKET_COUNT; i++)
+        {
+            RawPacket pkt
+                = new RawPacket(new byte[length + MAX_TAG_LENGTH], 0, length);
+
+            pkt.setVersion();
+            pkt.setPayloadType((byte) 111);
+            pkt.setSequenceNumber(i);
+            pkt.setTimestamp(960L * i);
+            pkt.setSSRC(0x1A2B3C4D);
+            for (int j = 0; j < payloadLength; j++)
+            {
+                pkt.getBuffer()[RawPacket.FIXED_HEADER_SIZE + j]
+                    = (byte) (i + j);
+            }
+            plain[i] = Arrays.copyOf(pkt.getBuffer(), length);
+            pkts[i] = pkt;
+        }
+        for (int i = 0; i < PACKET_COUNT; i++)
+        {
+            RawPacket pkt = sender.transform(next(plain));
+
+            protectedPkts[i]
+                = Arrays.copyOfRange(
+                        pkt.getBuffer(),
+                        pkt.getOffset(),
+                        pkt.getOffset() + pkt.getLength());
+        }
+    }
+
+    /**
+     * Closes the transformers.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        sender.close();
+        receiver.close();
+        LibJitsi.stop();
+    }
+
+    /**
+     * Protects a packet. Includes the copying of the unprotected packet.
+     *
+     * @return the protected packet
+     */
+    @Benchmark
+    public RawPacket transform()
+    {
+        return sender.transform(next(plain));
+    }
+}
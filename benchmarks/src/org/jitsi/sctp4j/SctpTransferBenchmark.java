@@ -0,0 +1,332 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.sctp4j;
+
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the transfer of messages between two <tt>SctpSocket</tt>s (like
+ * <tt>SctpTransferTest</tt> does) which are connected through an in-memory
+ * link, with the <tt>byte</tt> array API (<tt>NetworkLink</tt>,
+ * <tt>SctpDataCallback</tt>) and with the <tt>ByteBuffer</tt> API
+ * (<tt>BufferNetworkLink</tt>, <tt>SctpBufferDataCallback</tt>).
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class SctpTransferBenchmark
+{
+    /**
+     * The number of messages sent per benchmark invocation.
+     */
+    private static final int MESSAGE_COUNT = 64;
+
+    /**
+     * The length in bytes of the messages.
+     */
+    private static final int MESSAGE_LENGTH = 1024;
+
+    /**
+     * The SCTP port of the receiving <tt>SctpSocket</tt>.
+     */
+    private static final int RECEIVER_PORT = 5001;
+
+    /**
+     * The SCTP port of the sending <tt>SctpSocket</tt>.
+     */
+    private static final int SENDER_PORT = 5000;
+
+    /**
+     * The API which is measured: <tt>array</tt> or <tt>buffer</tt>.
+     */
+    @Param({ "array", "buffer" })
+    public String api;
+
+    /**
+     * The message sent with the <tt>byte</tt> array API.
+     */
+    private byte[] array;
+
+    /**
+     * The message sent with the <tt>ByteBuffer</tt> API.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The executor which delivers the network packets of the link.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The direct buffers into which the network packets are copied by the
+     * link of the <tt>ByteBuffer</tt> API and which are reused once they have
+     * been delivered.
+     */
+    private final BlockingQueue<ByteBuffer> pool
+        = new LinkedBlockingQueue<>();
+
+    /**
+     * The number of messages which have been received.
+     */
+    private final Semaphore received = new Semaphore(0);
+
+    /**
+     * The <tt>SctpSocket</tt> which receives the messages.
+     */
+    private SctpSocket receiver;
+
+    /**
+     * The <tt>SctpSocket</tt> which sends the messages.
+     */
+    private SctpSocket sender;
+
+    /**
+     * Sends a message to the receiver with the measured API.
+     *
+     * @throws IOException if the sender is closed
+     */
+    private void send()
+        throws IOException
+    {
+        while (true)
+        {
+            int r;
+
+            if (buffer == null)
+            {
+                r = sender.send(array, true, 0, 0);
+            }
+            else
+            {
+                buffer.clear();
+                r = sender.send(buffer, true, 0, 0);
+            }
+            if (r > 0)
+                break;
+            // The send buffer of the sender is full.
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Connects a sender and a receiver with the measured API.
+     *
+     * @throws Exception if the sender and the receiver fail to connect
+     */
+    @Setup
+    public void setup()
+        throws Exception
+    {
+        Sctp.init();
+
+        sender = Sctp.createSocket(SENDER_PORT);
+        receiver = Sctp.createSocket(RECEIVER_PORT);
+        executor = Executors.newSingleThreadExecutor();
+        array = new byte[MESSAGE_LENGTH];
+
+        NetworkLink link;
+
+        if ("buffer".equals(api))
+        {
+            buffer = ByteBuffer.allocateDirect(MESSAGE_LENGTH);
+            link = new BufferLink();
+            receiver.setBufferDataCallback(
+                    new SctpBufferDataCallback()
+                    {
+                        @Override
+                        public void onSctpPacket(
+                                ByteBuffer data,
+                                int sid, int ssn, int tsn, long ppid,
+                                int context, int flags)
+                        {
+                            received.release();
+                        }
+                    });
+        }
+        else
+        {
+            link = new ArrayLink();
+            receiver.setDataCallback(
+                    new SctpDataCallback()
+                    {
+                        @Override
+                        public void onSctpPacket(
+                                byte[] data,
+                                int sid, int ssn, int tsn, long ppid,
+                                int context, int flags)
+                        {
+                            received.release();
+                        }
+                    });
+        }
+        sender.setLink(link);
+        receiver.setLink(link);
+        sender.connect(RECEIVER_PORT);
+        receiver.connect(SENDER_PORT);
+
+        // Wait for the association to be established.
+        send();
+        if (!received.tryAcquire(10, TimeUnit.SECONDS))
+            throw new IOException("Failed to connect SCTP");
+    }
+
+    /**
+     * Closes the sender and the receiver.
+     *
+     * @throws IOException if the SCTP stack fails to shutdown
+     */
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        sender.close();
+        receiver.close();
+        executor.shutdown();
+        Sctp.finish();
+    }
+
+    /**
+     * Sends {@link #MESSAGE_COUNT} messages and waits for their reception.
+     *
+     * @throws Exception if sending fails or the waiting is interrupted
+     */
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE_COUNT)
+    public void transfer()
+        throws Exception
+    {
+        for (int i = 0; i < MESSAGE_COUNT; i++)
+            send();
+        received.acquire(MESSAGE_COUNT);
+    }
+
+    /**
+     * Delivers the network packet of one <tt>SctpSocket</tt> to the other on
+     * {@link #executor}.
+     *
+     * @param s the <tt>SctpSocket</tt> which sends the network packet
+     * @param packet the network packet
+     */
+    private void deliver(SctpSocket s, final byte[] packet)
+    {
+        final SctpSocket dest = (s == sender) ? receiver : sender;
+
+        executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            dest.onConnIn(packet, 0, packet.length);
+                        }
+                        catch (IOException ioe)
+                        {
+                            // The SctpSocket has been closed.
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Delivers the network packet of one <tt>SctpSocket</tt> to the other on
+     * {@link #executor}.
+     *
+     * @param s the <tt>SctpSocket</tt> which sends the network packet
+     * @param packet the network packet
+     */
+    private void deliver(SctpSocket s, final ByteBuffer packet)
+    {
+        final SctpSocket dest = (s == sender) ? receiver : sender;
+
+        executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            dest.onConnIn(packet);
+                        }
+                        catch (IOException ioe)
+                        {
+                            // The SctpSocket has been closed.
+                        }
+                        pool.offer(packet);
+                    }
+                });
+    }
+
+    /**
+     * The link of the <tt>byte</tt> array API.
+     */
+    private class ArrayLink
+        implements NetworkLink
+    {
+        @Override
+        public void onConnOut(SctpSocket s, byte[] packet)
+        {
+            deliver(s, packet);
+        }
+    }
+
+    /**
+     * The link of the <tt>ByteBuffer</tt> API. Copies the network packets
+     * into pooled direct buffers because they are valid only during the
+     * callbacks.
+     */
+    private class BufferLink
+        implements BufferNetworkLink
+    {
+        @Override
+        public void onConnOut(SctpSocket s, byte[] packet)
+        {
+            deliver(s, packet);
+        }
+
+        @Override
+        public void onConnOut(SctpSocket s, ByteBuffer packet)
+        {
+            ByteBuffer copy = pool.poll();
+
+            if (copy == null || copy.capacity() < packet.remaining())
+            {
+                copy
+                    = ByteBuffer.allocateDirect(
+                            Math.max(2048, packet.remaining()));
+            }
+            copy.clear();
+            copy.put(packet).flip();
+            deliver(s, copy);
+        }
+
+        @Override
+        public void onConnOut(SctpSocket s, ByteBuffer[] packets, int count)
+        {
+            for (int i = 0; i < count; i++)
+                onConnOut(s, packets[i]);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.service.neomedia;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * Measures the accessors of the RTP header and of the RFC 5285 header
+ * extensions of <tt>RawPacket</tt> which every engine of the transform chain
+ * calls for every packet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class RawPacketBenchmark
+{
+    /**
+     * The ID of the audio level header extension of {@link #pkt}.
+     */
+    private static final byte AUDIO_LEVEL_ID = 1;
+
+    /**
+     * The ID of the abs-send-time header extension of {@link #pkt}.
+     */
+    private static final byte ABS_SEND_TIME_ID = 3;
+
+    /**
+     * The length of the payload of {@link #pkt}.
+     */
+    private static final int PAYLOAD_LENGTH = 160;
+
+    /**
+     * The ID of the header extension added by {@link #addExtension()}.
+     */
+    private static final byte TOFFSET_ID = 2;
+
+    /**
+     * The data of the header extension added by {@link #addExtension()}.
+     */
+    private final byte[] extensionData = new byte[3];
+
+    /**
+     * The packet which is read by the benchmarks.
+     */
+    private RawPacket pkt;
+
+    /**
+     * The packet which {@link #addExtension()} restores from {@link #pkt}
+     * before it adds a header extension to it.
+     */
+    private RawPacket scratch;
+
+    /**
+     * Adds a header extension to a packet which has two already. Includes the
+     * copying of the packet which restores it to its original state.
+     *
+     * @return the packet with the header extension added
+     */
+    @Benchmark
+    public RawPacket addExtension()
+    {
+        System.arraycopy(
+                pkt.getBuffer(), pkt.getOffset(),
+                scratch.getBuffer(), 0,
+                pkt.getLength());
+        scratch.setOffset(0);
+        scratch.setLength(pkt.getLength());
+        scratch.addExtension(TOFFSET_ID, extensionData);
+        return scratch;
+    }
+
+    /**
+     * Looks up the last header extension of the packet by its ID.
+     *
+     * @return the found header extension
+     */
+    @Benchmark
+    public RawPacket.HeaderExtension getHeaderExtension()
+    {
+        return pkt.getHeaderExtension(ABS_SEND_TIME_ID);
+    }
+
+    /**
+     * Reads the fields of the fixed RTP header and the lengths of the header
+     * and of the payload.
+     *
+     * @param bh the <tt>Blackhole</tt> which consumes the read values
+     */
+    @Benchmark
+    public void readHeader(Blackhole bh)
+    {
+        bh.consume(pkt.getSSRCAsLong());
+        bh.consume(pkt.getSequenceNumber());
+        bh.consume(pkt.getTimestamp());
+        bh.consume(pkt.getPayloadType());
+        bh.consume(pkt.isPacketMarked());
+        bh.consume(pkt.getHeaderLength());
+        bh.consume(pkt.getPayloadLength());
+    }
+
+    /**
+     * Iterates over all header extensions of the packet.
+     *
+     * @param bh the <tt>Blackhole</tt> which consumes the header extensions
+     */
+    @Benchmark
+    public void iterateHeaderExtensions(Blackhole bh)
+    {
+        RawPacket.HeaderExtensions hes = pkt.getHeaderExtensions();
+
+        while (hes.hasNext())
+        {
+            RawPacket.HeaderExtension he = hes.next();
+
+            bh.consume(he.getExtId());
+            bh.consume(he.getExtLength());
+        }
+    }
+
+    /**
+     * Initializes an Opus-like RTP packet with an audio level and an
+     * abs-send-time header extension.
+     */
+    @Setup
+    public void setup()
+    {
+        // Leave room for the header extensions to be added.
+        byte[] buf
+            = new byte[RawPacket.FIXED_HEADER_SIZE + PAYLOAD_LENGTH + 64];
+
+        for (int i = 0; i < PAYLOAD_LENGTH; i++)
+            buf[RawPacket.FIXED_HEADER_SIZE + i] = (byte) i;
+
+        pkt
+            = new RawPacket(
+                    buf,
+                    0,
+                    RawPacket.FIXED_HEADER_SIZE + PAYLOAD_LENGTH);
+        pkt.setVersion();
+        pkt.setPayloadType((byte) 111);
+        pkt.setSequenceNumber(12345);
+        pkt.setTimestamp(0x12345678L);
+        pkt.setSSRC(0x1A2B3C4D);
+        pkt.addExtension(AUDIO_LEVEL_ID, new byte[] { (byte) 0x80 | 40 });
+        pkt.addExtension(ABS_SEND_TIME_ID, new byte[] { 1, 2, 3 });
+
+        scratch = new RawPacket(new byte[buf.length], 0, pkt.getLength());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright @ 2016 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "SRTPCipherGCMOpenSSL.h"
+
+#include <openssl/evp.h>
+#include <stdint.h>
+#include <stdlib.h>
+
+#define AES_GCM_IV_LENGTH 12
+#define AES_GCM_TAG_LENGTH 16
+
+/*
+ * Class:     org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL
+ * Method:    AES_GCM_CTX_create
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL_AES_1GCM_1CTX_1create
+  (JNIEnv *env, jclass clazz)
+{
+    return (jlong) (intptr_t) EVP_CIPHER_CTX_new();
+}
+
+/*
+ * Class:     org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL
+ * Method:    AES_GCM_CTX_destroy
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL_AES_1GCM_1CTX_1destroy
+  (JNIEnv *env, jclass clazz, jlong ctx)
+{
+    if (ctx)
+        EVP_CIPHER_CTX_free((EVP_CIPHER_CTX *) (intptr_t) ctx);
+}
+
+/*
+ * Class:     org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL
+ * Method:    AES_GCM_CTX_init
+ * Signature: (J[BI)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL_AES_1GCM_1CTX_1init
+  (JNIEnv *env, jclass clazz, jlong ctx, jbyteArray key, jint keyLen)
+{
+    EVP_CIPHER_CTX *ctx_ = (EVP_CIPHER_CTX *) (intptr_t) ctx;
+    const EVP_CIPHER *cipher;
+    unsigned char key_[32];
+
+    switch (keyLen)
+    {
+    case 16:
+        cipher = EVP_aes_128_gcm();
+        break;
+    case 32:
+        cipher = EVP_aes_256_gcm();
+        break;
+    default:
+        return 0;
+    }
+
+    (*env)->GetByteArrayRegion(env, key, 0, keyLen, (jbyte *) key_);
+
+    /* The direction is specified for each packet by AES_GCM_CTX_process. */
+    return
+        EVP_CipherInit_ex(ctx_, cipher, NULL, NULL, NULL, 1)
+            && EVP_CIPHER_CTX_ctrl(
+                    ctx_,
+                    EVP_CTRL_GCM_SET_IVLEN,
+                    AES_GCM_IV_LENGTH,
+                    NULL)
+            && EVP_CipherInit_ex(ctx_, NULL, NULL, key_, NULL, 1);
+}
+
+/*
+ * Class:     org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL
+ * Method:    AES_GCM_CTX_process
+ * Signature: (JZ[B[BII[BII)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_jitsi_impl_neomedia_transform_srtp_SRTPCipherGCMOpenSSL_AES_1GCM_1CTX_1process
+  (JNIEnv *env, jclass clazz, jlong ctx, jboolean encrypt, jbyteArray iv,
+      jbyteArray aad, jint aadOff, jint aadLen,
+      jbyteArray inOut, jint offset, jint len)
+{
+    EVP_CIPHER_CTX *ctx_ = (EVP_CIPHER_CTX *) (intptr_t) ctx;
+    int ok = 0;
+    unsigned char iv_[AES_GCM_IV_LENGTH];
+    jbyte *aad_ = NULL;
+    jbyte *inOut_ = NULL;
+    int len_;
+
+    (*env)->GetByteArrayRegion(env, iv, 0, AES_GCM_IV_LENGTH, (jbyte *) iv_);
+
+    /* When decrypting, len includes the authentication tag. */
+    if (!encrypt)
+        len -= AES_GCM_TAG_LENGTH;
+    if (len < 0)
+        goto exit;
+
+    inOut_ = (*env)->GetPrimitiveArrayCritical(env, inOut, NULL);
+    if (!inOut_)
+        goto exit;
+    aad_ = (*env)->GetPrimitiveArrayCritical(env, aad, NULL);
+    if (!aad_)
+        goto exit;
+
+    ok = EVP_CipherInit_ex(ctx_, NULL, NULL, NULL, iv_, encrypt ? 1 : 0);
+    if (!ok)
+        goto exit;
+
+    if (!encrypt)
+    {
+        ok
+            = EVP_CIPHER_CTX_ctrl(
+                    ctx_,
+                    EVP_CTRL_GCM_SET_TAG,
+                    AES_GCM_TAG_LENGTH,
+                    inOut_ + offset + len);
+        if (!ok)
+            goto exit;
+    }
+
+    if (aadLen > 0)
+    {
+        ok
+            = EVP_CipherUpdate(
+                    ctx_,
+                    NULL, &len_,
+                    (unsigned char *) (aad_ + aadOff), aadLen);
+        if (!ok)
+            goto exit;
+    }
+
+    if (len > 0)
+    {
+        ok
+            = EVP_CipherUpdate(
+                    ctx_,
+                    (unsigned char *) (inOut_ + offset), &len_,
+                    (unsigned char *) (inOut_ + offset), len);
+        if (!ok)
+            goto exit;
+    }
+
+    /* Verifies the tag when decrypting. */
+    ok
+        = EVP_CipherFinal_ex(
+                ctx_,
+                (unsigned char *) (inOut_ + offset + len), &len_);
+    if (!ok)
+        goto exit;
+
+    if (encrypt)
+    {
+        ok
+            = EVP_CIPHER_CTX_ctrl(
+                    ctx_,
+                    EVP_CTRL_GCM_GET_TAG,
+                    AES_GCM_TAG_LENGTH,
+                    inOut_ + offset + len);
+    }
+
+exit:
+    if (aad_)
+        (*env)->ReleasePrimitiveArrayCritical(env, aad, aad_, JNI_ABORT);
+    if (inOut_)
+        (*env)->ReleasePrimitiveArrayCritical(env, inOut, inOut_, 0);
+
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
@@ -52,6 +52,11 @@ connectSctp(SctpSocket *sctpSocket, int remotePort);
 static void
 debugSctpPrintf(const char *format, ...);
 
+static jint
+sendSctp
+    (SctpSocket *sctpSocket, void *data, size_t len, jboolean ordered,
+        jint sid, jint ppid);
+
 void
 getSctpSockAddr(struct sockaddr_conn *sconn, void *addr, int port);
 
@@ -102,6 +107,27 @@ Java_org_jitsi_sctp4j_Sctp_on_1network_1in
     }
 }
 
+/*
+ * Class:     org_jitsi_sctp4j_Sctp
+ * Method:    on_network_in_direct
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL
+Java_org_jitsi_sctp4j_Sctp_on_1network_1in_1direct
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject pkt, jint off, jint len)
+{
+    jbyte *pkt_;
+
+    pkt_ = (*env)->GetDirectBufferAddress(env, pkt);
+    if (pkt_)
+    {
+        usrsctp_conninput(
+                (void *) (intptr_t) ptr,
+                pkt_ + off, len,
+                /* ecn_bits */ 0);
+    }
+}
+
 /*
  * Class:     org_jitsi_sctp4j_Sctp
  * Method:    usrsctp_accept
@@ -238,44 +264,54 @@ Java_org_jitsi_sctp4j_Sctp_usrsctp_1send
         jboolean ordered, jint sid, jint ppid)
 {
     jbyte *data_;
-    ssize_t r;  /* returned by usrsctp_sendv */
+    jint r;
 
     data_ = (*env)->GetByteArrayElements(env, data, NULL);
     if (data_)
     {
-        SctpSocket *sctpSocket;
-        struct sctp_sndinfo sndinfo;
-
-        sctpSocket = (SctpSocket *) (intptr_t) ptr;
-
-        sndinfo.snd_assoc_id = 0;
-        sndinfo.snd_context = 0;
-        sndinfo.snd_flags = 0;
-        if (JNI_FALSE == ordered)
-            sndinfo.snd_flags |= SCTP_UNORDERED;
-        sndinfo.snd_ppid = htonl(ppid);
-        sndinfo.snd_sid = sid;
-
         r
-            = usrsctp_sendv(
-                    sctpSocket->so,
-                    data_ + off,
-                    len,
-                    /* to */ NULL,
-                    /* addrcnt */ 0,
-                    &sndinfo,
-                    (socklen_t) sizeof(sndinfo),
-                    SCTP_SENDV_SNDINFO,
-                    /* flags */ 0);
+            = sendSctp(
+                    (SctpSocket *) (intptr_t) ptr,
+                    data_ + off, len,
+                    ordered, sid, ppid);
         (*env)->ReleaseByteArrayElements(env, data, data_, JNI_ABORT);
     }
     else
     {
         r = -1;
+        perror("Sctp send error: ");
     }
-    if (r < 0)
+    return r;
+}
+
+/*
+ * Class:     org_jitsi_sctp4j_Sctp
+ * Method:    usrsctp_send_direct
+ * Signature: (JLjava/nio/ByteBuffer;IIZII)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_jitsi_sctp4j_Sctp_usrsctp_1send_1direct
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject data, jint off, jint len,
+        jboolean ordered, jint sid, jint ppid)
+{
+    jbyte *data_;
+    jint r;
+
+    data_ = (*env)->GetDirectBufferAddress(env, data);
+    if (data_)
+    {
+        r
+            = sendSctp(
+                    (SctpSocket *) (intptr_t) ptr,
+                    data_ + off, len,
+                    ordered, sid, ppid);
+    }
+    else
+    {
+        r = -1;
         perror("Sctp send error: ");
-    return (jint) r;
+    }
+    return r;
 }
 
 /*
@@ -405,8 +441,8 @@ JNI_OnLoad(JavaVM *vm, void *reserved)
                 = (*env)->GetStaticMethodID(
                         env,
                         clazz,
-                        "onSctpInboundPacket",
-                        "(J[BIIIJII)V");
+                        "onSctpInboundPacketDirect",
+                        "(JLjava/nio/ByteBuffer;IIIJII)V");
 
             if (receiveCb)
             {
@@ -414,8 +450,8 @@ JNI_OnLoad(JavaVM *vm, void *reserved)
                     = (*env)->GetStaticMethodID(
                             env,
                             clazz,
-                            "onSctpOutboundPacket",
-                            "(J[BII)I");
+                            "onSctpOutboundPacketDirect",
+                            "(JLjava/nio/ByteBuffer;II)I");
 
                 if (sendCb)
                 {
@@ -483,16 +519,15 @@ callOnSctpInboundPacket
 
             if (receiveCb)
             {
-                jbyteArray data_ = (*env)->NewByteArray(env, length);
+                /*
+                 * The data is not copied. The ByteBuffer is valid only until
+                 * the Java method returns.
+                 */
+                jobject data_
+                    = (*env)->NewDirectByteBuffer(env, data, (jlong) length);
 
                 if (data_)
                 {
-                    (*env)->SetByteArrayRegion(
-                            env,
-                            data_,
-                            0,
-                            length,
-                            (jbyte *) data);
                     (*env)->CallStaticVoidMethod(
                             env,
                             clazz,
@@ -553,16 +588,15 @@ callOnSctpOutboundPacket
 
             if (sendCb)
             {
-                jbyteArray data_ = (*env)->NewByteArray(env, length);
+                /*
+                 * The data is not copied. The ByteBuffer is valid only until
+                 * the Java method returns.
+                 */
+                jobject data_
+                    = (*env)->NewDirectByteBuffer(env, data, (jlong) length);
 
                 if (data_)
                 {
-                    (*env)->SetByteArrayRegion(
-                            env,
-                            data_,
-                            0,
-                            length,
-                            (jbyte *) data);
                     r
                         = (*env)->CallStaticIntMethod(
                                 env,
@@ -650,6 +684,43 @@ getSctpSockAddr(struct sockaddr_conn *sconn, void *addr, int port)
     sconn->sconn_port = htons(port);
 }
 
+/**
+ * Sends a message on a specific SCTP stream of a specific socket.
+ *
+ * @return the number of bytes sent or <tt>-1</tt> in case of an error
+ */
+static jint
+sendSctp
+    (SctpSocket *sctpSocket, void *data, size_t len, jboolean ordered,
+        jint sid, jint ppid)
+{
+    struct sctp_sndinfo sndinfo;
+    ssize_t r;  /* returned by usrsctp_sendv */
+
+    sndinfo.snd_assoc_id = 0;
+    sndinfo.snd_context = 0;
+    sndinfo.snd_flags = 0;
+    if (JNI_FALSE == ordered)
+        sndinfo.snd_flags |= SCTP_UNORDERED;
+    sndinfo.snd_ppid = htonl(ppid);
+    sndinfo.snd_sid = sid;
+
+    r
+        = usrsctp_sendv(
+                sctpSocket->so,
+                data,
+                len,
+                /* to */ NULL,
+                /* addrcnt */ 0,
+                &sndinfo,
+                (socklen_t) sizeof(sndinfo),
+                SCTP_SENDV_SNDINFO,
+                /* flags */ 0);
+    if (r < 0)
+        perror("Sctp send error: ");
+    return (jint) r;
+}
+
 // This is the callback called from usrsctp when data has been received, after
 // a packet has been interpreted and parsed by usrsctp and found to contain
 // payload data. It is called by a usrsctp thread. It is assumed this function
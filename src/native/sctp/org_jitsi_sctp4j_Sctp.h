@@ -17,6 +17,14 @@ extern "C" {
 JNIEXPORT void JNICALL Java_org_jitsi_sctp4j_Sctp_on_1network_1in
   (JNIEnv *, jclass, jlong, jbyteArray, jint, jint);
 
+/*
+ * Class:     org_jitsi_sctp4j_Sctp
+ * Method:    on_network_in_direct
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_org_jitsi_sctp4j_Sctp_on_1network_1in_1direct
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
 /*
  * Class:     org_jitsi_sctp4j_Sctp
  * Method:    usrsctp_accept
@@ -73,6 +81,14 @@ JNIEXPORT void JNICALL Java_org_jitsi_sctp4j_Sctp_usrsctp_1listen
 JNIEXPORT jint JNICALL Java_org_jitsi_sctp4j_Sctp_usrsctp_1send
   (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jboolean, jint, jint);
 
+/*
+ * Class:     org_jitsi_sctp4j_Sctp
+ * Method:    usrsctp_send_direct
+ * Signature: (JLjava/nio/ByteBuffer;IIZII)I
+ */
+JNIEXPORT jint JNICALL Java_org_jitsi_sctp4j_Sctp_usrsctp_1send_1direct
+  (JNIEnv *, jclass, jlong, jobject, jint, jint, jboolean, jint, jint);
+
 /*
  * Class:     org_jitsi_sctp4j_Sctp
  * Method:    usrsctp_socket
@@ -18,6 +18,8 @@
 import java.beans.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.regex.*;
 
 import org.jitsi.impl.configuration.xml.*;
@@ -33,6 +35,12 @@
  * <tt>String</tt> properties are meaningfully saved (we should probably
  * consider how and whether we should take care of the rest).
  *
+ * The names of the properties are indexed in a <tt>PropertyIndex</tt> for
+ * the prefix queries and the values read through the typed getters are
+ * cached there. The changes made through the <tt>setProperty</tt> and
+ * <tt>removeProperty</tt> methods are stored in the configuration file
+ * asynchronously and coalesced, i.e. a burst of changes is written once.
+ *
  * @author Emil Ivov
  * @author Damian Minkov
  * @author Lyubomir Marinov
@@ -141,6 +149,52 @@
      */
     private ConfigurationStore store;
 
+    /**
+     * The index of the names and the cache of the values of the properties of
+     * this instance.
+     */
+    private final PropertyIndex index = new PropertyIndex();
+
+    /**
+     * The <tt>ExecutorService</tt> which stores the configuration file after
+     * changes or <tt>null</tt> if it has not been created yet.
+     */
+    private ExecutorService storeExecutor;
+
+    /**
+     * The indicator which determines whether {@link #storeTask} has been
+     * submitted to {@link #storeExecutor} and has not started storing the
+     * configuration file yet.
+     */
+    private final AtomicBoolean storePending = new AtomicBoolean();
+
+    /**
+     * The task which stores the configuration file after changes.
+     */
+    private final Runnable storeTask
+        = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // The changes made from now on are stored by a subsequent run.
+                storePending.set(false);
+                try
+                {
+                    storeConfiguration();
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error(
+                            "Failed to store configuration after property"
+                                + " changes",
+                            t);
+                }
+            }
+        };
+
     public ConfigurationServiceImpl()
     {
         /*
@@ -156,6 +210,10 @@ public ConfigurationServiceImpl()
             debugPrintSystemProperties();
             preloadSystemPropertyFiles();
             loadDefaultProperties();
+            for (String name : immutableDefaultProperties.keySet())
+                index.add(name, PropertyIndex.IMMUTABLE_DEFAULT);
+            for (String name : defaultProperties.keySet())
+                index.add(name, PropertyIndex.DEFAULT);
             reloadConfiguration();
         }
         catch (IOException ex)
@@ -198,16 +256,7 @@ public void setProperty(String propertyName,
                      + ", newValue=" + property + ".");
 
         doSetProperty(propertyName, property, isSystem);
-
-        try
-        {
-            storeConfiguration();
-        }
-        catch (IOException ex)
-        {
-            logger.error(
-                "Failed to store configuration after a property change");
-        }
+        scheduleStoreConfiguration();
 
         if (changeEventDispatcher.hasPropertyChangeListeners(propertyName))
             changeEventDispatcher.firePropertyChange(
@@ -240,16 +289,7 @@ public void setProperties(Map<String, Object> properties)
 
         for (Map.Entry<String, Object> property : properties.entrySet())
             doSetProperty(property.getKey(), property.getValue(), false);
-
-        try
-        {
-            storeConfiguration();
-        }
-        catch (IOException ex)
-        {
-            logger.error(
-                "Failed to store configuration after property changes");
-        }
+        scheduleStoreConfiguration();
 
         for (Map.Entry<String, Object> property : properties.entrySet())
         {
@@ -293,6 +333,7 @@ private void doSetProperty(
         if (property == null)
         {
             store.removeProperty(propertyName);
+            index.remove(propertyName, PropertyIndex.STORE);
 
             if (isSystem)
             {
@@ -308,12 +349,22 @@ private void doSetProperty(
                 //in the System property set and keep only a ref locally.
                 System.setProperty(propertyName, property.toString());
                 store.setSystemProperty(propertyName);
+
+                // Whether the store keeps a reference to a system property
+                // depends on its implementation.
+                if (Arrays.asList(store.getPropertyNames())
+                        .contains(propertyName))
+                    index.add(propertyName, PropertyIndex.STORE);
+                else
+                    index.remove(propertyName, PropertyIndex.STORE);
             }
             else
             {
                 store.setNonSystemProperty(propertyName, property);
+                index.add(propertyName, PropertyIndex.STORE);
             }
         }
+        index.invalidate(propertyName);
     }
 
     /**
@@ -330,16 +381,7 @@ public void removeProperty(String propertyName)
         {
             removePropertyInternal(pName);
         }
-
-        try
-        {
-            storeConfiguration();
-        }
-        catch (IOException ex)
-        {
-            logger.error("Failed to store configuration after "
-                + "a property change");
-        }
+        scheduleStoreConfiguration();
     }
 
     /**
@@ -369,6 +411,8 @@ private void removePropertyInternal(String propertyName)
             logger.trace("Will remove prop: " + propertyName + ".");
 
         store.removeProperty(propertyName);
+        index.remove(propertyName, PropertyIndex.STORE);
+        index.invalidate(propertyName);
 
         if (changeEventDispatcher.hasPropertyChangeListeners(propertyName))
             changeEventDispatcher.firePropertyChange(
@@ -381,17 +425,27 @@ private void removePropertyInternal(String propertyName)
     @Override
     public Object getProperty(String propertyName)
     {
-        Object result = immutableDefaultProperties.get(propertyName);
+        int layers = index.getLayers(propertyName);
 
-        if (result != null)
-            return result;
+        if ((layers & PropertyIndex.IMMUTABLE_DEFAULT) != 0)
+        {
+            Object result = immutableDefaultProperties.get(propertyName);
+
+            if (result != null)
+                return result;
+        }
 
-        result = store.getProperty(propertyName);
+        // The store may fall back to the system properties so it is asked
+        // even if it does not list the property.
+        Object result = store.getProperty(propertyName);
 
         if (result != null)
             return result;
 
-        return defaultProperties.get(propertyName);
+        return
+            ((layers & PropertyIndex.DEFAULT) != 0)
+                ? defaultProperties.get(propertyName)
+                : null;
     }
 
     /**
@@ -407,98 +461,15 @@ public List<String> getAllPropertyNames()
 
     /**
      * {@inheritDoc}
+     *
+     * The names are found with a range query on the <tt>PropertyIndex</tt> of
+     * this instance and are returned in ascending order.
      */
     @Override
     public List<String> getPropertyNamesByPrefix(String prefix,
             boolean exactPrefixMatch)
     {
-        HashSet<String> resultKeySet = new HashSet<>();
-
-        //first fill in the names from the immutable default property set
-        Set<String> propertyNameSet;
-        String[] namesArray;
-
-        if(immutableDefaultProperties.size() > 0)
-        {
-            propertyNameSet = immutableDefaultProperties.keySet();
-
-            namesArray
-                = propertyNameSet.toArray( new String[propertyNameSet.size()] );
-
-            getPropertyNamesByPrefix(prefix,
-                                     exactPrefixMatch,
-                                     namesArray,
-                                     resultKeySet);
-        }
-
-        //now get property names from the current store.
-        getPropertyNamesByPrefix(prefix,
-                                 exactPrefixMatch,
-                                 store.getPropertyNames(),
-                                 resultKeySet);
-
-        //finally, get property names from mutable default property set.
-        if(defaultProperties.size() > 0)
-        {
-            propertyNameSet = defaultProperties.keySet();
-            namesArray
-                = propertyNameSet.toArray(new String[propertyNameSet.size()]);
-
-            getPropertyNamesByPrefix(prefix,
-                                     exactPrefixMatch,
-                                     namesArray,
-                                     resultKeySet);
-        }
-
-        return new ArrayList<>(resultKeySet);
-    }
-
-    /**
-     * Updates the specified <tt>String</tt> <tt>resulSet</tt> to contain all
-     * property names in the <tt>names</tt> array that partially or completely
-     * match the specified prefix. Depending on the value of the
-     * <tt>exactPrefixMatch</tt> parameter the method will (when false)
-     * or will not (when exactPrefixMatch is true) include property names that
-     * have prefixes longer than the specified <tt>prefix</tt> param.
-     *
-     * @param prefix a String containing the prefix (the non dotted non-caps
-     * part of a property name) that we're looking for.
-     * @param exactPrefixMatch a boolean indicating whether the returned
-     * property names should all have a prefix that is an exact match of the
-     * the <tt>prefix</tt> param or whether properties with prefixes that
-     * contain it but are longer than it are also accepted.
-     * @param names the list of names that we'd like to search.
-     *
-     * @return a reference to the updated result set.
-     */
-    private Set<String> getPropertyNamesByPrefix(
-                            String      prefix,
-                            boolean     exactPrefixMatch,
-                            String[]    names,
-                            Set<String> resultSet)
-    {
-        for (String key : names)
-        {
-            if(exactPrefixMatch)
-            {
-                int ix = key.lastIndexOf('.');
-
-                if(ix == -1)
-                    continue;
-
-                String keyPrefix = key.substring(0, ix);
-
-                if(prefix.equals(keyPrefix))
-                    resultSet.add(key);
-            }
-            else
-            {
-                if(key.startsWith(prefix))
-                    resultSet.add(key);
-            }
-        }
-
-        return resultSet;
+        return index.getNamesByPrefix(prefix, exactPrefixMatch);
     }
 
     /**
@@ -509,7 +480,7 @@ public List<String> getPropertyNamesBySuffix(String suffix)
     {
         List<String> resultKeySet = new LinkedList<>();
 
-        for (String key : store.getPropertyNames())
+        for (String key : index.getNames(PropertyIndex.STORE))
         {
             int ix = key.lastIndexOf('.');
 
@@ -640,6 +611,79 @@ public void reloadConfiguration()
         {
             throw new IOException(xmle);
         }
+        finally
+        {
+            indexStore();
+        }
+    }
+
+    /**
+     * Updates the <tt>PropertyIndex</tt> of this instance with the names of
+     * the properties in {@link #store} after it has been replaced or reloaded.
+     */
+    private void indexStore()
+    {
+        Set<String> names
+            = (store == null)
+                ? Collections.<String>emptySet()
+                : new HashSet<>(Arrays.asList(store.getPropertyNames()));
+
+        // Add first and remove second so that the names which remain in the
+        // store do not disappear from the index in between.
+        for (String name : names)
+            index.add(name, PropertyIndex.STORE);
+        for (String name : index.getNames(PropertyIndex.STORE))
+        {
+            if (!names.contains(name))
+                index.remove(name, PropertyIndex.STORE);
+        }
+        index.invalidateAll();
+    }
+
+    /**
+     * Stores the configuration file asynchronously unless a store is already
+     * pending, in which case it will include the changes made so far. The
+     * configuration file is stored at shutdown if a store is still pending.
+     */
+    private void scheduleStoreConfiguration()
+    {
+        if (!storePending.compareAndSet(false, true))
+            return;
+
+        ExecutorService storeExecutor;
+
+        synchronized (storePending)
+        {
+            storeExecutor = this.storeExecutor;
+            if (storeExecutor == null)
+            {
+                this.storeExecutor
+                    = storeExecutor
+                        = ExecutorUtils.newCachedThreadPool(
+                                true,
+                                ConfigurationServiceImpl.class.getName());
+                Runtime.getRuntime().addShutdownHook(
+                        new Thread(
+                                ConfigurationServiceImpl.class.getName()
+                                    + ".shutdown")
+                        {
+                            @Override
+                            public void run()
+                            {
+                                if (storePending.get())
+                                    storeTask.run();
+                            }
+                        });
+            }
+        }
+        try
+        {
+            storeExecutor.execute(storeTask);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            storeTask.run();
+        }
     }
 
     /**
@@ -750,6 +794,7 @@ private File getConfigurationFile()
         if (this.configurationFile == null)
         {
             createConfigurationFile();
+            indexStore();
 
             /*
              * Make sure that the properties SC_HOME_DIR_LOCATION and
@@ -953,6 +998,8 @@ public String getScHomeDirLocation()
                 store.setNonSystemProperty(
                         PNAME_SC_HOME_DIR_LOCATION,
                         scHomeDirLocation);
+                index.add(PNAME_SC_HOME_DIR_LOCATION, PropertyIndex.STORE);
+                index.invalidate(PNAME_SC_HOME_DIR_LOCATION);
             }
         }
 
@@ -986,10 +1033,14 @@ public String getScHomeDirName()
             //have to look for it in the sys props next time and so that it is
             // available for other bundles to consult.
             if (store != null)
+            {
                 store
                     .setNonSystemProperty(
                         PNAME_SC_HOME_DIR_NAME,
                         scHomeDirName);
+                index.add(PNAME_SC_HOME_DIR_NAME, PropertyIndex.STORE);
+                index.invalidate(PNAME_SC_HOME_DIR_NAME);
+            }
         }
 
         return scHomeDirName;
@@ -1215,15 +1266,44 @@ private static String getSystemProperty(String propertyName)
     @Override
     public String getString(String propertyName)
     {
-        Object propValue = getProperty(propertyName);
-        if (propValue == null)
-            return null;
+        return getValue(propertyName).string;
+    }
 
-        String propStrValue = propValue.toString().trim();
+    /**
+     * Gets the (cached) value of a property converted into a <tt>String</tt>
+     * and trimmed. The value is cached only if it does not depend on the
+     * system properties, which may change without notice.
+     *
+     * @param propertyName the name of the property.
+     * @return the value of the property with name <tt>propertyName</tt>.
+     */
+    private PropertyIndex.Value getValue(String propertyName)
+    {
+        PropertyIndex.Value value = index.getValue(propertyName);
 
-        return (propStrValue.length() > 0)
-                    ? propStrValue
-                    : null;
+        if (value == null)
+        {
+            long generation = index.getGeneration();
+            Object propValue = getProperty(propertyName);
+            String propStrValue
+                = (propValue == null) ? null : propValue.toString().trim();
+
+            value
+                = new PropertyIndex.Value(
+                        (propStrValue == null || propStrValue.length() == 0)
+                            ? null
+                            : propStrValue);
+
+            int layers = index.getLayers(propertyName);
+
+            if ((layers & PropertyIndex.IMMUTABLE_DEFAULT) != 0
+                    || ((layers & PropertyIndex.STORE) != 0
+                        && !isSystemProperty(propertyName)))
+            {
+                index.putValue(propertyName, value, generation);
+            }
+        }
+        return value;
     }
 
     /**
@@ -1271,14 +1351,20 @@ private synchronized FileAccessService getFileAccessService()
     @Override
     public int getInt(String propertyName, int defaultValue)
     {
-        String stringValue = getString(propertyName);
+        PropertyIndex.Value value = getValue(propertyName);
+        String stringValue = value.string;
         int intValue = defaultValue;
 
         if ((stringValue != null) && (stringValue.length() > 0))
         {
+            Object parsed = value.getParsed(Integer.class);
+
+            if (parsed != null)
+                return (Integer) parsed;
             try
             {
                 intValue = Integer.parseInt(stringValue);
+                value.setParsed(intValue);
             }
             catch (NumberFormatException ex)
             {
@@ -1296,14 +1382,20 @@ public int getInt(String propertyName, int defaultValue)
     @Override
     public double getDouble(String propertyName, double defaultValue)
     {
-        String stringValue = getString(propertyName);
+        PropertyIndex.Value value = getValue(propertyName);
+        String stringValue = value.string;
         double doubleValue = defaultValue;
 
         if ((stringValue != null) && (stringValue.length() > 0))
         {
+            Object parsed = value.getParsed(Double.class);
+
+            if (parsed != null)
+                return (Double) parsed;
             try
             {
                 doubleValue = Double.parseDouble(stringValue);
+                value.setParsed(doubleValue);
             }
             catch (NumberFormatException ex)
             {
@@ -1320,14 +1412,20 @@ public double getDouble(String propertyName, double defaultValue)
     @Override
     public long getLong(String propertyName, long defaultValue)
     {
-        String stringValue = getString(propertyName);
+        PropertyIndex.Value value = getValue(propertyName);
+        String stringValue = value.string;
         long longValue = defaultValue;
 
         if ((stringValue != null) && (stringValue.length() > 0))
         {
+            Object parsed = value.getParsed(Long.class);
+
+            if (parsed != null)
+                return (Long) parsed;
             try
             {
                 longValue = Long.parseLong(stringValue);
+                value.setParsed(longValue);
             }
             catch (NumberFormatException ex)
             {
@@ -1370,6 +1468,8 @@ public void purgeStoredConfiguration()
         if (store != null)
             for (String name : store.getPropertyNames())
                 store.removeProperty(name);
+        index.clear(PropertyIndex.STORE);
+        index.invalidateAll();
     }
 
     /**
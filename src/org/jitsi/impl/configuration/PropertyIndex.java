@@ -0,0 +1,306 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.configuration;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Indexes the names of the properties of <tt>ConfigurationServiceImpl</tt>
+ * across its layers (the immutable default properties, the
+ * <tt>ConfigurationStore</tt> and the default properties) in a concurrent
+ * sorted map so that the names with a specific prefix are found with a range
+ * query rather than by scanning all names. Additionally, caches the (trimmed)
+ * string values of properties and their parsed numeric forms for the typed
+ * getters of <tt>ConfigurationServiceImpl</tt>.
+ *
+ * A cached value is discarded whenever the property is changed through
+ * {@link #invalidate(String)} or {@link #invalidateAll()}. A value computed
+ * concurrently with a change is not cached (see {@link #getGeneration()}).
+ */
+class PropertyIndex
+{
+    /**
+     * The layer of the default properties.
+     */
+    static final int DEFAULT = 4;
+
+    /**
+     * The layer of the immutable default properties.
+     */
+    static final int IMMUTABLE_DEFAULT = 1;
+
+    /**
+     * The layer of the properties in the <tt>ConfigurationStore</tt>.
+     */
+    static final int STORE = 2;
+
+    /**
+     * The number of changes to the cached values so far. Incremented before a
+     * cached value is discarded.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Maps the names of the properties to the bit sets of the layers which
+     * contain them.
+     */
+    private final ConcurrentSkipListMap<String, Integer> layers
+        = new ConcurrentSkipListMap<>();
+
+    /**
+     * The cached values of properties by name.
+     */
+    private final ConcurrentMap<String, Value> values
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the name of a property to a layer.
+     *
+     * @param name the name of the property.
+     * @param layer the layer to add <tt>name</tt> to.
+     */
+    void add(String name, int layer)
+    {
+        while (true)
+        {
+            Integer oldLayers = layers.get(name);
+
+            if (oldLayers == null)
+            {
+                if (layers.putIfAbsent(name, layer) == null)
+                    break;
+            }
+            else if ((oldLayers & layer) == layer
+                    || layers.replace(name, oldLayers, oldLayers | layer))
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes the names of all properties from a layer.
+     *
+     * @param layer the layer to clear.
+     */
+    void clear(int layer)
+    {
+        for (String name : layers.keySet())
+            remove(name, layer);
+    }
+
+    /**
+     * Gets the current generation of the cached values, which is to be
+     * retrieved before the value of a property is computed in order to cache
+     * it with {@link #putValue(String, Value, long)}.
+     *
+     * @return the current generation of the cached values.
+     */
+    long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Gets the layers which contain the name of a property.
+     *
+     * @param name the name of the property.
+     * @return the bit set of the layers which contain <tt>name</tt>.
+     */
+    int getLayers(String name)
+    {
+        Integer l = layers.get(name);
+
+        return (l == null) ? 0 : l;
+    }
+
+    /**
+     * Gets the names of the properties in a specific layer.
+     *
+     * @param layer the layer.
+     * @return the names of the properties in <tt>layer</tt> in ascending
+     * order.
+     */
+    List<String> getNames(int layer)
+    {
+        List<String> names = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> e : layers.entrySet())
+        {
+            if ((e.getValue() & layer) != 0)
+                names.add(e.getKey());
+        }
+        return names;
+    }
+
+    /**
+     * Gets the names of the properties in any layer which start with a
+     * specific prefix.
+     *
+     * @param prefix the prefix.
+     * @param exactPrefixMatch <tt>true</tt> to only get the names which consist
+     * of <tt>prefix</tt>, a dot and a part without dots; <tt>false</tt> to
+     * get all names which start with <tt>prefix</tt>.
+     * @return the names of the properties which match <tt>prefix</tt> in
+     * ascending order.
+     */
+    List<String> getNamesByPrefix(String prefix, boolean exactPrefixMatch)
+    {
+        List<String> names = new ArrayList<>();
+        String from = exactPrefixMatch ? (prefix + '.') : prefix;
+
+        for (String name : layers.tailMap(from, true).keySet())
+        {
+            if (!name.startsWith(from))
+                break;
+            if (!exactPrefixMatch || name.indexOf('.', from.length()) == -1)
+                names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Gets the cached value of a property.
+     *
+     * @param name the name of the property.
+     * @return the cached value of the property or <tt>null</tt> if it is not
+     * cached.
+     */
+    Value getValue(String name)
+    {
+        return values.get(name);
+    }
+
+    /**
+     * Discards the cached value of a property. To be called after the property
+     * has been changed.
+     *
+     * @param name the name of the property.
+     */
+    void invalidate(String name)
+    {
+        generation.incrementAndGet();
+        values.remove(name);
+    }
+
+    /**
+     * Discards all cached values. To be called after any number of properties
+     * have been changed.
+     */
+    void invalidateAll()
+    {
+        generation.incrementAndGet();
+        values.clear();
+    }
+
+    /**
+     * Caches the value of a property unless a property has been changed since
+     * a specific generation.
+     *
+     * @param name the name of the property.
+     * @param value the value of the property.
+     * @param generation the generation returned by {@link #getGeneration()}
+     * before <tt>value</tt> was computed.
+     */
+    void putValue(String name, Value value, long generation)
+    {
+        values.put(name, value);
+        if (this.generation.get() != generation)
+            values.remove(name, value);
+    }
+
+    /**
+     * Removes the name of a property from a layer.
+     *
+     * @param name the name of the property.
+     * @param layer the layer to remove <tt>name</tt> from.
+     */
+    void remove(String name, int layer)
+    {
+        while (true)
+        {
+            Integer oldLayers = layers.get(name);
+
+            if (oldLayers == null || (oldLayers & layer) == 0)
+                break;
+
+            int newLayers = oldLayers & ~layer;
+
+            if ((newLayers == 0)
+                    ? layers.remove(name, oldLayers)
+                    : layers.replace(name, oldLayers, newLayers))
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * The cached value of a property.
+     */
+    static class Value
+    {
+        /**
+         * The value of the property parsed into a type requested by a typed
+         * getter or <tt>null</tt> if it has not been parsed.
+         */
+        private volatile Object parsed;
+
+        /**
+         * The value of the property converted into a <tt>String</tt> and
+         * trimmed or <tt>null</tt> if the property does not have a value or
+         * its value is blank.
+         */
+        final String string;
+
+        /**
+         * Initializes a new <tt>Value</tt> instance.
+         *
+         * @param string the value of the property converted into a
+         * <tt>String</tt> and trimmed or <tt>null</tt>.
+         */
+        Value(String string)
+        {
+            this.string = string;
+        }
+
+        /**
+         * Gets the value of the property parsed into a specific type.
+         *
+         * @param type the type.
+         * @return the value of the property parsed into <tt>type</tt> or
+         * <tt>null</tt> if it has not been parsed into <tt>type</tt>.
+         */
+        Object getParsed(Class<?> type)
+        {
+            Object parsed = this.parsed;
+
+            return type.isInstance(parsed) ? parsed : null;
+        }
+
+        /**
+         * Sets the value of the property parsed into a type.
+         *
+         * @param parsed the value of the property parsed into a type.
+         */
+        void setParsed(Object parsed)
+        {
+            this.parsed = parsed;
+        }
+    }
+}
@@ -224,6 +224,28 @@ public void levelChanged(long ssrc, int level)
         impl.levelChanged(ssrc, level);
     }
 
+    /**
+     * Notifies the algorithm implementation about the latest/current audio
+     * levels of multiple streams/speakers at once. The levels are passed on
+     * one at a time unless the implementation extends
+     * <tt>AbstractActiveSpeakerDetector</tt>.
+     *
+     * @param levels the levels in the format of
+     * {@link AbstractActiveSpeakerDetector#levelsChanged(long[])}
+     */
+    public void levelsChanged(long[] levels)
+    {
+        if (impl instanceof AbstractActiveSpeakerDetector)
+        {
+            ((AbstractActiveSpeakerDetector) impl).levelsChanged(levels);
+        }
+        else
+        {
+            for (int i = 0; i < levels.length - 1; i += 2)
+                impl.levelChanged(levels[i], (int) levels[i + 1]);
+        }
+    }
+
     /**
      * Makes sure that a specific class name starts with a package name.
      *
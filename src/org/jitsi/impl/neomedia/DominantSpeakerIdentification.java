@@ -19,6 +19,7 @@
 import java.lang.ref.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.*;
@@ -28,12 +29,26 @@
  * Implements {@link ActiveSpeakerDetector} with inspiration from the paper
  * &quot;Dominant Speaker Identification for Multipoint Videoconferencing&quot;
  * by Ilana Volfin and Israel Cohen.
+ * <p>
+ * The (audio) levels are reported without taking the lock of the
+ * <tt>DominantSpeakerIdentification</tt>: the <tt>Speaker</tt>s are looked up
+ * in a table which is replaced rather than modified and a level is merely
+ * written into a ring of its <tt>Speaker</tt>. The rings are drained and the
+ * (global) decisions are made by tasks of an executor which is shared by all
+ * <tt>DominantSpeakerIdentification</tt>s instead of a thread per instance.
+ * </p>
  *
  * @author Lyubomir Marinov
  */
 public class DominantSpeakerIdentification
     extends AbstractActiveSpeakerDetector
 {
+    /**
+     * The bits of {@link Speaker#activities} which correspond to the (audio)
+     * levels in the history of a <tt>Speaker</tt>.
+     */
+    private static final long ACTIVITIES_MASK;
+
     /**
      * The threshold of the relevant speech activities in the immediate
      * time-interval in &quot;global decision&quot;/&quot;Dominant speaker
@@ -71,8 +86,8 @@
     /**
      * The interval of time in milliseconds of idle execution of
      * <tt>DecisionMaker</tt> after which the latter should cease to exist. The
-     * interval does not have to be very long because the background threads
-     * running the <tt>DecisionMaker</tt>s are pooled anyway.
+     * interval does not have to be very long because the
+     * <tt>DecisionMaker</tt>s are merely tasks of a shared executor anyway.
      */
     private static final long DECISION_MAKER_IDLE_TIMEOUT = 15 * 1000;
 
@@ -85,16 +100,39 @@
         = DominantSpeakerIdentification.class.getName() + ".dominantSpeaker";
 
     /**
-     * The interval of time without a call to {@link Speaker#levelChanged(int)}
+     * The executor which runs the <tt>DecisionMaker</tt>s of all
+     * <tt>DominantSpeakerIdentification</tt>s.
+     */
+    private static final ScheduledExecutorService executor
+        = ExecutorUtils.newScheduledThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                true,
+                "DominantSpeakerIdentification");
+
+    /**
+     * The speech activity scores for the immediate time-interval indexed by
+     * the number of active sub-bands.
+     */
+    private static final double[] IMMEDIATE_SPEECH_ACTIVITY_SCORES;
+
+    /**
+     * The interval of time without a report of a <tt>Speaker</tt>'s level
      * after which <tt>DominantSpeakerIdentification</tt> assumes that there
      * will be no report of a <tt>Speaker</tt>'s level within a certain
      * time-frame. The default value of <tt>40</tt> is chosen in order to allow
      * non-aggressive fading of the last received or measured level and to be
      * greater than the most common RTP packet durations in milliseconds i.e.
-     * <tt>20</tt> and <tt>30</tt>. 
+     * <tt>20</tt> and <tt>30</tt>.
      */
     private static final long LEVEL_IDLE_TIMEOUT = 40;
 
+    /**
+     * The number of (audio) levels which may be reported for a
+     * <tt>Speaker</tt> between two executions of its <tt>DecisionMaker</tt>
+     * without any of them getting lost. A power of two.
+     */
+    private static final int LEVEL_RING_CAPACITY = 32;
+
     /**
      * The <tt>Logger</tt> used by the <tt>DominantSpeakerIdentification</tt>
      * class and its instances to print debug information.
@@ -108,6 +146,12 @@
      */
     private static final int LONG_COUNT = 1;
 
+    /**
+     * The speech activity scores for the long time-interval indexed by the
+     * number of active medium-length blocks.
+     */
+    private static final double[] LONG_SPEECH_ACTIVITY_SCORES;
+
     /**
      * The threshold in terms of active medium-length blocks which is used
      * during the speech activity evaluation step for the long time-interval.
@@ -144,6 +188,18 @@
      */
     private static final double MIN_SPEECH_ACTIVITY_SCORE = 0.0000000001D;
 
+    /**
+     * The bits of {@link Speaker#activities} which correspond to the (audio)
+     * levels of the latest medium-length block of a <tt>Speaker</tt>.
+     */
+    private static final long MEDIUM_MASK;
+
+    /**
+     * The speech activity scores for the medium time-interval indexed by the
+     * number of active frames.
+     */
+    private static final double[] MEDIUM_SPEECH_ACTIVITY_SCORES;
+
     /**
      * The threshold in terms of active sub-bands in a frame which is used
      * during the speech activity evaluation step for the medium length
@@ -157,7 +213,7 @@
      * <tt>DominantSpeakerIdentification</tt> does not really operate on the
      * representation of the signal in the frequency domain, it works with audio
      * levels derived from RFC 6465 &quot;A Real-time Transport Protocol (RTP)
-     * Header Extension for Mixer-to-Client Audio Level Indication&quot;. 
+     * Header Extension for Mixer-to-Client Audio Level Indication&quot;.
      */
     private static final int N1 = 13;
 
@@ -171,8 +227,8 @@
         = (MAX_LEVEL - MIN_LEVEL + N1 - 1) / N1;
 
     /**
-     * The number of frames (i.e. {@link Speaker#immediates} evaluated for
-     * medium speech activity.
+     * The number of frames (i.e. (audio) levels of a <tt>Speaker</tt>)
+     * evaluated for medium speech activity.
      */
     private static final int N2 = 5;
 
@@ -182,25 +238,44 @@
     private static final int N3 = 10;
 
     /**
-     * The interval of time without a call to {@link Speaker#levelChanged(int)}
+     * The interval of time without a report of a <tt>Speaker</tt>'s level
      * after which <tt>DominantSpeakerIdentification</tt> assumes that a
      * non-dominant <tt>Speaker</tt> is to be automatically removed from
      * {@link #speakers}.
      */
     private static final long SPEAKER_IDLE_TIMEOUT = 60 * 60 * 1000;
 
-    /**
-     * The pool of <tt>Thread</tt>s which run
-     * <tt>DominantSpeakerIdentification</tt>s.
-     */
-    private static final ExecutorService threadPool
-        = ExecutorUtils.newCachedThreadPool(
-                true,
-                "DominantSpeakerIdentification");
-
     static
     {
         DEBUG = logger.isDebugEnabled();
+
+        // The history of a Speaker is LONG_COUNT long time-intervals of N3
+        // medium-length blocks of N2 frames and the activities over it are
+        // kept in the bits of a long.
+        ACTIVITIES_MASK = (1L << (LONG_COUNT * N3 * N2)) - 1;
+        MEDIUM_MASK = (1L << N2) - 1;
+
+        // The speech activity scores depend on the number of active
+        // sub-bands/frames/blocks only so they are computed once for every
+        // such number rather than every time a decision is to be made.
+        IMMEDIATE_SPEECH_ACTIVITY_SCORES = new double[N1 + 1];
+        for (int vL = 0; vL < IMMEDIATE_SPEECH_ACTIVITY_SCORES.length; vL++)
+        {
+            IMMEDIATE_SPEECH_ACTIVITY_SCORES[vL]
+                = computeSpeechActivityScore(vL, N1, 0.5, 0.78);
+        }
+        MEDIUM_SPEECH_ACTIVITY_SCORES = new double[N2 + 1];
+        for (int vL = 0; vL < MEDIUM_SPEECH_ACTIVITY_SCORES.length; vL++)
+        {
+            MEDIUM_SPEECH_ACTIVITY_SCORES[vL]
+                = computeSpeechActivityScore(vL, N2, 0.5, 24);
+        }
+        LONG_SPEECH_ACTIVITY_SCORES = new double[N3 + 1];
+        for (int vL = 0; vL < LONG_SPEECH_ACTIVITY_SCORES.length; vL++)
+        {
+            LONG_SPEECH_ACTIVITY_SCORES[vL]
+                = computeSpeechActivityScore(vL, N3, 0.5, 47);
+        }
     }
 
     /**
@@ -229,33 +304,6 @@ private static long binomialCoefficient(int n, int r)
         return t;
     }
 
-    private static boolean computeBigs(
-            byte[] littles,
-            byte[] bigs,
-            int threshold)
-    {
-        int bigLength = bigs.length;
-        int littleLengthPerBig = littles.length / bigLength;
-        boolean changed = false;
-
-        for (int b = 0, l = 0; b < bigLength; b++)
-        {
-            byte sum = 0;
-
-            for (int lEnd = l + littleLengthPerBig; l < lEnd; l++)
-            {
-                if (littles[l] > threshold)
-                    sum++;
-            }
-            if (bigs[b] != sum)
-            {
-                bigs[b] = sum;
-                changed = true;
-            }
-        }
-        return changed;
-    }
-
     private static double computeSpeechActivityScore(
             int vL,
             int nR,
@@ -272,10 +320,10 @@ private static double computeSpeechActivityScore(
     }
 
     /**
-     * The background thread which repeatedly makes the (global) decision about
-     * speaker switches.
+     * The task of {@link #executor} which repeatedly makes the (global)
+     * decision about speaker switches.
      */
-    private DecisionMaker decisionMaker;
+    private volatile DecisionMaker decisionMaker;
 
     /**
      * The synchronization source identifier/SSRC of the dominant speaker in
@@ -295,7 +343,7 @@ private static double computeSpeechActivityScore(
      * The time in milliseconds of the most recent (audio) level report or
      * measurement (regardless of the <tt>Speaker</tt>).
      */
-    private long lastLevelChangedTime;
+    private volatile long lastLevelChangedTime;
 
     /**
      * The last/latest time at which this <tt>DominantSpeakerIdentification</tt>
@@ -325,9 +373,11 @@ private static double computeSpeechActivityScore(
 
     /**
      * The <tt>Speaker</tt>s in the multipoint conference associated with this
-     * <tt>ActiveSpeakerDetector</tt>.
+     * <tt>ActiveSpeakerDetector</tt>. Replaced (with the monitor of this
+     * instance held) rather than modified so that the <tt>Speaker</tt>s are
+     * looked up without synchronization.
      */
-    private final Map<Long,Speaker> speakers = new HashMap<Long,Speaker>();
+    private volatile SpeakerTable speakers = SpeakerTable.EMPTY;
 
     /**
      * Initializes a new <tt>DominantSpeakerIdentification</tT> instance.
@@ -352,11 +402,11 @@ public void addPropertyChangeListener(PropertyChangeListener listener)
 
     /**
      * Notifies this <tt>DominantSpeakerIdentification</tt> instance that a
-     * specific <tt>DecisionMaker</tt> has permanently stopped executing (in its
-     * background/daemon <tt>Thread</tt>). If the specified
-     * <tt>decisionMaker</tt> is the one utilized by this
-     * <tt>DominantSpeakerIdentification</tt> instance, the latter will update
-     * its state to reflect that the former has exited.
+     * specific <tt>DecisionMaker</tt> has permanently stopped executing (as a
+     * task of {@link #executor}). If the specified <tt>decisionMaker</tt> is
+     * the one utilized by this <tt>DominantSpeakerIdentification</tt>
+     * instance, the latter will update its state to reflect that the former
+     * has exited.
      *
      * @param decisionMaker the <tt>DecisionMaker</tt> which has exited
      */
@@ -398,11 +448,11 @@ public JSONObject doGetJSON()
                             : Long.valueOf(dominantSpeaker));
 
                 // speakers
-                Collection<Speaker> speakersCollection = this.speakers.values();
-                JSONObject[] speakersArray = new JSONObject[speakers.size()];
+                Speaker[] speakers = this.speakers.speakers;
+                JSONObject[] speakersArray = new JSONObject[speakers.length];
                 int i = 0;
 
-                for (Speaker speaker : speakersCollection)
+                for (Speaker speaker : speakers)
                 {
                     JSONObject speakerJSONObject = new JSONObject();
 
@@ -425,6 +475,16 @@ public JSONObject doGetJSON()
         return jsonObject;
     }
 
+    /**
+     * Applies the (audio) levels reported since the last invocation of the
+     * method to the histories of the respective <tt>Speaker</tt>s.
+     */
+    private synchronized void drainLevels()
+    {
+        for (Speaker speaker : speakers.speakers)
+            speaker.drainLevels();
+    }
+
     /**
      * Fires a new <tt>PropertyChangeEvent</tt> to the
      * <tt>PropertyChangeListener</tt>s registered with this
@@ -498,20 +558,23 @@ public long getDominantSpeaker()
      * @return the <tt>Speaker</tt> in this multipoint conference identified by
      * the specified <tt>ssrc</tt>
      */
-    private synchronized Speaker getOrCreateSpeaker(long ssrc)
+    private Speaker getOrCreateSpeaker(long ssrc)
     {
-        Long key = Long.valueOf(ssrc);
-        Speaker speaker = speakers.get(key);
+        Speaker speaker = speakers.get(ssrc);
 
         if (speaker == null)
         {
-            speaker = new Speaker(ssrc);
-            speakers.put(key, speaker);
+            synchronized (this)
+            {
+                SpeakerTable speakers = this.speakers;
 
-            // Since we've created a new Speaker in the multipoint conference,
-            // we'll very likely need to make a decision whether there have been
-            // speaker switch events soon.
-            maybeStartDecisionMaker();
+                speaker = speakers.get(ssrc);
+                if (speaker == null)
+                {
+                    speaker = new Speaker(ssrc);
+                    this.speakers = speakers.add(speaker);
+                }
+            }
         }
         return speaker;
     }
@@ -522,30 +585,70 @@ private synchronized Speaker getOrCreateSpeaker(long ssrc)
     @Override
     public void levelChanged(long ssrc, int level)
     {
-        Speaker speaker;
         long now = System.currentTimeMillis();
 
-        synchronized (this)
+        levelChanged(ssrc, level, now);
+        maybeStartDecisionMaker(now);
+    }
+
+    /**
+     * Notifies this <tt>DominantSpeakerIdentification</tt> about the audio
+     * level of a specific SSRC at a specific time. Does not start the
+     * <tt>DecisionMaker</tt>.
+     *
+     * @param ssrc the SSRC of the stream/speaker
+     * @param level the audio level of the stream/speaker with the specified
+     * <tt>ssrc</tt>
+     * @param time the (local <tt>System</tt>) time in milliseconds at which
+     * the specified <tt>level</tt> has been received or measured
+     */
+    void levelChanged(long ssrc, int level, long time)
+    {
+        getOrCreateSpeaker(ssrc).levelChanged(level, time);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Looks the <tt>Speaker</tt>s up in the same table and takes the current
+     * time once for all the specified levels.
+     */
+    @Override
+    public void levelsChanged(long[] levels)
+    {
+        long now = System.currentTimeMillis();
+
+        levelsChanged(levels, now);
+        maybeStartDecisionMaker(now);
+    }
+
+    /**
+     * Notifies this <tt>DominantSpeakerIdentification</tt> about the audio
+     * levels of multiple SSRCs at a specific time. Does not start the
+     * <tt>DecisionMaker</tt>.
+     *
+     * @param levels a <tt>long</tt> array in which the elements at the even
+     * indices specify the SSRCs and the elements at the odd indices specify
+     * the respective audio levels
+     * @param time the (local <tt>System</tt>) time in milliseconds at which
+     * the specified <tt>levels</tt> have been received or measured
+     */
+    void levelsChanged(long[] levels, long time)
+    {
+        SpeakerTable speakers = this.speakers;
+
+        for (int i = 0; i < levels.length - 1; i += 2)
         {
-            speaker = getOrCreateSpeaker(ssrc);
+            long ssrc = levels[i];
+            Speaker speaker = speakers.get(ssrc);
 
-            // Note that this ActiveSpeakerDetector is still in use. When it is
-            // not in use long enough, its DecisionMaker i.e. background thread
-            // will prepare itself and, consequently, this
-            // DominantSpeakerIdentification for garbage collection.
-            if (lastLevelChangedTime < now)
+            if (speaker == null)
             {
-                lastLevelChangedTime = now;
-
-                // A report or measurement of an audio level indicates that this
-                // DominantSpeakerIdentification is in use and, consequently,
-                // that it'll very likely need to make a decision whether there
-                // have been speaker switch events soon.
-                maybeStartDecisionMaker();
+                speaker = getOrCreateSpeaker(ssrc);
+                speakers = this.speakers;
             }
+            speaker.levelChanged((int) levels[i + 1], time);
         }
-        if (speaker != null)
-            speaker.levelChanged(level, now);
     }
 
     /**
@@ -562,41 +665,40 @@ private void makeDecision()
         synchronized (this)
         {
 
-        int speakerCount = speakers.size();
-        Long newDominantSSRC;
+        SpeakerTable speakerTable = this.speakers;
+        Speaker[] speakers = speakerTable.speakers;
+        int speakerCount = speakers.length;
+        long newDominantSSRC;
 
         if (speakerCount == 0)
         {
             // If there are no Speakers in a multipoint conference, then there
             // are no speaker switch events to detect.
-            newDominantSSRC = null;
+            newDominantSSRC = -1;
         }
         else if (speakerCount == 1)
         {
             // If there is a single Speaker in a multipoint conference, then
             // his/her speech surely dominates.
-            newDominantSSRC = speakers.keySet().iterator().next();
+            newDominantSSRC = speakers[0].ssrc;
         }
         else
         {
             Speaker dominantSpeaker
                 = (dominantSSRC == null)
                     ? null
-                    : speakers.get(dominantSSRC);
+                    : speakerTable.get(dominantSSRC);
 
             // If there is no dominant speaker, nominate one at random and then
             // let the other speakers compete with the nominated one.
             if (dominantSpeaker == null)
             {
-                Map.Entry<Long,Speaker> s
-                    = speakers.entrySet().iterator().next();
-
-                dominantSpeaker = s.getValue();
-                newDominantSSRC = s.getKey();
+                dominantSpeaker = speakers[0];
+                newDominantSSRC = dominantSpeaker.ssrc;
             }
             else
             {
-                newDominantSSRC = null;
+                newDominantSSRC = -1;
             }
 
             dominantSpeaker.evaluateSpeechActivityScores();
@@ -607,10 +709,8 @@ else if (speakerCount == 1)
             // time-interval.
             double newDominantC2 = C2;
 
-            for (Map.Entry<Long,Speaker> s : speakers.entrySet())
+            for (Speaker speaker : speakers)
             {
-                Speaker speaker = s.getValue();
-
                 // The dominant speaker does not compete with itself. In other
                 // words, there is no use detecting a speaker switch from the
                 // dominant speaker to the dominant speaker. Technically, the
@@ -644,14 +744,16 @@ else if (speakerCount == 1)
                     // among themselves by their relative speech activities in
                     // the middle time-interval.
                     newDominantC2 = c2;
-                    newDominantSSRC = s.getKey();
+                    newDominantSSRC = speaker.ssrc;
                 }
             }
         }
-        if ((newDominantSSRC != null) && !newDominantSSRC.equals(dominantSSRC))
+        if ((newDominantSSRC != -1)
+                && ((dominantSSRC == null)
+                        || (newDominantSSRC != dominantSSRC)))
         {
             oldDominantSpeakerValue = dominantSSRC;
-            dominantSSRC = newDominantSSRC;
+            dominantSSRC = Long.valueOf(newDominantSSRC);
             newDominantSpeakerValue = dominantSSRC;
         }
 
@@ -669,16 +771,15 @@ else if (speakerCount == 1)
     }
 
     /**
-     * Starts a background thread which is to repeatedly make the (global)
-     * decision about speaker switches if such a background thread has not been
-     * started yet and if the current state of this
-     * <tt>DominantSpeakerIdentification</tt> justifies the start of such a
-     * background thread (e.g. there is at least one <tt>Speaker</tt> in this
-     * multipoint conference). 
+     * Schedules a task which is to repeatedly make the (global) decision about
+     * speaker switches if such a task has not been scheduled yet and if the
+     * current state of this <tt>DominantSpeakerIdentification</tt> justifies
+     * the scheduling of such a task (e.g. there is at least one
+     * <tt>Speaker</tt> in this multipoint conference).
      */
     private synchronized void maybeStartDecisionMaker()
     {
-        if ((this.decisionMaker == null) && !speakers.isEmpty())
+        if ((this.decisionMaker == null) && (speakers.speakers.length != 0))
         {
             DecisionMaker decisionMaker = new DecisionMaker(this);
             boolean scheduled = false;
@@ -686,7 +787,7 @@ private synchronized void maybeStartDecisionMaker()
             this.decisionMaker = decisionMaker;
             try
             {
-                threadPool.execute(decisionMaker);
+                executor.execute(decisionMaker);
                 scheduled = true;
             }
             finally
@@ -697,6 +798,31 @@ private synchronized void maybeStartDecisionMaker()
         }
     }
 
+    /**
+     * Notes that this <tt>ActiveSpeakerDetector</tt> is still in use at a
+     * specific time and starts its <tt>DecisionMaker</tt> if necessary. When
+     * it is not in use long enough, its <tt>DecisionMaker</tt> will prepare
+     * itself and, consequently, this <tt>DominantSpeakerIdentification</tt>
+     * for garbage collection.
+     *
+     * @param now the time at which (audio) levels have been reported
+     */
+    private void maybeStartDecisionMaker(long now)
+    {
+        if (lastLevelChangedTime < now)
+        {
+            lastLevelChangedTime = now;
+
+            // A report or measurement of an audio level indicates that this
+            // DominantSpeakerIdentification is in use and, consequently, that
+            // it'll very likely need to make a decision whether there have been
+            // speaker switch events soon. The monitor of this instance is not
+            // taken while the DecisionMaker is running.
+            if (decisionMaker == null)
+                maybeStartDecisionMaker();
+        }
+    }
+
     /**
      * Removes a <tt>PropertyChangeListener</tt> from the list of listeners
      * interested in and notified about changes in the values of the properties
@@ -712,16 +838,20 @@ public void removePropertyChangeListener(PropertyChangeListener listener)
     }
 
     /**
-     * Runs in the background/daemon <tt>Thread</tt> of {@link #decisionMaker}
-     * and makes the decision whether there has been a speaker switch event.
+     * Runs in {@link #decisionMaker} and makes the decision whether there has
+     * been a speaker switch event.
      *
-     * @return a negative integer if the <tt>DecisionMaker</tt> is to exit or
-     * a non-negative integer to specify the time in milliseconds until the next
-     * execution of the <tt>DecisionMaker</tt>
+     * @param now the time in milliseconds at which the method is invoked
+     * @return a non-negative integer to specify the time in milliseconds until
+     * the next execution of the <tt>DecisionMaker</tt>
      */
-    private long runInDecisionMaker()
+    long runInDecisionMaker(long now)
     {
-        long now = System.currentTimeMillis();
+        // Apply the levels reported since the previous execution first so that
+        // the timeouts and the decision below see them as if they had been
+        // applied as soon as they were reported.
+        drainLevels();
+
         long levelIdleTimeout = LEVEL_IDLE_TIMEOUT - (now - lastLevelIdleTime);
         long sleep = 0;
 
@@ -760,9 +890,8 @@ private long runInDecisionMaker()
     }
 
     /**
-     * Runs in the background/daemon <tt>Thread</tt> of a specific
-     * <tt>DecisionMaker</tt> and makes the decision whether there has been a
-     * speaker switch event.
+     * Runs in a specific <tt>DecisionMaker</tt> and makes the decision whether
+     * there has been a speaker switch event.
      *
      * @param decisionMaker the <tt>DecisionMaker</tt> invoking the method
      * @return a negative integer if the <tt>decisionMaker</tt> is to exit or
@@ -791,7 +920,7 @@ long runInDecisionMaker(DecisionMaker decisionMaker)
             }
         }
 
-        return runInDecisionMaker();
+        return runInDecisionMaker(System.currentTimeMillis());
     }
 
     /**
@@ -807,11 +936,10 @@ long runInDecisionMaker(DecisionMaker decisionMaker)
      */
     private synchronized void timeoutIdleLevels(long now)
     {
-        Iterator<Map.Entry<Long,Speaker>> i = speakers.entrySet().iterator();
+        SpeakerTable speakers = this.speakers;
 
-        while (i.hasNext())
+        for (Speaker speaker : speakers.speakers)
         {
-            Speaker speaker = i.next().getValue();
             long idle = now - speaker.getLastLevelChangedTime();
 
             // Remove a non-dominant Speaker if he/she has been idle for far too
@@ -820,21 +948,22 @@ private synchronized void timeoutIdleLevels(long now)
                     && ((dominantSSRC == null)
                             || (speaker.ssrc != dominantSSRC)))
             {
-                i.remove();
+                speakers = speakers.remove(speaker);
             }
             else if (LEVEL_IDLE_TIMEOUT < idle)
             {
                 speaker.levelTimedOut();
             }
         }
+        this.speakers = speakers;
     }
 
     /**
-     * Represents the background thread which repeatedly makes the (global)
-     * decision about speaker switches. Weakly references an associated
+     * Represents the task of {@link #executor} which repeatedly makes the
+     * (global) decision about speaker switches. Weakly references an associated
      * <tt>DominantSpeakerIdentification</tt> instance in order to eventually
      * detect that the multipoint conference has actually expired and that the
-     * background <tt>Thread</tt> should perish.
+     * task should no longer be scheduled.
      *
      * @author Lyubomir Marinov
      */
@@ -843,19 +972,17 @@ else if (LEVEL_IDLE_TIMEOUT < idle)
     {
         /**
          * The <tt>DominantSpeakerIdentification</tt> instance which is
-         * repeatedly run into this background thread in order to make the
-         * (global) decision about speaker switches. It is a
-         * <tt>WeakReference</tt> in order to eventually detect that the
-         * mulipoint conference has actually expired and that this background
-         * <tt>Thread</tt> should perish.
+         * repeatedly run by this task in order to make the (global) decision
+         * about speaker switches. It is a <tt>WeakReference</tt> in order to
+         * eventually detect that the mulipoint conference has actually expired
+         * and that this task should no longer be scheduled.
          */
         private final WeakReference<DominantSpeakerIdentification> algorithm;
 
         /**
          * Initializes a new <tt>DecisionMaker</tt> instance which is to
          * repeatedly run a specific <tt>DominantSpeakerIdentification</tt>
-         * into a background thread in order to make the (global) decision about
-         * speaker switches.
+         * in order to make the (global) decision about speaker switches.
          *
          * @param algorithm the <tt>DominantSpeakerIdentification</tt> to be
          * repeatedly run by the new instance in order to make the (global)
@@ -868,64 +995,57 @@ public DecisionMaker(DominantSpeakerIdentification algorithm)
         }
 
         /**
-         * Repeatedly runs {@link #algorithm} i.e. makes the (global) decision
-         * about speaker switches until the multipoint conference expires.
+         * Runs {@link #algorithm} i.e. makes the (global) decision about
+         * speaker switches and schedules the next execution of this task
+         * until the multipoint conference expires.
          */
         @Override
         public void run()
         {
+            boolean scheduled = false;
+
             try
             {
-                do
-                {
-                    DominantSpeakerIdentification algorithm
-                        = this.algorithm.get();
+                DominantSpeakerIdentification algorithm = this.algorithm.get();
 
-                    if (algorithm == null)
+                if (algorithm != null)
+                {
+                    long sleep = algorithm.runInDecisionMaker(this);
+
+                    // A negative sleep value is explicitly supported i.e.
+                    // expected and is contracted to mean that this
+                    // DecisionMaker is instructed by the algorithm to commit
+                    // suicide. Otherwise, the scheduled task references the
+                    // DominantSpeakerIdentification instance weakly only while
+                    // it is waiting.
+                    if (sleep >= 0)
                     {
-                        break;
-                    }
-                    else
-                    {
-                        long sleep = algorithm.runInDecisionMaker(this);
-
-                        // A negative sleep value is explicitly supported i.e.
-                        // expected and is contracted to mean that this
-                        // DecisionMaker is instructed by the algorithm to
-                        // commit suicide.
-                        if (sleep < 0)
-                        {
-                            break;
-                        }
-                        else if (sleep > 0)
-                        {
-                            // Before sleeping, make the currentThread release
-                            // its reference to the associated
-                            // DominantSpeakerIdentification instance.
-                            algorithm = null;
-                            try
-                            {
-                                Thread.sleep(sleep);
-                            }
-                            catch (InterruptedException ie)
-                            {
-                                // Continue with the next iteration.
-                            }
-                        }
+                        executor.schedule(this, sleep, TimeUnit.MILLISECONDS);
+                        scheduled = true;
                     }
                 }
-                while (true);
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                else
+                    logger.error("Failed to identify the dominant speaker.", t);
             }
             finally
             {
-                // Notify the algorithm that this background thread will no
-                // longer run it in order to make the (global) decision about
-                // speaker switches. Subsequently, the algorithm may decide to
-                // spawn another background thread to run the same task.
-                DominantSpeakerIdentification algorithm = this.algorithm.get();
+                // Notify the algorithm that this task will no longer run it in
+                // order to make the (global) decision about speaker switches.
+                // Subsequently, the algorithm may decide to schedule another
+                // task to do the same.
+                if (!scheduled)
+                {
+                    DominantSpeakerIdentification algorithm
+                        = this.algorithm.get();
 
-                if (algorithm != null)
-                    algorithm.decisionMakerExited(this);
+                    if (algorithm != null)
+                        algorithm.decisionMakerExited(this);
+                }
             }
         }
     }
@@ -971,12 +1091,31 @@ protected Object getPropertyChangeSource(
     /**
      * Represents a speaker in a multipoint conference identified by
      * synchronization source identifier/SSRC.
+     * <p>
+     * The (audio) levels are reported through {@link #levelChanged(int, long)}
+     * into a ring which does not require synchronization. The rest of the
+     * state is accessed with the monitor of the associated
+     * <tt>DominantSpeakerIdentification</tt> held.
+     * </p>
      *
      * @author Lyubomir Marinov
      */
     private static class Speaker
     {
-        private final byte[] immediates = new byte[LONG_COUNT * N3 * N2];
+        /**
+         * The indicators which determine whether the (audio) levels in the
+         * history of this <tt>Speaker</tt> are active in terms of sub-bands
+         * (i.e. contribute to the medium speech activity). Bit <tt>i</tt>
+         * corresponds to the <tt>i</tt>th latest level.
+         */
+        private long activities;
+
+        /**
+         * The indicator which determines whether the history of this
+         * <tt>Speaker</tt> has changed since the speech activity scores were
+         * evaluated last.
+         */
+        private boolean changed = false;
 
         /**
          * The speech activity score of this <tt>Speaker</tt> for the immediate
@@ -985,23 +1124,49 @@ protected Object getPropertyChangeSource(
         private double immediateSpeechActivityScore = MIN_SPEECH_ACTIVITY_SCORE;
 
         /**
-         * The time in milliseconds of the most recent invocation of
-         * {@link #levelChanged(int)} i.e. the last time at which an actual
-         * (audio) level was reported or measured for this <tt>Speaker</tt>. If
-         * no level is reported or measured for this <tt>Speaker</tt> long
-         * enough i.e. {@link #LEVEL_IDLE_TIMEOUT}, the associated
-         * <tt>DominantSpeakerIdentification</tt> will presume that this
-         * <tt>Speaker</tt> was muted for the duration of a certain frame.
+         * The time in milliseconds of the most recent (audio) level applied to
+         * the history of this <tt>Speaker</tt> i.e. the last time at which an
+         * actual (audio) level was reported or measured for this
+         * <tt>Speaker</tt>. If no level is reported or measured for this
+         * <tt>Speaker</tt> long enough i.e. {@link #LEVEL_IDLE_TIMEOUT}, the
+         * associated <tt>DominantSpeakerIdentification</tt> will presume that
+         * this <tt>Speaker</tt> was muted for the duration of a certain frame.
          */
         private long lastLevelChangedTime = System.currentTimeMillis();
 
         /**
-         * The (history of) audio levels received or measured for this
-         * <tt>Speaker</tt>.
+         * The index in {@link #levels} of the latest (audio) level.
+         */
+        private int latestLevelIndex = 0;
+
+        /**
+         * The ring of the (audio) levels reported for this <tt>Speaker</tt>
+         * which have not been applied to its history yet. An element encodes
+         * the time of a report in its upper bits and the level in its lower
+         * <tt>8</tt> bits or is <tt>0</tt> if it has been applied.
+         */
+        private final AtomicLongArray levelRing
+            = new AtomicLongArray(LEVEL_RING_CAPACITY);
+
+        /**
+         * The index in {@link #levelRing} (modulo its length) of the next
+         * (audio) level to apply to the history of this <tt>Speaker</tt>.
+         */
+        private int levelRingReadIndex = 0;
+
+        /**
+         * The index in {@link #levelRing} (modulo its length) at which the
+         * next (audio) level reported for this <tt>Speaker</tt> is to be
+         * written.
          */
-        private final byte[] levels;
+        private final AtomicInteger levelRingWriteIndex = new AtomicInteger();
 
-        private final byte[] longs = new byte[LONG_COUNT];
+        /**
+         * The (history of) audio levels received or measured for this
+         * <tt>Speaker</tt> as a ring which starts at
+         * {@link #latestLevelIndex}.
+         */
+        private final byte[] levels = new byte[LONG_COUNT * N3 * N2];
 
         /**
          * The speech activity score of this <tt>Speaker</tt> for the long
@@ -1009,8 +1174,6 @@ protected Object getPropertyChangeSource(
          */
         private double longSpeechActivityScore = MIN_SPEECH_ACTIVITY_SCORE;
 
-        private final byte[] mediums = new byte[LONG_COUNT * N3];
-
         /**
          * The speech activity score of this <tt>Speaker</tt> for the medium
          * time-interval.
@@ -1057,97 +1220,104 @@ protected Object getPropertyChangeSource(
         public Speaker(long ssrc)
         {
             this.ssrc = ssrc;
-
-            levels = new byte[immediates.length];
         }
 
-        private boolean computeImmediates()
+        /**
+         * Applies the (audio) levels reported for this <tt>Speaker</tt> since
+         * the last invocation of the method to its history. If more than
+         * {@link #LEVEL_RING_CAPACITY} levels have been reported, the oldest of
+         * them are lost.
+         */
+        void drainLevels()
         {
-            // The minimum audio level received or measured for this Speaker is
-            // the level of "silence" for this Speaker. Since the various
-            // Speakers may differ in their levels of "silence", put all
-            // Speakers on equal footing by replacing the individual levels of
-            // "silence" with the uniform level of absolute silence.
-            byte[] immediates = this.immediates;
-            byte[] levels = this.levels;
-            byte minLevel = (byte) (this.minLevel + N1_SUBUNIT_LENGTH);
-            boolean changed = false;
+            int writeIndex = levelRingWriteIndex.get();
+            int readIndex = levelRingReadIndex;
 
-            for (int i = 0; i < immediates.length; ++i)
-            {
-                byte level = levels[i];
+            if (writeIndex - readIndex > LEVEL_RING_CAPACITY)
+                readIndex = writeIndex - LEVEL_RING_CAPACITY;
 
-                if (level < minLevel)
-                    level = MIN_LEVEL;
+            for (; readIndex != writeIndex; readIndex++)
+            {
+                long level
+                    = levelRing.getAndSet(
+                            readIndex & (LEVEL_RING_CAPACITY - 1),
+                            0);
 
-                byte immediate = (byte) (level / N1_SUBUNIT_LENGTH);
+                // The level has been claimed by a concurrent report but has
+                // not been written yet.
+                if (level == 0)
+                    break;
 
-                if (immediates[i] != immediate)
-                {
-                    immediates[i] = immediate;
-                    changed = true;
-                }
+                pushLevel((byte) (level & 0xFF), level >>> 8);
             }
-            return changed;
-        }
-
-        private boolean computeLongs()
-        {
-            return computeBigs(mediums, longs, LONG_THRESHOLD);
-        }
-
-        private boolean computeMediums()
-        {
-            return computeBigs(immediates, mediums, MEDIUM_THRESHOLD);
+            levelRingReadIndex = readIndex;
         }
 
         /**
-         * Computes/evaluates the speech activity score of this <tt>Speaker</tt>
-         * for the immediate time-interval.
+         * Evaluates the speech activity scores of this <tt>Speaker</tt> for the
+         * immediate, medium, and long time-intervals. Invoked when it is time
+         * to decide whether there has been a speaker switch event.
          */
-        private void evaluateImmediateSpeechActivityScore()
+        void evaluateSpeechActivityScores()
         {
+            if (!changed)
+                return;
+            changed = false;
+
             immediateSpeechActivityScore
-                = computeSpeechActivityScore(immediates[0], N1, 0.5, 0.78);
-        }
+                = IMMEDIATE_SPEECH_ACTIVITY_SCORES[
+                        getImmediate(levels[latestLevelIndex])];
+            // The number of active frames in the latest medium-length block.
+            mediumSpeechActivityScore
+                = MEDIUM_SPEECH_ACTIVITY_SCORES[
+                        Long.bitCount(activities & MEDIUM_MASK)];
 
-        /**
-         * Computes/evaluates the speech activity score of this <tt>Speaker</tt>
-         * for the long time-interval.
-         */
-        private void evaluateLongSpeechActivityScore()
-        {
+            // The number of active medium-length blocks in the latest long
+            // time-interval.
+            int longActivity = 0;
+
+            for (int b = 0; b < N3; b++)
+            {
+                long medium = (activities >>> (b * N2)) & MEDIUM_MASK;
+
+                if (Long.bitCount(medium) > LONG_THRESHOLD)
+                    longActivity++;
+            }
             longSpeechActivityScore
-                = computeSpeechActivityScore(longs[0], N3, 0.5, 47);
+                = LONG_SPEECH_ACTIVITY_SCORES[longActivity];
         }
 
         /**
-         * Computes/evaluates the speech activity score of this <tt>Speaker</tt>
-         * for the medium time-interval.
+         * Determines whether a specific (audio) level received or measured for
+         * this <tt>Speaker</tt> is active in terms of sub-bands.
+         *
+         * @param level the audio level
+         * @return <tt>1</tt> if <tt>level</tt> is active; otherwise,
+         * <tt>0</tt>
          */
-        private void evaluateMediumSpeechActivityScore()
+        private long getActivity(byte level)
         {
-            mediumSpeechActivityScore
-                = computeSpeechActivityScore(mediums[0], N2, 0.5, 24);
+            return (getImmediate(level) > MEDIUM_THRESHOLD) ? 1 : 0;
         }
 
         /**
-         * Evaluates the speech activity scores of this <tt>Speaker</tt> for the
-         * immediate, medium, and long time-intervals. Invoked when it is time
-         * to decide whether there has been a speaker switch event.
+         * Gets the number of active sub-bands of a specific (audio) level
+         * received or measured for this <tt>Speaker</tt>.
+         *
+         * @param level the audio level
+         * @return the number of active sub-bands of <tt>level</tt>
          */
-        synchronized void evaluateSpeechActivityScores()
+        private int getImmediate(byte level)
         {
-            if (computeImmediates())
-            {
-                evaluateImmediateSpeechActivityScore();
-                if (computeMediums())
-                {
-                    evaluateMediumSpeechActivityScore();
-                    if (computeLongs())
-                        evaluateLongSpeechActivityScore();
-                }
-            }
+            // The minimum audio level received or measured for this Speaker is
+            // the level of "silence" for this Speaker. Since the various
+            // Speakers may differ in their levels of "silence", put all
+            // Speakers on equal footing by replacing the individual levels of
+            // "silence" with the uniform level of absolute silence.
+            if (level < (byte) (minLevel + N1_SUBUNIT_LENGTH))
+                level = MIN_LEVEL;
+
+            return level / N1_SUBUNIT_LENGTH;
         }
 
         /**
@@ -1157,11 +1327,23 @@ synchronized void evaluateSpeechActivityScores()
          * @return the time in milliseconds at which an actual (audio) level
          * was reported or measured for this <tt>Speaker</tt> last
          */
-        public synchronized long getLastLevelChangedTime()
+        public long getLastLevelChangedTime()
         {
             return lastLevelChangedTime;
         }
 
+        /**
+         * Gets an (audio) level in the history of this <tt>Speaker</tt>.
+         *
+         * @param i <tt>0</tt> for the latest level, <tt>1</tt> for the one
+         * before it, etc.
+         * @return the <tt>i</tt>th latest level of this <tt>Speaker</tt>
+         */
+        private byte getLevel(int i)
+        {
+            return levels[(latestLevelIndex + i) % levels.length];
+        }
+
         /**
          * Gets the (history of) audio levels received or measured for this
          * <tt>Speaker</tt>.
@@ -1171,18 +1353,13 @@ public synchronized long getLastLevelChangedTime()
          */
         byte[] getLevels()
         {
-            // The levels of Speaker are internally maintained starting with the
-            // last audio level received or measured for this Speaker and ending
-            // with the first audio level received or measured for this Speaker.
-            // Unfortunately, the method is expected to return levels in reverse
-            // order.
-            byte[] src = this.levels;
-            byte[] dst = new byte[src.length];
-
-            for (int s = src.length - 1, d = 0; d < dst.length; --s, ++d)
-            {
-                dst[d] = src[s];
-            }
+            // The levels are returned starting with the first audio level
+            // received or measured for this Speaker and ending with the last
+            // one.
+            byte[] dst = new byte[levels.length];
+
+            for (int d = 0; d < dst.length; ++d)
+                dst[d] = getLevel(dst.length - 1 - d);
             return dst;
         }
 
@@ -1213,27 +1390,50 @@ byte[] getLevels()
 
         /**
          * Notifies this <tt>Speaker</tt> that a new audio level has been
-         * received or measured.
+         * received or measured at a specific time. The level is applied to
+         * the history of this <tt>Speaker</tt> by the next
+         * {@link #drainLevels()}. May be invoked concurrently.
          *
          * @param level the audio level which has been received or measured for
          * this <tt>Speaker</tt>
+         * @param time the (local <tt>System</tt>) time in milliseconds at which
+         * the specified <tt>level</tt> has been received or measured
          */
-        @SuppressWarnings("unused")
-        public void levelChanged(int level)
+        public void levelChanged(int level, long time)
         {
-            levelChanged(level, System.currentTimeMillis());
+            // Ensure that the specified level is within the supported range.
+            if (level < MIN_LEVEL)
+                level = MIN_LEVEL;
+            else if (level > MAX_LEVEL)
+                level = MAX_LEVEL;
+
+            int writeIndex = levelRingWriteIndex.getAndIncrement();
+
+            levelRing.set(
+                    writeIndex & (LEVEL_RING_CAPACITY - 1),
+                    (time << 8) | level);
         }
 
         /**
-         * Notifies this <tt>Speaker</tt> that a new audio level has been
-         * received or measured at a specific time.
+         * Notifies this <tt>Speaker</tt> that no new audio level has been
+         * received or measured for a certain time which very likely means that
+         * this <tt>Speaker</tt> will not have a level within a certain
+         * time-frame of a <tt>DominantSpeakerIdentification</tt> algorithm.
+         */
+        public void levelTimedOut()
+        {
+            pushLevel((byte) MIN_LEVEL, lastLevelChangedTime);
+        }
+
+        /**
+         * Pushes an audio level into the history of this <tt>Speaker</tt>.
          *
          * @param level the audio level which has been received or measured for
          * this <tt>Speaker</tt>
          * @param time the (local <tt>System</tt>) time in milliseconds at which
          * the specified <tt>level</tt> has been received or measured
          */
-        public synchronized void levelChanged(int level, long time)
+        private void pushLevel(byte level, long time)
         {
             // It sounds relatively reasonable that late audio levels should
             // better be discarded.
@@ -1241,37 +1441,38 @@ public synchronized void levelChanged(int level, long time)
             {
                 lastLevelChangedTime = time;
 
-                // Ensure that the specified level is within the supported
-                // range.
-                byte b;
-
-                if (level < MIN_LEVEL)
-                    b = MIN_LEVEL;
-                else if (level > MAX_LEVEL)
-                    b = MAX_LEVEL;
-                else
-                    b = (byte) level;
-
                 // Push the specified level into the history of audio levels
                 // received or measured for this Speaker.
-                System.arraycopy(levels, 0, levels, 1, levels.length - 1);
-                levels[0] = b;
+                if (latestLevelIndex == 0)
+                    latestLevelIndex = levels.length;
+                latestLevelIndex--;
+                levels[latestLevelIndex] = level;
 
                 // Determine the minimum level received or measured for this
                 // Speaker.
-                updateMinLevel(b);
-            }
-        }
+                byte oldMinLevel = minLevel;
 
-        /**
-         * Notifies this <tt>Speaker</tt> that no new audio level has been
-         * received or measured for a certain time which very likely means that
-         * this <tt>Speaker</tt> will not have a level within a certain
-         * time-frame of a <tt>DominantSpeakerIdentification</tt> algorithm.
-         */
-        public synchronized void levelTimedOut()
-        {
-            levelChanged(MIN_LEVEL, lastLevelChangedTime);
+                updateMinLevel(level);
+
+                // Keep the activities in sync with the history.
+                if (minLevel == oldMinLevel)
+                {
+                    activities
+                        = ((activities << 1) | getActivity(level))
+                            & ACTIVITIES_MASK;
+                }
+                else
+                {
+                    // The minimum level affects whether any level is active.
+                    activities = 0;
+                    for (int i = levels.length - 1; i >= 0; i--)
+                    {
+                        activities
+                            = (activities << 1) | getActivity(getLevel(i));
+                    }
+                }
+                changed = true;
+            }
         }
 
         /**
@@ -1336,4 +1537,132 @@ else if (newMinLevel > MAX_LEVEL)
             }
         }
     }
+
+    /**
+     * The <tt>Speaker</tt>s of a multipoint conference indexed by SSRC in an
+     * open addressing hash table of primitive SSRCs. Never modified once
+     * initialized so that it is read without synchronization.
+     */
+    private static class SpeakerTable
+    {
+        /**
+         * The <tt>SpeakerTable</tt> without <tt>Speaker</tt>s.
+         */
+        static final SpeakerTable EMPTY = new SpeakerTable(new Speaker[0]);
+
+        /**
+         * Gets the index of the slot at which the lookup of a specific SSRC
+         * starts.
+         *
+         * @param ssrc the SSRC
+         * @param mask the number of slots minus one
+         * @return the index of the slot at which the lookup of <tt>ssrc</tt>
+         * starts
+         */
+        private static int getSlot(long ssrc, int mask)
+        {
+            int h = (int) ssrc * 0x9E3779B9;
+
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * The <tt>Speaker</tt>s of the slots or <tt>null</tt> for the empty
+         * slots.
+         */
+        private final Speaker[] slots;
+
+        /**
+         * The <tt>Speaker</tt>s in the order in which they have been added.
+         */
+        final Speaker[] speakers;
+
+        /**
+         * The SSRCs of the <tt>Speaker</tt>s of the slots.
+         */
+        private final long[] ssrcs;
+
+        /**
+         * Initializes a new <tt>SpeakerTable</tt> with specific
+         * <tt>Speaker</tt>s.
+         *
+         * @param speakers the <tt>Speaker</tt>s of the new instance which have
+         * distinct SSRCs
+         */
+        private SpeakerTable(Speaker[] speakers)
+        {
+            int capacity = 2;
+
+            while (capacity < 2 * speakers.length)
+                capacity <<= 1;
+
+            int mask = capacity - 1;
+
+            this.slots = new Speaker[capacity];
+            this.speakers = speakers;
+            this.ssrcs = new long[capacity];
+            for (Speaker speaker : speakers)
+            {
+                int slot = getSlot(speaker.ssrc, mask);
+
+                while (slots[slot] != null)
+                    slot = (slot + 1) & mask;
+                slots[slot] = speaker;
+                ssrcs[slot] = speaker.ssrc;
+            }
+        }
+
+        /**
+         * Initializes a new <tt>SpeakerTable</tt> with the <tt>Speaker</tt>s
+         * of this instance and a specific <tt>Speaker</tt>.
+         *
+         * @param speaker the <tt>Speaker</tt> to add
+         * @return the new <tt>SpeakerTable</tt>
+         */
+        SpeakerTable add(Speaker speaker)
+        {
+            Speaker[] speakers
+                = Arrays.copyOf(this.speakers, this.speakers.length + 1);
+
+            speakers[this.speakers.length] = speaker;
+            return new SpeakerTable(speakers);
+        }
+
+        /**
+         * Gets the <tt>Speaker</tt> identified by a specific SSRC.
+         *
+         * @param ssrc the SSRC of the <tt>Speaker</tt> to get
+         * @return the <tt>Speaker</tt> identified by <tt>ssrc</tt> or
+         * <tt>null</tt> if this table does not contain such a
+         * <tt>Speaker</tt>
+         */
+        Speaker get(long ssrc)
+        {
+            int mask = slots.length - 1;
+
+            for (int slot = getSlot(ssrc, mask);; slot = (slot + 1) & mask)
+            {
+                Speaker speaker = slots[slot];
+
+                if ((speaker == null) || (ssrcs[slot] == ssrc))
+                    return speaker;
+            }
+        }
+
+        /**
+         * Initializes a new <tt>SpeakerTable</tt> with the <tt>Speaker</tt>s
+         * of this instance except a specific <tt>Speaker</tt>.
+         *
+         * @param speaker the <tt>Speaker</tt> to remove
+         * @return the new <tt>SpeakerTable</tt>
+         */
+        SpeakerTable remove(Speaker speaker)
+        {
+            List<Speaker> speakers
+                = new ArrayList<>(Arrays.asList(this.speakers));
+
+            speakers.remove(speaker);
+            return new SpeakerTable(speakers.toArray(new Speaker[0]));
+        }
+    }
 }
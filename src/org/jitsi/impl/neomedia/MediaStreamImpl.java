@@ -313,6 +313,23 @@ else if (MediaDeviceSession.SSRC_LIST.equals(propertyName))
      */
     private AbsSendTimeEngine absSendTimeEngine;
 
+    /**
+     * The transformer which implements transport-wide congestion control
+     * (stamps the transport-wide sequence numbers, sends and consumes the
+     * transport-cc feedback). Shared with the other <tt>MediaStream</tt>s
+     * bundled on the same transport.
+     */
+    private TransportCCEngine transportCCEngine;
+
+    /**
+     * The <tt>TransportCCEngine</tt>s shared by the <tt>MediaStream</tt>s
+     * bundled on a transport. The <tt>MediaStream</tt>s of a transport share
+     * its <tt>SrtpControl</tt> which, consequently, identifies the transport.
+     */
+    private static final Map<SrtpControl,TransportCCEngine>
+        transportCCEngines
+            = new HashMap<>();
+
     /**
      * The transformer which caches outgoing RTP packets for this
      * {@link MediaStream}.
@@ -466,6 +483,18 @@ else if (Constants.ULPFEC.equals(encoding))
                     fecTransformEngine.setOutgoingPT(rtpPayloadType);
                 }
             }
+            else if (Constants.FLEXFEC.equals(encoding))
+            {
+                FECTransformEngine fecTransformEngine = getFecTransformEngine();
+                if (fecTransformEngine != null)
+                {
+                    fecTransformEngine.setFlexFecIncomingPT(rtpPayloadType);
+                    // FlexFEC packets are only sent once the SSRC of the
+                    // FlexFEC stream has been set by the extender which
+                    // created the engine (see getFecTransformEngine()).
+                    fecTransformEngine.setFlexFecOutgoingPT(rtpPayloadType);
+                }
+            }
 
             if (rtpManager != null)
             {
@@ -503,6 +532,8 @@ public void clearDynamicRTPPayloadTypes()
             {
                 fecTransformEngine.setIncomingPT((byte) -1);
                 fecTransformEngine.setOutgoingPT((byte) -1);
+                fecTransformEngine.setFlexFecIncomingPT((byte) -1);
+                fecTransformEngine.setFlexFecOutgoingPT((byte) -1);
             }
         }
 
@@ -671,6 +702,13 @@ private void enableRTPExtension(byte extensionID, RTPExtension rtpExtension)
                 absSendTimeEngine.setExtensionID(effectiveId);
             }
         }
+        else if (RTPExtension.TRANSPORT_CC_URN.equals(uri))
+        {
+            if (transportCCEngine != null)
+            {
+                transportCCEngine.setExtensionID(this, effectiveId);
+            }
+        }
         else if (RTPExtension.FRAME_MARKING_URN.equals(uri))
         {
             frameMarkingsExtensionId = effectiveId;
@@ -702,6 +740,7 @@ public void close()
         closeSendStreams();
 
         srtpControl.cleanup(this);
+        releaseTransportCCEngine();
 
         if (csrcEngine != null)
         {
@@ -977,6 +1016,65 @@ protected AbsSendTimeEngine createAbsSendTimeEngine()
         return new AbsSendTimeEngine();
     }
 
+    /**
+     * Creates the {@link TransportCCEngine} for the transport of this
+     * {@code MediaStream}. Invoked only by the first {@code MediaStream}
+     * bundled on the transport.
+     * @return the created {@link TransportCCEngine}.
+     */
+    protected TransportCCEngine createTransportCCEngine()
+    {
+        return new TransportCCEngine();
+    }
+
+    /**
+     * Gets the {@link TransportCCEngine} of the transport of this
+     * {@code MediaStream} and adds this {@code MediaStream} to the ones which
+     * share it, creating it if this is the first {@code MediaStream} of the
+     * transport.
+     * @return the {@link TransportCCEngine} of the transport of this
+     * {@code MediaStream} or {@code null}.
+     */
+    private TransportCCEngine acquireTransportCCEngine()
+    {
+        synchronized (transportCCEngines)
+        {
+            TransportCCEngine engine = transportCCEngines.get(srtpControl);
+
+            if (engine == null)
+            {
+                engine = createTransportCCEngine();
+                if (engine == null)
+                    return null;
+                transportCCEngines.put(srtpControl, engine);
+            }
+            engine.addMediaStream(this);
+            return engine;
+        }
+    }
+
+    /**
+     * Removes this {@code MediaStream} from the ones which share
+     * {@link #transportCCEngine} and forgets the latter if this was the last
+     * {@code MediaStream} of the transport.
+     */
+    private void releaseTransportCCEngine()
+    {
+        synchronized (transportCCEngines)
+        {
+            TransportCCEngine engine = transportCCEngine;
+
+            if (engine == null)
+                return;
+            transportCCEngine = null;
+            if (engine.removeMediaStream(this)
+                    && transportCCEngines.get(srtpControl) == engine)
+            {
+                transportCCEngines.remove(srtpControl);
+            }
+        }
+    }
+
     /**
      * Creates the {@link CachingTransformer} for this {@code MediaStream}.
      * @return the created {@link CachingTransformer}.
@@ -1101,6 +1199,13 @@ private TransformEngineChain createTransformEngineChain()
             engineChain.add(absSendTimeEngine);
         }
 
+        if (transportCCEngine == null)
+            transportCCEngine = acquireTransportCCEngine();
+        if (transportCCEngine != null)
+        {
+            engineChain.add(transportCCEngine);
+        }
+
         // Debug
         debugTransformEngine
             = DebugTransformEngine.createDebugTransformEngine(this);
@@ -1516,7 +1621,11 @@ public Map<Byte, MediaFormat> getDynamicRTPPayloadTypes()
 
     /**
      * Creates the <tt>FECTransformEngine</tt> for this <tt>MediaStream</tt>.
-     * By default none is created, allows extenders to implement it.
+     * By default none is created, allows extenders to implement it. The
+     * payload types of the ulpfec and FlexFEC formats are set on the engine
+     * by this instance but the SSRC of the outgoing FlexFEC stream is not
+     * known to it, so an extender which wants to send FlexFEC has to set it
+     * with {@link FECTransformEngine#setFlexFecSSRC(long)}.
      * @return the <tt>FECTransformEngine</tt> created.
      */
     protected FECTransformEngine getFecTransformEngine()
@@ -316,6 +316,16 @@ public void rtcpReportSent(RTCPReport report)
     private final List<RTCPPacketListener> rtcpPacketListeners
         = Collections.synchronizedList(new LinkedList<RTCPPacketListener>());
 
+    /**
+     * The <tt>RTCPPacketListener</tt>s which are also
+     * <tt>RTCPPacketVisitor</tt>s and are notified about received RTCP packets
+     * through the <tt>RTCPPacketView</tt> positioned on them rather than
+     * through objects initialized for them. Implemented as copy-on-write
+     * storage so that the notifications do not allocate.
+     */
+    private volatile RTCPPacketVisitor[] rtcpPacketVisitors
+        = new RTCPPacketVisitor[0];
+
     /**
      * Creates a new instance of stats concerning a MediaStream.
      *
@@ -1517,13 +1527,7 @@ public void srReceived(RTCPSRPacket sr)
     {
         if (sr != null)
         {
-            long emisionTime = TimeUtils.toNtpShortFormat(
-                TimeUtils.constuctNtp(sr.ntptimestampmsw, sr.ntptimestamplsw));
-
-            long arrivalTime = TimeUtils.toNtpShortFormat(
-                TimeUtils.toNtpTime(System.currentTimeMillis()));
-
-            emission2reception.put(emisionTime, arrivalTime);
+            srReceived(sr.ntptimestampmsw, sr.ntptimestamplsw);
 
             synchronized (rtcpPacketListeners)
             {
@@ -1535,13 +1539,117 @@ public void srReceived(RTCPSRPacket sr)
         }
     }
 
+    /**
+     * Notifies the <tt>RTCPPacketListener</tt>s which are
+     * <tt>RTCPPacketVisitor</tt>s that an RTCP REMB packet was received.
+     *
+     * @param view the <tt>RTCPPacketView</tt> positioned on the packet
+     */
+    public void rembReceived(RTCPPacketView view)
+    {
+        RTCPPacketVisitor[] visitors = rtcpPacketVisitors;
+
+        for (int i = 0; i < visitors.length; i++)
+            visitors[i].visitREMB(view);
+    }
+
+    /**
+     * Notifies the <tt>RTCPPacketListener</tt>s which are
+     * <tt>RTCPPacketVisitor</tt>s that an RTCP NACK packet was received.
+     *
+     * @param view the <tt>RTCPPacketView</tt> positioned on the packet
+     */
+    public void nackReceived(RTCPPacketView view)
+    {
+        RTCPPacketVisitor[] visitors = rtcpPacketVisitors;
+
+        for (int i = 0; i < visitors.length; i++)
+            visitors[i].visitNACK(view);
+    }
+
+    /**
+     * Notifies the <tt>RTCPPacketListener</tt>s which are
+     * <tt>RTCPPacketVisitor</tt>s that an RTCP SR packet was received.
+     *
+     * @param view the <tt>RTCPPacketView</tt> positioned on the packet
+     */
+    public void srReceived(RTCPPacketView view)
+    {
+        RTCPPacketVisitor[] visitors = rtcpPacketVisitors;
+
+        for (int i = 0; i < visitors.length; i++)
+            visitors[i].visitSR(view);
+    }
+
+    /**
+     * Notifies this instance that an RTCP SR packet with a specific NTP
+     * timestamp was received. Unlike {@link #srReceived(RTCPSRPacket)}, does
+     * not notify the <tt>RTCPPacketListener</tt>s.
+     * @param ntpTimestampMSW the most significant word of the NTP timestamp
+     * of the SR packet.
+     * @param ntpTimestampLSW the least significant word of the NTP timestamp
+     * of the SR packet.
+     */
+    public void srReceived(long ntpTimestampMSW, long ntpTimestampLSW)
+    {
+        long emisionTime = TimeUtils.toNtpShortFormat(
+            TimeUtils.constuctNtp(ntpTimestampMSW, ntpTimestampLSW));
+
+        long arrivalTime = TimeUtils.toNtpShortFormat(
+            TimeUtils.toNtpTime(System.currentTimeMillis()));
+
+        emission2reception.put(emisionTime, arrivalTime);
+    }
+
+    /**
+     * Determines whether any <tt>RTCPPacketListener</tt> which is not an
+     * <tt>RTCPPacketVisitor</tt> is registered with this instance i.e. whether
+     * received RTCP packets have to be parsed into objects in order to notify
+     * about them.
+     * @return <tt>true</tt> if an <tt>RTCPPacketListener</tt> which is not an
+     * <tt>RTCPPacketVisitor</tt> is registered with this instance; otherwise,
+     * <tt>false</tt>.
+     */
+    public boolean hasRTCPPacketListeners()
+    {
+        return !rtcpPacketListeners.isEmpty();
+    }
+
     /**
      * {@inheritDoc}
+     *
+     * A <tt>listener</tt> which is also an <tt>RTCPPacketVisitor</tt> is
+     * notified about the received NACK, REMB and SR packets through
+     * {@link RTCPPacketVisitor#visitNACK(RTCPPacketView)},
+     * {@link RTCPPacketVisitor#visitREMB(RTCPPacketView)} and
+     * {@link RTCPPacketVisitor#visitSR(RTCPPacketView)} instead of the methods
+     * of <tt>RTCPPacketListener</tt> so that no objects are initialized for
+     * the packets on its behalf.
      */
     @Override
     public void addRTCPPacketListener(RTCPPacketListener listener)
     {
-        if (listener != null)
+        if (listener instanceof RTCPPacketVisitor)
+        {
+            synchronized (this)
+            {
+                RTCPPacketVisitor visitor = (RTCPPacketVisitor) listener;
+                RTCPPacketVisitor[] oldValue = rtcpPacketVisitors;
+
+                for (RTCPPacketVisitor v : oldValue)
+                {
+                    if (v == visitor)
+                        return;
+                }
+
+                RTCPPacketVisitor[] newValue
+                    = Arrays.copyOf(oldValue, oldValue.length + 1);
+
+                newValue[oldValue.length] = visitor;
+                rtcpPacketVisitors = newValue;
+            }
+        }
+        else if (listener != null)
         {
             rtcpPacketListeners.add(listener);
         }
@@ -1553,7 +1661,31 @@ public void addRTCPPacketListener(RTCPPacketListener listener)
     @Override
     public void removeRTCPPacketListener(RTCPPacketListener listener)
     {
-        if (listener != null)
+        if (listener instanceof RTCPPacketVisitor)
+        {
+            synchronized (this)
+            {
+                RTCPPacketVisitor[] oldValue = rtcpPacketVisitors;
+
+                for (int i = 0; i < oldValue.length; i++)
+                {
+                    if (oldValue[i] == listener)
+                    {
+                        RTCPPacketVisitor[] newValue
+                            = new RTCPPacketVisitor[oldValue.length - 1];
+
+                        System.arraycopy(oldValue, 0, newValue, 0, i);
+                        System.arraycopy(
+                                oldValue, i + 1,
+                                newValue, i,
+                                newValue.length - i);
+                        rtcpPacketVisitors = newValue;
+                        break;
+                    }
+                }
+            }
+        }
+        else if (listener != null)
         {
             rtcpPacketListeners.remove(listener);
         }
@@ -175,6 +175,12 @@ public static void setThreadPriority(Thread thread, int priority)
      */
     private Thread receiveThread;
 
+    /**
+     * Whether the packets of this stream are received by a shared engine (e.g.
+     * {@link SelectorReceiveEngine}) rather than by {@link #receiveThread}.
+     */
+    private boolean receivedBySharedEngine = false;
+
     protected final T socket;
 
     /**
@@ -399,30 +405,63 @@ protected RawPacket[] createRawPacket(DatagramPacket datagramPacket)
     {
         RawPacket[] pkts = new RawPacket[1];
 
+        pkts[0] = copyIntoRawPacket(datagramPacket);
+        return pkts;
+    }
+
+    /**
+     * Creates new <tt>RawPacket</tt>s from the first <tt>count</tt> elements
+     * of a specific array of <tt>DatagramPacket</tt>s received in one batch.
+     * Allows extenders to intercept (e.g. transform) the whole batch at once
+     * rather than one packet at a time.
+     *
+     * @param datagramPackets the <tt>DatagramPacket</tt>s containing the packet
+     * data
+     * @param count the number of elements of <tt>datagramPackets</tt> to
+     * convert
+     * @return an array of <tt>RawPacket</tt>s containing the packet data of the
+     * specified <tt>DatagramPacket</tt>s
+     */
+    protected RawPacket[] createRawPacket(
+            DatagramPacket[] datagramPackets,
+            int count)
+    {
+        RawPacket[] pkts = new RawPacket[count];
+
+        for (int i = 0; i < count; i++)
+            pkts[i] = copyIntoRawPacket(datagramPackets[i]);
+        return pkts;
+    }
+
+    /**
+     * Copies the packet data of a specific <tt>DatagramPacket</tt> into a
+     * (pooled, if possible) <tt>RawPacket</tt>.
+     *
+     * @param datagramPacket the <tt>DatagramPacket</tt> containing the packet
+     * data
+     * @return a <tt>RawPacket</tt> containing the packet data of
+     * <tt>datagramPacket</tt>
+     */
+    private RawPacket copyIntoRawPacket(DatagramPacket datagramPacket)
+    {
         RawPacket pkt = rawPacketPool.poll();
         if (pkt == null)
             pkt = new RawPacket();
 
-        byte[] buffer = pkt.getBuffer();
         int length = datagramPacket.getLength();
-        if (buffer == null || buffer.length < length)
-        {
-            buffer = new byte[length];
-            pkt.setBuffer(buffer);
-        }
 
+        // The buffer is acquired with headroom and tailroom so that the
+        // transformers (e.g. SRTP) do not have to reallocate it. It is owned
+        // by pkt so that poolRawPacket releases it and not whatever buffer the
+        // transformers may have left in pkt.
+        pkt.setPooledBuffer(length);
         System.arraycopy(
                 datagramPacket.getData(), datagramPacket.getOffset(),
-                buffer, 0,
+                pkt.getBuffer(), RawPacket.HEADROOM,
                 length);
-
-        pkt.setBuffer(buffer);
-        pkt.setOffset(0);
-        pkt.setLength(length);
         pkt.setFlags(0);
 
-        pkts[0] = pkt;
-        return pkts;
+        return pkt;
     }
 
     /**
@@ -552,10 +591,16 @@ protected PacketLoggingService getPacketLoggingService()
 
     private synchronized void maybeStartReceiveThread()
     {
-        if (receiveThread == null)
+        if (receiveThread == null && !receivedBySharedEngine)
         {
             if ((socket != null) && !closed && (transferHandler != null))
             {
+                if (startSharedReceive())
+                {
+                    receivedBySharedEngine = true;
+                    return;
+                }
+
                 receiveThread
                     = new Thread()
                     {
@@ -585,12 +630,16 @@ public void run()
 
     /**
      * Pools the specified <tt>RawPacket</tt> in order to avoid future
-     * allocations and to reduce the effects of garbage collection.
+     * allocations and to reduce the effects of garbage collection. The buffer
+     * acquired for it by {@link #copyIntoRawPacket(DatagramPacket)}, if any,
+     * is released to {@link ByteArrayPool}.
      *
      * @param pkt the <tt>RawPacket</tt> to be offered to {@link #rawPacketPool}
      */
     private void poolRawPacket(RawPacket pkt)
     {
+        pkt.releasePooledBuffer();
+        pkt.setBuffer(null);
         pkt.setFlags(0);
         pkt.setLength(0);
         pkt.setOffset(0);
@@ -731,6 +780,20 @@ public int read(byte[] buffer, int offset, int length)
     protected abstract void receive(DatagramPacket p)
         throws IOException;
 
+    /**
+     * Notifies this instance that a shared engine which receives its packets
+     * failed to read from its socket. Equivalent to the termination of
+     * {@link #receiveThread} because of an <tt>IOException</tt>.
+     *
+     * @param ioe the <tt>IOException</tt> which occurred
+     */
+    void receiveFailed(IOException ioe)
+    {
+        ioError = true;
+        if (!closed)
+            logger.warn("Failed to receive a packet: " + ioe);
+    }
+
     /**
      * Listens for incoming datagram packets, stores them for reading by the
      * <tt>read</tt> method and notifies the local <tt>transferHandler</tt>
@@ -757,26 +820,96 @@ private void runInReceiveThread()
                 break;
             }
 
-            numberOfReceivedBytes += (long) p.getLength();
+            handleReceivedDatagram(p);
+        }
+    }
 
-            try
+    /**
+     * Handles a <tt>DatagramPacket</tt> received from {@link #socket}: filters
+     * it, converts it into <tt>RawPacket</tt>s and pushes them out of this
+     * <tt>PushSourceStream</tt>. Invoked by {@link #receiveThread} or by the
+     * shared engine which receives the packets of this instance.
+     *
+     * @param p the received <tt>DatagramPacket</tt>
+     */
+    void handleReceivedDatagram(DatagramPacket p)
+    {
+        numberOfReceivedBytes += (long) p.getLength();
+
+        try
+        {
+            // Do the DatagramPacketFilters accept the received DatagramPacket?
+
+            if (accept(p))
+            {
+                RawPacket[] pkts = createRawPacket(p);
+                transferData(pkts);
+            }
+        }
+        catch (Exception e)
+        {
+            // The receive thread should not die as a result of a failure in
+            // the packetization (converting to RawPacket[] and transforming)
+            // or a failure in any of the DatagramPacketFilters.
+            logger.error("Failed to receive a packet: ", e);
+        }
+    }
+
+    /**
+     * Handles a batch of <tt>DatagramPacket</tt>s received from
+     * {@link #socket} by a shared engine: filters them, converts the accepted
+     * ones into <tt>RawPacket</tt>s at once (so that they are transformed as
+     * one array) and pushes them out of this <tt>PushSourceStream</tt> in the
+     * order in which they were received.
+     *
+     * @param ps the received <tt>DatagramPacket</tt>s. The accepted elements
+     * are moved to the beginning of the array.
+     * @param count the number of elements of <tt>ps</tt> which were received
+     */
+    void handleReceivedDatagrams(DatagramPacket[] ps, int count)
+    {
+        if (count == 1)
+        {
+            handleReceivedDatagram(ps[0]);
+            return;
+        }
+
+        try
+        {
+            int accepted = 0;
+
+            for (int i = 0; i < count; i++)
             {
-                // Do the DatagramPacketFilters accept the received DatagramPacket?
+                DatagramPacket p = ps[i];
+
+                numberOfReceivedBytes += (long) p.getLength();
 
+                // Do the DatagramPacketFilters accept the received
+                // DatagramPacket?
                 if (accept(p))
                 {
-                    RawPacket[] pkts = createRawPacket(p);
-                    transferData(pkts);
+                    if (accepted != i)
+                    {
+                        // Keep the order of the accepted packets.
+                        ps[i] = ps[accepted];
+                        ps[accepted] = p;
+                    }
+                    accepted++;
                 }
             }
-            catch (Exception e)
+            if (accepted > 0)
             {
-                // The receive thread should not die as a result of a failure in
-                // the packetization (converting to RawPacket[] and transforming)
-                // or a failure in any of the DatagramPacketFilters.
-                logger.error("Failed to receive a packet: ", e);
+                RawPacket[] pkts = createRawPacket(ps, accepted);
+                transferData(pkts);
             }
         }
+        catch (Exception e)
+        {
+            // The shared engine should not be affected by a failure in the
+            // packetization (converting to RawPacket[] and transforming) or a
+            // failure in any of the DatagramPacketFilters.
+            logger.error("Failed to receive packets: ", e);
+        }
     }
 
     /**
@@ -809,6 +942,20 @@ public void setPriority(int priority)
     protected abstract void setReceiveBufferSize(int receiveBufferSize)
         throws IOException;
 
+    /**
+     * Starts receiving the packets of this instance through a shared engine
+     * instead of a dedicated receive thread. The default implementation does
+     * not support a shared engine.
+     *
+     * @return <tt>true</tt> if the packets of this instance are to be received
+     * by a shared engine; <tt>false</tt> to fall back to a dedicated receive
+     * thread
+     */
+    protected boolean startSharedReceive()
+    {
+        return false;
+    }
+
     /**
      * Sets the <tt>transferHandler</tt> that this connector should be notifying
      * when new data is available for reading.
@@ -19,6 +19,7 @@
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.*;
 
 import javax.media.rtp.*;
@@ -90,6 +91,22 @@
     private static final String USE_SEND_THREAD_PNAME
         = RTPConnectorOutputStream.class.getName() + ".USE_SEND_THREAD";
 
+    /**
+     * The flag which controls whether the packets written into the
+     * {@link Queue}s of {@link RTPConnectorOutputStream}s are sent by the
+     * threads of the shared {@link SendScheduler} rather than by a thread per
+     * {@link Queue}. Has no effect if {@link #USE_SEND_THREAD} is
+     * {@code false}.
+     */
+    private static final boolean USE_SEND_SCHEDULER;
+
+    /**
+     * The name of the property which controls the value of {@link
+     * #USE_SEND_SCHEDULER}.
+     */
+    private static final String USE_SEND_SCHEDULER_PNAME
+        = RTPConnectorOutputStream.class.getName() + ".USE_SEND_SCHEDULER";
+
     /**
      * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt>
      * integer property which specifies the value of
@@ -120,6 +137,8 @@
         // Set USE_SEND_THREAD
         USE_SEND_THREAD
             = ConfigUtils.getBoolean(cfg, USE_SEND_THREAD_PNAME, true);
+        USE_SEND_SCHEDULER
+            = ConfigUtils.getBoolean(cfg, USE_SEND_SCHEDULER_PNAME, false);
 
         POOL_CAPACITY = ConfigUtils.getInt(cfg, POOL_CAPACITY_PNAME, 100);
 
@@ -147,6 +166,7 @@
         {
             logger.debug("Initialized configuration. "
                          + "Send thread: " + USE_SEND_THREAD
+                         + ". Send scheduler: " + USE_SEND_SCHEDULER
                          + ". Pool capacity: " + POOL_CAPACITY
                          + ". Queue capacity: " + PACKET_QUEUE_CAPACITY
                          + ". Avg bitrate window: " + AVERAGE_BITRATE_WINDOW_MS);
@@ -209,9 +229,18 @@ static boolean logPacket(long numOfPacket)
 
     /**
      * The number of packets dropped because a packet was inserted while
-     * {@link #queue} was full.
+     * {@link #queue} was full. Read by any thread through
+     * {@link #getNumberOfDroppedPackets()}.
      */
-    private int numDroppedPackets = 0;
+    private volatile int numDroppedPackets = 0;
+
+    /**
+     * The number of times that a packet was not sent to a target because the
+     * socket of this stream was in non-blocking mode and had no room for it in
+     * its send buffer. Read by any thread through
+     * {@link #getNumberOfPacketsDroppedBySocket()}.
+     */
+    private volatile int numPacketsDroppedBySocket = 0;
 
     /**
      * The {@code PacketLoggingService} instance (to be) utilized by this
@@ -291,6 +320,8 @@ public void close()
             closed = true;
 
             removeTargets();
+            if (queue != null)
+                queue.close();
         }
     }
 
@@ -322,39 +353,38 @@ protected RawPacket[] packetize(
         RawPacket[] pkts = new RawPacket[1];
 
         RawPacket pkt = rawPacketPool.poll();
-        byte[] pktBuffer;
 
         if (pkt == null)
-        {
-            pktBuffer = new byte[len];
             pkt = new RawPacket();
-        }
-        else
-        {
-            pktBuffer = pkt.getBuffer();
-        }
 
-        if (pktBuffer.length < len)
-        {
-            /*
-             * XXX It may be argued that if the buffer length is insufficient
-             * once, it will be insufficient more than once. That is why we
-             * recreate it without returning a packet to the pool.
-             */
-            pktBuffer = new byte[len];
-        }
-
-        pkt.setBuffer(pktBuffer);
+        // The buffer is acquired with headroom and tailroom so that the
+        // transformers (e.g. header extensions and SRTP) do not have to
+        // reallocate it. It is owned by pkt so that poolRawPacket releases it
+        // and not whatever buffer the transformers may have left in pkt.
+        pkt.setPooledBuffer(len);
         pkt.setFlags(0);
-        pkt.setLength(len);
-        pkt.setOffset(0);
 
-        System.arraycopy(buf, off, pktBuffer, 0, len);
+        System.arraycopy(buf, off, pkt.getBuffer(), RawPacket.HEADROOM, len);
 
         pkts[0] = pkt;
         return pkts;
     }
 
+    /**
+     * Pools a specific <tt>RawPacket</tt> which has been consumed by this
+     * stream in order to reduce the effects of garbage collection. The buffer
+     * acquired for it by {@link #packetize(byte[], int, int, Object)}, if any,
+     * is released to {@link ByteArrayPool}.
+     *
+     * @param pkt the <tt>RawPacket</tt> to be offered to {@link #rawPacketPool}
+     */
+    private void poolRawPacket(RawPacket pkt)
+    {
+        pkt.releasePooledBuffer();
+        pkt.setBuffer(null);
+        rawPacketPool.offer(pkt);
+    }
+
     /**
      * Logs a specific <tt>RawPacket</tt> associated with a specific remote
      * address.
@@ -366,6 +396,53 @@ protected abstract void doLogPacket(
             RawPacket packet,
             InetSocketAddress target);
 
+    /**
+     * Gets the average time in nanoseconds the packets written into this
+     * stream spent in its queue before they were sent.
+     *
+     * @return the average send latency in nanoseconds or <tt>0</tt> if this
+     * stream does not use a send queue
+     */
+    public long getAverageSendLatencyNanos()
+    {
+        return (queue == null) ? 0 : queue.getAverageSendLatencyNanos();
+    }
+
+    /**
+     * Gets the number of packets dropped by this stream because its queue was
+     * full.
+     *
+     * @return the number of packets dropped by this stream because its queue
+     * was full
+     */
+    public int getNumberOfDroppedPackets()
+    {
+        return numDroppedPackets;
+    }
+
+    /**
+     * Gets the number of times that a packet was not sent to a target because
+     * the socket of this stream had no room for it in its send buffer.
+     *
+     * @return the number of times that a packet was not sent to a target
+     * because the socket of this stream had no room for it in its send buffer
+     */
+    public int getNumberOfPacketsDroppedBySocket()
+    {
+        return numPacketsDroppedBySocket;
+    }
+
+    /**
+     * Gets the number of packets currently waiting in the queue of this stream.
+     *
+     * @return the number of packets currently waiting in the queue of this
+     * stream
+     */
+    public int getQueueSize()
+    {
+        return (queue == null) ? 0 : queue.queue.size();
+    }
+
     /**
      * Returns the number of bytes sent trough this stream
      * @return the number of bytes sent
@@ -448,7 +525,7 @@ private boolean send(RawPacket packet)
     {
         if(!isSocketValid())
         {
-            rawPacketPool.offer(packet);
+            poolRawPacket(packet);
             return false;
         }
 
@@ -459,7 +536,19 @@ private boolean send(RawPacket packet)
         {
             try
             {
-                sendToTarget(packet, target);
+                if (!trySendToTarget(packet, target))
+                {
+                    numPacketsDroppedBySocket++;
+                    if (logDroppedPacket(numPacketsDroppedBySocket))
+                    {
+                        logger.warn(
+                                "Packets dropped by the socket because its"
+                                    + " send buffer is full (hashCode="
+                                    + hashCode() + "): "
+                                    + numPacketsDroppedBySocket);
+                    }
+                    continue;
+                }
 
                 numberOfBytesSent += (long)packet.getLength();
 
@@ -477,13 +566,13 @@ private boolean send(RawPacket packet)
             }
             catch (IOException ioe)
             {
-                rawPacketPool.offer(packet);
+                poolRawPacket(packet);
                 logger.error(
                     "Failed to send a packet to target " + target + ":" + ioe);
                 return false;
             }
         }
-        rawPacketPool.offer(packet);
+        poolRawPacket(packet);
         return true;
     }
 
@@ -504,6 +593,33 @@ protected abstract void sendToTarget(
             InetSocketAddress target)
         throws IOException;
 
+    /**
+     * Sends a specific <tt>RawPacket</tt> through this
+     * <tt>OutputDataStream</tt> to a specific <tt>InetSocketAddress</tt>
+     * unless the socket of this stream has no room for it. The default
+     * implementation invokes {@link #sendToTarget(RawPacket,
+     * InetSocketAddress)} and always reports the <tt>packet</tt> as sent.
+     *
+     * @param packet the <tt>RawPacket</tt> to send through this
+     * <tt>OutputDataStream</tt> to the specified <tt>target</tt>
+     * @param target the <tt>InetSocketAddress</tt> to which the specified
+     * <tt>packet</tt> is to be sent through this <tt>OutputDataStream</tt>
+     * @return <tt>true</tt> if <tt>packet</tt> was sent or <tt>false</tt> if
+     * it was dropped because the socket of this stream is in non-blocking mode
+     * and has no room for it in its send buffer
+     * @throws IOException if anything goes wrong while sending the specified
+     * <tt>packet</tt> through this <tt>OutputDataStream</tt> to the specified
+     * <tt>target</tt>
+     */
+    protected boolean trySendToTarget(
+            RawPacket packet,
+            InetSocketAddress target)
+        throws IOException
+    {
+        sendToTarget(packet, target);
+        return true;
+    }
+
     /**
      * Enables or disables this <tt>RTPConnectorOutputStream</tt>.
      * While the stream is disabled, it suppresses actually sending any packets
@@ -698,7 +814,7 @@ private boolean write(RawPacket[] pkts)
                 }
                 else
                 {
-                    rawPacketPool.offer(pkt);
+                    poolRawPacket(pkt);
                 }
             }
         }
@@ -735,7 +851,7 @@ public long getOutputBitrate(long now)
         /**
          * A pool of {@link
          * org.jitsi.impl.neomedia.RTPConnectorOutputStream.Queue.Buffer}
-         * instances.
+         * instances. Their byte arrays are pooled by {@link ByteArrayPool}.
          */
         final ArrayBlockingQueue<Buffer> pool
             = new ArrayBlockingQueue<>(15);
@@ -768,10 +884,52 @@ public long getOutputBitrate(long now)
         /**
          * The {@link Thread} which is to read {@link Buffer}s from this
          * {@link Queue} and send them to this {@link
-         * RTPConnectorOutputStream}'s targets.
+         * RTPConnectorOutputStream}'s targets. {@code null} if {@link
+         * #scheduler} is used instead.
          */
         final Thread sendThread;
 
+        /**
+         * The shared {@link SendScheduler} which sends the {@link Buffer}s of
+         * this {@link Queue} or {@code null} if {@link #sendThread} is used
+         * instead.
+         */
+        final SendScheduler scheduler;
+
+        /**
+         * Whether {@link #drainTask} is currently scheduled or running in
+         * {@link #scheduler}. There is at most one such task per {@link Queue}
+         * which guarantees that its packets are sent in order.
+         */
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * The task which sends the {@link Buffer}s of this {@link Queue} in
+         * {@link #scheduler}.
+         */
+        final Runnable drainTask
+            = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runInScheduler();
+                }
+            };
+
+        /**
+         * The number of {@link Buffer}s removed from {@link #queue} in order
+         * to be sent. Written by one thread at a time (i.e. {@link
+         * #sendThread} or {@link #drainTask}) and read by any thread.
+         */
+        volatile long sentBuffers = 0;
+
+        /**
+         * The sum in nanoseconds of the times the {@link Buffer}s counted by
+         * {@link #sentBuffers} spent in {@link #queue}.
+         */
+        volatile long totalSendLatencyNanos = 0;
+
         /**
          * The instance optionally used to gather and print statistics about
          * this queue.
@@ -779,7 +937,8 @@ public long getOutputBitrate(long now)
         QueueStatistics queueStats = null;
 
         /**
-         * Initializes a new {@link Queue} instance and starts its send thread.
+         * Initializes a new {@link Queue} instance and starts its send thread
+         * unless the shared {@link SendScheduler} is to be used.
          */
         private Queue()
         {
@@ -789,6 +948,14 @@ private Queue()
                     getClass().getSimpleName() + "-" + hashCode());
             }
 
+            if (USE_SEND_SCHEDULER)
+            {
+                scheduler = SendScheduler.getInstance();
+                sendThread = null;
+                return;
+            }
+
+            scheduler = null;
             sendThread
                 = new Thread()
             {
@@ -824,6 +991,7 @@ private void write(byte[] buf, int off, int len, Object context)
             System.arraycopy(buf, off, buffer.buf, 0, len);
             buffer.len = len;
             buffer.context = context;
+            buffer.enqueueTimeNanos = System.nanoTime();
 
             long now = System.currentTimeMillis();
             if (queue.size() >= PACKET_QUEUE_CAPACITY)
@@ -836,7 +1004,11 @@ private void write(byte[] buf, int off, int len, Object context)
                     {
                         queueStats.remove(now);
                     }
-                    pool.offer(b);
+                    if (scheduler != null)
+                    {
+                        scheduler.packetDropped();
+                    }
+                    releaseBuffer(b);
                     numDroppedPackets++;
                     if (logDroppedPacket(numDroppedPackets))
                     {
@@ -847,9 +1019,172 @@ private void write(byte[] buf, int off, int len, Object context)
                 }
             }
 
-            if (queue.offer(buffer) && queueStats != null)
+            if (queue.offer(buffer))
             {
-                queueStats.add(now);
+                if (queueStats != null)
+                {
+                    queueStats.add(now);
+                }
+                if (scheduler != null)
+                {
+                    scheduler.packetQueued();
+                    maybeSchedule();
+                }
+            }
+            else
+            {
+                releaseBuffer(buffer);
+            }
+        }
+
+        /**
+         * Closes this {@link Queue}. If the shared {@link SendScheduler} is
+         * used, releases the {@link Buffer}s left in {@link #queue} right away
+         * because the drain task of a paced queue may not run again before the
+         * start of its next interval.
+         */
+        private void close()
+        {
+            if (scheduler != null)
+            {
+                scheduler.packetsDiscarded(releaseQueuedBuffers());
+                maybeSchedule();
+            }
+        }
+
+        /**
+         * Gets the average time in nanoseconds the {@link Buffer}s of this
+         * {@link Queue} spent waiting to be sent.
+         *
+         * @return the average send latency in nanoseconds
+         */
+        private long getAverageSendLatencyNanos()
+        {
+            long sentBuffers = this.sentBuffers;
+
+            return
+                (sentBuffers == 0) ? 0 : totalSendLatencyNanos / sentBuffers;
+        }
+
+        /**
+         * Schedules {@link #drainTask} in {@link #scheduler} unless it is
+         * already scheduled or running.
+         */
+        private void maybeSchedule()
+        {
+            if (scheduled.compareAndSet(false, true))
+            {
+                scheduler.schedule(drainTask, 0);
+            }
+        }
+
+        /**
+         * Sends up to {@link SendScheduler#QUANTUM} {@link Buffer}s from
+         * {@link #queue} and then yields the thread of {@link #scheduler} to
+         * the other queues. If the pacing policy does not allow sending more
+         * packets in the current interval, the sending is resumed at the start
+         * of the next interval.
+         */
+        private void runInScheduler()
+        {
+            long delayNanos = 0;
+
+            try
+            {
+                for (int i = 0; !closed && i < SendScheduler.QUANTUM; i++)
+                {
+                    if (perNanos > 0 && maxBuffers > 0)
+                    {
+                        long time = System.nanoTime();
+                        long nanosElapsed = time - intervalStartTimeNanos;
+
+                        if (nanosElapsed >= perNanos)
+                        {
+                            intervalStartTimeNanos = time;
+                            buffersProcessedInCurrentInterval = 0;
+                        }
+                        else if (buffersProcessedInCurrentInterval
+                                >= maxBuffers)
+                        {
+                            delayNanos = perNanos - nanosElapsed;
+                            break;
+                        }
+                    }
+
+                    Buffer buffer = queue.poll();
+
+                    if (buffer == null)
+                    {
+                        break;
+                    }
+
+                    long latencyNanos
+                        = System.nanoTime() - buffer.enqueueTimeNanos;
+
+                    scheduler.packetDequeued(latencyNanos);
+                    sentBuffers++;
+                    totalSendLatencyNanos += latencyNanos;
+                    if (queueStats != null)
+                    {
+                        queueStats.remove(System.currentTimeMillis());
+                    }
+
+                    RawPacket[] pkts;
+                    try
+                    {
+                        pkts
+                            = packetize(
+                                buffer.buf, 0, buffer.len,
+                                buffer.context);
+                    }
+                    catch (Exception e)
+                    {
+                        // The scheduler threads are shared and must not be
+                        // affected by a failure in the conversion to
+                        // RawPacket[] or any of the transformations.
+                        logger.error("Failed to handle an outgoing packet: ", e);
+                        continue;
+                    }
+                    finally
+                    {
+                        releaseBuffer(buffer);
+                    }
+
+                    try
+                    {
+                        RTPConnectorOutputStream.this.write(pkts);
+                    }
+                    catch (Exception e)
+                    {
+                        logger.error("Failed to send a packet: ", e);
+                        continue;
+                    }
+
+                    buffersProcessedInCurrentInterval++;
+                }
+            }
+            finally
+            {
+                if (closed)
+                {
+                    scheduler.packetsDiscarded(releaseQueuedBuffers());
+                    scheduled.set(false);
+                }
+                else if (!queue.isEmpty())
+                {
+                    // Keep scheduled set and go to the back of the line.
+                    scheduler.schedule(drainTask, delayNanos);
+                }
+                else
+                {
+                    scheduled.set(false);
+                    // A Buffer may have been added after the last poll and
+                    // before scheduled was cleared.
+                    if (!queue.isEmpty())
+                    {
+                        maybeSchedule();
+                    }
+                }
             }
         }
 
@@ -907,6 +1242,9 @@ private void runInSendThread()
                     {
                         queueStats.remove(System.currentTimeMillis());
                     }
+                    sentBuffers++;
+                    totalSendLatencyNanos
+                        += System.nanoTime() - buffer.enqueueTimeNanos;
 
                     RawPacket[] pkts;
                     try
@@ -931,7 +1269,7 @@ private void runInSendThread()
                     }
                     finally
                     {
-                        pool.offer(buffer);
+                        releaseBuffer(buffer);
                     }
 
                     if (perNanos > 0 && maxBuffers > 0)
@@ -966,7 +1304,7 @@ else if (buffersProcessedInCurrentInterval >= maxBuffers)
             }
             finally
             {
-                queue.clear();
+                releaseQueuedBuffers();
             }
         }
 
@@ -997,17 +1335,50 @@ private Buffer getBuffer(int len)
             Buffer buffer = pool.poll();
             if (buffer == null)
                 buffer = new Buffer();
-            if (buffer.buf == null || buffer.buf.length < len)
-                buffer.buf = new byte[len];
+            buffer.buf = ByteArrayPool.acquire(len);
 
             return buffer;
         }
 
+        /**
+         * Releases the byte array of a {@link Buffer} to
+         * {@link ByteArrayPool} and returns the {@link Buffer} to
+         * {@link #pool}.
+         */
+        private void releaseBuffer(Buffer buffer)
+        {
+            ByteArrayPool.release(buffer.buf);
+            buffer.buf = null;
+            buffer.context = null;
+            pool.offer(buffer);
+        }
+
+        /**
+         * Removes the {@link Buffer}s left in {@link #queue} and releases each
+         * of them with {@link #releaseBuffer(Buffer)} so that their byte arrays
+         * are returned to {@link ByteArrayPool}.
+         *
+         * @return the number of {@link Buffer}s which were released
+         */
+        private int releaseQueuedBuffers()
+        {
+            int count = 0;
+            Buffer buffer;
+
+            while ((buffer = queue.poll()) != null)
+            {
+                releaseBuffer(buffer);
+                count++;
+            }
+            return count;
+        }
+
         private class Buffer
         {
             byte[] buf;
             int len;
             Object context;
+            long enqueueTimeNanos;
             private Buffer() {}
         }
     }
@@ -17,10 +17,13 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
 
 import org.ice4j.socket.*;
 import org.jitsi.impl.neomedia.transform.*;
+import org.jitsi.service.libjitsi.*;
 import org.jitsi.service.packetlogging.*;
+import org.jitsi.util.*;
 
 /**
  * RTPConnectorInputStream implementation for UDP protocol.
@@ -30,6 +33,33 @@
 public class RTPConnectorUDPInputStream
     extends TransformInputStream<DatagramSocket>
 {
+    /**
+     * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt>
+     * property which indicates whether the packets of
+     * <tt>RTPConnectorUDPInputStream</tt>s are to be received by the shared
+     * {@link SelectorReceiveEngine} (if their sockets have associated
+     * <tt>DatagramChannel</tt>s) rather than by a thread per socket.
+     */
+    public static final String USE_SELECTOR_RECEIVE_ENGINE_PNAME
+        = RTPConnectorUDPInputStream.class.getName()
+            + ".USE_SELECTOR_RECEIVE_ENGINE";
+
+    /**
+     * The value of the property {@link #USE_SELECTOR_RECEIVE_ENGINE_PNAME}.
+     */
+    private static final boolean USE_SELECTOR_RECEIVE_ENGINE
+        = ConfigUtils.getBoolean(
+                LibJitsi.getConfigurationService(),
+                USE_SELECTOR_RECEIVE_ENGINE_PNAME,
+                false);
+
+    /**
+     * The registration of {@link #socket} with the
+     * <tt>SelectorReceiveEngine</tt> or <tt>null</tt> if its packets are
+     * received by a dedicated thread.
+     */
+    private SelectorReceiveEngine.Registration selectorRegistration;
+
     /**
      * Initializes a new <tt>RTPConnectorInputStream</tt> which is to receive
      * packet data from a specific UDP socket.
@@ -41,6 +71,23 @@ public RTPConnectorUDPInputStream(DatagramSocket socket)
         super(socket);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Cancels the registration with the <tt>SelectorReceiveEngine</tt>, if
+     * any, before closing the socket.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (selectorRegistration != null)
+        {
+            selectorRegistration.cancel();
+            selectorRegistration = null;
+        }
+        super.close();
+    }
+
     /**
      * Log the packet.
      *
@@ -88,6 +135,31 @@ protected void receive(DatagramPacket p)
         socket.receive(p);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Registers the <tt>DatagramChannel</tt> of {@link #socket}, if any, with
+     * the shared <tt>SelectorReceiveEngine</tt> if enabled through
+     * {@link #USE_SELECTOR_RECEIVE_ENGINE_PNAME}. Sockets without a channel
+     * (e.g. the multiplexing sockets of ice4j) fall back to a dedicated receive
+     * thread.
+     */
+    @Override
+    protected boolean startSharedReceive()
+    {
+        if (!USE_SELECTOR_RECEIVE_ENGINE)
+            return false;
+
+        DatagramChannel channel = socket.getChannel();
+
+        if (channel == null)
+            return false;
+
+        selectorRegistration
+            = SelectorReceiveEngine.getInstance().register(channel, this);
+        return selectorRegistration != null;
+    }
+
     @Override
     protected void setReceiveBufferSize(int receiveBufferSize)
         throws IOException
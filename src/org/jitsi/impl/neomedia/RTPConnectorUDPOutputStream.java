@@ -17,6 +17,8 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
 
 import org.ice4j.socket.*;
 import org.jitsi.service.neomedia.*;
@@ -24,6 +26,11 @@
 
 /**
  * RTPConnectorOutputStream implementation for UDP protocol.
+ * <p>
+ * Sends one datagram per system call: the JDK does not expose
+ * <tt>sendmmsg</tt> and neither <tt>DatagramSocket</tt> nor
+ * <tt>DatagramChannel</tt> can send more than one datagram at a time.
+ * </p>
  *
  * @author Sebastien Vincent
  */
@@ -61,13 +68,50 @@ public RTPConnectorUDPOutputStream(DatagramSocket socket)
     protected void sendToTarget(RawPacket packet, InetSocketAddress target)
         throws IOException
     {
-        socket.send(
-                new DatagramPacket(
-                        packet.getBuffer(),
-                        packet.getOffset(),
-                        packet.getLength(),
-                        target.getAddress(),
-                        target.getPort()));
+        trySendToTarget(packet, target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean trySendToTarget(
+            RawPacket packet,
+            InetSocketAddress target)
+        throws IOException
+    {
+        DatagramChannel channel = socket.getChannel();
+
+        if (channel == null)
+        {
+            socket.send(
+                    new DatagramPacket(
+                            packet.getBuffer(),
+                            packet.getOffset(),
+                            packet.getLength(),
+                            target.getAddress(),
+                            target.getPort()));
+        }
+        else
+        {
+            // The channel may have been configured as non-blocking by the
+            // SelectorReceiveEngine (at any time) and DatagramSocket#send
+            // throws an IllegalBlockingModeException then. Sending through
+            // the channel works in either mode. In non-blocking mode, a
+            // datagram which does not fit into the send buffer of the socket
+            // is not sent and no bytes are reported as written.
+            int written
+                = channel.send(
+                        ByteBuffer.wrap(
+                                packet.getBuffer(),
+                                packet.getOffset(),
+                                packet.getLength()),
+                        target);
+
+            if (written == 0 && packet.getLength() != 0)
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -0,0 +1,513 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.sf.fmj.media.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.util.*;
+
+/**
+ * Receives packets for many {@link RTPConnectorInputStream}s on a small,
+ * fixed number of threads. Each registered {@link DatagramChannel} is pinned
+ * to one worker which owns a NIO {@link Selector}, so the packets of a stream
+ * are always pushed out in the order in which they were received, while the
+ * number of receive threads does not grow with the number of streams.
+ * <p>
+ * The datagrams which are ready on a channel are read in a batch of up to
+ * {@link #MAX_READS_PER_CHANNEL_PNAME} and handed to the stream at once so that
+ * the filtering, the conversion into <tt>RawPacket</tt>s and the
+ * reverse-transformation happen once per batch. The JDK does not expose
+ * <tt>recvmmsg</tt> though, so the batch still takes one
+ * {@link DatagramChannel#receive(ByteBuffer)} system call per datagram.
+ * </p>
+ */
+public class SelectorReceiveEngine
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>SelectorReceiveEngine</tt> class and
+     * its instances to print debug information.
+     */
+    private static final Logger logger
+        = Logger.getLogger(SelectorReceiveEngine.class);
+
+    /**
+     * The name of the property which specifies the number of worker threads
+     * (and, consequently, <tt>Selector</tt>s) of the shared instance.
+     */
+    public static final String THREAD_COUNT_PNAME
+        = SelectorReceiveEngine.class.getName() + ".THREAD_COUNT";
+
+    /**
+     * The name of the property which specifies the maximum number of
+     * datagrams read from a single channel before the worker moves on to the
+     * next ready channel. The datagrams read in one go are handed to the
+     * stream as one batch (i.e. they are converted into one
+     * <tt>RawPacket[]</tt> and reverse-transformed together).
+     */
+    public static final String MAX_READS_PER_CHANNEL_PNAME
+        = SelectorReceiveEngine.class.getName() + ".MAX_READS_PER_CHANNEL";
+
+    /**
+     * The default value of {@link #MAX_READS_PER_CHANNEL_PNAME}.
+     */
+    private static final int DEFAULT_MAX_READS_PER_CHANNEL = 16;
+
+    /**
+     * The shared instance, lazily initialized by {@link #getInstance()}.
+     */
+    private static SelectorReceiveEngine instance;
+
+    /**
+     * Gets the <tt>SelectorReceiveEngine</tt> shared by all
+     * <tt>RTPConnectorInputStream</tt>s.
+     *
+     * @return the shared <tt>SelectorReceiveEngine</tt> instance
+     */
+    public static synchronized SelectorReceiveEngine getInstance()
+    {
+        if (instance == null)
+        {
+            ConfigurationService cfg = LibJitsi.getConfigurationService();
+            int threadCount
+                = ConfigUtils.getInt(
+                        cfg,
+                        THREAD_COUNT_PNAME,
+                        Runtime.getRuntime().availableProcessors());
+            int maxReadsPerChannel
+                = ConfigUtils.getInt(
+                        cfg,
+                        MAX_READS_PER_CHANNEL_PNAME,
+                        DEFAULT_MAX_READS_PER_CHANNEL);
+
+            instance
+                = new SelectorReceiveEngine(
+                        Math.max(1, threadCount),
+                        Math.max(1, maxReadsPerChannel));
+        }
+        return instance;
+    }
+
+    /**
+     * The maximum number of datagrams read from one channel per selection
+     * round. Bounds the time one busy stream can delay the other streams
+     * served by the same worker.
+     */
+    private final int maxReadsPerChannel;
+
+    /**
+     * The index of the worker which will be given the next registration.
+     */
+    private final AtomicInteger nextWorker = new AtomicInteger();
+
+    /**
+     * The workers of this engine.
+     */
+    private final Worker[] workers;
+
+    /**
+     * Initializes a new <tt>SelectorReceiveEngine</tt> instance.
+     *
+     * @param threadCount the number of worker threads
+     * @param maxReadsPerChannel the maximum number of datagrams to read from
+     * one channel per selection round
+     */
+    SelectorReceiveEngine(int threadCount, int maxReadsPerChannel)
+    {
+        this.maxReadsPerChannel = maxReadsPerChannel;
+
+        workers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++)
+            workers[i] = new Worker(i);
+    }
+
+    /**
+     * Gets the total number of channels currently registered with this engine.
+     *
+     * @return the total number of channels currently registered with this
+     * engine
+     */
+    public int getChannelCount()
+    {
+        int count = 0;
+
+        for (Worker worker : workers)
+            count += worker.channelCount.get();
+        return count;
+    }
+
+    /**
+     * Gets the number of worker threads of this engine.
+     *
+     * @return the number of worker threads of this engine
+     */
+    public int getThreadCount()
+    {
+        return workers.length;
+    }
+
+    /**
+     * Registers a specific <tt>DatagramChannel</tt> with this engine so that
+     * the packets received on it are pushed into a specific
+     * <tt>RTPConnectorInputStream</tt>.
+     *
+     * @param channel the <tt>DatagramChannel</tt> to read from
+     * @param stream the <tt>RTPConnectorInputStream</tt> to push the received
+     * packets into
+     * @return a <tt>Registration</tt> which is to be cancelled when
+     * <tt>stream</tt> is closed, or <tt>null</tt> if <tt>channel</tt> could not
+     * be registered (in which case the caller should fall back to a dedicated
+     * receive thread)
+     */
+    public Registration register(
+            DatagramChannel channel,
+            RTPConnectorInputStream<?> stream)
+    {
+        Worker worker
+            = workers[
+                    (nextWorker.getAndIncrement() & Integer.MAX_VALUE)
+                        % workers.length];
+
+        if (worker.selector == null)
+            return null;
+
+        try
+        {
+            // XXX The channel is not to be read in blocking mode afterwards.
+            // DatagramSocket#send would throw an
+            // IllegalBlockingModeException from now on as well which is why
+            // RTPConnectorUDPOutputStream sends through the channel.
+            channel.configureBlocking(false);
+        }
+        catch (IOException ioe)
+        {
+            logger.warn(
+                    "Failed to configure a channel as non-blocking, will not"
+                        + " use the selector receive engine: " + ioe);
+            return null;
+        }
+
+        Registration registration
+            = new Registration(worker, channel, stream);
+
+        worker.register(registration);
+        return registration;
+    }
+
+    /**
+     * Represents the association of a <tt>DatagramChannel</tt> with the
+     * <tt>RTPConnectorInputStream</tt> into which the packets received on it
+     * are pushed.
+     */
+    public static class Registration
+    {
+        /**
+         * Whether this registration has been cancelled.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * The channel to read from.
+         */
+        private final DatagramChannel channel;
+
+        /**
+         * The <tt>SelectionKey</tt> of {@link #channel} with the
+         * <tt>Selector</tt> of {@link #worker}. Set on the worker thread.
+         */
+        private SelectionKey key;
+
+        /**
+         * The stream to push the received packets into.
+         */
+        private final RTPConnectorInputStream<?> stream;
+
+        /**
+         * The worker which serves this registration.
+         */
+        private final Worker worker;
+
+        private Registration(
+                Worker worker,
+                DatagramChannel channel,
+                RTPConnectorInputStream<?> stream)
+        {
+            this.worker = worker;
+            this.channel = channel;
+            this.stream = stream;
+        }
+
+        /**
+         * Stops reading from the channel of this registration. Does not close
+         * the channel.
+         */
+        public void cancel()
+        {
+            if (!cancelled)
+            {
+                cancelled = true;
+                worker.wakeup();
+            }
+        }
+    }
+
+    /**
+     * A thread which owns a <tt>Selector</tt> and reads from the channels
+     * registered with it.
+     */
+    private class Worker
+        implements Runnable
+    {
+        /**
+         * The <tt>ByteBuffer</tt>s into which a batch of datagrams is read.
+         * Received data is copied into pooled <tt>RawPacket</tt>s by the
+         * streams, so one batch of buffers per worker is enough.
+         */
+        private final ByteBuffer[] byteBuffers;
+
+        /**
+         * The number of channels served by this worker.
+         */
+        private final AtomicInteger channelCount = new AtomicInteger();
+
+        /**
+         * The <tt>DatagramPacket</tt> views of {@link #byteBuffers} handed to
+         * the streams.
+         */
+        private final DatagramPacket[] datagramPackets;
+
+        /**
+         * The registrations which are to be registered with or cancelled from
+         * {@link #selector} on the thread of this worker.
+         */
+        private final Queue<Registration> pending
+            = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The <tt>Selector</tt> of this worker. <tt>null</tt> if it failed to
+         * open.
+         */
+        private final Selector selector;
+
+        /**
+         * The registrations served by this worker.
+         */
+        private final List<Registration> registrations = new ArrayList<>();
+
+        private Worker(int index)
+        {
+            byteBuffers = new ByteBuffer[maxReadsPerChannel];
+            datagramPackets = new DatagramPacket[maxReadsPerChannel];
+            for (int i = 0; i < maxReadsPerChannel; i++)
+            {
+                byte[] buffer
+                    = new byte[
+                            RTPConnectorInputStream
+                                .PACKET_RECEIVE_BUFFER_LENGTH];
+
+                byteBuffers[i] = ByteBuffer.wrap(buffer);
+                datagramPackets[i]
+                    = new DatagramPacket(buffer, 0, buffer.length);
+            }
+
+            Selector selector;
+
+            try
+            {
+                selector = Selector.open();
+            }
+            catch (IOException ioe)
+            {
+                logger.error("Failed to open a selector: " + ioe);
+                selector = null;
+            }
+            this.selector = selector;
+
+            if (selector != null)
+            {
+                Thread thread = new Thread(this);
+
+                thread.setDaemon(true);
+                thread.setName(
+                        SelectorReceiveEngine.class.getName() + "-" + index);
+                RTPConnectorInputStream.setThreadPriority(
+                        thread,
+                        MediaThread.getNetworkPriority());
+                thread.start();
+            }
+        }
+
+        /**
+         * Processes the registrations and cancellations queued by other
+         * threads.
+         */
+        private void processPending()
+        {
+            Registration registration;
+
+            while ((registration = pending.poll()) != null)
+            {
+                if (registration.cancelled)
+                {
+                    // It was cancelled before it got registered with the
+                    // selector and will not be seen in registrations.
+                    channelCount.decrementAndGet();
+                    continue;
+                }
+
+                try
+                {
+                    registration.key
+                        = registration.channel.register(
+                                selector,
+                                SelectionKey.OP_READ,
+                                registration);
+                    registrations.add(registration);
+                }
+                catch (ClosedChannelException cce)
+                {
+                    registration.cancelled = true;
+                    channelCount.decrementAndGet();
+                }
+            }
+
+            for (Iterator<Registration> i = registrations.iterator();
+                    i.hasNext();)
+            {
+                Registration r = i.next();
+
+                if (r.cancelled || !r.channel.isOpen())
+                {
+                    r.cancelled = true;
+                    if (r.key != null)
+                        r.key.cancel();
+                    i.remove();
+                    channelCount.decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Reads a batch of up to {@link #maxReadsPerChannel} datagrams from
+         * the channel of a specific registration and pushes them into its
+         * stream.
+         *
+         * @param registration the registration whose channel is ready
+         */
+        private void read(Registration registration)
+        {
+            int count = 0;
+
+            while (count < maxReadsPerChannel)
+            {
+                ByteBuffer byteBuffer = byteBuffers[count];
+                SocketAddress source;
+
+                byteBuffer.clear();
+                try
+                {
+                    source = registration.channel.receive(byteBuffer);
+                }
+                catch (IOException ioe)
+                {
+                    registration.cancelled = true;
+                    registration.stream.receiveFailed(ioe);
+                    break;
+                }
+                if (source == null)
+                    break; // Nothing more to read.
+
+                // The stream may reorder the elements of datagramPackets, so
+                // (re)associate the DatagramPacket with its ByteBuffer.
+                DatagramPacket datagramPacket = datagramPackets[count];
+
+                datagramPacket.setData(
+                        byteBuffer.array(), 0, byteBuffer.position());
+                datagramPacket.setSocketAddress(source);
+                count++;
+            }
+            if (count > 0)
+                registration.stream.handleReceivedDatagrams(
+                        datagramPackets, count);
+        }
+
+        /**
+         * Queues a registration to be registered with the selector of this
+         * worker.
+         *
+         * @param registration the registration to queue
+         */
+        private void register(Registration registration)
+        {
+            channelCount.incrementAndGet();
+            pending.add(registration);
+            wakeup();
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                try
+                {
+                    processPending();
+                    selector.select();
+
+                    Set<SelectionKey> selectedKeys = selector.selectedKeys();
+
+                    for (SelectionKey key : selectedKeys)
+                    {
+                        Registration registration
+                            = (Registration) key.attachment();
+
+                        if (key.isValid() && !registration.cancelled)
+                            read(registration);
+                    }
+                    selectedKeys.clear();
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+
+                    // The worker serves many streams and must not die because
+                    // of a failure in any one of them.
+                    logger.error("Failed to receive packets: ", t);
+                }
+            }
+        }
+
+        /**
+         * Wakes up the thread of this worker so that it processes the pending
+         * registrations.
+         */
+        private void wakeup()
+        {
+            if (selector != null)
+                selector.wakeup();
+        }
+    }
+}
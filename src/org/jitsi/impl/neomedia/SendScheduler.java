@@ -0,0 +1,272 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.sf.fmj.media.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.util.*;
+
+/**
+ * Drains the send queues of many {@link RTPConnectorOutputStream}s on a fixed
+ * number of threads. A queue with pending packets is represented by a single
+ * task at a time (which preserves the order of its packets) and the task gives
+ * up its thread after {@link #QUANTUM} packets, moving to the back of the line,
+ * so that queues are served round robin. Paced queues are rescheduled at the
+ * start of their next pacing interval instead of blocking a shared thread.
+ */
+public class SendScheduler
+{
+    /**
+     * The name of the property which specifies the number of threads of the
+     * shared instance.
+     */
+    public static final String THREAD_COUNT_PNAME
+        = SendScheduler.class.getName() + ".THREAD_COUNT";
+
+    /**
+     * The name of the property which specifies the value of {@link #QUANTUM}.
+     */
+    public static final String QUANTUM_PNAME
+        = SendScheduler.class.getName() + ".QUANTUM";
+
+    /**
+     * The maximum number of packets a queue is allowed to send before it
+     * yields its thread to the other queues.
+     */
+    static final int QUANTUM;
+
+    /**
+     * The shared instance, lazily initialized by {@link #getInstance()}.
+     */
+    private static SendScheduler instance;
+
+    static
+    {
+        QUANTUM
+            = Math.max(
+                    1,
+                    ConfigUtils.getInt(
+                            LibJitsi.getConfigurationService(),
+                            QUANTUM_PNAME,
+                            8));
+    }
+
+    /**
+     * Gets the <tt>SendScheduler</tt> shared by all
+     * <tt>RTPConnectorOutputStream</tt>s.
+     *
+     * @return the shared <tt>SendScheduler</tt> instance
+     */
+    public static synchronized SendScheduler getInstance()
+    {
+        if (instance == null)
+        {
+            ConfigurationService cfg = LibJitsi.getConfigurationService();
+            int threadCount
+                = ConfigUtils.getInt(
+                        cfg,
+                        THREAD_COUNT_PNAME,
+                        Runtime.getRuntime().availableProcessors());
+
+            instance = new SendScheduler(Math.max(1, threadCount));
+        }
+        return instance;
+    }
+
+    /**
+     * The executor which runs the drain tasks of the queues.
+     */
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * The total number of packets dropped by the queues served by this
+     * instance because they were full.
+     */
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    /**
+     * The total number of packets sent by the queues served by this instance.
+     */
+    private final AtomicLong sentPackets = new AtomicLong();
+
+    /**
+     * The sum in nanoseconds of the times the packets counted by
+     * {@link #sentPackets} spent in their queues.
+     */
+    private final AtomicLong totalSendLatencyNanos = new AtomicLong();
+
+    /**
+     * The number of packets currently waiting in the queues served by this
+     * instance.
+     */
+    private final AtomicInteger queuedPackets = new AtomicInteger();
+
+    /**
+     * Initializes a new <tt>SendScheduler</tt> with a specific number of
+     * threads.
+     *
+     * @param threadCount the number of threads of the new instance
+     */
+    SendScheduler(int threadCount)
+    {
+        executor
+            = new ScheduledThreadPoolExecutor(
+                    threadCount,
+                    new ThreadFactory()
+                    {
+                        private final AtomicInteger index
+                            = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t = new Thread(r);
+
+                            t.setDaemon(true);
+                            t.setName(
+                                    SendScheduler.class.getName() + "-"
+                                        + index.getAndIncrement());
+                            RTPConnectorInputStream.setThreadPriority(
+                                    t,
+                                    MediaThread.getNetworkPriority());
+                            return t;
+                        }
+                    });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Gets the average time in nanoseconds the packets sent by the queues
+     * served by this instance spent waiting to be sent.
+     *
+     * @return the average send latency in nanoseconds
+     */
+    public long getAverageSendLatencyNanos()
+    {
+        long sent = sentPackets.get();
+
+        return (sent == 0) ? 0 : totalSendLatencyNanos.get() / sent;
+    }
+
+    /**
+     * Gets the total number of packets dropped by the queues served by this
+     * instance because they were full.
+     *
+     * @return the total number of dropped packets
+     */
+    public long getDroppedPackets()
+    {
+        return droppedPackets.get();
+    }
+
+    /**
+     * Gets the number of packets currently waiting in the queues served by
+     * this instance.
+     *
+     * @return the number of packets currently waiting to be sent
+     */
+    public int getQueuedPackets()
+    {
+        return queuedPackets.get();
+    }
+
+    /**
+     * Gets the total number of packets sent by the queues served by this
+     * instance.
+     *
+     * @return the total number of sent packets
+     */
+    public long getSentPackets()
+    {
+        return sentPackets.get();
+    }
+
+    /**
+     * Gets the number of threads of this instance. Does not depend on the
+     * number of queues served.
+     *
+     * @return the number of threads of this instance
+     */
+    public int getThreadCount()
+    {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Notifies this instance that a packet was added to one of its queues.
+     */
+    void packetQueued()
+    {
+        queuedPackets.incrementAndGet();
+    }
+
+    /**
+     * Notifies this instance that a packet was dropped from one of its queues
+     * because it was full.
+     */
+    void packetDropped()
+    {
+        queuedPackets.decrementAndGet();
+        droppedPackets.incrementAndGet();
+    }
+
+    /**
+     * Notifies this instance that a packet was removed from one of its queues
+     * in order to be sent.
+     *
+     * @param latencyNanos the time in nanoseconds the packet spent in its
+     * queue
+     */
+    void packetDequeued(long latencyNanos)
+    {
+        queuedPackets.decrementAndGet();
+        sentPackets.incrementAndGet();
+        totalSendLatencyNanos.addAndGet(latencyNanos);
+    }
+
+    /**
+     * Notifies this instance that packets were removed from one of its queues
+     * without being sent (e.g. because it was closed).
+     *
+     * @param count the number of removed packets
+     */
+    void packetsDiscarded(int count)
+    {
+        if (count > 0)
+            queuedPackets.addAndGet(-count);
+    }
+
+    /**
+     * Schedules a specific drain task for execution.
+     *
+     * @param task the task which is to drain a queue
+     * @param delayNanos the delay in nanoseconds after which <tt>task</tt> is
+     * to be executed or <tt>0</tt> to execute it as soon as a thread is
+     * available
+     */
+    void schedule(Runnable task, long delayNanos)
+    {
+        if (delayNanos > 0)
+            executor.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        else
+            executor.execute(task);
+    }
+}
@@ -36,6 +36,28 @@
      */
     public static final byte MIN_AUDIO_LEVEL = 127;
 
+    /**
+     * The mean squares of the 16-bit linear samples of the signals at the
+     * boundaries of the audio levels: a signal is at audio level
+     * <tt>level</tt> or quieter if the mean square of its samples is at most
+     * <tt>LEVEL_MEAN_SQUARES[level]</tt>. Allows the audio levels to be
+     * calculated without <tt>Math.log10</tt>.
+     */
+    private static final double[] LEVEL_MEAN_SQUARES
+        = new double[MIN_AUDIO_LEVEL + 1];
+
+    static
+    {
+        double fullScale = (double) Short.MAX_VALUE * Short.MAX_VALUE;
+
+        for (int level = 0; level < LEVEL_MEAN_SQUARES.length; level++)
+        {
+            // level = -10 * log10(meanSquare / fullScale)
+            LEVEL_MEAN_SQUARES[level]
+                = fullScale * Math.pow(10, -level / 10D);
+        }
+    }
+
     /**
      * Calculates the audio level of a signal with specific <tt>samples</tt>.
      *
@@ -49,40 +71,77 @@ public static byte calculateAudioLevel(
             byte[] samples,
             int offset,
             int length)
-    { 
-        double rms = 0; // root mean square (RMS) amplitude
+    {
+        long sumOfSquares = 0;
 
-        for (; offset < length; offset += 2)
+        for (int end = offset + length; offset < end; offset += 2)
         {
-            double sample = ArrayIOUtils.readShort(samples, offset);
+            int sample = ArrayIOUtils.readShort(samples, offset);
 
-            sample /= Short.MAX_VALUE;
-            rms += sample * sample;
+            sumOfSquares += sample * sample;
         }
 
-        int sampleCount = length / 2;
-
-        rms = (sampleCount == 0) ? 0 : Math.sqrt(rms / sampleCount);
+        return toAudioLevel(sumOfSquares, length / 2);
+    }
 
-        double db;
+    /**
+     * Calculates the audio level of a signal with specific 16-bit linear
+     * <tt>samples</tt>. The result is the same as the one of
+     * {@link #calculateAudioLevel(byte[], int, int)} for the byte
+     * representation of the samples.
+     *
+     * @param samples the samples of the signal to calculate the audio level of
+     * @param offset the offset in <tt>samples</tt> in which the samples start
+     * @param length the number of samples of the signal in <tt>samples</tt>
+     * starting at <tt>offset</tt>
+     * @return the audio level of the specified signal
+     */
+    public static byte calculateAudioLevel(
+            short[] samples,
+            int offset,
+            int length)
+    {
+        long sumOfSquares = 0;
 
-        if (rms > 0)
+        for (int end = offset + length; offset < end; offset++)
         {
-            db = 20 * Math.log10(rms);
-            // XXX The audio level is expressed in -dBov.
-            db = -db;
-            // Ensure that the calculated audio level is within the range
-            // between MIN_AUDIO_LEVEL and MAX_AUDIO_LEVEL.
-            if (db > MIN_AUDIO_LEVEL)
-                db = MIN_AUDIO_LEVEL;
-            else if (db < MAX_AUDIO_LEVEL)
-                db = MAX_AUDIO_LEVEL;
+            int sample = samples[offset];
+
+            sumOfSquares += sample * sample;
         }
-        else
+
+        return toAudioLevel(sumOfSquares, length);
+    }
+
+    /**
+     * Converts the sum of the squares of the 16-bit linear samples of a signal
+     * into an audio level.
+     *
+     * @param sumOfSquares the sum of the squares of the samples of the signal
+     * @param sampleCount the number of samples of the signal
+     * @return the audio level of the signal
+     */
+    private static byte toAudioLevel(long sumOfSquares, int sampleCount)
+    {
+        if (sumOfSquares == 0 || sampleCount <= 0)
+            return MIN_AUDIO_LEVEL;
+
+        double meanSquare = sumOfSquares / (double) sampleCount;
+
+        // Find the quietest level whose boundary is not exceeded. The levels
+        // which are louder than MAX_AUDIO_LEVEL are clamped to it.
+        int low = MAX_AUDIO_LEVEL;
+        int high = MIN_AUDIO_LEVEL;
+
+        while (low < high)
         {
-            db = MIN_AUDIO_LEVEL;
-        }
+            int mid = (low + high + 1) >>> 1;
 
-        return (byte) db;
+            if (meanSquare <= LEVEL_MEAN_SQUARES[mid])
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return (byte) low;
     }
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.audiolevel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.util.*;
+
+/**
+ * Dispatches the audio levels measured or received by all streams to their
+ * listeners on a single thread every {@link #PERIOD} milliseconds instead of
+ * each stream dispatching them on a thread of its own. A stream stores the
+ * latest audio levels in its {@link Task} as they become available and
+ * schedules the <tt>Task</tt> which then delivers them in one batch per
+ * period. A <tt>Task</tt> with nothing to dispatch for
+ * {@link #IDLE_TIMEOUT} milliseconds is unscheduled until its stream has
+ * audio levels again, and the periodic execution is cancelled while no
+ * <tt>Task</tt> is scheduled.
+ */
+public class AudioLevelDispatchScheduler
+    implements Runnable
+{
+    /**
+     * The interval of time in milliseconds after which a <tt>Task</tt> with
+     * nothing to dispatch is unscheduled.
+     */
+    public static final long IDLE_TIMEOUT = 1000;
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>AudioLevelDispatchScheduler</tt>
+     * class and its instances to print debug information.
+     */
+    private static final Logger logger
+        = Logger.getLogger(AudioLevelDispatchScheduler.class);
+
+    /**
+     * The interval of time in milliseconds at which the audio levels are
+     * dispatched, which is the duration of a typical audio frame.
+     */
+    public static final long PERIOD = 20;
+
+    /**
+     * The <tt>AudioLevelDispatchScheduler</tt> shared by all streams.
+     */
+    private static final AudioLevelDispatchScheduler instance
+        = new AudioLevelDispatchScheduler();
+
+    /**
+     * Gets the <tt>AudioLevelDispatchScheduler</tt> shared by all streams.
+     *
+     * @return the <tt>AudioLevelDispatchScheduler</tt> shared by all streams
+     */
+    public static AudioLevelDispatchScheduler getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * The single thread which dispatches the audio levels.
+     */
+    private final ScheduledExecutorService executor
+        = ExecutorUtils.newScheduledThreadPool(
+                1,
+                true,
+                AudioLevelDispatchScheduler.class.getSimpleName());
+
+    /**
+     * The periodic execution of this instance by {@link #executor} or
+     * <tt>null</tt> if no <tt>Task</tt> is scheduled.
+     */
+    private ScheduledFuture<?> future;
+
+    /**
+     * The scheduled <tt>Task</tt>s.
+     */
+    private final List<Task> tasks = new CopyOnWriteArrayList<>();
+
+    /**
+     * Initializes a new <tt>AudioLevelDispatchScheduler</tt> instance.
+     */
+    private AudioLevelDispatchScheduler()
+    {
+    }
+
+    /**
+     * Dispatches the audio levels of the scheduled <tt>Task</tt>s and
+     * unschedules the idle ones.
+     */
+    @Override
+    public void run()
+    {
+        long now = System.currentTimeMillis();
+
+        for (Task task : tasks)
+        {
+            boolean idle;
+
+            try
+            {
+                idle = !task.run(now);
+            }
+            catch (Throwable t)
+            {
+                // An exception would cancel the periodic execution.
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+
+                logger.error("Failed to dispatch audio levels.", t);
+                idle = false;
+            }
+            if (idle)
+                unschedule(task);
+        }
+    }
+
+    /**
+     * Schedules a <tt>Task</tt> so that its audio levels are dispatched
+     * periodically.
+     *
+     * @param task the <tt>Task</tt> to schedule
+     */
+    private synchronized void schedule(Task task)
+    {
+        if (task.scheduled)
+            return;
+
+        task.lastDispatchTime = System.currentTimeMillis();
+        task.scheduled = true;
+        tasks.add(task);
+        if (future == null)
+        {
+            future
+                = executor.scheduleAtFixedRate(
+                        this,
+                        PERIOD, PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Unschedules an idle <tt>Task</tt> unless it has audio levels to
+     * dispatch (again).
+     *
+     * @param task the <tt>Task</tt> to unschedule
+     */
+    private synchronized void unschedule(Task task)
+    {
+        // Task.schedule() reads scheduled after the audio levels are stored,
+        // so they are either seen here or the Task is scheduled again.
+        task.scheduled = false;
+        if (task.hasPending())
+        {
+            task.scheduled = true;
+            return;
+        }
+
+        tasks.remove(task);
+        if (tasks.isEmpty() && future != null)
+        {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * The audio levels of a stream which are dispatched by the
+     * <tt>AudioLevelDispatchScheduler</tt>.
+     */
+    public static abstract class Task
+    {
+        /**
+         * The last time in milliseconds at which this <tt>Task</tt>
+         * dispatched audio levels.
+         */
+        private long lastDispatchTime;
+
+        /**
+         * The indicator which determines whether this <tt>Task</tt> is
+         * scheduled.
+         */
+        private volatile boolean scheduled = false;
+
+        /**
+         * Dispatches the audio levels stored since the last invocation of the
+         * method.
+         *
+         * @return <tt>true</tt> if audio levels were dispatched; otherwise,
+         * <tt>false</tt>
+         */
+        protected abstract boolean dispatch();
+
+        /**
+         * Determines whether audio levels are stored which have not been
+         * dispatched yet.
+         *
+         * @return <tt>true</tt> if audio levels are stored which have not been
+         * dispatched yet; otherwise, <tt>false</tt>
+         */
+        protected abstract boolean hasPending();
+
+        /**
+         * Dispatches the stored audio levels.
+         *
+         * @param now the current time in milliseconds
+         * @return <tt>false</tt> if this <tt>Task</tt> is idle; otherwise,
+         * <tt>true</tt>
+         */
+        private boolean run(long now)
+        {
+            if (dispatch())
+            {
+                lastDispatchTime = now;
+                return true;
+            }
+            else
+            {
+                return now - lastDispatchTime < IDLE_TIMEOUT;
+            }
+        }
+
+        /**
+         * Schedules this <tt>Task</tt> with the shared
+         * <tt>AudioLevelDispatchScheduler</tt> if it is not scheduled yet. To
+         * be invoked after audio levels have been stored.
+         */
+        public void schedule()
+        {
+            if (!scheduled)
+                getInstance().schedule(this);
+        }
+    }
+}
@@ -20,17 +20,13 @@
 import org.jitsi.service.neomedia.event.*;
 
 /**
- * The class implements an audio level measurement thread. The thread will
- * measure new data every time it is added through the <tt>addData()</tt> method
- * and would then deliver it to a registered listener if any. (No measurement
- * would be performed until we have a <tt>levelListener</tt>). We use a
- * separate thread so that we could compute and deliver audio levels in a way
- * that won't delay the media processing thread.
- * <p>
- * Note that, for performance reasons this class is not 100% thread safe and you
- * should not modify add or remove audio listeners in this dispatcher in the
- * notification thread (i.e. in the thread where you were notified of an audio
- * level change).
+ * The class implements the dispatching of the audio levels of the data added
+ * through the <tt>addData()</tt> method to a registered listener if any. (No
+ * measurement is performed until we have a <tt>levelListener</tt>). The audio
+ * level of the data is calculated right away (which is cheap) and the latest
+ * one is delivered by the thread of the {@link AudioLevelDispatchScheduler}
+ * which is shared by all instances so that the media processing thread is not
+ * delayed by the listener.
  *
  * @author Damian Minkov
  * @author Emil Ivov
@@ -38,13 +34,6 @@
  */
 public class AudioLevelEventDispatcher
 {
-    /**
-     * The interval of time in milliseconds which the Thread of
-     * AudioLevelEventDispatcher is to idly wait for data to be provided for
-     * audio level calculation before it exits.
-     */
-    private static final long IDLE_TIMEOUT = 30 * 1000;
-
     /**
      * The <tt>AudioLevelMap</tt> in which the audio calculations run by this
      * <tt>AudioLevelEventDispatcher</tt> are to be cached in addition to
@@ -53,14 +42,15 @@
     private AudioLevelMap cache = null;
 
     /**
-     * The data to process.
+     * The audio level of the data added last.
      */
-    private byte[] data = null;
+    private int level;
 
     /**
-     * The length of the data last recorded in the <tt>data</tt> array.
+     * The indicator which determines whether {@link #level} has not been
+     * dispatched yet.
      */
-    private int dataLength = 0;
+    private boolean levelPending = false;
 
     /**
      * The listener which is interested in audio level changes.
@@ -74,164 +64,109 @@
     private long ssrc = -1;
 
     /**
-     * The <tt>Thread</tt> which runs the actual audio level calculations and
-     * dispatches to {@link #listener}.
+     * The <tt>Task</tt> which dispatches {@link #level} on the thread of the
+     * <tt>AudioLevelDispatchScheduler</tt>.
      */
-    private Thread thread;
+    private final AudioLevelDispatchScheduler.Task task
+        = new AudioLevelDispatchScheduler.Task()
+        {
+            @Override
+            protected boolean dispatch()
+            {
+                return AudioLevelEventDispatcher.this.dispatch();
+            }
 
-    /**
-     * The name of the <tt>Thread</tt> which is to run the actual audio level
-     * calculations and to dispatch to {@link #listener}.
-     */
-    private final String threadName;
+            @Override
+            protected boolean hasPending()
+            {
+                synchronized (AudioLevelEventDispatcher.this)
+                {
+                    return levelPending;
+                }
+            }
+        };
 
     /**
-     * Initializes a new <tt>AudioLevelEventDispatcher</tt> instance which is to
-     * use a specific name for its <tt>Thread</tt> which is to run the actual
-     * audio level calculations and to dispatch to its
-     * <tt>SimpleAudioLevelListener</tt>
+     * Initializes a new <tt>AudioLevelEventDispatcher</tt> instance.
      *
-     * @param threadName
+     * @param threadName unused because the audio levels of all instances are
+     * dispatched by the thread of the <tt>AudioLevelDispatchScheduler</tt>
      */
     public AudioLevelEventDispatcher(String threadName)
     {
-        this.threadName = threadName;
     }
 
     /**
-     * Runs the actual audio level calculations and dispatches to the
-     * {@link #listener}.
+     * Adds data to be processed.
+     *
+     * @param buffer the data that we'd like to queue for processing.
      */
-    private void run()
+    public void addData(Buffer buffer)
     {
-        long idleTimeoutStart = -1;
-
-        while (true)
+        synchronized (this)
         {
-            SimpleAudioLevelListener listener;
-            AudioLevelMap cache;
-            long ssrc;
-
-            byte[] data;
-            int dataLength;
-
-            synchronized(this)
-            {
-                if (!Thread.currentThread().equals(thread))
-                    break;
-
-                listener = this.listener;
-                cache = this.cache;
-                ssrc = this.ssrc;
-                /*
-                 * If no one is interested in the audio level, do not even keep
-                 * the Thread waiting.
-                 */
-                if ((listener == null) && ((cache == null) || (ssrc == -1)))
-                    break;
-
-                data = this.data;
-                dataLength = this.dataLength;
-                /*
-                 * If there is no data to calculate the audio level of, wait for
-                 * such data to be provided.
-                 */
-                if ((data == null) || (dataLength < 1))
-                {
-                    // The current thread is idle.
-                    if (idleTimeoutStart == -1)
-                        idleTimeoutStart = System.currentTimeMillis();
-                    else if ((System.currentTimeMillis() - idleTimeoutStart)
-                            >= IDLE_TIMEOUT)
-                        break;
-
-                    boolean interrupted = false;
-
-                    try
-                    {
-                        wait(IDLE_TIMEOUT);
-                    }
-                    catch (InterruptedException ie)
-                    {
-                        interrupted = true;
-                    }
-                    if (interrupted)
-                        Thread.currentThread().interrupt();
+            /*
+             * If no one is interested in the audio level, do not even
+             * calculate it.
+             */
+            if ((listener == null) && ((cache == null) || (ssrc == -1)))
+                return;
+        }
 
-                    continue;
-                }
-                // The values of data and dataLength seem valid so consume them.
-                this.data = null;
-                this.dataLength = 0;
-                // The current thread is no longer idle.
-                idleTimeoutStart = -1;
-            }
+        int length = buffer.getLength();
+        Object data = buffer.getData();
 
+        if ((length > 0) && (data instanceof byte[]))
+        {
             int level
-                = AudioLevelCalculator.calculateAudioLevel(data, 0, dataLength);
+                = AudioLevelCalculator.calculateAudioLevel(
+                        (byte[]) data, buffer.getOffset(), length);
 
             // FIXME The audio level is expressed in -dBov.
             level = AudioLevelCalculator.MIN_AUDIO_LEVEL - level;
 
-            /*
-             * In order to try to mitigate the issue with allocating data, try
-             * to return the one which we have just calculated the audio level
-             * of.
-             */
             synchronized (this)
             {
-                if ((this.data == null)
-                        && (this.listener == null)
-                        && ((this.cache == null) || (this.ssrc == -1)))
-                {
-                    this.data = data;
-                }
+                this.level = level;
+                levelPending = true;
             }
-
-            // Cache the newLevel if requested.
-            if ((cache != null) && (ssrc != -1))
-                cache.putLevel(ssrc, level);
-            // Notify the listener about the newLevel if requested.
-            if (listener != null)
-                listener.audioLevelChanged(level);
+            task.schedule();
         }
     }
 
     /**
-     * Adds data to be processed.
+     * Dispatches the audio level of the data added last to {@link #cache} and
+     * {@link #listener} if it has not been dispatched yet.
      *
-     * @param buffer the data that we'd like to queue for processing.
+     * @return <tt>true</tt> if an audio level was dispatched; otherwise,
+     * <tt>false</tt>
      */
-    public synchronized void addData(Buffer buffer)
+    private boolean dispatch()
     {
-        /*
-         * If no one is interested in the audio level, do not even add the
-         * Buffer data.
-         */
-        if ((listener == null) && ((cache == null) || (ssrc == -1)))
-            return;
+        SimpleAudioLevelListener listener;
+        AudioLevelMap cache;
+        long ssrc;
+        int level;
 
-        dataLength = buffer.getLength();
-        if (dataLength > 0)
+        synchronized (this)
         {
-            if((data == null) || (data.length < dataLength))
-                data = new byte[dataLength];
-
-            Object bufferData = buffer.getData();
-
-            if (bufferData != null)
-            {
-                System.arraycopy(
-                        bufferData, buffer.getOffset(),
-                        data, 0,
-                        dataLength);
-            }
-
-            if (thread == null)
-                startThread();
-            else
-                notify();
+            if (!levelPending)
+                return false;
+
+            levelPending = false;
+            listener = this.listener;
+            cache = this.cache;
+            ssrc = this.ssrc;
+            level = this.level;
         }
+
+        // Cache the newLevel if requested.
+        if ((cache != null) && (ssrc != -1))
+            cache.putLevel(ssrc, level);
+        // Notify the listener about the newLevel if requested.
+        if (listener != null)
+            listener.audioLevelChanged(level);
+        return true;
     }
 
     /**
@@ -244,11 +179,7 @@ public synchronized void addData(Buffer buffer)
     public synchronized void setAudioLevelListener(
             SimpleAudioLevelListener listener)
     {
-        if (this.listener != listener)
-        {
-            this.listener = listener;
-            startOrNotifyThread();
-        }
+        this.listener = listener;
     }
 
     /**
@@ -262,77 +193,7 @@ public synchronized void setAudioLevelListener(
      */
     public synchronized void setAudioLevelCache(AudioLevelMap cache, long ssrc)
     {
-        if ((this.cache != cache) || (this.ssrc != ssrc))
-        {
-            this.cache = cache;
-            this.ssrc = ssrc;
-            startOrNotifyThread();
-        }
-    }
-
-    /**
-     * Starts the <tt>Thread</tt> which is to run the audio level calculations
-     * and to dispatch to {@link #listener} if necessary or notifies it about a
-     * change it the state on which it depends.
-     */
-    private synchronized void startOrNotifyThread()
-    {
-        if ((this.listener == null) && ((cache == null) || (ssrc == -1)))
-        {
-            thread = null;
-            notify();
-        }
-        else if ((data != null) && (dataLength > 0))
-        {
-            if (thread == null)
-                startThread();
-            else
-                notify();
-        }
-    }
-
-    /**
-     * Starts the <tt>Thread</tt> which is to run the audio level calculations
-     * and to dispatch to {@link #listener}.
-     */
-    private synchronized void startThread()
-    {
-        thread
-            = new Thread()
-            {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        AudioLevelEventDispatcher.this.run();
-                    }
-                    finally
-                    {
-                        synchronized (AudioLevelEventDispatcher.this)
-                        {
-                            if (Thread.currentThread().equals(thread))
-                                thread = null;
-                            /*
-                             * If the thread of this AudioLevelEventDispatcher
-                             * is dying yet the state suggests that it should be
-                             * running, restart it.
-                             */
-                            if ((thread == null)
-                                    && ((listener != null)
-                                            || ((cache != null)
-                                                    && (ssrc != -1)))
-                                    && (data != null)
-                                    && (dataLength > 0))
-                                startThread();
-                        }
-                    }
-                }
-            };
-        thread.setDaemon(true);
-        if (threadName != null)
-            thread.setName(threadName);
-
-        thread.start();
+        this.cache = cache;
+        this.ssrc = ssrc;
     }
 }
@@ -55,6 +55,10 @@
  */
 public class AudioMixer
 {
+    /**
+     * The default value of {@link #MAX_MIXED_SPEAKERS_PNAME}.
+     */
+    public static final int DEFAULT_MAX_MIXED_SPEAKERS = 3;
 
     /**
      * The default output <tt>AudioFormat</tt> in which <tt>AudioMixer</tt>,
@@ -76,6 +80,27 @@
      */
     private static final Logger logger = Logger.getLogger(AudioMixer.class);
 
+    /**
+     * The name of the <tt>ConfigurationService</tt> property which specifies
+     * the maximum number of (the loudest) input streams which are mixed when
+     * {@link #SHARED_SUM_MIXING_PNAME} is enabled. A non-positive value mixes
+     * all input streams.
+     */
+    public static final String MAX_MIXED_SPEAKERS_PNAME
+        = AudioMixer.class.getName() + ".maxMixedSpeakers";
+
+    /**
+     * The name of the <tt>boolean</tt> <tt>ConfigurationService</tt> property
+     * which indicates whether the audio of all input streams is to be mixed
+     * once per frame and the mix of each output stream is to be derived from
+     * it by subtracting the audio of the output stream's own input streams
+     * instead of mixing the audio of the other input streams separately for
+     * each output stream. The mix is linear (with saturation) rather than the
+     * one of <tt>AudioMixingPushBufferStream</tt>. Disabled by default.
+     */
+    public static final String SHARED_SUM_MIXING_PNAME
+        = AudioMixer.class.getName() + ".sharedSumMixing";
+
     /**
      * Gets the <tt>Format</tt> in which a specific <tt>DataSource</tt>
      * provides stream data.
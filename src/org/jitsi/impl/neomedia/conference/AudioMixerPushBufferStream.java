@@ -26,6 +26,8 @@
 
 import org.jitsi.impl.neomedia.control.*;
 import org.jitsi.impl.neomedia.protocol.*;
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.libjitsi.*;
 import org.jitsi.util.*;
 
 /**
@@ -57,6 +59,12 @@
      */
     private final AudioMixer audioMixer;
 
+    /**
+     * The indexes of the input streams which are not to be heard by the
+     * output stream for which {@link #sharedSumMixer} is mixing.
+     */
+    private int[] excludedInStreams;
+
     /**
      * The <tt>SourceStream</tt>s (in the form of <tt>InStreamDesc</tt> so
      * that this instance can track back the
@@ -106,6 +114,14 @@
      */
     private long outStreamsGeneration;
 
+    /**
+     * The <tt>SharedSumMixer</tt> which mixes the audio of all input streams
+     * once per frame for all {@link #outStreams} if
+     * {@link AudioMixer#SHARED_SUM_MIXING_PNAME} is enabled; otherwise,
+     * <tt>null</tt> and each of <tt>outStreams</tt> mixes its input streams.
+     */
+    private final SharedSumMixer sharedSumMixer;
+
     /**
      * The <tt>BufferTransferHandler</tt> through which this instance gets
      * notifications from its input <tt>SourceStream</tt>s that new data is
@@ -156,6 +172,20 @@ public AudioMixerPushBufferStream(
     {
         this.audioMixer = audioMixer;
         this.outFormat = outFormat;
+
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+        sharedSumMixer
+            = ConfigUtils.getBoolean(
+                    cfg,
+                    AudioMixer.SHARED_SUM_MIXING_PNAME,
+                    false)
+                ? new SharedSumMixer(
+                        ConfigUtils.getInt(
+                                cfg,
+                                AudioMixer.MAX_MIXED_SPEAKERS_PNAME,
+                                AudioMixer.DEFAULT_MAX_MIXED_SPEAKERS))
+                : null;
     }
 
     /**
@@ -984,6 +1014,90 @@ else if (outDataSource.equals(inStreamDesc.getOutDataSource())
                 inSampleDesc.getTimeStamp());
     }
 
+    /**
+     * Pushes the mix of a specific set of input audio samples for a specific
+     * <tt>AudioMixingPushBufferStream</tt> derived from the total mix computed
+     * by {@link #sharedSumMixer}. Audio samples read from input
+     * <tt>DataSource</tt>s which the <tt>AudioMixingPushBufferDataSource</tt>
+     * owner of the specified <tt>AudioMixingPushBufferStream</tt> has
+     * specified to not be included in the output mix are subtracted from the
+     * total mix.
+     *
+     * @param outStream the <tt>AudioMixingPushBufferStream</tt> to push the
+     * mix to
+     * @param inSampleDesc the set of audio samples summed by
+     * <tt>sharedSumMixer</tt>
+     * @param maxInSampleCount the maximum number of audio samples available
+     * in <tt>inSamples</tt>
+     */
+    private void setMixSamples(
+            AudioMixingPushBufferStream outStream,
+            InSampleDesc inSampleDesc,
+            int maxInSampleCount)
+    {
+        short[][] inSamples = inSampleDesc.inSamples;
+        InStreamDesc[] inStreams = inSampleDesc.inStreams;
+        CaptureDevice captureDevice = audioMixer.captureDevice;
+        AudioMixingPushBufferDataSource outDataSource
+            = outStream.getDataSource();
+        boolean outDataSourceIsSendingDTMF
+            = (captureDevice instanceof AudioMixingPushBufferDataSource)
+                ? outDataSource.isSendingDTMF()
+                : false;
+        boolean outDataSourceIsMute = outDataSource.isMute();
+        int[] excludedInStreams = this.excludedInStreams;
+        int excludedInStreamCount = 0;
+        short[] nextToneSignal = null;
+
+        if ((excludedInStreams == null)
+                || (excludedInStreams.length < inSamples.length))
+        {
+            this.excludedInStreams
+                = excludedInStreams
+                    = new int[inSamples.length];
+        }
+
+        for (int i = 0; i < inSamples.length; i++)
+        {
+            InStreamDesc inStreamDesc = inStreams[i];
+            DataSource inDataSource
+                = inStreamDesc.inDataSourceDesc.inDataSource;
+
+            if (outDataSourceIsSendingDTMF && (inDataSource == captureDevice))
+            {
+                PushBufferStream inStream
+                    = (PushBufferStream) inStreamDesc.getInStream();
+                AudioFormat inStreamFormat = (AudioFormat) inStream.getFormat();
+
+                // Generate the inband DTMF signal in place of the input.
+                nextToneSignal
+                    = outDataSource.getNextToneSignal(
+                            inStreamFormat.getSampleRate(),
+                            inStreamFormat.getSampleSizeInBits());
+                if (maxInSampleCount < nextToneSignal.length)
+                    maxInSampleCount = nextToneSignal.length;
+                excludedInStreams[excludedInStreamCount++] = i;
+            }
+            else if (outDataSource.equals(inStreamDesc.getOutDataSource())
+                    || (outDataSourceIsMute && (inDataSource == captureDevice)))
+            {
+                excludedInStreams[excludedInStreamCount++] = i;
+            }
+        }
+
+        short[] mixSamples = outStream.allocateMixSamples(maxInSampleCount);
+
+        sharedSumMixer.mix(
+                inSamples,
+                excludedInStreams, excludedInStreamCount,
+                nextToneSignal,
+                mixSamples, maxInSampleCount);
+        outStream.setInSamples(
+                new short[][] { mixSamples },
+                maxInSampleCount,
+                inSampleDesc.getTimeStamp());
+    }
+
     /**
      * Sets the <tt>SourceStream</tt>s (in the form of <tt>InStreamDesc</tt>)
      * from which this instance is to read audio samples and push them to the
@@ -1201,8 +1315,20 @@ protected void transferData(Buffer buffer)
                                         this.outStreams.size()]);
             }
         }
-        for (AudioMixingPushBufferStream outStream : outStreams)
-            setInSamples(outStream, inSampleDesc, maxInSampleCount);
+        if (sharedSumMixer == null)
+        {
+            for (AudioMixingPushBufferStream outStream : outStreams)
+                setInSamples(outStream, inSampleDesc, maxInSampleCount);
+        }
+        else
+        {
+            synchronized (sharedSumMixer)
+            {
+                sharedSumMixer.sum(inSamples, maxInSampleCount);
+                for (AudioMixingPushBufferStream outStream : outStreams)
+                    setMixSamples(outStream, inSampleDesc, maxInSampleCount);
+            }
+        }
 
         /*
          * The input samples have already been delivered to the output streams
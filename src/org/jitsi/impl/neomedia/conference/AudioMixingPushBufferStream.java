@@ -105,6 +105,13 @@ private static int getMaxOutSample(AudioFormat outFormat)
      */
     private int maxInSampleCount;
 
+    /**
+     * The audio samples mixed for this instance by {@link #audioMixerStream}
+     * when it mixes the audio of all participants once per frame. Cached in
+     * order to reduce allocations and garbage collection.
+     */
+    private short[] mixSamples;
+
     /**
      * The audio samples output by the last invocation of
      * {@link #mix(int[][], AudioFormat, int)}. Cached in order to reduce
@@ -162,6 +169,24 @@ private short[] allocateOutSamples(int minSize)
         return outSamples;
     }
 
+    /**
+     * Gets an array into which {@link #audioMixerStream} may write the mix of
+     * this instance when it mixes the audio of all participants once per
+     * frame. The array is then set as the only element of the audio sample
+     * sets of this instance so that {@link #read(Buffer)} reads it as it is.
+     *
+     * @param minSize the minimum number of samples of the array
+     * @return an array of at least <tt>minSize</tt> samples
+     */
+    short[] allocateMixSamples(int minSize)
+    {
+        short[] mixSamples = this.mixSamples;
+
+        if ((mixSamples == null) || (mixSamples.length < minSize))
+            this.mixSamples = mixSamples = new short[minSize];
+        return mixSamples;
+    }
+
     /**
      * Implements {@link SourceStream#endOfStream()}. Delegates to the wrapped
      * <tt>AudioMixerPushBufferStream</tt> because this instance is just a facet
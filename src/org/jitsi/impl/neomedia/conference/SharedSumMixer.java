@@ -0,0 +1,289 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.conference;
+
+import java.util.*;
+
+import org.jitsi.impl.neomedia.audiolevel.*;
+
+/**
+ * Mixes the audio of all participants of a conference once per frame and
+ * derives the mix of each participant from it by subtracting the audio of the
+ * participant. The total mix is kept in <tt>int</tt>s so that it does not
+ * overflow and saturation to 16 bits is applied last, to the mix of each
+ * participant. Thus mixing a frame for <tt>N</tt> participants adds
+ * <tt>O(N)</tt> rather than <tt>O(N^2)</tt> sets of samples.
+ * <p>
+ * Optionally, only the loudest input streams are mixed (as measured by
+ * {@link AudioLevelCalculator} i.e. the way the audio levels reported by
+ * <tt>AudioLevelEventDispatcher</tt> are) so that the cost of mixing a frame
+ * remains bounded in large conferences.
+ * </p>
+ * <p>
+ * Private to <tt>AudioMixerPushBufferStream</tt> but extracted into its own
+ * file for the sake of clarity. Instances are not thread-safe.
+ * </p>
+ */
+class SharedSumMixer
+{
+    /**
+     * Saturates a specific sample to the range of 16-bit signed linear audio.
+     *
+     * @param sample the sample to saturate
+     * @return <tt>sample</tt> saturated to the range of <tt>short</tt>
+     */
+    private static short saturate(int sample)
+    {
+        if (sample > Short.MAX_VALUE)
+            return Short.MAX_VALUE;
+        else if (sample < Short.MIN_VALUE)
+            return Short.MIN_VALUE;
+        else
+            return (short) sample;
+    }
+
+    /**
+     * The flags which indicate whether the input streams are included in
+     * {@link #total} indexed by input stream.
+     */
+    private boolean[] isMixed = new boolean[0];
+
+    /**
+     * The audio levels of the input streams of the last frame summed by
+     * {@link #sum(short[][], int)} indexed by input stream.
+     */
+    private byte[] levels;
+
+    /**
+     * The maximum number of input streams which are mixed or a non-positive
+     * value if all input streams are mixed.
+     */
+    private final int maxMixedCount;
+
+    /**
+     * The indexes of the input streams which are included in {@link #total}
+     * ordered from the loudest to the most quiet.
+     */
+    private int[] mixed;
+
+    /**
+     * The number of valid elements of {@link #mixed}.
+     */
+    private int mixedCount;
+
+    /**
+     * The mix of the input streams with indexes {@link #mixed}.
+     */
+    private int[] total;
+
+    /**
+     * The number of valid elements of {@link #total}.
+     */
+    private int totalLength;
+
+    /**
+     * The <tt>int</tt>s in which the mix of a participant is computed before
+     * it is saturated.
+     */
+    private int[] work;
+
+    /**
+     * Initializes a new <tt>SharedSumMixer</tt> instance.
+     *
+     * @param maxMixedCount the maximum number of (the loudest) input streams
+     * to mix or a non-positive value to mix all input streams
+     */
+    public SharedSumMixer(int maxMixedCount)
+    {
+        this.maxMixedCount = maxMixedCount;
+    }
+
+    /**
+     * Gets the number of input streams included in the total mix of the last
+     * frame summed by {@link #sum(short[][], int)}.
+     *
+     * @return the number of input streams included in the total mix
+     */
+    public int getMixedCount()
+    {
+        return mixedCount;
+    }
+
+    /**
+     * Determines whether a specific input stream is included in the total mix
+     * of the last frame summed by {@link #sum(short[][], int)}.
+     *
+     * @param inIndex the index of the input stream
+     * @return <tt>true</tt> if the input stream with index <tt>inIndex</tt>
+     * is included in the total mix; otherwise, <tt>false</tt>
+     */
+    public boolean isMixed(int inIndex)
+    {
+        return (inIndex < isMixed.length) && isMixed[inIndex];
+    }
+
+    /**
+     * Computes the mix of a participant i.e. the total mix of the last frame
+     * summed by {@link #sum(short[][], int)} without the audio of specific
+     * input streams and with the audio of another, optional, set of samples.
+     *
+     * @param inSamples the samples of the input streams which have been
+     * summed
+     * @param excluded the indexes in <tt>inSamples</tt> of the input streams
+     * which are not to be heard by the participant
+     * @param excludedCount the number of valid elements of <tt>excluded</tt>
+     * @param added the samples to be heard by the participant in addition to
+     * the mix (e.g. a DTMF tone) or <tt>null</tt>
+     * @param outSamples the array into which the mix is to be written
+     * @param outSampleCount the number of samples to write into
+     * <tt>outSamples</tt>
+     */
+    public void mix(
+            short[][] inSamples,
+            int[] excluded, int excludedCount,
+            short[] added,
+            short[] outSamples, int outSampleCount)
+    {
+        int[] work = this.work;
+
+        if ((work == null) || (work.length < outSampleCount))
+            this.work = work = new int[outSampleCount];
+
+        int length = Math.min(totalLength, outSampleCount);
+
+        System.arraycopy(total, 0, work, 0, length);
+        if (length < outSampleCount)
+            Arrays.fill(work, length, outSampleCount, 0);
+
+        for (int e = 0; e < excludedCount; e++)
+        {
+            int inIndex = excluded[e];
+
+            if (!isMixed(inIndex))
+                continue;
+
+            short[] inStreamSamples = inSamples[inIndex];
+            int inStreamSampleCount
+                = Math.min(inStreamSamples.length, length);
+
+            for (int i = 0; i < inStreamSampleCount; i++)
+                work[i] -= inStreamSamples[i];
+        }
+        if (added != null)
+        {
+            int addedCount = Math.min(added.length, outSampleCount);
+
+            for (int i = 0; i < addedCount; i++)
+                work[i] += added[i];
+        }
+
+        for (int i = 0; i < outSampleCount; i++)
+            outSamples[i] = saturate(work[i]);
+    }
+
+    /**
+     * Selects the input streams to be mixed in a specific frame and sums
+     * their samples into the total mix. Input streams without audio or with
+     * silence are not mixed.
+     *
+     * @param inSamples the samples of the input streams of the frame. The
+     * <tt>null</tt> elements are ignored.
+     * @param sampleCount the maximum number of samples per input stream
+     */
+    public void sum(short[][] inSamples, int sampleCount)
+    {
+        int inCount = inSamples.length;
+        boolean selectLoudest
+            = (maxMixedCount > 0) && (maxMixedCount < inCount);
+
+        if ((mixed == null) || (mixed.length < inCount))
+        {
+            mixed = new int[inCount];
+            levels = new byte[inCount];
+            isMixed = new boolean[inCount];
+        }
+        else
+        {
+            Arrays.fill(isMixed, false);
+        }
+        mixedCount = 0;
+
+        for (int inIndex = 0; inIndex < inCount; inIndex++)
+        {
+            short[] inStreamSamples = inSamples[inIndex];
+
+            if (inStreamSamples == null)
+                continue;
+
+            int inStreamSampleCount
+                = Math.min(inStreamSamples.length, sampleCount);
+
+            if (inStreamSampleCount == 0)
+                continue;
+            if (!selectLoudest)
+            {
+                mixed[mixedCount++] = inIndex;
+                continue;
+            }
+
+            byte level
+                = AudioLevelCalculator.calculateAudioLevel(
+                        inStreamSamples, 0, inStreamSampleCount);
+
+            // The audio level is expressed in -dBov i.e. the lower the louder.
+            if (level == AudioLevelCalculator.MIN_AUDIO_LEVEL)
+                continue;
+            levels[inIndex] = level;
+
+            // Insert inIndex into the ordered loudest (if it is loud enough).
+            int i = mixedCount;
+
+            if (i == maxMixedCount)
+            {
+                if (level >= levels[mixed[i - 1]])
+                    continue;
+                i--;
+            }
+            else
+            {
+                mixedCount++;
+            }
+            for (; (i > 0) && (level < levels[mixed[i - 1]]); i--)
+                mixed[i] = mixed[i - 1];
+            mixed[i] = inIndex;
+        }
+
+        for (int m = 0; m < mixedCount; m++)
+            isMixed[mixed[m]] = true;
+
+        int[] total = this.total;
+
+        if ((total == null) || (total.length < sampleCount))
+            this.total = total = new int[sampleCount];
+        Arrays.fill(total, 0, sampleCount, 0);
+        totalLength = sampleCount;
+
+        for (int m = 0; m < mixedCount; m++)
+        {
+            short[] inStreamSamples = inSamples[mixed[m]];
+            int inStreamSampleCount
+                = Math.min(inStreamSamples.length, sampleCount);
+
+            for (int i = 0; i < inStreamSampleCount; i++)
+                total[i] += inStreamSamples[i];
+        }
+    }
+}
@@ -0,0 +1,905 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.jmfext.media.protocol.rtpdumpfile;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+
+/**
+ * Reads the RTP packets of an rtpdump, pcap or pcapng file. The file is mapped
+ * into memory and indexed once when it is opened: the SSRC, sequence number,
+ * RTP timestamp, capture time and location of every RTP packet are kept in
+ * primitive arrays so that packets may be looked up, filtered and paced
+ * without reading the file again. Reading a packet is a single bulk copy from
+ * the mapping into the buffer of a (possibly reused) <tt>RawPacket</tt>.
+ *
+ * The pcap and pcapng link types Ethernet (with VLAN tags), Linux cooked
+ * (v1 and v2), BSD loopback and raw IP are supported. RTP is recognized in
+ * unfragmented UDP over IPv4 and IPv6. RTCP, STUN and DTLS are skipped.
+ *
+ * Instances are safe for use by multiple threads once constructed.
+ */
+public class CaptureFileReader
+    implements Closeable
+{
+    /**
+     * The format of rtpdump files (as written by rtpdump and Wireshark).
+     */
+    public static final int FORMAT_RTPDUMP = 1;
+
+    /**
+     * The format of libpcap files.
+     */
+    public static final int FORMAT_PCAP = 2;
+
+    /**
+     * The format of pcapng files.
+     */
+    public static final int FORMAT_PCAPNG = 3;
+
+    /**
+     * The number of bytes of the file mapped by each element of
+     * {@link #chunks} (not counting {@link #CHUNK_OVERLAP}).
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    /**
+     * The number of bytes by which each element of {@link #chunks} extends
+     * into the next one so that any packet (and the headers of any record)
+     * starting in a chunk may be read from it.
+     */
+    private static final int CHUNK_OVERLAP = 1 << 17;
+
+    /**
+     * The pcap link type of Ethernet.
+     */
+    private static final int LINKTYPE_ETHERNET = 1;
+
+    /**
+     * The pcap link type of Linux cooked capture.
+     */
+    private static final int LINKTYPE_LINUX_SLL = 113;
+
+    /**
+     * The pcap link type of Linux cooked capture v2.
+     */
+    private static final int LINKTYPE_LINUX_SLL2 = 276;
+
+    /**
+     * The pcap link type of BSD loopback with the address family in the byte
+     * order of the capturing host.
+     */
+    private static final int LINKTYPE_NULL = 0;
+
+    /**
+     * The pcap link type of OpenBSD loopback with the address family in
+     * network byte order.
+     */
+    private static final int LINKTYPE_LOOP = 108;
+
+    /**
+     * The pcap link type of raw IPv4 or IPv6.
+     */
+    private static final int LINKTYPE_RAW = 101;
+
+    /**
+     * The pcap link type of raw IPv4.
+     */
+    private static final int LINKTYPE_IPV4 = 228;
+
+    /**
+     * The pcap link type of raw IPv6.
+     */
+    private static final int LINKTYPE_IPV6 = 229;
+
+    /**
+     * The number of RTP packets for which the index arrays are allocated
+     * initially.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>CaptureFileReader</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(CaptureFileReader.class);
+
+    /**
+     * The capture times of the indexed RTP packets in nanoseconds since the
+     * capture time of the first one.
+     */
+    private long[] captureTimes;
+
+    /**
+     * The mappings of the file. Element <tt>i</tt> maps the bytes starting at
+     * <tt>i * CHUNK_SIZE</tt> in big endian order.
+     */
+    private final ByteBuffer[] chunks;
+
+    /**
+     * The size of the file in bytes.
+     */
+    private final long fileSize;
+
+    /**
+     * The format of the file, one of the <tt>FORMAT_XXX</tt> constants.
+     */
+    private final int format;
+
+    /**
+     * The lengths of the indexed RTP packets.
+     */
+    private int[] lengths;
+
+    /**
+     * Whether the multi-byte fields of the file format (as opposed to the
+     * ones of the captured packets) are in little endian order.
+     */
+    private boolean littleEndian;
+
+    /**
+     * The positions in the file of the indexed RTP packets.
+     */
+    private long[] positions;
+
+    /**
+     * The number of indexed RTP packets.
+     */
+    private int packetCount;
+
+    /**
+     * The sequence numbers of the indexed RTP packets.
+     */
+    private int[] seqs;
+
+    /**
+     * The number of records of the file which were not indexed because they
+     * did not contain RTP packets.
+     */
+    private int skippedRecordCount;
+
+    /**
+     * The SSRCs of the indexed RTP packets.
+     */
+    private int[] ssrcs;
+
+    /**
+     * The RTP timestamps of the indexed RTP packets.
+     */
+    private int[] timestamps;
+
+    /**
+     * Initializes a new <tt>CaptureFileReader</tt> which is to map and index
+     * a specific rtpdump, pcap or pcapng file.
+     *
+     * @param filePath the path of the file to read
+     * @throws IOException if the file cannot be read or its format is not
+     * recognized
+     */
+    public CaptureFileReader(String filePath)
+        throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r"))
+        {
+            FileChannel channel = file.getChannel();
+
+            fileSize = channel.size();
+            chunks = new ByteBuffer[(int) ((fileSize - 1) / CHUNK_SIZE + 1)];
+            for (int i = 0; i < chunks.length; i++)
+            {
+                long start = i * CHUNK_SIZE;
+                long size
+                    = Math.min(fileSize - start, CHUNK_SIZE + CHUNK_OVERLAP);
+
+                chunks[i]
+                    = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+        }
+
+        captureTimes = new long[INITIAL_CAPACITY];
+        lengths = new int[INITIAL_CAPACITY];
+        positions = new long[INITIAL_CAPACITY];
+        seqs = new int[INITIAL_CAPACITY];
+        ssrcs = new int[INITIAL_CAPACITY];
+        timestamps = new int[INITIAL_CAPACITY];
+
+        format = detectFormat();
+        switch (format)
+        {
+        case FORMAT_RTPDUMP:
+            indexRtpdump();
+            break;
+        case FORMAT_PCAP:
+            indexPcap();
+            break;
+        case FORMAT_PCAPNG:
+            indexPcapng();
+            break;
+        default:
+            throw new IOException("Unrecognized capture file " + filePath);
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Indexed " + packetCount + " RTP packets ("
+                        + skippedRecordCount + " other records) of "
+                        + filePath);
+        }
+    }
+
+    /**
+     * Adds an RTP packet to the index.
+     *
+     * @param pos the position of the packet in the file
+     * @param len the length of the packet
+     * @param captureTime the capture time of the packet in nanoseconds
+     */
+    private void addPacket(long pos, int len, long captureTime)
+    {
+        if (packetCount == positions.length)
+        {
+            int capacity = packetCount * 2;
+
+            captureTimes = Arrays.copyOf(captureTimes, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            seqs = Arrays.copyOf(seqs, capacity);
+            ssrcs = Arrays.copyOf(ssrcs, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+
+        captureTimes[packetCount] = captureTime;
+        lengths[packetCount] = len;
+        positions[packetCount] = pos;
+        seqs[packetCount] = readUnsignedShort(pos + 2);
+        timestamps[packetCount] = readInt(pos + 4);
+        ssrcs[packetCount] = readInt(pos + 8);
+        packetCount++;
+    }
+
+    /**
+     * Releases the index of this instance. The mapping of the file is
+     * released when it is garbage collected.
+     */
+    @Override
+    public void close()
+    {
+        Arrays.fill(chunks, null);
+    }
+
+    /**
+     * Determines the format of the file from its first bytes.
+     *
+     * @return one of the <tt>FORMAT_XXX</tt> constants or <tt>0</tt> if the
+     * format is not recognized
+     */
+    private int detectFormat()
+    {
+        if (fileSize < 24)
+            return 0;
+
+        int magic = readInt(0);
+
+        switch (magic)
+        {
+        case 0xa1b2c3d4:
+        case 0xa1b23c4d:
+            return FORMAT_PCAP;
+        case 0xd4c3b2a1:
+        case 0x4d3cb2a1:
+            littleEndian = true;
+            return FORMAT_PCAP;
+        case 0x0a0d0d0a:
+            return FORMAT_PCAPNG;
+        default:
+            return (magic == 0x23217274 /* #!rt */) ? FORMAT_RTPDUMP : 0;
+        }
+    }
+
+    /**
+     * Gets the capture time of an indexed RTP packet.
+     *
+     * @param index the index of the packet
+     * @return the capture time of the packet in nanoseconds since the capture
+     * time of the first indexed packet
+     */
+    public long getCaptureTime(int index)
+    {
+        return captureTimes[index] - captureTimes[0];
+    }
+
+    /**
+     * Gets the format of the file read by this instance.
+     *
+     * @return one of the <tt>FORMAT_XXX</tt> constants
+     */
+    public int getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Gets the length of an indexed RTP packet.
+     *
+     * @param index the index of the packet
+     * @return the length of the packet in bytes
+     */
+    public int getLength(int index)
+    {
+        return lengths[index];
+    }
+
+    /**
+     * Gets the number of RTP packets in the file.
+     *
+     * @return the number of RTP packets in the file
+     */
+    public int getPacketCount()
+    {
+        return packetCount;
+    }
+
+    /**
+     * Gets the sequence number of an indexed RTP packet.
+     *
+     * @param index the index of the packet
+     * @return the sequence number of the packet
+     */
+    public int getSequenceNumber(int index)
+    {
+        return seqs[index];
+    }
+
+    /**
+     * Gets the number of records of the file which were not indexed because
+     * they did not contain RTP packets.
+     *
+     * @return the number of records which were not indexed
+     */
+    public int getSkippedRecordCount()
+    {
+        return skippedRecordCount;
+    }
+
+    /**
+     * Gets the SSRC of an indexed RTP packet.
+     *
+     * @param index the index of the packet
+     * @return the SSRC of the packet
+     */
+    public int getSSRC(int index)
+    {
+        return ssrcs[index];
+    }
+
+    /**
+     * Gets the distinct SSRCs of the RTP packets in the file.
+     *
+     * @return the distinct SSRCs of the RTP packets in the file in ascending
+     * (signed) order
+     */
+    public int[] getSSRCs()
+    {
+        int[] sorted = Arrays.copyOf(ssrcs, packetCount);
+        int count = 0;
+
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++)
+        {
+            if (count == 0 || sorted[count - 1] != sorted[i])
+                sorted[count++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * Gets the RTP timestamp of an indexed RTP packet.
+     *
+     * @param index the index of the packet
+     * @return the RTP timestamp of the packet
+     */
+    public long getTimestamp(int index)
+    {
+        return timestamps[index] & 0xffffffffL;
+    }
+
+    /**
+     * Indexes the payload of a captured IPv4 or IPv6 packet if it is an RTP
+     * packet in a UDP datagram.
+     *
+     * @param pos the position of the IP header in the file
+     * @param len the number of captured bytes starting at <tt>pos</tt>
+     * @param captureTime the capture time of the packet in nanoseconds
+     */
+    private void indexIp(long pos, int len, long captureTime)
+    {
+        if (len < 1)
+        {
+            skippedRecordCount++;
+            return;
+        }
+
+        int version = (readByte(pos) & 0xf0) >>> 4;
+        int udpOff;
+
+        if (version == 4)
+        {
+            udpOff = (readByte(pos) & 0x0f) * 4;
+            if (len < 20
+                    || udpOff < 20
+                    || readByte(pos + 9) != 17 /* UDP */
+                    || (readUnsignedShort(pos + 6) & 0x3fff) != 0)
+            {
+                // Fragments are not reassembled.
+                skippedRecordCount++;
+                return;
+            }
+            len = Math.min(len, readUnsignedShort(pos + 2));
+        }
+        else if (version == 6 && len >= 40)
+        {
+            int nextHeader = readByte(pos + 6);
+
+            len = Math.min(len, 40 + readUnsignedShort(pos + 4));
+            udpOff = 40;
+            // Skip the hop-by-hop, routing and destination options extension
+            // headers.
+            while ((nextHeader == 0 || nextHeader == 43 || nextHeader == 60)
+                    && udpOff + 8 <= len)
+            {
+                nextHeader = readByte(pos + udpOff);
+                udpOff += (readByte(pos + udpOff + 1) + 1) * 8;
+            }
+            if (nextHeader != 17 /* UDP */)
+            {
+                skippedRecordCount++;
+                return;
+            }
+        }
+        else
+        {
+            skippedRecordCount++;
+            return;
+        }
+
+        if (udpOff + 8 > len)
+        {
+            skippedRecordCount++;
+            return;
+        }
+
+        int udpLen = readUnsignedShort(pos + udpOff + 4);
+
+        indexRtp(
+                pos + udpOff + 8,
+                Math.min(len - udpOff, udpLen) - 8,
+                captureTime);
+    }
+
+    /**
+     * Indexes a captured link layer frame if it carries an RTP packet.
+     *
+     * @param linkType the pcap link type of the frame
+     * @param pos the position of the frame in the file
+     * @param len the number of captured bytes of the frame
+     * @param captureTime the capture time of the frame in nanoseconds
+     */
+    private void indexFrame(int linkType, long pos, int len, long captureTime)
+    {
+        int off;
+
+        switch (linkType)
+        {
+        case LINKTYPE_ETHERNET:
+        {
+            int etherType = (len >= 14) ? readUnsignedShort(pos + 12) : 0;
+
+            off = 14;
+            // Skip 802.1Q and 802.1ad tags.
+            while ((etherType == 0x8100 || etherType == 0x88a8)
+                    && off + 4 <= len)
+            {
+                etherType = readUnsignedShort(pos + off + 2);
+                off += 4;
+            }
+            if (etherType != 0x0800 && etherType != 0x86dd)
+                off = -1;
+            break;
+        }
+        case LINKTYPE_LINUX_SLL:
+            off = 16;
+            break;
+        case LINKTYPE_LINUX_SLL2:
+            off = 20;
+            break;
+        case LINKTYPE_NULL:
+        case LINKTYPE_LOOP:
+            off = 4;
+            break;
+        case LINKTYPE_RAW:
+        case LINKTYPE_IPV4:
+        case LINKTYPE_IPV6:
+            off = 0;
+            break;
+        default:
+            off = -1;
+            break;
+        }
+
+        if (off < 0 || off > len)
+            skippedRecordCount++;
+        else
+            indexIp(pos + off, len - off, captureTime);
+    }
+
+    /**
+     * Indexes the records of a pcap file.
+     */
+    private void indexPcap()
+    {
+        int magic = readFileInt(0);
+        long fractionNanos = (magic == 0xa1b23c4d) ? 1 : 1000;
+        int linkType = readFileInt(20) & 0xffff;
+        long pos = 24;
+
+        while (pos + 16 <= fileSize)
+        {
+            long seconds = readFileInt(pos) & 0xffffffffL;
+            long fraction = readFileInt(pos + 4) & 0xffffffffL;
+            int capturedLength = readFileInt(pos + 8);
+
+            pos += 16;
+            if (capturedLength < 0 || pos + capturedLength > fileSize)
+                break;
+
+            indexFrame(
+                    linkType,
+                    pos,
+                    capturedLength,
+                    seconds * 1000000000L + fraction * fractionNanos);
+            pos += capturedLength;
+        }
+    }
+
+    /**
+     * Indexes the blocks of a pcapng file. Multiple sections, each with its
+     * own byte order and interfaces, are supported.
+     */
+    private void indexPcapng()
+    {
+        int[] linkTypes = new int[4];
+        long[] tsResolutions = new long[4];
+        int interfaceCount = 0;
+        long captureTime = 0;
+        long pos = 0;
+
+        while (pos + 12 <= fileSize)
+        {
+            int type = readFileInt(pos);
+
+            if (type == 0x0a0d0d0a)
+            {
+                // The byte order magic of the section header block determines
+                // the byte order of the section.
+                littleEndian = (readInt(pos + 8) == 0x4d3c2b1a);
+                interfaceCount = 0;
+            }
+
+            int blockLength = readFileInt(pos + 4);
+
+            if (blockLength < 12 || pos + blockLength > fileSize)
+                break;
+
+            switch (type)
+            {
+            case 1: // Interface Description Block
+                if (blockLength < 20)
+                    break;
+                if (interfaceCount == linkTypes.length)
+                {
+                    linkTypes = Arrays.copyOf(linkTypes, interfaceCount * 2);
+                    tsResolutions
+                        = Arrays.copyOf(tsResolutions, interfaceCount * 2);
+                }
+                linkTypes[interfaceCount] = readFileShort(pos + 8);
+                tsResolutions[interfaceCount]
+                    = readTsResolution(pos + 16, pos + blockLength - 4);
+                interfaceCount++;
+                break;
+
+            case 6: // Enhanced Packet Block
+            {
+                if (blockLength < 32)
+                {
+                    skippedRecordCount++;
+                    break;
+                }
+
+                int interfaceId = readFileInt(pos + 8);
+                int capturedLength = readFileInt(pos + 20);
+
+                if (interfaceId < 0
+                        || interfaceId >= interfaceCount
+                        || capturedLength < 0
+                        || capturedLength > blockLength - 32)
+                {
+                    skippedRecordCount++;
+                    break;
+                }
+
+                long ts
+                    = ((readFileInt(pos + 12) & 0xffffffffL) << 32)
+                        | (readFileInt(pos + 16) & 0xffffffffL);
+
+                captureTime = toNanos(ts, tsResolutions[interfaceId]);
+                indexFrame(
+                        linkTypes[interfaceId],
+                        pos + 28,
+                        capturedLength,
+                        captureTime);
+                break;
+            }
+
+            case 3: // Simple Packet Block
+                // It has no timestamp so the last one is reused.
+                if (interfaceCount > 0 && blockLength >= 16)
+                {
+                    indexFrame(
+                            linkTypes[0],
+                            pos + 12,
+                            Math.min(readFileInt(pos + 8), blockLength - 16),
+                            captureTime);
+                }
+                else
+                {
+                    skippedRecordCount++;
+                }
+                break;
+
+            default:
+                break;
+            }
+
+            pos += blockLength;
+        }
+    }
+
+    /**
+     * Indexes a UDP payload if it is an RTP packet.
+     *
+     * @param pos the position of the UDP payload in the file
+     * @param len the length of the UDP payload
+     * @param captureTime the capture time of the payload in nanoseconds
+     */
+    private void indexRtp(long pos, int len, long captureTime)
+    {
+        if (len >= 12 && (readByte(pos) & 0xc0) == 0x80)
+        {
+            int pt = readByte(pos + 1) & 0x7f;
+
+            // RTCP packet types 192 to 223 (RFC 5761).
+            if ((pt < 64 || pt > 95)
+                    && 12 + (readByte(pos) & 0x0f) * 4 <= len)
+            {
+                addPacket(pos, len, captureTime);
+                return;
+            }
+        }
+        skippedRecordCount++;
+    }
+
+    /**
+     * Indexes the records of an rtpdump file.
+     */
+    private void indexRtpdump()
+    {
+        long pos = 0;
+
+        // Skip the line of text which starts the file and then the binary
+        // file header.
+        while (pos < fileSize && readByte(pos) != '\n')
+            pos++;
+        pos += 1 + RtpdumpFileReader.FILE_HEADER_LENGTH;
+
+        while (pos + 8 <= fileSize)
+        {
+            int length = readUnsignedShort(pos);
+            int packetLength = readUnsignedShort(pos + 2);
+            long offset = readInt(pos + 4) & 0xffffffffL;
+
+            if (length < 8 || pos + length > fileSize)
+                break;
+
+            // The packet length is zero for RTCP. The record may hold fewer
+            // bytes than the packet had if only headers were dumped.
+            if (packetLength == 0)
+            {
+                skippedRecordCount++;
+            }
+            else
+            {
+                indexRtp(
+                        pos + 8,
+                        Math.min(packetLength, length - 8),
+                        offset * 1000000L);
+            }
+            pos += length;
+        }
+    }
+
+    /**
+     * Reads a byte of the file.
+     *
+     * @param pos the position of the byte in the file
+     * @return the unsigned value of the byte
+     */
+    private int readByte(long pos)
+    {
+        return
+            chunks[(int) (pos / CHUNK_SIZE)].get((int) (pos % CHUNK_SIZE))
+                & 0xff;
+    }
+
+    /**
+     * Reads a 32-bit field of the file format in the byte order of the file.
+     *
+     * @param pos the position of the field in the file
+     * @return the value of the field
+     */
+    private int readFileInt(long pos)
+    {
+        int v = readInt(pos);
+
+        return littleEndian ? Integer.reverseBytes(v) : v;
+    }
+
+    /**
+     * Reads a 16-bit field of the file format in the byte order of the file.
+     *
+     * @param pos the position of the field in the file
+     * @return the unsigned value of the field
+     */
+    private int readFileShort(long pos)
+    {
+        int v = readUnsignedShort(pos);
+
+        return littleEndian ? (Integer.reverseBytes(v) >>> 16) : v;
+    }
+
+    /**
+     * Reads a big endian 32-bit value of the file.
+     *
+     * @param pos the position of the value in the file
+     * @return the value
+     */
+    private int readInt(long pos)
+    {
+        return
+            chunks[(int) (pos / CHUNK_SIZE)].getInt((int) (pos % CHUNK_SIZE));
+    }
+
+    /**
+     * Reads an indexed RTP packet.
+     *
+     * @param index the index of the packet
+     * @param pkt the <tt>RawPacket</tt> to read the packet into or
+     * <tt>null</tt>. Its buffer is reused if it is large enough.
+     * @return <tt>pkt</tt> or a new <tt>RawPacket</tt> if <tt>pkt</tt> is
+     * <tt>null</tt>, holding the packet at offset zero
+     */
+    public RawPacket readPacket(int index, RawPacket pkt)
+    {
+        int len = lengths[index];
+        long pos = positions[index];
+        byte[] buf = (pkt == null) ? null : pkt.getBuffer();
+
+        if (buf == null || buf.length < len)
+            buf = new byte[len];
+
+        // Absolute bulk reads need a buffer of their own position.
+        ByteBuffer chunk = chunks[(int) (pos / CHUNK_SIZE)].duplicate();
+
+        chunk.position((int) (pos % CHUNK_SIZE));
+        chunk.get(buf, 0, len);
+
+        if (pkt == null)
+        {
+            pkt = new RawPacket(buf, 0, len);
+        }
+        else
+        {
+            pkt.setBuffer(buf);
+            pkt.setOffset(0);
+            pkt.setLength(len);
+            pkt.setFlags(0);
+        }
+        return pkt;
+    }
+
+    /**
+     * Reads the <tt>if_tsresol</tt> option of a pcapng interface description
+     * block.
+     *
+     * @param pos the position of the options of the block in the file
+     * @param end the position in the file at which the options end
+     * @return the value of the option or <tt>6</tt> (microseconds) if the
+     * block does not have the option
+     */
+    private long readTsResolution(long pos, long end)
+    {
+        while (pos + 4 <= end)
+        {
+            int code = readFileShort(pos);
+            int length = readFileShort(pos + 2);
+
+            if (code == 0 /* opt_endofopt */)
+                break;
+            if (code == 9 /* if_tsresol */ && length >= 1)
+                return readByte(pos + 4);
+            pos += 4 + ((length + 3) & ~3);
+        }
+        return 6;
+    }
+
+    /**
+     * Reads a big endian 16-bit value of the file.
+     *
+     * @param pos the position of the value in the file
+     * @return the unsigned value
+     */
+    private int readUnsignedShort(long pos)
+    {
+        return
+            chunks[(int) (pos / CHUNK_SIZE)].getShort((int) (pos % CHUNK_SIZE))
+                & 0xffff;
+    }
+
+    /**
+     * Converts a pcapng timestamp to nanoseconds.
+     *
+     * @param ts the timestamp in units of the <tt>if_tsresol</tt> option of
+     * its interface
+     * @param tsResolution the <tt>if_tsresol</tt> option: a negative power of
+     * ten or, if the most significant bit is set, of two
+     * @return <tt>ts</tt> in nanoseconds
+     */
+    private static long toNanos(long ts, long tsResolution)
+    {
+        if ((tsResolution & 0x80) != 0)
+        {
+            int shift = (int) (tsResolution & 0x7f);
+
+            return
+                (ts >>> shift) * 1000000000L
+                    + (((ts & ((1L << shift) - 1)) * 1000000000L) >>> shift);
+        }
+        else
+        {
+            for (long i = tsResolution; i < 9; i++)
+                ts *= 10;
+            for (long i = tsResolution; i > 9; i--)
+                ts /= 10;
+            return ts;
+        }
+    }
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.jmfext.media.protocol.rtpdumpfile;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+import org.jitsi.impl.neomedia.rtp.*;
+import org.jitsi.impl.neomedia.rtp.translator.*;
+import org.jitsi.impl.neomedia.transform.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+
+/**
+ * Replays the RTP packets indexed by a <tt>CaptureFileReader</tt> into a
+ * <tt>PacketSink</tt> such as the receive transform chain of a
+ * <tt>MediaStream</tt> or an <tt>RTPTranslatorImpl</tt>, without reading them
+ * from sockets. The packets may be paced by their capture times in real time
+ * or at a multiple of it, or replayed as fast as possible for capacity
+ * testing. The capture may be replayed multiple times in which case the
+ * sequence numbers and RTP timestamps of each loop continue the ones of the
+ * previous loop so that receivers do not take the packets for duplicates.
+ *
+ * The settings are to be configured before {@link #run()} is invoked.
+ */
+public class CaptureReplayer
+    implements Runnable
+{
+    /**
+     * The speed at which packets are replayed without pacing.
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    /**
+     * The speed at which packets are replayed at the pace they were captured.
+     */
+    public static final double REAL_TIME = 1;
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>CaptureReplayer</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(CaptureReplayer.class);
+
+    /**
+     * Creates a <tt>PacketSink</tt> which reverse transforms packets with the
+     * <tt>TransformEngineChain</tt> of a specific <tt>MediaStream</tt> as if
+     * they had been received by the stream.
+     *
+     * @param stream the <tt>MediaStream</tt> which is to receive the packets.
+     * Its <tt>TransformEngineChain</tt> must have been initialized.
+     * @return a <tt>PacketSink</tt> which writes into <tt>stream</tt>
+     */
+    public static PacketSink createMediaStreamSink(MediaStream stream)
+    {
+        final PacketTransformer transformer = getRTPTransformer(stream);
+
+        return
+            new PacketSink()
+            {
+                @Override
+                public void write(RawPacket[] pkts)
+                {
+                    transformer.reverseTransform(pkts);
+                }
+            };
+    }
+
+    /**
+     * Creates a <tt>PacketSink</tt> which reverse transforms packets with the
+     * <tt>TransformEngineChain</tt> of a specific <tt>MediaStream</tt> and
+     * then has a specific <tt>RTPTranslatorImpl</tt> translate the packets
+     * which survive as if they had been received by the stream.
+     *
+     * @param translator the <tt>RTPTranslatorImpl</tt> which is to translate
+     * the packets
+     * @param stream the <tt>MediaStream</tt> of <tt>translator</tt> which is to
+     * receive the packets. Its <tt>TransformEngineChain</tt> must have been
+     * initialized.
+     * @return a <tt>PacketSink</tt> which writes into <tt>translator</tt>
+     */
+    public static PacketSink createTranslatorSink(
+            final RTPTranslatorImpl translator,
+            MediaStream stream)
+    {
+        final PacketTransformer transformer = getRTPTransformer(stream);
+        StreamRTPManager streamRTPManager = null;
+
+        for (StreamRTPManager s : translator.getStreamRTPManagers())
+        {
+            if (s.getMediaStream() == stream)
+            {
+                streamRTPManager = s;
+                break;
+            }
+        }
+        if (streamRTPManager == null)
+            throw new IllegalArgumentException("stream");
+
+        final StreamRTPManager finalStreamRTPManager = streamRTPManager;
+
+        return
+            new PacketSink()
+            {
+                @Override
+                public void write(RawPacket[] pkts)
+                    throws IOException
+                {
+                    pkts = transformer.reverseTransform(pkts);
+                    if (pkts == null)
+                        return;
+
+                    for (RawPacket pkt : pkts)
+                    {
+                        if (pkt != null)
+                        {
+                            translator.injectPacket(
+                                    finalStreamRTPManager,
+                                    true,
+                                    pkt);
+                        }
+                    }
+                }
+            };
+    }
+
+    /**
+     * Gets the RTP <tt>PacketTransformer</tt> of the
+     * <tt>TransformEngineChain</tt> of a specific <tt>MediaStream</tt>.
+     *
+     * @param stream the <tt>MediaStream</tt> to get the RTP
+     * <tt>PacketTransformer</tt> of
+     * @return the RTP <tt>PacketTransformer</tt> of <tt>stream</tt>
+     * @throws IllegalStateException if the <tt>TransformEngineChain</tt> of
+     * <tt>stream</tt> has not been initialized
+     */
+    private static PacketTransformer getRTPTransformer(MediaStream stream)
+    {
+        TransformEngineChain chain = stream.getTransformEngineChain();
+
+        if (chain == null)
+            throw new IllegalStateException("transformEngineChain");
+        return chain.getRTPTransformer();
+    }
+
+    /**
+     * The maximum number of packets written into {@link #sink} at once.
+     */
+    private int batchSize = 32;
+
+    /**
+     * The number of bytes replayed so far.
+     */
+    private volatile long byteCount;
+
+    /**
+     * The number of times the capture is to be replayed or <tt>0</tt> to
+     * replay it until {@link #stop()} is invoked.
+     */
+    private int loopCount = 1;
+
+    /**
+     * The number of packets replayed so far.
+     */
+    private volatile long packetCount;
+
+    /**
+     * The <tt>CaptureFileReader</tt> which reads the packets to replay.
+     */
+    private final CaptureFileReader reader;
+
+    /**
+     * Whether the <tt>RawPacket</tt>s (and their buffers) written into
+     * {@link #sink} are reused for subsequent packets.
+     */
+    private boolean recyclePackets;
+
+    /**
+     * The <tt>PacketSink</tt> into which the packets are replayed.
+     */
+    private final PacketSink sink;
+
+    /**
+     * The speed, relative to real time, at which the packets are replayed.
+     */
+    private double speed = REAL_TIME;
+
+    /**
+     * The SSRCs of the packets to replay or <tt>null</tt> to replay the
+     * packets of all SSRCs.
+     */
+    private int[] ssrcs;
+
+    /**
+     * Whether {@link #stop()} has been invoked.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Initializes a new <tt>CaptureReplayer</tt> which is to replay the RTP
+     * packets read by a specific <tt>CaptureFileReader</tt> into a specific
+     * <tt>PacketSink</tt>.
+     *
+     * @param reader the <tt>CaptureFileReader</tt> which is to read the
+     * packets to replay
+     * @param sink the <tt>PacketSink</tt> into which the packets are to be
+     * replayed
+     */
+    public CaptureReplayer(CaptureFileReader reader, PacketSink sink)
+    {
+        this.reader = reader;
+        this.sink = sink;
+    }
+
+    /**
+     * Writes the packets of a batch into {@link #sink}.
+     *
+     * @param batch the packets to write followed by <tt>null</tt>s
+     * @param count the number of packets in <tt>batch</tt>
+     * @throws IOException if {@link #sink} fails to write the packets
+     */
+    private void flush(RawPacket[] batch, int count)
+        throws IOException
+    {
+        if (count == 0)
+            return;
+
+        long bytes = 0;
+
+        for (int i = 0; i < count; i++)
+            bytes += batch[i].getLength();
+
+        sink.write(batch);
+        Arrays.fill(batch, 0, count, null);
+
+        packetCount += count;
+        byteCount += bytes;
+    }
+
+    /**
+     * Gets the number of bytes replayed so far.
+     *
+     * @return the number of bytes replayed so far
+     */
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    /**
+     * Gets the number of packets replayed so far.
+     *
+     * @return the number of packets replayed so far
+     */
+    public long getPacketCount()
+    {
+        return packetCount;
+    }
+
+    /**
+     * Replays the packets on the current thread until all loops have been
+     * replayed or {@link #stop()} is invoked.
+     */
+    @Override
+    public void run()
+    {
+        int[] order = selectPackets();
+
+        if (order.length == 0)
+            return;
+
+        // Each loop continues the sequence numbers and RTP timestamps of the
+        // previous one. The SSRCs are mapped to slots of the advances once.
+        int[] distinctSsrcs = new int[order.length];
+
+        for (int i = 0; i < order.length; i++)
+            distinctSsrcs[i] = reader.getSSRC(order[i]);
+        Arrays.sort(distinctSsrcs);
+
+        int distinctCount = 0;
+
+        for (int i = 0; i < distinctSsrcs.length; i++)
+        {
+            if (distinctCount == 0
+                    || distinctSsrcs[distinctCount - 1] != distinctSsrcs[i])
+            {
+                distinctSsrcs[distinctCount++] = distinctSsrcs[i];
+            }
+        }
+
+        int[] slots = new int[order.length];
+        int[] seqAdvances = new int[distinctCount];
+        long[] tsAdvances = new long[distinctCount];
+        int[] firstIndexes = new int[distinctCount];
+        int[] lastIndexes = new int[distinctCount];
+        int[] counts = new int[distinctCount];
+
+        for (int i = 0; i < order.length; i++)
+        {
+            int slot
+                = Arrays.binarySearch(
+                        distinctSsrcs, 0, distinctCount,
+                        reader.getSSRC(order[i]));
+
+            slots[i] = slot;
+            if (counts[slot]++ == 0)
+                firstIndexes[slot] = order[i];
+            lastIndexes[slot] = order[i];
+        }
+        for (int slot = 0; slot < distinctCount; slot++)
+        {
+            long tsSpan
+                = (reader.getTimestamp(lastIndexes[slot])
+                        - reader.getTimestamp(firstIndexes[slot]))
+                    & 0xffffffffL;
+
+            seqAdvances[slot]
+                = (reader.getSequenceNumber(lastIndexes[slot])
+                        - reader.getSequenceNumber(firstIndexes[slot])
+                        + 1)
+                    & 0xffff;
+            tsAdvances[slot] = tsSpan;
+            if (counts[slot] > 1)
+                tsAdvances[slot] += tsSpan / (counts[slot] - 1);
+        }
+
+        long firstCaptureTime = reader.getCaptureTime(order[0]);
+        long span
+            = reader.getCaptureTime(order[order.length - 1])
+                - firstCaptureTime;
+        long loopDuration
+            = span + ((order.length > 1) ? span / (order.length - 1) : 0);
+        boolean paced = !Double.isInfinite(speed);
+        RawPacket[] batch = new RawPacket[batchSize];
+        RawPacket[] pool = recyclePackets ? new RawPacket[batchSize] : null;
+        int count = 0;
+        long startTime = System.nanoTime();
+
+        try
+        {
+            for (int loop = 0;
+                    (loopCount <= 0 || loop < loopCount) && !stopped;
+                    loop++)
+            {
+                for (int i = 0; i < order.length && !stopped; i++)
+                {
+                    if (paced)
+                    {
+                        long due
+                            = (long)
+                                ((loop * loopDuration
+                                        + reader.getCaptureTime(order[i])
+                                        - firstCaptureTime)
+                                    / speed);
+                        long delay = due - (System.nanoTime() - startTime);
+
+                        if (delay > 0)
+                        {
+                            flush(batch, count);
+                            count = 0;
+                            do
+                            {
+                                LockSupport.parkNanos(delay);
+                                if (Thread.interrupted())
+                                    stopped = true;
+                                delay = due - (System.nanoTime() - startTime);
+                            }
+                            while (delay > 0 && !stopped);
+                        }
+                    }
+
+                    RawPacket pkt
+                        = reader.readPacket(
+                                order[i],
+                                (pool == null) ? null : pool[count]);
+
+                    if (pool != null)
+                        pool[count] = pkt;
+                    if (loop > 0)
+                    {
+                        int slot = slots[i];
+
+                        pkt.setSequenceNumber(
+                                (pkt.getSequenceNumber()
+                                        + loop * seqAdvances[slot])
+                                    & 0xffff);
+                        pkt.setTimestamp(
+                                (pkt.getTimestamp() + loop * tsAdvances[slot])
+                                    & 0xffffffffL);
+                    }
+
+                    batch[count++] = pkt;
+                    if (count == batch.length)
+                    {
+                        flush(batch, count);
+                        count = 0;
+                    }
+                }
+            }
+            flush(batch, count);
+        }
+        catch (Throwable t)
+        {
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+            logger.error("Failed to replay packets.", t);
+        }
+
+        if (logger.isInfoEnabled())
+        {
+            long elapsed = System.nanoTime() - startTime;
+
+            logger.info(
+                    "Replayed " + packetCount + " packets (" + byteCount
+                        + " bytes) in " + (elapsed / 1000000) + " ms ("
+                        + (packetCount * 1000000000L / Math.max(1, elapsed))
+                        + " packets/s).");
+        }
+    }
+
+    /**
+     * Gets the indexes of the packets of {@link #reader} which are to be
+     * replayed.
+     *
+     * @return the indexes of the packets to replay in capture order
+     */
+    private int[] selectPackets()
+    {
+        int packetCount = reader.getPacketCount();
+        int[] order = new int[packetCount];
+        int count = 0;
+
+        for (int i = 0; i < packetCount; i++)
+        {
+            if (ssrcs == null || contains(ssrcs, reader.getSSRC(i)))
+                order[count++] = i;
+        }
+        return (count == packetCount) ? order : Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Determines whether a sorted array contains a specific value.
+     *
+     * @param sorted the sorted array
+     * @param value the value to look for
+     * @return <tt>true</tt> if <tt>sorted</tt> contains <tt>value</tt>
+     */
+    private static boolean contains(int[] sorted, int value)
+    {
+        return Arrays.binarySearch(sorted, value) >= 0;
+    }
+
+    /**
+     * Sets the maximum number of packets to be written into the sink at once.
+     * Packets which are due at the same time or, when replaying as fast as
+     * possible, consecutive packets are batched.
+     *
+     * @param batchSize the maximum number of packets to write at once
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of times the capture is to be replayed.
+     *
+     * @param loopCount the number of times to replay the capture or
+     * <tt>0</tt> to replay it until {@link #stop()} is invoked
+     */
+    public void setLoopCount(int loopCount)
+    {
+        this.loopCount = loopCount;
+    }
+
+    /**
+     * Sets whether the <tt>RawPacket</tt>s written into the sink are to be
+     * reused for subsequent packets. Must only be enabled if the sink does not
+     * keep references to the packets after it returns.
+     *
+     * @param recyclePackets <tt>true</tt> to reuse the packets
+     */
+    public void setRecyclePackets(boolean recyclePackets)
+    {
+        this.recyclePackets = recyclePackets;
+    }
+
+    /**
+     * Sets the speed at which the packets are to be replayed.
+     *
+     * @param speed {@link #REAL_TIME}, a (positive) multiple of it or
+     * {@link #AS_FAST_AS_POSSIBLE}
+     */
+    public void setSpeed(double speed)
+    {
+        if (!(speed > 0))
+            throw new IllegalArgumentException("speed " + speed);
+        this.speed = speed;
+    }
+
+    /**
+     * Sets the SSRCs of the packets to replay.
+     *
+     * @param ssrcs the SSRCs of the packets to replay or <tt>null</tt> to
+     * replay the packets of all SSRCs
+     */
+    public void setSSRCs(int... ssrcs)
+    {
+        if (ssrcs == null)
+        {
+            this.ssrcs = null;
+        }
+        else
+        {
+            this.ssrcs = ssrcs.clone();
+            Arrays.sort(this.ssrcs);
+        }
+    }
+
+    /**
+     * Stops {@link #run()} after the packet it is currently replaying.
+     */
+    public void stop()
+    {
+        stopped = true;
+    }
+
+    /**
+     * Receives the packets replayed by a <tt>CaptureReplayer</tt>.
+     */
+    public interface PacketSink
+    {
+        /**
+         * Writes a batch of replayed packets.
+         *
+         * @param pkts the packets to write. Elements may be <tt>null</tt>.
+         * @throws IOException if the packets cannot be written
+         */
+        void write(RawPacket[] pkts)
+            throws IOException;
+    }
+}
@@ -52,12 +52,15 @@
     public final static int FILE_HEADER_LENGTH = 4 + 4 + 4 + 2 + 2;
 
     /**
-     * The <tt>RandomAccessFile</tt> used to read the rtpdump file.
-     * 
-     * <tt>RandomAccessFile</tt> is used because I need to go to the beginning
-     * of the file when the loop is activated.
+     * The <tt>CaptureFileReader</tt> which maps and indexes the rtpdump file.
+     */
+    private CaptureFileReader reader;
+
+    /**
+     * The index of the packet to be returned by the next call to
+     * {@link #getNextPacket(boolean)}.
      */
-    private RandomAccessFile stream;
+    private int nextPacketIndex;
 
     /**
      * Initialize a new instance of <tt>RtpdumpFileReader</tt> that will the
@@ -69,12 +72,7 @@ public RtpdumpFileReader(String filePath)
     {
         try
         {
-            stream = new RandomAccessFile(filePath, "r");
-            resetFile();
-        }
-        catch (FileNotFoundException e) 
-        {
-            e.printStackTrace();
+            reader = new CaptureFileReader(filePath);
         }
         catch (IOException e)
         {
@@ -95,36 +93,13 @@ public RtpdumpFileReader(String filePath)
     public RawPacket getNextPacket(boolean loopFile)
         throws IOException
     {
-        if(loopFile && (stream.getFilePointer() >= stream.length()))
+        if (nextPacketIndex >= reader.getPacketCount())
         {
-            resetFile();
+            if (!loopFile || reader.getPacketCount() == 0)
+                throw new EOFException();
+            nextPacketIndex = 0;
         }
 
-        byte[] rtpdumpPacket;
-        int sizeInBytes;
-
-        stream.readShort(); //read away an useless short (2 bytes)
-        sizeInBytes = stream.readUnsignedShort();
-        rtpdumpPacket = new byte[sizeInBytes];
-        stream.readInt(); //read away the rtpdump timestamp
-
-        stream.read(rtpdumpPacket);
-
-        return new RawPacket(rtpdumpPacket, 0, rtpdumpPacket.length);
-    }
-
-    /**
-     * Go to the beginning of the rtpdump file and
-     * skip the first line of ascii (giving the file version) and
-     * skip the file header (useless)
-     * @throws IOException if an error occur during the seek and reading of the
-     * file.
-     */
-    private void resetFile() throws IOException
-    {
-        stream.seek(0);
-        stream.readLine(); //read the first line that is in ascii
-        stream.seek(stream.getFilePointer()
-                             + RtpdumpFileReader.FILE_HEADER_LENGTH );
+        return reader.readPacket(nextPacketIndex++, null);
     }
 }
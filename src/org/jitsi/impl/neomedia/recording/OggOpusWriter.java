@@ -0,0 +1,385 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.recording;
+
+import java.io.*;
+
+/**
+ * Writes Opus packets into an Ogg Opus file (RFC 7845) without decoding or
+ * re-encoding them. Packets are collected into pages of up to one second of
+ * audio and the last page is marked as the end of the stream when the writer
+ * is closed.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class OggOpusWriter
+{
+    /**
+     * The table of the CRC-32 of the Ogg pages (polynomial
+     * <tt>0x04c11db7</tt>, no reflection, zero initial value).
+     */
+    private static final int[] CRC_TABLE = new int[256];
+
+    /**
+     * The value of the <tt>header_type</tt> field of the first page.
+     */
+    private static final int HEADER_TYPE_BOS = 0x02;
+
+    /**
+     * The value of the <tt>header_type</tt> field of the last page.
+     */
+    private static final int HEADER_TYPE_EOS = 0x04;
+
+    /**
+     * The maximum number of packets per page. Opus is typically sent in 20 ms
+     * packets so pages span up to a second.
+     */
+    private static final int MAX_PACKETS_PER_PAGE = 50;
+
+    /**
+     * The maximum number of segments of a page.
+     */
+    private static final int MAX_SEGMENTS = 255;
+
+    /**
+     * The vendor string of the <tt>OpusTags</tt> header.
+     */
+    private static final String VENDOR = "libjitsi";
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int crc = i << 24;
+
+            for (int j = 0; j < 8; j++)
+            {
+                crc
+                    = ((crc & 0x80000000) != 0)
+                        ? (crc << 1) ^ 0x04c11db7
+                        : crc << 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * Gets the number of samples at 48 kHz of a specific Opus packet as
+     * defined by its TOC byte (RFC 6716, Section 3.1).
+     *
+     * @param buf the buffer which contains the packet
+     * @param off the offset in <tt>buf</tt> at which the packet starts
+     * @param len the length in bytes of the packet
+     * @return the number of samples at 48 kHz of the packet or <tt>0</tt> if
+     * the packet is malformed
+     */
+    public static int getSampleCount(byte[] buf, int off, int len)
+    {
+        if (len < 1)
+            return 0;
+
+        int toc = buf[off] & 0xff;
+        int config = toc >>> 3;
+        int frameSamples;
+
+        if (config < 12)
+        {
+            // SILK: 10, 20, 40 or 60 ms
+            frameSamples = (config & 3) == 3 ? 2880 : 480 << (config & 3);
+        }
+        else if (config < 16)
+        {
+            // Hybrid: 10 or 20 ms
+            frameSamples = 480 << (config & 1);
+        }
+        else
+        {
+            // CELT: 2.5, 5, 10 or 20 ms
+            frameSamples = 120 << (config & 3);
+        }
+
+        int frameCount;
+
+        switch (toc & 3)
+        {
+        case 0:
+            frameCount = 1;
+            break;
+        case 1:
+        case 2:
+            frameCount = 2;
+            break;
+        default:
+            if (len < 2)
+                return 0;
+            frameCount = buf[off + 1] & 0x3f;
+            break;
+        }
+        return frameCount * frameSamples;
+    }
+
+    /**
+     * Writes a specific 32-bit value in little-endian byte order.
+     *
+     * @param buf the buffer to write into
+     * @param off the offset in <tt>buf</tt> at which to write
+     * @param value the value to write
+     */
+    private static void writeInt(byte[] buf, int off, int value)
+    {
+        buf[off] = (byte) value;
+        buf[off + 1] = (byte) (value >>> 8);
+        buf[off + 2] = (byte) (value >>> 16);
+        buf[off + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * The granule position of the last packet added to the current page.
+     */
+    private long granule;
+
+    /**
+     * The <tt>OutputStream</tt> into which the pages are written.
+     */
+    private final OutputStream out;
+
+    /**
+     * The number of packets of the current page.
+     */
+    private int packetCount;
+
+    /**
+     * The buffer of the current page: the 27 bytes of its header, its
+     * segment table and the packets (once they are all known, see
+     * {@link #flush(int)}).
+     */
+    private byte[] page = new byte[27 + MAX_SEGMENTS + 4096];
+
+    /**
+     * The packets of the current page.
+     */
+    private byte[] pageData = new byte[4096];
+
+    /**
+     * The number of valid bytes of {@link #pageData}.
+     */
+    private int pageDataLength;
+
+    /**
+     * The sequence number of the next page.
+     */
+    private int pageSequenceNumber;
+
+    /**
+     * The number of segments of the current page.
+     */
+    private int segmentCount;
+
+    /**
+     * The segment table of the current page.
+     */
+    private final byte[] segments = new byte[MAX_SEGMENTS];
+
+    /**
+     * The serial number of the logical bitstream.
+     */
+    private final int serialNumber;
+
+    /**
+     * Initializes a new <tt>OggOpusWriter</tt> instance which writes into a
+     * specific file.
+     *
+     * @param filename the name of the file to write into
+     * @param channelCount the number of channels to declare in the
+     * <tt>OpusHead</tt> header
+     * @throws IOException if the file cannot be opened or the headers cannot
+     * be written
+     */
+    public OggOpusWriter(String filename, int channelCount)
+        throws IOException
+    {
+        this(
+                new BufferedOutputStream(new FileOutputStream(filename)),
+                filename.hashCode(),
+                channelCount);
+    }
+
+    /**
+     * Initializes a new <tt>OggOpusWriter</tt> instance which writes into a
+     * specific <tt>OutputStream</tt> and writes the <tt>OpusHead</tt> and
+     * <tt>OpusTags</tt> headers.
+     *
+     * @param out the <tt>OutputStream</tt> to write into
+     * @param serialNumber the serial number of the logical bitstream
+     * @param channelCount the number of channels to declare in the
+     * <tt>OpusHead</tt> header
+     * @throws IOException if the headers cannot be written
+     */
+    public OggOpusWriter(OutputStream out, int serialNumber, int channelCount)
+        throws IOException
+    {
+        this.out = out;
+        this.serialNumber = serialNumber;
+
+        byte[] head = new byte[19];
+
+        System.arraycopy("OpusHead".getBytes("US-ASCII"), 0, head, 0, 8);
+        head[8] = 1; // version
+        head[9] = (byte) channelCount;
+        // The pre-skip (10-11) is zero because the recording starts in the
+        // middle of a stream.
+        writeInt(head, 12, 48000); // input sample rate
+        // The output gain (16-17) and the channel mapping family (18) are
+        // zero.
+        addPacket(head, 0, head.length, 0);
+        flush(HEADER_TYPE_BOS);
+
+        byte[] vendor = VENDOR.getBytes("UTF-8");
+        byte[] tags = new byte[8 + 4 + vendor.length + 4];
+
+        System.arraycopy("OpusTags".getBytes("US-ASCII"), 0, tags, 0, 8);
+        writeInt(tags, 8, vendor.length);
+        System.arraycopy(vendor, 0, tags, 12, vendor.length);
+        // The user comment list length is zero.
+        addPacket(tags, 0, tags.length, 0);
+        flush(0);
+    }
+
+    /**
+     * Adds a specific packet to the current page.
+     *
+     * @param buf the buffer which contains the packet
+     * @param off the offset in <tt>buf</tt> at which the packet starts
+     * @param len the length in bytes of the packet
+     * @param granule the granule position at the end of the packet
+     */
+    private void addPacket(byte[] buf, int off, int len, long granule)
+    {
+        if (pageDataLength + len > pageData.length)
+        {
+            byte[] newPageData
+                = new byte[Math.max(pageData.length * 2, pageDataLength + len)];
+
+            System.arraycopy(pageData, 0, newPageData, 0, pageDataLength);
+            pageData = newPageData;
+        }
+        System.arraycopy(buf, off, pageData, pageDataLength, len);
+        pageDataLength += len;
+
+        for (int remaining = len; ; remaining -= 255)
+        {
+            if (remaining < 255)
+            {
+                segments[segmentCount++] = (byte) remaining;
+                break;
+            }
+            segments[segmentCount++] = (byte) 255;
+        }
+        packetCount++;
+        this.granule = granule;
+    }
+
+    /**
+     * Writes the last page (marked as the end of the stream) and closes the
+     * <tt>OutputStream</tt> of this instance.
+     *
+     * @throws IOException if writing or closing fails
+     */
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            flush(HEADER_TYPE_EOS);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the current page.
+     *
+     * @param headerType the value of the <tt>header_type</tt> field of the
+     * page
+     * @throws IOException if writing fails
+     */
+    private void flush(int headerType)
+        throws IOException
+    {
+        int headerLength = 27 + segmentCount;
+        int length = headerLength + pageDataLength;
+
+        if (page.length < length)
+            page = new byte[length];
+
+        page[0] = 'O';
+        page[1] = 'g';
+        page[2] = 'g';
+        page[3] = 'S';
+        page[4] = 0; // version
+        page[5] = (byte) headerType;
+        writeInt(page, 6, (int) granule);
+        writeInt(page, 10, (int) (granule >>> 32));
+        writeInt(page, 14, serialNumber);
+        writeInt(page, 18, pageSequenceNumber++);
+        writeInt(page, 22, 0); // The CRC is computed with zeros in its place.
+        page[26] = (byte) segmentCount;
+        System.arraycopy(segments, 0, page, 27, segmentCount);
+        System.arraycopy(pageData, 0, page, headerLength, pageDataLength);
+
+        int crc = 0;
+
+        for (int i = 0; i < length; i++)
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ page[i]) & 0xff];
+        writeInt(page, 22, crc);
+
+        out.write(page, 0, length);
+
+        packetCount = 0;
+        pageDataLength = 0;
+        segmentCount = 0;
+    }
+
+    /**
+     * Writes a specific Opus packet.
+     *
+     * @param buf the buffer which contains the packet
+     * @param off the offset in <tt>buf</tt> at which the packet starts
+     * @param len the length in bytes of the packet
+     * @param granule the granule position (i.e. the number of samples at
+     * 48 kHz since the start of the stream) at the end of the packet. Must not
+     * be less than the granule position of the previous packet.
+     * @throws IOException if writing fails
+     */
+    public void writePacket(byte[] buf, int off, int len, long granule)
+        throws IOException
+    {
+        int packetSegmentCount = len / 255 + 1;
+
+        if (packetSegmentCount > MAX_SEGMENTS)
+            throw new IOException("Opus packet too large: " + len);
+
+        // Keep the current page for close() to mark it as the last one.
+        if (segmentCount + packetSegmentCount > MAX_SEGMENTS
+                || packetCount == MAX_PACKETS_PER_PAGE)
+        {
+            flush(0);
+        }
+        addPacket(buf, off, len, granule);
+    }
+}
@@ -122,6 +122,16 @@
     private static String AUDIO_CODEC_PNAME =
             RecorderRtpImpl.class.getCanonicalName() + ".AUDIO_CODEC";
 
+    /**
+     * The name of the property which controls whether the recorder should
+     * record VP8 and Opus directly from the RTP packets with a
+     * <tt>RecordingEngine</tt> instead of an FMJ <tt>Processor</tt> and
+     * <tt>DataSink</tt> per stream. Audio is then saved as Ogg Opus rather
+     * than MP3 or WAV.
+     */
+    private static String USE_RECORDING_ENGINE_PNAME =
+            RecorderRtpImpl.class.getCanonicalName() + ".USE_RECORDING_ENGINE";
+
     /**
      * The <tt>ContentDescriptor</tt> to use when saving audio.
      */
@@ -183,6 +193,18 @@
      */
     private RecorderEventHandlerImpl eventHandler;
 
+    /**
+     * The <tt>RecordingEngine</tt> which records the packets if
+     * {@link #useRecordingEngine} and this instance has been started.
+     */
+    private volatile RecordingEngine recordingEngine;
+
+    /**
+     * Controls whether this <tt>RecorderRtpImpl</tt> should record with a
+     * <tt>RecordingEngine</tt> instead of FMJ.
+     */
+    private final boolean useRecordingEngine;
+
     /**
      * Holds the <tt>ReceiveStreams</tt> added to this instance by
      * {@link #rtpManager} and additional information associated with each one
@@ -223,9 +245,14 @@ public RecorderRtpImpl(RTPTranslator translator)
         this.translator = (RTPTranslatorImpl) translator;
 
         boolean performActiveSpeakerDetection = false;
+        boolean useRecordingEngine = false;
 
         if (cfg != null)
         {
+            useRecordingEngine
+                = cfg.getBoolean(
+                        USE_RECORDING_ENGINE_PNAME,
+                        useRecordingEngine);
             performActiveSpeakerDetection
                 = cfg.getBoolean(
                         PERFORM_ASD_PNAME,
@@ -240,6 +267,7 @@ public RecorderRtpImpl(RTPTranslator translator)
             }
         }
         this.performActiveSpeakerDetection = performActiveSpeakerDetection;
+        this.useRecordingEngine = useRecordingEngine;
     }
 
     /**
@@ -300,6 +328,11 @@ public void setEventHandler(RecorderEventHandler eventHandler)
             else
                 this.eventHandler.handler = eventHandler;
         }
+
+        RecordingEngine recordingEngine = this.recordingEngine;
+
+        if (recordingEngine != null)
+            recordingEngine.setEventHandler(this.eventHandler);
     }
 
     /**
@@ -334,21 +367,29 @@ public void start(String format, String dirname)
          */
         rtpConnector = new RTPConnectorImpl(redPayloadType, ulpfecPayloadType);
 
-        rtpManager = RTPManager.newInstance();
-
         /*
-         * Add the formats that we know about.
+         * The RecordingEngine takes the packets from rtpConnector before they
+         * reach FMJ so there is no need for an RTPManager.
          */
-        rtpManager.addFormat(vp8RtpFormat, vp8PayloadType);
-        rtpManager.addFormat(opusFormat, opusPayloadType);
-        rtpManager.addReceiveStreamListener(this);
+        if (!useRecordingEngine)
+        {
+            rtpManager = RTPManager.newInstance();
 
-        /*
-         * Note: When this.rtpManager sends RTCP sender/receiver reports, they
-         * will end up being written to its own input stream. This is not
-         * expected to cause problems, but might be something to keep an eye on.
-         */
-        rtpManager.initialize(rtpConnector);
+            /*
+             * Add the formats that we know about.
+             */
+            rtpManager.addFormat(vp8RtpFormat, vp8PayloadType);
+            rtpManager.addFormat(opusFormat, opusPayloadType);
+            rtpManager.addReceiveStreamListener(this);
+
+            /*
+             * Note: When this.rtpManager sends RTCP sender/receiver reports,
+             * they will end up being written to its own input stream. This is
+             * not expected to cause problems, but might be something to keep
+             * an eye on.
+             */
+            rtpManager.initialize(rtpConnector);
+        }
 
         /*
          * Register a fake call participant.
@@ -363,6 +404,19 @@ public void start(String format, String dirname)
 
         rtcpFeedbackSender = translator.getRtcpFeedbackMessageSender();
 
+        if (useRecordingEngine)
+        {
+            RecordingEngine recordingEngine
+                = new RecordingEngine(
+                        path,
+                        rtcpFeedbackSender,
+                        vp8PayloadType,
+                        opusPayloadType);
+
+            recordingEngine.setEventHandler(eventHandler);
+            this.recordingEngine = recordingEngine;
+        }
+
         translator.addFormat(streamRTPManager,
                              opusFormat,
                              opusPayloadType);
@@ -395,6 +449,12 @@ public void stop()
         if (streamRTPManager != null)
             streamRTPManager.dispose();
 
+        if (recordingEngine != null)
+        {
+            recordingEngine.close();
+            recordingEngine = null;
+        }
+
         HashSet<ReceiveStreamDesc> streamsToRemove
                 = new HashSet<ReceiveStreamDesc>();
         synchronized (receiveStreams)
@@ -407,7 +467,8 @@ public void stop()
 
         rtpConnector.rtcpPacketTransformer.close();
         rtpConnector.rtpPacketTransformer.close();
-        rtpManager.dispose();
+        if (rtpManager != null)
+            rtpManager.dispose();
 
         if (activeSpeakerDetector != null)
             activeSpeakerDetector.removeActiveSpeakerChangedListener(this);
@@ -1035,7 +1096,7 @@ private boolean requestFIR(WebmDataSink dataSink)
      * @param suffix
      * @return
      */
-    private String getNextFilename(String prefix, String suffix)
+    static String getNextFilename(String prefix, String suffix)
     {
         if (!new File(prefix + suffix).exists())
             return prefix + suffix;
@@ -1647,6 +1708,16 @@ public void setTransferHandler(
                         public RawPacket reverseTransform(RawPacket pkt)
                         {
                             RecorderRtpImpl.this.handleRtpPacket(pkt);
+
+                            RecordingEngine recordingEngine
+                                = RecorderRtpImpl.this.recordingEngine;
+
+                            if (recordingEngine != null)
+                            {
+                                // The packet is recorded without FMJ.
+                                recordingEngine.handleRtpPacket(pkt);
+                                return null;
+                            }
                             return pkt;
                         }
 
@@ -1676,6 +1747,12 @@ public RawPacket reverseTransform(RawPacket pkt)
                         ReceiveStreamDesc receiveStream = findReceiveStream(ssrc);
                         if (receiveStream != null)
                             removeReceiveStream(receiveStream, false);
+
+                        RecordingEngine recordingEngine
+                            = RecorderRtpImpl.this.recordingEngine;
+
+                        if (recordingEngine != null)
+                            recordingEngine.removeStream(ssrc);
                     }
                     else if (pkt != null && pkt.getRTCPPacketType() == 201)
                     {
@@ -0,0 +1,1345 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.recording;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jitsi.impl.neomedia.codec.video.vp8.*;
+import org.jitsi.impl.neomedia.rtp.translator.*;
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.service.neomedia.recording.*;
+import org.jitsi.util.*;
+import org.jitsi.util.concurrent.*;
+
+/**
+ * Records VP8 and Opus RTP streams into WebM and Ogg Opus files directly from
+ * their <tt>RawPacket</tt>s i.e. without an FMJ <tt>RTPManager</tt>,
+ * <tt>Processor</tt> and <tt>DataSink</tt> per stream. The packets of each
+ * SSRC are put back in order by a <tt>RtpReorderBuffer</tt>, VP8 frames are
+ * assembled from their payloads and the frames and Opus packets are written
+ * by a pool of threads shared by all instances.
+ * <p>
+ * The memory used per stream is bounded: the reorder buffer has a fixed
+ * number of slots, VP8 frames are limited in size and the frames which wait
+ * to be written are limited in bytes. A frame which does not fit into the
+ * limit is dropped (and a keyframe is requested for video).
+ */
+public class RecordingEngine
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>RecordingEngine</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(RecordingEngine.class);
+
+    /**
+     * The name of the property which specifies the number of Opus packets
+     * which are kept per stream while waiting for a missing one.
+     */
+    public static final String AUDIO_REORDER_CAPACITY_PNAME
+        = RecordingEngine.class.getName() + ".audioReorderCapacity";
+
+    /**
+     * The suffix of the names of the audio files.
+     */
+    private static final String AUDIO_FILENAME_SUFFIX = ".ogg";
+
+    /**
+     * The number of channels declared in the audio files. Decoders mix stereo
+     * down or mono up as needed.
+     */
+    private static final int AUDIO_CHANNEL_COUNT = 2;
+
+    /**
+     * The maximum time in milliseconds {@link #close()} waits for the files
+     * to be written.
+     */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     * The default value of {@link #AUDIO_REORDER_CAPACITY_PNAME}.
+     */
+    public static final int DEFAULT_AUDIO_REORDER_CAPACITY = 16;
+
+    /**
+     * The default value of {@link #MAX_QUEUED_BYTES_PNAME}.
+     */
+    public static final int DEFAULT_MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default value of {@link #VIDEO_REORDER_CAPACITY_PNAME}.
+     */
+    public static final int DEFAULT_VIDEO_REORDER_CAPACITY = 256;
+
+    /**
+     * The name of the property which specifies the number of threads which
+     * write the files of all instances.
+     */
+    public static final String IO_THREAD_COUNT_PNAME
+        = RecordingEngine.class.getName() + ".ioThreadCount";
+
+    /**
+     * The minimum interval in milliseconds between two keyframe requests for
+     * the same stream.
+     */
+    private static final long KEY_FRAME_REQUEST_INTERVAL = 1000;
+
+    /**
+     * The maximum number of <tt>Frame</tt>s kept per stream for reuse.
+     */
+    private static final int MAX_FREE_FRAMES = 16;
+
+    /**
+     * The maximum size in bytes of a VP8 frame.
+     */
+    private static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    /**
+     * The name of the property which specifies the maximum number of bytes
+     * per stream which wait to be written.
+     */
+    public static final String MAX_QUEUED_BYTES_PNAME
+        = RecordingEngine.class.getName() + ".maxQueuedBytes";
+
+    /**
+     * The name of the property which specifies the number of VP8 packets
+     * which are kept per stream while waiting for a missing one.
+     */
+    public static final String VIDEO_REORDER_CAPACITY_PNAME
+        = RecordingEngine.class.getName() + ".videoReorderCapacity";
+
+    /**
+     * The suffix of the names of the video files.
+     */
+    private static final String VIDEO_FILENAME_SUFFIX = ".webm";
+
+    /**
+     * The pool of threads which write the files of all instances, lazily
+     * initialized by {@link #getIoExecutor()}.
+     */
+    private static ExecutorService ioExecutor;
+
+    /**
+     * Gets the pool of threads which write the files of all instances.
+     *
+     * @return the pool of threads which write the files of all instances
+     */
+    private static synchronized ExecutorService getIoExecutor()
+    {
+        if (ioExecutor == null)
+        {
+            int threadCount
+                = Math.max(
+                        1,
+                        ConfigUtils.getInt(
+                                LibJitsi.getConfigurationService(),
+                                IO_THREAD_COUNT_PNAME,
+                                Runtime.getRuntime().availableProcessors()));
+            ThreadPoolExecutor threadPool
+                = new ThreadPoolExecutor(
+                        threadCount, threadCount,
+                        60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory()
+                        {
+                            private final AtomicInteger index
+                                = new AtomicInteger();
+
+                            @Override
+                            public Thread newThread(Runnable r)
+                            {
+                                Thread t = new Thread(r);
+
+                                t.setDaemon(true);
+                                t.setName(
+                                        RecordingEngine.class.getName()
+                                            + "-" + index.getAndIncrement());
+                                return t;
+                            }
+                        });
+
+            threadPool.allowCoreThreadTimeOut(true);
+            ioExecutor = threadPool;
+        }
+        return ioExecutor;
+    }
+
+    /**
+     * The number of packets kept per audio stream while waiting for a missing
+     * one.
+     */
+    private final int audioReorderCapacity;
+
+    /**
+     * The number of bytes written into the files.
+     */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * Whether {@link #close()} has been invoked.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The directory into which the files are written.
+     */
+    private final String directory;
+
+    /**
+     * The handler of the events about the start of the recordings.
+     */
+    private volatile RecorderEventHandler eventHandler;
+
+    /**
+     * The number of frames (VP8 frames or Opus packets) which have been
+     * dropped because they were incomplete, did not fit into the limit of the
+     * bytes waiting to be written or could not be decoded without a keyframe.
+     */
+    private final AtomicLong framesDropped = new AtomicLong();
+
+    /**
+     * The number of frames (VP8 frames or Opus packets) written into the
+     * files.
+     */
+    private final AtomicLong framesWritten = new AtomicLong();
+
+    /**
+     * The maximum number of bytes per stream which wait to be written.
+     */
+    private final int maxQueuedBytes;
+
+    /**
+     * The payload type of Opus.
+     */
+    private final byte opusPayloadType;
+
+    /**
+     * The number of RTP packets which were dropped because they arrived
+     * after the packets following them had been recorded or because they
+     * were duplicates.
+     */
+    private final AtomicLong packetsLate = new AtomicLong();
+
+    /**
+     * The number of RTP packets which were given up on.
+     */
+    private final AtomicLong packetsLost = new AtomicLong();
+
+    /**
+     * The number of RTP packets of the recorded payload types received.
+     */
+    private final AtomicLong packetsReceived = new AtomicLong();
+
+    /**
+     * The <tt>RTCPFeedbackMessageSender</tt> used to request keyframes.
+     */
+    private final RTCPFeedbackMessageSender rtcpFeedbackSender;
+
+    /**
+     * The recorders of the streams by SSRC.
+     */
+    private final CopyOnWriteIntMap<StreamRecorder> streams
+        = new CopyOnWriteIntMap<>();
+
+    /**
+     * The number of packets kept per video stream while waiting for a missing
+     * one.
+     */
+    private final int videoReorderCapacity;
+
+    /**
+     * The payload type of VP8.
+     */
+    private final byte vp8PayloadType;
+
+    /**
+     * The sum in nanoseconds of the times spent writing frames.
+     */
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    /**
+     * Initializes a new <tt>RecordingEngine</tt> instance.
+     *
+     * @param directory the directory into which the files are to be written
+     * @param rtcpFeedbackSender the <tt>RTCPFeedbackMessageSender</tt> to
+     * request keyframes with or <tt>null</tt>
+     * @param vp8PayloadType the payload type of VP8
+     * @param opusPayloadType the payload type of Opus
+     */
+    public RecordingEngine(
+            String directory,
+            RTCPFeedbackMessageSender rtcpFeedbackSender,
+            byte vp8PayloadType,
+            byte opusPayloadType)
+    {
+        this.directory = directory;
+        this.rtcpFeedbackSender = rtcpFeedbackSender;
+        this.vp8PayloadType = vp8PayloadType;
+        this.opusPayloadType = opusPayloadType;
+
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+        audioReorderCapacity
+            = ConfigUtils.getInt(
+                    cfg,
+                    AUDIO_REORDER_CAPACITY_PNAME,
+                    DEFAULT_AUDIO_REORDER_CAPACITY);
+        videoReorderCapacity
+            = ConfigUtils.getInt(
+                    cfg,
+                    VIDEO_REORDER_CAPACITY_PNAME,
+                    DEFAULT_VIDEO_REORDER_CAPACITY);
+        maxQueuedBytes
+            = ConfigUtils.getInt(
+                    cfg,
+                    MAX_QUEUED_BYTES_PNAME,
+                    DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    /**
+     * Stops recording and waits (for a limited time) for the files to be
+     * written.
+     */
+    public void close()
+    {
+        closed = true;
+
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+
+        for (StreamRecorder stream : streams.values())
+            stream.close();
+        for (StreamRecorder stream : streams.values())
+        {
+            long timeout = deadline - System.currentTimeMillis();
+            boolean interrupted = false;
+
+            try
+            {
+                if (timeout <= 0
+                        || !stream.closed.await(
+                                timeout,
+                                TimeUnit.MILLISECONDS))
+                {
+                    logger.warn(
+                            "Timed out waiting for " + stream.filename
+                                + " to be written.");
+                }
+            }
+            catch (InterruptedException ie)
+            {
+                interrupted = true;
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        streams.clear();
+
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Closed: packets=" + getPacketsReceived()
+                        + " lost=" + getPacketsLost()
+                        + " late=" + getPacketsLate()
+                        + " framesWritten=" + getFramesWritten()
+                        + " framesDropped=" + getFramesDropped()
+                        + " bytesWritten=" + getBytesWritten()
+                        + " averageWriteNanos=" + getAverageWriteNanos());
+        }
+    }
+
+    /**
+     * Gets the average time in nanoseconds spent writing a frame.
+     *
+     * @return the average time in nanoseconds spent writing a frame
+     */
+    public long getAverageWriteNanos()
+    {
+        long count = framesWritten.get();
+
+        return (count == 0) ? 0 : writeNanos.get() / count;
+    }
+
+    /**
+     * Gets the number of bytes written into the files.
+     *
+     * @return the number of bytes written into the files
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Gets the number of frames (VP8 frames or Opus packets) which have been
+     * dropped because they were incomplete, did not fit into the limit of the
+     * bytes waiting to be written or could not be decoded without a keyframe.
+     *
+     * @return the number of dropped frames
+     */
+    public long getFramesDropped()
+    {
+        return framesDropped.get();
+    }
+
+    /**
+     * Gets the number of frames (VP8 frames or Opus packets) written into the
+     * files.
+     *
+     * @return the number of written frames
+     */
+    public long getFramesWritten()
+    {
+        return framesWritten.get();
+    }
+
+    /**
+     * Gets the number of RTP packets which were dropped because they arrived
+     * too late or were duplicates.
+     *
+     * @return the number of late RTP packets
+     */
+    public long getPacketsLate()
+    {
+        return packetsLate.get();
+    }
+
+    /**
+     * Gets the number of RTP packets which were given up on.
+     *
+     * @return the number of lost RTP packets
+     */
+    public long getPacketsLost()
+    {
+        return packetsLost.get();
+    }
+
+    /**
+     * Gets the number of RTP packets of the recorded payload types received.
+     *
+     * @return the number of received RTP packets
+     */
+    public long getPacketsReceived()
+    {
+        return packetsReceived.get();
+    }
+
+    /**
+     * Gets the number of bytes which wait to be written.
+     *
+     * @return the number of bytes which wait to be written
+     */
+    public long getQueuedBytes()
+    {
+        long queuedBytes = 0;
+
+        for (StreamRecorder stream : streams.values())
+            queuedBytes += stream.queuedBytes.get();
+        return queuedBytes;
+    }
+
+    /**
+     * Gets the number of streams which are being recorded.
+     *
+     * @return the number of streams which are being recorded
+     */
+    public int getStreamCount()
+    {
+        return streams.size();
+    }
+
+    /**
+     * Records a specific RTP packet. Packets of payload types other than VP8
+     * and Opus are ignored.
+     *
+     * @param pkt the RTP packet to record. It is copied so it may be reused
+     * by the caller afterwards.
+     */
+    public void handleRtpPacket(RawPacket pkt)
+    {
+        if (closed || pkt == null)
+            return;
+
+        byte pt = pkt.getPayloadType();
+        boolean video;
+
+        if (pt == vp8PayloadType)
+            video = true;
+        else if (pt == opusPayloadType)
+            video = false;
+        else
+            return;
+
+        int ssrc = pkt.getSSRC();
+        StreamRecorder stream = streams.get(ssrc);
+
+        if (stream == null)
+        {
+            long ssrcAsLong = ssrc & 0xffffffffL;
+            StreamRecorder newStream
+                = video
+                    ? new VideoStreamRecorder(ssrcAsLong)
+                    : new AudioStreamRecorder(ssrcAsLong);
+
+            stream = streams.putIfAbsent(ssrc, newStream);
+            if (stream == null)
+            {
+                stream = newStream;
+                if (logger.isInfoEnabled())
+                {
+                    logger.info(
+                            "Recording SSRC=" + ssrcAsLong + " into "
+                                + stream.filename);
+                }
+            }
+        }
+
+        packetsReceived.incrementAndGet();
+        stream.received(pkt);
+    }
+
+    /**
+     * Notifies the event handler of this instance that the recording of a
+     * specific stream has started.
+     *
+     * @param stream the stream whose recording has started
+     * @param rtpTimestamp the RTP timestamp of the first frame of the
+     * recording
+     * @param mediaType the type of the media of the stream
+     * @param aspectRatio the aspect ratio of the video or <tt>null</tt>
+     */
+    private void recordingStarted(
+            StreamRecorder stream,
+            long rtpTimestamp,
+            MediaType mediaType,
+            RecorderEvent.AspectRatio aspectRatio)
+    {
+        RecorderEventHandler eventHandler = this.eventHandler;
+
+        if (eventHandler == null)
+            return;
+
+        RecorderEvent event = new RecorderEvent();
+
+        event.setType(RecorderEvent.Type.RECORDING_STARTED);
+        event.setSsrc(stream.ssrc);
+        event.setFilename(stream.filename);
+        event.setInstant(System.currentTimeMillis());
+        event.setRtpTimestamp(rtpTimestamp);
+        event.setMediaType(mediaType);
+        if (aspectRatio != null)
+            event.setAspectRatio(aspectRatio);
+        eventHandler.handleEvent(event);
+    }
+
+    /**
+     * Stops recording a specific stream (e.g. because of an RTCP BYE).
+     *
+     * @param ssrc the SSRC of the stream to stop recording
+     */
+    public void removeStream(long ssrc)
+    {
+        StreamRecorder stream = streams.remove((int) ssrc);
+
+        if (stream != null)
+            stream.close();
+    }
+
+    /**
+     * Sets the handler of the events about the start of the recordings.
+     *
+     * @param eventHandler the handler of the events about the start of the
+     * recordings
+     */
+    public void setEventHandler(RecorderEventHandler eventHandler)
+    {
+        this.eventHandler = eventHandler;
+    }
+
+    /**
+     * A VP8 frame or an Opus packet which waits to be written.
+     */
+    private static class Frame
+    {
+        /**
+         * The bytes of the frame.
+         */
+        byte[] data;
+
+        /**
+         * The height of a VP8 keyframe.
+         */
+        int height;
+
+        /**
+         * Whether the frame is a VP8 frame which is not to be shown.
+         */
+        boolean invisible;
+
+        /**
+         * Whether the frame is a VP8 keyframe.
+         */
+        boolean key;
+
+        /**
+         * The number of valid bytes of {@link #data}.
+         */
+        int length;
+
+        /**
+         * The presentation time in milliseconds of a VP8 frame or the granule
+         * position of an Opus packet.
+         */
+        long timestamp;
+
+        /**
+         * The width of a VP8 keyframe.
+         */
+        int width;
+    }
+
+    /**
+     * Records the Opus RTP packets of a single SSRC into an Ogg Opus file.
+     */
+    private class AudioStreamRecorder
+        extends StreamRecorder
+    {
+        /**
+         * The granule position at the end of the last packet written.
+         */
+        private long granule = -1;
+
+        /**
+         * The RTP timestamp of the last packet.
+         */
+        private long lastTimestamp = -1;
+
+        /**
+         * The number of samples at 48 kHz since the first packet.
+         */
+        private long position;
+
+        /**
+         * The <tt>OggOpusWriter</tt> which writes the file. Accessed by the
+         * I/O threads only.
+         */
+        private OggOpusWriter writer;
+
+        /**
+         * Initializes a new <tt>AudioStreamRecorder</tt> instance.
+         *
+         * @param ssrc the SSRC of the stream
+         */
+        AudioStreamRecorder(long ssrc)
+        {
+            super(ssrc, audioReorderCapacity, AUDIO_FILENAME_SUFFIX);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void closeWriter()
+            throws IOException
+        {
+            if (writer != null)
+                writer.close();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void packet(RawPacket pkt, int lost)
+        {
+            int len = pkt.getPayloadLength(true);
+
+            if (len <= 0)
+                return;
+
+            byte[] buf = pkt.getBuffer();
+            int off = pkt.getPayloadOffset();
+            long timestamp = pkt.getTimestamp();
+
+            if (lastTimestamp == -1)
+            {
+                recordingStarted(this, timestamp, MediaType.AUDIO, null);
+            }
+            else
+            {
+                long delta = (timestamp - lastTimestamp) & 0xffffffffL;
+
+                // Ignore timestamps which go back.
+                if (delta < 0x80000000L)
+                    position += delta;
+            }
+            lastTimestamp = timestamp;
+
+            granule
+                = Math.max(
+                        granule,
+                        position + OggOpusWriter.getSampleCount(buf, off, len));
+
+            Frame frame = obtainFrame(len);
+
+            System.arraycopy(buf, off, frame.data, 0, len);
+            frame.length = len;
+            frame.timestamp = granule;
+            enqueue(frame);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void write(Frame frame)
+            throws IOException
+        {
+            if (writer == null)
+                writer = new OggOpusWriter(filename, AUDIO_CHANNEL_COUNT);
+            writer.writePacket(frame.data, 0, frame.length, frame.timestamp);
+        }
+    }
+
+    /**
+     * Records the RTP packets of a single SSRC. The packets are reordered and
+     * turned into <tt>Frame</tt>s under the synchronization of the instance
+     * by the threads which receive them and the <tt>Frame</tt>s are written
+     * by one of the I/O threads at a time.
+     */
+    private abstract class StreamRecorder
+        implements Runnable
+    {
+        /**
+         * The <tt>CountDownLatch</tt> released when the file has been closed.
+         */
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        /**
+         * Whether {@link #close()} has been invoked.
+         */
+        private volatile boolean closing;
+
+        /**
+         * Whether writing has failed. Accessed by the I/O threads only.
+         */
+        private boolean failed;
+
+        /**
+         * The name of the file into which the stream is written or
+         * <tt>null</tt> if no name could be found.
+         */
+        final String filename;
+
+        /**
+         * The <tt>Frame</tt>s which have been written and may be reused.
+         */
+        private final ArrayBlockingQueue<Frame> freeFrames
+            = new ArrayBlockingQueue<>(MAX_FREE_FRAMES);
+
+        /**
+         * The <tt>Frame</tt>s which wait to be written.
+         */
+        private final ConcurrentLinkedQueue<Frame> queue
+            = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The number of bytes of the <tt>Frame</tt>s which wait to be
+         * written.
+         */
+        final AtomicInteger queuedBytes = new AtomicInteger();
+
+        /**
+         * The <tt>RtpReorderBuffer</tt> which puts the packets of the stream
+         * back in order.
+         */
+        private final RtpReorderBuffer reorderBuffer;
+
+        /**
+         * Whether this instance has been submitted to the I/O threads and has
+         * not finished running.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * The SSRC of the stream.
+         */
+        final long ssrc;
+
+        /**
+         * Initializes a new <tt>StreamRecorder</tt> instance.
+         *
+         * @param ssrc the SSRC of the stream
+         * @param reorderCapacity the number of packets to keep while waiting
+         * for a missing one
+         * @param filenameSuffix the suffix of the name of the file
+         */
+        StreamRecorder(long ssrc, int reorderCapacity, String filenameSuffix)
+        {
+            this.ssrc = ssrc;
+            reorderBuffer = new RtpReorderBuffer(reorderCapacity);
+            filename
+                = RecorderRtpImpl.getNextFilename(
+                        directory + "/" + ssrc,
+                        filenameSuffix);
+        }
+
+        /**
+         * Releases the packets which wait for missing ones and has the file
+         * closed once the <tt>Frame</tt>s which wait to be written have been
+         * written.
+         */
+        void close()
+        {
+            synchronized (this)
+            {
+                if (closing)
+                    return;
+                while (reorderBuffer.size() > 0)
+                    release(reorderBuffer.skip());
+                closing = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Closes the file of the stream. Invoked by an I/O thread.
+         *
+         * @throws IOException if closing the file fails
+         */
+        protected abstract void closeWriter()
+            throws IOException;
+
+        /**
+         * Queues a specific <tt>Frame</tt> to be written unless the bytes
+         * waiting to be written would exceed the limit.
+         *
+         * @param frame the <tt>Frame</tt> to be written
+         * @return <tt>true</tt> if <tt>frame</tt> has been queued or
+         * <tt>false</tt> if it has been dropped
+         */
+        protected boolean enqueue(Frame frame)
+        {
+            if (queuedBytes.get() + frame.length > maxQueuedBytes)
+            {
+                framesDropped.incrementAndGet();
+                freeFrames.offer(frame);
+                return false;
+            }
+
+            queuedBytes.addAndGet(frame.length);
+            queue.add(frame);
+            schedule();
+            return true;
+        }
+
+        /**
+         * Gets a <tt>Frame</tt> to fill with a specific number of bytes.
+         *
+         * @param length the number of bytes to be put into the frame
+         * @return a <tt>Frame</tt> with room for <tt>length</tt> bytes
+         */
+        protected Frame obtainFrame(int length)
+        {
+            Frame frame = freeFrames.poll();
+
+            if (frame == null)
+                frame = new Frame();
+            if (frame.data == null || frame.data.length < length)
+                frame.data = new byte[length];
+            frame.key = false;
+            frame.invisible = false;
+            return frame;
+        }
+
+        /**
+         * Handles the next RTP packet of the stream in the order of the
+         * sequence numbers.
+         *
+         * @param pkt the next RTP packet of the stream
+         * @param lost the number of packets which were given up on
+         * immediately before <tt>pkt</tt>
+         */
+        protected abstract void packet(RawPacket pkt, int lost);
+
+        /**
+         * Adds a specific received RTP packet of the stream to the reorder
+         * buffer and handles the packets which are ready.
+         *
+         * @param pkt the received RTP packet
+         */
+        synchronized void received(RawPacket pkt)
+        {
+            if (closing)
+                return;
+
+            int result;
+
+            while ((result = reorderBuffer.add(pkt)) == RtpReorderBuffer.FULL)
+            {
+                // The sequence numbers have jumped or too many packets are
+                // missing.
+                if (reorderBuffer.size() == 0)
+                    reorderBuffer.reset();
+                else
+                    release(reorderBuffer.skip());
+            }
+            if (result != RtpReorderBuffer.ACCEPTED)
+            {
+                packetsLate.incrementAndGet();
+                return;
+            }
+
+            RawPacket next;
+
+            while ((next = reorderBuffer.poll()) != null)
+                release(next);
+        }
+
+        /**
+         * Handles a specific packet released by the reorder buffer.
+         *
+         * @param pkt the packet released by the reorder buffer or
+         * <tt>null</tt> if the reorder buffer gave up on a missing packet
+         */
+        private void release(RawPacket pkt)
+        {
+            if (pkt == null)
+                return;
+
+            int lost = reorderBuffer.getLost();
+
+            if (lost > 0)
+                packetsLost.addAndGet(lost);
+            packet(pkt, lost);
+        }
+
+        /**
+         * Writes the <tt>Frame</tt>s which wait to be written and closes the
+         * file if {@link #close()} has been invoked. Invoked by an I/O thread.
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                Frame frame;
+
+                while ((frame = queue.poll()) != null)
+                {
+                    queuedBytes.addAndGet(-frame.length);
+                    if (!failed)
+                    {
+                        long startNanos = System.nanoTime();
+
+                        try
+                        {
+                            if (filename == null)
+                            {
+                                throw new IOException(
+                                        "No file name for SSRC=" + ssrc);
+                            }
+                            write(frame);
+                            framesWritten.incrementAndGet();
+                            bytesWritten.addAndGet(frame.length);
+                        }
+                        catch (Throwable t)
+                        {
+                            if (t instanceof ThreadDeath)
+                                throw (ThreadDeath) t;
+
+                            failed = true;
+                            logger.error(
+                                    "Failed to record SSRC=" + ssrc + " into "
+                                        + filename,
+                                    t);
+                        }
+                        writeNanos.addAndGet(System.nanoTime() - startNanos);
+                    }
+                    freeFrames.offer(frame);
+                }
+
+                if (closing && closed.getCount() != 0)
+                {
+                    try
+                    {
+                        closeWriter();
+                    }
+                    catch (Throwable t)
+                    {
+                        if (t instanceof ThreadDeath)
+                            throw (ThreadDeath) t;
+
+                        logger.error("Failed to close " + filename, t);
+                    }
+                    finally
+                    {
+                        closed.countDown();
+                    }
+                }
+            }
+            finally
+            {
+                scheduled.set(false);
+                // Frames may have been queued or close() may have been invoked
+                // after the checks above.
+                if (!queue.isEmpty() || (closing && closed.getCount() != 0))
+                    schedule();
+            }
+        }
+
+        /**
+         * Submits this instance to the I/O threads unless it has been
+         * submitted already and has not finished running.
+         */
+        private void schedule()
+        {
+            if (scheduled.compareAndSet(false, true))
+                getIoExecutor().execute(this);
+        }
+
+        /**
+         * Writes a specific <tt>Frame</tt> into the file of the stream.
+         * Invoked by an I/O thread.
+         *
+         * @param frame the <tt>Frame</tt> to write
+         * @throws IOException if writing fails
+         */
+        protected abstract void write(Frame frame)
+            throws IOException;
+    }
+
+    /**
+     * Records the VP8 RTP packets of a single SSRC into a WebM file.
+     */
+    private class VideoStreamRecorder
+        extends StreamRecorder
+    {
+        /**
+         * The <tt>FrameDescriptor</tt> with which frames are given to
+         * {@link #writer}. Accessed by the I/O threads only.
+         */
+        private final WebmWriter.FrameDescriptor fd
+            = new WebmWriter.FrameDescriptor();
+
+        /**
+         * The RTP timestamp of the first frame recorded or <tt>-1</tt>.
+         */
+        private long firstTimestamp = -1;
+
+        /**
+         * The bytes of the frame being assembled.
+         */
+        private byte[] frameBuffer = new byte[16 * 1024];
+
+        /**
+         * Whether the frame being assembled misses packets.
+         */
+        private boolean frameBroken;
+
+        /**
+         * Whether a frame is being assembled.
+         */
+        private boolean frameInProgress;
+
+        /**
+         * The number of valid bytes of {@link #frameBuffer}.
+         */
+        private int frameLength;
+
+        /**
+         * The RTP timestamp of the frame being assembled.
+         */
+        private long frameTimestamp;
+
+        /**
+         * The time in milliseconds of the last keyframe request.
+         */
+        private long lastKeyFrameRequestTime = -1;
+
+        /**
+         * Whether frames are dropped until a keyframe arrives.
+         */
+        private boolean waitingForKeyFrame = true;
+
+        /**
+         * The <tt>WebmWriter</tt> which writes the file. Accessed by the I/O
+         * threads only.
+         */
+        private WebmWriter writer;
+
+        /**
+         * Initializes a new <tt>VideoStreamRecorder</tt> instance.
+         *
+         * @param ssrc the SSRC of the stream
+         */
+        VideoStreamRecorder(long ssrc)
+        {
+            super(ssrc, videoReorderCapacity, VIDEO_FILENAME_SUFFIX);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void closeWriter()
+        {
+            if (writer != null)
+                writer.close();
+        }
+
+        /**
+         * Handles the assembled frame.
+         */
+        private void frameComplete()
+        {
+            boolean key = WebmDataSink.isKeyFrame(frameBuffer, 0);
+
+            if (key)
+            {
+                if (frameLength < 10
+                        || !WebmDataSink.isKeyFrameValid(frameBuffer, 0))
+                {
+                    frameDropped();
+                    return;
+                }
+                if (waitingForKeyFrame)
+                {
+                    waitingForKeyFrame = false;
+                    if (firstTimestamp == -1)
+                    {
+                        firstTimestamp = frameTimestamp;
+                        recordingStarted(
+                                this,
+                                frameTimestamp,
+                                MediaType.VIDEO,
+                                getAspectRatio(
+                                        WebmDataSink.getWidth(frameBuffer, 0),
+                                        WebmDataSink.getHeight(
+                                                frameBuffer, 0)));
+                    }
+                }
+            }
+            else if (waitingForKeyFrame)
+            {
+                frameDropped();
+                return;
+            }
+
+            Frame frame = obtainFrame(frameLength);
+
+            System.arraycopy(frameBuffer, 0, frame.data, 0, frameLength);
+            frame.length = frameLength;
+            frame.key = key;
+            frame.invisible = !WebmDataSink.isShowFrame(frameBuffer, 0);
+            if (key)
+            {
+                frame.width = WebmDataSink.getWidth(frameBuffer, 0);
+                frame.height = WebmDataSink.getHeight(frameBuffer, 0);
+            }
+
+            long diff = frameTimestamp - firstTimestamp;
+
+            if (diff < -(1L << 31))
+                diff += 1L << 32;
+            else if (diff > (1L << 31))
+                diff -= 1L << 32;
+            // The presentation timestamp is in milliseconds and the VP8 RTP
+            // clock rate is 90000.
+            frame.timestamp = Math.max(0, diff / 90);
+
+            if (!enqueue(frame))
+            {
+                // The frames which follow depend on the dropped one.
+                waitingForKeyFrame = true;
+                requestKeyFrame();
+            }
+        }
+
+        /**
+         * Drops the frame being assembled and waits for a keyframe.
+         */
+        private void frameDropped()
+        {
+            framesDropped.incrementAndGet();
+            waitingForKeyFrame = true;
+            requestKeyFrame();
+        }
+
+        /**
+         * Gets the <tt>AspectRatio</tt> of video with specific dimensions.
+         *
+         * @param width the width of the video
+         * @param height the height of the video
+         * @return the <tt>AspectRatio</tt> of the video or <tt>null</tt>
+         */
+        private RecorderEvent.AspectRatio getAspectRatio(int width, int height)
+        {
+            if (height * 4 == width * 3)
+                return RecorderEvent.AspectRatio.ASPECT_RATIO_4_3;
+            else if (height * 16 == width * 9)
+                return RecorderEvent.AspectRatio.ASPECT_RATIO_16_9;
+            else
+                return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Assembles VP8 frames from the payloads of the packets.
+         */
+        @Override
+        protected void packet(RawPacket pkt, int lost)
+        {
+            // The frame being assembled may miss the lost packets.
+            if (lost > 0)
+                frameBroken = true;
+
+            int len = pkt.getPayloadLength(true);
+
+            if (len <= 0)
+                return;
+
+            byte[] buf = pkt.getBuffer();
+            int off = pkt.getPayloadOffset();
+            int descriptorSize
+                = DePacketizer.VP8PayloadDescriptor.getSize(buf, off);
+
+            if (descriptorSize < 0 || descriptorSize >= len)
+            {
+                frameBroken = true;
+                return;
+            }
+
+            long timestamp = pkt.getTimestamp();
+
+            if (DePacketizer.VP8PayloadDescriptor.isStartOfFrame(buf, off))
+            {
+                // The previous frame has not received its last packet.
+                if (frameInProgress)
+                    frameDropped();
+                frameInProgress = true;
+                frameBroken = false;
+                frameLength = 0;
+                frameTimestamp = timestamp;
+            }
+            else if (!frameInProgress || timestamp != frameTimestamp)
+            {
+                // The first packet of the frame is missing.
+                if (frameInProgress)
+                    frameDropped();
+                frameInProgress = true;
+                frameBroken = true;
+                frameTimestamp = timestamp;
+            }
+
+            if (!frameBroken)
+            {
+                int payloadLength = len - descriptorSize;
+                int newFrameLength = frameLength + payloadLength;
+
+                if (newFrameLength > MAX_FRAME_SIZE)
+                {
+                    frameBroken = true;
+                }
+                else
+                {
+                    if (newFrameLength > frameBuffer.length)
+                    {
+                        byte[] newFrameBuffer
+                            = new byte[
+                                    Math.min(
+                                            MAX_FRAME_SIZE,
+                                            Math.max(
+                                                    newFrameLength,
+                                                    2 * frameBuffer.length))];
+
+                        System.arraycopy(
+                                frameBuffer, 0,
+                                newFrameBuffer, 0,
+                                frameLength);
+                        frameBuffer = newFrameBuffer;
+                    }
+                    System.arraycopy(
+                            buf, off + descriptorSize,
+                            frameBuffer, frameLength,
+                            payloadLength);
+                    frameLength = newFrameLength;
+                }
+            }
+
+            if (pkt.isPacketMarked() && frameInProgress)
+            {
+                if (frameBroken)
+                    frameDropped();
+                else
+                    frameComplete();
+                frameInProgress = false;
+            }
+        }
+
+        /**
+         * Requests a keyframe unless one has been requested recently.
+         */
+        private void requestKeyFrame()
+        {
+            long now = System.currentTimeMillis();
+
+            if (rtcpFeedbackSender != null
+                    && (lastKeyFrameRequestTime == -1
+                        || now - lastKeyFrameRequestTime
+                            >= KEY_FRAME_REQUEST_INTERVAL))
+            {
+                lastKeyFrameRequestTime = now;
+                rtcpFeedbackSender.sendFIR((int) ssrc);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void write(Frame frame)
+            throws IOException
+        {
+            if (writer == null)
+            {
+                // The first frame queued is a keyframe.
+                if (!frame.key)
+                    return;
+
+                writer = new WebmWriter(filename);
+                writer.writeWebmFileHeader(frame.width, frame.height);
+            }
+
+            fd.buffer = frame.data;
+            fd.offset = 0;
+            fd.length = frame.length;
+            fd.pts = frame.timestamp;
+            fd.flags = frame.key ? WebmWriter.FLAG_FRAME_IS_KEY : 0;
+            if (frame.invisible)
+                fd.flags |= WebmWriter.FLAG_FRAME_IS_INVISIBLE;
+            writer.writeFrame(fd);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.recording;
+
+import java.util.*;
+
+import org.jitsi.service.neomedia.*;
+
+/**
+ * Puts the RTP packets of a single stream back into the order of their
+ * sequence numbers. The packets are copied into a fixed number of slots (each
+ * with its own reusable buffer) so the memory used by an instance is bounded
+ * and adding a packet does not allocate once the slots have grown to the size
+ * of the packets of the stream.
+ * <p>
+ * A packet is released by {@link #poll()} as soon as all packets preceding it
+ * have been released. A packet which is too new to fit into the slots is
+ * rejected with {@link #FULL} and the oldest slot is to be released with
+ * {@link #skip()} (giving up on the packet if it is missing) until it fits.
+ * <p>
+ * Instances are not thread-safe.
+ */
+class RtpReorderBuffer
+{
+    /**
+     * The value returned by {@link #add(RawPacket)} for a packet which has
+     * been added.
+     */
+    public static final int ACCEPTED = 0;
+
+    /**
+     * The value returned by {@link #add(RawPacket)} for a packet which has
+     * been added (or released) already.
+     */
+    public static final int DUPLICATE = 1;
+
+    /**
+     * The value returned by {@link #add(RawPacket)} for a packet which does
+     * not fit into the slots because it is too new.
+     */
+    public static final int FULL = 2;
+
+    /**
+     * The value returned by {@link #add(RawPacket)} for a packet which is
+     * older than the packets released already.
+     */
+    public static final int LATE = 3;
+
+    /**
+     * The sequence number of the next packet to be released or <tt>-1</tt> if
+     * no packet has been added since the initialization or the last
+     * {@link #reset()}.
+     */
+    private int head = -1;
+
+    /**
+     * The number of packets which were given up on immediately before the
+     * packet last released by {@link #poll()} or {@link #skip()}.
+     */
+    private int lost;
+
+    /**
+     * The number of packets given up on by {@link #skip()} which have not
+     * been reported by {@link #getLost()} yet.
+     */
+    private int lostPending;
+
+    /**
+     * The number of slots minus one.
+     */
+    private final int mask;
+
+    /**
+     * The slots of the packets indexed by sequence number modulo their
+     * number. A slot is taken if the corresponding element of {@link #taken}
+     * is <tt>true</tt>.
+     */
+    private final RawPacket[] packets;
+
+    /**
+     * The number of slots which are taken.
+     */
+    private int size;
+
+    /**
+     * Whether the slots are taken indexed as {@link #packets}.
+     */
+    private final boolean[] taken;
+
+    /**
+     * Initializes a new <tt>RtpReorderBuffer</tt> instance.
+     *
+     * @param capacity the minimum number of packets to keep while waiting for
+     * a missing one. Rounded up to a power of two.
+     */
+    RtpReorderBuffer(int capacity)
+    {
+        if (capacity < 1 || capacity > 0x4000)
+            throw new IllegalArgumentException("capacity " + capacity);
+
+        int length = Integer.highestOneBit(capacity);
+
+        if (length < capacity)
+            length <<= 1;
+
+        packets = new RawPacket[length];
+        taken = new boolean[length];
+        mask = length - 1;
+        for (int i = 0; i < length; i++)
+            packets[i] = new RawPacket();
+    }
+
+    /**
+     * Copies a specific RTP packet into this buffer.
+     *
+     * @param pkt the RTP packet to add
+     * @return {@link #ACCEPTED}, {@link #DUPLICATE}, {@link #FULL} or
+     * {@link #LATE}
+     */
+    public int add(RawPacket pkt)
+    {
+        int seq = pkt.getSequenceNumber();
+
+        if (head == -1)
+            head = seq;
+
+        int delta = (seq - head) & 0xffff;
+
+        if (delta >= 0x8000)
+            return LATE;
+        if (delta > mask)
+            return FULL;
+
+        int index = seq & mask;
+
+        if (taken[index])
+            return DUPLICATE;
+
+        RawPacket slot = packets[index];
+        byte[] buf = slot.getBuffer();
+        int len = pkt.getLength();
+
+        if (buf == null || buf.length < len)
+        {
+            buf = new byte[len];
+            slot.setBuffer(buf);
+        }
+        System.arraycopy(pkt.getBuffer(), pkt.getOffset(), buf, 0, len);
+        slot.setOffset(0);
+        slot.setLength(len);
+        taken[index] = true;
+        size++;
+        return ACCEPTED;
+    }
+
+    /**
+     * Gets the number of packets which were given up on immediately before
+     * the packet last released by {@link #poll()} or {@link #skip()}.
+     *
+     * @return the number of packets lost before the last released packet
+     */
+    public int getLost()
+    {
+        return lost;
+    }
+
+    /**
+     * Releases the next packet if it has been added.
+     *
+     * @return the next packet (which remains valid until the next invocation
+     * of {@link #add(RawPacket)}) or <tt>null</tt> if it has not been added
+     */
+    public RawPacket poll()
+    {
+        if (size == 0)
+            return null;
+
+        int index = head & mask;
+
+        if (!taken[index])
+            return null;
+
+        taken[index] = false;
+        size--;
+        head = (head + 1) & 0xffff;
+
+        // The packets given up on by skip() are reported with the first one
+        // released after them.
+        lost = lostPending;
+        lostPending = 0;
+        return packets[index];
+    }
+
+    /**
+     * Forgets the sequence numbers and the packets of the stream e.g. after
+     * the sequence numbers have jumped by more than the capacity of this
+     * buffer. The first packet released afterwards is reported as following a
+     * loss.
+     */
+    public void reset()
+    {
+        if (size != 0)
+        {
+            lostPending += size;
+            Arrays.fill(taken, false);
+            size = 0;
+        }
+        if (head != -1)
+        {
+            lostPending = Math.max(lostPending, 1);
+            head = -1;
+        }
+    }
+
+    /**
+     * Gets the number of packets which have been added and not released yet.
+     *
+     * @return the number of buffered packets
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Releases the next packet or gives up on it if it is missing.
+     *
+     * @return the next packet (which remains valid until the next invocation
+     * of {@link #add(RawPacket)}) or <tt>null</tt> if it was missing
+     */
+    public RawPacket skip()
+    {
+        RawPacket pkt = poll();
+
+        if (pkt == null && head != -1)
+        {
+            lostPending++;
+            head = (head + 1) & 0xffff;
+        }
+        return pkt;
+    }
+}
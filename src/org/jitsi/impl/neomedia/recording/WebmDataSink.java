@@ -472,7 +472,7 @@ else if (height*16 == width*9)
      * @return <tt>true</tt>if the VP8 compressed frame contained in
      * <tt>buf</tt> at offset <tt>offset</tt> is a keyframe.
      */
-    private boolean isKeyFrame(byte[] buf, int offset)
+    static boolean isKeyFrame(byte[] buf, int offset)
     {
         return (buf[offset] & 0x01) == 0;
     }
@@ -489,7 +489,7 @@ private boolean isKeyFrame(byte[] buf, int offset)
      * @return <tt>true</tt>if the VP8 compressed keyframe contained in
      * <tt>buf</tt> at offset <tt>offset</tt> is valid.
      */
-    private boolean isKeyFrameValid(byte[] buf, int offset)
+    static boolean isKeyFrameValid(byte[] buf, int offset)
     {
         return (buf[offset + 3] == (byte) 0x9d) &&
                (buf[offset + 4] == (byte) 0x01) &&
@@ -508,7 +508,7 @@ private boolean isKeyFrameValid(byte[] buf, int offset)
      * @return the width of the VP8 compressed frame contained in <tt>buf</tt>
      * at offset <tt>offset</tt>.
      */
-    private int getWidth(byte[] buf, int offset)
+    static int getWidth(byte[] buf, int offset)
     {
         return (((buf[offset+7] & 0xff) << 8) | (buf[offset+6] & 0xff)) & 0x3fff;
     }
@@ -525,7 +525,7 @@ private int getWidth(byte[] buf, int offset)
      * @return the height of the VP8 compressed frame contained in <tt>buf</tt>
      * at offset <tt>offset</tt>.
      */
-     private int getHeight(byte[] buf, int offset)
+    static int getHeight(byte[] buf, int offset)
     {
         return (((buf[offset+9] & 0xff) << 8) | (buf[offset+8] & 0xff)) & 0x3fff;
     }
@@ -547,7 +547,7 @@ private int getHeight(byte[] buf, int offset)
      * "uncompressed data chunk" in the VP8 compressed frame contained in
      * <tt>buf</tt> at offset <tt>offset</tt>.
      */
-    private boolean isShowFrame(byte[] buf, int offset)
+    static boolean isShowFrame(byte[] buf, int offset)
     {
         return (buf[offset] & 0x10) == 0;
     }
@@ -129,6 +129,25 @@ public NACKPacket(long senderSSRC, long sourceSSRC,
         this.lostPackets = sorted;
     }
 
+    /**
+     * Initializes a new <tt>NACKPacket</tt> instance with specific "packet
+     * sender SSRC" and "media source SSRC" values and a specific (copy of a)
+     * Feedback Control Information (FCI).
+     * @param senderSSRC the value to use for the "packet sender SSRC" field.
+     * @param sourceSSRC the value to use for the "media source SSRC" field.
+     * @param buf the buffer which holds the FCI.
+     * @param off the offset in <tt>buf</tt> of the FCI.
+     * @param len the length in bytes of the FCI.
+     */
+    public NACKPacket(long senderSSRC, long sourceSSRC,
+                      byte[] buf, int off, int len)
+    {
+        super(FMT, RTPFB, senderSSRC, sourceSSRC);
+
+        fci = new byte[len];
+        System.arraycopy(buf, off, fci, 0, len);
+    }
+
     /**
      * Gets a boolean indicating whether or not the RTCP packet specified in the
      * {@link ByteArrayBuffer} that is passed as an argument is a NACK packet or
@@ -151,15 +170,32 @@ public static boolean isNACKPacket(ByteArrayBuffer baf)
      */
     public static Collection<Integer> getLostPackets(ByteArrayBuffer next)
     {
-        Collection<Integer> lostPackets = new LinkedList<>();
         ByteArrayBuffer fciBuffer = getFCI(next);
         if (fciBuffer == null)
         {
-            return lostPackets;
+            return new LinkedList<>();
         }
 
-        byte[] fci = fciBuffer.getBuffer();
-        int off = fciBuffer.getOffset(), len = fciBuffer.getLength();
+        return
+            getLostPackets(
+                    fciBuffer.getBuffer(),
+                    fciBuffer.getOffset(),
+                    fciBuffer.getLength());
+    }
+
+    /**
+     * Gets the sequence numbers described by the NACK entries of a specific
+     * Feedback Control Information (FCI).
+     *
+     * @param fci the buffer which holds the FCI.
+     * @param off the offset in <tt>fci</tt> of the FCI.
+     * @param len the length in bytes of the FCI.
+     * @return the sequence numbers described by the FCI.
+     */
+    private static Collection<Integer> getLostPackets(
+            byte[] fci, int off, int len)
+    {
+        Collection<Integer> lostPackets = new LinkedList<>();
 
         for (int i = 0; i < (len / 4); i++)
         {
@@ -190,7 +226,10 @@ synchronized public Collection<Integer> getLostPackets()
         {
             // parse this.fci as containing NACK entries and initialize
             // this.lostPackets
-            lostPackets = getLostPackets(new RawPacket(fci, 0, fci.length));
+            lostPackets
+                = (fci == null)
+                    ? new LinkedList<Integer>()
+                    : getLostPackets(fci, 0, fci.length);
         }
 
         return lostPackets;
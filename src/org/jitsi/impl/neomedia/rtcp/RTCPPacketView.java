@@ -0,0 +1,912 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtcp;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+
+/**
+ * A flyweight view of the RTCP packets of a compound RTCP packet. The view is
+ * positioned on one RTCP packet at a time and reads its fields straight from
+ * the buffer of the compound packet, so walking a compound packet with an
+ * instance which is reused does not allocate. The only modification which it
+ * makes to the compound packet is {@link #remove()}, which drops the packet
+ * the view is positioned on. Supports SR, RR,
+ * SDES, BYE, XR and the transport-layer (generic NACK, transport-cc) and
+ * payload-specific (PLI, FIR, REMB) feedback messages.
+ *
+ * The accessors of a specific packet type must only be called while the view
+ * is positioned on a packet of that type. Instances are not thread-safe.
+ */
+public class RTCPPacketView
+{
+    /**
+     * The packet type of a BYE packet.
+     */
+    public static final int BYE = 203;
+
+    /**
+     * The value of the FMT field of an FIR packet.
+     */
+    public static final int FIR_FMT = 4;
+
+    /**
+     * The size in bytes of the common header of an RTCP packet and the SSRC of
+     * its sender.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The value of the FMT field of a generic NACK packet.
+     */
+    public static final int NACK_FMT = 1;
+
+    /**
+     * The value of the FMT field of a PLI packet.
+     */
+    public static final int PLI_FMT = 1;
+
+    /**
+     * The packet type of a payload-specific feedback message.
+     */
+    public static final int PSFB = 206;
+
+    /**
+     * The value of the FMT field of a REMB packet.
+     */
+    public static final int REMB_FMT = 15;
+
+    /**
+     * The unique identifier 'R' 'E' 'M' 'B' of a REMB packet.
+     */
+    private static final int REMB_ID = 0x52454D42;
+
+    /**
+     * The size in bytes of a report block of an SR or RR packet.
+     */
+    private static final int REPORT_BLOCK_SIZE = 24;
+
+    /**
+     * The packet type of an RR packet.
+     */
+    public static final int RR = 201;
+
+    /**
+     * The packet type of a transport-layer feedback message.
+     */
+    public static final int RTPFB = 205;
+
+    /**
+     * The packet type of an SDES packet.
+     */
+    public static final int SDES = 202;
+
+    /**
+     * The size in bytes of the sender info of an SR packet.
+     */
+    private static final int SENDER_INFO_SIZE = 20;
+
+    /**
+     * The packet type of an SR packet.
+     */
+    public static final int SR = 200;
+
+    /**
+     * The value of the FMT field of a transport-wide congestion control
+     * feedback message.
+     */
+    public static final int TCC_FMT = 15;
+
+    /**
+     * The packet type of an XR packet.
+     */
+    public static final int XR = 207;
+
+    /**
+     * The <tt>ByteArrayBuffer</tt> of the compound packet if the view wraps
+     * one. Its length is updated by {@link #remove()}.
+     */
+    private ByteArrayBuffer baf;
+
+    /**
+     * The buffer of the compound packet.
+     */
+    private byte[] buf;
+
+    /**
+     * The end (exclusive) in {@link #buf} of the compound packet.
+     */
+    private int end;
+
+    /**
+     * The length in bytes of the packet the view is positioned on or
+     * <tt>0</tt> if the view is not positioned on a packet.
+     */
+    private int len;
+
+    /**
+     * The indicator which determines whether {@link #next()} has found data
+     * which is not a valid RTCP packet.
+     */
+    private boolean malformed;
+
+    /**
+     * The offset in {@link #buf} of the packet after the one the view is
+     * positioned on.
+     */
+    private int nextOff;
+
+    /**
+     * The offset in {@link #buf} of the packet the view is positioned on.
+     */
+    private int off;
+
+    /**
+     * Walks the RTCP packets of the compound packet which this view wraps
+     * from its current position and calls the method of a specific visitor
+     * which corresponds to the type of each packet.
+     *
+     * @param visitor the <tt>RTCPPacketVisitor</tt> to call
+     * @return <tt>true</tt> if the whole compound packet has been visited or
+     * <tt>false</tt> if the walk stopped at data which is not a valid RTCP
+     * packet
+     */
+    public boolean accept(RTCPPacketVisitor visitor)
+    {
+        while (next())
+        {
+            switch (getPacketType())
+            {
+            case SR:
+                visitor.visitSR(this);
+                break;
+            case RR:
+                visitor.visitRR(this);
+                break;
+            case SDES:
+                visitor.visitSDES(this);
+                break;
+            case BYE:
+                visitor.visitBYE(this);
+                break;
+            case RTPFB:
+                if (isNACK())
+                    visitor.visitNACK(this);
+                else if (isTCC())
+                    visitor.visitTCC(this);
+                else
+                    visitor.visitOther(this);
+                break;
+            case PSFB:
+                if (isREMB())
+                    visitor.visitREMB(this);
+                else if (isPLI())
+                    visitor.visitPLI(this);
+                else if (isFIR())
+                    visitor.visitFIR(this);
+                else
+                    visitor.visitOther(this);
+                break;
+            case XR:
+                visitor.visitXR(this);
+                break;
+            default:
+                visitor.visitOther(this);
+                break;
+            }
+        }
+        return !malformed;
+    }
+
+    /**
+     * Gets the buffer of the compound packet.
+     *
+     * @return the buffer of the compound packet
+     */
+    public byte[] getBuffer()
+    {
+        return buf;
+    }
+
+    /**
+     * Gets a specific SSRC of the current BYE packet.
+     *
+     * @param i the index of the SSRC
+     * @return SSRC <tt>i</tt> of the current BYE packet
+     */
+    public long getBYESSRC(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 4 + 4 * i);
+    }
+
+    /**
+     * Gets the number of the SSRCs which leave with the current BYE packet.
+     *
+     * @return the number of SSRCs of the current BYE packet
+     */
+    public int getBYESSRCCount()
+    {
+        return Math.min(getReportCount(), (len - 4) / 4);
+    }
+
+    /**
+     * Gets the cumulative number of packets lost of a specific report block
+     * of the current SR or RR packet.
+     *
+     * @param i the index of the report block
+     * @return the (signed) cumulative number of packets lost of report block
+     * <tt>i</tt>
+     */
+    public int getCumulativePacketsLost(int i)
+    {
+        int o = getReportBlockOffset(i);
+
+        // 24-bit signed integer.
+        return (buf[o + 5] << 16) | ((buf[o + 6] & 0xff) << 8)
+            | (buf[o + 7] & 0xff);
+    }
+
+    /**
+     * Gets the delay since the last SR (DLSR) of a specific report block of
+     * the current SR or RR packet.
+     *
+     * @param i the index of the report block
+     * @return the DLSR of report block <tt>i</tt> in units of 1/65536 seconds
+     */
+    public long getDelaySinceLastSR(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, getReportBlockOffset(i) + 20);
+    }
+
+    /**
+     * Gets the extended highest sequence number received of a specific report
+     * block of the current SR or RR packet.
+     *
+     * @param i the index of the report block
+     * @return the extended highest sequence number of report block <tt>i</tt>
+     */
+    public long getExtendedHighestSequenceNumber(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, getReportBlockOffset(i) + 8);
+    }
+
+    /**
+     * Gets the length in bytes of the Feedback Control Information (FCI) of
+     * the current feedback message.
+     *
+     * @return the length of the FCI of the current feedback message
+     */
+    public int getFCILength()
+    {
+        return len - 12;
+    }
+
+    /**
+     * Gets the offset in {@link #getBuffer()} of the Feedback Control
+     * Information (FCI) of the current feedback message.
+     *
+     * @return the offset of the FCI of the current feedback message
+     */
+    public int getFCIOffset()
+    {
+        return off + 12;
+    }
+
+    /**
+     * Gets the number of FCI entries of the current FIR packet.
+     *
+     * @return the number of FCI entries of the current FIR packet
+     */
+    public int getFIRCount()
+    {
+        return getFCILength() / 8;
+    }
+
+    /**
+     * Gets the command sequence number of a specific FCI entry of the current
+     * FIR packet.
+     *
+     * @param i the index of the FCI entry
+     * @return the command sequence number of FCI entry <tt>i</tt>
+     */
+    public int getFIRSequenceNumber(int i)
+    {
+        return buf[getFCIOffset() + 8 * i + 4] & 0xff;
+    }
+
+    /**
+     * Gets the SSRC of a specific FCI entry of the current FIR packet.
+     *
+     * @param i the index of the FCI entry
+     * @return the SSRC of FCI entry <tt>i</tt>
+     */
+    public long getFIRSSRC(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, getFCIOffset() + 8 * i);
+    }
+
+    /**
+     * Gets the FMT field of the current feedback message.
+     *
+     * @return the FMT field of the current feedback message
+     */
+    public int getFMT()
+    {
+        return getReportCount();
+    }
+
+    /**
+     * Gets the fraction lost of a specific report block of the current SR or
+     * RR packet.
+     *
+     * @param i the index of the report block
+     * @return the fraction lost of report block <tt>i</tt> in units of 1/256
+     */
+    public int getFractionLost(int i)
+    {
+        return buf[getReportBlockOffset(i) + 4] & 0xff;
+    }
+
+    /**
+     * Gets the interarrival jitter of a specific report block of the current
+     * SR or RR packet.
+     *
+     * @param i the index of the report block
+     * @return the interarrival jitter of report block <tt>i</tt>
+     */
+    public long getInterarrivalJitter(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, getReportBlockOffset(i) + 12);
+    }
+
+    /**
+     * Gets the last SR timestamp (LSR) of a specific report block of the
+     * current SR or RR packet.
+     *
+     * @param i the index of the report block
+     * @return the LSR of report block <tt>i</tt>
+     */
+    public long getLastSR(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, getReportBlockOffset(i) + 16);
+    }
+
+    /**
+     * Gets the length in bytes of the current packet.
+     *
+     * @return the length in bytes of the current packet
+     */
+    public int getLength()
+    {
+        return len;
+    }
+
+    /**
+     * Gets the bitmask of following lost packets (BLP) of a specific FCI entry
+     * of the current NACK packet.
+     *
+     * @param i the index of the FCI entry
+     * @return the BLP of FCI entry <tt>i</tt>
+     */
+    public int getNACKBitmask(int i)
+    {
+        return RTPUtils.readUint16AsInt(buf, getFCIOffset() + 4 * i + 2);
+    }
+
+    /**
+     * Gets the number of FCI entries of the current NACK packet.
+     *
+     * @return the number of FCI entries of the current NACK packet
+     */
+    public int getNACKCount()
+    {
+        return getFCILength() / 4;
+    }
+
+    /**
+     * Gets the packet ID (PID) of a specific FCI entry of the current NACK
+     * packet.
+     *
+     * @param i the index of the FCI entry
+     * @return the PID of FCI entry <tt>i</tt>
+     */
+    public int getNACKPacketID(int i)
+    {
+        return RTPUtils.readUint16AsInt(buf, getFCIOffset() + 4 * i);
+    }
+
+    /**
+     * Gets the least significant word of the NTP timestamp of the current SR
+     * packet.
+     *
+     * @return the least significant word of the NTP timestamp
+     */
+    public long getNtpTimestampLSW()
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 12);
+    }
+
+    /**
+     * Gets the most significant word of the NTP timestamp of the current SR
+     * packet.
+     *
+     * @return the most significant word of the NTP timestamp
+     */
+    public long getNtpTimestampMSW()
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 8);
+    }
+
+    /**
+     * Gets the offset in {@link #getBuffer()} of the current packet.
+     *
+     * @return the offset of the current packet
+     */
+    public int getOffset()
+    {
+        return off;
+    }
+
+    /**
+     * Gets the packet type of the current packet.
+     *
+     * @return the packet type of the current packet
+     */
+    public int getPacketType()
+    {
+        return buf[off + 1] & 0xff;
+    }
+
+    /**
+     * Gets the bitrate of the current REMB packet.
+     *
+     * @return the bitrate in bits per second of the current REMB packet
+     */
+    public long getREMBBitrate()
+    {
+        return ((long) getREMBMantissa()) << getREMBExponent();
+    }
+
+    /**
+     * Gets the exponent of the bitrate of the current REMB packet.
+     *
+     * @return the exponent of the bitrate of the current REMB packet
+     */
+    public int getREMBExponent()
+    {
+        return (buf[getFCIOffset() + 5] & 0xfc) >>> 2;
+    }
+
+    /**
+     * Gets the mantissa of the bitrate of the current REMB packet.
+     *
+     * @return the mantissa of the bitrate of the current REMB packet
+     */
+    public int getREMBMantissa()
+    {
+        int o = getFCIOffset() + 5;
+
+        return ((buf[o] & 0x03) << 16) | ((buf[o + 1] & 0xff) << 8)
+            | (buf[o + 2] & 0xff);
+    }
+
+    /**
+     * Gets a specific SSRC which the current REMB packet applies to.
+     *
+     * @param i the index of the SSRC
+     * @return SSRC <tt>i</tt> of the current REMB packet
+     */
+    public long getREMBSSRC(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, getFCIOffset() + 8 + 4 * i);
+    }
+
+    /**
+     * Gets the number of SSRCs which the current REMB packet applies to.
+     *
+     * @return the number of SSRCs of the current REMB packet
+     */
+    public int getREMBSSRCCount()
+    {
+        return
+            Math.min(
+                    buf[getFCIOffset() + 4] & 0xff,
+                    (getFCILength() - 8) / 4);
+    }
+
+    /**
+     * Gets the number of report blocks of the current SR or RR packet.
+     *
+     * @return the number of report blocks of the current SR or RR packet
+     */
+    public int getReportBlockCount()
+    {
+        int blocksOff = (getPacketType() == SR) ? SENDER_INFO_SIZE : 0;
+
+        return
+            Math.min(
+                    getReportCount(),
+                    (len - HEADER_SIZE - blocksOff) / REPORT_BLOCK_SIZE);
+    }
+
+    /**
+     * Gets the offset in {@link #buf} of a specific report block of the
+     * current SR or RR packet.
+     *
+     * @param i the index of the report block
+     * @return the offset of report block <tt>i</tt>
+     */
+    private int getReportBlockOffset(int i)
+    {
+        int o = off + HEADER_SIZE + REPORT_BLOCK_SIZE * i;
+
+        return (getPacketType() == SR) ? (o + SENDER_INFO_SIZE) : o;
+    }
+
+    /**
+     * Gets the SSRC of the source of a specific report block of the current
+     * SR or RR packet.
+     *
+     * @param i the index of the report block
+     * @return the SSRC of the source of report block <tt>i</tt>
+     */
+    public long getReportBlockSSRC(int i)
+    {
+        return RTPUtils.readUint32AsLong(buf, getReportBlockOffset(i));
+    }
+
+    /**
+     * Gets the report count (or the source count or the FMT) field of the
+     * current packet.
+     *
+     * @return the five-bit count field of the current packet
+     */
+    public int getReportCount()
+    {
+        return buf[off] & 0x1f;
+    }
+
+    /**
+     * Gets the RTP timestamp of the current SR packet.
+     *
+     * @return the RTP timestamp of the current SR packet
+     */
+    public long getRtpTimestamp()
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 16);
+    }
+
+    /**
+     * Gets the offset in {@link #getBuffer()} of the value of the first item
+     * of a specific type in a specific chunk of the current SDES packet.
+     *
+     * @param chunk the index of the chunk
+     * @param itemType the type of the item (e.g. <tt>1</tt> for CNAME)
+     * @return the offset of the value of the item or <tt>-1</tt> if the chunk
+     * or the item does not exist. The length of the value is the byte before
+     * it.
+     */
+    public int getSDESItemOffset(int chunk, int itemType)
+    {
+        int chunkCount = getReportCount();
+        int pktEnd = off + len;
+        int o = off + 4;
+
+        for (int c = 0; c < chunkCount && o + 4 <= pktEnd; c++)
+        {
+            // Skip the SSRC.
+            o += 4;
+
+            while (o < pktEnd && buf[o] != 0)
+            {
+                int type = buf[o] & 0xff;
+
+                if (o + 2 > pktEnd)
+                    return -1;
+
+                int itemLen = buf[o + 1] & 0xff;
+
+                if (o + 2 + itemLen > pktEnd)
+                    return -1;
+                if (c == chunk && type == itemType)
+                    return o + 2;
+                o += 2 + itemLen;
+            }
+            if (c == chunk)
+                return -1;
+
+            // Skip the null item and pad to a 32-bit boundary.
+            o = off + ((o - off + 4) & ~3);
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the sender's octet count of the current SR packet.
+     *
+     * @return the sender's octet count of the current SR packet
+     */
+    public long getSenderOctetCount()
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 24);
+    }
+
+    /**
+     * Gets the sender's packet count of the current SR packet.
+     *
+     * @return the sender's packet count of the current SR packet
+     */
+    public long getSenderPacketCount()
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 20);
+    }
+
+    /**
+     * Gets the SSRC of the sender of the current packet (or of the first
+     * chunk of the current SDES packet or the first SSRC of the current BYE
+     * packet).
+     *
+     * @return the SSRC of the sender of the current packet
+     */
+    public long getSenderSSRC()
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 4);
+    }
+
+    /**
+     * Gets the SSRC of the media source of the current feedback message.
+     *
+     * @return the SSRC of the media source of the current feedback message
+     */
+    public long getSourceSSRC()
+    {
+        return RTPUtils.readUint32AsLong(buf, off + 8);
+    }
+
+    /**
+     * Gets the offset in {@link #getBuffer()} of the first report block of the
+     * current XR packet.
+     *
+     * @return the offset of the first report block or <tt>-1</tt> if the
+     * current XR packet has none
+     */
+    public int getXRBlockOffset()
+    {
+        return getNextXRBlockOffset(off + 4);
+    }
+
+    /**
+     * Gets the length in bytes (including its header) of the report block of
+     * the current XR packet at a specific offset.
+     *
+     * @param blockOff the offset of the report block
+     * @return the length of the report block
+     */
+    public int getXRBlockLength(int blockOff)
+    {
+        return (RTPUtils.readUint16AsInt(buf, blockOff + 2) + 1) * 4;
+    }
+
+    /**
+     * Gets the block type of the report block of the current XR packet at a
+     * specific offset.
+     *
+     * @param blockOff the offset of the report block
+     * @return the block type of the report block
+     */
+    public int getXRBlockType(int blockOff)
+    {
+        return buf[blockOff] & 0xff;
+    }
+
+    /**
+     * Gets the offset in {@link #getBuffer()} of the report block of the
+     * current XR packet which follows the report block at a specific offset.
+     *
+     * @param blockOff the offset of a report block of the current XR packet
+     * @return the offset of the next report block or <tt>-1</tt> if there is
+     * none
+     */
+    public int getNextXRBlockOffset(int blockOff)
+    {
+        int o
+            = (blockOff == off + 4)
+                ? (off + HEADER_SIZE)
+                : (blockOff + getXRBlockLength(blockOff));
+
+        return
+            (o + 4 <= off + len && o + getXRBlockLength(o) <= off + len)
+                ? o
+                : -1;
+    }
+
+    /**
+     * Determines whether the current packet is a transport-layer or a
+     * payload-specific feedback message.
+     *
+     * @return <tt>true</tt> if the current packet is a feedback message
+     */
+    public boolean isFB()
+    {
+        int pt = getPacketType();
+
+        return (pt == RTPFB || pt == PSFB) && len >= 12;
+    }
+
+    /**
+     * Determines whether the current packet is an FIR packet.
+     *
+     * @return <tt>true</tt> if the current packet is an FIR packet
+     */
+    public boolean isFIR()
+    {
+        return getPacketType() == PSFB && getFMT() == FIR_FMT && len >= 12;
+    }
+
+    /**
+     * Determines whether {@link #next()} has stopped at data which is not a
+     * valid RTCP packet.
+     *
+     * @return <tt>true</tt> if the compound packet is malformed
+     */
+    public boolean isMalformed()
+    {
+        return malformed;
+    }
+
+    /**
+     * Determines whether the current packet is a generic NACK packet.
+     *
+     * @return <tt>true</tt> if the current packet is a generic NACK packet
+     */
+    public boolean isNACK()
+    {
+        return getPacketType() == RTPFB && getFMT() == NACK_FMT && len >= 12;
+    }
+
+    /**
+     * Determines whether the current packet is a PLI packet.
+     *
+     * @return <tt>true</tt> if the current packet is a PLI packet
+     */
+    public boolean isPLI()
+    {
+        return getPacketType() == PSFB && getFMT() == PLI_FMT && len >= 12;
+    }
+
+    /**
+     * Determines whether the current packet is a REMB packet.
+     *
+     * @return <tt>true</tt> if the current packet is a REMB packet
+     */
+    public boolean isREMB()
+    {
+        return
+            getPacketType() == PSFB
+                && getFMT() == REMB_FMT
+                && len >= 20
+                && RTPUtils.readInt(buf, off + 12) == REMB_ID;
+    }
+
+    /**
+     * Determines whether the current packet is a transport-wide congestion
+     * control feedback message.
+     *
+     * @return <tt>true</tt> if the current packet is a transport-wide
+     * congestion control feedback message
+     */
+    public boolean isTCC()
+    {
+        return getPacketType() == RTPFB && getFMT() == TCC_FMT && len >= 20;
+    }
+
+    /**
+     * Moves this view to the next RTCP packet of the compound packet.
+     *
+     * @return <tt>true</tt> if the view is positioned on the next packet or
+     * <tt>false</tt> if there are no more (valid) packets
+     */
+    public boolean next()
+    {
+        int o = nextOff;
+        int remaining = end - o;
+
+        len = 0;
+        if (remaining < 4)
+        {
+            // Trailing bytes which cannot hold an RTCP header.
+            if (remaining != 0)
+                malformed = true;
+            return false;
+        }
+
+        int pktLen = (RTPUtils.readUint16AsInt(buf, o + 2) + 1) * 4;
+
+        if ((buf[o] & 0xc0) != 0x80
+                || pktLen < HEADER_SIZE
+                || pktLen > remaining)
+        {
+            malformed = true;
+            return false;
+        }
+
+        off = o;
+        len = pktLen;
+        nextOff = o + pktLen;
+        return true;
+    }
+
+    /**
+     * Removes the current packet from the compound packet by moving the
+     * packets which follow it. The view is positioned before the packet
+     * which followed the removed one. Updates the length of the wrapped
+     * <tt>ByteArrayBuffer</tt>, if any.
+     *
+     * @throws IllegalStateException if the view is not positioned on a packet
+     */
+    public void remove()
+    {
+        if (len == 0)
+            throw new IllegalStateException();
+
+        System.arraycopy(buf, nextOff, buf, off, end - nextOff);
+        end -= len;
+        nextOff = off;
+        if (baf != null)
+            baf.setLength(baf.getLength() - len);
+        len = 0;
+    }
+
+    /**
+     * Positions this view before the first RTCP packet of the compound packet
+     * held by a specific <tt>ByteArrayBuffer</tt>.
+     *
+     * @param baf the <tt>ByteArrayBuffer</tt> which holds the compound packet
+     * @return this view
+     */
+    public RTCPPacketView wrap(ByteArrayBuffer baf)
+    {
+        wrap(baf.getBuffer(), baf.getOffset(), baf.getLength());
+        this.baf = baf;
+        return this;
+    }
+
+    /**
+     * Positions this view before the first RTCP packet of a compound packet.
+     *
+     * @param buf the buffer which holds the compound packet
+     * @param off the offset in <tt>buf</tt> of the compound packet
+     * @param len the length in bytes of the compound packet
+     * @return this view
+     */
+    public RTCPPacketView wrap(byte[] buf, int off, int len)
+    {
+        if (buf == null || off < 0 || len < 0 || buf.length < off + len)
+        {
+            throw new IllegalArgumentException(
+                    "buf, off=" + off + ", len=" + len);
+        }
+
+        this.baf = null;
+        this.buf = buf;
+        this.off = off;
+        this.len = 0;
+        end = off + len;
+        malformed = false;
+        nextOff = off;
+        return this;
+    }
+}
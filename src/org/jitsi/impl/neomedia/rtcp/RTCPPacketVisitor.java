@@ -0,0 +1,104 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtcp;
+
+/**
+ * Receives the RTCP packets of a compound RTCP packet walked by
+ * {@link RTCPPacketView#accept(RTCPPacketVisitor)}. Each method is called with
+ * the (reused) view positioned on a packet of the respective type and must not
+ * keep a reference to the view or move it.
+ */
+public interface RTCPPacketVisitor
+{
+    /**
+     * Visits a BYE packet.
+     *
+     * @param view the view positioned on the BYE packet
+     */
+    void visitBYE(RTCPPacketView view);
+
+    /**
+     * Visits a payload-specific Full Intra Request (FIR) feedback message.
+     *
+     * @param view the view positioned on the FIR packet
+     */
+    void visitFIR(RTCPPacketView view);
+
+    /**
+     * Visits a transport-layer generic NACK feedback message.
+     *
+     * @param view the view positioned on the NACK packet
+     */
+    void visitNACK(RTCPPacketView view);
+
+    /**
+     * Visits an RTCP packet of a type which has no method of its own.
+     *
+     * @param view the view positioned on the packet
+     */
+    void visitOther(RTCPPacketView view);
+
+    /**
+     * Visits a payload-specific Picture Loss Indication (PLI) feedback
+     * message.
+     *
+     * @param view the view positioned on the PLI packet
+     */
+    void visitPLI(RTCPPacketView view);
+
+    /**
+     * Visits a payload-specific Receiver Estimated Maximum Bitrate (REMB)
+     * feedback message.
+     *
+     * @param view the view positioned on the REMB packet
+     */
+    void visitREMB(RTCPPacketView view);
+
+    /**
+     * Visits an RR packet.
+     *
+     * @param view the view positioned on the RR packet
+     */
+    void visitRR(RTCPPacketView view);
+
+    /**
+     * Visits an SDES packet.
+     *
+     * @param view the view positioned on the SDES packet
+     */
+    void visitSDES(RTCPPacketView view);
+
+    /**
+     * Visits an SR packet.
+     *
+     * @param view the view positioned on the SR packet
+     */
+    void visitSR(RTCPPacketView view);
+
+    /**
+     * Visits a transport-wide congestion control feedback message.
+     *
+     * @param view the view positioned on the feedback message
+     */
+    void visitTCC(RTCPPacketView view);
+
+    /**
+     * Visits an XR packet.
+     *
+     * @param view the view positioned on the XR packet
+     */
+    void visitXR(RTCPPacketView view);
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtcp;
+
+/**
+ * An <tt>RTCPPacketVisitor</tt> which ignores all packets so that extenders
+ * only override the methods of the packet types they are interested in.
+ */
+public class RTCPPacketVisitorAdapter
+    implements RTCPPacketVisitor
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitBYE(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitFIR(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitNACK(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitOther(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitPLI(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitREMB(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitRR(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitSDES(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitSR(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitTCC(RTCPPacketView view)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitXR(RTCPPacketView view)
+    {
+    }
+}
@@ -360,6 +360,20 @@ public PacketTransformer getRTCPTransformer()
     class RTCPTransformer
         extends SinglePacketTransformerAdapter
     {
+        /**
+         * The <tt>RTCPPacketView</tt> which
+         * {@link #reverseTransform(RawPacket)} reuses to walk compound RTCP
+         * packets.
+         */
+        private final RTCPPacketView reverseTransformView
+            = new RTCPPacketView();
+
+        /**
+         * The <tt>RTCPPacketView</tt> which {@link #transform(RawPacket)}
+         * reuses to walk compound RTCP packets.
+         */
+        private final RTCPPacketView transformView = new RTCPPacketView();
+
         /**
          * Ctor.
          */
@@ -368,6 +382,34 @@ public PacketTransformer getRTCPTransformer()
             super(RTCPPacketPredicate.INSTANCE);
         }
 
+        /**
+         * Removes the RR and REMB packets from a specific compound RTCP
+         * packet.
+         *
+         * @param pkt the compound RTCP packet to remove RRs and REMBs from
+         * @param view the <tt>RTCPPacketView</tt> to walk <tt>pkt</tt> with
+         * @return <tt>pkt</tt>
+         */
+        private RawPacket removeRRsAndREMBs(RawPacket pkt, RTCPPacketView view)
+        {
+            synchronized (view)
+            {
+                view.wrap(pkt);
+                while (view.next())
+                {
+                    int pt = view.getPacketType();
+
+                    if (pt == RTCPPacketView.RR
+                            || (pt == RTCPPacketView.PSFB
+                                && view.getFMT() == RTCPPacketView.REMB_FMT))
+                    {
+                        view.remove();
+                    }
+                }
+            }
+            return pkt;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -375,7 +417,7 @@ public PacketTransformer getRTCPTransformer()
         public RawPacket transform(RawPacket pkt)
         {
             // Kill RRs.
-            return reverseTransform(pkt);
+            return removeRRsAndREMBs(pkt, transformView);
         }
 
         /**
@@ -384,17 +426,7 @@ public RawPacket transform(RawPacket pkt)
         @Override
         public RawPacket reverseTransform(RawPacket pkt)
         {
-            RTCPIterator it = new RTCPIterator(pkt);
-            while (it.hasNext())
-            {
-                ByteArrayBuffer baf = it.next();
-                int pt = RTCPHeaderUtils.getPacketType(baf);
-                if (pt == RTCPRRPacket.RR || RTCPREMBPacket.isREMBPacket(baf))
-                {
-                    it.remove();
-                }
-            }
-            return pkt;
+            return removeRRsAndREMBs(pkt, reverseTransformView);
         }
     }
 }
@@ -0,0 +1,557 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtcp;
+
+import org.jitsi.util.*;
+
+/**
+ * Reads and writes transport-wide congestion control feedback messages
+ * (draft-holmer-rmcat-transport-wide-cc-extensions-01, section 3.1).
+ *
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |V=2|P|  FMT=15 |    PT=205     |           length              |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                     SSRC of packet sender                     |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                      SSRC of media source                     |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |      base sequence number     |      packet status count      |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                 reference time                | fb pkt. count |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |          packet chunk         |         packet chunk          |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * .                                                               .
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |         packet chunk          |  recv delta   |  recv delta   |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * .                                                               .
+ *
+ * Neither the {@link Builder} nor {@link #parse} allocate memory so that they
+ * can be used on the packet path.
+ */
+public class RTCPTCCPacket
+{
+    /**
+     * The unit of the receive deltas in microseconds.
+     */
+    public static final long DELTA_UNIT_US = 250L;
+
+    /**
+     * The length in bytes of the fixed part of a feedback message i.e. the
+     * RTCP feedback header and the first 8 bytes of the FCI.
+     */
+    public static final int FIXED_HEADER_LENGTH = 20;
+
+    /**
+     * The unit of the reference time in microseconds.
+     */
+    public static final long REFERENCE_TIME_UNIT_US = 64000L;
+
+    /**
+     * The packet status symbol of a packet which has not been received.
+     */
+    private static final int SYMBOL_NOT_RECEIVED = 0;
+
+    /**
+     * The packet status symbol of a packet which has been received with a
+     * receive delta which fits into a single unsigned byte.
+     */
+    private static final int SYMBOL_SMALL_DELTA = 1;
+
+    /**
+     * The packet status symbol of a packet which has been received with a
+     * receive delta which needs two bytes (or is negative).
+     */
+    private static final int SYMBOL_LARGE_DELTA = 2;
+
+    /**
+     * The maximum run length of a run length chunk.
+     */
+    private static final int MAX_RUN_LENGTH = 0x1fff;
+
+    /**
+     * Gets the feedback packet count of the FCI at <tt>fciOff</tt>.
+     *
+     * @param buf the buffer which contains the FCI.
+     * @param fciOff the offset in <tt>buf</tt> at which the FCI starts.
+     * @return the feedback packet count of the specified FCI.
+     */
+    public static int getFeedbackPacketCount(byte[] buf, int fciOff)
+    {
+        return buf[fciOff + 7] & 0xff;
+    }
+
+    /**
+     * Gets the base sequence number of the FCI at <tt>fciOff</tt>.
+     *
+     * @param buf the buffer which contains the FCI.
+     * @param fciOff the offset in <tt>buf</tt> at which the FCI starts.
+     * @return the base sequence number of the specified FCI.
+     */
+    public static int getBaseSequenceNumber(byte[] buf, int fciOff)
+    {
+        return RTPUtils.readUint16AsInt(buf, fciOff);
+    }
+
+    /**
+     * Gets the packet status count of the FCI at <tt>fciOff</tt>.
+     *
+     * @param buf the buffer which contains the FCI.
+     * @param fciOff the offset in <tt>buf</tt> at which the FCI starts.
+     * @return the packet status count of the specified FCI.
+     */
+    public static int getPacketStatusCount(byte[] buf, int fciOff)
+    {
+        return RTPUtils.readUint16AsInt(buf, fciOff + 2);
+    }
+
+    /**
+     * Gets the (unsigned 24-bit) reference time of the FCI at
+     * <tt>fciOff</tt> in multiples of {@link #REFERENCE_TIME_UNIT_US}.
+     *
+     * @param buf the buffer which contains the FCI.
+     * @param fciOff the offset in <tt>buf</tt> at which the FCI starts.
+     * @return the reference time of the specified FCI.
+     */
+    public static int getReferenceTime(byte[] buf, int fciOff)
+    {
+        return
+            ((buf[fciOff + 4] & 0xff) << 16)
+                | ((buf[fciOff + 5] & 0xff) << 8)
+                | (buf[fciOff + 6] & 0xff);
+    }
+
+    /**
+     * Gets the maximum length in bytes of a feedback message which reports
+     * the statuses of a specific number of packets.
+     *
+     * @param statusCount the number of packet statuses.
+     * @return the maximum length in bytes of a feedback message which reports
+     * <tt>statusCount</tt> packet statuses.
+     */
+    public static int getMaxLength(int statusCount)
+    {
+        int len
+            = FIXED_HEADER_LENGTH
+                + 2 * ((statusCount + 6) / 7)
+                + 2 * statusCount;
+
+        return (len + 3) & ~3;
+    }
+
+    /**
+     * Parses the FCI of a transport-wide congestion control feedback message
+     * and reports the status of every packet in it to a specific
+     * <tt>PacketHandler</tt> in sequence number order.
+     *
+     * @param buf the buffer which contains the FCI.
+     * @param fciOff the offset in <tt>buf</tt> at which the FCI starts.
+     * @param fciLen the length in bytes of the FCI.
+     * @param handler the <tt>PacketHandler</tt> to report the packet statuses
+     * to.
+     * @return <tt>true</tt> if the FCI was well-formed; otherwise,
+     * <tt>false</tt> in which case <tt>handler</tt> may have been notified
+     * about some of the packets.
+     */
+    public static boolean parse(
+            byte[] buf, int fciOff, int fciLen,
+            PacketHandler handler)
+    {
+        if (fciLen < FIXED_HEADER_LENGTH - 12)
+            return false;
+
+        int baseSeq = getBaseSequenceNumber(buf, fciOff);
+        int statusCount = getPacketStatusCount(buf, fciOff);
+        int end = fciOff + fciLen;
+        int chunkOff = fciOff + 8;
+        int deltaOff = chunkOff;
+
+        // The receive deltas follow the last packet chunk.
+        for (int n = 0; n < statusCount;)
+        {
+            if (deltaOff + 2 > end)
+                return false;
+
+            int symbolCount
+                = getSymbolCount(RTPUtils.readUint16AsInt(buf, deltaOff));
+
+            if (symbolCount == 0)
+                return false;
+            n += symbolCount;
+            deltaOff += 2;
+        }
+
+        long timeUs = 0;
+
+        for (int n = 0; n < statusCount; chunkOff += 2)
+        {
+            int chunk = RTPUtils.readUint16AsInt(buf, chunkOff);
+            int symbolCount = Math.min(getSymbolCount(chunk), statusCount - n);
+
+            for (int i = 0; i < symbolCount; i++, n++)
+            {
+                int seq = (baseSeq + n) & 0xffff;
+
+                switch (getSymbol(chunk, i))
+                {
+                case SYMBOL_SMALL_DELTA:
+                    if (deltaOff + 1 > end)
+                        return false;
+                    timeUs += (buf[deltaOff] & 0xff) * DELTA_UNIT_US;
+                    deltaOff += 1;
+                    handler.packetReported(seq, true, timeUs);
+                    break;
+
+                case SYMBOL_LARGE_DELTA:
+                    if (deltaOff + 2 > end)
+                        return false;
+                    timeUs
+                        += ((buf[deltaOff] << 8) | (buf[deltaOff + 1] & 0xff))
+                            * DELTA_UNIT_US;
+                    deltaOff += 2;
+                    handler.packetReported(seq, true, timeUs);
+                    break;
+
+                default:
+                    handler.packetReported(seq, false, 0);
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the packet status symbol at a specific index of a packet chunk.
+     *
+     * @param chunk the packet chunk.
+     * @param i the index of the symbol in <tt>chunk</tt>.
+     * @return the packet status symbol at index <tt>i</tt> of <tt>chunk</tt>.
+     */
+    private static int getSymbol(int chunk, int i)
+    {
+        if ((chunk & 0x8000) == 0)
+            return (chunk >> 13) & 0x3;
+        else if ((chunk & 0x4000) == 0)
+            return (chunk >> (13 - i)) & 0x1;
+        else
+            return (chunk >> (12 - 2 * i)) & 0x3;
+    }
+
+    /**
+     * Gets the number of packet status symbols in a packet chunk.
+     *
+     * @param chunk the packet chunk.
+     * @return the number of packet status symbols in <tt>chunk</tt>.
+     */
+    private static int getSymbolCount(int chunk)
+    {
+        if ((chunk & 0x8000) == 0)
+            return chunk & MAX_RUN_LENGTH;
+        else if ((chunk & 0x4000) == 0)
+            return 14;
+        else
+            return 7;
+    }
+
+    /**
+     * Receives the packet statuses reported by a feedback message from
+     * {@link #parse}.
+     */
+    public interface PacketHandler
+    {
+        /**
+         * Notifies this <tt>PacketHandler</tt> about the status of a packet.
+         *
+         * @param seq the transport-wide sequence number of the packet.
+         * @param received <tt>true</tt> if the packet has been received.
+         * @param timeUs the time in microseconds at which the packet was
+         * received relative to the reference time of the feedback message or
+         * <tt>0</tt> if <tt>received</tt> is <tt>false</tt>.
+         */
+        void packetReported(int seq, boolean received, long timeUs);
+    }
+
+    /**
+     * Accumulates packet statuses and writes them out as a transport-wide
+     * congestion control feedback message. Instances are meant to be reused
+     * by calling {@link #reset(int)} before each message.
+     */
+    public static class Builder
+    {
+        /**
+         * The receive deltas of the received packets in multiples of
+         * {@link #DELTA_UNIT_US}.
+         */
+        private final short[] deltas;
+
+        /**
+         * The number of elements of {@link #deltas} in use.
+         */
+        private int deltaCount;
+
+        /**
+         * The transport-wide sequence number of the first packet reported by
+         * this <tt>Builder</tt>.
+         */
+        private int baseSeq;
+
+        /**
+         * The time in microseconds of the last received packet as it will be
+         * reconstructed by the receiver of the feedback message.
+         */
+        private long lastTimeUs;
+
+        /**
+         * The reference time of the feedback message in multiples of
+         * {@link #REFERENCE_TIME_UNIT_US}.
+         */
+        private long referenceTime;
+
+        /**
+         * The number of elements of {@link #symbols} in use.
+         */
+        private int statusCount;
+
+        /**
+         * The packet status symbols of the reported packets.
+         */
+        private final byte[] symbols;
+
+        /**
+         * Initializes a new <tt>Builder</tt> which reports at most a specific
+         * number of packets per feedback message.
+         *
+         * @param maxStatusCount the maximum number of packet statuses per
+         * feedback message.
+         */
+        public Builder(int maxStatusCount)
+        {
+            if (maxStatusCount <= 0 || maxStatusCount > 0xffff)
+                throw new IllegalArgumentException("maxStatusCount");
+
+            symbols = new byte[maxStatusCount];
+            deltas = new short[maxStatusCount];
+        }
+
+        /**
+         * Reports the next packet as not received.
+         *
+         * @return <tt>true</tt> if the packet was added; <tt>false</tt> if
+         * the feedback message is full.
+         */
+        public boolean addNotReceived()
+        {
+            if (statusCount >= symbols.length)
+                return false;
+
+            symbols[statusCount++] = SYMBOL_NOT_RECEIVED;
+            return true;
+        }
+
+        /**
+         * Reports the next packet as received at a specific time.
+         *
+         * @param arrivalTimeUs the time in microseconds at which the packet
+         * was received.
+         * @return <tt>true</tt> if the packet was added; <tt>false</tt> if
+         * the feedback message is full or the delta to the previous received
+         * packet cannot be represented in it.
+         */
+        public boolean addReceived(long arrivalTimeUs)
+        {
+            if (statusCount >= symbols.length)
+                return false;
+
+            if (deltaCount == 0)
+            {
+                // Rounded towards negative infinity (Math.floorDiv is not
+                // available in Java 7).
+                referenceTime = arrivalTimeUs / REFERENCE_TIME_UNIT_US;
+                if (arrivalTimeUs < referenceTime * REFERENCE_TIME_UNIT_US)
+                    referenceTime--;
+                lastTimeUs = referenceTime * REFERENCE_TIME_UNIT_US;
+            }
+
+            long diffUs = arrivalTimeUs - lastTimeUs;
+            long delta
+                = diffUs >= 0
+                    ? (diffUs + DELTA_UNIT_US / 2) / DELTA_UNIT_US
+                    : -((-diffUs + DELTA_UNIT_US / 2) / DELTA_UNIT_US);
+
+            if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE)
+                return false;
+
+            symbols[statusCount++]
+                = (byte)
+                    ((delta >= 0 && delta <= 0xff)
+                        ? SYMBOL_SMALL_DELTA
+                        : SYMBOL_LARGE_DELTA);
+            deltas[deltaCount++] = (short) delta;
+            lastTimeUs += delta * DELTA_UNIT_US;
+            return true;
+        }
+
+        /**
+         * Gets the transport-wide sequence number of the first packet
+         * reported by this <tt>Builder</tt>.
+         *
+         * @return the base sequence number of the feedback message.
+         */
+        public int getBaseSequenceNumber()
+        {
+            return baseSeq;
+        }
+
+        /**
+         * Gets the number of received packets reported by this
+         * <tt>Builder</tt>.
+         *
+         * @return the number of received packets reported by this
+         * <tt>Builder</tt>.
+         */
+        public int getReceivedCount()
+        {
+            return deltaCount;
+        }
+
+        /**
+         * Gets the number of packets reported by this <tt>Builder</tt>.
+         *
+         * @return the number of packets reported by this <tt>Builder</tt>.
+         */
+        public int getStatusCount()
+        {
+            return statusCount;
+        }
+
+        /**
+         * Clears the packet statuses accumulated by this <tt>Builder</tt> and
+         * starts a new feedback message.
+         *
+         * @param baseSeq the transport-wide sequence number of the first
+         * packet to be reported.
+         */
+        public void reset(int baseSeq)
+        {
+            this.baseSeq = baseSeq & 0xffff;
+            statusCount = 0;
+            deltaCount = 0;
+        }
+
+        /**
+         * Writes the accumulated packet statuses as a feedback message into a
+         * specific buffer. The buffer must have at least
+         * {@link #getMaxLength(int)} bytes available at <tt>off</tt>.
+         *
+         * @param buf the buffer to write into.
+         * @param off the offset in <tt>buf</tt> at which to write.
+         * @param senderSSRC the SSRC of the sender of the feedback message.
+         * @param sourceSSRC the SSRC of the media source.
+         * @param feedbackPacketCount the (8-bit) sequence number of the
+         * feedback message.
+         * @return the length in bytes of the written feedback message.
+         */
+        public int write(
+                byte[] buf, int off,
+                long senderSSRC, long sourceSSRC,
+                int feedbackPacketCount)
+        {
+            int chunkOff = off + FIXED_HEADER_LENGTH;
+            int i = 0;
+
+            while (i < statusCount)
+            {
+                int symbol = symbols[i];
+                int run = 1;
+
+                while (i + run < statusCount
+                        && symbols[i + run] == symbol
+                        && run < MAX_RUN_LENGTH)
+                {
+                    run++;
+                }
+
+                int n = Math.min(14, statusCount - i);
+                boolean large = false;
+
+                for (int j = i; j < i + n && !large; j++)
+                    large = symbols[j] == SYMBOL_LARGE_DELTA;
+
+                int chunk;
+
+                if (run >= 14 || (large && run >= 7))
+                {
+                    chunk = (symbol << 13) | run;
+                    i += run;
+                }
+                else if (!large)
+                {
+                    chunk = 0x8000;
+                    for (int j = 0; j < n; j++)
+                        chunk |= symbols[i + j] << (13 - j);
+                    i += n;
+                }
+                else
+                {
+                    n = Math.min(7, n);
+                    chunk = 0xc000;
+                    for (int j = 0; j < n; j++)
+                        chunk |= symbols[i + j] << (12 - 2 * j);
+                    i += n;
+                }
+                RTPUtils.writeShort(buf, chunkOff, (short) chunk);
+                chunkOff += 2;
+            }
+
+            int deltaOff = chunkOff;
+
+            for (int j = 0; j < deltaCount; j++)
+            {
+                short delta = deltas[j];
+
+                if (delta >= 0 && delta <= 0xff)
+                {
+                    buf[deltaOff++] = (byte) delta;
+                }
+                else
+                {
+                    RTPUtils.writeShort(buf, deltaOff, delta);
+                    deltaOff += 2;
+                }
+            }
+            while (((deltaOff - off) & 3) != 0)
+                buf[deltaOff++] = 0;
+
+            int len = deltaOff - off;
+
+            buf[off] = (byte) (0x80 | RTCPPacketView.TCC_FMT);
+            buf[off + 1] = (byte) RTCPPacketView.RTPFB;
+            RTPUtils.writeShort(buf, off + 2, (short) (len / 4 - 1));
+            RTPUtils.writeInt(buf, off + 4, (int) senderSSRC);
+            RTPUtils.writeInt(buf, off + 8, (int) sourceSSRC);
+            RTPUtils.writeShort(buf, off + 12, (short) baseSeq);
+            RTPUtils.writeShort(buf, off + 14, (short) statusCount);
+            RTPUtils.writeInt(
+                    buf, off + 16,
+                    ((int) referenceTime << 8) | (feedbackPacketCount & 0xff));
+            return len;
+        }
+    }
+}
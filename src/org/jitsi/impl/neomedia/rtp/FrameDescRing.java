@@ -0,0 +1,271 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp;
+
+import java.util.*;
+
+import org.jitsi.util.*;
+
+/**
+ * Remembers the {@link FrameDesc}s most recently received from an
+ * {@link RTPEncodingDesc}. The frames are kept in a fixed-size ring in the
+ * order of their reception and are indexed by their RTP timestamps in a
+ * fixed-size open-addressing table so that a frame is found in constant time
+ * without boxing its timestamp or allocating. Adding a frame evicts the oldest
+ * one. The index entries of evicted frames are not removed but recognized as
+ * stale and reused.
+ *
+ * Instances are thread-safe.
+ */
+class FrameDescRing
+{
+    /**
+     * The number of frames which are remembered (a little over 8 seconds of
+     * 30 fps video). A power of two.
+     */
+    static final int CAPACITY = 256;
+
+    /**
+     * The base 2 logarithm of the number of slots of {@link #index}. There
+     * are four slots per frame so that the probe sequences remain short.
+     */
+    private static final int INDEX_BITS = 10;
+
+    /**
+     * The maximum number of slots of {@link #index} which are probed for a
+     * timestamp.
+     */
+    private static final int MAX_PROBES = 8;
+
+    /**
+     * The number of frames received before and after a frame among which its
+     * neighbours are looked for by {@link #findNext(long)} and
+     * {@link #findPrevious(long)}.
+     */
+    private static final int NEIGHBOR_WINDOW = 4;
+
+    /**
+     * The number of frames which have been added so far (modulo
+     * 2<sup>32</sup>). The frame added <tt>n</tt>-th has the reception number
+     * <tt>n</tt>.
+     */
+    private int count;
+
+    /**
+     * The number of frames in {@link #frames} i.e. the minimum of
+     * {@link #count} and {@link #CAPACITY}.
+     */
+    private int size;
+
+    /**
+     * The frames which have been added last, the one with reception number
+     * <tt>n</tt> at <tt>n mod CAPACITY</tt>.
+     */
+    private final FrameDesc[] frames = new FrameDesc[CAPACITY];
+
+    /**
+     * The reception numbers of {@link #frames} hashed by the RTP timestamps of
+     * the frames and probed linearly. The free slots hold <tt>-1</tt> which is
+     * not the reception number of a frame in {@link #frames} until
+     * {@link #count} wraps around.
+     */
+    private final int[] index = new int[1 << INDEX_BITS];
+
+    /**
+     * Initializes a new empty <tt>FrameDescRing</tt> instance.
+     */
+    FrameDescRing()
+    {
+        Arrays.fill(index, -1);
+    }
+
+    /**
+     * Gets the slot of {@link #index} at which the probing for a specific RTP
+     * timestamp starts.
+     *
+     * @param ts the RTP timestamp to hash
+     * @return the first slot to probe for <tt>ts</tt>
+     */
+    private static int hash(long ts)
+    {
+        // Fibonacci hashing spreads timestamps which advance by multiples of
+        // the frame duration.
+        return ((int) ts * 0x9E3779B9) >>> (32 - INDEX_BITS);
+    }
+
+    /**
+     * Adds a frame which has just been received and evicts the frame which
+     * was added {@link #CAPACITY} frames ago. The timestamp of the frame must
+     * not be in this ring already.
+     *
+     * @param frame the frame to add
+     */
+    public synchronized void add(FrameDesc frame)
+    {
+        int n = count;
+
+        frames[n & (CAPACITY - 1)] = frame;
+        count = n + 1;
+        if (size < CAPACITY)
+            size++;
+
+        // Take the first slot which is free or stale. If there is no such
+        // slot, evict the oldest frame from the index.
+        int mask = index.length - 1;
+        int slot = hash(frame.getTimestamp());
+        int victim = slot;
+        int victimAge = -1;
+
+        for (int i = 0; i < MAX_PROBES; i++, slot = (slot + 1) & mask)
+        {
+            int m = index[slot];
+
+            if (!isLive(m))
+            {
+                victim = slot;
+                break;
+            }
+
+            int age = count - m;
+
+            if (age > victimAge)
+            {
+                victim = slot;
+                victimAge = age;
+            }
+        }
+        index[victim] = n;
+    }
+
+    /**
+     * Finds the frame with the lowest timestamp higher than a specific one
+     * among the frames received around the frame with that timestamp.
+     *
+     * @param ts the RTP timestamp of the frame to find the next frame of
+     * @return the next frame of the frame with timestamp <tt>ts</tt> or
+     * <tt>null</tt> if there is no such frame
+     */
+    public synchronized FrameDesc findNext(long ts)
+    {
+        return findNeighbor(ts, true);
+    }
+
+    /**
+     * Finds the frame with the highest timestamp lower than a specific one
+     * among the frames received around the frame with that timestamp.
+     *
+     * @param ts the RTP timestamp of the frame to find the previous frame of
+     * @return the previous frame of the frame with timestamp <tt>ts</tt> or
+     * <tt>null</tt> if there is no such frame
+     */
+    public synchronized FrameDesc findPrevious(long ts)
+    {
+        return findNeighbor(ts, false);
+    }
+
+    /**
+     * Implements {@link #findNext(long)} and {@link #findPrevious(long)}.
+     * Frames are rarely reordered so the neighbours of a frame are looked for
+     * only among the {@link #NEIGHBOR_WINDOW} frames received before and
+     * after it.
+     *
+     * @param ts the RTP timestamp of the frame to find a neighbour of
+     * @param next <tt>true</tt> to find the next or <tt>false</tt> to find the
+     * previous frame
+     * @return the neighbour or <tt>null</tt> if there is no such frame
+     */
+    private FrameDesc findNeighbor(long ts, boolean next)
+    {
+        int slot = indexOf(ts);
+
+        if (slot == -1)
+            return null;
+
+        int n = index[slot];
+        FrameDesc neighbor = null;
+        long neighborDiff = 0;
+
+        for (int m = n - NEIGHBOR_WINDOW; m != n + NEIGHBOR_WINDOW + 1; m++)
+        {
+            if (m == n || !isLive(m))
+                continue;
+
+            FrameDesc frame = frames[m & (CAPACITY - 1)];
+            long diff = TimeUtils.rtpDiff(frame.getTimestamp(), ts);
+
+            if (next
+                    ? (diff > 0 && (neighbor == null || diff < neighborDiff))
+                    : (diff < 0 && (neighbor == null || diff > neighborDiff)))
+            {
+                neighbor = frame;
+                neighborDiff = diff;
+            }
+        }
+        return neighbor;
+    }
+
+    /**
+     * Gets the frame with a specific RTP timestamp.
+     *
+     * @param ts the RTP timestamp of the frame to get
+     * @return the frame with timestamp <tt>ts</tt> or <tt>null</tt> if there
+     * is no such frame in this ring
+     */
+    public synchronized FrameDesc get(long ts)
+    {
+        int slot = indexOf(ts);
+
+        return (slot == -1) ? null : frames[index[slot] & (CAPACITY - 1)];
+    }
+
+    /**
+     * Finds the slot of {@link #index} of the frame with a specific RTP
+     * timestamp.
+     *
+     * @param ts the RTP timestamp of the frame to find
+     * @return the slot of {@link #index} of the frame with timestamp
+     * <tt>ts</tt> or <tt>-1</tt> if there is no such frame in this ring
+     */
+    private int indexOf(long ts)
+    {
+        int mask = index.length - 1;
+        int slot = hash(ts);
+
+        for (int i = 0; i < MAX_PROBES; i++, slot = (slot + 1) & mask)
+        {
+            int m = index[slot];
+
+            if (isLive(m) && frames[m & (CAPACITY - 1)].getTimestamp() == ts)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Determines whether the frame with a specific reception number is still
+     * in {@link #frames}.
+     *
+     * @param n the reception number of the frame
+     * @return <tt>true</tt> if the frame with reception number <tt>n</tt> has
+     * been added and has not been evicted yet; otherwise, <tt>false</tt>
+     */
+    private boolean isLive(int n)
+    {
+        int age = count - n;
+
+        return 0 < age && age <= size;
+    }
+}
@@ -15,11 +15,14 @@
  */
 package org.jitsi.impl.neomedia.rtp;
 
+import java.util.*;
+
 import net.sf.fmj.media.rtp.*;
 import org.jitsi.impl.neomedia.*;
 import org.jitsi.impl.neomedia.transform.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.*;
+import org.jitsi.util.concurrent.*;
 
 /**
  * This class is inserted in the receive transform chain and it updates the
@@ -41,6 +44,15 @@
      */
     private MediaStreamTrackDesc[] tracks;
 
+    /**
+     * The {@link RTPEncodingDesc}s of {@link #tracks} by their primary and RTX
+     * SSRCs, in the order of {@link #tracks} and of their encodings. More than
+     * one encoding shares an SSRC when the encodings are temporal layers.
+     * Replaced as a whole whenever {@link #tracks} changes.
+     */
+    private volatile CopyOnWriteIntMap<RTPEncodingDesc[]> encodingsBySSRC
+        = new CopyOnWriteIntMap<>();
+
     /**
      * Ctor.
      *
@@ -129,16 +141,21 @@ public RTPEncodingDesc findRTPEncodingDesc(ByteArrayBuffer buf)
      */
     public RTPEncodingDesc findRTPEncodingDesc(byte[] buf, int off, int len)
     {
-        MediaStreamTrackDesc[] localTracks = tracks;
-        if (ArrayUtils.isNullOrEmpty(localTracks))
+        if (buf == null || buf.length < off + len)
         {
             return null;
         }
 
-        for (MediaStreamTrackDesc track : localTracks)
+        RTPEncodingDesc[] encodings
+            = encodingsBySSRC.get(RawPacket.getSSRC(buf, off, len));
+        if (encodings == null)
         {
-            RTPEncodingDesc encoding = track.findRTPEncodingDesc(buf, off, len);
-            if (encoding != null)
+            return null;
+        }
+
+        for (RTPEncodingDesc encoding : encodings)
+        {
+            if (encoding.matches(buf, off, len))
             {
                 return encoding;
             }
@@ -158,22 +175,9 @@ public RTPEncodingDesc findRTPEncodingDesc(byte[] buf, int off, int len)
      */
     public RTPEncodingDesc findRTPEncodingDesc(long ssrc)
     {
-        MediaStreamTrackDesc[] localTracks = tracks;
-        if (ArrayUtils.isNullOrEmpty(localTracks))
-        {
-            return null;
-        }
+        RTPEncodingDesc[] encodings = encodingsBySSRC.get((int) ssrc);
 
-        for (MediaStreamTrackDesc track : localTracks)
-        {
-            RTPEncodingDesc encoding = track.findRTPEncodingDesc(ssrc);
-            if (encoding != null)
-            {
-                return encoding;
-            }
-        }
-
-        return null;
+        return encodings == null ? null : encodings[0];
     }
 
     /**
@@ -231,7 +235,7 @@ public boolean setMediaStreamTracks(MediaStreamTrackDesc[] newTracks)
 
         if (oldTracksLen == 0 || newTracksLen == 0)
         {
-            tracks = newTracks;
+            setTracks(newTracks);
             return oldTracksLen != newTracksLen;
         }
         else
@@ -261,13 +265,80 @@ public boolean setMediaStreamTracks(MediaStreamTrackDesc[] newTracks)
                 }
             }
 
-            tracks = mergedTracks;
+            setTracks(mergedTracks);
 
             return
                 oldTracksLen != newTracksLen || cntMatched != oldTracks.length;
         }
     }
 
+    /**
+     * Sets the {@link MediaStreamTrackDesc}s that this instance receives and
+     * indexes their encodings by SSRC.
+     *
+     * @param newTracks the {@link MediaStreamTrackDesc}s that this instance
+     * will receive.
+     */
+    private void setTracks(MediaStreamTrackDesc[] newTracks)
+    {
+        CopyOnWriteIntMap<RTPEncodingDesc[]> newEncodingsBySSRC
+            = new CopyOnWriteIntMap<>();
+
+        if (newTracks != null)
+        {
+            for (MediaStreamTrackDesc track : newTracks)
+            {
+                RTPEncodingDesc[] encodings = track.getRTPEncodings();
+                if (ArrayUtils.isNullOrEmpty(encodings))
+                {
+                    continue;
+                }
+
+                for (RTPEncodingDesc encoding : encodings)
+                {
+                    index(
+                        newEncodingsBySSRC, encoding.getPrimarySSRC(), encoding);
+                    index(
+                        newEncodingsBySSRC, encoding.getRTXSSRC(), encoding);
+                }
+            }
+        }
+
+        tracks = newTracks;
+        encodingsBySSRC = newEncodingsBySSRC;
+    }
+
+    /**
+     * Appends an {@link RTPEncodingDesc} to the encodings of a specific SSRC.
+     *
+     * @param encodingsBySSRC the map of encodings by SSRC to update.
+     * @param ssrc the SSRC of the encoding or -1 if the encoding does not
+     * have such an SSRC.
+     * @param encoding the {@link RTPEncodingDesc} to append.
+     */
+    private static void index(
+        CopyOnWriteIntMap<RTPEncodingDesc[]> encodingsBySSRC,
+        long ssrc,
+        RTPEncodingDesc encoding)
+    {
+        if (ssrc == -1)
+        {
+            return;
+        }
+
+        RTPEncodingDesc[] encodings = encodingsBySSRC.get((int) ssrc);
+        if (encodings == null)
+        {
+            encodings = new RTPEncodingDesc[] { encoding };
+        }
+        else
+        {
+            encodings = Arrays.copyOf(encodings, encodings.length + 1);
+            encodings[encodings.length - 1] = encoding;
+        }
+        encodingsBySSRC.put((int) ssrc, encodings);
+    }
+
     /**
      * Gets the {@code RtpChannel} that owns this instance.
      *
@@ -20,8 +20,6 @@
 import org.jitsi.util.*;
 import org.jitsi.util.Logger;
 
-import java.util.*;
-
 /**
  * Keeps track of how many channels receive it, its subjective quality index,
  * its last stable bitrate and other useful things for adaptivity/routing.
@@ -78,33 +76,10 @@
         = new RateStatistics(AVERAGE_BITRATE_WINDOW_MS);
 
     /**
-     * The {@link TreeMap} that holds the seen {@link FrameDesc}, keyed
-     * by their RTP timestamps.
+     * The {@link FrameDescRing} that holds the seen {@link FrameDesc}s and
+     * finds them by their RTP timestamps.
      */
-    private final TreeMap<Long, FrameDesc> frames
-        = new TreeMap<Long, FrameDesc>()
-    {
-        /**
-         * A helper {@link LinkedList} that is used to cleanup the map.
-         */
-        private LinkedList<Long> tsl = new LinkedList<>();
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public FrameDesc put(Long key, FrameDesc value)
-        {
-            FrameDesc previous = super.put(key, value);
-            if (tsl.add(key) && tsl.size() > 300)
-            {
-                Long first = tsl.removeFirst();
-                this.remove(first);
-            }
-
-            return previous;
-        }
-    };
+    private final FrameDescRing frames = new FrameDescRing();
 
     /**
      * The {@link RTPEncodingDesc} on which this layer depends.
@@ -427,10 +402,7 @@ void update(RawPacket pkt, long nowMs)
 
         if (frame == null)
         {
-            synchronized (frames)
-            {
-                frames.put(ts, frame = new FrameDesc(this, ts, nowMs));
-            }
+            frames.add(frame = new FrameDesc(this, ts, nowMs));
 
             // We measure the stable bitrate on every new frame.
             lastStableBitrateBps = getBitrateBps(nowMs);
@@ -449,21 +421,19 @@ void update(RawPacket pkt, long nowMs)
             // Frame boundaries heuristics.
 
             // Find the closest next frame.
-            Map.Entry<Long, FrameDesc> ceilingEntry
-                = frames.ceilingEntry((ts + 1) & 0xFFFFFFFFL);
+            FrameDesc next = frames.findNext(ts);
 
-            if (ceilingEntry != null)
+            if (next != null)
             {
-                applyFrameBoundsHeuristics(frame, ceilingEntry.getValue());
+                applyFrameBoundsHeuristics(frame, next);
             }
 
             // Find the closest previous frame.
-            Map.Entry<Long, FrameDesc> floorEntry
-                = frames.floorEntry((ts - 1) & 0xFFFFFFFFL);
+            FrameDesc previous = frames.findPrevious(ts);
 
-            if (floorEntry != null)
+            if (previous != null)
             {
-                applyFrameBoundsHeuristics(floorEntry.getValue(), frame);
+                applyFrameBoundsHeuristics(previous, frame);
             }
         }
 
@@ -536,11 +506,19 @@ private void getBitrateBps(long nowMs, long[] rates)
      */
     public FrameDesc findFrameDesc(byte[] buf, int off, int len)
     {
-        long ts = RawPacket.getTimestamp(buf, off, len);
-        synchronized (frames)
-        {
-            return frames.get(ts);
-        }
+        return frames.get(RawPacket.getTimestamp(buf, off, len));
+    }
+
+    /**
+     * Gets the {@link FrameDescRing} that holds the seen {@link FrameDesc}s of
+     * this encoding.
+     *
+     * @return the {@link FrameDescRing} that holds the seen {@link FrameDesc}s
+     * of this encoding.
+     */
+    FrameDescRing getFrames()
+    {
+        return frames;
     }
 
     /**
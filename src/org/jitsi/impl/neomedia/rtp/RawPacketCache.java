@@ -23,7 +23,6 @@
 import org.jitsi.util.concurrent.*;
 
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 
 /**
@@ -85,11 +84,6 @@
      */
     private static int MAX_SIZE_PACKETS = cfg.getInt(NACK_CACHE_SIZE_PACKETS, 200);
 
-    /**
-     * The size of {@link #pool} and {@link #containersPool}.
-     */
-    private static int POOL_SIZE = 100;
-
     /**
      * The amount of time, after which the cache for an SSRC will be cleared,
      * unless new packets have been inserted.
@@ -97,16 +91,18 @@
     private static int SSRC_TIMEOUT_MILLIS = SIZE_MILLIS + 50;
 
     /**
-     * The pool of <tt>RawPacket</tt>s which we use to avoid allocation and GC.
+     * The number of slots of the ring of each {@link Cache}: the smallest power
+     * of two which is not less than {@link #MAX_SIZE_PACKETS}.
      */
-    private final Queue<RawPacket> pool
-        = new LinkedBlockingQueue<>(POOL_SIZE);
+    private static final int RING_SIZE
+        = Integer.highestOneBit(Math.max(1, MAX_SIZE_PACKETS - 1)) << 1;
 
     /**
-     * A cache of unused {@link Container} instances.
+     * The minimum length of the buffers preallocated for the slots of the
+     * rings. Large enough for typical RTP packets, so that buffers are rarely
+     * grown.
      */
-    private final Queue<Container> containersPool
-        = new LinkedBlockingQueue<>(POOL_SIZE);
+    private static final int MIN_SLAB_LENGTH = 1500;
 
     /**
      * An object used to synchronize access to {@link #sizeInBytes},
@@ -200,16 +196,22 @@ public void close()
 
         synchronized (caches)
         {
+            for (Cache cache : caches.values())
+            {
+                cache.empty();
+            }
             caches.clear();
         }
-        pool.clear();
-        containersPool.clear();
     }
 
     /**
      * Gets the packet, encapsulated in a {@link Container} with the given SSRC
      * and RTP sequence number from the cache. If no such packet is found,
-     * returns <tt>null</tt>.
+     * returns <tt>null</tt>. The returned {@link Container} holds a copy of the
+     * cached packet and may be freely modified. Use
+     * {@link #acquireContainer(long, int)} to access the cached packet without
+     * copying it.
+     *
      * @param ssrc The SSRC of the packet.
      * @param seq the RTP sequence number of the packet.
      * @return the packet, encapsulated in a {@link Container} with the given
@@ -217,10 +219,49 @@ public void close()
      * returns <tt>null</tt>.
      */
     public Container getContainer(long ssrc, int seq)
+    {
+        Container container = acquireContainer(ssrc, seq);
+
+        if (container == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            RawPacket pkt = container.pkt;
+            int len = pkt.getLength();
+            byte[] buf = new byte[len];
+
+            System.arraycopy(pkt.getBuffer(), pkt.getOffset(), buf, 0, len);
+            return new Container(
+                new RawPacket(buf, 0, len), container.timeAdded);
+        }
+        finally
+        {
+            releaseContainer(container);
+        }
+    }
+
+    /**
+     * Leases the {@link Container} of the cached packet with the given SSRC and
+     * RTP sequence number without copying it. The packet of the returned
+     * {@link Container} is guaranteed not to be modified or reused by the
+     * cache until the lease is released with
+     * {@link #releaseContainer(Container)}, which must be done exactly once for
+     * every non-<tt>null</tt> return value. The caller must not modify the
+     * packet.
+     *
+     * @param ssrc The SSRC of the packet.
+     * @param seq the RTP sequence number of the packet.
+     * @return the leased {@link Container} of the packet with the given SSRC
+     * and RTP sequence number, or <tt>null</tt> if no such packet is found.
+     */
+    public Container acquireContainer(long ssrc, int seq)
     {
         Cache cache = getCache(ssrc & 0xffff_ffffL, false);
 
-        Container container = cache != null ? cache.get(seq) : null;
+        Container container = cache != null ? cache.acquire(seq) : null;
 
         if (container != null)
         {
@@ -239,9 +280,40 @@ public Container getContainer(long ssrc, int seq)
         return container;
     }
 
+    /**
+     * Releases a lease obtained from {@link #acquireContainer(long, int)} or
+     * {@link #getMany(long, int)}.
+     *
+     * @param container the {@link Container} to release.
+     */
+    public void releaseContainer(Container container)
+    {
+        if (container != null && container.cache != null)
+        {
+            container.cache.release(container);
+        }
+    }
+
+    /**
+     * Releases the leases obtained from {@link #getMany(long, int)}.
+     *
+     * @param containers the {@link Container}s to release.
+     */
+    public void releaseContainers(Collection<Container> containers)
+    {
+        if (containers != null)
+        {
+            for (Container container : containers)
+            {
+                releaseContainer(container);
+            }
+        }
+    }
+
     /**
      * Gets the packet with the given SSRC and RTP sequence number from the
-     * cache. If no such packet is found, returns <tt>null</tt>.
+     * cache. If no such packet is found, returns <tt>null</tt>. The returned
+     * packet is a copy and may be freely modified.
      * @param ssrc The SSRC of the packet.
      * @param seq the RTP sequence number of the packet.
      * @return the packet with the given SSRC and RTP sequence number from the
@@ -304,42 +376,6 @@ public void cachePacket(RawPacket pkt)
         }
     }
 
-
-
-    /**
-     * Gets an unused <tt>RawPacket</tt> with at least <tt>len</tt> bytes of
-     * buffer space.
-     * @param len the minimum available length
-     * @return An unused <tt>RawPacket</tt> with at least <tt>len</tt> bytes of
-     * buffer space.
-     */
-    private RawPacket getFreePacket(int len)
-    {
-        RawPacket pkt = pool.poll();
-        if (pkt == null)
-            pkt = new RawPacket(new byte[len], 0, 0);
-
-        if (pkt.getBuffer() == null || pkt.getBuffer().length < len)
-            pkt.setBuffer(new byte[len]);
-        pkt.setOffset(0);
-        pkt.setLength(0);
-
-        return pkt;
-    }
-
-    /**
-     * @return  an unused {@link Container} instance.
-     */
-    private Container getFreeContainer()
-    {
-        Container container = containersPool.poll();
-        if (container == null)
-        {
-            container = new Container();
-        }
-        return container;
-    }
-
     /**
      * Checks for {@link Cache} instances which have not received new packets
      * for a period longer than {@link #SSRC_TIMEOUT_MILLIS} and removes them.
@@ -373,35 +409,19 @@ public void clean(long now)
         }
     }
 
-    /**
-     * Returns a {@link Container} and its {@link RawPacket} to the list of
-     * free containers (and packets).
-     * @param container the container to return.
-     */
-    private void returnContainer(Container container)
-    {
-        if (container != null)
-        {
-            if (container.pkt != null)
-            {
-                pool.offer(container.pkt);
-            }
-
-            container.pkt = null;
-            containersPool.offer(container);
-        }
-    }
-
     /**
      * Gets the most recent packets from the cache that pertains to the SSRC
      * that is specified as an argument, not exceeding the number of bytes
-     * specified as an argument.
+     * specified as an argument. The {@link Container}s are leased in the same
+     * way as by {@link #acquireContainer(long, int)} and each of them must be
+     * released with {@link #releaseContainer(Container)} (or all of them with
+     * {@link #releaseContainers(Collection)}).
      *
      * @param ssrc the SSRC whose most recent packets to retrieve.
      * @param bytes the maximum total size of the packets to retrieve.
-     * @return the set of the most recent packets to retrieve, not exceeding the
-     * number of bytes specified as an argument, or null if there are no packets
-     * in the cache
+     * @return the set of the leased {@link Container}s of the most recent
+     * packets to retrieve, not exceeding the number of bytes specified as an
+     * argument, or null if there are no packets in the cache
      */
     public Set<Container> getMany(long ssrc, int bytes)
     {
@@ -434,16 +454,29 @@ public void updateTimestamp(long ssrc, int seq, long ts)
     }
 
     /**
-     * Implements a cache for the packets of a specific SSRC.
+     * Implements a cache for the packets of a specific SSRC as a ring of
+     * preallocated {@link Container}s indexed by packet index, so that
+     * insertion, lookup and eviction are O(1) and do not allocate.
      */
     private class Cache
     {
         /**
-         * The underlying container. It maps a packet index (based on its RTP
-         * sequence number, in the same way as used in SRTP (RFC3711)) to the
-         * <tt>RawPacket</tt> with the packet contents.
+         * The slots of this cache. The packet with index (based on its RTP
+         * sequence number, in the same way as used in SRTP (RFC3711))
+         * <tt>i</tt> is stored in the slot <tt>i & (RING_SIZE - 1)</tt>.
          */
-        private TreeMap<Integer, Container> cache = new TreeMap<>();
+        private final Container[] ring = new Container[RING_SIZE];
+
+        /**
+         * The index of the oldest packet which may still be in this cache.
+         * Slots holding packets with lower indices have been evicted.
+         */
+        private long head = -1;
+
+        /**
+         * The highest index of a packet inserted in this cache.
+         */
+        private long tail = -1;
 
         /**
          * Last system time of insertion of a packet in this cache.
@@ -466,32 +499,94 @@ public void updateTimestamp(long ssrc, int seq, long ts)
          */
         private synchronized void insert(RawPacket pkt)
         {
+            long now = System.currentTimeMillis();
+            long index = calculateIndex(pkt.getSequenceNumber());
+
+            if (index == -1
+                    || (tail != -1 && index <= tail - MAX_SIZE_PACKETS))
+            {
+                // Too old to fit in the window of this cache.
+                return;
+            }
+
+            if (index > tail)
+            {
+                tail = index;
+                if (head == -1)
+                {
+                    head = index;
+                }
+                else if (tail - head >= MAX_SIZE_PACKETS)
+                {
+                    evictBefore(tail - MAX_SIZE_PACKETS + 1);
+                }
+            }
+            else if (index < head)
+            {
+                head = index;
+            }
+
+            int slot = (int) (index & (RING_SIZE - 1));
+            Container container = ring[slot];
+
+            if (container == null || container.leases > 0)
+            {
+                // The packet of a leased container must not be modified, so
+                // the leaseholder keeps it and the slot gets a new one.
+                if (container != null)
+                {
+                    if (container.index != -1)
+                    {
+                        evict(container);
+                    }
+                    // The buffer is released when the last lease is.
+                    container.detached = true;
+                }
+                container = new Container();
+                container.cache = this;
+                ring[slot] = container;
+            }
+            else if (container.index != -1)
+            {
+                // If the packet is already in the cache, we want to update the
+                // timeAdded field for retransmission purposes. This is
+                // implemented by simply replacing the old packet.
+                evict(container);
+            }
+
             int len = pkt.getLength();
-            RawPacket cachePacket = getFreePacket(len);
-            System.arraycopy(pkt.getBuffer(), pkt.getOffset(),
+            RawPacket cachePacket = container.pkt;
+
+            if (cachePacket == null)
+            {
+                cachePacket
+                    = new RawPacket(
+                            ByteArrayPool.acquire(
+                                    Math.max(len, MIN_SLAB_LENGTH)),
+                            0, 0);
+                container.pkt = cachePacket;
+            }
+            else if (cachePacket.getBuffer().length < len)
+            {
+                // The container is not leased so nobody else references the
+                // buffer.
+                ByteArrayPool.release(cachePacket.getBuffer());
+                cachePacket.setBuffer(ByteArrayPool.acquire(len));
+            }
+            System.arraycopy(
+                pkt.getBuffer(), pkt.getOffset(),
                 cachePacket.getBuffer(), 0,
                 len);
+            cachePacket.setOffset(0);
             cachePacket.setLength(len);
 
-            int index = calculateIndex(pkt.getSequenceNumber());
-            Container container = getFreeContainer();
-            container.pkt = cachePacket;
-            container.timeAdded = System.currentTimeMillis();
-
-            // If the packet is already in the cache, we want to update the
-            // timeAdded field for retransmission purposes. This is implemented
-            // by simply replacing the old packet.
-            Container oldContainer = cache.put(index, container);
+            container.index = index;
+            container.timeAdded = now;
 
             synchronized (sizesSyncRoot)
             {
                 sizeInPackets++;
                 sizeInBytes += len;
-                if (oldContainer != null)
-                {
-                    sizeInPackets--;
-                    sizeInBytes -= oldContainer.pkt.getLength();
-                }
 
                 if (sizeInPackets > maxSizeInPackets)
                     maxSizeInPackets = sizeInPackets;
@@ -499,21 +594,20 @@ private synchronized void insert(RawPacket pkt)
                     maxSizeInBytes = sizeInBytes;
             }
 
-            returnContainer(oldContainer);
-            lastInsertTime = System.currentTimeMillis();
-            clean();
+            lastInsertTime = now;
+            clean(now);
         }
 
-
         /**
          * Calculates the index of an RTP packet based on its RTP sequence
          * number and updates the <tt>s_l</tt> and <tt>ROC</tt> fields. Based
          * on the procedure outlined in RFC3711
          * @param seq the RTP sequence number of the RTP packet.
          * @return the index of the RTP sequence number with sequence number
-         * <tt>seq</tt>.
+         * <tt>seq</tt>, or <tt>-1</tt> if the packet precedes the first
+         * packet of this cache by a wrap around of the sequence numbers.
          */
-        private int calculateIndex(int seq)
+        private long calculateIndex(int seq)
         {
             if (s_l == -1)
             {
@@ -521,46 +615,74 @@ private int calculateIndex(int seq)
                 return seq;
             }
 
-            int v = ROC;
+            long v = ROC;
+
             if (s_l < 0x8000)
+            {
                 if (seq - s_l > 0x8000)
-                    v = (int) ((ROC - 1) & 0xffff_ffffL);
-                else if (s_l - 0x1_0000 > seq)
-                    v = (int) ((ROC + 1) & 0xffff_ffffL );
+                    v = ROC - 1;
+            }
+            else if (s_l - 0x8000 > seq)
+            {
+                v = ROC + 1;
+            }
 
+            if (v < 0)
+            {
+                // Sent before the first packet of this cache and before a
+                // wrap around of the sequence numbers.
+                return -1;
+            }
             if (v == ROC && seq > s_l)
+            {
                 s_l = seq;
-            else if (v == ((ROC + 1) & 0xffff_ffffL))
+            }
+            else if (v == ROC + 1)
             {
                 s_l = seq;
-                ROC = v;
+                ROC = (int) v;
             }
 
-
-            return seq + v * 0x1_0000;
+            return seq + v * 0x1_0000L;
         }
 
         /**
-         * Returns a copy of the RTP packet with sequence number {@code seq}
-         * from the cache, or {@code null} if the cache does not contain a
+         * Leases the {@link Container} of the RTP packet with sequence number
+         * {@code seq}, or returns {@code null} if the cache does not contain a
          * packet with this sequence number.
          * @param seq the RTP sequence number of the packet to get.
-         * @return a copy of the RTP packet with sequence number {@code seq}
-         * from the cache, or {@code null} if the cache does not contain a
+         * @return the leased {@link Container} of the RTP packet with sequence
+         * number {@code seq}, or {@code null} if the cache does not contain a
          * packet with this sequence number.
          */
-        private synchronized Container get(int seq)
+        private synchronized Container acquire(int seq)
         {
             Container container = doGet(seq);
 
-            return
-                container == null
-                    ? null
-                    : new Container(
-                    new RawPacket(container.pkt.getBuffer().clone(),
-                        container.pkt.getOffset(),
-                        container.pkt.getLength()),
-                    container.timeAdded);
+            if (container != null)
+            {
+                container.leases++;
+            }
+            return container;
+        }
+
+        /**
+         * Releases a lease obtained from {@link #acquire(int)} or
+         * {@link #getMany(int)}.
+         * @param container the leased {@link Container}.
+         */
+        private synchronized void release(Container container)
+        {
+            if (container.leases > 0
+                    && --container.leases == 0
+                    && container.detached
+                    && container.pkt != null)
+            {
+                // The container is no longer in the ring so nobody else
+                // references the buffer.
+                ByteArrayPool.release(container.pkt.getBuffer());
+                container.pkt = null;
+            }
         }
 
         /**
@@ -577,11 +699,13 @@ private synchronized Container doGet(int seq)
             // Since sequence numbers wrap at 2^16, we can't know with absolute
             // certainty which packet the request refers to. We assume that it
             // is for the latest packet (i.e. the one with the highest index).
-            Container container = cache.get(seq + ROC * 0x1_0000);
+            Container container
+                = doGetByIndex(seq + ROC * 0x1_0000L);
 
             // Maybe the ROC was just bumped recently.
             if (container == null && ROC > 0)
-                container = cache.get(seq + (ROC-1) * 0x1_0000);
+                container
+                    = doGetByIndex(seq + (ROC - 1) * 0x1_0000L);
 
             // Since the cache only stores <tt>SIZE_MILLIS</tt> milliseconds of
             // packets, we assume that it doesn't contain packets spanning
@@ -590,86 +714,147 @@ private synchronized Container doGet(int seq)
         }
 
         /**
-         * Drops the oldest packets from the cache until:
-         * 1. The cache contains at most {@link #MAX_SIZE_PACKETS} packets, and
-         * 2. The cache only contains packets at most {@link #SIZE_MILLIS}
-         * milliseconds older than the newest packet in the cache.
+         * Returns the {@link Container} of the packet with a specific index,
+         * or {@code null} if the cache does not contain such a packet.
+         * @param index the index of the packet.
+         * @return the {@link Container} of the packet with index
+         * {@code index} or {@code null}.
          */
-        private synchronized void clean()
+        private Container doGetByIndex(long index)
         {
-            int size = cache.size();
-            if (size <= 0)
-                return;
+            if (index < head || index > tail)
+                return null;
 
-            long cleanBefore = System.currentTimeMillis() - SIZE_MILLIS;
+            Container container = ring[(int) (index & (RING_SIZE - 1))];
 
-            Iterator<Map.Entry<Integer,Container>> iter
-                = cache.entrySet().iterator();
-            int removedPackets = 0;
-            int removedBytes = 0;
-            while (iter.hasNext())
+            return
+                (container != null && container.index == index)
+                    ? container
+                    : null;
+        }
+
+        /**
+         * Marks the packet of a specific {@link Container} as no longer
+         * cached and updates the sizes accordingly.
+         * @param container the {@link Container} to evict.
+         */
+        private void evict(Container container)
+        {
+            container.index = -1;
+            synchronized (sizesSyncRoot)
             {
-                Container container = iter.next().getValue();
-                RawPacket pkt = container.pkt;
+                sizeInPackets--;
+                sizeInBytes -= container.pkt.getLength();
+            }
+        }
 
-                if (size > MAX_SIZE_PACKETS)
+        /**
+         * Evicts the packets with indices lower than a specific index and moves
+         * {@link #head} to it. Visits each slot at most once.
+         * @param newHead the index of the oldest packet to keep.
+         */
+        private void evictBefore(long newHead)
+        {
+            if (newHead - head >= RING_SIZE)
+            {
+                for (Container container : ring)
                 {
-                    // Remove until we go under the max size, regardless of the
-                    // timestamps.
-                    size--;
+                    if (container != null
+                            && container.index != -1
+                            && container.index < newHead)
+                    {
+                        evict(container);
+                    }
                 }
-                else if (container.timeAdded >= 0 &&
-                         container.timeAdded < cleanBefore)
+            }
+            else
+            {
+                for (long i = head; i < newHead; i++)
                 {
-                    // We reached a packet with a timestamp after 'cleanBefore'.
-                    // The rest of the packets are even more recent.
-                    break;
-                }
+                    Container container = doGetByIndex(i);
 
-                iter.remove();
-                removedBytes += pkt.getLength();
-                removedPackets++;
-                returnContainer(container);
+                    if (container != null)
+                        evict(container);
+                }
             }
+            head = newHead;
+        }
 
-            synchronized (sizesSyncRoot)
+        /**
+         * Drops the oldest packets from the cache until it only contains
+         * packets at most {@link #SIZE_MILLIS} milliseconds older than the
+         * newest packet in the cache. The size limit of
+         * {@link #MAX_SIZE_PACKETS} is enforced by {@link #insert(RawPacket)}.
+         * @param now the current time in milliseconds.
+         */
+        private void clean(long now)
+        {
+            long cleanBefore = now - SIZE_MILLIS;
+
+            while (head < tail)
             {
-                sizeInBytes -= removedBytes;
-                sizeInPackets -= removedPackets;
-            }
+                Container container
+                    = ring[(int) (head & (RING_SIZE - 1))];
 
+                if (container != null && container.index == head)
+                {
+                    if (container.timeAdded >= 0
+                            && container.timeAdded >= cleanBefore)
+                    {
+                        // The rest of the packets are even more recent.
+                        break;
+                    }
+                    evict(container);
+                }
+                head++;
+            }
         }
 
+        /**
+         * Evicts all packets from this cache and releases the buffers of the
+         * containers which are not leased to {@link ByteArrayPool}. The
+         * buffers of the leased containers are released with their last
+         * leases.
+         */
         synchronized private void empty()
         {
-            int removedBytes = 0;
-            for (Container container : cache.values())
+            for (int i = 0; i < ring.length; i++)
             {
-                removedBytes += container.pkt.getBuffer().length;
-                returnContainer(container);
-            }
+                Container container = ring[i];
 
-            synchronized (sizesSyncRoot)
-            {
-                sizeInPackets -= cache.size();
-                sizeInBytes -= removedBytes;
-            }
+                if (container == null)
+                    continue;
 
-            cache.clear();
+                if (container.index != -1)
+                {
+                    evict(container);
+                }
+                if (container.leases == 0)
+                {
+                    ByteArrayPool.release(container.pkt.getBuffer());
+                }
+                else
+                {
+                    // The buffer is released when the last lease is.
+                    container.detached = true;
+                }
+                ring[i] = null;
+            }
+            head = tail = -1;
         }
 
         /**
-         * Gets the most recent packets from this cache, not exceeding the
-         * number of bytes specified as an argument.
+         * Gets and leases the most recent packets from this cache, not
+         * exceeding the number of bytes specified as an argument.
          *
          * @param bytes the maximum number of bytes to retrieve.
-         * @return the set of the most recent packets to retrieve, not exceeding
-         * the number of bytes specified as an argument, or null if there are
-         * no packets in the cache.
+         * @return the set of the leased {@link Container}s of the most recent
+         * packets to retrieve, not exceeding the number of bytes specified as
+         * an argument, or null if there are no packets in the cache.
          */
         public synchronized Set<Container> getMany(int bytes)
         {
-            if (cache.isEmpty() || bytes < 1)
+            if (tail == -1 || bytes < 1)
             {
                 return null;
             }
@@ -679,13 +864,15 @@ public synchronized Set<Container> getMany(int bytes)
             // more efficient than this..
             Set<Container> set = new HashSet<>();
 
-            Iterator<Map.Entry<Integer, Container>> it
-                = cache.descendingMap().entrySet().iterator();
-            while (it.hasNext() && bytes > 0)
+            for (long i = tail; i >= head && bytes > 0; i--)
             {
-                Container container = it.next().getValue();
+                Container container = doGetByIndex(i);
                 if (container != null && container.pkt != null)
                 {
+                    // The packet is read after the monitor of this cache is
+                    // released, so it must not be modified or reused until
+                    // the caller releases it.
+                    container.leases++;
                     set.add(container);
                     bytes -= container.pkt.getLength();
                 }
@@ -711,6 +898,32 @@ public synchronized Set<Container> getMany(int bytes)
          */
         public long timeAdded;
 
+        /**
+         * The {@link Cache} which owns this container or <tt>null</tt> if it
+         * is a copy not owned by any cache.
+         */
+        private Cache cache;
+
+        /**
+         * The index of the packet held by this container in its
+         * {@link #cache} or <tt>-1</tt> if it does not hold a cached packet.
+         */
+        private long index = -1;
+
+        /**
+         * The number of outstanding leases of this container. Accessed while
+         * holding the monitor of {@link #cache}.
+         */
+        private int leases = 0;
+
+        /**
+         * Whether this container has been removed from the ring of
+         * {@link #cache} while leased, in which case the buffer of its packet
+         * is released to {@link ByteArrayPool} with its last lease. Accessed
+         * while holding the monitor of {@link #cache}.
+         */
+        private boolean detached = false;
+
         /**
          * Initializes a new empty {@link Container} instance.
          */
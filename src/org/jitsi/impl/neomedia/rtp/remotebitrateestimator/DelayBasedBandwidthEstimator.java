@@ -0,0 +1,216 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp.remotebitrateestimator;
+
+import org.ice4j.util.*;
+import org.jitsi.service.neomedia.rtp.*;
+
+/**
+ * Estimates the available send bandwidth from the send and arrival times of
+ * packets reported by transport-wide congestion control feedback. This is the
+ * send-side counterpart of {@link RemoteBitrateEstimatorSingleStream}: the
+ * same inter-arrival filter, over-use detector and AIMD rate controller are
+ * driven by the local send times (in milliseconds) instead of RTP timestamps.
+ *
+ * The current time is always passed in explicitly so that the estimator can be
+ * driven by a simulated clock.
+ *
+ * webrtc/modules/congestion_controller/delay_based_bwe.cc
+ */
+public class DelayBasedBandwidthEstimator
+{
+    /**
+     * The bitrate of the packets acknowledged by the feedback computed over
+     * their arrival times.
+     */
+    private final RateStatistics ackedBitrate
+        = new RateStatistics(RemoteBitrateEstimator.kBitrateWindowMs, 8000F);
+
+    /**
+     * Reusable array for the deltas computed by {@link #interArrival}.
+     */
+    private final long[] deltas = new long[3];
+
+    private final OveruseDetector detector;
+
+    private final OveruseEstimator estimator;
+
+    private final RateControlInput input
+        = new RateControlInput(BandwidthUsage.kBwNormal, 0L, 0D);
+
+    private final InterArrival interArrival
+        = new InterArrival(
+                RemoteBitrateEstimator.kTimestampGroupLengthMs,
+                /* timestampToMsCoeff */ 1D,
+                /* enableBurstGrouping */ true);
+
+    /**
+     * The latest arrival time in milliseconds reported by the feedback. The
+     * arrival times are in the clock of the remote endpoint.
+     */
+    private long lastArrivalTimeMs = -1L;
+
+    /**
+     * The last time in milliseconds at which {@link #rateControl} was updated.
+     */
+    private long lastUpdateMs = -1L;
+
+    private final AimdRateControl rateControl = new AimdRateControl();
+
+    /**
+     * The bitrate in bits per second to start from before the feedback has
+     * allowed a first estimate.
+     */
+    private final long startBitrateBps;
+
+    /**
+     * Initializes a new <tt>DelayBasedBandwidthEstimator</tt> instance.
+     *
+     * @param startBitrateBps the bitrate in bits per second to start from.
+     */
+    public DelayBasedBandwidthEstimator(long startBitrateBps)
+    {
+        this.startBitrateBps = startBitrateBps;
+
+        OverUseDetectorOptions options = new OverUseDetectorOptions();
+
+        estimator = new OveruseEstimator(options);
+        detector = new OveruseDetector(options);
+    }
+
+    /**
+     * Gets the latest estimate of this instance.
+     *
+     * @return the latest estimate in bits per second or <tt>-1</tt> if there
+     * is no valid estimate yet.
+     */
+    public synchronized long getLatestEstimate()
+    {
+        return
+            rateControl.isValidEstimate()
+                ? rateControl.getLatestEstimate()
+                : -1L;
+    }
+
+    /**
+     * Notifies this estimator about a packet reported as received by
+     * transport-wide congestion control feedback. Packets have to be reported
+     * in the order in which they were sent.
+     *
+     * @param sendTimeMs the local time in milliseconds at which the packet was
+     * sent.
+     * @param arrivalTimeMs the remote time in milliseconds at which the packet
+     * was received.
+     * @param size the size of the packet in bytes.
+     * @param nowMs the current local time in milliseconds.
+     */
+    public synchronized void incomingPacketFeedback(
+            long sendTimeMs,
+            long arrivalTimeMs,
+            int size,
+            long nowMs)
+    {
+        if (!rateControl.isValidEstimate())
+            rateControl.setEstimate((int) startBitrateBps, nowMs);
+
+        if (arrivalTimeMs > lastArrivalTimeMs)
+            lastArrivalTimeMs = arrivalTimeMs;
+        ackedBitrate.update(size, lastArrivalTimeMs);
+
+        BandwidthUsage priorState = detector.getState();
+        long[] deltas = this.deltas;
+
+        if (interArrival.computeDeltas(
+                sendTimeMs,
+                arrivalTimeMs,
+                size,
+                deltas))
+        {
+            estimator.update(
+                    /* timeDelta */ deltas[1],
+                    /* timestampDelta */ deltas[0],
+                    /* sizeDelta */ (int) deltas[2],
+                    detector.getState());
+            detector.detect(
+                    estimator.getOffset(),
+                    deltas[0],
+                    estimator.getNumOfDeltas(),
+                    nowMs);
+        }
+        if (detector.getState() == BandwidthUsage.kBwOverusing)
+        {
+            long ackedBitrateBps = ackedBitrate.getRate(lastArrivalTimeMs);
+
+            if (priorState != BandwidthUsage.kBwOverusing
+                    || rateControl.isTimeToReduceFurther(
+                            nowMs,
+                            ackedBitrateBps))
+            {
+                // The first overuse should immediately trigger a new estimate.
+                updateEstimate(nowMs);
+            }
+        }
+    }
+
+    /**
+     * Sets the round-trip time to the remote endpoint.
+     *
+     * @param rttMs the round-trip time in milliseconds.
+     */
+    public synchronized void setRtt(long rttMs)
+    {
+        rateControl.setRtt(rttMs);
+    }
+
+    /**
+     * Updates the estimate of this instance if it is time to do so. Meant to
+     * be called after each feedback message has been processed.
+     *
+     * @param nowMs the current local time in milliseconds.
+     * @return the latest estimate in bits per second or <tt>-1</tt> if there
+     * is no valid estimate yet.
+     */
+    public synchronized long update(long nowMs)
+    {
+        if (lastUpdateMs < 0L
+                || nowMs - lastUpdateMs >= rateControl.getFeedBackInterval())
+        {
+            updateEstimate(nowMs);
+        }
+        return getLatestEstimate();
+    }
+
+    /**
+     * Feeds the current state of the over-use detector into the rate
+     * controller.
+     *
+     * @param nowMs the current local time in milliseconds.
+     */
+    private void updateEstimate(long nowMs)
+    {
+        if (lastArrivalTimeMs < 0L)
+            return;
+
+        RateControlInput input = this.input;
+
+        input.bwState = detector.getState();
+        input.incomingBitRate = ackedBitrate.getRate(lastArrivalTimeMs);
+        input.noiseVar = estimator.getVarNoise();
+        rateControl.update(input, nowMs);
+        rateControl.updateBandwidthEstimate(nowMs);
+        lastUpdateMs = nowMs;
+    }
+}
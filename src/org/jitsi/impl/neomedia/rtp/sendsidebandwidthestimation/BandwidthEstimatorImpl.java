@@ -207,4 +207,16 @@ public int getLatestFractionLoss()
     {
         return sendSideBandwidthEstimation.getLatestFractionLoss();
     }
+
+    /**
+     * Notifies this estimator about a new delay-based estimate computed from
+     * transport-wide congestion control feedback. The loss-based estimate is
+     * capped by it.
+     *
+     * @param bitrateBps the delay-based estimate in bits per second.
+     */
+    public void updateDelayBasedEstimate(long bitrateBps)
+    {
+        sendSideBandwidthEstimation.updateDelayBasedEstimate(bitrateBps);
+    }
 }
@@ -15,6 +15,7 @@
  */
 package org.jitsi.impl.neomedia.rtp.sendsidebandwidthestimation;
 
+import net.sf.fmj.media.rtp.*;
 import org.jitsi.impl.neomedia.rtcp.*;
 import org.jitsi.impl.neomedia.rtp.*;
 import org.jitsi.service.neomedia.*;
@@ -32,8 +33,9 @@
  * @author Boris Grozev
  */
 class SendSideBandwidthEstimation
-    extends RTCPPacketListenerAdapter
-    implements BandwidthEstimator
+    extends RTCPPacketVisitorAdapter
+    implements BandwidthEstimator,
+               RTCPPacketListener
 {
     /**
      * send_side_bandwidth_estimation.cc
@@ -124,6 +126,11 @@
      */
     private long bwe_incoming_ = 0;
 
+    /**
+     * send_side_bandwidth_estimation.h
+     */
+    private long delay_based_bitrate_bps_ = 0;
+
     /**
      * send_side_bandwidth_estimation.h
      */
@@ -166,6 +173,10 @@ private synchronized long capBitrateToThresholds(long bitrate)
         {
             bitrate = bwe_incoming_;
         }
+        if (delay_based_bitrate_bps_ > 0 && bitrate > delay_based_bitrate_bps_)
+        {
+            bitrate = delay_based_bitrate_bps_;
+        }
         if (bitrate > max_bitrate_configured_)
         {
             bitrate = max_bitrate_configured_;
@@ -184,15 +195,28 @@ protected synchronized void updateEstimate(long now)
     {
         long bitrate = bitrate_;
 
-        // We trust the REMB during the first 2 seconds if we haven't had any
-        // packet loss reported, to allow startup bitrate probing.
-        if (last_fraction_loss_ == 0 && isInStartPhase(now) &&
-                bwe_incoming_ > bitrate)
+        // We trust the REMB and/or the delay-based estimate during the first 2
+        // seconds if we haven't had any packet loss reported, to allow startup
+        // bitrate probing.
+        if (last_fraction_loss_ == 0 && isInStartPhase(now))
         {
-            setBitrate(capBitrateToThresholds(bwe_incoming_));
-            min_bitrate_history_.clear();
-            min_bitrate_history_.addLast(new Pair<>(now, bitrate_));
-            return;
+            long prev_bitrate = bitrate;
+
+            if (bwe_incoming_ > bitrate)
+            {
+                bitrate = bwe_incoming_;
+            }
+            if (delay_based_bitrate_bps_ > bitrate)
+            {
+                bitrate = delay_based_bitrate_bps_;
+            }
+            if (bitrate != prev_bitrate)
+            {
+                setBitrate(capBitrateToThresholds(bitrate));
+                min_bitrate_history_.clear();
+                min_bitrate_history_.addLast(new Pair<>(now, bitrate_));
+                return;
+            }
         }
         updateMinHistory(now);
         // Only start updating bitrate when receiving receiver blocks.
@@ -339,6 +363,15 @@ private synchronized void updateReceiverEstimate(long bandwidth)
         setBitrate(capBitrateToThresholds(bitrate_));
     }
 
+    /**
+     * void SendSideBandwidthEstimation::UpdateDelayBasedEstimate
+     */
+    synchronized void updateDelayBasedEstimate(long bitrate_bps)
+    {
+        delay_based_bitrate_bps_ = bitrate_bps;
+        setBitrate(capBitrateToThresholds(bitrate_));
+    }
+
     /**
      * void SendSideBandwidthEstimation::SetMinMaxBitrate
      */
@@ -424,6 +457,35 @@ public void rembReceived(RTCPREMBPacket remb)
         updateReceiverEstimate(remb.getBitrate());
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Registered as an <tt>RTCPPacketVisitor</tt>, this instance is handed the
+     * view of the received REMB packets instead of {@link
+     * #rembReceived(RTCPREMBPacket)}.
+     */
+    @Override
+    public void visitREMB(RTCPPacketView view)
+    {
+        updateReceiverEstimate(view.getREMBBitrate());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void nackReceived(NACKPacket nack)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void srReceived(RTCPSRPacket sr)
+    {
+    }
+
     /**
      * Returns the last calculated RTT to the endpoint.
      * @return the last calculated RTT to the endpoint.
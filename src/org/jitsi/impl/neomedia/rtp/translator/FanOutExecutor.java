@@ -0,0 +1,562 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp.translator;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.media.rtp.*;
+
+import net.sf.fmj.media.util.*;
+
+import org.jitsi.impl.neomedia.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.util.*;
+import org.jitsi.util.Logger; // Disambiguation.
+
+/**
+ * Writes the packets relayed by <tt>OutputDataStreamImpl</tt>s into the
+ * endpoint <tt>OutputDataStream</tt>s on a bounded pool of threads so that the
+ * transformation (e.g. SRTP encryption) and sending of a packet for many
+ * destinations happen in parallel. Every destination has a {@link Queue} which
+ * is drained by at most one thread at a time so the order of the packets
+ * written into a particular destination is preserved. Once a destination has a
+ * <tt>Queue</tt>, all packets are written into it through the <tt>Queue</tt>
+ * (see {@link OutputDataStreamDesc#getFanOutQueue(boolean)}).
+ * <p>
+ * Also maintains the distribution of the fan-out latency i.e. the time from the
+ * start of the first write of a packet to the end of its last write.
+ */
+public class FanOutExecutor
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FanOutExecutor</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(FanOutExecutor.class);
+
+    /**
+     * The name of the property which specifies the number of threads of the
+     * shared instance.
+     */
+    public static final String THREAD_COUNT_PNAME
+        = RTPTranslatorImpl.class.getName() + ".fanOutThreadCount";
+
+    /**
+     * The maximum number of packets waiting to be written into a single
+     * destination. Packets written while the queue of a destination is full
+     * are dropped for that destination only.
+     */
+    private static final int QUEUE_CAPACITY
+        = RTPConnectorOutputStream.PACKET_QUEUE_CAPACITY;
+
+    /**
+     * The maximum number of packets a <tt>Queue</tt> writes before it yields
+     * its thread to the other queues.
+     */
+    private static final int QUANTUM = 16;
+
+    /**
+     * The number of buckets of the fan-out latency distribution. The upper
+     * bound of bucket <tt>i</tt> is <tt>2<sup>i</sup></tt> microseconds; the
+     * last bucket has no upper bound.
+     */
+    public static final int LATENCY_BUCKET_COUNT = 21;
+
+    /**
+     * The shared instance, lazily initialized by {@link #getInstance()}.
+     */
+    private static FanOutExecutor instance;
+
+    /**
+     * Gets the <tt>FanOutExecutor</tt> shared by all
+     * <tt>OutputDataStreamImpl</tt>s.
+     *
+     * @return the shared <tt>FanOutExecutor</tt> instance
+     */
+    public static synchronized FanOutExecutor getInstance()
+    {
+        if (instance == null)
+        {
+            int threadCount
+                = ConfigUtils.getInt(
+                        LibJitsi.getConfigurationService(),
+                        THREAD_COUNT_PNAME,
+                        Runtime.getRuntime().availableProcessors());
+
+            instance = new FanOutExecutor(Math.max(1, threadCount));
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the index of the fan-out latency bucket of a specific latency.
+     *
+     * @param latencyNanos the latency in nanoseconds
+     * @return the index of the bucket of <tt>latencyNanos</tt>
+     */
+    static int getLatencyBucket(long latencyNanos)
+    {
+        long micros = latencyNanos / 1000;
+
+        if (micros <= 1)
+            return 0;
+
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+
+        return Math.min(bucket, LATENCY_BUCKET_COUNT - 1);
+    }
+
+    /**
+     * The executor which runs the drain tasks of the queues.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The number of completed fan-outs per latency bucket.
+     */
+    private final AtomicLongArray latencyBuckets
+        = new AtomicLongArray(LATENCY_BUCKET_COUNT);
+
+    /**
+     * The sum in nanoseconds of the latencies of the completed fan-outs.
+     */
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    /**
+     * The number of completed fan-outs.
+     */
+    private final AtomicLong fanOuts = new AtomicLong();
+
+    /**
+     * The maximum fan-out latency in nanoseconds.
+     */
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * The number of packets dropped because the queue of their destination
+     * was full.
+     */
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    /**
+     * Initializes a new <tt>FanOutExecutor</tt> with a specific number of
+     * threads.
+     *
+     * @param threadCount the number of threads of the new instance
+     */
+    FanOutExecutor(int threadCount)
+    {
+        executor
+            = Executors.newFixedThreadPool(
+                    threadCount,
+                    new ThreadFactory()
+                    {
+                        private final AtomicInteger index
+                            = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t = new Thread(r);
+
+                            t.setDaemon(true);
+                            t.setName(
+                                    FanOutExecutor.class.getName() + "-"
+                                        + index.getAndIncrement());
+                            RTPConnectorInputStream.setThreadPriority(
+                                    t,
+                                    MediaThread.getNetworkPriority());
+                            return t;
+                        }
+                    });
+    }
+
+    /**
+     * Gets the average fan-out latency in nanoseconds.
+     *
+     * @return the average fan-out latency in nanoseconds
+     */
+    public long getAverageLatencyNanos()
+    {
+        long count = fanOuts.get();
+
+        return (count == 0) ? 0 : totalLatencyNanos.get() / count;
+    }
+
+    /**
+     * Gets the number of packets dropped because the queue of their
+     * destination was full.
+     *
+     * @return the number of dropped packets
+     */
+    public long getDroppedPackets()
+    {
+        return droppedPackets.get();
+    }
+
+    /**
+     * Gets the number of completed fan-outs.
+     *
+     * @return the number of completed fan-outs
+     */
+    public long getFanOutCount()
+    {
+        return fanOuts.get();
+    }
+
+    /**
+     * Gets the distribution of the fan-out latency. The element at index
+     * <tt>i</tt> is the number of fan-outs which completed in at most
+     * <tt>2<sup>i</sup></tt> microseconds and (for <tt>i &gt; 0</tt>) more than
+     * <tt>2<sup>i-1</sup></tt> microseconds. The last element counts all
+     * fan-outs slower than that.
+     *
+     * @return the distribution of the fan-out latency
+     */
+    public long[] getLatencyDistribution()
+    {
+        long[] distribution = new long[LATENCY_BUCKET_COUNT];
+
+        for (int i = 0; i < distribution.length; i++)
+            distribution[i] = latencyBuckets.get(i);
+        return distribution;
+    }
+
+    /**
+     * Gets the maximum fan-out latency in nanoseconds.
+     *
+     * @return the maximum fan-out latency in nanoseconds
+     */
+    public long getMaxLatencyNanos()
+    {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * Initializes a new {@link FanOut} which is to track the writes of a
+     * single packet.
+     *
+     * @return a new <tt>FanOut</tt>
+     */
+    FanOut createFanOut()
+    {
+        return new FanOut();
+    }
+
+    /**
+     * Initializes a new {@link Queue} for a specific destination.
+     *
+     * @param stream the endpoint <tt>OutputDataStream</tt> to write into
+     * @return a new <tt>Queue</tt> which writes into <tt>stream</tt>
+     */
+    Queue createQueue(OutputDataStream stream)
+    {
+        return new Queue(stream);
+    }
+
+    /**
+     * Records the latency of a completed fan-out.
+     *
+     * @param latencyNanos the time in nanoseconds from the start of the first
+     * write to the end of the last write of the fan-out
+     */
+    private void fanOutCompleted(long latencyNanos)
+    {
+        fanOuts.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        latencyBuckets.incrementAndGet(getLatencyBucket(latencyNanos));
+
+        long max;
+
+        while ((max = maxLatencyNanos.get()) < latencyNanos
+                && !maxLatencyNanos.compareAndSet(max, latencyNanos));
+    }
+
+    /**
+     * Tracks the writes of a single packet into multiple destinations in
+     * order to measure the fan-out latency.
+     */
+    class FanOut
+    {
+        /**
+         * The number of writes which have not completed yet. Starts at one
+         * for the writer which schedules the writes so that the fan-out does
+         * not complete before all of them have been scheduled.
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        /**
+         * The time in nanoseconds at which the first write started.
+         */
+        private final AtomicLong startNanos = new AtomicLong();
+
+        /**
+         * Notifies this instance that a write has completed.
+         */
+        private void writeCompleted()
+        {
+            if (pending.decrementAndGet() == 0)
+            {
+                long start = startNanos.get();
+
+                if (start != 0)
+                    fanOutCompleted(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Determines whether all writes of the packet have completed (or have
+         * been discarded).
+         *
+         * @return <tt>true</tt> if all writes of the packet have completed;
+         * otherwise, <tt>false</tt>
+         */
+        boolean isCompleted()
+        {
+            return pending.get() == 0;
+        }
+
+        /**
+         * Notifies this instance that a write is about to start.
+         */
+        private void writeStarted()
+        {
+            if (startNanos.get() == 0)
+                startNanos.compareAndSet(0, System.nanoTime());
+        }
+
+        /**
+         * Notifies this instance that all writes of the packet have been
+         * scheduled.
+         */
+        void scheduled()
+        {
+            writeCompleted();
+        }
+    }
+
+    /**
+     * The queue of the packets to be written into a single destination.
+     */
+    class Queue
+        implements Runnable
+    {
+        /**
+         * The endpoint <tt>OutputDataStream</tt> to write into.
+         */
+        private final OutputDataStream stream;
+
+        /**
+         * The packets waiting to be written into {@link #stream}.
+         */
+        private final ConcurrentLinkedQueue<Write> writes
+            = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The number of elements of {@link #writes}.
+         */
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * The indicator which determines whether this queue is currently
+         * scheduled for execution or being drained.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * The indicator which determines whether this queue has been closed.
+         */
+        private volatile boolean closed;
+
+        /**
+         * Initializes a new <tt>Queue</tt> which is to write into a specific
+         * <tt>OutputDataStream</tt>.
+         *
+         * @param stream the <tt>OutputDataStream</tt> to write into
+         */
+        private Queue(OutputDataStream stream)
+        {
+            this.stream = stream;
+        }
+
+        /**
+         * Gets a <tt>byte</tt> array with at least a specific length into
+         * which a packet to be added to this queue is to be copied.
+         *
+         * @param len the minimum length of the array
+         * @return a <tt>byte</tt> array with at least <tt>len</tt> elements
+         */
+        byte[] acquireBuffer(int len)
+        {
+            return ByteArrayPool.acquire(len);
+        }
+
+        /**
+         * Closes this queue and discards the packets waiting in it.
+         */
+        void close()
+        {
+            closed = true;
+            discard();
+        }
+
+        /**
+         * Discards the packets waiting in this queue i.e. releases their
+         * buffers and completes their writes without writing them.
+         */
+        private void discard()
+        {
+            Write write;
+
+            while ((write = writes.poll()) != null)
+            {
+                size.decrementAndGet();
+                releaseBuffer(write.buf);
+                write.fanOut.writeCompleted();
+            }
+        }
+
+        /**
+         * Adds a packet to this queue.
+         *
+         * @param buf the packet to write. Owned by this queue from now on.
+         * @param len the number of bytes of <tt>buf</tt> to write
+         * @param fanOut the <tt>FanOut</tt> the write belongs to
+         */
+        void add(byte[] buf, int len, FanOut fanOut)
+        {
+            if (closed)
+            {
+                releaseBuffer(buf);
+                return;
+            }
+            if (size.get() >= QUEUE_CAPACITY)
+            {
+                long dropped = droppedPackets.incrementAndGet();
+
+                if (RTPConnectorOutputStream.logDroppedPacket((int) dropped))
+                {
+                    logger.warn(
+                            "Dropped " + dropped + " packets (fan-out queue"
+                                + " full, hashCode=" + hashCode() + ").");
+                }
+                releaseBuffer(buf);
+                return;
+            }
+
+            fanOut.pending.incrementAndGet();
+            size.incrementAndGet();
+            writes.add(new Write(buf, len, fanOut));
+            if (closed)
+            {
+                // This queue was closed after the check above and the write
+                // may have been added after close() discarded the others.
+                discard();
+            }
+            else if (scheduled.compareAndSet(false, true))
+            {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Returns a <tt>byte</tt> array acquired with
+         * {@link #acquireBuffer(int)} to {@link ByteArrayPool}.
+         *
+         * @param buf the <tt>byte</tt> array to return
+         */
+        void releaseBuffer(byte[] buf)
+        {
+            ByteArrayPool.release(buf);
+        }
+
+        /**
+         * Writes up to {@link #QUANTUM} packets into {@link #stream} and
+         * reschedules this queue if more packets are waiting.
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (int i = 0; i < QUANTUM; i++)
+                {
+                    Write write = writes.poll();
+
+                    if (write == null)
+                        break;
+                    size.decrementAndGet();
+
+                    write.fanOut.writeStarted();
+                    try
+                    {
+                        if (!closed)
+                            stream.write(write.buf, 0, write.len);
+                    }
+                    catch (Throwable t)
+                    {
+                        if (t instanceof ThreadDeath)
+                            throw (ThreadDeath) t;
+                        logger.error("Failed to translate RTP packet", t);
+                    }
+                    finally
+                    {
+                        releaseBuffer(write.buf);
+                        write.fanOut.writeCompleted();
+                    }
+                }
+            }
+            finally
+            {
+                scheduled.set(false);
+                // A packet may have been added after the last poll but before
+                // scheduled was cleared.
+                if (!writes.isEmpty() && scheduled.compareAndSet(false, true))
+                    executor.execute(this);
+            }
+        }
+    }
+
+    /**
+     * A packet waiting in a <tt>Queue</tt>.
+     */
+    private static class Write
+    {
+        /**
+         * The packet to write.
+         */
+        final byte[] buf;
+
+        /**
+         * The number of bytes of {@link #buf} to write.
+         */
+        final int len;
+
+        /**
+         * The <tt>FanOut</tt> this write belongs to.
+         */
+        final FanOut fanOut;
+
+        Write(byte[] buf, int len, FanOut fanOut)
+        {
+            this.buf = buf;
+            this.len = len;
+            this.fanOut = fanOut;
+        }
+    }
+}
@@ -39,6 +39,26 @@
      */
     public final OutputDataStream stream;
 
+    /**
+     * The <tt>FanOutExecutor</tt> which is to write into {@link #stream} in
+     * parallel with the other endpoints or <tt>null</tt> if parallel fan-out
+     * is disabled.
+     */
+    private final FanOutExecutor fanOutExecutor;
+
+    /**
+     * The queue through which packets are written into {@link #stream} in
+     * parallel with the other endpoints or <tt>null</tt> if no packet has been
+     * written in parallel into {@link #stream} yet.
+     */
+    private FanOutExecutor.Queue fanOutQueue;
+
+    /**
+     * The indicator which determines whether {@link #closeFanOutQueue()} has
+     * been invoked.
+     */
+    private boolean fanOutQueueClosed = false;
+
     /**
      * Initializes a new <tt>OutputDataStreamDesc</tt> instance which is to
      * describe an endpoint <tt>OutputDataStream</tt> for an
@@ -48,12 +68,53 @@
      * specified <tt>stream</tt>
      * @param stream the endpoint <tt>OutputDataStream</tt> to be described by
      * the new instance for an <tt>RTPTranslatorImpl</tt>
+     * @param fanOutExecutor the <tt>FanOutExecutor</tt> which is to write
+     * into <tt>stream</tt> in parallel with the other endpoints or
+     * <tt>null</tt> if parallel fan-out is disabled
      */
     public OutputDataStreamDesc(
             RTPConnectorDesc connectorDesc,
-            OutputDataStream stream)
+            OutputDataStream stream,
+            FanOutExecutor fanOutExecutor)
     {
         this.connectorDesc = connectorDesc;
         this.stream = stream;
+        this.fanOutExecutor = fanOutExecutor;
+    }
+
+    /**
+     * Closes the queue through which packets are written into {@link #stream}
+     * in parallel with the other endpoints, if any, and prevents the
+     * initialization of a new one.
+     */
+    public synchronized void closeFanOutQueue()
+    {
+        fanOutQueueClosed = true;
+        if (fanOutQueue != null)
+            fanOutQueue.close();
+    }
+
+    /**
+     * Gets the queue through which a packet is to be written into
+     * {@link #stream}. Once a packet has been written through a queue, all
+     * packets are written through it in order to preserve their order
+     * (because the queue may still be writing an earlier packet).
+     *
+     * @param create <tt>true</tt> if the packet is to be written in parallel
+     * with the other endpoints and the queue is to be initialized if it does
+     * not exist yet
+     * @return the queue through which a packet is to be written into
+     * {@link #stream} or <tt>null</tt> if it is to be written directly
+     */
+    public synchronized FanOutExecutor.Queue getFanOutQueue(boolean create)
+    {
+        if (fanOutQueue == null
+                && create
+                && fanOutExecutor != null
+                && !fanOutQueueClosed)
+        {
+            fanOutQueue = fanOutExecutor.createQueue(stream);
+        }
+        return fanOutQueue;
     }
 }
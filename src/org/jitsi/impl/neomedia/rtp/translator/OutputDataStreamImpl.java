@@ -27,6 +27,7 @@
 import org.jitsi.impl.neomedia.*;
 import org.jitsi.impl.neomedia.rtcp.*;
 import org.jitsi.impl.neomedia.rtp.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.service.libjitsi.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.*;
@@ -62,6 +63,25 @@
     private static final String REMOVE_RTP_HEADER_EXTENSIONS_PNAME
         = RTPTranslatorImpl.class.getName() + ".removeRTPHeaderExtensions";
 
+    /**
+     * The name of the <tt>boolean</tt> <tt>ConfigurationService</tt> property
+     * which indicates whether the packets are to be written into the endpoint
+     * <tt>OutputDataStream</tt>s in parallel on the threads of the shared
+     * {@link FanOutExecutor}. The default value is <tt>false</tt>.
+     */
+    public static final String PARALLEL_FAN_OUT_PNAME
+        = RTPTranslatorImpl.class.getName() + ".parallelFanOut";
+
+    /**
+     * The name of the <tt>int</tt> <tt>ConfigurationService</tt> property
+     * which specifies the minimum number of endpoint
+     * <tt>OutputDataStream</tt>s for which the packets are written in
+     * parallel. Packets for fewer destinations are written on the write
+     * thread as usual.
+     */
+    public static final String FAN_OUT_THRESHOLD_PNAME
+        = RTPTranslatorImpl.class.getName() + ".fanOutThreshold";
+
     private static final int WRITE_Q_CAPACITY
         = RTPConnectorOutputStream.PACKET_QUEUE_CAPACITY;
 
@@ -83,6 +103,19 @@
      */
     private final boolean _removeRTPHeaderExtensions;
 
+    /**
+     * The <tt>FanOutExecutor</tt> which writes the packets into the endpoint
+     * <tt>OutputDataStream</tt>s in parallel or <tt>null</tt> if parallel
+     * fan-out is disabled.
+     */
+    private final FanOutExecutor fanOutExecutor;
+
+    /**
+     * The minimum number of endpoint <tt>OutputDataStream</tt>s for which the
+     * packets are written in parallel.
+     */
+    private final int fanOutThreshold;
+
     /**
      * The {@code List} of {@code OutputDataStream}s into which this
      * {@code OutputDataStream} copies written data/packets. Implemented as a
@@ -120,11 +153,19 @@ public OutputDataStreamImpl(RTPConnectorImpl connector, boolean data)
         this.connector = connector;
         _data = data;
 
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+
         _removeRTPHeaderExtensions
             = ConfigUtils.getBoolean(
-                    LibJitsi.getConfigurationService(),
+                    cfg,
                     REMOVE_RTP_HEADER_EXTENSIONS_PNAME,
                     false);
+        fanOutExecutor
+            = ConfigUtils.getBoolean(cfg, PARALLEL_FAN_OUT_PNAME, false)
+                ? FanOutExecutor.getInstance()
+                : null;
+        fanOutThreshold
+            = Math.max(2, ConfigUtils.getInt(cfg, FAN_OUT_THRESHOLD_PNAME, 8));
 
         if (logger.isTraceEnabled())
         {
@@ -169,16 +210,29 @@ public void addStream(
                 = new ArrayList<>(_streams.size() * 3 / 2 + 1);
 
             newStreams.addAll(_streams);
-            newStreams.add(new OutputDataStreamDesc(connectorDesc, stream));
+            newStreams.add(
+                    new OutputDataStreamDesc(
+                            connectorDesc,
+                            stream,
+                            fanOutExecutor));
             _streams = newStreams;
         }
     }
 
-    public synchronized void close()
+    public void close()
     {
-        closed = true;
-        writeThread = null;
-        notify();
+        synchronized (this)
+        {
+            closed = true;
+            writeThread = null;
+            notify();
+        }
+
+        if (fanOutExecutor != null)
+        {
+            for (OutputDataStreamDesc s : _streams)
+                s.closeFanOutQueue();
+        }
     }
 
     private synchronized void createWriteThread()
@@ -188,10 +242,29 @@ private synchronized void createWriteThread()
         writeThread.start();
     }
 
+    /**
+     * Writes a packet into the endpoint <tt>OutputDataStream</tt>s other than
+     * the one of a specific <tt>StreamRTPManagerDesc</tt>.
+     *
+     * @param buf the <tt>byte</tt>s of the packet to write
+     * @param off the offset in <tt>buf</tt> at which the packet starts
+     * @param len the number of <tt>byte</tt>s in <tt>buf</tt> starting at
+     * <tt>off</tt> which constitute the packet
+     * @param format the FMJ <tt>Format</tt> of the packet
+     * @param exclusion the <tt>StreamRTPManagerDesc</tt> which is excluded
+     * from the write
+     * @param allowFanOut <tt>true</tt> if the packet may be written in
+     * parallel (in which case the method returns before the writes complete).
+     * The packet is written in parallel into the endpoints which have already
+     * been written into in parallel regardless of its value.
+     * @return the maximum number of <tt>byte</tt>s written into an endpoint
+     * <tt>OutputDataStream</tt>
+     */
     private int doWrite(
             byte[] buf, int off, int len,
             Format format,
-            StreamRTPManagerDesc exclusion)
+            StreamRTPManagerDesc exclusion,
+            boolean allowFanOut)
     {
         RTPTranslatorImpl translator = getTranslator();
 
@@ -204,6 +277,11 @@ private int doWrite(
         List<OutputDataStreamDesc> streams = _streams;
         boolean removeRTPHeaderExtensions = _removeRTPHeaderExtensions;
         int written = 0;
+        boolean fanOutAboveThreshold
+            = allowFanOut
+                && fanOutExecutor != null
+                && streams.size() >= fanOutThreshold;
+        FanOutExecutor.FanOut fanOut = null;
 
         // XXX I do NOT want to use an Iterator.
         for (int i = 0, end = streams.size(); i < end; ++i)
@@ -215,25 +293,53 @@ private int doWrite(
             if (streamRTPManager == exclusion)
                 continue;
 
+            // TODO The removal of the RTP header extensions is an
+            // experiment inspired by
+            // https://code.google.com/p/webrtc/issues/detail?id=1095
+            // "Chrom WebRTC VP8 RTP packet retransmission does not
+            // follow RFC 4588"
+            if (_data && removeRTPHeaderExtensions)
+            {
+                removeRTPHeaderExtensions = false;
+                len = removeRTPHeaderExtensions(buf, off, len);
+            }
+
+            // Once a destination has been written into in parallel, it is
+            // always written into through its queue (even below the
+            // threshold) so that a packet does not overtake the ones still
+            // waiting in the queue.
+            FanOutExecutor.Queue fanOutQueue
+                = (fanOutExecutor == null)
+                    ? null
+                    : s.getFanOutQueue(fanOutAboveThreshold);
+            byte[] b;
+            int o;
+
+            if (fanOutQueue == null)
+            {
+                b = buf;
+                o = off;
+            }
+            else
+            {
+                if (fanOut == null)
+                    fanOut = fanOutExecutor.createFanOut();
+                // Each destination gets its own copy of the packet when
+                // writing in parallel because willWriteData rewrites the
+                // payload type in place.
+                b = fanOutQueue.acquireBuffer(len);
+                o = 0;
+                System.arraycopy(buf, off, b, o, len);
+            }
+
             boolean write;
 
             if (_data)
             {
-                // TODO The removal of the RTP header extensions is an
-                // experiment inspired by
-                // https://code.google.com/p/webrtc/issues/detail?id=1095
-                // "Chrom WebRTC VP8 RTP packet retransmission does not
-                // follow RFC 4588"
-                if (removeRTPHeaderExtensions)
-                {
-                    removeRTPHeaderExtensions = false;
-                    len = removeRTPHeaderExtensions(buf, off, len);
-                }
-
                 write
                     = willWriteData(
                             streamRTPManager,
-                            buf, off, len,
+                            b, o, len,
                             format,
                             exclusion);
             }
@@ -242,7 +348,7 @@ private int doWrite(
                 write
                     = willWriteControl(
                             streamRTPManager,
-                            buf, off, len,
+                            b, o, len,
                             format,
                             exclusion);
             }
@@ -254,12 +360,24 @@ private int doWrite(
                 write
                     = translator.willWrite(
                         /* source */ exclusion,
-                    buf, off, len,
+                    b, o, len,
                         /* destination */ streamRTPManager,
                     _data);
             }
 
-            if (write)
+            if (fanOutQueue != null)
+            {
+                if (write)
+                {
+                    fanOutQueue.add(b, len, fanOut);
+                    written = len;
+                }
+                else
+                {
+                    fanOutQueue.releaseBuffer(b);
+                }
+            }
+            else if (write)
             {
                 int w = s.stream.write(buf, off, len);
 
@@ -267,6 +385,8 @@ private int doWrite(
                     written = w;
             }
         }
+        if (fanOut != null)
+            fanOut.scheduled();
         return written;
     }
 
@@ -354,8 +474,13 @@ public void removeStreams(RTPConnectorDesc connectorDesc)
             for (Iterator<OutputDataStreamDesc> i = newStreams.iterator();
                     i.hasNext();)
             {
-                if (i.next().connectorDesc == connectorDesc)
+                OutputDataStreamDesc streamDesc = i.next();
+
+                if (streamDesc.connectorDesc == connectorDesc)
+                {
                     i.remove();
+                    streamDesc.closeFanOutQueue();
+                }
             }
             _streams = newStreams;
         }
@@ -420,7 +545,11 @@ public void run()
 
                 try
                 {
-                    doWrite(buffer, 0, length, format, exclusion);
+                    doWrite(
+                            buffer, 0, length,
+                            format,
+                            exclusion,
+                            /* allowFanOut */ true);
                 }
                 finally
                 {
@@ -633,7 +762,12 @@ public int write(byte[] buf, int off, int len)
     {
         // FIXME It's unclear at the time of this writing why the method doWrite
         // is being invoked here and not the overloaded method write.
-        return doWrite(buf, off, len, /* format */ null, /* exclusion */ null);
+        return
+            doWrite(
+                    buf, off, len,
+                    /* format */ null,
+                    /* exclusion */ null,
+                    /* allowFanOut */ false);
     }
 
     public synchronized void write(
@@ -679,7 +813,10 @@ public synchronized void write(
         byte[] data = write.data;
 
         if (data == null || data.length < len)
-            write.data = data = new byte[len];
+        {
+            ByteArrayPool.release(data);
+            write.data = data = ByteArrayPool.acquire(len);
+        }
         System.arraycopy(buf, off, data, 0, len);
 
         write.exclusion = exclusion;
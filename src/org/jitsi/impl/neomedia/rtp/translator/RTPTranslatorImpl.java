@@ -529,6 +529,41 @@ int didRead(
             byte[] buf, int off, int len,
             int flags)
         throws IOException
+    {
+        return
+            didRead(
+                    streamDesc.connectorDesc.streamRTPManagerDesc,
+                    streamDesc.data,
+                    buf, off, len,
+                    flags);
+    }
+
+    /**
+     * Notifies this instance that an RTP or RTCP packet has been received from
+     * a peer represented by a specific <tt>StreamRTPManagerDesc</tt>.
+     *
+     * @param streamRTPManager the <tt>StreamRTPManagerDesc</tt> of the peer
+     * from which an RTP or RTCP packet has been received
+     * @param data <tt>true</tt> if the packet is an RTP packet or
+     * <tt>false</tt> if it is an RTCP packet
+     * @param buf the buffer which contains the bytes of the received RTP or
+     * RTCP packet
+     * @param off the zero-based index in <tt>buf</tt> at which the bytes of the
+     * received RTP or RTCP packet begin
+     * @param len the number of bytes in <tt>buf</tt> beginning at <tt>off</tt>
+     * which represent the received RTP or RTCP packet
+     * @param flags <tt>Buffer.FLAG_XXX</tt>
+     * @return the number of bytes in <tt>buf</tt> beginning at <tt>off</tt>
+     * which represent the received RTP or RTCP packet
+     * @throws IOException if an I/O error occurs while the method processes the
+     * specified RTP or RTCP packet
+     */
+    private int didRead(
+            StreamRTPManagerDesc streamRTPManager,
+            boolean data,
+            byte[] buf, int off, int len,
+            int flags)
+        throws IOException
     {
         Lock lock = _lock.readLock();
 
@@ -536,9 +571,6 @@ int didRead(
         try
         {
 
-        boolean data = streamDesc.data;
-        StreamRTPManagerDesc streamRTPManager
-            = streamDesc.connectorDesc.streamRTPManagerDesc;
         Format format = null;
 
         if (data)
@@ -1239,6 +1271,46 @@ boolean willWrite(
         return willWrite(src, buffer, offset, length, dst, data);
     }
 
+    /**
+     * Translates an RTP or RTCP packet as if it had been received (and
+     * reverse transformed) by a specific <tt>StreamRTPManager</tt> of this
+     * instance. Allows captured traffic to be replayed through the translator
+     * without reading it from sockets.
+     *
+     * @param streamRTPManager the <tt>StreamRTPManager</tt> of the endpoint
+     * from which the packet is to appear to have been received
+     * @param data <tt>true</tt> if <tt>pkt</tt> is an RTP packet or
+     * <tt>false</tt> if it is an RTCP packet
+     * @param pkt the packet to translate
+     * @return <tt>true</tt> if <tt>pkt</tt> was handed to the endpoints of
+     * this instance; otherwise, <tt>false</tt>
+     * @throws IOException if an I/O error occurs while translating
+     * <tt>pkt</tt>
+     */
+    public boolean injectPacket(
+            StreamRTPManager streamRTPManager,
+            boolean data,
+            RawPacket pkt)
+        throws IOException
+    {
+        if (connector == null)
+            return false;
+
+        StreamRTPManagerDesc streamRTPManagerDesc
+            = getStreamRTPManagerDesc(streamRTPManager, false);
+
+        if (streamRTPManagerDesc == null)
+            return false;
+
+        return
+            didRead(
+                    streamRTPManagerDesc,
+                    data,
+                    pkt.getBuffer(), pkt.getOffset(), pkt.getLength(),
+                    pkt.getFlags())
+                == pkt.getLength();
+    }
+
     /**
      * Writes an <tt>RTCPFeedbackMessage</tt> into a destination identified by
      * a specific <tt>MediaStream</tt>.
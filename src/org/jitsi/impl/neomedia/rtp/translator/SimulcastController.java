@@ -203,9 +203,14 @@ public boolean accept(byte[] buf, int off, int len)
         FrameDesc sourceFrameDesc
             = sourceTrack.findFrameDesc(buf, off, len);
 
-        int sourceIdx = sourceFrameDesc.getRTPEncoding().getIndex();
-
-        if (!sourceFrameDesc.isIndependent()
+        // The frame may be unknown if the packet is from an encoding which
+        // is not signaled or if it has been evicted from the frames of its
+        // encoding.
+        int sourceIdx = sourceFrameDesc == null
+            ? -1 : sourceFrameDesc.getRTPEncoding().getIndex();
+
+        if (sourceFrameDesc == null
+            || !sourceFrameDesc.isIndependent()
             || !sourceFrameDesc.getRTPEncoding().isActive()
             || sourceIdx == transformState.currentIdx)
         {
@@ -29,7 +29,7 @@
  */
 public class AbsSendTimeEngine
     extends SinglePacketTransformerAdapter
-    implements TransformEngine
+    implements ConditionalTransformEngine
 {
     /**
      * One billion.
@@ -98,6 +98,18 @@ public PacketTransformer getRTCPTransformer()
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This engine is active while the abs-send-time RTP header extension is
+     * enabled.
+     */
+    @Override
+    public boolean isActive()
+    {
+        return extensionID != -1;
+    }
+
     /**
      * Tries to find an RTP header extensions with an ID of {@link #extensionID}
      * in <tt>pkt</tt> and tries to replace its timestamp with one
@@ -29,7 +29,7 @@
  */
 public class CachingTransformer
     extends SinglePacketTransformerAdapter
-    implements TransformEngine,
+    implements ConditionalTransformEngine,
                RecurringRunnable
 {
     /**
@@ -154,6 +154,15 @@ public PacketTransformer getRTCPTransformer()
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isActive()
+    {
+        return enabled && !closed;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,38 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform;
+
+/**
+ * A <tt>TransformEngine</tt> which may have nothing to do for periods of time
+ * (e.g. while it is disabled). A <tt>TransformEngineChain</tt> does not pass
+ * packets through the <tt>PacketTransformer</tt>s of such an engine while it
+ * is not active if
+ * {@link TransformEngineChain#SKIP_INACTIVE_ENGINES_PNAME} is enabled.
+ */
+public interface ConditionalTransformEngine
+    extends TransformEngine
+{
+    /**
+     * Determines whether this <tt>TransformEngine</tt> currently has anything
+     * to do with the packets passed through its <tt>PacketTransformer</tt>s.
+     * Must be cheap since it is invoked for every packet.
+     *
+     * @return <tt>true</tt> if the packets are to be passed through the
+     * <tt>PacketTransformer</tt>s of this engine; <tt>false</tt> if this engine
+     * would leave them unchanged and may be skipped
+     */
+    public boolean isActive();
+}
@@ -51,7 +51,8 @@
  * @author George Politis
  * @author Lyubomir Marinov
  */
-public class DebugTransformEngine implements TransformEngine
+public class DebugTransformEngine
+    implements ConditionalTransformEngine
 {
     /**
      * The <tt>Logger</tt> used by the <tt>DebugTransformEngine</tt> class and
@@ -155,6 +156,23 @@ public SinglePacketTransformer getRTPTransformer()
         return rtpTransformer;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This engine is active while the logging of packets of
+     * <tt>PacketLoggingService.ProtocolName.ARBITRARY</tt> is enabled.
+     */
+    @Override
+    public boolean isActive()
+    {
+        PacketLoggingService pktLogging = _pktLogging;
+
+        return
+            pktLogging != null
+                && pktLogging.isLoggingEnabled(
+                        PacketLoggingService.ProtocolName.ARBITRARY);
+    }
+
     /**
      * Logs a specific {@code RawPacket} via the {@code PacketLoggingService}.
      *
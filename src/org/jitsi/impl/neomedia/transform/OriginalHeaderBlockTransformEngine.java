@@ -43,7 +43,7 @@
  */
 public class OriginalHeaderBlockTransformEngine
     extends SinglePacketTransformerAdapter
-    implements TransformEngine
+    implements ConditionalTransformEngine
 {
     /**
      * The <tt>Logger</tt> used by the
@@ -217,6 +217,17 @@ public PacketTransformer getRTCPTransformer()
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This engine is active while the OHB RTP header extension is enabled.
+     */
+    @Override
+    public boolean isActive()
+    {
+        return extensionID != -1;
+    }
+
     /**
      * Adds an abs-send-time RTP header extension with an ID of {@link
      * #extensionID} and value derived from the current system time to the
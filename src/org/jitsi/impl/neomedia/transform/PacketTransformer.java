@@ -21,6 +21,17 @@
  * Encapsulate the concept of packet transformation. Given an array of packets,
  * <tt>PacketTransformer</tt> can either "transform" each one of them, or
  * "reverse transform" (e.g. restore) each one of them.
+ * <p>
+ * The buffers of the packets given to a <tt>PacketTransformer</tt> are owned
+ * by their producers (e.g. the connectors which acquire them from
+ * {@link org.jitsi.util.ByteArrayPool} through
+ * {@link RawPacket#setPooledBuffer(int)}) and are reused once the
+ * transformed packets have been consumed. Consequently, a
+ * <tt>PacketTransformer</tt> must not keep a reference to the buffer of a
+ * packet after it returns (it may copy the data instead). A buffer which a
+ * <tt>PacketTransformer</tt> sets on a packet (e.g. through
+ * {@link RawPacket#grow(int)}) is never released by the producers.
+ * </p>
  *
  * @author Bing SU (nova.su@gmail.com)
  * @author Boris Grozev
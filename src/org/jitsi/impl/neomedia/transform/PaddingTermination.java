@@ -31,7 +31,7 @@
  */
 public class PaddingTermination
     extends SinglePacketTransformerAdapter
-    implements TransformEngine
+    implements ConditionalTransformEngine
 {
     /**
      * The size of the seen sequence numbers set to hold per SSRC. As long as
@@ -72,6 +72,18 @@ public PacketTransformer getRTCPTransformer()
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This engine is always active because it has to see every received
+     * packet in order to recognize the ones which it has already seen.
+     */
+    @Override
+    public boolean isActive()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -28,7 +28,7 @@
  */
 public class REDFilterTransformEngine
     extends SinglePacketTransformerAdapter
-    implements TransformEngine
+    implements ConditionalTransformEngine
 {
     /**
      * The <tt>Logger</tt> used by the <tt>REDTransformEngine</tt> class and
@@ -71,6 +71,15 @@ public void setEnabled(boolean enabled)
         this.enabled = enabled;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isActive()
+    {
+        return enabled && redPayloadType != -1;
+    }
+
     /**
      * {@inheritDoc}
      */
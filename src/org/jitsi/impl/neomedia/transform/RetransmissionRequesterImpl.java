@@ -15,47 +15,100 @@
  */
 package org.jitsi.impl.neomedia.transform;
 
-import java.io.*;
-import java.util.*;
-
 import org.jitsi.impl.neomedia.*;
 import org.jitsi.impl.neomedia.rtcp.*;
 import org.jitsi.impl.neomedia.rtp.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.neomedia.codec.*;
 import org.jitsi.service.neomedia.format.*;
+import org.jitsi.service.neomedia.stats.*;
 import org.jitsi.util.*;
+import org.jitsi.util.concurrent.*;
 
 /**
  * Detects lost RTP packets for a particular <tt>RtpChannel</tt> and requests
  * their retransmission by sending RTCP NACK packets.
  *
+ * The missing packets of each SSRC are kept in a bitmap indexed by sequence
+ * number and the NACK FCIs (PID and BLP) are generated directly from it. The
+ * retransmission requests of all instances are timed by a single, shared
+ * {@link HashedWheelTimer} and are re-sent after an interval derived from the
+ * RTT, so neither the number of threads nor the allocations grow with the
+ * number of streams or lost packets.
+ *
  * @author Boris Grozev
  * @author George Politis
  */
 public class RetransmissionRequesterImpl
     extends SinglePacketTransformerAdapter
-    implements TransformEngine, RetransmissionRequester
+    implements ConditionalTransformEngine, RetransmissionRequester
 {
+    /**
+     * The upper bound (exclusive) in milliseconds of the histogram of the
+     * recovery latencies. Longer latencies are counted in its last bucket.
+     */
+    private static final int LATENCY_HISTOGRAM_MS = 1000;
+
     /**
      * If more than <tt>MAX_MISSING</tt> consecutive packets are lost, we will
      * not request retransmissions for them, but reset our state instead.
      */
     private static final int MAX_MISSING = 100;
 
+    /**
+     * The upper bound in milliseconds of the interval after which another
+     * retransmission request is sent for a packet.
+     */
+    private static final int MAX_RE_REQUEST_AFTER = 1000;
+
+    /**
+     * The maximum number of FCIs in a single NACK packet.
+     */
+    private static final int MAX_NACK_FCI_COUNT = 64;
+
     /**
      * The maximum number of retransmission requests to be sent for a single
      * RTP packet.
      */
     private static final int MAX_REQUESTS = 10;
 
+    /**
+     * The lower bound in milliseconds of the interval after which another
+     * retransmission request is sent for a packet.
+     */
+    private static final int MIN_RE_REQUEST_AFTER = 20;
+
     /**
      * The interval after which another retransmission request will be sent
-     * for a packet, unless it arrives. Ideally this should not be a constant,
-     * but should be based on the RTT to the endpoint.
+     * for a packet, unless it arrives, when the RTT to the endpoint is not
+     * known.
      */
     private static final int RE_REQUEST_AFTER = 150;
 
+    /**
+     * The margin in milliseconds which is added to the RTT to get the interval
+     * after which another retransmission request is sent for a packet.
+     */
+    private static final int RE_REQUEST_MARGIN = 10;
+
+    /**
+     * The timer which times the retransmission requests of all
+     * <tt>RetransmissionRequesterImpl</tt>s.
+     */
+    private static final HashedWheelTimer timer
+        = new HashedWheelTimer(
+                RetransmissionRequesterImpl.class.getName(),
+                /* tickMs */ 5,
+                /* bucketCount */ 512);
+
+    /**
+     * The number of sequence numbers which are tracked per SSRC. A missing
+     * packet which falls behind the highest received sequence number by as
+     * many is given up. Must be a power of two greater than
+     * {@link #MAX_MISSING}.
+     */
+    private static final int WINDOW = 1024;
+
     /**
      * The <tt>Logger</tt> used by the <tt>RetransmissionRequesterImpl</tt> class
      * and its instances to print debug information.
@@ -67,7 +120,8 @@
      * Maps an SSRC to the <tt>Requester</tt> instance corresponding to it.
      * TODO: purge these somehow (RTCP BYE? Timeout?)
      */
-    private final Map<Long, Requester> requesters = new HashMap<>();
+    private final CopyOnWriteIntMap<Requester> requesters
+        = new CopyOnWriteIntMap<>();
 
     /**
      * Whether this {@link RetransmissionRequester} is enabled or not.
@@ -75,14 +129,36 @@
     private boolean enabled = true;
 
     /**
-     * The thread which requests retransmissions by sending RTCP NACK packets.
+     * Whether this <tt>PacketTransformer</tt> has been closed.
      */
-    private final Thread thread;
+    private boolean closed = false;
 
     /**
-     * Whether this <tt>PacketTransformer</tt> has been closed.
+     * The histogram of the recovery latencies i.e. of the times in
+     * milliseconds between the detection of the loss of a packet and its
+     * arrival.
      */
-    private boolean closed = false;
+    private final long[] latencyHistogram
+        = new long[LATENCY_HISTOGRAM_MS + 1];
+
+    /**
+     * The number of missing packets which have arrived after they were
+     * detected as lost.
+     */
+    private long recoveredPacketCount;
+
+    /**
+     * The number of retransmission requests which have been sent, counting
+     * each requested packet in each NACK.
+     */
+    private long requestedPacketCount;
+
+    /**
+     * The buffer into which the NACK packets are written before they are
+     * injected (which copies them). Only used by the thread of
+     * {@link #timer}.
+     */
+    private final byte[] nackBuf = new byte[12 + 4 * MAX_NACK_FCI_COUNT];
 
     /**
      * The {@link MediaStream} that this instance belongs to.
@@ -95,6 +171,13 @@
      */
     private long senderSsrc = -1;
 
+    /**
+     * The number of missing packets which have been given up because they
+     * have been requested {@link #MAX_REQUESTS} times, have fallen out of
+     * the window or have been dropped by a reset.
+     */
+    private long unrecoveredPacketCount;
+
     /**
      * Initializes a new <tt>RetransmissionRequesterImpl</tt> for the given
      * <tt>RtpChannel</tt>.
@@ -104,19 +187,6 @@ public RetransmissionRequesterImpl(MediaStream stream)
     {
         super(RTPPacketPredicate.INSTANCE);
         this.stream = stream;
-
-        thread
-            = new Thread()
-            {
-                @Override
-                public void run()
-                {
-                    runInRequesterThread();
-                }
-            };
-        thread.setDaemon(true);
-        thread.setName(RetransmissionRequesterImpl.class.getName());
-        thread.start();
     }
 
     /**
@@ -129,14 +199,14 @@ public RawPacket reverseTransform(RawPacket pkt)
     {
         if (enabled && !closed)
         {
-            Long ssrc;
+            int ssrc;
             int seq;
 
             MediaFormat format = stream.getFormat(pkt.getPayloadType());
             if (format == null)
             {
-                ssrc = null;
                 seq = -1;
+                ssrc = 0;
 
                 logger.warn("format_not_found" +
                     ",stream_hash=" + stream.hashCode());
@@ -150,13 +220,13 @@ else if (Constants.RTX.equalsIgnoreCase(format.getEncoding()))
 
                 if (encoding != null)
                 {
-                    ssrc = encoding.getPrimarySSRC();
+                    ssrc = (int) encoding.getPrimarySSRC();
                     seq = pkt.getOriginalSequenceNumber();
                 }
                 else
                 {
-                    ssrc = null;
                     seq = -1;
+                    ssrc = 0;
 
                     logger.warn("encoding_not_found" +
                         ",stream_hash=" + stream.hashCode());
@@ -164,28 +234,31 @@ else if (Constants.RTX.equalsIgnoreCase(format.getEncoding()))
             }
             else
             {
-                ssrc = pkt.getSSRCAsLong();
+                ssrc = pkt.getSSRC();
                 seq = pkt.getSequenceNumber();
             }
 
 
-            if (ssrc != null)
+            if (seq != -1)
             {
                 // TODO(gp) Don't NACK higher temporal layers.
-                Requester requester;
-                synchronized (requesters)
+                Requester requester = requesters.get(ssrc);
+
+                if (requester == null)
                 {
-                    requester = requesters.get(ssrc);
-                    if (requester == null)
+                    if (logger.isDebugEnabled())
                     {
-                        if (logger.isDebugEnabled())
-                        {
-                            logger.debug(
-                                "Creating new Requester for SSRC " + ssrc);
-                        }
-                        requester = new Requester(ssrc);
-                        requesters.put(ssrc, requester);
+                        logger.debug(
+                            "Creating new Requester for SSRC "
+                                + (ssrc & 0xffffffffL));
                     }
+                    requester = new Requester(ssrc & 0xffffffffL);
+
+                    Requester existing
+                        = requesters.putIfAbsent(ssrc, requester);
+
+                    if (existing != null)
+                        requester = existing;
                 }
                 requester.received(seq);
             }
@@ -201,6 +274,17 @@ else if (Constants.RTX.equalsIgnoreCase(format.getEncoding()))
     public void close()
     {
         closed = true;
+        for (Requester requester : requesters.values())
+            timer.cancel(requester.timeout);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isActive()
+    {
+        return enabled && !closed;
     }
 
     /**
@@ -213,125 +297,142 @@ public void enable(boolean enable)
     }
 
     /**
-     * Runs a loop which checks for any pending requests to be sent, sends them
-     * and then waits until another request is available or due.
+     * Gets the number of missing packets which have arrived after they were
+     * detected as lost.
+     *
+     * @return the number of recovered packets.
+     */
+    public synchronized long getRecoveredPacketCount()
+    {
+        return recoveredPacketCount;
+    }
+
+    /**
+     * Gets a percentile of the recovery latencies i.e. of the times between
+     * the detection of the loss of a packet and its arrival.
+     *
+     * @param percentile the percentile to get in the range <tt>(0, 100]</tt>.
+     * @return the specified percentile of the recovery latencies in
+     * milliseconds (capped at one second) or <tt>-1</tt> if no packet has
+     * been recovered.
      */
-    private void runInRequesterThread()
+    public synchronized long getRecoveryLatencyPercentile(double percentile)
     {
-        if (Thread.currentThread() != thread)
-            return;
+        if (recoveredPacketCount == 0)
+            return -1;
 
-        Map<Long, Set<Integer>> packetsToRequest = new HashMap<>();
+        long rank
+            = (long) Math.ceil(percentile / 100D * recoveredPacketCount);
+        long sum = 0;
 
-        while (true)
+        for (int ms = 0; ms < latencyHistogram.length; ms++)
         {
-            if (closed)
-            {
-                break;
-            }
+            sum += latencyHistogram[ms];
+            if (sum >= rank)
+                return ms;
+        }
+        return LATENCY_HISTOGRAM_MS;
+    }
 
-            synchronized (thread)
-            {
-                // Check when the next request is due. -1 means there is no
-                // request scheduled.
-                long nextRequestAt = -1;
-                synchronized (requesters)
-                {
-                    for (Requester requester : requesters.values())
-                    {
-                        if (requester.nextRequestAt != -1)
-                        {
-                            if (nextRequestAt == -1
-                                    || nextRequestAt > requester.nextRequestAt)
-                            {
-                                nextRequestAt = requester.nextRequestAt;
-                            }
-                        }
-                    }
-                }
+    /**
+     * Gets the number of retransmission requests which have been sent,
+     * counting each requested packet in each NACK.
+     *
+     * @return the number of retransmission requests which have been sent.
+     */
+    public synchronized long getRequestedPacketCount()
+    {
+        return requestedPacketCount;
+    }
 
-                long now = System.currentTimeMillis();
-                if (nextRequestAt == -1 || nextRequestAt - now > 0)
-                {
-                    try
-                    {
-                        if (nextRequestAt == -1)
-                        {
-                            thread.wait(1000);
-                            continue;
-                        }
-                        else
-                        {
-                            thread.wait(nextRequestAt - now);
-                        }
-                    }
-                    catch (InterruptedException ie)
-                    {
-                        break;
-                    }
-                }
-                //else the time has already come
-            }
+    /**
+     * Gets the number of missing packets which have been given up.
+     *
+     * @return the number of unrecovered packets.
+     */
+    public synchronized long getUnrecoveredPacketCount()
+    {
+        return unrecoveredPacketCount;
+    }
 
-            if (!enabled || senderSsrc == -1)
-                continue;
+    /**
+     * Gets the interval after which another retransmission request is sent
+     * for a packet.
+     *
+     * @return the interval in milliseconds after which another retransmission
+     * request is sent for a packet.
+     */
+    private long getReRequestInterval()
+    {
+        MediaStreamStats2 stats = stream.getMediaStreamStats();
+        long rtt = stats == null ? -1 : stats.getSendStats().getRtt();
 
-            synchronized (requesters)
-            {
-                for (Map.Entry<Long, Requester> entry : requesters.entrySet())
-                {
-                    Requester requester = entry.getValue();
-                    Set<Integer> missingPackets = requester.getMissing();
-                    if (missingPackets != null && !missingPackets.isEmpty())
-                    {
-                        packetsToRequest.put(requester.ssrc, missingPackets);
-                    }
-                }
-            }
+        if (rtt <= 0)
+            return RE_REQUEST_AFTER;
 
-            for (Map.Entry<Long, Set<Integer>> entry : packetsToRequest.entrySet())
-            {
-                long sourceSsrc = entry.getKey();
-                NACKPacket nack
-                    = new NACKPacket(senderSsrc, sourceSsrc, entry.getValue());
-                RawPacket pkt;
+        return
+            Math.min(
+                    Math.max(rtt + RE_REQUEST_MARGIN, MIN_RE_REQUEST_AFTER),
+                    MAX_RE_REQUEST_AFTER);
+    }
 
-                try
-                {
-                    pkt = nack.toRawPacket();
-                }
-                catch (IOException ioe)
-                {
-                    pkt = null;
-                    logger.warn("Failed to create a NACK packet: " + ioe);
-                }
+    /**
+     * Sends a NACK packet with the FCIs in {@link #nackBuf}.
+     *
+     * @param sourceSsrc the SSRC of the media source.
+     * @param fciCount the number of FCIs in {@link #nackBuf}.
+     */
+    private void sendNack(long sourceSsrc, int fciCount)
+    {
+        int len = 12 + 4 * fciCount;
+        byte[] buf = nackBuf;
 
-                if (pkt != null)
-                {
-                    try
-                    {
-                        if (logger.isTraceEnabled())
-                        {
-                            logger.trace("Sending a NACK: " + nack);
-                        }
-                        stream.injectPacket(
-                                pkt,
-                                /* data */ false,
-                                /* after */ null);
-                    }
-                    catch (TransmissionFailedException e)
-                    {
-                        logger.warn(
-                                "Failed to inject packet in MediaStream: " + e);
-                    }
-                }
-            }
+        buf[0] = (byte) (0x80 | RTCPPacketView.NACK_FMT);
+        buf[1] = (byte) RTCPPacketView.RTPFB;
+        RTPUtils.writeShort(buf, 2, (short) (len / 4 - 1));
+        RTPUtils.writeInt(buf, 4, (int) senderSsrc);
+        RTPUtils.writeInt(buf, 8, (int) sourceSsrc);
 
-            packetsToRequest.clear();
+        try
+        {
+            if (logger.isTraceEnabled())
+            {
+                logger.trace(
+                        "Sending a NACK for SSRC " + sourceSsrc + " with "
+                            + fciCount + " FCIs.");
+            }
+            stream.injectPacket(
+                    new RawPacket(buf, 0, len),
+                    /* data */ false,
+                    /* after */ null);
+        }
+        catch (TransmissionFailedException e)
+        {
+            logger.warn("Failed to inject packet in MediaStream: " + e);
         }
-
     }
 
+    /**
+     * Updates the statistics of this instance with the outcome of a missing
+     * packet.
+     *
+     * @param recoveryLatency the time in milliseconds between the detection of
+     * the loss of the packet and its arrival or <tt>-1</tt> if the packet has
+     * been given up.
+     */
+    private synchronized void updateStatistics(long recoveryLatency)
+    {
+        if (recoveryLatency < 0)
+        {
+            unrecoveredPacketCount++;
+        }
+        else
+        {
+            recoveredPacketCount++;
+            latencyHistogram[
+                    (int) Math.min(recoveryLatency, LATENCY_HISTOGRAM_MS)]++;
+        }
+    }
 
     /**
      * Implements {@link TransformEngine#getRTPTransformer()}.
@@ -355,6 +456,7 @@ public PacketTransformer getRTCPTransformer()
      * Handles packets for a single SSRC.
      */
     private class Requester
+        implements Runnable
     {
         /**
          * The SSRC for this instance.
@@ -367,15 +469,40 @@ public PacketTransformer getRTCPTransformer()
         private int lastReceivedSeq = -1;
 
         /**
-         * The time that the next request for this SSRC should be sent.
+         * The times in milliseconds at which the losses of the missing packets
+         * were detected.
+         */
+        private final long[] lostAt = new long[WINDOW];
+
+        /**
+         * The bitmap of the missing packets indexed by sequence number modulo
+         * {@link #WINDOW}.
          */
-        private long nextRequestAt = -1;
+        private final long[] missing = new long[WINDOW / 64];
 
         /**
-         * The set of active requests for this SSRC. The keys are the sequence
-         * numbers.
+         * The number of bits set in {@link #missing}.
          */
-        private final Map<Integer, Request> requests = new HashMap<>();
+        private int missingCount;
+
+        /**
+         * The times in milliseconds at which the next retransmission requests
+         * for the missing packets are due.
+         */
+        private final long[] nextRequestAt = new long[WINDOW];
+
+        /**
+         * The <tt>Timeout</tt> which runs this <tt>Requester</tt> when the
+         * next retransmission request is due.
+         */
+        private final HashedWheelTimer.Timeout timeout
+            = new HashedWheelTimer.Timeout(this);
+
+        /**
+         * The numbers of retransmission requests which have been sent for the
+         * missing packets.
+         */
+        private final byte[] timesRequested = new byte[WINDOW];
 
         /**
          * Initializes a new <tt>Requester</tt> instance for the given SSRC.
@@ -385,6 +512,32 @@ private Requester(long ssrc)
             this.ssrc = ssrc;
         }
 
+        /**
+         * Clears the missing bit of a specific sequence number.
+         *
+         * @param index the index of the sequence number in the window.
+         * @param recoveryLatency the recovery latency to record or <tt>-1</tt>
+         * if the packet is given up.
+         */
+        private void clearMissing(int index, long recoveryLatency)
+        {
+            missing[index >> 6] &= ~(1L << index);
+            missingCount--;
+            updateStatistics(recoveryLatency);
+        }
+
+        /**
+         * Determines whether the packet at a specific index in the window is
+         * missing.
+         *
+         * @param index the index of the sequence number in the window.
+         * @return <tt>true</tt> if the packet at <tt>index</tt> is missing.
+         */
+        private boolean isMissing(int index)
+        {
+            return (missing[index >> 6] & (1L << index)) != 0;
+        }
+
         /**
          * Handles a received RTP packet with a specific sequence number.
          * @param seq the RTP sequence number of the received packet.
@@ -401,161 +554,196 @@ synchronized private void received(int seq)
             if (diff <= 0)
             {
                 // An older packet, possibly already requested.
-                // We don't update nextRequestAt here. The reading thread might
-                // wake up unnecessarily and do some extra work, but that's OK.
-                Request r = requests.remove(seq);
-                if (r != null && logger.isDebugEnabled())
-                {
-                    long rtt
-                        = stream.getMediaStreamStats().getSendStats().getRtt();
-                    if (rtt > 0)
-                    {
+                int index = seq & (WINDOW - 1);
 
-                        // firstRequestSentAt is if we created a Request, but
-                        // haven't yet sent a NACK. Assume a delta of 0 in that
-                        // case.
-                        long firstRequestSentAt = r.firstRequestSentAt;
-                        long delta
-                            = firstRequestSentAt > 0
-                                ? System.currentTimeMillis()
-                                        - r.firstRequestSentAt
-                                : 0;
-
-                        logger.debug(Logger.Category.STATISTICS,
-                                     "retr_received,stream=" + stream
-                                         .hashCode() +
-                                         " delay=" + delta +
-                                         ",rtt=" + rtt);
-                    }
+                if (-diff < WINDOW && isMissing(index))
+                {
+                    clearMissing(
+                            index,
+                            System.currentTimeMillis() - lostAt[index]);
                 }
             }
             else if (diff == 1)
             {
                 // The very next packet, as expected.
                 lastReceivedSeq = seq;
+                forget(seq);
             }
             else if (diff <= MAX_MISSING)
             {
-                for (int missing = (lastReceivedSeq + 1) % (1<<16);
-                     missing != seq;
-                     missing = (missing + 1) % (1<<16))
+                long now = System.currentTimeMillis();
+
+                for (int lost = (lastReceivedSeq + 1) & 0xffff;
+                     lost != seq;
+                     lost = (lost + 1) & 0xffff)
                 {
-                    Request request = new Request(missing);
-                    requests.put(missing, request);
+                    int index = lost & (WINDOW - 1);
+
+                    forget(lost);
+                    missing[index >> 6] |= 1L << index;
+                    missingCount++;
+                    lostAt[index] = now;
+                    nextRequestAt[index] = now;
+                    timesRequested[index] = 0;
                 }
 
                 lastReceivedSeq = seq;
-                nextRequestAt = 0;
-
-                synchronized (thread)
-                {
-                    thread.notifyAll();
-                }
+                forget(seq);
+                timer.schedule(timeout, 0);
             }
             else // if (diff > MAX_MISSING)
             {
                 // Too many packets missing. Reset.
-                lastReceivedSeq = seq;
                 if (logger.isDebugEnabled())
                 {
                     logger.debug("Resetting retransmission requester state. "
                                  + "SSRC: " + ssrc
                                  + ", last received: " + lastReceivedSeq
                                  + ", current: " + seq
-                                 + ". Removing " + requests.size()
+                                 + ". Removing " + missingCount
                                  + " unsatisfied requests.");
                 }
-                requests.clear();
-                nextRequestAt = -1;
+                lastReceivedSeq = seq;
+                for (int i = 0; i < WINDOW && missingCount > 0; i++)
+                {
+                    if (isMissing(i))
+                        clearMissing(i, -1);
+                }
+                timer.cancel(timeout);
             }
 
         }
 
         /**
-         * Returns a set of RTP sequence numbers which are considered still MIA,
-         * and for which a retransmission request needs to be sent.
-         * Assumes that the returned set of sequence numbers will be requested
-         * immediately and updates the state accordingly (i.e. increments the
-         * timesRequested counters and sets the time of next request).
+         * Gives up the packet which occupied the slot of a specific sequence
+         * number in the window before it.
          *
-         * @return a set of RTP sequence numbers which are considered still MIA,
-         * and for which a retransmission request needs to be sent.
+         * @param seq the sequence number which is about to take its slot in
+         * the window.
          */
-        synchronized private Set<Integer> getMissing()
+        private void forget(int seq)
         {
-            long now = System.currentTimeMillis();
-            Set<Integer> missingPackets = null;
+            int index = seq & (WINDOW - 1);
 
-            if (nextRequestAt == -1 || nextRequestAt > now)
-                return null;
+            if (isMissing(index))
+                clearMissing(index, -1);
+        }
 
-            for (Iterator<Map.Entry<Integer,Request>> iter
-                        = requests.entrySet().iterator();
-                    iter.hasNext();)
+        /**
+         * Sends the retransmission requests which are due and schedules this
+         * <tt>Requester</tt> to run again when the next one is due.
+         */
+        @Override
+        public synchronized void run()
+        {
+            if (closed || missingCount == 0)
+                return;
+
+            long interval = getReRequestInterval();
+
+            if (!enabled || senderSsrc == -1)
             {
-                Request request = iter.next().getValue();
+                timer.schedule(timeout, interval);
+                return;
+            }
 
-                if (missingPackets == null)
-                    missingPackets = new HashSet<>();
+            long now = System.currentTimeMillis();
+            long nextDue = Long.MAX_VALUE;
+            int fciCount = 0;
+            int pid = -1;
+            int blp = 0;
+            int requested = 0;
+            // The window holds the WINDOW sequence numbers up to and including
+            // lastReceivedSeq.
+            int oldest = (lastReceivedSeq + 1 - WINDOW) & 0xffff;
+
+            // Walk the window from the oldest sequence number and merge the
+            // due packets into PID+BLP pairs.
+            for (int i = 0; i < WINDOW; i++)
+            {
+                int seq = (oldest + i) & 0xffff;
+                int index = seq & (WINDOW - 1);
 
-                missingPackets.add(request.seq);
-                request.timesRequested++;
+                if ((index & 63) == 0 && missing[index >> 6] == 0)
+                {
+                    i += 63;
+                    continue;
+                }
+                if (!isMissing(index))
+                    continue;
+                if (nextRequestAt[index] > now)
+                {
+                    nextDue = Math.min(nextDue, nextRequestAt[index]);
+                    continue;
+                }
 
-                if (request.timesRequested == 1)
+                if (pid != -1 && RTPUtils.sequenceNumberDiff(seq, pid) <= 16)
                 {
-                    request.firstRequestSentAt = now;
+                    blp |= 1 << (RTPUtils.sequenceNumberDiff(seq, pid) - 1);
                 }
-                else if (request.timesRequested == MAX_REQUESTS)
+                else
+                {
+                    if (pid != -1)
+                    {
+                        writeFCI(fciCount++, pid, blp);
+                        if (fciCount == MAX_NACK_FCI_COUNT)
+                        {
+                            sendNack(ssrc, fciCount);
+                            fciCount = 0;
+                        }
+                    }
+                    pid = seq;
+                    blp = 0;
+                }
+
+                requested++;
+                if (++timesRequested[index] >= MAX_REQUESTS)
                 {
                     if (logger.isDebugEnabled())
                     {
                         logger.debug(
                             "Sending the last NACK for SSRC=" + ssrc + " seq="
-                                + request.seq + ". "
+                                + seq + ". "
                                 + "Time since the first request: "
-                                + (now - request.firstRequestSentAt));
+                                + (now - lostAt[index]));
                     }
-                    iter.remove();
+                    clearMissing(index, -1);
+                }
+                else
+                {
+                    nextRequestAt[index] = now + interval;
+                    nextDue = Math.min(nextDue, now + interval);
                 }
-
             }
-
-            nextRequestAt = (requests.size() > 0) ? now + RE_REQUEST_AFTER : -1;
-
-            return missingPackets;
+            if (pid != -1)
+            {
+                writeFCI(fciCount++, pid, blp);
+                sendNack(ssrc, fciCount);
+            }
+            if (requested > 0)
+            {
+                synchronized (RetransmissionRequesterImpl.this)
+                {
+                    requestedPacketCount += requested;
+                }
+            }
+            if (nextDue != Long.MAX_VALUE)
+                timer.schedule(timeout, nextDue - now);
         }
-    }
-
-    /**
-     * Represents a request for the retransmission of a specific RTP packet.
-     */
-    private static class Request
-    {
-        /**
-         * The RTP sequence number.
-         */
-        final int seq;
-
-        /**
-         * The system time at the moment a retransmission request for this
-         * packet was first sent.
-         */
-        long firstRequestSentAt = -1;
 
         /**
-         * The number of times that a retransmission request for this packet
-         * has been sent.
-         */
-        int timesRequested = 0;
-
-        /**
-         * Initializes a new <tt>Request</tt> instance with the given RTP
-         * sequence number.
-         * @param seq the RTP sequence number.
+         * Writes a NACK FCI into {@link #nackBuf}.
+         *
+         * @param i the index of the FCI.
+         * @param pid the PID of the FCI.
+         * @param blp the BLP of the FCI.
          */
-        Request(int seq)
+        private void writeFCI(int i, int pid, int blp)
         {
-            this.seq = seq;
+            int off = 12 + 4 * i;
+
+            RTPUtils.writeShort(nackBuf, off, (short) pid);
+            RTPUtils.writeShort(nackBuf, off + 2, (short) blp);
         }
     }
 
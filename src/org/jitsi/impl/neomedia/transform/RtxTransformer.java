@@ -471,93 +471,74 @@ private RawPacketCache getCache()
     }
 
     /**
+     * Handles a specific RTCP NACK packet by retransmitting the requested
+     * packets which are in the cache. Reads the lost sequence numbers straight
+     * from the FCI entries of the packet.
      *
-     * @param mediaSSRC
-     * @param lostPackets
+     * @param nack the view positioned on the NACK packet
      */
-    private void nackReceived(long mediaSSRC, Collection<Integer> lostPackets)
+    private void nackReceived(RTCPPacketView nack)
     {
+        long mediaSSRC = nack.getSourceSSRC();
+        int nackCount = nack.getNACKCount();
+
         if (logger.isDebugEnabled())
         {
+            StringBuilder lostPackets = new StringBuilder("[");
+
+            for (int i = 0; i < nackCount; i++)
+            {
+                int pid = nack.getNACKPacketID(i);
+                int blp = nack.getNACKBitmask(i);
+
+                lostPackets.append(lostPackets.length() == 1 ? "" : ", ")
+                    .append(pid);
+                for (int j = 0; j < 16; j++)
+                {
+                    if ((blp & (1 << j)) != 0)
+                        lostPackets.append(", ").append((pid + 1 + j) & 0xffff);
+                }
+            }
             logger.debug(Logger.Category.STATISTICS,
                 "nack_received,stream=" + mediaStream.hashCode()
                     + " ssrc=" + mediaSSRC
-                    + ",lost_packets=" + lostPackets);
+                    + ",lost_packets=" + lostPackets.append(']'));
         }
 
         RawPacketCache cache = getCache();
+        boolean missing = false;
 
         if (cache != null)
         {
-            // Retransmitted packets need to be inserted:
-            // * after SSRC-rewriting (the external transform engine)
-            // * after statistics (we update them explicitly)
-            // * before abs-send-time
-            // * before SRTP
-            // We use 'this', because the RtxTransformer happens to be in the
-            // correct place in the chain. See
-            // MediaStreamImpl#createTransformEngineChain.
-            // The position of the packet cache does not matter, because we
-            // update it explicitly.
-            TransformEngine after = this;
-
             long rtt = mediaStream.getMediaStreamStats().getSendStats().getRtt();
             long now = System.currentTimeMillis();
 
-            for (Iterator<Integer> i = lostPackets.iterator(); i.hasNext();)
+            for (int i = 0; i < nackCount; i++)
             {
-                int seq = i.next();
-                RawPacketCache.Container container
-                    = cache.getContainer(mediaSSRC, seq);
+                int pid = nack.getNACKPacketID(i);
+                int blp = nack.getNACKBitmask(i);
 
-
-                MediaStreamStats2Impl stats
-                    = mediaStream.getMediaStreamStats();
-                if (container != null)
+                if (!handleLostPacket(cache, mediaSSRC, pid, rtt, now))
+                    missing = true;
+                for (int j = 0; j < 16; j++)
                 {
-                    // Cache hit.
-                    long delay = now - container.timeAdded;
-                    boolean send = (rtt == -1) ||
-                        (delay >= Math.min(rtt * 0.9, rtt - 5));
-
-                    if (logger.isDebugEnabled())
+                    if ((blp & (1 << j)) != 0
+                            && !handleLostPacket(
+                                    cache,
+                                    mediaSSRC, (pid + 1 + j) & 0xffff,
+                                    rtt, now))
                     {
-                        logger.debug(Logger.Category.STATISTICS,
-                            "retransmitting,stream=" + mediaStream.hashCode()
-                                + " ssrc=" + mediaSSRC
-                                + ",seq=" + seq
-                                + ",send=" + send);
+                        missing = true;
                     }
-
-                    if (send && retransmit(container.pkt, after))
-                    {
-                        stats.rtpPacketRetransmitted(
-                            mediaSSRC, container.pkt.getLength());
-
-                        // We just retransmitted the packet. Update its
-                        // timestamp so that we use the new timestamp when we
-                        // handle subsequent NACKs.
-                        cache.updateTimestamp(mediaSSRC, seq, now);
-
-                        i.remove();
-                    }
-
-                    if (!send)
-                    {
-                        stats.rtpPacketNotRetransmitted(
-                            mediaSSRC, container.pkt.getLength());
-                        i.remove();
-                    }
-
-                }
-                else
-                {
-                    stats.rtpPacketCacheMiss(mediaSSRC);
                 }
             }
         }
+        else
+        {
+            missing = nackCount != 0;
+        }
 
-        if (!lostPackets.isEmpty())
+        if (missing)
         {
             // If retransmission requests are enabled, videobridge assumes
             // the responsibility of requesting missing packets.
@@ -565,6 +546,89 @@ private void nackReceived(long mediaSSRC, Collection<Integer> lostPackets)
         }
     }
 
+    /**
+     * Retransmits a specific packet requested by an RTCP NACK if it is in a
+     * specific cache and enough time has passed since it was last sent.
+     *
+     * @param cache the <tt>RawPacketCache</tt> to look the packet up in
+     * @param mediaSSRC the SSRC of the requested packet
+     * @param seq the sequence number of the requested packet
+     * @param rtt the round-trip time in milliseconds or <tt>-1</tt> if unknown
+     * @param now the current time in milliseconds
+     * @return <tt>true</tt> if the request has been handled (the packet has
+     * been retransmitted or it is too early to retransmit it); otherwise,
+     * <tt>false</tt>
+     */
+    private boolean handleLostPacket(
+            RawPacketCache cache,
+            long mediaSSRC, int seq,
+            long rtt, long now)
+    {
+        // The container is leased rather than copied. The packet is
+        // copied anyway when it is (encapsulated in RTX and) injected.
+        RawPacketCache.Container container
+            = cache.acquireContainer(mediaSSRC, seq);
+        MediaStreamStats2Impl stats = mediaStream.getMediaStreamStats();
+
+        if (container == null)
+        {
+            stats.rtpPacketCacheMiss(mediaSSRC);
+            return false;
+        }
+
+        try
+        {
+            // Cache hit.
+            long delay = now - container.timeAdded;
+            boolean send = (rtt == -1) ||
+                (delay >= Math.min(rtt * 0.9, rtt - 5));
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(Logger.Category.STATISTICS,
+                    "retransmitting,stream="
+                        + mediaStream.hashCode()
+                        + " ssrc=" + mediaSSRC
+                        + ",seq=" + seq
+                        + ",send=" + send);
+            }
+
+            // Retransmitted packets need to be inserted:
+            // * after SSRC-rewriting (the external transform engine)
+            // * after statistics (we update them explicitly)
+            // * before abs-send-time
+            // * before SRTP
+            // We use 'this', because the RtxTransformer happens to be in the
+            // correct place in the chain. See
+            // MediaStreamImpl#createTransformEngineChain.
+            // The position of the packet cache does not matter, because we
+            // update it explicitly.
+            if (send && retransmit(container.pkt, this))
+            {
+                stats.rtpPacketRetransmitted(
+                    mediaSSRC, container.pkt.getLength());
+
+                // We just retransmitted the packet. Update its
+                // timestamp so that we use the new timestamp when
+                // we handle subsequent NACKs.
+                cache.updateTimestamp(mediaSSRC, seq, now);
+                return true;
+            }
+
+            if (!send)
+            {
+                stats.rtpPacketNotRetransmitted(
+                    mediaSSRC, container.pkt.getLength());
+                return true;
+            }
+            return false;
+        }
+        finally
+        {
+            cache.releaseContainer(container);
+        }
+    }
+
     /**
      * Sends padding packets with the RTX SSRC associated to the media SSRC that
      * is passed as a parameter. It implements packet triplication.
@@ -639,35 +703,44 @@ public int sendPadding(long ssrc, int bytes)
             return bytes;
         }
 
-        // XXX this constant is not great, however the final place of the stream
-        // protection strategy is not clear at this point so I expect the code
-        // will change before taking its final form.
-        for (int i = 0; i < 2; i++)
+        try
         {
-            Iterator<RawPacketCache.Container> it = lastNPackets.iterator();
-
-            while (it.hasNext())
+            // XXX this constant is not great, however the final place of the
+            // stream protection strategy is not clear at this point so I
+            // expect the code will change before taking its final form.
+            for (int i = 0; i < 2; i++)
             {
-                RawPacketCache.Container container = it.next();
-                RawPacket pkt = container.pkt;
-                // Containers are recycled/reused, so we must check if the
-                // packet is still there.
-                if (pkt != null)
+                Iterator<RawPacketCache.Container> it
+                    = lastNPackets.iterator();
+
+                while (it.hasNext())
                 {
-                    int len = container.pkt.getLength();
-                    if (bytes - len > 0)
-                    {
-                        retransmit(container.pkt, this);
-                        bytes -= len;
-                    }
-                    else
+                    RawPacketCache.Container container = it.next();
+                    // The containers are leased so their packets are neither
+                    // modified nor reused until they are released.
+                    RawPacket pkt = container.pkt;
+
+                    if (pkt != null)
                     {
-                        // Don't break as we might be able to squeeze in the
-                        // next packet.
+                        int len = pkt.getLength();
+                        if (bytes - len > 0)
+                        {
+                            retransmit(pkt, this);
+                            bytes -= len;
+                        }
+                        else
+                        {
+                            // Don't break as we might be able to squeeze in
+                            // the next packet.
+                        }
                     }
                 }
             }
         }
+        finally
+        {
+            cache.releaseContainers(lastNPackets);
+        }
 
         return bytes;
     }
@@ -708,6 +781,12 @@ public RawPacket reverseTransform(RawPacket pkt)
     private class RTCPTransformer
         extends SinglePacketTransformerAdapter
     {
+        /**
+         * The <tt>RTCPPacketView</tt> which this instance reuses to walk
+         * received compound RTCP packets.
+         */
+        private final RTCPPacketView view = new RTCPPacketView();
+
         /**
          * Ctor.
          */
@@ -723,16 +802,13 @@ public RawPacket reverseTransform(RawPacket pkt)
         @Override
         public RawPacket reverseTransform(RawPacket pkt)
         {
-            RTCPIterator it = new RTCPIterator(pkt);
-            while (it.hasNext())
+            synchronized (view)
             {
-                ByteArrayBuffer next = it.next();
-                if (NACKPacket.isNACKPacket(next))
+                view.wrap(pkt);
+                while (view.next())
                 {
-                    Collection<Integer> lostPackets
-                        = NACKPacket.getLostPackets(next);
-                    long mediaSSRC = NACKPacket.getSourceSSRC(next);
-                    nackReceived(mediaSSRC, lostPackets);
+                    if (view.isNACK())
+                        nackReceived(view);
                 }
             }
 
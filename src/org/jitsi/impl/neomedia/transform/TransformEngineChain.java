@@ -17,7 +17,9 @@
 
 import java.util.*;
 
+import org.jitsi.service.libjitsi.*;
 import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
 
 /**
  * The engine chain allows using numerous <tt>TransformEngine</tt>s on a single
@@ -29,6 +31,64 @@
 public class TransformEngineChain
     implements TransformEngine
 {
+    /**
+     * The name of the property which specifies whether the
+     * <tt>PacketTransformerChain</tt>s are to skip the engines which are not
+     * active (see {@link ConditionalTransformEngine}) and to stop as soon as
+     * there are no packets left to transform. The engines which do run still
+     * read the headers of the packets on their own.
+     */
+    public static final String SKIP_INACTIVE_ENGINES_PNAME
+        = TransformEngineChain.class.getName() + ".SKIP_INACTIVE_ENGINES";
+
+    /**
+     * The indicator which determines whether the
+     * <tt>PacketTransformerChain</tt>s are to skip the engines which are not
+     * active and to stop as soon as there are no packets left to transform.
+     */
+    private static final boolean SKIP_INACTIVE_ENGINES
+        = ConfigUtils.getBoolean(
+                LibJitsi.getConfigurationService(),
+                SKIP_INACTIVE_ENGINES_PNAME,
+                false);
+
+    /**
+     * Determines whether a specific array of <tt>RawPacket</tt>s has no
+     * packets left to transform.
+     *
+     * @param pkts the array of <tt>RawPacket</tt>s to check
+     * @return <tt>true</tt> if <tt>pkts</tt> is <tt>null</tt> or contains
+     * <tt>null</tt> elements only; otherwise, <tt>false</tt>
+     */
+    private static boolean isEmpty(RawPacket[] pkts)
+    {
+        if (pkts != null)
+        {
+            for (RawPacket pkt : pkts)
+            {
+                if (pkt != null)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether a specific <tt>TransformEngine</tt> may be skipped by
+     * a <tt>PacketTransformerChain</tt>.
+     *
+     * @param engine the <tt>TransformEngine</tt> to check
+     * @return <tt>true</tt> if <tt>engine</tt> is a
+     * <tt>ConditionalTransformEngine</tt> which is not active; otherwise,
+     * <tt>false</tt>
+     */
+    private static boolean isInactive(TransformEngine engine)
+    {
+        return
+            engine instanceof ConditionalTransformEngine
+                && !((ConditionalTransformEngine) engine).isActive();
+    }
+
     /**
      * The sequence of <tt>TransformEngine</tt>s whose
      * <tt>PacketTransformer</tt>s this engine chain will be applying to RTP and
@@ -370,6 +430,15 @@ public RawPacket[] reverseTransform(RawPacket pkts[])
             for (int i = engineChain.length - 1 ; i >= 0; i--)
             {
                 TransformEngine engine = engineChain[i];
+
+                if (SKIP_INACTIVE_ENGINES)
+                {
+                    if (isEmpty(pkts))
+                        break;
+                    if (isInactive(engine))
+                        continue;
+                }
+
                 PacketTransformer pTransformer
                     = rtp
                         ? engine.getRTPTransformer()
@@ -411,6 +480,9 @@ public RawPacket[] transform(RawPacket[] pkts)
          */
         public RawPacket[] transform(RawPacket[] pkts, TransformEngine after)
         {
+            if (SKIP_INACTIVE_ENGINES)
+                return skippingTransform(pkts, after);
+
             // If the specified after is in the transformation chain, the
             // transformation is to start after it.
             boolean lookForAfter
@@ -442,5 +514,59 @@ public RawPacket[] transform(RawPacket[] pkts, TransformEngine after)
 
             return pkts;
         }
+
+        /**
+         * Implements {@link #transform(RawPacket[], TransformEngine)} when
+         * {@link #SKIP_INACTIVE_ENGINES} is enabled i.e. locates
+         * {@code after} by identity, skips the engines which are not active and
+         * stops as soon as there are no packets left to transform.
+         *
+         * @param pkts the array of {@code RawPacket}s to transform
+         * @param after the {@code TransformEngine} in the chain after which the
+         * transformation is to begin
+         * @return the array of {@code RawPacket}s that is the result of the
+         * transformation of {@code pkts}
+         */
+        private RawPacket[] skippingTransform(
+                RawPacket[] pkts,
+                TransformEngine after)
+        {
+            TransformEngine[] engineChain
+                = TransformEngineChain.this.engineChain;
+            int start = 0;
+
+            if (after != null)
+            {
+                for (int i = 0; i < engineChain.length; i++)
+                {
+                    if (engineChain[i] == after)
+                    {
+                        start = i + 1;
+                        break;
+                    }
+                }
+            }
+
+            for (int i = start; i < engineChain.length; i++)
+            {
+                if (isEmpty(pkts))
+                    break;
+
+                TransformEngine engine = engineChain[i];
+
+                if (isInactive(engine))
+                    continue;
+
+                PacketTransformer transformer
+                    = rtp
+                        ? engine.getRTPTransformer()
+                        : engine.getRTCPTransformer();
+
+                if (transformer != null)
+                    pkts = transformer.transform(pkts);
+            }
+
+            return pkts;
+        }
     }
 }
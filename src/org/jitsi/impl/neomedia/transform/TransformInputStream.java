@@ -66,8 +66,33 @@ protected TransformInputStream(T socket)
     @Override
     protected RawPacket[] createRawPacket(DatagramPacket datagramPacket)
     {
-        RawPacket[] pkts = super.createRawPacket(datagramPacket);
+        return reverseTransform(super.createRawPacket(datagramPacket));
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Reverse-transforms the whole batch with a single invocation of the
+     * associated <tt>PacketTransformer</tt>.
+     */
+    @Override
+    protected RawPacket[] createRawPacket(
+            DatagramPacket[] datagramPackets,
+            int count)
+    {
+        return
+            reverseTransform(super.createRawPacket(datagramPackets, count));
+    }
+
+    /**
+     * Reverse-transforms a specific array of received <tt>RawPacket</tt>s
+     * using the associated <tt>PacketTransformer</tt> (if any).
+     *
+     * @param pkts the received <tt>RawPacket</tt>s
+     * @return the reverse-transformed <tt>RawPacket</tt>s
+     */
+    private RawPacket[] reverseTransform(RawPacket[] pkts)
+    {
         // Don't try to transform invalid (e.g. empty) packets.
         for (int i = 0; i < pkts.length; i++)
         {
@@ -0,0 +1,747 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.impl.neomedia.*;
+import org.jitsi.impl.neomedia.rtcp.*;
+import org.jitsi.impl.neomedia.rtp.remotebitrateestimator.*;
+import org.jitsi.impl.neomedia.rtp.sendsidebandwidthestimation.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.service.neomedia.rtp.*;
+import org.jitsi.util.*;
+
+/**
+ * Implements transport-wide congestion control
+ * (draft-holmer-rmcat-transport-wide-cc-extensions-01) for the
+ * <tt>MediaStream</tt>s of a transport. The transport-wide sequence numbers
+ * are shared by all packets sent on the transport so a single instance is
+ * shared by (the <tt>TransformEngineChain</tt>s of) all
+ * <tt>MediaStream</tt>s bundled on it.
+ *
+ * On the send side, every outgoing RTP packet is stamped with a transport-wide
+ * sequence number and its send time and size are recorded. The transport-cc
+ * feedback received from the remote endpoint is matched against these records
+ * and fed into a {@link DelayBasedBandwidthEstimator}, the estimate of which
+ * caps the send-side bandwidth estimation of the video streams.
+ *
+ * On the receive side, the arrival times of the incoming RTP packets are
+ * recorded and reported back to the remote endpoint in transport-cc feedback
+ * messages.
+ *
+ * The records are kept in arrays indexed by sequence number so that neither
+ * direction allocates memory per packet.
+ */
+public class TransportCCEngine
+    implements TransformEngine
+{
+    /**
+     * The default start bitrate in bits per second of the delay-based
+     * estimation.
+     */
+    private static final long DEFAULT_START_BITRATE_BPS = 300000L;
+
+    /**
+     * The name of the property which specifies the interval in milliseconds
+     * at which transport-cc feedback is sent.
+     */
+    public static final String FEEDBACK_INTERVAL_MS_PNAME
+        = TransportCCEngine.class.getName() + ".FEEDBACK_INTERVAL_MS";
+
+    /**
+     * The default interval in milliseconds at which transport-cc feedback is
+     * sent.
+     */
+    private static final int DEFAULT_FEEDBACK_INTERVAL_MS = 100;
+
+    /**
+     * The number of packets which are remembered in either direction. Must be
+     * a power of two which divides 2^16 so that a slot always holds one of the
+     * most recent sequence numbers which map to it.
+     */
+    private static final int HISTORY_SIZE = 1 << 15;
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>TransportCCEngine</tt> class and
+     * its instances to print debug information.
+     */
+    private static final Logger logger
+        = Logger.getLogger(TransportCCEngine.class);
+
+    /**
+     * The maximum number of packets reported by a single feedback message.
+     */
+    private static final int MAX_STATUS_COUNT = 400;
+
+    /**
+     * The extended transport-wide sequence numbers of the received packets
+     * the arrival times of which are in {@link #arrivalTimesUs} at the same
+     * index.
+     */
+    private final long[] arrivalSeqs = new long[HISTORY_SIZE];
+
+    /**
+     * The arrival times in microseconds of the received packets.
+     */
+    private final long[] arrivalTimesUs = new long[HISTORY_SIZE];
+
+    /**
+     * The <tt>DelayBasedBandwidthEstimator</tt> which consumes the received
+     * feedback. Initialized with the first feedback.
+     */
+    private DelayBasedBandwidthEstimator estimator;
+
+    /**
+     * The ID of the transport-wide sequence number RTP header extension or
+     * <tt>-1</tt> if it is not enabled by any of {@link #mediaStreams}. The
+     * <tt>MediaStream</tt>s bundled on a transport negotiate the same ID.
+     */
+    private volatile int extensionID = -1;
+
+    /**
+     * The IDs of the transport-wide sequence number RTP header extension
+     * which the <tt>MediaStream</tt>s that share this engine have enabled, in
+     * the order in which they enabled it. {@link #extensionID} is the ID of
+     * the first one. Accessed while synchronized on the map.
+     */
+    private final Map<MediaStreamImpl,Integer> extensionIDs
+        = new LinkedHashMap<>();
+
+    /**
+     * The scratch buffer of the value of the header extension which is added
+     * to outgoing packets which do not have it.
+     */
+    private final byte[] extensionData = new byte[2];
+
+    /**
+     * The builder of the feedback messages.
+     */
+    private final RTCPTCCPacket.Builder feedbackBuilder
+        = new RTCPTCCPacket.Builder(MAX_STATUS_COUNT);
+
+    /**
+     * The buffer into which the feedback messages are written before they are
+     * copied in order to be injected outside the lock of this engine.
+     */
+    private final byte[] feedbackBuf
+        = new byte[RTCPTCCPacket.getMaxLength(MAX_STATUS_COUNT)];
+
+    /**
+     * Matches the packets reported by a feedback message with the
+     * {@link #sendSeqs send history} and feeds them into {@link #estimator}.
+     */
+    private final RTCPTCCPacket.PacketHandler feedbackHandler
+        = new RTCPTCCPacket.PacketHandler()
+        {
+            @Override
+            public void packetReported(int seq, boolean received, long timeUs)
+            {
+                if (received)
+                    onPacketReported(seq, timeUs);
+            }
+        };
+
+    /**
+     * The interval in milliseconds at which feedback is sent.
+     */
+    private final int feedbackIntervalMs;
+
+    /**
+     * The sequence number of the next feedback message.
+     */
+    private int feedbackPacketCount;
+
+    /**
+     * The extended highest transport-wide sequence number received or
+     * <tt>-1</tt>.
+     */
+    private long highestSeq = -1L;
+
+    /**
+     * The last estimate pushed into the <tt>BandwidthEstimator</tt>s of
+     * {@link #mediaStreams}.
+     */
+    private long lastEstimateBps = -1L;
+
+    /**
+     * The time in milliseconds at which the last feedback was sent.
+     */
+    private long lastFeedbackTimeMs = -1L;
+
+    /**
+     * The SSRC of the last received packet which carried a transport-wide
+     * sequence number.
+     */
+    private long mediaSSRC;
+
+    /**
+     * The <tt>MediaStream</tt>s which share this engine. The first one sends
+     * the feedback.
+     */
+    private final List<MediaStreamImpl> mediaStreams
+        = new CopyOnWriteArrayList<>();
+
+    /**
+     * The extended transport-wide sequence number of the first packet which
+     * has not been reported in feedback yet or <tt>-1</tt>.
+     */
+    private long nextReportedSeq = -1L;
+
+    /**
+     * The next transport-wide sequence number to be sent.
+     */
+    private int nextSeq;
+
+    /**
+     * The current time in milliseconds while a feedback message is being
+     * processed.
+     */
+    private long nowMs;
+
+    /**
+     * The reference time in microseconds of the feedback message which is
+     * being processed.
+     */
+    private long referenceTimeUs;
+
+    /**
+     * The extended (unwrapped) reference time of the last feedback message
+     * received in multiples of {@link RTCPTCCPacket#REFERENCE_TIME_UNIT_US}
+     * or {@link Long#MIN_VALUE}.
+     */
+    private long referenceTime = Long.MIN_VALUE;
+
+    /**
+     * The view which walks the received RTCP packets.
+     */
+    private final RTCPPacketView rtcpView = new RTCPPacketView();
+
+    /**
+     * The visitor which processes the transport-cc feedback messages in the
+     * received RTCP packets.
+     */
+    private final RTCPPacketVisitor rtcpVisitor
+        = new RTCPPacketVisitorAdapter()
+        {
+            @Override
+            public void visitTCC(RTCPPacketView view)
+            {
+                onFeedback(
+                        view.getBuffer(),
+                        view.getFCIOffset(),
+                        view.getFCILength());
+            }
+        };
+
+    /**
+     * The transformer of RTCP packets which consumes the received feedback.
+     */
+    private final PacketTransformer rtcpTransformer
+        = new SinglePacketTransformerAdapter(RTCPPacketPredicate.INSTANCE)
+        {
+            @Override
+            public RawPacket reverseTransform(RawPacket pkt)
+            {
+                reverseTransformRTCP(pkt);
+                return pkt;
+            }
+        };
+
+    /**
+     * The transformer of RTP packets which stamps the outgoing and records the
+     * incoming packets.
+     */
+    private final PacketTransformer rtpTransformer
+        = new SinglePacketTransformerAdapter(RTPPacketPredicate.INSTANCE)
+        {
+            @Override
+            public RawPacket reverseTransform(RawPacket pkt)
+            {
+                reverseTransformRTP(pkt);
+                return pkt;
+            }
+
+            @Override
+            public RawPacket transform(RawPacket pkt)
+            {
+                transformRTP(pkt);
+                return pkt;
+            }
+        };
+
+    /**
+     * The transport-wide sequence numbers of the sent packets the send times
+     * and sizes of which are in {@link #sendTimesMs} and {@link #sendSizes}
+     * at the same index.
+     */
+    private final int[] sendSeqs = new int[HISTORY_SIZE];
+
+    /**
+     * The sizes in bytes of the sent packets.
+     */
+    private final int[] sendSizes = new int[HISTORY_SIZE];
+
+    /**
+     * The send times in milliseconds of the sent packets.
+     */
+    private final long[] sendTimesMs = new long[HISTORY_SIZE];
+
+    /**
+     * The <tt>Object</tt> which synchronizes the access to the send history.
+     */
+    private final Object sendSyncRoot = new Object();
+
+    /**
+     * Initializes a new <tt>TransportCCEngine</tt> instance.
+     */
+    public TransportCCEngine()
+    {
+        feedbackIntervalMs
+            = ConfigUtils.getInt(
+                    LibJitsi.getConfigurationService(),
+                    FEEDBACK_INTERVAL_MS_PNAME,
+                    DEFAULT_FEEDBACK_INTERVAL_MS);
+
+        Arrays.fill(sendSeqs, -1);
+        Arrays.fill(arrivalSeqs, -1L);
+    }
+
+    /**
+     * Adds a <tt>MediaStream</tt> to the ones which share this engine.
+     *
+     * @param mediaStream the <tt>MediaStream</tt> to add.
+     */
+    public void addMediaStream(MediaStreamImpl mediaStream)
+    {
+        if (!mediaStreams.contains(mediaStream))
+            mediaStreams.add(mediaStream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PacketTransformer getRTCPTransformer()
+    {
+        return rtcpTransformer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PacketTransformer getRTPTransformer()
+    {
+        return rtpTransformer;
+    }
+
+    /**
+     * Processes the FCI of a transport-cc feedback message.
+     *
+     * @param buf the buffer which contains the FCI.
+     * @param fciOff the offset in <tt>buf</tt> at which the FCI starts.
+     * @param fciLen the length in bytes of the FCI.
+     */
+    private void onFeedback(byte[] buf, int fciOff, int fciLen)
+    {
+        int rawReferenceTime = RTCPTCCPacket.getReferenceTime(buf, fciOff);
+
+        // The reference time is a 24-bit wrapping counter.
+        if (referenceTime == Long.MIN_VALUE)
+        {
+            referenceTime = rawReferenceTime;
+        }
+        else
+        {
+            long diff
+                = ((rawReferenceTime - (referenceTime & 0xffffffL)) << 40)
+                    >> 40;
+
+            referenceTime += diff;
+        }
+        referenceTimeUs
+            = referenceTime * RTCPTCCPacket.REFERENCE_TIME_UNIT_US;
+        nowMs = System.nanoTime() / 1000000L;
+
+        if (estimator == null)
+        {
+            long startBitrateBps = DEFAULT_START_BITRATE_BPS;
+
+            for (MediaStreamImpl mediaStream : mediaStreams)
+            {
+                BandwidthEstimator bwe = getBandwidthEstimator(mediaStream);
+
+                if (bwe != null)
+                {
+                    startBitrateBps = bwe.getLatestEstimate();
+                    break;
+                }
+            }
+
+            estimator = new DelayBasedBandwidthEstimator(startBitrateBps);
+        }
+
+        if (!RTCPTCCPacket.parse(buf, fciOff, fciLen, feedbackHandler))
+        {
+            logger.warn("Failed to parse a transport-cc feedback message.");
+        }
+
+        long estimateBps = estimator.update(nowMs);
+
+        if (estimateBps > 0 && estimateBps != lastEstimateBps)
+        {
+            lastEstimateBps = estimateBps;
+
+            // The estimate is of the whole transport.
+            for (MediaStreamImpl mediaStream : mediaStreams)
+            {
+                BandwidthEstimator bwe = getBandwidthEstimator(mediaStream);
+
+                if (bwe instanceof BandwidthEstimatorImpl)
+                {
+                    ((BandwidthEstimatorImpl) bwe)
+                        .updateDelayBasedEstimate(estimateBps);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the <tt>BandwidthEstimator</tt> of a specific
+     * <tt>MediaStream</tt>.
+     *
+     * @param mediaStream the <tt>MediaStream</tt> to get the
+     * <tt>BandwidthEstimator</tt> of.
+     * @return the <tt>BandwidthEstimator</tt> of <tt>mediaStream</tt> or
+     * <tt>null</tt> if it does not have one.
+     */
+    private static BandwidthEstimator getBandwidthEstimator(
+            MediaStreamImpl mediaStream)
+    {
+        return
+            mediaStream instanceof VideoMediaStream
+                ? ((VideoMediaStream) mediaStream)
+                    .getOrCreateBandwidthEstimator()
+                : null;
+    }
+
+    /**
+     * Feeds a packet reported as received by a feedback message into
+     * {@link #estimator} if it is still in the send history.
+     *
+     * @param seq the transport-wide sequence number of the packet.
+     * @param timeUs the arrival time of the packet in microseconds relative to
+     * the reference time of the feedback message.
+     */
+    private void onPacketReported(int seq, long timeUs)
+    {
+        int index = seq & (HISTORY_SIZE - 1);
+        long sendTimeMs;
+        int size;
+
+        synchronized (sendSyncRoot)
+        {
+            if (sendSeqs[index] != seq)
+                return;
+            sendTimeMs = sendTimesMs[index];
+            size = sendSizes[index];
+        }
+
+        long arrivalTimeUs = referenceTimeUs + timeUs;
+        long arrivalTimeMs = arrivalTimeUs / 1000L;
+
+        if (arrivalTimeUs < arrivalTimeMs * 1000L)
+            arrivalTimeMs--;
+
+        estimator.incomingPacketFeedback(
+                sendTimeMs, arrivalTimeMs, size, nowMs);
+    }
+
+    /**
+     * Records the arrival time of an incoming RTP packet and sends feedback if
+     * it is time to do so. The feedback is built while synchronized on this
+     * engine and injected after the lock is released so that the send path of
+     * the <tt>MediaStream</tt> does not run under it.
+     *
+     * @param pkt the incoming RTP packet.
+     */
+    private void reverseTransformRTP(RawPacket pkt)
+    {
+        int extensionID = this.extensionID;
+
+        if (extensionID == -1)
+            return;
+
+        RawPacket.HeaderExtension he
+            = pkt.getHeaderExtension((byte) extensionID);
+
+        if (he == null || he.getExtLength() != 2)
+            return;
+
+        long nowUs = System.nanoTime() / 1000L;
+        int seq = RTPUtils.readUint16AsInt(he.getBuffer(), he.getOffset() + 1);
+        MediaStreamImpl feedbackSender = null;
+        List<RawPacket> feedback = null;
+
+        synchronized (this)
+        {
+            long extSeq;
+
+            if (highestSeq == -1L)
+            {
+                extSeq = seq;
+            }
+            else
+            {
+                extSeq
+                    = highestSeq
+                        + RTPUtils.sequenceNumberDiff(
+                                seq, (int) (highestSeq & 0xffff));
+            }
+            if (extSeq > highestSeq)
+                highestSeq = extSeq;
+            if (nextReportedSeq == -1L)
+                nextReportedSeq = extSeq;
+
+            // Packets which arrive after they have been reported as lost are
+            // not reported again.
+            if (extSeq >= nextReportedSeq)
+            {
+                int index = (int) (extSeq & (HISTORY_SIZE - 1));
+
+                arrivalSeqs[index] = extSeq;
+                arrivalTimesUs[index] = nowUs;
+            }
+            mediaSSRC = pkt.getSSRCAsLong();
+
+            long nowMs = nowUs / 1000L;
+
+            if (lastFeedbackTimeMs == -1L
+                    || nowMs - lastFeedbackTimeMs >= feedbackIntervalMs)
+            {
+                lastFeedbackTimeMs = nowMs;
+
+                // The feedback is about the transport so any of the streams
+                // may send it.
+                Iterator<MediaStreamImpl> it = mediaStreams.iterator();
+
+                if (it.hasNext())
+                {
+                    feedbackSender = it.next();
+                    feedback
+                        = buildFeedback(feedbackSender.getLocalSourceID());
+                }
+            }
+        }
+
+        if (feedback != null)
+        {
+            for (RawPacket feedbackPkt : feedback)
+            {
+                try
+                {
+                    feedbackSender.injectPacket(
+                            feedbackPkt,
+                            /* data */ false,
+                            this);
+                }
+                catch (TransmissionFailedException tfe)
+                {
+                    logger.warn("Failed to send transport-cc feedback.", tfe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a <tt>MediaStream</tt> from the ones which share this engine.
+     *
+     * @param mediaStream the <tt>MediaStream</tt> to remove.
+     * @return <tt>true</tt> if no <tt>MediaStream</tt> shares this engine
+     * anymore; otherwise, <tt>false</tt>.
+     */
+    public boolean removeMediaStream(MediaStreamImpl mediaStream)
+    {
+        mediaStreams.remove(mediaStream);
+        setExtensionID(mediaStream, -1);
+        return mediaStreams.isEmpty();
+    }
+
+    /**
+     * Processes the transport-cc feedback messages in an incoming RTCP packet.
+     *
+     * @param pkt the incoming RTCP packet.
+     */
+    private void reverseTransformRTCP(RawPacket pkt)
+    {
+        if (extensionID == -1)
+            return;
+
+        synchronized (rtcpView)
+        {
+            rtcpView
+                .wrap(pkt.getBuffer(), pkt.getOffset(), pkt.getLength())
+                .accept(rtcpVisitor);
+        }
+    }
+
+    /**
+     * Builds the feedback messages which report the packets received since
+     * the last feedback to the remote endpoint. Invoked while synchronized on
+     * this engine.
+     *
+     * @param senderSSRC the SSRC of the sender of the feedback messages
+     * @return the feedback messages to be injected
+     */
+    private List<RawPacket> buildFeedback(long senderSSRC)
+    {
+        List<RawPacket> feedback = new ArrayList<>(1);
+
+        if (highestSeq - nextReportedSeq >= HISTORY_SIZE)
+            nextReportedSeq = highestSeq - HISTORY_SIZE + 1;
+
+        while (nextReportedSeq <= highestSeq)
+        {
+            RTCPTCCPacket.Builder builder = feedbackBuilder;
+            long seq = nextReportedSeq;
+
+            builder.reset((int) seq);
+            for (; seq <= highestSeq; seq++)
+            {
+                int index = (int) (seq & (HISTORY_SIZE - 1));
+                boolean added
+                    = arrivalSeqs[index] == seq
+                        ? builder.addReceived(arrivalTimesUs[index])
+                        : builder.addNotReceived();
+
+                if (!added)
+                    break;
+            }
+            if (seq == nextReportedSeq)
+            {
+                // Cannot happen for an empty builder but do not loop forever.
+                seq++;
+            }
+            nextReportedSeq = seq;
+
+            if (builder.getReceivedCount() == 0)
+                continue;
+
+            int len
+                = builder.write(
+                        feedbackBuf, 0,
+                        senderSSRC, mediaSSRC,
+                        feedbackPacketCount++);
+
+            feedback.add(
+                    new RawPacket(Arrays.copyOf(feedbackBuf, len), 0, len));
+        }
+        return feedback;
+    }
+
+    /**
+     * Sets the ID of the transport-wide sequence number RTP header extension
+     * which a specific <tt>MediaStream</tt> that shares this engine has
+     * negotiated. The engine uses the ID of the first <tt>MediaStream</tt>
+     * which enabled the extension and is disabled only when none of them has
+     * it enabled, so one stream cannot disable or change it for the others.
+     *
+     * @param mediaStream the <tt>MediaStream</tt> which negotiated the ID
+     * @param id the ID to set or <tt>-1</tt> to disable transport-cc for
+     * <tt>mediaStream</tt>.
+     */
+    public void setExtensionID(MediaStreamImpl mediaStream, int id)
+    {
+        synchronized (extensionIDs)
+        {
+            if (id == -1)
+                extensionIDs.remove(mediaStream);
+            else
+                extensionIDs.put(mediaStream, id);
+            updateExtensionID();
+        }
+    }
+
+    /**
+     * Sets {@link #extensionID} to the ID which the first of the
+     * <tt>MediaStream</tt>s in {@link #extensionIDs} enabled. Invoked while
+     * synchronized on <tt>extensionIDs</tt>.
+     */
+    private void updateExtensionID()
+    {
+        int extensionID = -1;
+
+        for (int id : extensionIDs.values())
+        {
+            if (extensionID == -1)
+            {
+                extensionID = id;
+            }
+            else if (id != extensionID)
+            {
+                logger.warn(
+                        "The streams of a transport enabled transport-cc with"
+                            + " different extension IDs (" + extensionID
+                            + " and " + id + "). Using " + extensionID + ".");
+            }
+        }
+        this.extensionID = extensionID;
+    }
+
+    /**
+     * Stamps an outgoing RTP packet with the next transport-wide sequence
+     * number and records its send time and size.
+     *
+     * @param pkt the outgoing RTP packet.
+     */
+    private void transformRTP(RawPacket pkt)
+    {
+        int extensionID = this.extensionID;
+
+        if (extensionID == -1)
+            return;
+
+        synchronized (sendSyncRoot)
+        {
+            int seq = nextSeq;
+
+            nextSeq = (nextSeq + 1) & 0xffff;
+
+            RawPacket.HeaderExtension he
+                = pkt.getHeaderExtension((byte) extensionID);
+
+            if (he != null && he.getExtLength() == 2)
+            {
+                RTPUtils.writeShort(
+                        he.getBuffer(), he.getOffset() + 1, (short) seq);
+            }
+            else
+            {
+                RTPUtils.writeShort(extensionData, 0, (short) seq);
+                pkt.addExtension((byte) extensionID, extensionData, 2);
+            }
+
+            int index = seq & (HISTORY_SIZE - 1);
+
+            sendSeqs[index] = seq;
+            sendTimesMs[index] = System.nanoTime() / 1000000L;
+            sendSizes[index] = pkt.getLength();
+        }
+    }
+}
@@ -15,37 +15,65 @@
  */
 package org.jitsi.impl.neomedia.transform.csrc;
 
-import java.util.concurrent.*;
+import java.util.*;
 
 import org.jitsi.impl.neomedia.*;
-import org.jitsi.util.*;
+import org.jitsi.impl.neomedia.audiolevel.*;
 
 /**
- * A simple thread that waits for new levels to be reported from incoming
- * RTP packets and then delivers them to the <tt>AudioMediaStream</tt>
- * associated with this engine. The reason we need to do this in a separate
- * thread is, of course, the time sensitive nature of incoming RTP packets.
+ * Stores the levels reported by incoming RTP packets and delivers them to the
+ * <tt>AudioMediaStream</tt> associated with this engine on the thread of the
+ * {@link AudioLevelDispatchScheduler} which is shared by all streams. The
+ * reason we need to do this in a separate thread is, of course, the time
+ * sensitive nature of incoming RTP packets.
+ *
+ * The latest level of each SSRC/CSRC is stored in a slot of an open addressing
+ * table which is allocated once and grows only with the number of sources, so
+ * that no memory is allocated per packet. The levels stored since the previous
+ * delivery are delivered in one batch every
+ * {@link AudioLevelDispatchScheduler#PERIOD} milliseconds.
  *
  * @author Emil Ivov
  * @author Lyubomir Marinov
  */
 public class CsrcAudioLevelDispatcher
-    implements Runnable
 {
     /**
-     * The pool of <tt>Thread</tt>s which run
-     * <tt>CsrcAudioLevelDispatcher</tt>s.
+     * The initial number of slots of the table of levels. A power of two.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The value of an element of {@link #ssrcs} which denotes an empty slot.
+     */
+    private static final long NO_SSRC = -1;
+
+    /**
+     * Gets the index of the slot at which the lookup of a specific SSRC
+     * starts.
+     *
+     * @param ssrc the SSRC
+     * @param mask the number of slots minus one
+     * @return the index of the slot at which the lookup of <tt>ssrc</tt>
+     * starts
+     */
+    private static int getSlot(long ssrc, int mask)
+    {
+        int h = (int) ssrc * 0x9E3779B9;
+
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * The array delivered to {@link #mediaStream} last which is reused if the
+     * next batch has the same number of levels.
      */
-    private static final ExecutorService threadPool
-        = ExecutorUtils.newCachedThreadPool(
-                true,
-                "CsrcAudioLevelDispatcher");
+    private long[] audioLevels;
 
     /**
-     * The levels added to this instance (by the <tt>reverseTransform</tt>
-     * method of a <tt>PacketTransformer</tt> implementation) last.
+     * The levels of the slots of the table of levels.
      */
-    private long[] levels;
+    private int[] levels = new int[INITIAL_CAPACITY];
 
     /**
      * The <tt>AudioMediaStreamImpl</tt> which listens to this event dispatcher.
@@ -55,10 +83,48 @@
     private AudioMediaStreamImpl mediaStream;
 
     /**
-     * The indicator which determines whether this event dispatcher has been
-     * scheduled for execution by {@link #threadPool}.
+     * The indicators which determine whether the levels of the slots of the
+     * table of levels have not been delivered yet.
+     */
+    private boolean[] pending = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * The number of levels which have not been delivered yet.
+     */
+    private int pendingCount = 0;
+
+    /**
+     * The number of slots of the table of levels which are not empty.
+     */
+    private int size = 0;
+
+    /**
+     * The SSRCs of the slots of the table of levels or {@link #NO_SSRC}.
+     */
+    private long[] ssrcs = newSsrcs(INITIAL_CAPACITY);
+
+    /**
+     * The <tt>Task</tt> which delivers the levels on the thread of the
+     * <tt>AudioLevelDispatchScheduler</tt>.
      */
-    private boolean scheduled = false;
+    private final AudioLevelDispatchScheduler.Task task
+        = new AudioLevelDispatchScheduler.Task()
+        {
+            @Override
+            protected boolean dispatch()
+            {
+                return CsrcAudioLevelDispatcher.this.dispatch();
+            }
+
+            @Override
+            protected boolean hasPending()
+            {
+                synchronized (CsrcAudioLevelDispatcher.this)
+                {
+                    return pendingCount != 0;
+                }
+            }
+        };
 
     /**
      * Initializes a new <tt>CsrcAudioLevelDispatcher</tt> to dispatch events
@@ -72,6 +138,39 @@ public CsrcAudioLevelDispatcher(AudioMediaStreamImpl mediaStream)
         setMediaStream(mediaStream);
     }
 
+    /**
+     * Creates the array of the SSRCs of the slots of an empty table of levels.
+     *
+     * @param capacity the number of slots
+     * @return the array of the SSRCs of the slots of an empty table of levels
+     */
+    private static long[] newSsrcs(int capacity)
+    {
+        long[] ssrcs = new long[capacity];
+
+        Arrays.fill(ssrcs, NO_SSRC);
+        return ssrcs;
+    }
+
+    /**
+     * Stores the level of a specific SSRC/CSRC so that it is delivered to our
+     * media stream and its listeners in a separate thread.
+     *
+     * @param ssrc the SSRC/CSRC
+     * @param level the level of <tt>ssrc</tt>
+     */
+    public void addLevel(long ssrc, int level)
+    {
+        synchronized (this)
+        {
+            if (mediaStream == null)
+                return;
+
+            putLevel(ssrc, level);
+        }
+        task.schedule();
+    }
+
     /**
      * A level matrix that we should deliver to our media stream and its
      * listeners in a separate thread.
@@ -82,74 +181,137 @@ public CsrcAudioLevelDispatcher(AudioMediaStreamImpl mediaStream)
      */
     public void addLevels(long[] levels, long rtpTime)
     {
-        synchronized(this)
+        synchronized (this)
         {
-            this.levels = levels;
+            if (mediaStream == null)
+                return;
 
-            if ((mediaStream != null) && !scheduled)
-            {
-                threadPool.execute(this);
-                scheduled = true;
-            }
-
-            notifyAll();
+            for (int i = 0; i < levels.length - 1; i += 2)
+                putLevel(levels[i], (int) levels[i + 1]);
         }
+        task.schedule();
     }
 
     /**
-     * Waits for new levels to be reported via the <tt>addLevels()</tt> method
-     * and then delivers them to the <tt>AudioMediaStream</tt> that we are
-     * associated with.
+     * Delivers the levels stored since the previous delivery to our media
+     * stream.
+     *
+     * @return <tt>true</tt> if levels were delivered; otherwise,
+     * <tt>false</tt>
      */
-    @Override
-    public void run()
+    private boolean dispatch()
     {
-        try
+        AudioMediaStreamImpl mediaStream;
+        long[] audioLevels;
+
+        synchronized (this)
         {
-            do
-            {
-                AudioMediaStreamImpl mediaStream;
-                long[] levels;
+            if (pendingCount == 0)
+                return false;
 
-                synchronized(this)
+            mediaStream = this.mediaStream;
+            audioLevels = this.audioLevels;
+            if ((audioLevels == null)
+                    || (audioLevels.length != 2 * pendingCount))
+            {
+                audioLevels = new long[2 * pendingCount];
+                this.audioLevels = audioLevels;
+            }
+            for (int slot = 0, i = 0; i < audioLevels.length; slot++)
+            {
+                if (pending[slot])
                 {
-                    // If the mediaStream is null, this instance is to stop.
-                    mediaStream = this.mediaStream;
-                    if (mediaStream == null)
-                    {
-                        scheduled = false;
-                        break;
-                    }
-
-                    if(this.levels == null)
-                    {
-                        try { wait(); } catch (InterruptedException ie) {}
-                        continue;
-                    }
-                    else
-                    {
-                        levels = this.levels;
-                        this.levels = null;
-                    }
+                    pending[slot] = false;
+                    audioLevels[i++] = ssrcs[slot];
+                    audioLevels[i++] = levels[slot];
                 }
-
-                if(levels != null)
-                    mediaStream.audioLevelsReceived(levels);
             }
-            while (true);
+            pendingCount = 0;
         }
-        finally
+
+        // The array is reused only by the thread of the
+        // AudioLevelDispatchScheduler i.e. the current thread.
+        if (mediaStream != null)
+            mediaStream.audioLevelsReceived(audioLevels);
+        return true;
+    }
+
+    /**
+     * Stores the level of a specific SSRC/CSRC in the table of levels. If the
+     * table is too full, it is rebuilt with the levels which have not been
+     * delivered yet only so that sources which have gone are forgotten.
+     *
+     * @param ssrc the SSRC/CSRC
+     * @param level the level of <tt>ssrc</tt>
+     */
+    private void putLevel(long ssrc, int level)
+    {
+        int mask = ssrcs.length - 1;
+        int slot = getSlot(ssrc, mask);
+
+        while (true)
         {
-            synchronized (this)
+            long slotSsrc = ssrcs[slot];
+
+            if (slotSsrc == ssrc)
             {
-                scheduled = false;
+                break;
             }
+            else if (slotSsrc == NO_SSRC)
+            {
+                if (2 * (size + 1) > ssrcs.length)
+                {
+                    rebuild();
+                    putLevel(ssrc, level);
+                    return;
+                }
+                ssrcs[slot] = ssrc;
+                size++;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        levels[slot] = level;
+        if (!pending[slot])
+        {
+            pending[slot] = true;
+            pendingCount++;
         }
     }
 
     /**
-     * Causes our run method to exit so that this thread would stop
-     * handling levels.
+     * Rebuilds the table of levels with the levels which have not been
+     * delivered yet and room for at least as many more.
+     */
+    private void rebuild()
+    {
+        long[] oldSsrcs = ssrcs;
+        int[] oldLevels = levels;
+        boolean[] oldPending = pending;
+        int capacity = INITIAL_CAPACITY;
+
+        while (capacity < 4 * (pendingCount + 1))
+            capacity <<= 1;
+
+        ssrcs = newSsrcs(capacity);
+        levels = new int[capacity];
+        pending = new boolean[capacity];
+        pendingCount = 0;
+        size = 0;
+        for (int slot = 0; slot < oldSsrcs.length; slot++)
+        {
+            if (oldPending[slot])
+                putLevel(oldSsrcs[slot], oldLevels[slot]);
+        }
+    }
+
+    /**
+     * Sets the media stream to deliver the levels to. If <tt>null</tt>, the
+     * delivery stops.
+     *
+     * @param mediaStream the media stream to deliver the levels to or
+     * <tt>null</tt>
      */
     public void setMediaStream(AudioMediaStreamImpl mediaStream)
     {
@@ -163,9 +325,10 @@ public void setMediaStream(AudioMediaStreamImpl mediaStream)
                  * If the mediaStream changes, it is unlikely that the (audio)
                  * levels are associated with it.
                  */
-                this.levels = null;
-
-                notifyAll();
+                Arrays.fill(ssrcs, NO_SSRC);
+                Arrays.fill(pending, false);
+                pendingCount = 0;
+                size = 0;
             }
         }
     }
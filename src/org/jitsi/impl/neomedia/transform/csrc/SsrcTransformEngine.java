@@ -236,11 +236,9 @@ public RawPacket reverseTransform(RawPacket pkt)
              */
             if (!dropPkt && (csrcAudioLevelDispatcher != null) && (level >= 0))
             {
-                long[] levels = new long[2];
-
-                levels[0] = pkt.getSSRCAsLong();
-                levels[1] = 127 - level;
-                csrcAudioLevelDispatcher.addLevels(levels, pkt.getTimestamp());
+                csrcAudioLevelDispatcher.addLevel(
+                        pkt.getSSRCAsLong(),
+                        127 - level);
             }
         }
         if (dropPkt)
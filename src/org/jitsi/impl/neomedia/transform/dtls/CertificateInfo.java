@@ -16,6 +16,7 @@
 package org.jitsi.impl.neomedia.transform.dtls;
 
 import org.bouncycastle.crypto.*;
+import org.bouncycastle.crypto.params.*;
 import org.bouncycastle.crypto.tls.*;
 
 /**
@@ -50,6 +51,12 @@
      */
     public final String localFingerprintHashFunction;
 
+    /**
+     * The signature and hash algorithms with which the local endpoint signs
+     * with the private key of {@link #keyPair}.
+     */
+    private final SignatureAndHashAlgorithm signatureAndHashAlgorithm;
+
     /**
      * The timestamp (in milliseconds of system time) of the generation of this
      * {@code CertificateInfo}.
@@ -79,6 +86,15 @@ public CertificateInfo(
         this.localFingerprintHashFunction = localFingerprintHashFunction;
         this.localFingerprint = localFingerprint;
         this.timestamp = timestamp;
+
+        signatureAndHashAlgorithm
+            = isECDSA()
+                ? new SignatureAndHashAlgorithm(
+                        HashAlgorithm.sha256,
+                        SignatureAlgorithm.ecdsa)
+                : new SignatureAndHashAlgorithm(
+                        HashAlgorithm.sha1,
+                        SignatureAlgorithm.rsa);
     }
 
     /**
@@ -102,4 +118,28 @@ public AsymmetricCipherKeyPair getKeyPair()
     {
         return keyPair;
     }
+
+    /**
+     * Gets the signature and hash algorithms with which the local endpoint
+     * signs with the private key of {@link #certificate}.
+     *
+     * @return the signature and hash algorithms of the private key of
+     * {@link #certificate}
+     */
+    public SignatureAndHashAlgorithm getSignatureAndHashAlgorithm()
+    {
+        return signatureAndHashAlgorithm;
+    }
+
+    /**
+     * Determines whether the keys of {@link #certificate} are ECDSA rather
+     * than RSA keys.
+     *
+     * @return <tt>true</tt> if the keys of {@link #certificate} are ECDSA keys;
+     * otherwise, <tt>false</tt>
+     */
+    public boolean isECDSA()
+    {
+        return keyPair.getPrivate() instanceof ECPrivateKeyParameters;
+    }
 }
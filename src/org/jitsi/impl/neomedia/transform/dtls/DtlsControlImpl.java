@@ -21,9 +21,11 @@
 import java.util.*;
 
 import org.bouncycastle.asn1.*;
+import org.bouncycastle.asn1.sec.*;
 import org.bouncycastle.asn1.x500.*;
 import org.bouncycastle.asn1.x500.style.*;
 import org.bouncycastle.asn1.x509.*;
+import org.bouncycastle.asn1.x9.*;
 import org.bouncycastle.cert.*;
 import org.bouncycastle.crypto.*;
 import org.bouncycastle.crypto.generators.*;
@@ -37,6 +39,7 @@
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.version.*;
 import org.jitsi.util.*;
+import org.jitsi.util.concurrent.*;
 
 /**
  * Implements {@link DtlsControl} i.e. {@link SrtpControl} for DTLS-SRTP.
@@ -77,14 +80,58 @@
      */
     private static final long ONE_DAY = 1000L * 60L * 60L * 24L;
 
+    /**
+     * The number of milliseconds within a minute.
+     */
+    private static final long ONE_MINUTE = 1000L * 60L;
+
     /**
      * The name of the property which specifies the signature algorithm used
-     * during certificate creation. When a certificate is created and this
-     * property is not set, a default value of "SHA1withRSA" will be used.
+     * during the creation of RSA certificates. When a certificate is created
+     * and this property is not set, a default value of "SHA1withRSA" will be
+     * used. ECDSA certificates are always signed with SHA256withECDSA.
      */
     public static final String PROP_SIGNATURE_ALGORITHM =
         "org.jitsi.impl.neomedia.transform.dtls.SIGNATURE_ALGORITHM";
 
+    /**
+     * The name of the property which specifies the type of the keys of the
+     * certificates generated by <tt>DtlsControlImpl</tt>: {@link #KEY_TYPE_RSA}
+     * or {@link #KEY_TYPE_ECDSA}.
+     */
+    public static final String KEY_TYPE_PNAME =
+        "org.jitsi.impl.neomedia.transform.dtls.KEY_TYPE";
+
+    /**
+     * The value of {@link #KEY_TYPE_PNAME} which selects ECDSA keys on the
+     * NIST P-256 curve (secp256r1).
+     */
+    public static final String KEY_TYPE_ECDSA = "ECDSA";
+
+    /**
+     * The value of {@link #KEY_TYPE_PNAME} which selects RSA keys of
+     * {@link #RSA_KEY_SIZE} bits.
+     */
+    public static final String KEY_TYPE_RSA = "RSA";
+
+    /**
+     * The default type of the keys of the certificates when configuration
+     * properties are not found. ECDSA keys are generated in a fraction of the
+     * time of RSA keys and make the DTLS handshakes considerably cheaper but
+     * have to be enabled explicitly because remote endpoints which support
+     * only the RSA cipher suites cannot complete a handshake with them.
+     */
+    public static final String DEFAULT_KEY_TYPE = KEY_TYPE_RSA;
+
+    /**
+     * The type of the keys of the certificates to generate, either
+     * {@link #KEY_TYPE_ECDSA} or {@link #KEY_TYPE_RSA}.
+     * The default value is {@code DEFAULT_KEY_TYPE} but may be overridden by
+     * the {@code ConfigurationService} and/or {@code System} property
+     * {@code KEY_TYPE_PNAME}.
+     */
+    public static final String KEY_TYPE;
+
     /**
      * The name of the property to specify RSA Key length.
      */
@@ -147,21 +194,50 @@
      */
     public static final long DEFAULT_CERT_CACHE_EXPIRE_TIME = ONE_DAY;
 
+    /**
+     * The number of milliseconds before the expiry of the cached certificate
+     * at which the generation of its replacement starts in the background.
+     * Capped at half of {@link #CERT_CACHE_EXPIRE_TIME}.
+     */
+    private static final long CERT_ROTATION_LEAD_TIME = ONE_MINUTE;
+
+    /**
+     * The number of milliseconds after which a failed generation of the
+     * replacement of the cached certificate is retried.
+     */
+    private static final long CERT_ROTATION_RETRY_INTERVAL = ONE_MINUTE;
+
     /**
      * The public exponent to always use for RSA key generation.
      */
     public static final BigInteger RSA_KEY_PUBLIC_EXPONENT
         = new BigInteger("10001", 16);
 
+    /**
+     * The name of the {@code ConfigurationService} and/or {@code System}
+     * property which specifies whether the AEAD <tt>SRTPProtectionProfile</tt>s
+     * (RFC 7714) are to be negotiated (in preference to the AES-CM ones). The
+     * default value is {@code false} so that the AES-CM profiles remain the
+     * ones negotiated unless a deployment opts in.
+     */
+    private static final String ENABLE_AEAD_PROFILES_PNAME
+        = DtlsControlImpl.class.getName() + ".enableAEADProfiles";
+
+    /**
+     * The <tt>SRTPProtectionProfile</tt> AEAD_AES_128_GCM defined by RFC 7714.
+     */
+    static final int SRTP_AEAD_AES_128_GCM = 0x0007;
+
+    /**
+     * The <tt>SRTPProtectionProfile</tt> AEAD_AES_256_GCM defined by RFC 7714.
+     */
+    static final int SRTP_AEAD_AES_256_GCM = 0x0008;
+
     /**
      * The <tt>SRTPProtectionProfile</tt>s supported by
-     * <tt>DtlsControlImpl</tt>.
+     * <tt>DtlsControlImpl</tt> in order of preference.
      */
-    static final int[] SRTP_PROTECTION_PROFILES
-        = {
-            SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_80,
-            SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_32
-        };
+    static final int[] SRTP_PROTECTION_PROFILES;
 
     /**
      * The indicator which specifies whether {@code DtlsControlImpl} is to tear
@@ -187,6 +263,21 @@
      */
     private static CertificateInfo certificateInfoCache;
 
+    /**
+     * The <tt>RecurringRunnableExecutor</tt> which runs the
+     * {@link CertificateRotator} which replaces {@link #certificateInfoCache}
+     * ahead of its expiry.
+     */
+    private static final RecurringRunnableExecutor certificateRotationExecutor
+        = new RecurringRunnableExecutor(
+                DtlsControlImpl.class.getSimpleName() + "-certificateRotation");
+
+    /**
+     * The domain parameters of the NIST P-256 curve (secp256r1) on which ECDSA
+     * keys are generated.
+     */
+    private static final ECDomainParameters EC_DOMAIN_PARAMETERS;
+
     static
     {
         // Set configurable options using ConfigurationService.
@@ -197,6 +288,34 @@
                     VERIFY_AND_VALIDATE_CERTIFICATE_PNAME,
                     true);
 
+        String keyType
+            = ConfigUtils.getString(
+                    LibJitsi.getConfigurationService(),
+                    KEY_TYPE_PNAME,
+                    DEFAULT_KEY_TYPE);
+
+        if (KEY_TYPE_ECDSA.equalsIgnoreCase(keyType))
+        {
+            KEY_TYPE = KEY_TYPE_ECDSA;
+        }
+        else
+        {
+            if (!KEY_TYPE_RSA.equalsIgnoreCase(keyType))
+            {
+                logger.warn(
+                        "Unknown " + KEY_TYPE_PNAME + " " + keyType
+                            + ", using " + KEY_TYPE_RSA);
+            }
+            KEY_TYPE = KEY_TYPE_RSA;
+        }
+
+        X9ECParameters x9 = SECNamedCurves.getByName("secp256r1");
+
+        EC_DOMAIN_PARAMETERS
+            = new ECDomainParameters(
+                    x9.getCurve(), x9.getG(), x9.getN(), x9.getH(),
+                    x9.getSeed());
+
         RSA_KEY_SIZE
             = ConfigUtils.getInt(
                     LibJitsi.getConfigurationService(),
@@ -215,6 +334,30 @@
                     CERT_CACHE_EXPIRE_TIME_PNAME,
                     DEFAULT_CERT_CACHE_EXPIRE_TIME);
 
+        if (ConfigUtils.getBoolean(
+                LibJitsi.getConfigurationService(),
+                ENABLE_AEAD_PROFILES_PNAME,
+                false))
+        {
+            SRTP_PROTECTION_PROFILES
+                = new int[]
+                {
+                    SRTP_AEAD_AES_128_GCM,
+                    SRTP_AEAD_AES_256_GCM,
+                    SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_80,
+                    SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_32
+                };
+        }
+        else
+        {
+            SRTP_PROTECTION_PROFILES
+                = new int[]
+                {
+                    SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_80,
+                    SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_32
+                };
+        }
+
         // HASH_FUNCTION_UPGRADES
         HASH_FUNCTION_UPGRADES.put(
                 "sha-1",
@@ -247,6 +390,38 @@ static int chooseSRTPProtectionProfile(int... theirs)
         return 0;
     }
 
+    /**
+     * Creates the <tt>SubjectPublicKeyInfo</tt> of a specific public key. The
+     * curve of an ECDSA key is identified by name because WebRTC endpoints
+     * reject certificates with explicit curve parameters.
+     *
+     * @param publicKey the public key to create the
+     * <tt>SubjectPublicKeyInfo</tt> of
+     * @return the <tt>SubjectPublicKeyInfo</tt> of <tt>publicKey</tt>
+     * @throws IOException if <tt>publicKey</tt> cannot be encoded
+     */
+    private static SubjectPublicKeyInfo createSubjectPublicKeyInfo(
+            AsymmetricKeyParameter publicKey)
+        throws IOException
+    {
+        if (publicKey instanceof ECPublicKeyParameters)
+        {
+            return
+                new SubjectPublicKeyInfo(
+                        new AlgorithmIdentifier(
+                                X9ObjectIdentifiers.id_ecPublicKey,
+                                SECObjectIdentifiers.secp256r1),
+                        ((ECPublicKeyParameters) publicKey).getQ()
+                            .getEncoded(false));
+        }
+        else
+        {
+            return
+                SubjectPublicKeyInfoFactory.createSubjectPublicKeyInfo(
+                        publicKey);
+        }
+    }
+
     /**
      * Computes the fingerprint of a specific certificate using a specific
      * hash function.
@@ -441,12 +616,23 @@ private static X500Name generateCN()
     }
 
     /**
-     * Return a pair of RSA private and public keys.
+     * Return a pair of private and public keys of type {@link #KEY_TYPE}.
      *
      * @return a pair of private and public keys
      */
     private static AsymmetricCipherKeyPair generateKeyPair()
     {
+        if (KEY_TYPE_ECDSA.equals(KEY_TYPE))
+        {
+            ECKeyPairGenerator generator = new ECKeyPairGenerator();
+
+            generator.init(
+                    new ECKeyGenerationParameters(
+                            EC_DOMAIN_PARAMETERS,
+                            new SecureRandom()));
+            return generator.generateKeyPair();
+        }
+
         RSAKeyPairGenerator generator = new RSAKeyPairGenerator();
 
         generator.init(
@@ -474,14 +660,18 @@ private static AsymmetricCipherKeyPair generateKeyPair()
                 X500Name subject,
                 AsymmetricCipherKeyPair keyPair)
     {
-        // The signature algorithm of the generated certificate defaults to
+        boolean ecdsa
+            = keyPair.getPrivate() instanceof ECPrivateKeyParameters;
+        // The signature algorithm of the generated RSA certificate defaults to
         // SHA1. However, allow the overriding of the default via the
         // ConfigurationService.
         String signatureAlgorithm
-            = ConfigUtils.getString(
-                    LibJitsi.getConfigurationService(),
-                    PROP_SIGNATURE_ALGORITHM,
-                    "SHA1withRSA");
+            = ecdsa
+                ? "SHA256withECDSA"
+                : ConfigUtils.getString(
+                        LibJitsi.getConfigurationService(),
+                        PROP_SIGNATURE_ALGORITHM,
+                        "SHA1withRSA");
 
         if (logger.isDebugEnabled())
             logger.debug("Signature algorithm: " + signatureAlgorithm);
@@ -490,7 +680,8 @@ private static AsymmetricCipherKeyPair generateKeyPair()
         {
             long now = System.currentTimeMillis();
             Date notBefore = new Date(now - ONE_DAY);
-            Date notAfter = new Date(now + ONE_DAY * 6 + CERT_CACHE_EXPIRE_TIME);
+            Date notAfter
+                = new Date(now + ONE_DAY * 6 + CERT_CACHE_EXPIRE_TIME);
             X509v3CertificateBuilder builder
                 = new X509v3CertificateBuilder(
                         /* issuer */ subject,
@@ -498,17 +689,16 @@ private static AsymmetricCipherKeyPair generateKeyPair()
                         notBefore,
                         notAfter,
                         subject,
-                        /* publicKeyInfo */
-                            SubjectPublicKeyInfoFactory
-                                .createSubjectPublicKeyInfo(
-                                    keyPair.getPublic()));
+                        createSubjectPublicKeyInfo(keyPair.getPublic()));
             AlgorithmIdentifier sigAlgId
                 = new DefaultSignatureAlgorithmIdentifierFinder()
                     .find(signatureAlgorithm);
             AlgorithmIdentifier digAlgId
                 = new DefaultDigestAlgorithmIdentifierFinder().find(sigAlgId);
             ContentSigner signer
-                = new BcRSAContentSignerBuilder(sigAlgId, digAlgId)
+                = (ecdsa
+                        ? new BcECContentSignerBuilder(sigAlgId, digAlgId)
+                        : new BcRSAContentSignerBuilder(sigAlgId, digAlgId))
                     .build(keyPair.getPrivate());
 
             return builder.build(signer).toASN1Structure();
@@ -532,6 +722,40 @@ private static AsymmetricCipherKeyPair generateKeyPair()
         }
     }
 
+    /**
+     * Gets the certificate, hash function, fingerprint, etc. which new
+     * <tt>DtlsControlImpl</tt> instances are to use. Only the very first
+     * invocation generates them on the calling thread. Afterwards a
+     * {@link CertificateRotator} replaces them in the background ahead of their
+     * expiry so that no <tt>DtlsControlImpl</tt> (and, consequently, no DTLS
+     * handshake) waits for the generation of a key pair.
+     *
+     * @return the cached certificate, hash function, fingerprint, etc.
+     */
+    private static CertificateInfo getCertificateInfoCache()
+    {
+        CertificateInfo certificateInfo;
+        CertificateRotator certificateRotator = null;
+
+        synchronized (DtlsControlImpl.class)
+        {
+            certificateInfo = certificateInfoCache;
+            if (certificateInfo == null)
+            {
+                certificateInfoCache
+                    = certificateInfo
+                        = generateCertificateInfo();
+                certificateRotator = new CertificateRotator(certificateInfo);
+            }
+        }
+        if (certificateRotator != null)
+        {
+            certificateRotationExecutor.registerRecurringRunnable(
+                    certificateRotator);
+        }
+        return certificateInfo;
+    }
+
     /**
      * Gets the <tt>String</tt> representation of a fingerprint specified in the
      * form of an array of <tt>byte</tt>s in accord with RFC 4572.
@@ -607,28 +831,12 @@ public DtlsControlImpl(boolean srtpDisabled)
     {
         super(SrtpControlType.DTLS_SRTP);
 
-        CertificateInfo certificateInfo;
-
         // The methods generateKeyPair(), generateX509Certificate(),
         // findHashFunction(), and/or computeFingerprint() may be too CPU
         // intensive to invoke for each new DtlsControlImpl instance. That's
         // why we've decided to reuse their return values within a certain time
-        // frame. Attempt to retrieve from the cache.
-        synchronized (DtlsControlImpl.class)
-        {
-            certificateInfo = certificateInfoCache;
-            if (certificateInfo == null
-                    || certificateInfo.timestamp + CERT_CACHE_EXPIRE_TIME
-                        < System.currentTimeMillis())
-            {
-                // The cache doesn't exist yet or has outlived its lifetime.
-                // Rebuild the cache.
-                certificateInfoCache
-                    = certificateInfo
-                        = generateCertificateInfo();
-            }
-        }
-        this.certificateInfo = certificateInfo;
+        // frame.
+        certificateInfo = getCertificateInfoCache();
 
         properties = new Properties(srtpDisabled);
     }
@@ -982,4 +1190,103 @@ boolean verifyAndValidateCertificate(
         }
         return b;
     }
+
+    /**
+     * Generates the replacement of {@link #certificateInfoCache} in the
+     * background {@link #CERT_ROTATION_LEAD_TIME} before the cached certificate
+     * expires. The expired certificate remains in use until its replacement
+     * has been generated because the validity of the generated certificates
+     * extends well beyond {@link #CERT_CACHE_EXPIRE_TIME}.
+     */
+    static class CertificateRotator
+        implements RecurringRunnable
+    {
+        /**
+         * Gets the time (in milliseconds of system time) at which the
+         * replacement of a specific certificate is to be generated.
+         *
+         * @param certificateInfo the certificate to be replaced
+         * @return the time at which the replacement of
+         * <tt>certificateInfo</tt> is to be generated
+         */
+        private static long getRotationTime(CertificateInfo certificateInfo)
+        {
+            long lead
+                = Math.min(CERT_ROTATION_LEAD_TIME, CERT_CACHE_EXPIRE_TIME / 2);
+
+            // Do not spin if the cache is configured to (almost) never be
+            // reused.
+            return
+                certificateInfo.timestamp
+                    + Math.max(CERT_CACHE_EXPIRE_TIME - lead, 1000L);
+        }
+
+        /**
+         * The time (in milliseconds of system time) at which the next
+         * certificate is to be generated.
+         */
+        private long nextRunTime;
+
+        /**
+         * Initializes a new <tt>CertificateRotator</tt> instance.
+         *
+         * @param certificateInfo the certificate which is to be replaced first
+         */
+        CertificateRotator(CertificateInfo certificateInfo)
+        {
+            nextRunTime = getRotationTime(certificateInfo);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTimeUntilNextRun()
+        {
+            return Math.max(nextRunTime - System.currentTimeMillis(), 0L);
+        }
+
+        /**
+         * Generates a new certificate and makes it the one which new
+         * <tt>DtlsControlImpl</tt> instances use.
+         */
+        @Override
+        public void run()
+        {
+            CertificateInfo certificateInfo;
+
+            try
+            {
+                certificateInfo = generateCertificateInfo();
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+
+                logger.error(
+                        "Failed to generate the replacement of the DTLS"
+                            + " certificate, will retry in "
+                            + CERT_ROTATION_RETRY_INTERVAL + " ms",
+                        t);
+                nextRunTime
+                    = System.currentTimeMillis() + CERT_ROTATION_RETRY_INTERVAL;
+                return;
+            }
+
+            synchronized (DtlsControlImpl.class)
+            {
+                certificateInfoCache = certificateInfo;
+            }
+            nextRunTime = getRotationTime(certificateInfo);
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(
+                        "Rotated the DTLS certificate, fingerprint "
+                            + certificateInfo.localFingerprintHashFunction + " "
+                            + certificateInfo.localFingerprint);
+            }
+        }
+    }
 }
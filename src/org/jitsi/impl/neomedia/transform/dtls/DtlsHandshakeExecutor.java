@@ -0,0 +1,549 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.dtls;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.util.*;
+
+/**
+ * Runs the DTLS handshakes of all <tt>DtlsPacketTransformer</tt>s on a bounded
+ * pool of threads. A handshake which cannot be started right away waits in a
+ * bounded queue. A handshake submitted while the queue is full runs on a
+ * dedicated thread (as all handshakes used to) because the remote peer would
+ * otherwise wait for it in vain. The number of such dedicated threads is
+ * bounded as well and a handshake submitted past that bound fails right away.
+ * <p>
+ * Also maintains the metrics of the handshakes (their durations and the time
+ * they spent waiting for a thread) and of the SRTP packets which
+ * <tt>DtlsPacketTransformer</tt>s buffered or dropped because their SRTP keys
+ * were not ready yet.
+ */
+public class DtlsHandshakeExecutor
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>DtlsHandshakeExecutor</tt> class and
+     * its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(DtlsHandshakeExecutor.class);
+
+    /**
+     * The name of the property which specifies the maximum number of
+     * handshakes of the shared instance which wait for a thread.
+     */
+    public static final String QUEUE_CAPACITY_PNAME
+        = DtlsHandshakeExecutor.class.getName() + ".queueCapacity";
+
+    /**
+     * The default value of the {@link #QUEUE_CAPACITY_PNAME} property.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The name of the property which specifies the maximum number of
+     * handshakes of the shared instance which run on dedicated threads at the
+     * same time because the queue was full.
+     */
+    public static final String MAX_OVERFLOW_THREADS_PNAME
+        = DtlsHandshakeExecutor.class.getName() + ".maxOverflowThreads";
+
+    /**
+     * The default value of the {@link #MAX_OVERFLOW_THREADS_PNAME} property.
+     */
+    public static final int DEFAULT_MAX_OVERFLOW_THREADS = 16;
+
+    /**
+     * The name of the property which specifies the number of threads of the
+     * shared instance. A handshake spends part of its time waiting for the
+     * remote peer so the default is twice the number of processors.
+     */
+    public static final String THREAD_COUNT_PNAME
+        = DtlsHandshakeExecutor.class.getName() + ".threadCount";
+
+    /**
+     * The shared instance, lazily initialized by {@link #getInstance()}.
+     */
+    private static DtlsHandshakeExecutor instance;
+
+    /**
+     * Gets the <tt>DtlsHandshakeExecutor</tt> shared by all
+     * <tt>DtlsPacketTransformer</tt>s.
+     *
+     * @return the shared <tt>DtlsHandshakeExecutor</tt> instance
+     */
+    public static synchronized DtlsHandshakeExecutor getInstance()
+    {
+        if (instance == null)
+        {
+            int threadCount
+                = ConfigUtils.getInt(
+                        LibJitsi.getConfigurationService(),
+                        THREAD_COUNT_PNAME,
+                        2 * Runtime.getRuntime().availableProcessors());
+            int queueCapacity
+                = ConfigUtils.getInt(
+                        LibJitsi.getConfigurationService(),
+                        QUEUE_CAPACITY_PNAME,
+                        DEFAULT_QUEUE_CAPACITY);
+            int maxOverflowThreads
+                = ConfigUtils.getInt(
+                        LibJitsi.getConfigurationService(),
+                        MAX_OVERFLOW_THREADS_PNAME,
+                        DEFAULT_MAX_OVERFLOW_THREADS);
+
+            instance
+                = new DtlsHandshakeExecutor(
+                        Math.max(1, threadCount),
+                        Math.max(1, queueCapacity),
+                        Math.max(0, maxOverflowThreads));
+        }
+        return instance;
+    }
+
+    /**
+     * Sets a specific <tt>AtomicLong</tt> to a specific value if the value is
+     * greater than the current one.
+     *
+     * @param max the <tt>AtomicLong</tt> which holds a maximum
+     * @param value the value to update <tt>max</tt> with
+     */
+    private static void updateMax(AtomicLong max, long value)
+    {
+        long current;
+
+        while ((current = max.get()) < value
+                && !max.compareAndSet(current, value));
+    }
+
+    /**
+     * The number of handshakes which were dropped because the queue was full
+     * and the maximum number of dedicated threads were running already.
+     */
+    private final AtomicLong droppedHandshakes = new AtomicLong();
+
+    /**
+     * The number of handshakes which failed to establish a DTLS connection.
+     */
+    private final AtomicLong failedHandshakes = new AtomicLong();
+
+    /**
+     * The number of handshakes which have run to completion (successfully or
+     * not).
+     */
+    private final AtomicLong handshakes = new AtomicLong();
+
+    /**
+     * The maximum duration in nanoseconds of a handshake.
+     */
+    private final AtomicLong maxHandshakeNanos = new AtomicLong();
+
+    /**
+     * The maximum time in nanoseconds a handshake waited for a thread.
+     */
+    private final AtomicLong maxQueueingNanos = new AtomicLong();
+
+    /**
+     * The permits for the dedicated threads which run the handshakes rejected
+     * by {@link #threadPool}.
+     */
+    private final Semaphore overflowThreads;
+
+    /**
+     * The number of SRTP packets which were buffered because the SRTP keys
+     * were not ready.
+     */
+    private final AtomicLong preHandshakePacketsBuffered = new AtomicLong();
+
+    /**
+     * The number of SRTP packets which were dropped because the SRTP keys
+     * were not ready.
+     */
+    private final AtomicLong preHandshakePacketsDropped = new AtomicLong();
+
+    /**
+     * The number of handshakes which were rejected by {@link #threadPool}
+     * because the queue was full and ran on dedicated threads or were
+     * dropped.
+     */
+    private final AtomicLong rejectedHandshakes = new AtomicLong();
+
+    /**
+     * The pool of threads which run the handshakes.
+     */
+    private final ThreadPoolExecutor threadPool;
+
+    /**
+     * The sum in nanoseconds of the durations of the handshakes.
+     */
+    private final AtomicLong totalHandshakeNanos = new AtomicLong();
+
+    /**
+     * The sum in nanoseconds of the times the handshakes waited for a thread.
+     */
+    private final AtomicLong totalQueueingNanos = new AtomicLong();
+
+    /**
+     * The <tt>ThreadFactory</tt> which creates the threads of
+     * {@link #threadPool} and the dedicated threads of the handshakes it
+     * rejects.
+     */
+    private final ThreadFactory threadFactory
+        = new ThreadFactory()
+        {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r);
+
+                t.setDaemon(true);
+                t.setName(
+                        DtlsHandshakeExecutor.class.getName()
+                            + "-" + index.getAndIncrement());
+                return t;
+            }
+        };
+
+    /**
+     * Initializes a new <tt>DtlsHandshakeExecutor</tt> instance.
+     *
+     * @param threadCount the maximum number of handshakes to run at the same
+     * time
+     * @param queueCapacity the maximum number of handshakes to wait for a
+     * thread
+     * @param maxOverflowThreads the maximum number of handshakes to run on
+     * dedicated threads at the same time when the queue is full
+     */
+    DtlsHandshakeExecutor(
+            int threadCount,
+            int queueCapacity,
+            int maxOverflowThreads)
+    {
+        overflowThreads = new Semaphore(maxOverflowThreads);
+        threadPool
+            = new ThreadPoolExecutor(
+                    threadCount, threadCount,
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity),
+                    threadFactory);
+        // Do not keep idle threads around between bursts of handshakes.
+        threadPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Cancels a specific handshake submitted to this instance. If it has not
+     * started yet, it is removed from the queue.
+     *
+     * @param future the <tt>Future</tt> returned by
+     * {@link #submit(Runnable)} for the handshake to cancel
+     */
+    void cancel(Future<?> future)
+    {
+        future.cancel(false);
+        threadPool.remove((Runnable) future);
+    }
+
+    /**
+     * Drops a specific handshake which this instance is too overloaded to
+     * run. The handshake is counted as failed and never runs.
+     *
+     * @param future the <tt>Future</tt> of the handshake to drop
+     */
+    private void drop(Future<?> future)
+    {
+        future.cancel(false);
+        droppedHandshakes.incrementAndGet();
+        handshakeFailed();
+    }
+
+    /**
+     * Gets the number of handshakes which are running.
+     *
+     * @return the number of handshakes which are running
+     */
+    public int getActiveHandshakeCount()
+    {
+        return threadPool.getActiveCount();
+    }
+
+    /**
+     * Gets the average duration in nanoseconds of the handshakes.
+     *
+     * @return the average duration in nanoseconds of the handshakes
+     */
+    public long getAverageHandshakeNanos()
+    {
+        long count = handshakes.get();
+
+        return (count == 0) ? 0 : totalHandshakeNanos.get() / count;
+    }
+
+    /**
+     * Gets the average time in nanoseconds the handshakes waited for a thread.
+     *
+     * @return the average queueing delay in nanoseconds of the handshakes
+     */
+    public long getAverageQueueingNanos()
+    {
+        long count = handshakes.get();
+
+        return (count == 0) ? 0 : totalQueueingNanos.get() / count;
+    }
+
+    /**
+     * Gets the number of handshakes which were dropped because the queue was
+     * full and the maximum number of dedicated threads were running already.
+     * Dropped handshakes are counted as failed as well.
+     *
+     * @return the number of dropped handshakes
+     */
+    public long getDroppedHandshakeCount()
+    {
+        return droppedHandshakes.get();
+    }
+
+    /**
+     * Gets the number of handshakes which failed to establish a DTLS
+     * connection.
+     *
+     * @return the number of failed handshakes
+     */
+    public long getFailedHandshakeCount()
+    {
+        return failedHandshakes.get();
+    }
+
+    /**
+     * Gets the number of handshakes which have run to completion (successfully
+     * or not).
+     *
+     * @return the number of completed handshakes
+     */
+    public long getHandshakeCount()
+    {
+        return handshakes.get();
+    }
+
+    /**
+     * Gets the maximum duration in nanoseconds of a handshake.
+     *
+     * @return the maximum duration in nanoseconds of a handshake
+     */
+    public long getMaxHandshakeNanos()
+    {
+        return maxHandshakeNanos.get();
+    }
+
+    /**
+     * Gets the maximum time in nanoseconds a handshake waited for a thread.
+     *
+     * @return the maximum queueing delay in nanoseconds of a handshake
+     */
+    public long getMaxQueueingNanos()
+    {
+        return maxQueueingNanos.get();
+    }
+
+    /**
+     * Gets the number of SRTP packets which were buffered because the SRTP
+     * keys were not ready.
+     *
+     * @return the number of SRTP packets buffered before the end of the
+     * handshakes
+     */
+    public long getPreHandshakePacketsBuffered()
+    {
+        return preHandshakePacketsBuffered.get();
+    }
+
+    /**
+     * Gets the number of SRTP packets which were dropped because the SRTP
+     * keys were not ready (or were buffered for too long).
+     *
+     * @return the number of SRTP packets dropped before the end of the
+     * handshakes
+     */
+    public long getPreHandshakePacketsDropped()
+    {
+        return preHandshakePacketsDropped.get();
+    }
+
+    /**
+     * Gets the number of handshakes which are waiting for a thread.
+     *
+     * @return the number of queued handshakes
+     */
+    public int getQueuedHandshakeCount()
+    {
+        return threadPool.getQueue().size();
+    }
+
+    /**
+     * Gets the number of handshakes which were rejected by the pool of threads
+     * because the queue was full and ran on dedicated threads or were dropped.
+     *
+     * @return the number of rejected handshakes
+     */
+    public long getRejectedHandshakeCount()
+    {
+        return rejectedHandshakes.get();
+    }
+
+    /**
+     * Notifies this instance that a handshake has failed to establish a DTLS
+     * connection.
+     */
+    void handshakeFailed()
+    {
+        failedHandshakes.incrementAndGet();
+    }
+
+    /**
+     * Notifies this instance that a specific number of SRTP packets have been
+     * buffered because the SRTP keys were not ready.
+     *
+     * @param count the number of buffered packets
+     */
+    void preHandshakePacketsBuffered(int count)
+    {
+        preHandshakePacketsBuffered.addAndGet(count);
+    }
+
+    /**
+     * Notifies this instance that a specific number of SRTP packets have been
+     * dropped because the SRTP keys were not ready.
+     *
+     * @param count the number of dropped packets
+     */
+    void preHandshakePacketsDropped(int count)
+    {
+        preHandshakePacketsDropped.addAndGet(count);
+    }
+
+    /**
+     * Submits a specific handshake for execution.
+     *
+     * @param handshake the <tt>Runnable</tt> which performs the handshake
+     * @return a <tt>Future</tt> which represents the pending handshake and
+     * which may be given to {@link #cancel(Future)}. It is cancelled already
+     * if the handshake was dropped because this instance is overloaded.
+     */
+    Future<?> submit(final Runnable handshake)
+    {
+        final long submitNanos = System.nanoTime();
+        FutureTask<Void> future
+            = new FutureTask<>(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            long startNanos = System.nanoTime();
+                            long queueingNanos = startNanos - submitNanos;
+
+                            totalQueueingNanos.addAndGet(queueingNanos);
+                            updateMax(maxQueueingNanos, queueingNanos);
+                            try
+                            {
+                                handshake.run();
+                            }
+                            catch (Throwable t)
+                            {
+                                // The FutureTask would swallow t.
+                                if (t instanceof ThreadDeath)
+                                    throw (ThreadDeath) t;
+                                logger.error(
+                                        "Failed to run a DTLS handshake.",
+                                        t);
+                            }
+                            finally
+                            {
+                                long handshakeNanos
+                                    = System.nanoTime() - startNanos;
+
+                                totalHandshakeNanos.addAndGet(handshakeNanos);
+                                updateMax(maxHandshakeNanos, handshakeNanos);
+                                handshakes.incrementAndGet();
+                            }
+                        }
+                    },
+                    null);
+
+        try
+        {
+            threadPool.execute(future);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            rejectedHandshakes.incrementAndGet();
+            if (overflowThreads.tryAcquire())
+            {
+                logger.warn(
+                        "Running a DTLS handshake on a dedicated thread, "
+                            + threadPool.getQueue().size()
+                            + " handshakes are waiting already.");
+
+                final FutureTask<Void> overflow = future;
+
+                try
+                {
+                    threadFactory.newThread(
+                            new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    try
+                                    {
+                                        overflow.run();
+                                    }
+                                    finally
+                                    {
+                                        overflowThreads.release();
+                                    }
+                                }
+                            })
+                        .start();
+                }
+                catch (Throwable t)
+                {
+                    overflowThreads.release();
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error(
+                            "Failed to start a thread for a DTLS handshake.",
+                            t);
+                    drop(future);
+                }
+            }
+            else
+            {
+                logger.error(
+                        "Dropping a DTLS handshake, "
+                            + threadPool.getQueue().size()
+                            + " handshakes are waiting and "
+                            + "the maximum number of dedicated threads are"
+                            + " running already.");
+                drop(future);
+            }
+        }
+        return future;
+    }
+}
@@ -19,6 +19,7 @@
 import java.io.*;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.bouncycastle.crypto.tls.*;
 import org.ice4j.ice.*;
@@ -102,9 +103,20 @@
      * {@link #_reverseTransformSrtpQueue} and {@link #_transformSrtpQueue}.
      * Defined in order to reduce excessive memory use (which may lead to
      * {@link OutOfMemoryError}s, for example).
+     *
+     * @see #TRANSFORM_QUEUE_CAPACITY_PNAME
+     */
+    private static final int TRANSFORM_QUEUE_CAPACITY;
+
+    /**
+     * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt>
+     * property which specifies the maximum number of SRTP packets to be sent
+     * or received which a <tt>DtlsPacketTransformer</tt> buffers (in each
+     * direction) while its DTLS handshake is in progress. The default value is
+     * {@link RTPConnectorOutputStream#PACKET_QUEUE_CAPACITY}.
      */
-    private static final int TRANSFORM_QUEUE_CAPACITY
-        = RTPConnectorOutputStream.PACKET_QUEUE_CAPACITY;
+    private static final String TRANSFORM_QUEUE_CAPACITY_PNAME
+        = DtlsPacketTransformer.class.getName() + ".transformQueueCapacity";
 
     static
     {
@@ -112,6 +124,13 @@
 
         DROP_UNENCRYPTED_PKTS
             = ConfigUtils.getBoolean(cfg, DROP_UNENCRYPTED_PKTS_PNAME, false);
+        TRANSFORM_QUEUE_CAPACITY
+            = Math.max(
+                    1,
+                    ConfigUtils.getInt(
+                            cfg,
+                            TRANSFORM_QUEUE_CAPACITY_PNAME,
+                            RTPConnectorOutputStream.PACKET_QUEUE_CAPACITY));
     }
 
     /**
@@ -184,10 +203,19 @@ public static boolean isDtlsRecord(byte[] buf, int off, int len)
     private AbstractRTPConnector connector;
 
     /**
-     * The background <tt>Thread</tt> which initializes {@link #dtlsTransport}.
+     * The <tt>Thread</tt> of the {@link DtlsHandshakeExecutor} which runs
+     * {@link #connectTask} to initialize {@link #dtlsTransport}.
      */
     private Thread connectThread;
 
+    /**
+     * The handshake which has been submitted to the
+     * {@link DtlsHandshakeExecutor} in order to initialize
+     * {@link #dtlsTransport} and which is either waiting for or running in
+     * {@link #connectThread}.
+     */
+    private ConnectTask connectTask;
+
     /**
      * The <tt>DatagramTransport</tt> implementation which adapts
      * {@link #connector} and this <tt>PacketTransformer</tt> to the terms of
@@ -431,7 +459,7 @@ private SinglePacketTransformer getSRTPTransformer()
                 if (srtpTransformer != null)
                     break; // _srtpTransformer is initialized
 
-                if (connectThread == null)
+                if (connectTask == null)
                 {
                     // Though _srtpTransformer is NOT initialized, there is no
                     // point in waiting because there is no one to initialize
@@ -618,6 +646,22 @@ private SinglePacketTransformer initializeSRTPTransformer(
             auth_key_length = 160 / 8;
             RTCP_auth_tag_length = RTP_auth_tag_length = 80 / 8;
             break;
+        case DtlsControlImpl.SRTP_AEAD_AES_128_GCM:
+            cipher_key_length = 128 / 8;
+            cipher_salt_length = 96 / 8;
+            cipher = SRTPPolicy.AESGCM_ENCRYPTION;
+            auth_function = SRTPPolicy.NULL_AUTHENTICATION;
+            auth_key_length = 0;
+            RTCP_auth_tag_length = RTP_auth_tag_length = 128 / 8;
+            break;
+        case DtlsControlImpl.SRTP_AEAD_AES_256_GCM:
+            cipher_key_length = 256 / 8;
+            cipher_salt_length = 96 / 8;
+            cipher = SRTPPolicy.AESGCM_ENCRYPTION;
+            auth_function = SRTPPolicy.NULL_AUTHENTICATION;
+            auth_key_length = 0;
+            RTCP_auth_tag_length = RTP_auth_tag_length = 128 / 8;
+            break;
         case SRTPProtectionProfile.SRTP_NULL_HMAC_SHA1_32:
             cipher_key_length = 0;
             cipher_salt_length = 0;
@@ -832,6 +876,9 @@ private void queueTransformSrtp(RawPacket[] pkts, boolean transform)
             Queue<RawPacket> q
                 = transform ? _transformSrtpQueue : _reverseTransformSrtpQueue;
 
+            int buffered = 0;
+            int dropped = 0;
+
             synchronized (q)
             {
                 for (RawPacket pkt : pkts)
@@ -839,12 +886,23 @@ private void queueTransformSrtp(RawPacket[] pkts, boolean transform)
                     if (pkt != null)
                     {
                         while (q.size() >= TRANSFORM_QUEUE_CAPACITY
-                                && q.poll() != null);
+                                && q.poll() != null)
+                        {
+                            dropped++;
+                        }
 
                         q.add(pkt);
+                        buffered++;
                     }
                 }
             }
+
+            DtlsHandshakeExecutor executor
+                = DtlsHandshakeExecutor.getInstance();
+
+            executor.preHandshakePacketsBuffered(buffered);
+            if (dropped != 0)
+                executor.preHandshakePacketsDropped(dropped);
         }
     }
 
@@ -1052,6 +1110,9 @@ else if (dtlsProtocol instanceof DTLSServerProtocol)
             throw new IllegalStateException("dtlsProtocol");
         }
 
+        if (dtlsTransport == null)
+            DtlsHandshakeExecutor.getInstance().handshakeFailed();
+
         SinglePacketTransformer srtpTransformer
             = (dtlsTransport == null || !srtp)
                 ? null
@@ -1199,7 +1260,7 @@ private synchronized void start()
     {
         if (this.datagramTransport != null)
         {
-            if (this.connectThread == null && dtlsTransport == null)
+            if (connectTask == null && dtlsTransport == null)
             {
                 logger.warn(
                         getClass().getName()
@@ -1245,54 +1306,17 @@ private synchronized void start()
 
         datagramTransport.setConnector(connector);
 
-        Thread connectThread
-            = new Thread()
-            {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        runInConnectThread(
-                                dtlsProtocolObj,
-                                tlsPeer,
-                                datagramTransport);
-                    }
-                    finally
-                    {
-                        if (Thread.currentThread().equals(
-                                DtlsPacketTransformer.this.connectThread))
-                        {
-                            DtlsPacketTransformer.this.connectThread = null;
-                        }
-                    }
-                }
-            };
+        ConnectTask connectTask
+            = new ConnectTask(dtlsProtocolObj, tlsPeer, datagramTransport);
 
-        connectThread.setDaemon(true);
-        connectThread.setName(
-                DtlsPacketTransformer.class.getName() + ".connectThread");
-
-        this.connectThread = connectThread;
+        this.connectTask = connectTask;
         this.datagramTransport = datagramTransport;
-
-        boolean started = false;
-
-        try
-        {
-            connectThread.start();
-            started = true;
-        }
-        finally
-        {
-            if (!started)
-            {
-                if (connectThread.equals(this.connectThread))
-                    this.connectThread = null;
-                if (datagramTransport.equals(this.datagramTransport))
-                    this.datagramTransport = null;
-            }
-        }
+        connectTask.future
+            = DtlsHandshakeExecutor.getInstance().submit(connectTask);
+        // The executor drops the handshake if it is overloaded. There is no
+        // one to wait for then.
+        if (connectTask.future.isCancelled())
+            this.connectTask = null;
 
         notifyAll();
     }
@@ -1303,6 +1327,16 @@ public void run()
     private synchronized void stop()
     {
         started = false;
+        if (connectTask != null)
+        {
+            // A handshake which is waiting for a thread is not to take one.
+            // A running handshake notices that it has been stopped in
+            // enterRunInConnectThreadLoop or fails because datagramTransport
+            // is closed below.
+            if (connectTask.future != null)
+                DtlsHandshakeExecutor.getInstance().cancel(connectTask.future);
+            connectTask = null;
+        }
         if (connectThread != null)
             connectThread = null;
         try
@@ -1542,6 +1576,18 @@ private List<RawPacket> transformSrtp(
             {
                 queueTransformSrtp(inPkts, transform);
             }
+            else if (inPkts != null)
+            {
+                int dropped = 0;
+
+                for (RawPacket inPkt : inPkts)
+                {
+                    if (inPkt != null)
+                        dropped++;
+                }
+                DtlsHandshakeExecutor.getInstance()
+                    .preHandshakePacketsDropped(dropped);
+            }
         }
         else
         {
@@ -1673,6 +1719,8 @@ private void clearQueue(LinkedList<RawPacket> q, RawPacket template)
             // were not "read" 3 seconds after DTLS finished, they can safely be
             // dropped, and we do so to avoid looping through the queue on every
             // subsequent packet.
+            DtlsHandshakeExecutor.getInstance()
+                .preHandshakePacketsDropped(q.size());
             q.clear();
             return;
         }
@@ -1718,4 +1766,87 @@ else if (RTCPPacketPredicate.INSTANCE.test(template))
 
         return true;
     }
+    /**
+     * The DTLS handshake of a <tt>DtlsPacketTransformer</tt> which is run by
+     * the {@link DtlsHandshakeExecutor}.
+     */
+    private class ConnectTask
+        implements Runnable
+    {
+        /**
+         * The <tt>DatagramTransport</tt> to perform the handshake over.
+         */
+        private final DatagramTransport datagramTransport;
+
+        /**
+         * The <tt>DTLSProtocol</tt> which performs the handshake.
+         */
+        private final DTLSProtocol dtlsProtocol;
+
+        /**
+         * The <tt>Future</tt> which represents this handshake in the
+         * {@link DtlsHandshakeExecutor}.
+         */
+        private Future<?> future;
+
+        /**
+         * The <tt>TlsPeer</tt> which performs the handshake.
+         */
+        private final TlsPeer tlsPeer;
+
+        /**
+         * Initializes a new <tt>ConnectTask</tt> instance.
+         *
+         * @param dtlsProtocol the <tt>DTLSProtocol</tt> which is to perform
+         * the handshake
+         * @param tlsPeer the <tt>TlsPeer</tt> which is to perform the
+         * handshake
+         * @param datagramTransport the <tt>DatagramTransport</tt> to perform
+         * the handshake over
+         */
+        ConnectTask(
+                DTLSProtocol dtlsProtocol,
+                TlsPeer tlsPeer,
+                DatagramTransport datagramTransport)
+        {
+            this.dtlsProtocol = dtlsProtocol;
+            this.tlsPeer = tlsPeer;
+            this.datagramTransport = datagramTransport;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Runs the handshake in the current <tt>Thread</tt> (of the
+         * {@link DtlsHandshakeExecutor}) unless the
+         * <tt>DtlsPacketTransformer</tt> has been stopped in the meantime.
+         */
+        @Override
+        public void run()
+        {
+            Thread currentThread = Thread.currentThread();
+
+            synchronized (DtlsPacketTransformer.this)
+            {
+                if (!equals(connectTask))
+                    return;
+                connectThread = currentThread;
+            }
+            try
+            {
+                runInConnectThread(dtlsProtocol, tlsPeer, datagramTransport);
+            }
+            finally
+            {
+                synchronized (DtlsPacketTransformer.this)
+                {
+                    if (currentThread.equals(connectThread))
+                        connectThread = null;
+                    if (equals(connectTask))
+                        connectTask = null;
+                    DtlsPacketTransformer.this.notifyAll();
+                }
+            }
+        }
+    }
 }
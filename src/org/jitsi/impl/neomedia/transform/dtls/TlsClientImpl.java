@@ -344,16 +344,12 @@ public TlsCredentials getClientCredentials(
                 CertificateInfo certificateInfo
                     = getDtlsControl().getCertificateInfo();
 
-                // FIXME The signature and hash algorithms should be retrieved
-                // from the certificate.
                 clientCredentials
                     = new DefaultTlsSignerCredentials(
                             context,
                             certificateInfo.getCertificate(),
                             certificateInfo.getKeyPair().getPrivate(),
-                            new SignatureAndHashAlgorithm(
-                                    HashAlgorithm.sha1,
-                                    SignatureAlgorithm.rsa));
+                            certificateInfo.getSignatureAndHashAlgorithm());
             }
             return clientCredentials;
         }
@@ -41,7 +41,11 @@
      */
     private final CertificateRequest certificateRequest
         = new CertificateRequest(
-                new short[] { ClientCertificateType.rsa_sign },
+                new short[]
+                {
+                    ClientCertificateType.rsa_sign,
+                    ClientCertificateType.ecdsa_sign
+                },
                 /* supportedSignatureAlgorithms */ null,
                 /* certificateAuthorities */ null);
 
@@ -56,6 +60,12 @@
      */
     private final DtlsPacketTransformer packetTransformer;
 
+    /**
+     *
+     * @see DefaultTlsServer#getECDSASignerCredentials()
+     */
+    private TlsSignerCredentials ecdsaSignerCredentials;
+
     /**
      *
      * @see DefaultTlsServer#getRSAEncryptionCredentials()
@@ -105,11 +115,25 @@ int getChosenProtectionProfile()
      *
      * Overrides the super implementation to explicitly specify cipher suites
      * which we know to be supported by Bouncy Castle and provide Perfect
-     * Forward Secrecy.
+     * Forward Secrecy. Only the cipher suites which can be authenticated with
+     * the (ECDSA or RSA) certificate of the local endpoint are offered.
      */
     @Override
     protected int[] getCipherSuites()
     {
+        if (getDtlsControl().getCertificateInfo().isECDSA())
+        {
+            return new int[]
+            {
+                CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384,
+                CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256,
+                CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA384,
+                CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256,
+                CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA,
+                CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA
+            };
+        }
+
         return new int[]
         {
 /* core/src/main/java/org/bouncycastle/crypto/tls/DefaultTlsServer.java */
@@ -128,6 +152,31 @@ protected int[] getCipherSuites()
         };
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <tt>DefaultTlsServer</tt> requires <tt>ecdsaSignerCredentials</tt> for
+     * the ECDHE_ECDSA cipher suites but does not implement them.
+     */
+    @Override
+    protected TlsSignerCredentials getECDSASignerCredentials()
+        throws IOException
+    {
+        if (ecdsaSignerCredentials == null)
+        {
+            CertificateInfo certificateInfo
+                = getDtlsControl().getCertificateInfo();
+
+            ecdsaSignerCredentials
+                = new DefaultTlsSignerCredentials(
+                        context,
+                        certificateInfo.getCertificate(),
+                        certificateInfo.getKeyPair().getPrivate(),
+                        certificateInfo.getSignatureAndHashAlgorithm());
+        }
+        return ecdsaSignerCredentials;
+    }
+
     /**
      * Gets the <tt>TlsContext</tt> with which this <tt>TlsServer</tt> has been
      * initialized.
@@ -223,16 +272,12 @@ protected TlsSignerCredentials getRSASignerCredentials()
             CertificateInfo certificateInfo
                 = getDtlsControl().getCertificateInfo();
 
-            // FIXME The signature and hash algorithms should be retrieved from
-            // the certificate.
             rsaSignerCredentials
                 = new DefaultTlsSignerCredentials(
                         context,
                         certificateInfo.getCertificate(),
                         certificateInfo.getKeyPair().getPrivate(),
-                        new SignatureAndHashAlgorithm(
-                                HashAlgorithm.sha1,
-                                SignatureAlgorithm.rsa));
+                        certificateInfo.getSignatureAndHashAlgorithm());
         }
         return rsaSignerCredentials;
     }
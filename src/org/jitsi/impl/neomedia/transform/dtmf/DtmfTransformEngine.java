@@ -36,7 +36,7 @@
  */
 public class DtmfTransformEngine
     extends SinglePacketTransformer
-    implements TransformEngine
+    implements ConditionalTransformEngine
 {
     /**
      * The <tt>AudioMediaStreamImpl</tt> that this transform engine was created
@@ -237,6 +237,24 @@ public PacketTransformer getRTPTransformer()
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This engine is active while it has tones to send or while a payload
+     * type is negotiated for telephone events which it may have to intercept.
+     */
+    @Override
+    public boolean isActive()
+    {
+        if (!currentTone.isEmpty())
+            return true;
+
+        byte dtmfPayloadType
+            = mediaStream.getDynamicRTPPayloadType(Constants.TELEPHONE_EVENT);
+
+        return dtmfPayloadType != -1;
+    }
+
     /**
      * A stub meant to handle incoming DTMF packets.
      *
@@ -15,15 +15,27 @@
  */
 package org.jitsi.impl.neomedia.transform.fec;
 
+import org.jitsi.impl.neomedia.rtcp.*;
 import org.jitsi.impl.neomedia.transform.*;
+import org.jitsi.service.libjitsi.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Implements a {@link org.jitsi.impl.neomedia.transform.PacketTransformer} and
- * {@link org.jitsi.impl.neomedia.transform.TransformEngine} for RFC5109.
+ * {@link org.jitsi.impl.neomedia.transform.TransformEngine} for RFC5109 and
+ * for FlexFEC (RFC 8627). FlexFEC repair packets are sent in a separate RTP
+ * stream (with the SSRC set with {@link #setFlexFecSSRC(long)}) and the RTCP
+ * receiver reports of the media streams drive their adaptive protection.
+ *
+ * <tt>MediaStreamImpl</tt> sets the payload types of the negotiated formats
+ * but does not know the SSRC of the FlexFEC stream, which is signalled in the
+ * FEC-FR <tt>ssrc-group</tt>. The extender which creates the engine (by
+ * overriding <tt>MediaStreamImpl#getFecTransformEngine()</tt>) is expected
+ * to set it.
  *
  * @author Boris Grozev
  */
@@ -38,6 +50,21 @@
     private static final Logger logger
             = Logger.getLogger(FECTransformEngine.class);
 
+    /**
+     * The name of the <tt>ConfigurationService</tt> property which specifies
+     * whether the FlexFEC protection is adapted to the loss reported by the
+     * receivers by default.
+     */
+    public static final String FLEXFEC_ADAPTIVE_PNAME
+        = FECTransformEngine.class.getName() + ".FLEXFEC_ADAPTIVE";
+
+    /**
+     * Whether this engine has been closed. Guarded by each of the maps of
+     * receivers and senders so that no receiver or sender is created (and
+     * leaked) once the maps have been cleared by {@link #close()}.
+     */
+    private boolean closed = false;
+
     /**
      * Initial size for newly allocated byte arrays.
      */
@@ -82,6 +109,81 @@
     private final Map<Long,FECSender> fecSenders
             = new HashMap<Long,FECSender>();
 
+    /**
+     * Whether the FlexFEC protection is adapted to the loss reported by the
+     * receivers.
+     */
+    private boolean flexfecAdaptive
+        = ConfigUtils.getBoolean(
+                LibJitsi.getConfigurationService(),
+                FLEXFEC_ADAPTIVE_PNAME,
+                true);
+
+    /**
+     * The payload type for incoming FlexFEC packets or <tt>-1</tt> to disable
+     * the recovery of media packets from FlexFEC packets.
+     */
+    private byte flexfecIncomingPT = -1;
+
+    /**
+     * The payload type for outgoing FlexFEC packets or <tt>-1</tt> to disable
+     * the sending of FlexFEC packets.
+     */
+    private byte flexfecOutgoingPT = -1;
+
+    /**
+     * The fixed FlexFEC protection as <tt>{ L, D, row repair }</tt> which is
+     * used when {@link #flexfecAdaptive} is <tt>false</tt>.
+     */
+    private final int[] flexfecProtection = { 0, 0, 0 };
+
+    /**
+     * Maps an SSRC to a <tt>FlexFECReceiver</tt> to be used for the media
+     * and FlexFEC packets which protect that SSRC.
+     */
+    private final Map<Long,FlexFECReceiver> flexfecReceivers
+            = new HashMap<Long,FlexFECReceiver>();
+
+    /**
+     * Maps an SSRC to a <tt>FlexFECSender</tt> to be used for packets with
+     * that SSRC.
+     */
+    private final Map<Long,FlexFECSender> flexfecSenders
+            = new HashMap<Long,FlexFECSender>();
+
+    /**
+     * The sequence numbers of the outgoing FlexFEC stream.
+     */
+    private final AtomicInteger flexfecSequenceNumbers
+        = new AtomicInteger(new Random().nextInt(0x10000));
+
+    /**
+     * The SSRC of the outgoing FlexFEC stream or <tt>-1</tt> if it has not
+     * been set, in which case no FlexFEC packets are sent.
+     */
+    private long flexfecSSRC = -1;
+
+    /**
+     * The <tt>PacketTransformer</tt> which feeds the fraction lost reported in
+     * the incoming RTCP receiver reports to the <tt>FlexFECSender</tt>s.
+     */
+    private final PacketTransformer rtcpTransformer
+        = new SinglePacketTransformerAdapter()
+        {
+            /**
+             * The view used to read the incoming RTCP packets.
+             */
+            private final RTCPPacketView view = new RTCPPacketView();
+
+            @Override
+            public RawPacket reverseTransform(RawPacket pkt)
+            {
+                if (flexfecOutgoingPT != -1)
+                    reportLoss(view, pkt);
+                return pkt;
+            }
+        };
+
     /**
      * Initializes a new <tt>FECTransformEngine</tt> instance.
      *
@@ -112,6 +214,8 @@ public FECTransformEngine()
     @Override
     public RawPacket[] reverseTransform(RawPacket[] pkts)
     {
+        if (flexfecIncomingPT != -1 && pkts != null)
+            pkts = reverseTransformFlexFec(pkts);
         if (incomingPT == -1 || pkts == null)
             return pkts;
 
@@ -123,6 +227,8 @@ public RawPacket[] reverseTransform(RawPacket[] pkts)
         FECReceiver fpt;
         synchronized (fecReceivers)
         {
+            if (closed)
+                return pkts;
             fpt = fecReceivers.get(ssrc);
             if (fpt == null)
             {
@@ -144,7 +250,7 @@ public RawPacket[] reverseTransform(RawPacket[] pkts)
     public RawPacket[] transform(RawPacket[] pkts)
     {
         if (outgoingPT == -1 || pkts == null)
-            return pkts;
+            return transformFlexFec(pkts);
 
         Long ssrc = findSSRC(pkts);
         if (ssrc == null)
@@ -153,6 +259,8 @@ public RawPacket[] transform(RawPacket[] pkts)
         FECSender fpt;
         synchronized (fecSenders)
         {
+            if (closed)
+                return pkts;
             fpt = fecSenders.get(ssrc);
             if (fpt == null)
             {
@@ -161,7 +269,147 @@ public RawPacket[] transform(RawPacket[] pkts)
             }
         }
 
-        return fpt.transform(pkts);
+        return transformFlexFec(fpt.transform(pkts));
+    }
+
+    /**
+     * Recovers media packets from the incoming FlexFEC packets and removes
+     * the latter from <tt>pkts</tt>. Assumes that all packets in <tt>pkts</tt>
+     * belong to the same media stream (i.e. they are either media packets
+     * with the same SSRC or FlexFEC packets which protect that SSRC).
+     *
+     * @param pkts the incoming packets.
+     * @return the packets to pass on.
+     */
+    private RawPacket[] reverseTransformFlexFec(RawPacket[] pkts)
+    {
+        long ssrc = -1;
+
+        for (RawPacket p : pkts)
+        {
+            if (p != null)
+            {
+                ssrc
+                    = (p.getPayloadType() == flexfecIncomingPT)
+                        ? FlexFECPacket.getProtectedSSRC(p)
+                        : p.getSSRCAsLong();
+                break;
+            }
+        }
+        if (ssrc == -1)
+            return pkts;
+
+        FlexFECReceiver receiver;
+
+        synchronized (flexfecReceivers)
+        {
+            if (closed)
+                return pkts;
+            receiver = flexfecReceivers.get(ssrc);
+            if (receiver == null)
+            {
+                receiver = new FlexFECReceiver(ssrc, flexfecIncomingPT);
+                flexfecReceivers.put(ssrc, receiver);
+            }
+        }
+
+        return receiver.reverseTransform(pkts);
+    }
+
+    /**
+     * Adds FlexFEC packets which protect the media packets in <tt>pkts</tt>
+     * if the sending of FlexFEC packets is enabled.
+     *
+     * @param pkts the outgoing packets.
+     * @return the packets to send.
+     */
+    private RawPacket[] transformFlexFec(RawPacket[] pkts)
+    {
+        if (flexfecOutgoingPT == -1 || flexfecSSRC == -1 || pkts == null)
+            return pkts;
+
+        Long ssrc = findSSRC(pkts);
+        if (ssrc == null || ssrc == flexfecSSRC)
+            return pkts;
+
+        FlexFECSender sender;
+
+        synchronized (flexfecSenders)
+        {
+            if (closed)
+                return pkts;
+            sender = flexfecSenders.get(ssrc);
+            if (sender == null)
+            {
+                sender
+                    = new FlexFECSender(
+                            ssrc,
+                            flexfecSSRC,
+                            flexfecSequenceNumbers,
+                            flexfecOutgoingPT);
+                configure(sender);
+                flexfecSenders.put(ssrc, sender);
+            }
+        }
+
+        // The sender may be closed (by setFlexFecSSRC or close) before it
+        // transforms pkts, in which case it leaves them unchanged.
+        return sender.transform(pkts);
+    }
+
+    /**
+     * Applies the FlexFEC protection settings of this engine to a
+     * <tt>FlexFECSender</tt>.
+     *
+     * @param sender the <tt>FlexFECSender</tt> to configure.
+     */
+    private void configure(FlexFECSender sender)
+    {
+        if (flexfecAdaptive)
+        {
+            sender.setAdaptive();
+        }
+        else
+        {
+            sender.setProtection(
+                    flexfecProtection[0],
+                    flexfecProtection[1],
+                    flexfecProtection[2] != 0);
+        }
+    }
+
+    /**
+     * Feeds the fraction lost of the report blocks of an incoming RTCP
+     * (compound) packet to the <tt>FlexFECSender</tt>s of the reported SSRCs.
+     *
+     * @param view the view to read the RTCP packet with.
+     * @param pkt the incoming RTCP packet.
+     */
+    private void reportLoss(RTCPPacketView view, RawPacket pkt)
+    {
+        if (pkt == null)
+            return;
+
+        view.wrap(pkt.getBuffer(), pkt.getOffset(), pkt.getLength());
+        while (view.next())
+        {
+            int pt = view.getPacketType();
+
+            if (pt != RTCPPacketView.SR && pt != RTCPPacketView.RR)
+                continue;
+
+            for (int i = 0, count = view.getReportBlockCount(); i < count; i++)
+            {
+                FlexFECSender sender;
+
+                synchronized (flexfecSenders)
+                {
+                    sender = flexfecSenders.get(view.getReportBlockSSRC(i));
+                }
+                if (sender != null)
+                    sender.reportLoss(view.getFractionLost(i));
+            }
+        }
     }
 
     /**
@@ -172,22 +420,45 @@ public void close()
     {
         Collection<FECReceiver> receivers;
         Collection<FECSender> senders;
+        Collection<FlexFECReceiver> flexfecReceivers;
+        Collection<FlexFECSender> flexfecSenders;
 
         synchronized (fecReceivers)
         {
-            receivers = fecReceivers.values();
+            closed = true;
+            receivers = new ArrayList<FECReceiver>(fecReceivers.values());
             fecReceivers.clear();
         }
         synchronized (fecSenders)
         {
-            senders = fecSenders.values();
+            closed = true;
+            senders = new ArrayList<FECSender>(fecSenders.values());
             fecSenders.clear();
         }
+        synchronized (this.flexfecReceivers)
+        {
+            closed = true;
+            flexfecReceivers
+                = new ArrayList<FlexFECReceiver>(
+                        this.flexfecReceivers.values());
+            this.flexfecReceivers.clear();
+        }
+        synchronized (this.flexfecSenders)
+        {
+            closed = true;
+            flexfecSenders
+                = new ArrayList<FlexFECSender>(this.flexfecSenders.values());
+            this.flexfecSenders.clear();
+        }
 
         for (FECReceiver fecReceiver : receivers)
             fecReceiver.close();
         for (FECSender fecSender : senders)
             fecSender.close();
+        for (FlexFECReceiver flexfecReceiver : flexfecReceivers)
+            flexfecReceiver.close();
+        for (FlexFECSender flexfecSender : flexfecSenders)
+            flexfecSender.close();
     }
 
     /**
@@ -202,12 +473,13 @@ public PacketTransformer getRTPTransformer()
     /**
      * {@inheritDoc}
      *
-     * We don't touch RTCP.
+     * Reads the incoming receiver reports for the adaptive FlexFEC
+     * protection. RTCP packets are not modified.
      */
     @Override
     public PacketTransformer getRTCPTransformer()
     {
-        return null;
+        return rtcpTransformer;
     }
 
     /**
@@ -271,6 +543,121 @@ public int getFecRate()
         return fecRate;
     }
 
+    /**
+     * Sets the payload type for incoming FlexFEC packets.
+     *
+     * @param flexfecIncomingPT the payload type to set or <tt>-1</tt> to
+     * disable the recovery of media packets from FlexFEC packets.
+     */
+    public void setFlexFecIncomingPT(byte flexfecIncomingPT)
+    {
+        this.flexfecIncomingPT = flexfecIncomingPT;
+        synchronized (flexfecReceivers)
+        {
+            for (FlexFECReceiver f : flexfecReceivers.values())
+                f.setPayloadType(flexfecIncomingPT);
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("Setting payload type for incoming flexfec: "
+                    + flexfecIncomingPT);
+    }
+
+    /**
+     * Sets the payload type for outgoing FlexFEC packets. FlexFEC packets are
+     * only sent once the SSRC of the FlexFEC stream has been set with
+     * {@link #setFlexFecSSRC(long)}.
+     *
+     * @param flexfecOutgoingPT the payload type to set or <tt>-1</tt> to
+     * disable the sending of FlexFEC packets.
+     */
+    public void setFlexFecOutgoingPT(byte flexfecOutgoingPT)
+    {
+        this.flexfecOutgoingPT = flexfecOutgoingPT;
+        synchronized (flexfecSenders)
+        {
+            for (FlexFECSender f : flexfecSenders.values())
+                f.setPayloadType(flexfecOutgoingPT);
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("Setting payload type for outgoing flexfec: "
+                    + flexfecOutgoingPT);
+    }
+
+    /**
+     * Sets the SSRC of the outgoing FlexFEC stream. No FlexFEC packets are
+     * sent until it is set. The <tt>FlexFECSender</tt>s created with the
+     * previous SSRC are closed and the packets which they are transforming
+     * concurrently are left unprotected.
+     *
+     * @param flexfecSSRC the SSRC of the outgoing FlexFEC stream, as
+     * signalled in the FEC-FR <tt>ssrc-group</tt>.
+     */
+    public void setFlexFecSSRC(long flexfecSSRC)
+    {
+        Collection<FlexFECSender> senders;
+
+        synchronized (flexfecSenders)
+        {
+            this.flexfecSSRC = flexfecSSRC;
+
+            // The FlexFECSenders are recreated with the new SSRC.
+            senders = new ArrayList<FlexFECSender>(flexfecSenders.values());
+            flexfecSenders.clear();
+        }
+        for (FlexFECSender sender : senders)
+            sender.close();
+    }
+
+    /**
+     * Fixes the FlexFEC protection of the outgoing media packets and stops
+     * adapting it to the loss reported by the receivers. For example,
+     * <tt>(10, 0, true)</tt> sends a row repair packet for every 10 media
+     * packets, <tt>(5, 5, false)</tt> a column repair packet for every 5
+     * media packets of a block of 25, and <tt>(5, 5, true)</tt> both.
+     *
+     * @param columns the number of columns (L) in [0, 16]. If <tt>0</tt>, no
+     * FlexFEC packets are sent.
+     * @param rows the number of rows (D) in [0, 16]. If less than <tt>2</tt>,
+     * only row repair packets are sent.
+     * @param rowRepairs whether row repair packets are to be sent.
+     */
+    public void setFlexFecProtection(int columns, int rows, boolean rowRepairs)
+    {
+        if (columns < 0 || columns > FlexFECSender.MAX_DIMENSION)
+            throw new IllegalArgumentException("columns " + columns);
+        if (rows < 0 || rows > FlexFECSender.MAX_DIMENSION)
+            throw new IllegalArgumentException("rows " + rows);
+
+        synchronized (flexfecSenders)
+        {
+            flexfecAdaptive = false;
+            flexfecProtection[0] = columns;
+            flexfecProtection[1] = rows;
+            flexfecProtection[2] = rowRepairs ? 1 : 0;
+            for (FlexFECSender f : flexfecSenders.values())
+                configure(f);
+        }
+    }
+
+    /**
+     * Sets whether the FlexFEC protection of the outgoing media packets is
+     * adapted to the loss reported by the receivers. Disabling the adaptive
+     * protection restores the protection last set with
+     * {@link #setFlexFecProtection(int, int, boolean)}.
+     *
+     * @param flexfecAdaptive <tt>true</tt> to adapt the protection to the
+     * reported loss.
+     */
+    public void setFlexFecAdaptive(boolean flexfecAdaptive)
+    {
+        synchronized (flexfecSenders)
+        {
+            this.flexfecAdaptive = flexfecAdaptive;
+            for (FlexFECSender f : flexfecSenders.values())
+                configure(f);
+        }
+    }
+
     /**
      * Returns the SSRC in the first non-null element of <tt>pkts</tt> or
      * <tt>null</tt> if all elements of <tt>pkts</tt> are <tt>null</tt>
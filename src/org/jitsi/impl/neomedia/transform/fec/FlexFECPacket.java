@@ -0,0 +1,203 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.fec;
+
+import java.nio.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+
+/**
+ * Static utilities for FlexFEC (RFC 8627) repair packets with a fixed L/D
+ * protection pattern (F = 1).
+ *
+ * A repair packet is an RTP packet of the FlexFEC stream (with its own SSRC
+ * and sequence numbers) which lists the SSRC of the protected media stream
+ * as its only CSRC. It is followed by the FEC header and the repair payload:
+ * <pre>
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |R|F|P|X|  CC   |M| PT recovery |        length recovery        |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                          TS recovery                          |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |           SN base_i           |  L (columns)  |    D (rows)   |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * </pre>
+ * With <tt>D &lt;= 1</tt> the packet is a row repair packet which protects
+ * the <tt>L</tt> consecutive media packets starting at <tt>SN base</tt>.
+ * With <tt>D &gt; 1</tt> it is a column repair packet which protects the
+ * <tt>D</tt> media packets <tt>SN base + i * L</tt>.
+ */
+final class FlexFECPacket
+{
+    /**
+     * The length of the FEC header with a fixed L/D protection pattern.
+     */
+    static final int FEC_HEADER_LENGTH = 12;
+
+    /**
+     * The length of the RTP header of the repair packets sent by
+     * {@link FlexFECSender}: the fixed header and one CSRC.
+     */
+    static final int RTP_HEADER_LENGTH = RawPacket.FIXED_HEADER_SIZE + 4;
+
+    /**
+     * The offset of the repair payload in the repair packets sent by
+     * {@link FlexFECSender}.
+     */
+    static final int PAYLOAD_OFFSET = RTP_HEADER_LENGTH + FEC_HEADER_LENGTH;
+
+    /**
+     * Gets the number of columns (L) of a repair packet.
+     *
+     * @param buf the buffer of the repair packet.
+     * @param fecOff the offset in <tt>buf</tt> of the FEC header.
+     * @return the number of columns of the repair packet.
+     */
+    static int getColumns(byte[] buf, int fecOff)
+    {
+        return buf[fecOff + 10] & 0xff;
+    }
+
+    /**
+     * Gets the number of media packets protected by a repair packet.
+     *
+     * @param buf the buffer of the repair packet.
+     * @param fecOff the offset in <tt>buf</tt> of the FEC header.
+     * @return the number of media packets protected by the repair packet.
+     */
+    static int getProtectedCount(byte[] buf, int fecOff)
+    {
+        int rows = getRows(buf, fecOff);
+
+        return (rows <= 1) ? getColumns(buf, fecOff) : rows;
+    }
+
+    /**
+     * Gets the SSRC of the media stream protected by a repair packet.
+     *
+     * @param pkt the repair packet.
+     * @return the SSRC of the media stream protected by <tt>pkt</tt> or
+     * <tt>-1</tt> if <tt>pkt</tt> does not list one.
+     */
+    static long getProtectedSSRC(RawPacket pkt)
+    {
+        if (pkt.getLength() < RTP_HEADER_LENGTH || pkt.getCsrcCount() < 1)
+            return -1;
+
+        return pkt.readUint32AsLong(RawPacket.FIXED_HEADER_SIZE);
+    }
+
+    /**
+     * Gets the number of rows (D) of a repair packet.
+     *
+     * @param buf the buffer of the repair packet.
+     * @param fecOff the offset in <tt>buf</tt> of the FEC header.
+     * @return the number of rows of the repair packet.
+     */
+    static int getRows(byte[] buf, int fecOff)
+    {
+        return buf[fecOff + 11] & 0xff;
+    }
+
+    /**
+     * Gets the sequence number of the <tt>i</tt>-th media packet protected by
+     * a repair packet.
+     *
+     * @param buf the buffer of the repair packet.
+     * @param fecOff the offset in <tt>buf</tt> of the FEC header.
+     * @param i the index of the protected media packet.
+     * @return the sequence number of the <tt>i</tt>-th media packet protected
+     * by the repair packet.
+     */
+    static int getProtectedSequenceNumber(byte[] buf, int fecOff, int i)
+    {
+        int step = (getRows(buf, fecOff) <= 1) ? 1 : getColumns(buf, fecOff);
+
+        return (getSNBase(buf, fecOff) + i * step) & 0xffff;
+    }
+
+    /**
+     * Gets the SN base of a repair packet.
+     *
+     * @param buf the buffer of the repair packet.
+     * @param fecOff the offset in <tt>buf</tt> of the FEC header.
+     * @return the sequence number of the first media packet protected by the
+     * repair packet.
+     */
+    static int getSNBase(byte[] buf, int fecOff)
+    {
+        return RTPUtils.readUint16AsInt(buf, fecOff + 8);
+    }
+
+    /**
+     * Determines whether a FEC header uses a fixed L/D protection pattern
+     * (F = 1) and is not a retransmission (R = 0), which is the only kind of
+     * FlexFEC repair packet supported by {@link FlexFECReceiver}.
+     *
+     * @param buf the buffer of the repair packet.
+     * @param fecOff the offset in <tt>buf</tt> of the FEC header.
+     * @return <tt>true</tt> if the FEC header is supported; otherwise,
+     * <tt>false</tt>.
+     */
+    static boolean isSupported(byte[] buf, int fecOff)
+    {
+        return (buf[fecOff] & 0xc0) == 0x40 && getColumns(buf, fecOff) > 0;
+    }
+
+    /**
+     * XORs <tt>len</tt> bytes of <tt>src</tt> into <tt>dst</tt> eight bytes
+     * at a time. Heap <tt>ByteBuffer</tt>s in the native byte order are used
+     * as long views of the arrays, which the JIT compiles into word-wide
+     * loads and stores (the order of the bytes of the words does not matter
+     * to XOR).
+     *
+     * @param src the array to XOR into <tt>dst</tt>.
+     * @param srcOff the offset in <tt>src</tt>.
+     * @param dst the array to XOR into.
+     * @param dstOff the offset in <tt>dst</tt>.
+     * @param len the number of bytes to XOR.
+     */
+    static void xor(byte[] src, int srcOff, byte[] dst, int dstOff, int len)
+    {
+        int i = 0;
+
+        if (len >= 8)
+        {
+            ByteOrder order = ByteOrder.nativeOrder();
+            ByteBuffer s = ByteBuffer.wrap(src).order(order);
+            ByteBuffer d = ByteBuffer.wrap(dst).order(order);
+
+            for (int end = len - 7; i < end; i += 8)
+            {
+                int o = dstOff + i;
+
+                d.putLong(o, d.getLong(o) ^ s.getLong(srcOff + i));
+            }
+        }
+        for (; i < len; i++)
+            dst[dstOff + i] ^= src[srcOff + i];
+    }
+
+    /**
+     * Prevents the initialization of <tt>FlexFECPacket</tt> instances.
+     */
+    private FlexFECPacket()
+    {
+    }
+}
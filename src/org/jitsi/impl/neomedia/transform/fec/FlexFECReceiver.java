@@ -0,0 +1,608 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.fec;
+
+import org.jitsi.impl.neomedia.transform.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+
+/**
+ * A <tt>PacketTransformer</tt> which recovers lost media packets of a single
+ * SSRC from FlexFEC (RFC 8627) repair packets with a fixed L/D protection
+ * pattern. Unlike {@link FECReceiver}, copies of the received media packets
+ * are kept in a window indexed by the low bits of their sequence numbers
+ * rather than in a sorted map, and the repair payloads are XOR-ed eight bytes
+ * at a time.
+ *
+ * A repair packet is kept until all the media packets it protects are
+ * available, one of them has been recovered from it or it falls out of the
+ * window. The repair packets are tried again after each recovery so that a
+ * packet recovered from a row repair packet may allow the recovery of another
+ * packet from a column repair packet (and vice versa) with 2-D protection.
+ */
+class FlexFECReceiver
+    implements PacketTransformer
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FlexFECReceiver</tt> class and its
+     * instances to print debug information.
+     */
+    private static final Logger logger
+        = Logger.getLogger(FlexFECReceiver.class);
+
+    /**
+     * The name of the <tt>ConfigurationService</tt> property which specifies
+     * the number of media packets kept for recovery. Rounded up to a power of
+     * two.
+     */
+    public static final String MEDIA_WINDOW_PNAME
+        = FlexFECReceiver.class.getName() + ".MEDIA_WINDOW";
+
+    /**
+     * The number of media packets kept for recovery.
+     */
+    private static final int MEDIA_WINDOW;
+
+    /**
+     * The maximum number of repair packets kept.
+     */
+    private static final int REPAIR_WINDOW = 64;
+
+    static
+    {
+        int window
+            = ConfigUtils.getInt(
+                    LibJitsi.getConfigurationService(),
+                    MEDIA_WINDOW_PNAME,
+                    128);
+
+        window = Math.max(32, Math.min(window, 1 << 14));
+
+        int powerOfTwo = Integer.highestOneBit(window);
+
+        MEDIA_WINDOW = (powerOfTwo < window) ? (powerOfTwo << 1) : powerOfTwo;
+    }
+
+    /**
+     * Whether this instance has been closed. A closed instance has released
+     * the buffers of the packets it kept and no longer keeps packets.
+     */
+    private boolean closed = false;
+
+    /**
+     * The sequence number of the newest media packet kept or <tt>-1</tt> if
+     * none has been kept yet.
+     */
+    private int highestSequenceNumber = -1;
+
+    /**
+     * The buffers of the media packets kept, indexed by the low bits of their
+     * sequence numbers.
+     */
+    private final byte[][] mediaBuffers = new byte[MEDIA_WINDOW][];
+
+    /**
+     * The lengths of the media packets kept.
+     */
+    private final int[] mediaLengths = new int[MEDIA_WINDOW];
+
+    /**
+     * The sequence numbers of the media packets kept or <tt>-1</tt> for the
+     * free slots.
+     */
+    private final int[] mediaSequenceNumbers = new int[MEDIA_WINDOW];
+
+    /**
+     * The number of repair packets received.
+     */
+    private int nbRepair;
+
+    /**
+     * The number of media packets recovered.
+     */
+    private int nbRecovered;
+
+    /**
+     * The number of repair packets discarded because they use a protection
+     * scheme which is not supported.
+     */
+    private int nbUnsupported;
+
+    /**
+     * The copies of the FEC headers and repair payloads of the repair packets
+     * kept or <tt>null</tt> for the free slots.
+     */
+    private final byte[][] repairBuffers = new byte[REPAIR_WINDOW][];
+
+    /**
+     * The lengths of the FEC headers and repair payloads in
+     * {@link #repairBuffers}.
+     */
+    private final int[] repairLengths = new int[REPAIR_WINDOW];
+
+    /**
+     * The slot of {@link #repairBuffers} into which the next repair packet is
+     * to be saved. The slots are used in turn so that the oldest repair packet
+     * is discarded when all are taken.
+     */
+    private int repairNext;
+
+    /**
+     * The RTP payload type of the repair packets.
+     */
+    private byte payloadType;
+
+    /**
+     * The SSRC of the media packets handled by this instance.
+     */
+    private final long ssrc;
+
+    /**
+     * Initializes a new <tt>FlexFECReceiver</tt> instance.
+     *
+     * @param ssrc the SSRC of the media packets to handle.
+     * @param payloadType the RTP payload type of the repair packets.
+     */
+    FlexFECReceiver(long ssrc, byte payloadType)
+    {
+        this.ssrc = ssrc;
+        this.payloadType = payloadType;
+        for (int i = 0; i < MEDIA_WINDOW; i++)
+            mediaSequenceNumbers[i] = -1;
+    }
+
+    /**
+     * Adds a packet to the first free element of an array of packets.
+     *
+     * @param pkts the array of packets.
+     * @param pkt the packet to add.
+     * @return <tt>pkts</tt> or a copy of <tt>pkts</tt> with <tt>pkt</tt>
+     * added.
+     */
+    private static RawPacket[] add(RawPacket[] pkts, RawPacket pkt)
+    {
+        for (int i = 0; i < pkts.length; i++)
+        {
+            if (pkts[i] == null)
+            {
+                pkts[i] = pkt;
+                return pkts;
+            }
+        }
+
+        RawPacket[] newPkts = new RawPacket[pkts.length + 1];
+
+        System.arraycopy(pkts, 0, newPkts, 0, pkts.length);
+        newPkts[pkts.length] = pkt;
+        return newPkts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+
+        for (int i = 0; i < MEDIA_WINDOW; i++)
+        {
+            if (mediaBuffers[i] != null)
+            {
+                ByteArrayPool.release(mediaBuffers[i]);
+                mediaBuffers[i] = null;
+            }
+            mediaSequenceNumbers[i] = -1;
+        }
+        for (int i = 0; i < REPAIR_WINDOW; i++)
+            discardRepair(i);
+
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Closing FlexFECReceiver for ssrc=" + ssrc + ". Received "
+                        + nbRepair + " repair packets (" + nbUnsupported
+                        + " unsupported), recovered " + nbRecovered
+                        + " media packets.");
+        }
+    }
+
+    /**
+     * Discards a repair packet.
+     *
+     * @param slot the slot of the repair packet in {@link #repairBuffers}.
+     */
+    private void discardRepair(int slot)
+    {
+        if (repairBuffers[slot] != null)
+        {
+            ByteArrayPool.release(repairBuffers[slot]);
+            repairBuffers[slot] = null;
+        }
+    }
+
+    /**
+     * Gets the slot of a media packet in {@link #mediaBuffers}.
+     *
+     * @param seq the sequence number of the media packet.
+     * @return the slot of the media packet with sequence number <tt>seq</tt>
+     * or <tt>-1</tt> if it is not kept.
+     */
+    private int getMediaSlot(int seq)
+    {
+        int slot = seq & (MEDIA_WINDOW - 1);
+
+        return (mediaSequenceNumbers[slot] == seq) ? slot : -1;
+    }
+
+    /**
+     * Gets the number of media packets recovered.
+     *
+     * @return the number of media packets recovered.
+     */
+    synchronized int getRecoveredCount()
+    {
+        return nbRecovered;
+    }
+
+    /**
+     * Gets the number of repair packets discarded because they use a
+     * protection scheme which is not supported.
+     *
+     * @return the number of repair packets discarded because they use a
+     * protection scheme which is not supported.
+     */
+    synchronized int getUnsupportedCount()
+    {
+        return nbUnsupported;
+    }
+
+    /**
+     * Determines whether a media packet is too old to be kept.
+     *
+     * @param seq the sequence number of the media packet.
+     * @return <tt>true</tt> if the media packet with sequence number
+     * <tt>seq</tt> is too old to be kept; otherwise, <tt>false</tt>.
+     */
+    private boolean isOutsideWindow(int seq)
+    {
+        return highestSequenceNumber != -1
+            && RTPUtils.sequenceNumberDiff(highestSequenceNumber, seq)
+                >= MEDIA_WINDOW;
+    }
+
+    /**
+     * Tries to recover a missing media packet from each repair packet kept
+     * until no more packets can be recovered.
+     *
+     * @param pkts the array to add the recovered packets to.
+     * @return <tt>pkts</tt> or a copy of <tt>pkts</tt> with the recovered
+     * packets added.
+     */
+    private RawPacket[] recover(RawPacket[] pkts)
+    {
+        boolean recovered;
+
+        do
+        {
+            recovered = false;
+            for (int slot = 0; slot < REPAIR_WINDOW; slot++)
+            {
+                byte[] repair = repairBuffers[slot];
+
+                if (repair == null)
+                    continue;
+
+                int count = FlexFECPacket.getProtectedCount(repair, 0);
+                int nbMissing = 0;
+                int missingSeq = -1;
+
+                for (int i = 0; i < count && nbMissing < 2; i++)
+                {
+                    int seq
+                        = FlexFECPacket.getProtectedSequenceNumber(
+                                repair, 0, i);
+
+                    if (isOutsideWindow(seq))
+                    {
+                        // The media packet may have been delivered and
+                        // discarded already.
+                        nbMissing = 2;
+                        missingSeq = -1;
+                    }
+                    else if (getMediaSlot(seq) == -1)
+                    {
+                        nbMissing++;
+                        missingSeq = seq;
+                    }
+                }
+
+                if (nbMissing == 0 || missingSeq == -1)
+                {
+                    discardRepair(slot);
+                }
+                else if (nbMissing == 1)
+                {
+                    RawPacket pkt = recover(slot, missingSeq);
+
+                    discardRepair(slot);
+                    if (pkt != null)
+                    {
+                        nbRecovered++;
+                        saveMedia(pkt);
+                        pkts = add(pkts, pkt);
+                        recovered = true;
+                    }
+                }
+            }
+        }
+        while (recovered);
+        return pkts;
+    }
+
+    /**
+     * Recovers a missing media packet from a repair packet and the other media
+     * packets it protects, which must all be available.
+     *
+     * @param slot the slot of the repair packet in {@link #repairBuffers}.
+     * @param seq the sequence number of the missing media packet.
+     * @return the recovered media packet or <tt>null</tt> if it cannot be
+     * recovered.
+     */
+    private RawPacket recover(int slot, int seq)
+    {
+        byte[] repair = repairBuffers[slot];
+        int payloadLength
+            = repairLengths[slot] - FlexFECPacket.FEC_HEADER_LENGTH;
+        int count = FlexFECPacket.getProtectedCount(repair, 0);
+        int b0 = repair[0];
+        int b1 = repair[1];
+        int length = RTPUtils.readUint16AsInt(repair, 2);
+        int ts = RTPUtils.readInt(repair, 4);
+
+        for (int i = 0; i < count; i++)
+        {
+            int mediaSlot
+                = getMediaSlot(
+                        FlexFECPacket.getProtectedSequenceNumber(repair, 0, i));
+
+            if (mediaSlot != -1)
+            {
+                byte[] media = mediaBuffers[mediaSlot];
+
+                b0 ^= media[0];
+                b1 ^= media[1];
+                length
+                    ^= mediaLengths[mediaSlot] - RawPacket.FIXED_HEADER_SIZE;
+                ts ^= RTPUtils.readInt(media, 4);
+            }
+        }
+        if (length > payloadLength)
+        {
+            logger.warn("Failed to recover a FlexFEC protected packet.");
+            return null;
+        }
+
+        byte[] buf
+            = RawPacket.acquireBuffer(RawPacket.FIXED_HEADER_SIZE + length);
+        int off = RawPacket.HEADROOM;
+        int payloadOff = off + RawPacket.FIXED_HEADER_SIZE;
+
+        System.arraycopy(
+                repair, FlexFECPacket.FEC_HEADER_LENGTH,
+                buf, payloadOff,
+                length);
+        for (int i = 0; i < count; i++)
+        {
+            int mediaSlot
+                = getMediaSlot(
+                        FlexFECPacket.getProtectedSequenceNumber(repair, 0, i));
+
+            if (mediaSlot != -1)
+            {
+                int mediaPayloadLength
+                    = mediaLengths[mediaSlot] - RawPacket.FIXED_HEADER_SIZE;
+
+                FlexFECPacket.xor(
+                        mediaBuffers[mediaSlot], RawPacket.FIXED_HEADER_SIZE,
+                        buf, payloadOff,
+                        Math.min(length, mediaPayloadLength));
+            }
+        }
+
+        // The version is not protected.
+        buf[off] = (byte) (0x80 | (b0 & 0x3f));
+        buf[off + 1] = (byte) b1;
+        RTPUtils.writeShort(buf, off + 2, (short) seq);
+        RTPUtils.writeInt(buf, off + 4, ts);
+        RTPUtils.writeInt(buf, off + 8, (int) ssrc);
+
+        return
+            new RawPacket(buf, off, RawPacket.FIXED_HEADER_SIZE + length);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Keeps copies of the media packets of the SSRC of this instance, removes
+     * the repair packets which protect them from <tt>pkts</tt> and adds the
+     * media packets recovered from them.
+     */
+    @Override
+    public synchronized RawPacket[] reverseTransform(RawPacket[] pkts)
+    {
+        // The FECTransformEngine may close this instance while a thread which
+        // has already looked it up is about to reverse-transform packets with
+        // it. Keeping packets now would leak their buffers.
+        if (closed)
+            return pkts;
+
+        boolean repaired = false;
+
+        for (int i = 0; i < pkts.length; i++)
+        {
+            RawPacket pkt = pkts[i];
+
+            if (pkt == null
+                    || pkt.getVersion() != 2
+                    || pkt.getLength() < RawPacket.FIXED_HEADER_SIZE)
+            {
+                continue;
+            }
+            if (pkt.getPayloadType() == payloadType)
+            {
+                if (FlexFECPacket.getProtectedSSRC(pkt) == ssrc)
+                {
+                    pkts[i] = null;
+                    nbRepair++;
+                    if (saveRepair(pkt))
+                        repaired = true;
+                }
+            }
+            else if (pkt.getSSRCAsLong() == ssrc)
+            {
+                saveMedia(pkt);
+                repaired = true;
+            }
+        }
+
+        // A media packet may complete a repair packet received earlier.
+        return repaired ? recover(pkts) : pkts;
+    }
+
+    /**
+     * Keeps a copy of a media packet in the window. A packet which is too old
+     * or already kept is ignored.
+     *
+     * @param pkt the media packet.
+     */
+    private void saveMedia(RawPacket pkt)
+    {
+        int seq = pkt.getSequenceNumber();
+        int diff
+            = (highestSequenceNumber == -1)
+                ? 1
+                : RTPUtils.sequenceNumberDiff(seq, highestSequenceNumber);
+
+        if (diff > 0)
+        {
+            highestSequenceNumber = seq;
+        }
+        else if (diff <= -4 * MEDIA_WINDOW)
+        {
+            // Far too old to be reordered, so the sequence numbers of the
+            // stream have jumped back. Start over.
+            for (int i = 0; i < MEDIA_WINDOW; i++)
+                mediaSequenceNumbers[i] = -1;
+            highestSequenceNumber = seq;
+        }
+        else if (isOutsideWindow(seq))
+        {
+            return;
+        }
+
+        int slot = seq & (MEDIA_WINDOW - 1);
+
+        if (mediaSequenceNumbers[slot] == seq)
+            return;
+
+        int len = pkt.getLength();
+        byte[] buf = mediaBuffers[slot];
+
+        if (buf == null || buf.length < len)
+        {
+            if (buf != null)
+                ByteArrayPool.release(buf);
+            mediaBuffers[slot] = buf = ByteArrayPool.acquire(len);
+        }
+        System.arraycopy(pkt.getBuffer(), pkt.getOffset(), buf, 0, len);
+        mediaLengths[slot] = len;
+        mediaSequenceNumbers[slot] = seq;
+    }
+
+    /**
+     * Keeps a copy of the FEC header and repair payload of a repair packet,
+     * discarding the oldest repair packet kept if necessary.
+     *
+     * @param pkt the repair packet.
+     * @return <tt>true</tt> if the repair packet was kept; otherwise,
+     * <tt>false</tt>.
+     */
+    private boolean saveRepair(RawPacket pkt)
+    {
+        byte[] pktBuf = pkt.getBuffer();
+        int fecOff = pkt.getOffset() + pkt.getHeaderLength();
+        int len = pkt.getOffset() + pkt.getLength() - fecOff;
+
+        if (len < FlexFECPacket.FEC_HEADER_LENGTH
+                || !FlexFECPacket.isSupported(pktBuf, fecOff))
+        {
+            nbUnsupported++;
+            return false;
+        }
+
+        // The media packets protected by a repair packet must all fit in
+        // the window.
+        int count = FlexFECPacket.getProtectedCount(pktBuf, fecOff);
+        int span
+            = RTPUtils.sequenceNumberDiff(
+                    FlexFECPacket.getProtectedSequenceNumber(
+                            pktBuf, fecOff, count - 1),
+                    FlexFECPacket.getSNBase(pktBuf, fecOff));
+
+        if (count == 0 || span < 0 || span >= MEDIA_WINDOW / 2)
+        {
+            nbUnsupported++;
+            return false;
+        }
+
+        int slot = repairNext;
+
+        repairNext = (repairNext + 1) % REPAIR_WINDOW;
+        discardRepair(slot);
+
+        byte[] buf = ByteArrayPool.acquire(len);
+
+        System.arraycopy(pktBuf, fecOff, buf, 0, len);
+        repairBuffers[slot] = buf;
+        repairLengths[slot] = len;
+        return true;
+    }
+
+    /**
+     * Sets the RTP payload type of the repair packets.
+     *
+     * @param payloadType the RTP payload type of the repair packets.
+     */
+    synchronized void setPayloadType(byte payloadType)
+    {
+        this.payloadType = payloadType;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Does not touch outgoing packets.
+     */
+    @Override
+    public RawPacket[] transform(RawPacket[] pkts)
+    {
+        return pkts;
+    }
+}
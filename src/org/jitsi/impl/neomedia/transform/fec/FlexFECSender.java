@@ -0,0 +1,645 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.fec;
+
+import java.util.concurrent.atomic.*;
+
+import org.jitsi.impl.neomedia.transform.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+
+/**
+ * A <tt>PacketTransformer</tt> which adds FlexFEC (RFC 8627) repair packets
+ * protecting the media packets of a single SSRC with 1-D row, 1-D column or
+ * 2-D parity. The media packets are grouped into blocks of <tt>L</tt>
+ * columns and <tt>D</tt> rows in the order of their sequence numbers. A row
+ * repair packet is sent after each row and the column repair packets are
+ * sent after the last row of a block.
+ *
+ * The protection is either fixed with {@link #setProtection(int, int,
+ * boolean)} or adapted to the fraction of lost packets reported by the
+ * receiver with {@link #reportLoss(int)}. A change of the protection takes
+ * effect at the start of the next block.
+ */
+class FlexFECSender
+    implements PacketTransformer
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FlexFECSender</tt> class and its
+     * instances to print debug information.
+     */
+    private static final Logger logger = Logger.getLogger(FlexFECSender.class);
+
+    /**
+     * The maximum number of columns or rows.
+     */
+    static final int MAX_DIMENSION = 16;
+
+    /**
+     * The protection levels selected by {@link #reportLoss(int)} as
+     * <tt>{ loss threshold, L, D, row repair }</tt>. The loss threshold is in
+     * units of 1/256 (like the fraction lost of RTCP report blocks) and a
+     * level is selected when the smoothed loss reaches its threshold. The
+     * overhead of the levels is 0%, 10%, 20%, 40% and 50%.
+     */
+    private static final int[][] PROTECTION_LEVELS
+        = {
+            { 0, 0, 0, 0 },
+            { 3, 10, 0, 1 },
+            { 10, 5, 0, 1 },
+            { 20, 5, 5, 1 },
+            { 38, 4, 4, 1 }
+        };
+
+    /**
+     * The position of the next media packet in the current block or
+     * <tt>-1</tt> if no block has been started yet.
+     */
+    private int blockPosition = -1;
+
+    /**
+     * The sequence number of the first media packet of the current block.
+     */
+    private int blockBase;
+
+    /**
+     * Whether this instance has been closed. A closed instance has released
+     * the buffers of its repair packets and no longer adds repair packets.
+     */
+    private boolean closed = false;
+
+    /**
+     * The number of columns (L) of the current block.
+     */
+    private int columns;
+
+    /**
+     * The repair packets of the columns of the current block being built.
+     */
+    private Repair[] columnRepairs = new Repair[0];
+
+    /**
+     * Whether the protection is adapted to the loss reported with
+     * {@link #reportLoss(int)}.
+     */
+    private boolean adaptive;
+
+    /**
+     * The index in {@link #PROTECTION_LEVELS} of the current adaptive
+     * protection level.
+     */
+    private int level;
+
+    /**
+     * The smoothed fraction of lost packets in units of 1/256 or
+     * <tt>-1</tt> if no loss has been reported yet.
+     */
+    private double loss = -1;
+
+    /**
+     * The SSRC of the media packets protected by this instance.
+     */
+    private final long mediaSSRC;
+
+    /**
+     * The number of repair packets added.
+     */
+    private int nbRepair;
+
+    /**
+     * The protection to apply from the start of the next block as
+     * <tt>{ L, D, row repair }</tt>.
+     */
+    private final int[] nextProtection = new int[3];
+
+    /**
+     * The RTP payload type of the repair packets.
+     */
+    private byte payloadType;
+
+    /**
+     * The SSRC of the FlexFEC stream.
+     */
+    private final long repairSSRC;
+
+    /**
+     * The sequence numbers of the FlexFEC stream, which are shared by all
+     * <tt>FlexFECSender</tt>s of the stream.
+     */
+    private final AtomicInteger repairSequenceNumbers;
+
+    /**
+     * The repair packet of the current row being built.
+     */
+    private final Repair rowRepair = new Repair();
+
+    /**
+     * Whether row repair packets are sent in the current block.
+     */
+    private boolean rowRepairs;
+
+    /**
+     * The number of rows (D) of the current block. If <tt>0</tt>, only row
+     * repair packets are sent.
+     */
+    private int rows;
+
+    /**
+     * Initializes a new <tt>FlexFECSender</tt> instance.
+     *
+     * @param mediaSSRC the SSRC of the media packets to protect.
+     * @param repairSSRC the SSRC of the FlexFEC stream.
+     * @param repairSequenceNumbers the sequence numbers of the FlexFEC stream.
+     * @param payloadType the RTP payload type of the repair packets.
+     */
+    FlexFECSender(
+            long mediaSSRC,
+            long repairSSRC,
+            AtomicInteger repairSequenceNumbers,
+            byte payloadType)
+    {
+        this.mediaSSRC = mediaSSRC;
+        this.repairSSRC = repairSSRC;
+        this.repairSequenceNumbers = repairSequenceNumbers;
+        this.payloadType = payloadType;
+    }
+
+    /**
+     * Adds a media packet to the current block and returns the repair packets
+     * which it completes.
+     *
+     * @param pkt the media packet to add.
+     * @param pkts the array to add the repair packets to.
+     * @return <tt>pkts</tt> or a copy of <tt>pkts</tt> with the repair packets
+     * added.
+     */
+    private RawPacket[] addMedia(RawPacket pkt, RawPacket[] pkts)
+    {
+        int seq = pkt.getSequenceNumber();
+
+        if (blockPosition == -1 || blockPosition == getBlockLength())
+        {
+            startBlock(seq);
+        }
+        else if (((seq - blockBase) & 0xffff) != blockPosition)
+        {
+            // The packet does not follow the previous one. Give up on the
+            // current block.
+            startBlock(seq);
+        }
+        if (columns == 0)
+            return pkts;
+
+        int column = blockPosition % columns;
+
+        if (rowRepairs)
+        {
+            rowRepair.add(pkt);
+            if (column == columns - 1)
+            {
+                pkts
+                    = add(
+                            pkts,
+                            rowRepair.finish(
+                                    (blockBase + blockPosition - column)
+                                        & 0xffff,
+                                    columns,
+                                    0));
+            }
+        }
+        if (rows > 1)
+        {
+            columnRepairs[column].add(pkt);
+            if (blockPosition >= columns * (rows - 1))
+            {
+                pkts
+                    = add(
+                            pkts,
+                            columnRepairs[column].finish(
+                                    (blockBase + column) & 0xffff,
+                                    columns,
+                                    rows));
+            }
+        }
+        blockPosition++;
+        return pkts;
+    }
+
+    /**
+     * Adds a packet to the first free element of an array of packets.
+     *
+     * @param pkts the array of packets.
+     * @param pkt the packet to add.
+     * @return <tt>pkts</tt> or a copy of <tt>pkts</tt> with <tt>pkt</tt>
+     * added.
+     */
+    private static RawPacket[] add(RawPacket[] pkts, RawPacket pkt)
+    {
+        for (int i = 0; i < pkts.length; i++)
+        {
+            if (pkts[i] == null)
+            {
+                pkts[i] = pkt;
+                return pkts;
+            }
+        }
+
+        RawPacket[] newPkts = new RawPacket[pkts.length + 1];
+
+        System.arraycopy(pkts, 0, newPkts, 0, pkts.length);
+        newPkts[pkts.length] = pkt;
+        return newPkts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+
+        rowRepair.close();
+        for (Repair repair : columnRepairs)
+            repair.close();
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Closing FlexFECSender for ssrc=" + mediaSSRC + ". Added "
+                        + nbRepair + " repair packets.");
+        }
+    }
+
+    /**
+     * Gets the number of media packets of the current block.
+     *
+     * @return the number of media packets of the current block.
+     */
+    private int getBlockLength()
+    {
+        return (rows > 1) ? columns * rows : columns;
+    }
+
+    /**
+     * Gets the protection applied from the start of the next block.
+     *
+     * @return the protection applied from the start of the next block as
+     * <tt>{ L, D, row repair }</tt>.
+     */
+    synchronized int[] getProtection()
+    {
+        return nextProtection.clone();
+    }
+
+    /**
+     * Updates the smoothed loss and, if the protection is adaptive, the
+     * protection level from a fraction of lost packets reported by the
+     * receiver of the media stream. The level is raised as soon as the
+     * smoothed loss reaches the threshold of a higher level and lowered only
+     * once the smoothed loss drops below three quarters of the threshold of
+     * the current level.
+     *
+     * @param fractionLost the fraction of lost packets in units of 1/256.
+     */
+    synchronized void reportLoss(int fractionLost)
+    {
+        loss = (loss < 0) ? fractionLost : (0.7 * loss + 0.3 * fractionLost);
+        if (!adaptive)
+            return;
+
+        int newLevel = level;
+
+        while (newLevel + 1 < PROTECTION_LEVELS.length
+                && loss >= PROTECTION_LEVELS[newLevel + 1][0])
+        {
+            newLevel++;
+        }
+        while (newLevel > 0 && loss < 0.75 * PROTECTION_LEVELS[newLevel][0])
+            newLevel--;
+
+        if (newLevel != level)
+        {
+            int[] l = PROTECTION_LEVELS[newLevel];
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(
+                        "FlexFEC protection level for ssrc=" + mediaSSRC
+                            + " changed to " + newLevel + " (loss "
+                            + (loss / 256) + ").");
+            }
+            level = newLevel;
+            setNextProtection(l[1], l[2], l[3] != 0);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RawPacket[] reverseTransform(RawPacket[] pkts)
+    {
+        return pkts;
+    }
+
+    /**
+     * Adapts the protection to the loss reported with {@link #reportLoss(int)}
+     * from now on.
+     */
+    synchronized void setAdaptive()
+    {
+        if (!adaptive)
+        {
+            adaptive = true;
+            level = 0;
+            setNextProtection(0, 0, false);
+            if (loss >= 0)
+                reportLoss((int) loss);
+        }
+    }
+
+    /**
+     * Sets the protection to apply from the start of the next block.
+     *
+     * @param columns the number of columns (L).
+     * @param rows the number of rows (D).
+     * @param rowRepairs whether row repair packets are to be sent.
+     */
+    private void setNextProtection(int columns, int rows, boolean rowRepairs)
+    {
+        nextProtection[0] = columns;
+        nextProtection[1] = rows;
+        nextProtection[2] = rowRepairs ? 1 : 0;
+    }
+
+    /**
+     * Sets the RTP payload type of the repair packets.
+     *
+     * @param payloadType the RTP payload type of the repair packets.
+     */
+    synchronized void setPayloadType(byte payloadType)
+    {
+        this.payloadType = payloadType;
+    }
+
+    /**
+     * Fixes the protection which is applied from the start of the next block
+     * and stops adapting it to the reported loss.
+     *
+     * @param columns the number of columns (L) or <tt>0</tt> to disable the
+     * protection.
+     * @param rows the number of rows (D). If less than <tt>2</tt>, no column
+     * repair packets are sent.
+     * @param rowRepairs whether row repair packets are to be sent.
+     */
+    synchronized void setProtection(int columns, int rows, boolean rowRepairs)
+    {
+        if (columns < 0 || columns > MAX_DIMENSION)
+            throw new IllegalArgumentException("columns " + columns);
+        if (rows < 0 || rows > MAX_DIMENSION)
+            throw new IllegalArgumentException("rows " + rows);
+
+        adaptive = false;
+        if (rows < 2)
+        {
+            rows = 0;
+            rowRepairs = true;
+        }
+        setNextProtection(columns, rows, rowRepairs);
+    }
+
+    /**
+     * Starts a new block with the protection set last.
+     *
+     * @param seq the sequence number of the first media packet of the block.
+     */
+    private void startBlock(int seq)
+    {
+        blockBase = seq;
+        blockPosition = 0;
+        columns = nextProtection[0];
+        rows = nextProtection[1];
+        rowRepairs = nextProtection[2] != 0;
+
+        rowRepair.reset();
+        if (rows > 1)
+        {
+            if (columnRepairs.length < columns)
+            {
+                Repair[] newColumnRepairs = new Repair[columns];
+
+                System.arraycopy(
+                        columnRepairs, 0,
+                        newColumnRepairs, 0,
+                        columnRepairs.length);
+                for (int i = columnRepairs.length; i < columns; i++)
+                    newColumnRepairs[i] = new Repair();
+                columnRepairs = newColumnRepairs;
+            }
+            for (Repair repair : columnRepairs)
+                repair.reset();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Adds the repair packets completed by the media packets of the SSRC of
+     * this instance in <tt>pkts</tt>.
+     */
+    @Override
+    public synchronized RawPacket[] transform(RawPacket[] pkts)
+    {
+        // The FECTransformEngine may close this instance while a thread which
+        // has already looked it up is about to transform packets with it.
+        if (closed)
+            return pkts;
+
+        // Only the media packets present on entry are protected.
+        for (int i = 0, length = pkts.length; i < length; i++)
+        {
+            RawPacket pkt = pkts[i];
+
+            if (pkt != null
+                    && pkt.getVersion() == 2
+                    && pkt.getSSRCAsLong() == mediaSSRC
+                    && pkt.getLength() >= RawPacket.FIXED_HEADER_SIZE)
+            {
+                pkts = addMedia(pkt, pkts);
+            }
+        }
+        return pkts;
+    }
+
+    /**
+     * A repair packet being built by XOR-ing the media packets it protects
+     * into it.
+     */
+    private class Repair
+    {
+        /**
+         * The buffer in which the FEC header and repair payload are built at
+         * the offsets at which they are sent.
+         */
+        private byte[] buf
+            = ByteArrayPool.acquire(
+                    FlexFECPacket.PAYLOAD_OFFSET
+                        + FECTransformEngine.INITIAL_BUFFER_SIZE);
+
+        /**
+         * The number of media packets added since the last reset.
+         */
+        private int count;
+
+        /**
+         * The RTP timestamp of the last media packet added.
+         */
+        private long lastTimestamp;
+
+        /**
+         * The length of the longest media packet added without its fixed RTP
+         * header (i.e. the length of the repair payload).
+         */
+        private int payloadLength;
+
+        /**
+         * XORs a media packet into this repair packet.
+         *
+         * @param pkt the media packet.
+         */
+        void add(RawPacket pkt)
+        {
+            byte[] pktBuf = pkt.getBuffer();
+            int pktOff = pkt.getOffset();
+            int len = pkt.getLength() - RawPacket.FIXED_HEADER_SIZE;
+            int fecOff = FlexFECPacket.RTP_HEADER_LENGTH;
+            int payloadOff = FlexFECPacket.PAYLOAD_OFFSET;
+
+            if (buf.length < payloadOff + len)
+            {
+                byte[] newBuf = ByteArrayPool.acquire(payloadOff + len);
+
+                System.arraycopy(buf, 0, newBuf, 0, payloadOff + payloadLength);
+                ByteArrayPool.release(buf);
+                buf = newBuf;
+            }
+
+            if (count == 0)
+            {
+                // The P, X, CC, M and PT fields, the length and the timestamp.
+                buf[fecOff] = pktBuf[pktOff];
+                buf[fecOff + 1] = pktBuf[pktOff + 1];
+                RTPUtils.writeShort(buf, fecOff + 2, (short) len);
+                System.arraycopy(pktBuf, pktOff + 4, buf, fecOff + 4, 4);
+                System.arraycopy(
+                        pktBuf, pktOff + RawPacket.FIXED_HEADER_SIZE,
+                        buf, payloadOff,
+                        len);
+                payloadLength = len;
+            }
+            else
+            {
+                buf[fecOff] ^= pktBuf[pktOff];
+                buf[fecOff + 1] ^= pktBuf[pktOff + 1];
+                buf[fecOff + 2] ^= (byte) (len >> 8);
+                buf[fecOff + 3] ^= (byte) len;
+                FlexFECPacket.xor(pktBuf, pktOff + 4, buf, fecOff + 4, 4);
+
+                // The repair payload is implicitly padded with zeroes up to
+                // the length of the longest media packet, so the part of a
+                // longer media packet beyond it is copied rather than XOR-ed.
+                int xorLen = Math.min(len, payloadLength);
+
+                FlexFECPacket.xor(
+                        pktBuf, pktOff + RawPacket.FIXED_HEADER_SIZE,
+                        buf, payloadOff,
+                        xorLen);
+                if (len > payloadLength)
+                {
+                    System.arraycopy(
+                            pktBuf,
+                            pktOff + RawPacket.FIXED_HEADER_SIZE + xorLen,
+                            buf, payloadOff + xorLen,
+                            len - xorLen);
+                    payloadLength = len;
+                }
+            }
+            lastTimestamp = pkt.getTimestamp();
+            count++;
+        }
+
+        /**
+         * Releases the buffer of this instance.
+         */
+        void close()
+        {
+            ByteArrayPool.release(buf);
+            buf = null;
+        }
+
+        /**
+         * Makes a repair packet of the media packets added to this instance
+         * and resets it.
+         *
+         * @param snBase the sequence number of the first protected media
+         * packet.
+         * @param columns the number of columns (L).
+         * @param rows the number of rows (D).
+         * @return the repair packet.
+         */
+        RawPacket finish(int snBase, int columns, int rows)
+        {
+            int len = FlexFECPacket.PAYLOAD_OFFSET + payloadLength;
+            byte[] pktBuf = RawPacket.acquireBuffer(len);
+            int off = RawPacket.HEADROOM;
+            int fecOff = FlexFECPacket.RTP_HEADER_LENGTH;
+
+            // F = 1 (fixed L/D), R = 0.
+            buf[fecOff] = (byte) ((buf[fecOff] & 0x3f) | 0x40);
+            RTPUtils.writeShort(buf, fecOff + 8, (short) snBase);
+            buf[fecOff + 10] = (byte) columns;
+            buf[fecOff + 11] = (byte) rows;
+            System.arraycopy(buf, fecOff, pktBuf, off + fecOff, len - fecOff);
+
+            // The RTP header with the protected SSRC as the only CSRC.
+            pktBuf[off] = (byte) 0x81;
+            pktBuf[off + 1] = (byte) (payloadType & 0x7f);
+            RTPUtils.writeShort(
+                    pktBuf, off + 2,
+                    (short) repairSequenceNumbers.getAndIncrement());
+            RTPUtils.writeInt(pktBuf, off + 4, (int) lastTimestamp);
+            RTPUtils.writeInt(pktBuf, off + 8, (int) repairSSRC);
+            RTPUtils.writeInt(
+                    pktBuf, off + RawPacket.FIXED_HEADER_SIZE,
+                    (int) mediaSSRC);
+
+            reset();
+            nbRepair++;
+            return new RawPacket(pktBuf, off, len);
+        }
+
+        /**
+         * Discards the media packets added to this instance.
+         */
+        void reset()
+        {
+            count = 0;
+            payloadLength = 0;
+        }
+    }
+}
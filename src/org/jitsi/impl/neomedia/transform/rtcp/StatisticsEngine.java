@@ -152,10 +152,24 @@ private static boolean isRTCP(RawPacket pkt)
 
     /**
      * The {@link RTCPPacketParserEx} which this instance will use to parse
-     * RTCP packets.
+     * received RTCP SR packets into objects for the
+     * <tt>RTCPPacketListener</tt>s of {@link #mediaStreamStats}.
      */
     private final RTCPPacketParserEx parser = new RTCPPacketParserEx();
 
+    /**
+     * The <tt>RTCPPacketVisitor</tt> which updates {@link #mediaStreamStats}
+     * with the RTCP packets received by this instance.
+     */
+    private final RTCPPacketVisitor receivedRTCPVisitor
+        = new ReceivedRTCPVisitor();
+
+    /**
+     * The <tt>RTCPPacketView</tt> which this instance reuses to walk received
+     * compound RTCP packets without allocating.
+     */
+    private final RTCPPacketView receivedRTCPView = new RTCPPacketView();
+
     /**
      * The <tt>PacketTransformer</tt> instance to use for RTP.
      */
@@ -888,42 +902,26 @@ public RawPacket reverseTransform(RawPacket pkt)
             mediaStreamStats.rtcpPacketReceived(
                 pkt.getRTCPSSRC(), pkt.getLength());
 
-            RTCPCompoundPacket compound;
-            Exception ex;
-
             try
             {
-                compound
-                    = (RTCPCompoundPacket)
-                        parser.parse(
-                                pkt.getBuffer(),
-                                pkt.getOffset(),
-                                pkt.getLength());
-                ex = null;
-            }
-            catch (BadFormatException | IllegalStateException e)
-            {
-                // In some parsing failures, FMJ swallows the original
-                // IOException and throws a runtime IllegalStateException.
-                // Handle it as if parsing failed.
-                compound = null;
-                ex = e;
-            }
+                boolean wellFormed;
 
-            if (compound == null
-                    || compound.packets == null
-                    || compound.packets.length == 0)
-            {
-                logger.info(
-                    "Failed to analyze an incoming RTCP packet for the"
-                        + " purposes of statistics.",
-                    ex);
-                return pkt;
-            }
-
-            try
-            {
-                updateReceivedMediaStreamStats(compound.packets);
+                synchronized (receivedRTCPView)
+                {
+                    wellFormed
+                        = receivedRTCPView
+                            .wrap(
+                                    pkt.getBuffer(),
+                                    pkt.getOffset(),
+                                    pkt.getLength())
+                            .accept(receivedRTCPVisitor);
+                }
+                if (!wellFormed)
+                {
+                    logger.info(
+                            "Failed to analyze an incoming RTCP packet for the"
+                                + " purposes of statistics.");
+                }
             }
             catch (Throwable t)
             {
@@ -948,93 +946,6 @@ else if (t instanceof ThreadDeath)
         return pkt;
     }
 
-    /**
-     * Processes the {@link RTCPPacket}s from {@code in} as received RTCP
-     * packets and updates the {@link MediaStreamStats}. Adds to {@code out} the
-     * ones which were not consumed and should be output from this instance.
-     * @param in the array of received RTCP packets
-     */
-    private void updateReceivedMediaStreamStats(
-            RTCPPacket[] in)
-    {
-        MediaStreamStatsImpl streamStats = mediaStream.getMediaStreamStats();
-
-        for (RTCPPacket rtcp : in)
-        {
-            switch (rtcp.type)
-            {
-            case RTCPFBPacket.PSFB:
-                if (rtcp instanceof RTCPREMBPacket)
-                {
-                    RTCPREMBPacket remb = (RTCPREMBPacket) rtcp;
-
-                    if (logger.isTraceEnabled())
-                    {
-                        logger.trace("remb_received,stream="
-                            + mediaStream.hashCode() + " bps="
-                            + remb.getBitrate() + ",dest="
-                            + Arrays.toString(remb.getDest()));
-                    }
-                    streamStats.rembReceived(remb);
-                }
-                break;
-
-            case RTCPPacket.SR:
-                if (rtcp instanceof RTCPSRPacket)
-                {
-                    streamStats.srReceived((RTCPSRPacket) rtcp);
-                }
-            case RTCPPacket.RR:
-                {
-                RTCPReport report;
-
-                try
-                {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-                    rtcp.assemble(new DataOutputStream(baos));
-
-                    byte[] buf = baos.toByteArray();
-
-                    report = parseRTCPReport(rtcp.type, buf, 0, buf.length);
-                }
-                catch (IOException ioe)
-                {
-                    logger.error("Failed to assemble an RTCP report: " + ioe);
-                    report = null;
-                }
-                if (report != null)
-                {
-                    streamStats.getRTCPReports().rtcpReportReceived(report);
-                }
-
-                }
-                break;
-
-            case RTCPFBPacket.RTPFB:
-                if (rtcp instanceof NACKPacket)
-                {
-                    NACKPacket nack = (NACKPacket) rtcp;
-
-                    streamStats.nackReceived(nack);
-                }
-                break;
-
-            case RTCPExtendedReport.XR:
-                if (rtcp instanceof RTCPExtendedReport)
-                {
-                    streamStats.getRTCPReports().rtcpExtendedReportReceived(
-                        (RTCPExtendedReport) rtcp);
-                }
-                break;
-
-            default:
-                // These types of RTCP packets are of no interest at present.
-                break;
-            }
-        }
-    }
-
     /**
      * Transfers RTCP sender report feedback as new information about the
      * download stream for the MediaStreamStats. Finds the info needed for
@@ -1231,6 +1142,185 @@ private static long getMapValue(Map<?,Long> map, long ssrc)
         }
     }
 
+    /**
+     * Updates {@link #mediaStreamStats} with the RTCP packets received by this
+     * <tt>StatisticsEngine</tt>. Reads the packets through an
+     * <tt>RTCPPacketView</tt> and initializes objects only for the data which
+     * is retained (the RTCP reports) or which is handed to the
+     * <tt>RTCPPacketListener</tt>s which are not <tt>RTCPPacketVisitor</tt>s,
+     * if any. The listeners which are visitors are handed the view.
+     */
+    private class ReceivedRTCPVisitor
+        extends RTCPPacketVisitorAdapter
+    {
+        /**
+         * Notifies {@link #mediaStreamStats} about a received RTCP SR or RR
+         * report.
+         *
+         * @param view the view positioned on the SR or RR packet
+         */
+        private void reportReceived(RTCPPacketView view)
+        {
+            RTCPReport report;
+
+            try
+            {
+                report
+                    = parseRTCPReport(
+                            view.getPacketType(),
+                            view.getBuffer(),
+                            view.getOffset(),
+                            view.getLength());
+            }
+            catch (IOException ioe)
+            {
+                logger.error("Failed to parse an RTCP report: " + ioe);
+                report = null;
+            }
+            if (report != null)
+            {
+                mediaStreamStats.getRTCPReports().rtcpReportReceived(report);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitNACK(RTCPPacketView view)
+        {
+            mediaStreamStats.nackReceived(view);
+            if (mediaStreamStats.hasRTCPPacketListeners())
+            {
+                mediaStreamStats.nackReceived(
+                        new NACKPacket(
+                                view.getSenderSSRC(),
+                                view.getSourceSSRC(),
+                                view.getBuffer(),
+                                view.getFCIOffset(),
+                                view.getFCILength()));
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitREMB(RTCPPacketView view)
+        {
+            if (logger.isTraceEnabled())
+            {
+                logger.trace("remb_received,stream="
+                    + mediaStream.hashCode() + " bps="
+                    + view.getREMBBitrate() + ",ssrcs="
+                    + view.getREMBSSRCCount());
+            }
+            mediaStreamStats.rembReceived(view);
+            if (mediaStreamStats.hasRTCPPacketListeners())
+            {
+                long[] dest = new long[view.getREMBSSRCCount()];
+
+                for (int i = 0; i < dest.length; i++)
+                    dest[i] = view.getREMBSSRC(i);
+
+                mediaStreamStats.rembReceived(
+                        new RTCPREMBPacket(
+                                view.getSenderSSRC(),
+                                view.getSourceSSRC(),
+                                view.getREMBExponent(),
+                                view.getREMBMantissa(),
+                                dest));
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitRR(RTCPPacketView view)
+        {
+            reportReceived(view);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitSR(RTCPPacketView view)
+        {
+            RTCPSRPacket sr = null;
+
+            mediaStreamStats.srReceived(view);
+
+            if (mediaStreamStats.hasRTCPPacketListeners())
+            {
+                // The listeners expect the FMJ representation.
+                try
+                {
+                    RTCPCompoundPacket compound
+                        = (RTCPCompoundPacket)
+                            parser.parse(
+                                    view.getBuffer(),
+                                    view.getOffset(),
+                                    view.getLength());
+
+                    if (compound.packets != null
+                            && compound.packets.length != 0
+                            && compound.packets[0] instanceof RTCPSRPacket)
+                    {
+                        sr = (RTCPSRPacket) compound.packets[0];
+                    }
+                }
+                catch (BadFormatException | IllegalStateException e)
+                {
+                    // In some parsing failures, FMJ swallows the original
+                    // IOException and throws a runtime IllegalStateException.
+                    // Handle it as if parsing failed.
+                    logger.info("Failed to parse an RTCP SR packet.", e);
+                }
+            }
+            if (sr == null)
+            {
+                mediaStreamStats.srReceived(
+                        view.getNtpTimestampMSW(),
+                        view.getNtpTimestampLSW());
+            }
+            else
+            {
+                mediaStreamStats.srReceived(sr);
+            }
+            reportReceived(view);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visitXR(RTCPPacketView view)
+        {
+            RTCPExtendedReport xr;
+
+            try
+            {
+                xr
+                    = new RTCPExtendedReport(
+                            view.getBuffer(),
+                            view.getOffset(),
+                            view.getLength());
+            }
+            catch (IOException ioe)
+            {
+                logger.error("Failed to parse an RTCP XR packet: " + ioe);
+                xr = null;
+            }
+            if (xr != null)
+            {
+                mediaStreamStats.getRTCPReports()
+                    .rtcpExtendedReportReceived(xr);
+            }
+        }
+    }
+
     /**
      * Utility method to increment map value with specified step. If entry is
      * missing add it.
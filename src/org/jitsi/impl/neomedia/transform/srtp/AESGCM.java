@@ -0,0 +1,346 @@
+/*
+ * Copyright @ 2016 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import java.util.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.util.*;
+
+/**
+ * Initializes the {@link SRTPCipherGCM} implementations used for
+ * AEAD_AES_128_GCM and AEAD_AES_256_GCM (RFC 7714). Similar to {@link AES},
+ * benchmarks the available implementations (OpenSSL, the Java runtime's
+ * <tt>AES/GCM/NoPadding</tt> and BouncyCastle) and employs the fastest one
+ * for the new ciphers.
+ */
+public class AESGCM
+{
+    /**
+     * The simple name of the <tt>SRTPCipherGCM</tt> class which is used as a
+     * class name prefix by the well-known <tt>SRTPCipherGCM</tt>
+     * implementations.
+     */
+    private static final String CIPHER_SIMPLE_CLASS_NAME = "SRTPCipherGCM";
+
+    /**
+     * The name of the class to instantiate as an <tt>SRTPCipherGCM</tt>
+     * implementation (if it proves functional).
+     */
+    private static final String CIPHER_CLASS_NAME;
+
+    /**
+     * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt>
+     * property which specifies the name of the class to instantiate as an
+     * <tt>SRTPCipherGCM</tt> implementation. The simple names <tt>OpenSSL</tt>,
+     * <tt>JCE</tt> and <tt>Java</tt> of the well-known implementations are
+     * supported as well.
+     */
+    private static final String CIPHER_CLASS_NAME_PNAME
+        = AESGCM.class.getName() + ".cipherClassName";
+
+    /**
+     * The <tt>Class</tt>es of the well-known <tt>SRTPCipherGCM</tt>
+     * implementations.
+     */
+    private static final Class<?>[] CIPHER_CLASSES
+        = {
+            SRTPCipherGCMOpenSSL.class,
+            SRTPCipherGCMJCE.class,
+            SRTPCipherGCMJava.class
+        };
+
+    /**
+     * The <tt>SRTPCipherGCM</tt> implementation which is (to be) used to
+     * initialize new ciphers.
+     */
+    private static Class<?> cipherClass;
+
+    /**
+     * The time in milliseconds at which the implementations were benchmarked
+     * and {@link #cipherClass} was elected.
+     */
+    private static long cipherClassTimestamp;
+
+    /**
+     * The number of packets encrypted by each implementation for the purposes
+     * of the benchmark.
+     */
+    private static final int BENCHMARK_PACKETS = 64;
+
+    /**
+     * The length in bytes of the payloads encrypted for the purposes of the
+     * benchmark. Resembles a video RTP packet.
+     */
+    private static final int BENCHMARK_PAYLOAD_LENGTH = 1200;
+
+    /**
+     * The length in bytes of the associated data of the benchmark. Resembles
+     * an RTP header with a header extension.
+     */
+    private static final int BENCHMARK_AAD_LENGTH = 20;
+
+    /**
+     * The index in the IV which is varied by the benchmark.
+     */
+    private static final int IV_COUNTER_INDEX = SRTPCipherGCM.IV_LENGTH - 1;
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>AESGCM</tt> class to print out debug
+     * information.
+     */
+    private static final Logger logger = Logger.getLogger(AESGCM.class);
+
+    /**
+     * The random number generator which generates keys and inputs for the
+     * benchmarking of the <tt>SRTPCipherGCM</tt> implementations.
+     */
+    private static final Random random = new Random();
+
+    static
+    {
+        CIPHER_CLASS_NAME
+            = ConfigUtils.getString(
+                    LibJitsi.getConfigurationService(),
+                    CIPHER_CLASS_NAME_PNAME,
+                    null);
+    }
+
+    /**
+     * Benchmarks the well-known <tt>SRTPCipherGCM</tt> implementations (or
+     * the one specified by {@link #CIPHER_CLASS_NAME}) and returns the
+     * fastest-performing one.
+     *
+     * @param keySize AES key size (16, 32 bytes)
+     * @return the fastest-performing <tt>SRTPCipherGCM</tt> implementation or
+     * <tt>null</tt> if none is functional
+     */
+    private static Class<?> benchmark(int keySize)
+    {
+        Class<?>[] classes = CIPHER_CLASSES;
+        Class<?> configured = getConfiguredCipherClass();
+
+        if (configured != null)
+        {
+            // The specified implementation overrides all others provided that
+            // it proves functional.
+            Class<?> elected
+                = benchmark(new Class<?>[] { configured }, keySize);
+
+            if (elected != null)
+                return elected;
+        }
+        return benchmark(classes, keySize);
+    }
+
+    /**
+     * Benchmarks specific <tt>SRTPCipherGCM</tt> implementations and returns
+     * the fastest-performing one.
+     *
+     * @param classes the <tt>SRTPCipherGCM</tt> implementations to benchmark
+     * @param keySize AES key size (16, 32 bytes)
+     * @return the fastest-performing <tt>SRTPCipherGCM</tt> implementation
+     * among the specified <tt>classes</tt> or <tt>null</tt> if none is
+     * functional
+     */
+    private static Class<?> benchmark(Class<?>[] classes, int keySize)
+    {
+        Random random = AESGCM.random;
+        byte[] key = new byte[keySize];
+        byte[] iv = new byte[SRTPCipherGCM.IV_LENGTH];
+        byte[] aad = new byte[BENCHMARK_AAD_LENGTH];
+        byte[] data
+            = new byte[BENCHMARK_PAYLOAD_LENGTH + SRTPCipherGCM.TAG_LENGTH];
+
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        random.nextBytes(aad);
+        random.nextBytes(data);
+
+        long minTime = Long.MAX_VALUE;
+        Class<?> minClass = null;
+        StringBuilder log = new StringBuilder();
+
+        for (Class<?> clazz : classes)
+        {
+            try
+            {
+                SRTPCipherGCM cipher = createCipher(clazz, key);
+
+                long startTime = System.nanoTime();
+
+                for (int i = 0; i < BENCHMARK_PACKETS; i++)
+                {
+                    // Never reuse an IV with the same key.
+                    iv[IV_COUNTER_INDEX] = (byte) i;
+                    cipher.encrypt(
+                            iv,
+                            aad, 0, aad.length,
+                            data, 0, BENCHMARK_PAYLOAD_LENGTH);
+                }
+
+                long endTime = System.nanoTime();
+                long time = endTime - startTime;
+
+                if (time < minTime)
+                {
+                    minTime = time;
+                    minClass = clazz;
+                }
+
+                if (log.length() != 0)
+                    log.append(", ");
+
+                log.append(clazz.getSimpleName()).append(' ').append(time);
+            }
+            catch (Throwable t)
+            {
+                // The implementation is not available in this environment
+                // (e.g. the OpenSSL wrapper is not loaded or predates AES-GCM).
+                if (t instanceof InterruptedException)
+                    Thread.currentThread().interrupt();
+                else if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+            }
+        }
+
+        if (log.length() != 0)
+        {
+            logger.info(
+                    "AES-GCM benchmark"
+                        + " (of execution times expressed in nanoseconds): "
+                        + log);
+        }
+
+        return minClass;
+    }
+
+    /**
+     * Initializes a new <tt>SRTPCipherGCM</tt> instance which implements
+     * AES-GCM with a specific key size.
+     *
+     * @param keySize length of the AES key (16, 32 bytes)
+     * @return a new <tt>SRTPCipherGCM</tt> instance which implements AES-GCM
+     * (to be initialized with a key of <tt>keySize</tt> bytes)
+     */
+    public static SRTPCipherGCM createCipher(int keySize)
+    {
+        Class<?> clazz;
+
+        synchronized (AESGCM.class)
+        {
+            long now = System.currentTimeMillis();
+
+            clazz = AESGCM.cipherClass;
+            if ((clazz != null)
+                    && (now > cipherClassTimestamp + AES.FACTORY_TIMEOUT))
+            {
+                clazz = null;
+            }
+            if (clazz == null)
+            {
+                clazz = benchmark(keySize);
+                if (clazz == null)
+                {
+                    clazz = AESGCM.cipherClass;
+                    if (clazz == null)
+                        clazz = SRTPCipherGCMJava.class;
+                }
+
+                cipherClassTimestamp = now;
+                if (AESGCM.cipherClass != clazz)
+                {
+                    AESGCM.cipherClass = clazz;
+                    logger.info(
+                            "Will employ AES-GCM implemented by "
+                                + clazz.getSimpleName() + ".");
+                }
+            }
+        }
+
+        try
+        {
+            return (SRTPCipherGCM) clazz.newInstance();
+        }
+        catch (Exception ex)
+        {
+            if (ex instanceof RuntimeException)
+                throw (RuntimeException) ex;
+            else
+                throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Initializes a new instance of a specific <tt>SRTPCipherGCM</tt>
+     * implementation with a specific key.
+     *
+     * @param clazz the <tt>SRTPCipherGCM</tt> implementation to instantiate
+     * @param key the key to initialize the new instance with
+     * @return a new instance of <tt>clazz</tt> initialized with <tt>key</tt>
+     * @throws Exception if <tt>clazz</tt> fails to initialize
+     */
+    private static SRTPCipherGCM createCipher(Class<?> clazz, byte[] key)
+        throws Exception
+    {
+        SRTPCipherGCM cipher = (SRTPCipherGCM) clazz.newInstance();
+
+        cipher.init(key);
+        return cipher;
+    }
+
+    /**
+     * Gets the <tt>SRTPCipherGCM</tt> implementation specified by
+     * {@link #CIPHER_CLASS_NAME}.
+     *
+     * @return the <tt>SRTPCipherGCM</tt> implementation specified by
+     * {@link #CIPHER_CLASS_NAME} or <tt>null</tt> if none is specified or the
+     * specified one cannot be loaded
+     */
+    private static Class<?> getConfiguredCipherClass()
+    {
+        String className = CIPHER_CLASS_NAME;
+
+        if ((className == null) || (className.length() == 0))
+            return null;
+
+        // Support specifying CIPHER_CLASS_NAME without a package and without
+        // SRTPCipherGCM at the beginning for the purposes of brevity and ease.
+        if (!className.contains("."))
+        {
+            if (!className.startsWith(CIPHER_SIMPLE_CLASS_NAME))
+                className = CIPHER_SIMPLE_CLASS_NAME + className;
+            className = AESGCM.class.getPackage().getName() + "." + className;
+        }
+
+        try
+        {
+            Class<?> clazz = Class.forName(className);
+
+            if (SRTPCipherGCM.class.isAssignableFrom(clazz))
+                return clazz;
+        }
+        catch (Throwable t)
+        {
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+        }
+        logger.warn(
+                "Failed to employ class " + className
+                    + " as an AES-GCM implementation.");
+        return null;
+    }
+}
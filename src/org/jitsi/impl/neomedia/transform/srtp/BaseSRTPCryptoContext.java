@@ -35,11 +35,16 @@
 package org.jitsi.impl.neomedia.transform.srtp;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.bouncycastle.crypto.*;
 import org.bouncycastle.crypto.engines.*;
+import org.bouncycastle.crypto.params.*;
 import org.jitsi.bccontrib.macs.*;
+import org.jitsi.bccontrib.params.*;
+import org.jitsi.service.libjitsi.*;
 import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
 
 /**
  * SRTPCryptoContext class is the core class of SRTP implementation. There can
@@ -68,40 +73,34 @@
 class BaseSRTPCryptoContext
 {
     /**
-     * The replay check windows size.
+     * The default replay check window size. The minimum of RFC 3711 (64) is
+     * too small for the reordering of video at high bitrates.
      */
-    protected static final long REPLAY_WINDOW_SIZE = 64;
+    private static final int DEFAULT_REPLAY_WINDOW_SIZE = 1024;
 
     /**
-     * Derived session authentication key
+     * The replay check window size.
      */
-    protected final byte[] authKey;
+    protected static final int REPLAY_WINDOW_SIZE;
 
     /**
-     * implements the counter cipher mode for RTP according to RFC 3711
+     * The number of {@link Scratch} instances of a context. It bounds the
+     * number of threads which may process packets of the same context
+     * concurrently; further threads wait for a <tt>Scratch</tt> to be
+     * released.
      */
-    protected final SRTPCipherCTR cipherCtr;
+    private static final int SCRATCH_POOL_SIZE = 4;
 
     /**
-     * F8 mode cipher
+     * Derived session authentication key
      */
-    protected final SRTPCipherF8 cipherF8;
+    protected final byte[] authKey;
 
     /**
      * Derived session encryption key
      */
     protected final byte[] encKey;
 
-    /**
-     * Temp store.
-     */
-    protected final byte[] ivStore = new byte[16];
-
-    /**
-     * The HMAC object we used to do packet authentication
-     */
-    protected final Mac mac; // used for various HMAC computations
-
     /**
      * Master encryption key
      */
@@ -123,53 +122,67 @@
     protected final SRTPPolicy policy;
 
     /**
-     * Temp store.
+     * The replay list of this context. Accessed only while synchronized on
+     * this context.
      */
-    protected final byte[] rbStore = new byte[4];
+    protected final ReplayWindow replayWindow
+        = new ReplayWindow(REPLAY_WINDOW_SIZE);
 
     /**
-     * Bit mask for replay check
+     * Derived session salting key
      */
-    protected long replayWindow;
+    protected final byte[] saltKey;
 
     /**
-     * Derived session salting key
+     * The {@link Scratch} instances which are not in use by any thread. The
+     * keyed ciphers and the MAC of a <tt>Scratch</tt> are expensive to
+     * initialize so they are created once the session keys are derived and
+     * reused rather than recreated for each packet. The monitor of the array
+     * is the one the threads which wait for a <tt>Scratch</tt> wait on.
      */
-    protected final byte[] saltKey;
+    private final AtomicReferenceArray<Scratch> scratchPool
+        = new AtomicReferenceArray<>(SCRATCH_POOL_SIZE);
 
     /**
-     * RTP/RTCP SSRC of this cryptographic context
+     * The indicator which determines whether {@link #scratchPool} holds the
+     * <tt>Scratch</tt> instances of this context i.e. the session keys have
+     * been derived and this context has not been closed yet.
      */
-    protected final int ssrc;
+    private volatile boolean scratchesPooled = false;
 
     /**
-     * Temp store.
+     * The number of threads which wait for a <tt>Scratch</tt> to be released.
      */
-    protected final byte[] tagStore;
+    private final AtomicInteger scratchWaiters = new AtomicInteger();
 
     /**
-     * this is a working store, used by some methods to avoid new operations
-     * the methods must use this only to store results for immediate processing
+     * RTP/RTCP SSRC of this cryptographic context
      */
-    protected final byte[] tempStore = new byte[100];
+    protected final int ssrc;
+
+    static
+    {
+        REPLAY_WINDOW_SIZE
+            = Math.max(
+                    1,
+                    ConfigUtils.getInt(
+                            LibJitsi.getConfigurationService(),
+                            SRTPCryptoContext.REPLAY_WINDOW_SIZE_PNAME,
+                            DEFAULT_REPLAY_WINDOW_SIZE));
+    }
 
     protected BaseSRTPCryptoContext(int ssrc)
     {
         this.ssrc = ssrc;
 
         authKey = null;
-        cipherCtr = null;
-        cipherF8 = null;
         encKey = null;
-        mac = null;
         masterKey = null;
         masterSalt = null;
         policy = null;
         saltKey = null;
-        tagStore = null;
     }
 
-    @SuppressWarnings("fallthrough")
     protected BaseSRTPCryptoContext(
             int ssrc,
             byte[] masterK,
@@ -189,97 +202,184 @@ protected BaseSRTPCryptoContext(
         masterSalt = new byte[saltKeyLength];
         System.arraycopy(masterS, 0, masterSalt, 0, saltKeyLength);
 
-        SRTPCipherCTR cipherCtr = null;
-        SRTPCipherF8 cipherF8 = null;
-        byte[] encKey = null;
-        byte[] saltKey = null;
-
-        switch (policy.getEncType())
+        if (policy.getEncType() == SRTPPolicy.NULL_ENCRYPTION)
+        {
+            encKey = null;
+            saltKey = null;
+        }
+        else
         {
-        case SRTPPolicy.NULL_ENCRYPTION:
-            break;
-
-        case SRTPPolicy.AESF8_ENCRYPTION:
-            cipherF8 = new SRTPCipherF8(AES.createBlockCipher(encKeyLength));
-            //$FALL-THROUGH$
-
-        case SRTPPolicy.AESCM_ENCRYPTION:
-            // use OpenSSL if available and AES128 is in use
-            if (OpenSSLWrapperLoader.isLoaded() && encKeyLength == 16)
-            {
-                cipherCtr = new SRTPCipherCTROpenSSL();
-            }
-            else
-            {
-                cipherCtr
-                    = new SRTPCipherCTRJava(
-                            AES.createBlockCipher(encKeyLength));
-            }
-            encKey = new byte[encKeyLength];
-            saltKey = new byte[saltKeyLength];
-            break;
-
-        case SRTPPolicy.TWOFISHF8_ENCRYPTION:
-            cipherF8 = new SRTPCipherF8(new TwofishEngine());
-            //$FALL-THROUGH$
-
-        case SRTPPolicy.TWOFISH_ENCRYPTION:
-            cipherCtr = new SRTPCipherCTRJava(new TwofishEngine());
             encKey = new byte[encKeyLength];
             saltKey = new byte[saltKeyLength];
-            break;
         }
-        this.cipherCtr = cipherCtr;
-        this.cipherF8 = cipherF8;
-        this.encKey = encKey;
-        this.saltKey = saltKey;
-
-        byte[] authKey;
-        Mac mac;
-        byte[] tagStore;
 
         switch (policy.getAuthType())
         {
         case SRTPPolicy.HMACSHA1_AUTHENTICATION:
-            authKey = new byte[policy.getAuthKeyLength()];
-            mac = HMACSHA1.createMac();
-            tagStore = new byte[mac.getMacSize()];
-            break;
-
         case SRTPPolicy.SKEIN_AUTHENTICATION:
             authKey = new byte[policy.getAuthKeyLength()];
-            mac = new SkeinMac();
-            tagStore = new byte[policy.getAuthTagLength()];
             break;
 
         case SRTPPolicy.NULL_AUTHENTICATION:
         default:
             authKey = null;
-            mac = null;
-            tagStore = null;
             break;
         }
-        this.authKey = authKey;
-        this.mac = mac;
-        this.tagStore = tagStore;
+    }
+
+    /**
+     * Gets a {@link Scratch} for the exclusive use of the calling thread until
+     * it is returned with {@link #releaseScratch(Scratch)}. Waits for another
+     * thread to release one if all <tt>Scratch</tt> instances of this context
+     * are in use.
+     *
+     * @return a <tt>Scratch</tt> which is keyed with the session keys of this
+     * context or <tt>null</tt> if the session keys have not been derived yet
+     * or this context has been closed, in which case the packet is to be
+     * dropped
+     */
+    protected Scratch acquireScratch()
+    {
+        Scratch scratch = pollScratch();
+
+        if (scratch != null)
+            return scratch;
+
+        boolean interrupted = false;
+
+        synchronized (scratchPool)
+        {
+            scratchWaiters.incrementAndGet();
+            try
+            {
+                while ((scratch = pollScratch()) == null)
+                {
+                    if (!scratchesPooled)
+                        break;
+                    try
+                    {
+                        scratchPool.wait();
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally
+            {
+                scratchWaiters.decrementAndGet();
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        return scratch;
     }
 
     /**
      * Authenticates a packet. Calculated authentication tag is returned/stored
-     * in {@link #tagStore}.
+     * in the <tt>tagStore</tt> of a specific {@link Scratch}.
      *
      * @param pkt the RTP packet to be authenticated
      * @param rocIn Roll-Over-Counter
+     * @param scratch the <tt>Scratch</tt> of the calling thread
      */
-    synchronized protected void authenticatePacketHMAC(RawPacket pkt, int rocIn)
+    protected void authenticatePacketHMAC(
+            RawPacket pkt,
+            int rocIn,
+            Scratch scratch)
     {
+        Mac mac = scratch.mac;
+        byte[] rbStore = scratch.rbStore;
+
         mac.update(pkt.getBuffer(), pkt.getOffset(), pkt.getLength());
         rbStore[0] = (byte) (rocIn >> 24);
         rbStore[1] = (byte) (rocIn >> 16);
         rbStore[2] = (byte) (rocIn >> 8);
         rbStore[3] = (byte) rocIn;
         mac.update(rbStore, 0, rbStore.length);
-        mac.doFinal(tagStore, 0);
+        mac.doFinal(scratch.tagStore, 0);
+    }
+
+    /**
+     * Creates the {@link Scratch} instances of this context and zeroes the
+     * session keys which are kept by the keyed ciphers, the MACs and the
+     * salting key copies of the <tt>Scratch</tt> instances from then on.
+     * Invoked once the session keys are derived.
+     */
+    protected synchronized void createScratches()
+    {
+        Scratch[] scratches = new Scratch[SCRATCH_POOL_SIZE];
+
+        for (int i = 0; i < SCRATCH_POOL_SIZE; i++)
+            scratches[i] = new Scratch();
+        if (encKey != null)
+            Arrays.fill(encKey, (byte) 0);
+        if (authKey != null)
+            Arrays.fill(authKey, (byte) 0);
+        if (saltKey != null)
+            Arrays.fill(saltKey, (byte) 0);
+
+        synchronized (scratchPool)
+        {
+            for (int i = 0; i < SCRATCH_POOL_SIZE; i++)
+                scratchPool.set(i, scratches[i]);
+            scratchesPooled = true;
+            scratchPool.notifyAll();
+        }
+    }
+
+    /**
+     * Initializes a new counter mode cipher which computes the session keys of
+     * this context from its master key (i.e. the pseudo-random function of RFC
+     * 3711).
+     *
+     * @return a new counter mode cipher which is to compute the session keys of
+     * this context
+     */
+    protected SRTPCipherCTR createKeyDerivationCipher()
+    {
+        switch (policy.getEncType())
+        {
+        case SRTPPolicy.TWOFISH_ENCRYPTION:
+        case SRTPPolicy.TWOFISHF8_ENCRYPTION:
+            return new SRTPCipherCTRJava(new TwofishEngine());
+
+        default:
+            return
+                new SRTPCipherCTRJava(
+                        AES.createBlockCipher(policy.getEncKeyLength()));
+        }
+    }
+
+    /**
+     * Gets the byte of the master salt at a specific index in the input of the
+     * key derivation function. The 96-bit master salt of the AEAD (RFC 7714)
+     * transforms is padded with zeros to the 112 bits used by RFC 3711.
+     *
+     * @param i the index of the byte of the master salt to get
+     * @return the byte of the master salt at index <tt>i</tt> or <tt>0</tt> if
+     * the master salt is shorter
+     */
+    protected byte getMasterSaltByte(int i)
+    {
+        return (i < masterSalt.length) ? masterSalt[i] : 0;
+    }
+
+    /**
+     * Sets the session encryption and salting keys of this context instead of
+     * deriving them from its master key. Allows the packet transforms to be
+     * verified against test vectors which specify session keys (e.g. those of
+     * RFC 7714). Must not be invoked while packets are being processed.
+     *
+     * @param encK the session encryption key
+     * @param saltK the session salting key
+     */
+    synchronized void setSessionKeys(byte[] encK, byte[] saltK)
+    {
+        System.arraycopy(encK, 0, encKey, 0, encKey.length);
+        System.arraycopy(saltK, 0, saltKey, 0, saltKey.length);
+        createScratches();
     }
 
     /**
@@ -292,6 +392,20 @@ synchronized public void close()
     {
         Arrays.fill(masterKey, (byte) 0);
         Arrays.fill(masterSalt, (byte) 0);
+        if (authKey != null)
+            Arrays.fill(authKey, (byte) 0);
+        if (encKey != null)
+            Arrays.fill(encKey, (byte) 0);
+        if (saltKey != null)
+            Arrays.fill(saltKey, (byte) 0);
+
+        synchronized (scratchPool)
+        {
+            scratchesPooled = false;
+            for (int i = 0; i < SCRATCH_POOL_SIZE; i++)
+                scratchPool.set(i, null);
+            scratchPool.notifyAll();
+        }
     }
 
     /**
@@ -314,6 +428,17 @@ public int getMKILength()
         return (mki == null) ? 0 : mki.length;
     }
 
+    /**
+     * Gets the number of packets this context has rejected because they had
+     * been received already.
+     *
+     * @return the number of packets rejected as replays
+     */
+    public long getReplayedPacketCount()
+    {
+        return replayWindow.getReplayedPacketCount();
+    }
+
     /**
      * Gets the SSRC of this SRTP cryptographic context
      *
@@ -323,4 +448,230 @@ public int getSSRC()
     {
         return ssrc;
     }
+
+    /**
+     * Gets the number of packets this context has rejected because they were
+     * older than its replay check window.
+     *
+     * @return the number of packets rejected as too old
+     */
+    public long getTooOldPacketCount()
+    {
+        return replayWindow.getTooOldPacketCount();
+    }
+
+    /**
+     * Takes a {@link Scratch} out of {@link #scratchPool} without waiting.
+     *
+     * @return a <tt>Scratch</tt> which is not in use by any other thread or
+     * <tt>null</tt> if all are in use
+     */
+    private Scratch pollScratch()
+    {
+        for (int i = 0; i < SCRATCH_POOL_SIZE; i++)
+        {
+            if (scratchPool.get(i) != null)
+            {
+                Scratch scratch = scratchPool.getAndSet(i, null);
+
+                if (scratch != null)
+                    return scratch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a {@link Scratch} acquired with {@link #acquireScratch()} so that
+     * it may be reused by the next packet. Must not be invoked more than once
+     * for the same acquisition.
+     *
+     * @param scratch the <tt>Scratch</tt> to return or <tt>null</tt> if none
+     * was acquired
+     */
+    protected void releaseScratch(Scratch scratch)
+    {
+        if (scratch == null || !scratchesPooled)
+            return;
+
+        for (int i = 0; i < SCRATCH_POOL_SIZE; i++)
+        {
+            if (scratchPool.get(i) == null
+                    && scratchPool.compareAndSet(i, null, scratch))
+            {
+                // This context may have been closed in the meantime.
+                if (!scratchesPooled)
+                    scratchPool.compareAndSet(i, scratch, null);
+                break;
+            }
+        }
+        if (scratchWaiters.get() > 0)
+        {
+            synchronized (scratchPool)
+            {
+                scratchPool.notify();
+            }
+        }
+    }
+
+    /**
+     * The ciphers, the MAC and the temp stores which are needed to process a
+     * single packet. A context leases a <tt>Scratch</tt> to each thread which
+     * is processing one of its packets so that concurrent threads do not have
+     * to serialize on shared ones.
+     */
+    protected class Scratch
+    {
+        /**
+         * implements the counter cipher mode for RTP according to RFC 3711
+         */
+        final SRTPCipherCTR cipherCtr;
+
+        /**
+         * F8 mode cipher
+         */
+        final SRTPCipherF8 cipherF8;
+
+        /**
+         * Galois/Counter mode cipher (RFC 7714)
+         */
+        final SRTPCipherGCM cipherGcm;
+
+        /**
+         * Temp store for the associated data of the Galois/Counter mode.
+         */
+        final byte[] aadStore = new byte[12];
+
+        /**
+         * Temp store for the Galois/Counter mode initialization vector.
+         */
+        final byte[] gcmIvStore = new byte[SRTPCipherGCM.IV_LENGTH];
+
+        /**
+         * Temp store.
+         */
+        final byte[] ivStore = new byte[16];
+
+        /**
+         * The HMAC object we used to do packet authentication
+         */
+        final Mac mac;
+
+        /**
+         * Temp store.
+         */
+        final byte[] rbStore = new byte[4];
+
+        /**
+         * The copy of the session salting key from which the initialization
+         * vectors are computed.
+         */
+        final byte[] saltKey;
+
+        /**
+         * Temp store.
+         */
+        final byte[] tagStore;
+
+        /**
+         * this is a working store, used by some methods to avoid new
+         * operations the methods must use this only to store results for
+         * immediate processing
+         */
+        final byte[] tempStore = new byte[100];
+
+        /**
+         * Initializes a new <tt>Scratch</tt> instance with ciphers and a MAC
+         * keyed with the session keys of this context.
+         */
+        @SuppressWarnings("fallthrough")
+        Scratch()
+        {
+            int encKeyLength = policy.getEncKeyLength();
+            SRTPCipherCTR cipherCtr = null;
+            SRTPCipherF8 cipherF8 = null;
+            SRTPCipherGCM cipherGcm = null;
+
+            byte[] saltKey = BaseSRTPCryptoContext.this.saltKey;
+
+            this.saltKey = (saltKey == null) ? null : saltKey.clone();
+
+            switch (policy.getEncType())
+            {
+            case SRTPPolicy.NULL_ENCRYPTION:
+                break;
+
+            case SRTPPolicy.AESF8_ENCRYPTION:
+                cipherF8
+                    = new SRTPCipherF8(AES.createBlockCipher(encKeyLength));
+                //$FALL-THROUGH$
+
+            case SRTPPolicy.AESCM_ENCRYPTION:
+                // use OpenSSL if available and AES128 is in use
+                if (OpenSSLWrapperLoader.isLoaded() && encKeyLength == 16)
+                {
+                    cipherCtr = new SRTPCipherCTROpenSSL();
+                }
+                else
+                {
+                    cipherCtr
+                        = new SRTPCipherCTRJava(
+                                AES.createBlockCipher(encKeyLength));
+                }
+                break;
+
+            case SRTPPolicy.AESGCM_ENCRYPTION:
+                cipherGcm = AESGCM.createCipher(encKeyLength);
+                break;
+
+            case SRTPPolicy.TWOFISHF8_ENCRYPTION:
+                cipherF8 = new SRTPCipherF8(new TwofishEngine());
+                //$FALL-THROUGH$
+
+            case SRTPPolicy.TWOFISH_ENCRYPTION:
+                cipherCtr = new SRTPCipherCTRJava(new TwofishEngine());
+                break;
+            }
+            if (cipherCtr != null)
+                cipherCtr.init(encKey);
+            if (cipherF8 != null)
+                cipherF8.init(encKey, this.saltKey);
+            if (cipherGcm != null)
+                cipherGcm.init(encKey);
+            this.cipherCtr = cipherCtr;
+            this.cipherF8 = cipherF8;
+            this.cipherGcm = cipherGcm;
+
+            Mac mac;
+            byte[] tagStore;
+
+            switch (policy.getAuthType())
+            {
+            case SRTPPolicy.HMACSHA1_AUTHENTICATION:
+                mac = HMACSHA1.createMac();
+                tagStore = new byte[mac.getMacSize()];
+                mac.init(new KeyParameter(authKey));
+                break;
+
+            case SRTPPolicy.SKEIN_AUTHENTICATION:
+                mac = new SkeinMac();
+                tagStore = new byte[policy.getAuthTagLength()];
+                // Skein MAC uses number of bits as MAC size, not just bytes
+                mac.init(
+                        new ParametersForSkein(
+                                new KeyParameter(authKey),
+                                ParametersForSkein.Skein512,
+                                tagStore.length * 8));
+                break;
+
+            case SRTPPolicy.NULL_AUTHENTICATION:
+            default:
+                mac = null;
+                tagStore = null;
+                break;
+            }
+            this.mac = mac;
+            this.tagStore = tagStore;
+        }
+    }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+/**
+ * The replay list of an SRTP/SRTCP cryptographic context (RFC 3711, Section
+ * 3.3.2) for a window of any size. The bits of the packets in the window are
+ * kept in a circular array of words as described in RFC 6479 so checking and
+ * accepting a packet takes constant time: moving the window forward clears at
+ * most all of the words. One word more than the window needs is allocated so
+ * that the word of the highest index may be partially used.
+ *
+ * Instances are not thread-safe.
+ */
+class ReplayWindow
+{
+    /**
+     * The value returned by {@link #check(long)} for a packet which has not
+     * been received yet.
+     */
+    public static final int ACCEPTED = 0;
+
+    /**
+     * The value returned by {@link #check(long)} for a packet which has been
+     * received already.
+     */
+    public static final int REPLAYED = 1;
+
+    /**
+     * The value returned by {@link #check(long)} for a packet which is older
+     * than the window.
+     */
+    public static final int TOO_OLD = 2;
+
+    /**
+     * The bits of the packets in the window. The bit of the packet with index
+     * <tt>i</tt> is bit <tt>i mod 64</tt> of word
+     * <tt>(i / 64) mod bitmap.length</tt>.
+     */
+    private final long[] bitmap;
+
+    /**
+     * The highest index accepted so far or <tt>Long.MIN_VALUE</tt> if no
+     * packet has been accepted yet.
+     */
+    private long highestIndex = Long.MIN_VALUE;
+
+    /**
+     * The number of packets rejected because they had been received already.
+     */
+    private volatile long replayedPacketCount;
+
+    /**
+     * The number of packets rejected because they were older than the
+     * window.
+     */
+    private volatile long tooOldPacketCount;
+
+    /**
+     * The number of packets preceding the highest accepted index which are
+     * still checked for replays.
+     */
+    private final int size;
+
+    /**
+     * The number of words of {@link #bitmap} minus one.
+     */
+    private final int wordMask;
+
+    /**
+     * Initializes a new <tt>ReplayWindow</tt> instance.
+     *
+     * @param size the number of packets (preceding and including the one with
+     * the highest index accepted so far) which are to be checked for replays
+     */
+    ReplayWindow(int size)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("size " + size);
+
+        int wordCount = 1;
+
+        while (wordCount < ((size + 63) >>> 6) + 1)
+            wordCount <<= 1;
+
+        bitmap = new long[wordCount];
+        wordMask = wordCount - 1;
+        this.size = size;
+    }
+
+    /**
+     * Checks whether a packet with a specific index is to be rejected as a
+     * replay. Counts the rejections.
+     *
+     * @param index the (SRTP or SRTCP) index of the packet to check
+     * @return {@link #ACCEPTED} if the packet has not been received yet,
+     * {@link #REPLAYED} if it has been received already or {@link #TOO_OLD} if
+     * it is older than the window
+     */
+    public int check(long index)
+    {
+        if (index > highestIndex)
+            return ACCEPTED;
+
+        if (highestIndex - index >= size)
+        {
+            tooOldPacketCount++;
+            return TOO_OLD;
+        }
+
+        if ((bitmap[(int) (index >> 6) & wordMask] & (1L << index)) != 0)
+        {
+            replayedPacketCount++;
+            return REPLAYED;
+        }
+
+        return ACCEPTED;
+    }
+
+    /**
+     * Gets the number of packets rejected by {@link #check(long)} because they
+     * had been received already.
+     *
+     * @return the number of packets rejected as replays
+     */
+    public long getReplayedPacketCount()
+    {
+        return replayedPacketCount;
+    }
+
+    /**
+     * Gets the number of packets which the window spans.
+     *
+     * @return the number of packets which the window spans
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the number of packets rejected by {@link #check(long)} because they
+     * were older than the window.
+     *
+     * @return the number of packets rejected as too old
+     */
+    public long getTooOldPacketCount()
+    {
+        return tooOldPacketCount;
+    }
+
+    /**
+     * Marks a packet as received. The packet must have been accepted by
+     * {@link #check(long)}.
+     *
+     * @param index the (SRTP or SRTCP) index of the received packet
+     */
+    public void update(long index)
+    {
+        long word = index >> 6;
+
+        if (index > highestIndex)
+        {
+            if (highestIndex != Long.MIN_VALUE)
+            {
+                // Clear the words the window moves onto. The ones which are
+                // reused for higher indexes hold bits of indexes which are too
+                // old to be checked.
+                long highestWord = highestIndex >> 6;
+                long wordCount = Math.min(word - highestWord, bitmap.length);
+
+                for (long i = 1; i <= wordCount; i++)
+                    bitmap[(int) (highestWord + i) & wordMask] = 0;
+            }
+            highestIndex = index;
+        }
+
+        bitmap[(int) word & wordMask] |= 1L << index;
+    }
+}
@@ -17,8 +17,6 @@
 
 import java.util.*;
 
-import org.bouncycastle.crypto.params.*;
-import org.jitsi.bccontrib.params.*;
 import org.jitsi.service.neomedia.*;
 
 /**
@@ -48,11 +46,6 @@
 public class SRTCPCryptoContext
     extends BaseSRTPCryptoContext
 {
-    /**
-     * Index received so far
-     */
-    private int receivedIndex = 0;
-
     /**
      * Index sent so far
      */
@@ -95,9 +88,9 @@ public SRTCPCryptoContext(
 
     /**
      * Checks if a packet is a replayed on based on its sequence number. The
-     * method supports a 64 packet history relative to the given sequence
-     * number. Sequence Number is guaranteed to be real (not faked) through
-     * authentication.
+     * method supports a history of {@link #REPLAY_WINDOW_SIZE} packets relative
+     * to the highest received index. Sequence Number is guaranteed to be real
+     * (not faked) through authentication.
      *
      * @param index index number of the SRTCP packet
      * @return true if this sequence number indicates the packet is not a
@@ -105,31 +98,21 @@ public SRTCPCryptoContext(
      */
     boolean checkReplay(int index)
     {
-        // compute the index of previously received packet and its
-        // delta to the new received packet
-        long delta = index - receivedIndex;
-
-        if (delta > 0)
-            return true; // Packet not yet received
-        else if (-delta > REPLAY_WINDOW_SIZE)
-            return false; // Packet too old
-        else if (((this.replayWindow >> (-delta)) & 0x1) != 0)
-            return false; // Packet already received!
-        else
-            return true; // Packet not yet received
+        return replayWindow.check(index) == ReplayWindow.ACCEPTED;
     }
 
     /**
      * Computes the initialization vector, used later by encryption algorithms,
      * based on the label.
      *
+     * @param ivStore the array to compute the initialization vector into
      * @param label label specified for each type of iv
      */
-    private void computeIv(byte label)
+    private void computeIv(byte[] ivStore, byte label)
     {
         for (int i = 0; i < 14; i++)
         {
-            ivStore[i] = masterSalt[i];
+            ivStore[i] = getMasterSaltByte(i);
         }
         ivStore[7] ^= label;
         ivStore[14] = ivStore[15] = 0;
@@ -157,61 +140,52 @@ public SRTCPCryptoContext deriveContext(int ssrc)
      */
     synchronized public void deriveSrtcpKeys()
     {
+        SRTPCipherCTR cipherCtr = createKeyDerivationCipher();
+        byte[] ivStore = new byte[16];
+
         // compute the session encryption key
-        computeIv((byte) 3);
+        computeIv(ivStore, (byte) 3);
 
         cipherCtr.init(masterKey);
         Arrays.fill(masterKey, (byte) 0);
 
-        Arrays.fill(encKey, (byte) 0);
-        cipherCtr.process(encKey, 0, policy.getEncKeyLength(), ivStore);
+        if (encKey != null)
+        {
+            Arrays.fill(encKey, (byte) 0);
+            cipherCtr.process(encKey, 0, policy.getEncKeyLength(), ivStore);
+        }
 
         if (authKey != null)
         {
-            computeIv((byte) 4);
+            computeIv(ivStore, (byte) 4);
             Arrays.fill(authKey, (byte) 0);
             cipherCtr.process(authKey, 0, policy.getAuthKeyLength(), ivStore);
-
-            switch (policy.getAuthType())
-            {
-            case SRTPPolicy.HMACSHA1_AUTHENTICATION:
-                mac.init(new KeyParameter(authKey));
-                break;
-
-            case SRTPPolicy.SKEIN_AUTHENTICATION:
-                // Skein MAC uses number of bits as MAC size, not just bytes
-                mac.init(
-                        new ParametersForSkein(
-                                new KeyParameter(authKey),
-                                ParametersForSkein.Skein512,
-                                tagStore.length * 8));
-                break;
-            }
-
-            Arrays.fill(authKey, (byte) 0);
         }
 
         // compute the session salt
-        computeIv((byte) 5);
-        Arrays.fill(saltKey, (byte) 0);
-        cipherCtr.process(saltKey, 0, policy.getSaltKeyLength(), ivStore);
+        if (saltKey != null)
+        {
+            computeIv(ivStore, (byte) 5);
+            Arrays.fill(saltKey, (byte) 0);
+            cipherCtr.process(saltKey, 0, policy.getSaltKeyLength(), ivStore);
+        }
         Arrays.fill(masterSalt, (byte) 0);
 
-        // As last step: initialize cipher with derived encryption key.
-        if (cipherF8 != null)
-            cipherF8.init(encKey, saltKey);
-        cipherCtr.init(encKey);
-        Arrays.fill(encKey, (byte) 0);
+        createScratches();
     }
 
     /**
      * Performs Counter Mode AES encryption/decryption
      *
      * @param pkt the RTP packet to be encrypted/decrypted
+     * @param index the SRTCP index of <tt>pkt</tt>
+     * @param scratch the <tt>Scratch</tt> of the calling thread
      */
-    public void processPacketAESCM(RawPacket pkt, int index)
+    private void processPacketAESCM(RawPacket pkt, int index, Scratch scratch)
     {
         int ssrc = (int) pkt.getRTCPSSRC();
+        byte[] ivStore = scratch.ivStore;
+        byte[] saltKey = scratch.saltKey;
 
         /* Compute the CM IV (refer to chapter 4.1.1 in RFC 3711):
         *
@@ -247,18 +221,120 @@ public void processPacketAESCM(RawPacket pkt, int index)
         int payloadOffset = 8;
         int payloadLength = pkt.getLength() - payloadOffset;
 
-        cipherCtr.process(
+        scratch.cipherCtr.process(
                 pkt.getBuffer(), pkt.getOffset() + payloadOffset, payloadLength,
                 ivStore);
     }
 
+    /**
+     * Performs Galois/Counter Mode AES authenticated encryption/decryption
+     * (RFC 7714). When encrypting, appends the authentication tag and the E
+     * flag and SRTCP index to <tt>pkt</tt>. When decrypting, verifies and
+     * removes them.
+     *
+     * @param pkt the RTCP packet to be encrypted/decrypted
+     * @param indexEflag the SRTCP index of <tt>pkt</tt> with the E flag set
+     * @param encrypt <tt>true</tt> to encrypt <tt>pkt</tt> or <tt>false</tt>
+     * to decrypt it
+     * @param scratch the <tt>Scratch</tt> of the calling thread
+     * @return <tt>true</tt> if <tt>pkt</tt> was encrypted or was successfully
+     * authenticated and decrypted; <tt>false</tt> if the authentication of
+     * <tt>pkt</tt> failed
+     */
+    private boolean processPacketAESGCM(
+            RawPacket pkt,
+            int indexEflag,
+            boolean encrypt,
+            Scratch scratch)
+    {
+        int ssrc = (int) pkt.getRTCPSSRC();
+        int index = indexEflag & ~0x80000000;
+        SRTPCipherGCM cipherGcm = scratch.cipherGcm;
+        byte[] iv = scratch.gcmIvStore;
+        byte[] saltKey = scratch.saltKey;
+
+        /* Compute the GCM IV (refer to section 9.1 in RFC 7714):
+         *
+         * 00 00 SSRC SSRC SSRC SSRC 00 00 0+IDX IDX IDX IDX
+         * ----------------------------------------------------XOR
+         * 12-octet session salt
+         */
+        iv[0] = saltKey[0];
+        iv[1] = saltKey[1];
+        iv[2] = (byte) ((ssrc >> 24) ^ saltKey[2]);
+        iv[3] = (byte) ((ssrc >> 16) ^ saltKey[3]);
+        iv[4] = (byte) ((ssrc >> 8) ^ saltKey[4]);
+        iv[5] = (byte) (ssrc ^ saltKey[5]);
+        iv[6] = saltKey[6];
+        iv[7] = saltKey[7];
+        iv[8] = (byte) ((index >> 24) ^ saltKey[8]);
+        iv[9] = (byte) ((index >> 16) ^ saltKey[9]);
+        iv[10] = (byte) ((index >> 8) ^ saltKey[10]);
+        iv[11] = (byte) (index ^ saltKey[11]);
+
+        // The associated data is the fixed header (8 bytes) followed by the E
+        // flag and the SRTCP index.
+        byte[] aad = scratch.aadStore;
+
+        System.arraycopy(pkt.getBuffer(), pkt.getOffset(), aad, 0, 8);
+        aad[8] = (byte) (indexEflag >> 24);
+        aad[9] = (byte) (indexEflag >> 16);
+        aad[10] = (byte) (indexEflag >> 8);
+        aad[11] = (byte) indexEflag;
+
+        int payloadOffset = 8;
+
+        if (encrypt)
+        {
+            // Grow packet storage in one step before the buffer is retrieved
+            // because growing may reallocate it.
+            pkt.grow(SRTPCipherGCM.TAG_LENGTH + 4);
+
+            byte[] buf = pkt.getBuffer();
+            int off = pkt.getOffset();
+
+            cipherGcm.encrypt(
+                    iv,
+                    aad, 0, aad.length,
+                    buf, off + payloadOffset, pkt.getLength() - payloadOffset);
+            pkt.setLength(pkt.getLength() + SRTPCipherGCM.TAG_LENGTH);
+            System.arraycopy(aad, 8, scratch.rbStore, 0, 4);
+            pkt.append(scratch.rbStore, 4);
+            return true;
+        }
+        else
+        {
+            // Remove the E flag and SRTCP index which follow the tag.
+            pkt.shrink(4);
+
+            int length = pkt.getLength() - payloadOffset;
+
+            if (length < SRTPCipherGCM.TAG_LENGTH
+                    || !cipherGcm.decrypt(
+                            iv,
+                            aad, 0, aad.length,
+                            pkt.getBuffer(),
+                            pkt.getOffset() + payloadOffset,
+                            length))
+            {
+                return false;
+            }
+            pkt.shrink(SRTPCipherGCM.TAG_LENGTH);
+            return true;
+        }
+    }
+
     /**
      * Performs F8 Mode AES encryption/decryption
      *
      * @param pkt the RTP packet to be encrypted/decrypted
+     * @param index the SRTCP index of <tt>pkt</tt>
+     * @param scratch the <tt>Scratch</tt> of the calling thread
      */
-    public void processPacketAESF8(RawPacket pkt, int index)
+    private void processPacketAESF8(RawPacket pkt, int index, Scratch scratch)
     {
+        byte[] ivStore = scratch.ivStore;
+
         // 4 bytes of the iv are zero
         // the first byte of the RTP header is not used.
         ivStore[0] = 0;
@@ -283,7 +359,7 @@ public void processPacketAESF8(RawPacket pkt, int index)
         int payloadOffset = 8;
         int payloadLength = pkt.getLength() - (4 + policy.getAuthTagLength());
 
-        cipherF8.process(
+        scratch.cipherF8.process(
                 pkt.getBuffer(), pkt.getOffset() + payloadOffset, payloadLength,
                 ivStore);
     }
@@ -303,8 +379,11 @@ public void processPacketAESF8(RawPacket pkt, int index)
      * @return <tt>true</tt> if the packet can be accepted or <tt>false</tt> if
      * authentication or replay check failed
      */
-    synchronized public boolean reverseTransformPacket(RawPacket pkt)
+    public boolean reverseTransformPacket(RawPacket pkt)
     {
+        if (policy.getEncType() == SRTPPolicy.AESGCM_ENCRYPTION)
+            return reverseTransformPacketAESGCM(pkt);
+
         boolean decrypt = false;
         int tagLength = policy.getAuthTagLength();
         int indexEflag = pkt.getSRTCPIndex(tagLength);
@@ -315,56 +394,140 @@ synchronized public boolean reverseTransformPacket(RawPacket pkt)
         int index = indexEflag & ~0x80000000;
 
         /* Replay control */
-        if (!checkReplay(index))
+        synchronized (this)
         {
-            return false;
+            if (!checkReplay(index))
+                return false;
         }
 
-        /* Authenticate the packet */
-        if (policy.getAuthType() != SRTPPolicy.NULL_AUTHENTICATION)
-        {
-            // get original authentication data and store in tempStore
-            pkt.readRegionToBuff(pkt.getLength() - tagLength, tagLength,
-                    tempStore);
-
-            // Shrink packet to remove the authentication tag and index
-            // because this is part of authenicated data
-            pkt.shrink(tagLength + 4);
+        Scratch scratch = acquireScratch();
 
-            // compute, then save authentication in tagStore
-            authenticatePacketHMAC(pkt, indexEflag);
-
-            // compare authentication tags using constant time comparison
-            int nonEqual = 0;
-            for (int i = 0; i < tagLength; i++)
-            {
-                nonEqual |= (tempStore[i] ^ tagStore[i]);
-            }
-            if (nonEqual != 0)
-                return false;
-        }
+        // This context has been closed.
+        if (scratch == null)
+            return false;
 
-        if (decrypt)
+        try
         {
-            /* Decrypt the packet using Counter Mode encryption */
-            if (policy.getEncType() == SRTPPolicy.AESCM_ENCRYPTION
-                    || policy.getEncType() == SRTPPolicy.TWOFISH_ENCRYPTION)
+            /* Authenticate the packet */
+            if (policy.getAuthType() != SRTPPolicy.NULL_AUTHENTICATION)
             {
-                processPacketAESCM(pkt, index);
+                byte[] tempStore = scratch.tempStore;
+                byte[] tagStore = scratch.tagStore;
+
+                // get original authentication data and store in tempStore
+                pkt.readRegionToBuff(pkt.getLength() - tagLength, tagLength,
+                        tempStore);
+
+                // Shrink packet to remove the authentication tag and index
+                // because this is part of authenicated data
+                pkt.shrink(tagLength + 4);
+
+                // compute, then save authentication in tagStore
+                authenticatePacketHMAC(pkt, indexEflag, scratch);
+
+                // compare authentication tags using constant time comparison
+                int nonEqual = 0;
+                for (int i = 0; i < tagLength; i++)
+                {
+                    nonEqual |= (tempStore[i] ^ tagStore[i]);
+                }
+                if (nonEqual != 0)
+                    return false;
             }
 
-            /* Decrypt the packet using F8 Mode encryption */
-            else if (policy.getEncType() == SRTPPolicy.AESF8_ENCRYPTION
-                    || policy.getEncType() == SRTPPolicy.TWOFISHF8_ENCRYPTION)
+            if (decrypt)
             {
-                processPacketAESF8(pkt, index);
+                /* Decrypt the packet using Counter Mode encryption */
+                if (policy.getEncType() == SRTPPolicy.AESCM_ENCRYPTION
+                        || policy.getEncType()
+                                == SRTPPolicy.TWOFISH_ENCRYPTION)
+                {
+                    processPacketAESCM(pkt, index, scratch);
+                }
+
+                /* Decrypt the packet using F8 Mode encryption */
+                else if (policy.getEncType() == SRTPPolicy.AESF8_ENCRYPTION
+                        || policy.getEncType()
+                                == SRTPPolicy.TWOFISHF8_ENCRYPTION)
+                {
+                    processPacketAESF8(pkt, index, scratch);
+                }
             }
         }
-        update(index);
+        finally
+        {
+            releaseScratch(scratch);
+        }
+
+        return checkReplayAndUpdate(index);
+    }
 
+    /**
+     * Repeats the replay check of an authenticated packet (because another
+     * thread may have accepted a packet with the same index while it was being
+     * authenticated) and, if it passes, updates the replay window.
+     *
+     * @param index index number of the authenticated packet
+     * @return <tt>true</tt> if the packet can be accepted; otherwise,
+     * <tt>false</tt>
+     */
+    private synchronized boolean checkReplayAndUpdate(int index)
+    {
+        if (!checkReplay(index))
+            return false;
+
+        update(index);
         return true;
     }
 
+    /**
+     * Implements {@link #reverseTransformPacket(RawPacket)} for the AEAD
+     * transforms (RFC 7714) in which the authentication tag precedes the E
+     * flag and the SRTCP index.
+     *
+     * @param pkt the received RTCP packet
+     * @return <tt>true</tt> if the packet can be accepted or <tt>false</tt> if
+     * authentication or replay check failed
+     */
+    private boolean reverseTransformPacketAESGCM(RawPacket pkt)
+    {
+        if (pkt.getLength() < 8 + SRTPCipherGCM.TAG_LENGTH + 4)
+            return false;
+
+        int indexEflag = pkt.getSRTCPIndex(0);
+
+        // We always encrypt and we do not expect to receive unencrypted SRTCP
+        // packets i.e. packets in which the whole payload is associated data.
+        if ((indexEflag & 0x80000000) == 0)
+            return false;
+
+        int index = indexEflag & ~0x80000000;
+
+        synchronized (this)
+        {
+            if (!checkReplay(index))
+                return false;
+        }
+
+        Scratch scratch = acquireScratch();
+
+        // This context has been closed.
+        if (scratch == null)
+            return false;
+        boolean authenticated;
+
+        try
+        {
+            authenticated
+                = processPacketAESGCM(pkt, indexEflag, false, scratch);
+        }
+        finally
+        {
+            releaseScratch(scratch);
+        }
+
+        return authenticated && checkReplayAndUpdate(index);
+    }
 
     /**
      * Transform a RTP packet into a SRTP packet. The method is called when a
@@ -379,15 +542,63 @@ else if (policy.getEncType() == SRTPPolicy.AESF8_ENCRYPTION
      * (RTPManager managed transportation) instead.
      *
      * @param pkt the RTP packet that is going to be sent out
+     * @return <tt>true</tt> if <tt>pkt</tt> was transformed or <tt>false</tt>
+     * if it is to be dropped because this context has been closed
      */
-    synchronized public void transformPacket(RawPacket pkt)
+    public boolean transformPacket(RawPacket pkt)
     {
+        // Acquire the Scratch before the index of pkt is reserved so that a
+        // packet which is dropped because this context has been closed does
+        // not advance the SRTCP index.
+        Scratch scratch = acquireScratch();
+
+        if (scratch == null)
+            return false;
+
+        int sentIndex;
+
+        // Reserve the index of pkt. The cryptographic operations use a Scratch
+        // of their own and run without holding the lock.
+        synchronized (this)
+        {
+            sentIndex = this.sentIndex;
+            this.sentIndex++;
+            this.sentIndex &= ~0x80000000;  // clear possible overflow
+        }
+
+        try
+        {
+            transformPacket(pkt, sentIndex, scratch);
+        }
+        finally
+        {
+            releaseScratch(scratch);
+        }
+        return true;
+    }
+
+    /**
+     * Implements {@link #transformPacket(RawPacket)} for a specific SRTCP
+     * index.
+     *
+     * @param pkt the RTP packet that is going to be sent out
+     * @param sentIndex the SRTCP index reserved for <tt>pkt</tt>
+     * @param scratch the <tt>Scratch</tt> of the calling thread
+     */
+    private void transformPacket(RawPacket pkt, int sentIndex, Scratch scratch)
+    {
+        if (policy.getEncType() == SRTPPolicy.AESGCM_ENCRYPTION)
+        {
+            processPacketAESGCM(pkt, sentIndex | 0x80000000, true, scratch);
+            return;
+        }
+
         boolean encrypt = false;
         /* Encrypt the packet using Counter Mode encryption */
         if (policy.getEncType() == SRTPPolicy.AESCM_ENCRYPTION ||
                 policy.getEncType() == SRTPPolicy.TWOFISH_ENCRYPTION)
         {
-            processPacketAESCM(pkt, sentIndex);
+            processPacketAESCM(pkt, sentIndex, scratch);
             encrypt = true;
         }
 
@@ -395,7 +606,7 @@ synchronized public void transformPacket(RawPacket pkt)
         else if (policy.getEncType() == SRTPPolicy.AESF8_ENCRYPTION ||
                 policy.getEncType() == SRTPPolicy.TWOFISHF8_ENCRYPTION)
         {
-            processPacketAESF8(pkt, sentIndex);
+            processPacketAESF8(pkt, sentIndex, scratch);
             encrypt = true;
         }
         int index = 0;
@@ -410,12 +621,10 @@ else if (policy.getEncType() == SRTPPolicy.AESF8_ENCRYPTION ||
         // it in network order in rbStore variable.
         if (policy.getAuthType() != SRTPPolicy.NULL_AUTHENTICATION)
         {
-            authenticatePacketHMAC(pkt, index);
-            pkt.append(rbStore, 4);
-            pkt.append(tagStore, policy.getAuthTagLength());
+            authenticatePacketHMAC(pkt, index, scratch);
+            pkt.append(scratch.rbStore, 4);
+            pkt.append(scratch.tagStore, policy.getAuthTagLength());
         }
-        sentIndex++;
-        sentIndex &= ~0x80000000;       // clear possible overflow
     }
 
     /**
@@ -426,19 +635,6 @@ else if (policy.getEncType() == SRTPPolicy.AESF8_ENCRYPTION ||
      */
     private void update(int index)
     {
-        int delta = receivedIndex - index;
-
-        /* update the replay bit mask */
-        if (delta > 0)
-        {
-            replayWindow = replayWindow << delta;
-            replayWindow |= 1;
-        }
-        else
-        {
-            replayWindow |= ( 1 << delta );
-        }
-
-        receivedIndex = index;
+        replayWindow.update(index);
     }
 }
@@ -15,10 +15,9 @@
  */
 package org.jitsi.impl.neomedia.transform.srtp;
 
-import java.util.*;
-
 import org.jitsi.impl.neomedia.transform.*;
 import org.jitsi.service.neomedia.*;
+import org.jitsi.util.concurrent.*;
 
 /**
  * SRTCPTransformer implements PacketTransformer.
@@ -34,9 +33,10 @@
     private SRTPContextFactory reverseFactory;
 
     /**
-     * All the known SSRC's corresponding SRTCPCryptoContexts
+     * All the known SSRC's corresponding SRTCPCryptoContexts. Looked up without
+     * locking for every packet; modified only while synchronized on it.
      */
-    private final Map<Integer,SRTCPCryptoContext> contexts;
+    private final CopyOnWriteIntMap<SRTCPCryptoContext> contexts;
 
     /**
      * Constructs an <tt>SRTCPTransformer</tt>, sharing its
@@ -78,7 +78,7 @@ public SRTCPTransformer(
     {
         this.forwardFactory = forwardFactory;
         this.reverseFactory = reverseFactory;
-        this.contexts = new HashMap<Integer,SRTCPCryptoContext>();
+        this.contexts = new CopyOnWriteIntMap<>();
     }
 
     /**
@@ -129,15 +129,9 @@ public void close()
             if (reverseFactory != forwardFactory)
                 reverseFactory.close();
 
-            for (Iterator<SRTCPCryptoContext> i = contexts.values().iterator();
-                    i.hasNext();)
-            {
-                SRTCPCryptoContext context = i.next();
-
-                i.remove();
-                if (context != null)
-                    context.close();
-            }
+            for (SRTCPCryptoContext context : contexts.values())
+                context.close();
+            contexts.clear();
         }
     }
 
@@ -146,19 +140,22 @@ private SRTCPCryptoContext getContext(
             SRTPContextFactory engine)
     {
         int ssrc = (int) pkt.getRTCPSSRC();
-        SRTCPCryptoContext context = null;
+        SRTCPCryptoContext context = contexts.get(ssrc);
 
-        synchronized (contexts)
+        if (context == null && engine != null)
         {
-            context = contexts.get(ssrc);
-            if (context == null && engine != null)
+            synchronized (contexts)
             {
-                context = engine.getDefaultContextControl();
-                if (context != null)
+                context = contexts.get(ssrc);
+                if (context == null)
                 {
-                    context = context.deriveContext(ssrc);
-                    context.deriveSrtcpKeys();
-                    contexts.put(ssrc, context);
+                    context = engine.getDefaultContextControl();
+                    if (context != null)
+                    {
+                        context = context.deriveContext(ssrc);
+                        context.deriveSrtcpKeys();
+                        contexts.put(ssrc, context);
+                    }
                 }
             }
         }
@@ -166,6 +163,37 @@ private SRTCPCryptoContext getContext(
         return context;
     }
 
+    /**
+     * Gets the number of SRTCP packets which the crypto contexts of this
+     * transformer have rejected because they had been received already.
+     *
+     * @return the number of SRTCP packets rejected as replays
+     */
+    public long getReplayedPacketCount()
+    {
+        long count = 0;
+
+        for (SRTCPCryptoContext context : contexts.values())
+            count += context.getReplayedPacketCount();
+        return count;
+    }
+
+    /**
+     * Gets the number of SRTCP packets which the crypto contexts of this
+     * transformer have rejected because they were older than the replay check
+     * window.
+     *
+     * @return the number of SRTCP packets rejected as too old
+     */
+    public long getTooOldPacketCount()
+    {
+        long count = 0;
+
+        for (SRTCPCryptoContext context : contexts.values())
+            count += context.getTooOldPacketCount();
+        return count;
+    }
+
     /**
      * Decrypts a SRTCP packet
      *
@@ -194,15 +222,8 @@ public RawPacket transform(RawPacket pkt)
     {
         SRTCPCryptoContext context = getContext(pkt, forwardFactory);
 
-        if(context != null)
-        {
-            context.transformPacket(pkt);
-            return pkt;
-        }
-        else
-        {
-            // The packet cannot be encrypted. Thus, do not send it.
-            return null;
-        }
+        // If the packet cannot be encrypted, do not send it.
+        return
+            ((context != null) && context.transformPacket(pkt)) ? pkt : null;
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright @ 2016 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+/**
+ * SRTPCipherGCM implementations implement the AEAD_AES_128_GCM and
+ * AEAD_AES_256_GCM authenticated encryption of SRTP and SRTCP defined in
+ * RFC 7714. A single pass both encrypts (decrypts) the payload and computes
+ * (verifies) the authentication tag over the payload and the associated data
+ * i.e. the (S)RTP header or the SRTCP header and index.
+ */
+abstract class SRTPCipherGCM
+{
+    /**
+     * The length in bytes of the initialization vector.
+     */
+    public static final int IV_LENGTH = 12;
+
+    /**
+     * The length in bytes of the authentication tag.
+     */
+    public static final int TAG_LENGTH = 16;
+
+    /**
+     * (Re)Initializes the cipher with a specific key.
+     *
+     * @param key the key. key.length is either 16 or 32.
+     */
+    public abstract void init(byte[] key);
+
+    /**
+     * Encrypts data in place and writes the authentication tag right after
+     * the encrypted data.
+     *
+     * @param iv the initialization vector. iv.length == IV_LENGTH
+     * @param aad the byte array which contains the associated data
+     * @param aadOff the offset in <tt>aad</tt> at which the associated data
+     * starts
+     * @param aadLen the length of the associated data
+     * @param data the byte array which contains the data to encrypt and has
+     * room for <tt>TAG_LENGTH</tt> more bytes after it
+     * @param off the offset in <tt>data</tt> at which the data to encrypt
+     * starts
+     * @param len the length of the data to encrypt (excluding the tag)
+     */
+    public abstract void encrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len);
+
+    /**
+     * Verifies the authentication tag of and decrypts data in place.
+     *
+     * @param iv the initialization vector. iv.length == IV_LENGTH
+     * @param aad the byte array which contains the associated data
+     * @param aadOff the offset in <tt>aad</tt> at which the associated data
+     * starts
+     * @param aadLen the length of the associated data
+     * @param data the byte array which contains the data to decrypt followed
+     * by the authentication tag
+     * @param off the offset in <tt>data</tt> at which the data to decrypt
+     * starts
+     * @param len the length of the data to decrypt including the tag
+     * @return <tt>true</tt> if the authentication tag is valid and the first
+     * <tt>len - TAG_LENGTH</tt> bytes at <tt>off</tt> are the decrypted data;
+     * otherwise, <tt>false</tt> and the contents of <tt>data</tt> are
+     * undefined
+     */
+    public abstract boolean decrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len);
+
+    /**
+     * Check the validity of encrypt/decrypt function arguments
+     */
+    protected static void checkProcessArgs(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+    {
+        if (iv.length != IV_LENGTH)
+            throw new IllegalArgumentException("iv.length != IV_LENGTH");
+        if (aadOff < 0 || aadLen < 0 || aadOff + aadLen > aad.length)
+            throw new IllegalArgumentException("aad");
+        if (off < 0)
+            throw new IllegalArgumentException("off < 0");
+        if (len < 0)
+            throw new IllegalArgumentException("len < 0");
+        if (off + len > data.length)
+            throw new IllegalArgumentException("off + len > data.length");
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright @ 2016 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import java.security.*;
+
+import javax.crypto.*;
+import javax.crypto.spec.*;
+
+/**
+ * @see SRTPCipherGCM
+ * SRTPCipherGCM implementation using the <tt>AES/GCM/NoPadding</tt>
+ * <tt>javax.crypto.Cipher</tt> of the Java runtime. Recent runtimes implement
+ * it with AES-NI and carry-less multiplication intrinsics.
+ */
+public class SRTPCipherGCMJCE extends SRTPCipherGCM
+{
+    /**
+     * The name of the JCE transformation implemented by this instance.
+     */
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    /**
+     * The JCE <tt>Cipher</tt> which implements AES-GCM.
+     */
+    private final Cipher cipher;
+
+    /**
+     * The key with which {@link #cipher} is (re)initialized for each packet.
+     */
+    private SecretKeySpec key;
+
+    /**
+     * Initializes a new <tt>SRTPCipherGCMJCE</tt> instance.
+     *
+     * @throws GeneralSecurityException if the Java runtime does not provide
+     * an AES-GCM implementation
+     */
+    public SRTPCipherGCMJCE()
+        throws GeneralSecurityException
+    {
+        cipher = Cipher.getInstance(TRANSFORMATION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(byte[] key)
+    {
+        if (key.length != 16 && key.length != 32)
+            throw new IllegalArgumentException("Not an AES-GCM key length");
+
+        this.key = new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+    {
+        checkProcessArgs(iv, aad, aadOff, aadLen, data, off, len);
+
+        try
+        {
+            process(
+                    Cipher.ENCRYPT_MODE,
+                    iv,
+                    aad, aadOff, aadLen,
+                    data, off, len);
+        }
+        catch (GeneralSecurityException gse)
+        {
+            throw new RuntimeException(gse);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean decrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+    {
+        checkProcessArgs(iv, aad, aadOff, aadLen, data, off, len);
+        if (len < TAG_LENGTH)
+            return false;
+
+        try
+        {
+            process(
+                    Cipher.DECRYPT_MODE,
+                    iv,
+                    aad, aadOff, aadLen,
+                    data, off, len);
+            return true;
+        }
+        catch (AEADBadTagException abte)
+        {
+            return false;
+        }
+        catch (GeneralSecurityException gse)
+        {
+            throw new RuntimeException(gse);
+        }
+    }
+
+    /**
+     * Encrypts or decrypts data in place.
+     */
+    private void process(
+            int mode,
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+        throws GeneralSecurityException
+    {
+        cipher.init(
+                mode,
+                key,
+                new GCMParameterSpec(TAG_LENGTH * 8, iv, 0, IV_LENGTH));
+        cipher.updateAAD(aad, aadOff, aadLen);
+        // Cipher.doFinal is copy-safe i.e. the input and the output may be the
+        // same region of the same array.
+        cipher.doFinal(data, off, len, data, off);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright @ 2016 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import org.bouncycastle.crypto.*;
+import org.bouncycastle.crypto.modes.*;
+import org.bouncycastle.crypto.params.*;
+
+/**
+ * @see SRTPCipherGCM
+ * SRTPCipherGCM implementation using BouncyCastle's <tt>GCMBlockCipher</tt>
+ * over the AES <tt>BlockCipher</tt> elected by {@link AES}.
+ */
+public class SRTPCipherGCMJava extends SRTPCipherGCM
+{
+    /**
+     * The BouncyCastle GCM implementation.
+     */
+    private GCMBlockCipher cipher;
+
+    /**
+     * The key with which {@link #cipher} is (re)initialized for each packet.
+     */
+    private KeyParameter key;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(byte[] key)
+    {
+        if (key.length != 16 && key.length != 32)
+            throw new IllegalArgumentException("Not an AES-GCM key length");
+
+        cipher = new GCMBlockCipher(AES.createBlockCipher(key.length));
+        this.key = new KeyParameter(key.clone());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+    {
+        checkProcessArgs(iv, aad, aadOff, aadLen, data, off, len);
+
+        try
+        {
+            process(true, iv, aad, aadOff, aadLen, data, off, len);
+        }
+        catch (InvalidCipherTextException icte)
+        {
+            throw new RuntimeException(icte);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean decrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+    {
+        checkProcessArgs(iv, aad, aadOff, aadLen, data, off, len);
+        if (len < TAG_LENGTH)
+            return false;
+
+        try
+        {
+            process(false, iv, aad, aadOff, aadLen, data, off, len);
+            return true;
+        }
+        catch (InvalidCipherTextException icte)
+        {
+            // The authentication tag does not match.
+            return false;
+        }
+    }
+
+    /**
+     * Encrypts or decrypts data in place.
+     */
+    private void process(
+            boolean encrypt,
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+        throws InvalidCipherTextException
+    {
+        cipher.init(
+                encrypt,
+                new AEADParameters(key, TAG_LENGTH * 8, iv.clone()));
+        cipher.processAADBytes(aad, aadOff, aadLen);
+
+        // The output never overtakes the input so processing in place is safe.
+        int outLen = cipher.processBytes(data, off, len, data, off);
+
+        cipher.doFinal(data, off + outLen);
+    }
+}
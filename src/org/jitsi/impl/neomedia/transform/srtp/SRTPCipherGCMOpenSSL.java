@@ -0,0 +1,133 @@
+/*
+ * Copyright @ 2016 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+/**
+ * @see SRTPCipherGCM
+ * SRTPCipherGCM implementation using OpenSSL via JNI.
+ */
+public class SRTPCipherGCMOpenSSL extends SRTPCipherGCM
+{
+    private static native long AES_GCM_CTX_create();
+
+    private static native void AES_GCM_CTX_destroy(long ctx);
+
+    private static native boolean AES_GCM_CTX_init(
+            long ctx,
+            byte[] key,
+            int keyLen);
+
+    private static native boolean AES_GCM_CTX_process(
+            long ctx,
+            boolean encrypt,
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] inOut, int off, int len);
+
+    /**
+     * the OpenSSL AES-GCM context
+     */
+    private long ctx;
+
+    public SRTPCipherGCMOpenSSL()
+    {
+        if (!OpenSSLWrapperLoader.isLoaded())
+            throw new RuntimeException("OpenSSL wrapper not loaded");
+
+        ctx = AES_GCM_CTX_create();
+        if (ctx == 0)
+            throw new RuntimeException("AES_GCM_CTX_create");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(byte[] key)
+    {
+        if (key.length != 16 && key.length != 32)
+            throw new IllegalArgumentException("Not an AES-GCM key length");
+
+        if (!AES_GCM_CTX_init(ctx, key, key.length))
+            throw new RuntimeException("AES_GCM_CTX_init");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+    {
+        checkProcessArgs(iv, aad, aadOff, aadLen, data, off, len);
+        if (off + len + TAG_LENGTH > data.length)
+            throw new IllegalArgumentException("no room for the tag");
+
+        if (!AES_GCM_CTX_process(
+                ctx,
+                true,
+                iv,
+                aad, aadOff, aadLen,
+                data, off, len))
+        {
+            throw new RuntimeException("AES_GCM_CTX_process");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean decrypt(
+            byte[] iv,
+            byte[] aad, int aadOff, int aadLen,
+            byte[] data, int off, int len)
+    {
+        checkProcessArgs(iv, aad, aadOff, aadLen, data, off, len);
+        if (len < TAG_LENGTH)
+            return false;
+
+        return
+            AES_GCM_CTX_process(
+                    ctx,
+                    false,
+                    iv,
+                    aad, aadOff, aadLen,
+                    data, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void finalize() throws Throwable
+    {
+        try
+        {
+            if (ctx != 0)
+            {
+                AES_GCM_CTX_destroy(ctx);
+                ctx = 0;
+            }
+        }
+        finally
+        {
+            super.finalize();
+        }
+    }
+}
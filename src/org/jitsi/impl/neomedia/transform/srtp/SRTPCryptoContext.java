@@ -38,8 +38,6 @@
 
 import javax.media.*;
 
-import org.bouncycastle.crypto.params.*;
-import org.jitsi.bccontrib.params.*;
 import org.jitsi.service.configuration.*;
 import org.jitsi.service.libjitsi.*;
 import org.jitsi.service.neomedia.*;
@@ -80,6 +78,15 @@
     public static final String CHECK_REPLAY_PNAME
         = SRTPCryptoContext.class.getName() + ".checkReplay";
 
+    /**
+     * The name of the <tt>int</tt> <tt>ConfigurationService</tt> property
+     * which specifies the number of packets in the replay check windows of the
+     * SRTP and SRTCP cryptographic contexts. The default value is
+     * <tt>1024</tt>.
+     */
+    public static final String REPLAY_WINDOW_SIZE_PNAME
+        = SRTPCryptoContext.class.getName() + ".replayWindowSize";
+
     /**
      * The indicator which determines whether protection against replay attacks
      * is to be activated. The default value is <tt>true</tt>.
@@ -120,15 +127,6 @@ private static synchronized void readConfigurationServicePropertiesOnce()
             checkReplay = cfg.getBoolean(CHECK_REPLAY_PNAME, checkReplay);
     }
 
-    /**
-     * For the receiver only, the rollover counter guessed from the sequence
-     * number of the received packet that is currently being processed (i.e. the
-     * value is valid during the execution of
-     * {@link #reverseTransformPacket(RawPacket)} only.) RFC 3711 refers to it
-     * by the name <tt>v</tt>.
-     */
-    private int guessedROC;
-
     /**
      * Key Derivation Rate, used to derive session keys from master keys
      */
@@ -229,16 +227,23 @@ public SRTPCryptoContext(
      * performed.
      *
      * @param pkt the <tt>RawPacket</tt> to authenticate
+     * @param guessedROC the rollover counter guessed for <tt>pkt</tt>
+     * @param scratch the <tt>Scratch</tt> of the calling thread
      * @return <tt>true</tt> if the <tt>policy</tt> of this
      * <tt>SRTPCryptoContext</tt> specifies that authentication is to not be
      * performed or <tt>pkt</tt> was successfully authenticated; otherwise,
      * <tt>false</tt>
      */
-    private boolean authenticatePacket(RawPacket pkt)
+    private boolean authenticatePacket(
+            RawPacket pkt,
+            int guessedROC,
+            Scratch scratch)
     {
         if (policy.getAuthType() != SRTPPolicy.NULL_AUTHENTICATION)
         {
             int tagLength = policy.getAuthTagLength();
+            byte[] tempStore = scratch.tempStore;
+            byte[] tagStore = scratch.tagStore;
 
             // get original authentication and store in tempStore
             pkt.readRegionToBuff(
@@ -249,7 +254,7 @@ private boolean authenticatePacket(RawPacket pkt)
             pkt.shrink(tagLength);
 
             // save computed authentication in tagStore
-            authenticatePacketHMAC(pkt, guessedROC);
+            authenticatePacketHMAC(pkt, guessedROC, scratch);
 
             // compare authentication tags using constant time comparison
             int nonEqual = 0;
@@ -265,9 +270,9 @@ private boolean authenticatePacket(RawPacket pkt)
 
     /**
      * Checks if a packet is a replayed based on its sequence number. The method
-     * supports a 64 packet history relative the the specified sequence number.
-     * The sequence number is guaranteed to be real (i.e. not faked) through
-     * authentication.
+     * supports a history of {@link #REPLAY_WINDOW_SIZE} packets relative to the
+     * highest received index. The sequence number is guaranteed to be real
+     * (i.e. not faked) through authentication.
      *
      * @param seqNo sequence number of the packet
      * @param guessedIndex guessed ROC
@@ -279,17 +284,9 @@ boolean checkReplay(int seqNo, long guessedIndex)
         if (!checkReplay)
             return true;
 
-        // Compute the index of the previously received packet and its delta to
-        // the newly received packet.
-        long localIndex = (((long) roc) << 16) | s_l;
-        long delta = guessedIndex - localIndex;
-
-        if (delta > 0)
-        {
-            return true; // Packet not received yet.
-        }
-        else if (-delta > REPLAY_WINDOW_SIZE)
+        switch (replayWindow.check(guessedIndex))
         {
+        case ReplayWindow.TOO_OLD:
             if (sender)
             {
                 logger.error(
@@ -297,12 +294,11 @@ else if (-delta > REPLAY_WINDOW_SIZE)
                             + ", SSRC " + Long.toString(0xFFFFFFFFL & ssrc)
                             + " because it is outside the replay window! (roc "
                             + roc + ", s_l " + s_l + ", guessedROC "
-                            + guessedROC);
+                            + (int) (guessedIndex >> 16));
             }
             return false; // Packet too old.
-        }
-        else if (((replayWindow >> (-delta)) & 0x1) != 0)
-        {
+
+        case ReplayWindow.REPLAYED:
             if (sender)
             {
                 logger.error(
@@ -310,12 +306,11 @@ else if (((replayWindow >> (-delta)) & 0x1) != 0)
                             + ", SSRC " + Long.toString(0xFFFFFFFFL & ssrc)
                             + " because it has been received already! (roc "
                             + roc + ", s_l " + s_l + ", guessedROC "
-                            + guessedROC);
+                            + (int) (guessedIndex >> 16));
             }
             return false; // Packet received already!
-        }
-        else
-        {
+
+        default:
             return true; // Packet not received yet.
         }
     }
@@ -325,10 +320,11 @@ else if (((replayWindow >> (-delta)) & 0x1) != 0)
      * based on the label, the packet index, key derivation rate and master salt
      * key.
      *
+     * @param ivStore the array to compute the initialization vector into
      * @param label label specified for each type of iv
      * @param index 48bit RTP packet index
      */
-    private void computeIv(long label, long index)
+    private void computeIv(byte[] ivStore, long label, long index)
     {
         long key_id;
 
@@ -342,7 +338,7 @@ private void computeIv(long label, long index)
         }
         for (int i = 0; i < 7; i++)
         {
-            ivStore[i] = masterSalt[i];
+            ivStore[i] = getMasterSaltByte(i);
         }
         for (int i = 7; i < 14; i++)
         {
@@ -350,7 +346,7 @@ private void computeIv(long label, long index)
                 (
                     (byte) (0xFF & (key_id >> (8 * (13 - i))))
                     ^
-                    masterSalt[i]
+                    getMasterSaltByte(i)
                 );
         }
         ivStore[14] = ivStore[15] = 0;
@@ -390,52 +386,39 @@ public SRTPCryptoContext deriveContext(int ssrc, int roc, long deriveRate)
      */
     synchronized public void deriveSrtpKeys(long index)
     {
+        SRTPCipherCTR cipherCtr = createKeyDerivationCipher();
+        byte[] ivStore = new byte[16];
+
         // compute the session encryption key
-        computeIv(0x00, index);
+        computeIv(ivStore, 0x00, index);
 
         cipherCtr.init(masterKey);
         Arrays.fill(masterKey, (byte) 0);
 
-        Arrays.fill(encKey, (byte) 0);
-        cipherCtr.process(encKey, 0, policy.getEncKeyLength(), ivStore);
+        if (encKey != null)
+        {
+            Arrays.fill(encKey, (byte) 0);
+            cipherCtr.process(encKey, 0, policy.getEncKeyLength(), ivStore);
+        }
 
         // compute the session authentication key
         if (authKey != null)
         {
-            computeIv(0x01, index);
+            computeIv(ivStore, 0x01, index);
             Arrays.fill(authKey, (byte) 0);
             cipherCtr.process(authKey, 0, policy.getAuthKeyLength(), ivStore);
-
-            switch (policy.getAuthType())
-            {
-            case SRTPPolicy.HMACSHA1_AUTHENTICATION:
-                mac.init(new KeyParameter(authKey));
-                break;
-
-            case SRTPPolicy.SKEIN_AUTHENTICATION:
-                // Skein MAC uses number of bits as MAC size, not just bytes
-                mac.init(
-                        new ParametersForSkein(
-                                new KeyParameter(authKey),
-                                ParametersForSkein.Skein512,
-                                tagStore.length * 8));
-                break;
-            }
-
-            Arrays.fill(authKey, (byte) 0);
         }
 
         // compute the session salt
-        computeIv(0x02, index);
-        Arrays.fill(saltKey, (byte) 0);
-        cipherCtr.process(saltKey, 0, policy.getSaltKeyLength(), ivStore);
+        if (saltKey != null)
+        {
+            computeIv(ivStore, 0x02, index);
+            Arrays.fill(saltKey, (byte) 0);
+            cipherCtr.process(saltKey, 0, policy.getSaltKeyLength(), ivStore);
+        }
         Arrays.fill(masterSalt, (byte) 0);
 
-        // As last step: initialize cipher with derived encryption key.
-        if (cipherF8 != null)
-            cipherF8.init(encKey, saltKey);
-        cipherCtr.init(encKey);
-        Arrays.fill(encKey, (byte) 0);
+        createScratches();
     }
 
     /**
@@ -448,6 +431,8 @@ synchronized public void deriveSrtpKeys(long index)
      */
     private long guessIndex(int seqNo)
     {
+        int guessedROC;
+
         if (s_l < 32768)
         {
             if (seqNo - s_l > 32768)
@@ -470,12 +455,19 @@ private long guessIndex(int seqNo)
      * Performs Counter Mode AES encryption/decryption
      *
      * @param pkt the RTP packet to be encrypted/decrypted
+     * @param guessedROC the rollover counter guessed for <tt>pkt</tt>
+     * @param scratch the <tt>Scratch</tt> of the calling thread
      */
-    public void processPacketAESCM(RawPacket pkt)
+    private void processPacketAESCM(
+            RawPacket pkt,
+            int guessedROC,
+            Scratch scratch)
     {
         int ssrc = pkt.getSSRC();
         int seqNo = pkt.getSequenceNumber();
         long index = (((long) guessedROC) << 16) | seqNo;
+        byte[] ivStore = scratch.ivStore;
+        byte[] saltKey = scratch.saltKey;
 
         // byte[] iv = new byte[16];
         ivStore[0] = saltKey[0];
@@ -510,25 +502,113 @@ public void processPacketAESCM(RawPacket pkt)
         int payloadOffset = pkt.getHeaderLength();
         int payloadLength = pkt.getPayloadLength();
 
-        cipherCtr.process(
+        scratch.cipherCtr.process(
                 pkt.getBuffer(), pkt.getOffset() + payloadOffset, payloadLength,
                 ivStore);
     }
 
+    /**
+     * Performs Galois/Counter Mode AES authenticated encryption/decryption
+     * (RFC 7714). When encrypting, appends the authentication tag to
+     * <tt>pkt</tt>. When decrypting, verifies and removes the authentication
+     * tag.
+     *
+     * @param pkt the RTP packet to be encrypted/decrypted
+     * @param roc the rollover counter guessed for <tt>pkt</tt>
+     * @param encrypt <tt>true</tt> to encrypt <tt>pkt</tt> or <tt>false</tt>
+     * to decrypt it
+     * @param scratch the <tt>Scratch</tt> of the calling thread
+     * @return <tt>true</tt> if <tt>pkt</tt> was encrypted or was successfully
+     * authenticated and decrypted; <tt>false</tt> if the authentication of
+     * <tt>pkt</tt> failed
+     */
+    private boolean processPacketAESGCM(
+            RawPacket pkt,
+            int roc,
+            boolean encrypt,
+            Scratch scratch)
+    {
+        int ssrc = pkt.getSSRC();
+        int seqNo = pkt.getSequenceNumber();
+        SRTPCipherGCM cipherGcm = scratch.cipherGcm;
+        byte[] iv = scratch.gcmIvStore;
+        byte[] saltKey = scratch.saltKey;
+
+        /* Compute the GCM IV (refer to section 8.1 in RFC 7714):
+         *
+         * 00 00 SSRC SSRC SSRC SSRC ROC ROC ROC ROC SEQ SEQ
+         * ----------------------------------------------------XOR
+         * 12-octet session salt
+         */
+        iv[0] = saltKey[0];
+        iv[1] = saltKey[1];
+        iv[2] = (byte) ((ssrc >> 24) ^ saltKey[2]);
+        iv[3] = (byte) ((ssrc >> 16) ^ saltKey[3]);
+        iv[4] = (byte) ((ssrc >> 8) ^ saltKey[4]);
+        iv[5] = (byte) (ssrc ^ saltKey[5]);
+        iv[6] = (byte) ((roc >> 24) ^ saltKey[6]);
+        iv[7] = (byte) ((roc >> 16) ^ saltKey[7]);
+        iv[8] = (byte) ((roc >> 8) ^ saltKey[8]);
+        iv[9] = (byte) (roc ^ saltKey[9]);
+        iv[10] = (byte) ((seqNo >> 8) ^ saltKey[10]);
+        iv[11] = (byte) (seqNo ^ saltKey[11]);
+
+        // The RTP header is the associated data and everything after it
+        // (including any padding) is encrypted.
+        int headerLength = pkt.getHeaderLength();
+        int length = pkt.getLength() - headerLength;
+
+        if (encrypt)
+        {
+            // Make room for the tag before the buffer is retrieved because
+            // growing may reallocate it.
+            pkt.grow(SRTPCipherGCM.TAG_LENGTH);
+
+            byte[] buf = pkt.getBuffer();
+            int off = pkt.getOffset();
+
+            cipherGcm.encrypt(
+                    iv,
+                    buf, off, headerLength,
+                    buf, off + headerLength, length);
+            pkt.setLength(pkt.getLength() + SRTPCipherGCM.TAG_LENGTH);
+            return true;
+        }
+        else
+        {
+            byte[] buf = pkt.getBuffer();
+            int off = pkt.getOffset();
+
+            if (length < SRTPCipherGCM.TAG_LENGTH
+                    || !cipherGcm.decrypt(
+                            iv,
+                            buf, off, headerLength,
+                            buf, off + headerLength, length))
+            {
+                return false;
+            }
+            pkt.shrink(SRTPCipherGCM.TAG_LENGTH);
+            return true;
+        }
+    }
+
     /**
      * Performs F8 Mode AES encryption/decryption
      *
      * @param pkt the RTP packet to be encrypted/decrypted
+     * @param roc the rollover counter guessed for <tt>pkt</tt>
+     * @param scratch the <tt>Scratch</tt> of the calling thread
      */
-    public void processPacketAESF8(RawPacket pkt)
+    private void processPacketAESF8(RawPacket pkt, int roc, Scratch scratch)
     {
+        byte[] ivStore = scratch.ivStore;
+
         // 11 bytes of the RTP header are the 11 bytes of the iv
         // the first byte of the RTP header is not used.
         System.arraycopy(pkt.getBuffer(), pkt.getOffset(), ivStore, 0, 12);
         ivStore[0] = 0;
 
         // set the ROC in network order into IV
-        int roc = guessedROC;
 
         ivStore[12] = (byte) (roc >> 24);
         ivStore[13] = (byte) (roc >> 16);
@@ -538,7 +618,7 @@ public void processPacketAESF8(RawPacket pkt)
         int payloadOffset = pkt.getHeaderLength();
         int payloadLength = pkt.getPayloadLength();
 
-        cipherF8.process(
+        scratch.cipherF8.process(
                 pkt.getBuffer(), pkt.getOffset() + payloadOffset, payloadLength,
                 ivStore);
     }
@@ -558,76 +638,109 @@ public void processPacketAESF8(RawPacket pkt)
      * @return <tt>true</tt> if the packet can be accepted; <tt>false</tt> if
      * the packet failed authentication or failed replay check
      */
-    synchronized public boolean reverseTransformPacket(RawPacket pkt)
+    public boolean reverseTransformPacket(RawPacket pkt)
     {
-        if (logger.isDebugEnabled())
-        {
-            logger.debug(
-                    "Reverse transform for SSRC " + this.ssrc
-                        + " SeqNo=" + pkt.getSequenceNumber()
-                        + " s_l=" + s_l
-                        + " seqNumSet=" + seqNumSet
-                        + " guessedROC=" + guessedROC
-                        + " roc=" + roc);
-        }
-
         int seqNo = pkt.getSequenceNumber();
+        long guessedIndex;
 
-        if (!seqNumSet)
+        // Only the rollover counter, the highest sequence number and the
+        // replay window are shared by the threads which process packets of
+        // this context. The cryptographic operations use a Scratch of their
+        // own and run without holding the lock.
+        synchronized (this)
         {
-            seqNumSet = true;
-            s_l = seqNo;
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(
+                        "Reverse transform for SSRC " + this.ssrc
+                            + " SeqNo=" + seqNo
+                            + " s_l=" + s_l
+                            + " seqNumSet=" + seqNumSet
+                            + " roc=" + roc);
+            }
+
+            if (!seqNumSet)
+            {
+                seqNumSet = true;
+                s_l = seqNo;
+            }
+
+            // Guess the SRTP index (48 bit), see RFC 3711, 3.3.1
+            guessedIndex = guessIndex(seqNo);
+
+            // Replay control
+            if (!checkReplay(seqNo, guessedIndex))
+                return false;
         }
 
-        // Guess the SRTP index (48 bit), see RFC 3711, 3.3.1
-        // Stores the guessed rollover counter (ROC) in this.guessedROC.
-        long guessedIndex = guessIndex(seqNo);
-        boolean b = false;
+        Scratch scratch = acquireScratch();
+
+        // This context has been closed.
+        if (scratch == null)
+            return false;
 
-        // Replay control
-        if (checkReplay(seqNo, guessedIndex))
+        int guessedROC = (int) (guessedIndex >> 16);
+        boolean authenticated;
+
+        try
         {
-            // Authenticate the packet.
-            if (authenticatePacket(pkt))
+            // Authenticate the packet. The AEAD transforms authenticate and
+            // decrypt in a single pass so they cannot skip the decrypting.
+            authenticated
+                = (policy.getEncType() == SRTPPolicy.AESGCM_ENCRYPTION)
+                    ? processPacketAESGCM(pkt, guessedROC, false, scratch)
+                    : authenticatePacket(pkt, guessedROC, scratch);
+
+            // If a RawPacket is flagged with Buffer.FLAG_DISCARD, then it
+            // should have been discarded earlier. Anyway, at least skip its
+            // decrypting. We flag a RawPacket with Buffer.FLAG_SILENCE when we
+            // want to ignore its payload. In the context of SRTP, we want to
+            // skip its decrypting.
+            if (authenticated
+                    && (pkt.getFlags()
+                                & (Buffer.FLAG_DISCARD | Buffer.FLAG_SILENCE))
+                            == 0)
             {
-                // If a RawPacket is flagged with Buffer.FLAG_DISCARD, then it
-                // should have been discarded earlier. Anyway, at least skip its
-                // decrypting. We flag a RawPacket with Buffer.FLAG_SILENCE when
-                // we want to ignore its payload. In the context of SRTP, we
-                // want to skip its decrypting.
-                if ((pkt.getFlags()
-                            & (Buffer.FLAG_DISCARD | Buffer.FLAG_SILENCE))
-                        == 0)
+                switch (policy.getEncType())
                 {
-                    switch (policy.getEncType())
-                    {
-                    // Decrypt the packet using Counter Mode encryption.
-                    case SRTPPolicy.AESCM_ENCRYPTION:
-                    case SRTPPolicy.TWOFISH_ENCRYPTION:
-                        processPacketAESCM(pkt);
-                        break;
-
-                    // Decrypt the packet using F8 Mode encryption.
-                    case SRTPPolicy.AESF8_ENCRYPTION:
-                    case SRTPPolicy.TWOFISHF8_ENCRYPTION:
-                        processPacketAESF8(pkt);
-                        break;
-                    }
+                // Decrypt the packet using Counter Mode encryption.
+                case SRTPPolicy.AESCM_ENCRYPTION:
+                case SRTPPolicy.TWOFISH_ENCRYPTION:
+                    processPacketAESCM(pkt, guessedROC, scratch);
+                    break;
+
+                // Decrypt the packet using F8 Mode encryption.
+                case SRTPPolicy.AESF8_ENCRYPTION:
+                case SRTPPolicy.TWOFISHF8_ENCRYPTION:
+                    processPacketAESF8(pkt, guessedROC, scratch);
+                    break;
                 }
-
-                // Update the rollover counter and highest sequence number if
-                // necessary.
-                update(seqNo, guessedIndex);
-
-                b = true;
             }
-            else if (logger.isDebugEnabled())
-            {
+        }
+        finally
+        {
+            releaseScratch(scratch);
+        }
+
+        if (!authenticated)
+        {
+            if (logger.isDebugEnabled())
                 logger.debug("SRTP auth failed for SSRC " + ssrc);
-            }
+            return false;
         }
 
-        return b;
+        synchronized (this)
+        {
+            // Another thread may have accepted a packet with the same index
+            // while pkt was being authenticated.
+            if (!checkReplay(seqNo, guessedIndex))
+                return false;
+
+            // Update the rollover counter and highest sequence number if
+            // necessary.
+            update(seqNo, guessedIndex);
+        }
+        return true;
     }
 
     /**
@@ -643,53 +756,83 @@ else if (logger.isDebugEnabled())
      * (RTPManager managed transportation) instead.
      *
      * @param pkt the RTP packet that is going to be sent out
+     * @return <tt>true</tt> if <tt>pkt</tt> was transformed or <tt>false</tt>
+     * if it is to be dropped
      */
-    synchronized public boolean transformPacket(RawPacket pkt)
+    public boolean transformPacket(RawPacket pkt)
     {
-        int seqNo = pkt.getSequenceNumber();
+        // Acquire the Scratch before the index of pkt is reserved so that a
+        // packet which is dropped because this context has been closed does
+        // not advance the rollover counter.
+        Scratch scratch = acquireScratch();
 
-        if (!seqNumSet)
+        if (scratch == null)
+            return false;
+
+        try
         {
-            seqNumSet = true;
-            s_l = seqNo;
-        }
+            int seqNo = pkt.getSequenceNumber();
+            long guessedIndex;
 
-        // Guess the SRTP index (48 bit), see RFC 3711, 3.3.1
-        // Stores the guessed ROC in this.guessedROC
-        long guessedIndex = guessIndex(seqNo);
+            synchronized (this)
+            {
+                if (!seqNumSet)
+                {
+                    seqNumSet = true;
+                    s_l = seqNo;
+                }
 
-        /*
-         * XXX The invocation of the checkReplay method here is not meant as
-         * replay protection but as a consistency check of our implementation.
-         */
-        if (!checkReplay(seqNo, guessedIndex))
-            return false;
+                // Guess the SRTP index (48 bit), see RFC 3711, 3.3.1
+                guessedIndex = guessIndex(seqNo);
 
-        switch (policy.getEncType())
-        {
-        // Encrypt the packet using Counter Mode encryption.
-        case SRTPPolicy.AESCM_ENCRYPTION:
-        case SRTPPolicy.TWOFISH_ENCRYPTION:
-            processPacketAESCM(pkt);
-            break;
-
-        // Encrypt the packet using F8 Mode encryption.
-        case SRTPPolicy.AESF8_ENCRYPTION:
-        case SRTPPolicy.TWOFISHF8_ENCRYPTION:   
-            processPacketAESF8(pkt);
-            break;
-        }
+                /*
+                 * XXX The invocation of the checkReplay method here is not
+                 * meant as replay protection but as a consistency check of our
+                 * implementation.
+                 */
+                if (!checkReplay(seqNo, guessedIndex))
+                    return false;
 
-        /* Authenticate the packet. */
-        if (policy.getAuthType() != SRTPPolicy.NULL_AUTHENTICATION)
+                // Update the ROC if necessary. The sender cannot fail past
+                // this point so the index is reserved before the packet is
+                // encrypted outside the lock.
+                update(seqNo, guessedIndex);
+            }
+
+            int guessedROC = (int) (guessedIndex >> 16);
+
+            switch (policy.getEncType())
+            {
+            // Encrypt the packet using Counter Mode encryption.
+            case SRTPPolicy.AESCM_ENCRYPTION:
+            case SRTPPolicy.TWOFISH_ENCRYPTION:
+                processPacketAESCM(pkt, guessedROC, scratch);
+                break;
+
+            // Encrypt the packet using F8 Mode encryption.
+            case SRTPPolicy.AESF8_ENCRYPTION:
+            case SRTPPolicy.TWOFISHF8_ENCRYPTION:
+                processPacketAESF8(pkt, guessedROC, scratch);
+                break;
+
+            // Encrypt and authenticate the packet using Galois/Counter Mode.
+            case SRTPPolicy.AESGCM_ENCRYPTION:
+                processPacketAESGCM(pkt, guessedROC, true, scratch);
+                break;
+            }
+
+            /* Authenticate the packet. */
+            if (policy.getAuthType() != SRTPPolicy.NULL_AUTHENTICATION)
+            {
+                authenticatePacketHMAC(pkt, guessedROC, scratch);
+                pkt.append(scratch.tagStore, policy.getAuthTagLength());
+            }
+        }
+        finally
         {
-            authenticatePacketHMAC(pkt, guessedROC);
-            pkt.append(tagStore, policy.getAuthTagLength());
+            releaseScratch(scratch);
         }
 
-        // Update the ROC if necessary.
-        update(seqNo, guessedIndex);
-
         return true;
     }
 
@@ -707,18 +850,10 @@ synchronized public boolean transformPacket(RawPacket pkt)
      */
     private void update(int seqNo, long guessedIndex)
     {
-        long delta = guessedIndex - ((((long) roc) << 16) | s_l);
+        int guessedROC = (int) (guessedIndex >> 16);
 
-        /* Update the replay bit mask. */
-        if (delta > 0)
-        {
-            replayWindow <<= delta;
-            replayWindow |= 1;
-        }
-        else
-        {
-            replayWindow |= (1 << -delta);
-        }
+        /* Update the replay list. */
+        replayWindow.update(guessedIndex);
 
         if (guessedROC == roc)
         {
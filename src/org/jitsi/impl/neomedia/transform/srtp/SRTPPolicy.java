@@ -47,6 +47,14 @@
      * F8 Mode TwoFish Cipher
      */
     public final static int TWOFISHF8_ENCRYPTION = 4;
+
+    /**
+     * Galois/Counter Mode AES Cipher (AEAD_AES_128_GCM and AEAD_AES_256_GCM),
+     * defined in RFC 7714. Provides authentication as well so it is used with
+     * <tt>NULL_AUTHENTICATION</tt> and an authentication tag length of 16.
+     */
+    public final static int AESGCM_ENCRYPTION = 5;
+
     /**
      * Null Authentication, no authentication
      */
@@ -34,10 +34,9 @@
 */
 package org.jitsi.impl.neomedia.transform.srtp;
 
-import java.util.*;
-
 import org.jitsi.impl.neomedia.transform.*;
 import org.jitsi.service.neomedia.*;
+import org.jitsi.util.concurrent.*;
 
 /**
  * SRTPTransformer implements PacketTransformer and provides implementations
@@ -57,9 +56,10 @@
     SRTPContextFactory reverseFactory;
 
     /**
-     * All the known SSRC's corresponding SRTPCryptoContexts
+     * All the known SSRC's corresponding SRTPCryptoContexts. Looked up without
+     * locking for every packet; modified only while synchronized on it.
      */
-    private final Map<Integer,SRTPCryptoContext> contexts;
+    private final CopyOnWriteIntMap<SRTPCryptoContext> contexts;
 
     /**
      * Initializes a new <tt>SRTPTransformer</tt> instance.
@@ -86,7 +86,7 @@ public SRTPTransformer(
     {
         this.forwardFactory = forwardFactory;
         this.reverseFactory = reverseFactory;
-        this.contexts = new HashMap<Integer,SRTPCryptoContext>();
+        this.contexts = new CopyOnWriteIntMap<>();
     }
 
     /**
@@ -137,15 +137,9 @@ public void close()
             if (reverseFactory != forwardFactory)
                 reverseFactory.close();
 
-            for (Iterator<SRTPCryptoContext> i = contexts.values().iterator();
-                    i.hasNext();)
-            {
-                SRTPCryptoContext context = i.next();
-
-                i.remove();
-                if (context != null)
-                    context.close();
-            }
+            for (SRTPCryptoContext context : contexts.values())
+                context.close();
+            contexts.clear();
         }
     }
 
@@ -154,19 +148,22 @@ private SRTPCryptoContext getContext(
             SRTPContextFactory engine,
             int deriveSrtpKeysIndex)
     {
-        SRTPCryptoContext context;
+        SRTPCryptoContext context = contexts.get(ssrc);
 
-        synchronized (contexts)
+        if (context == null)
         {
-            context = contexts.get(ssrc);
-            if (context == null)
+            synchronized (contexts)
             {
-                context = engine.getDefaultContext();
-                if (context != null)
+                context = contexts.get(ssrc);
+                if (context == null)
                 {
-                    context = context.deriveContext(ssrc, 0, 0);
-                    context.deriveSrtpKeys(deriveSrtpKeysIndex);
-                    contexts.put(ssrc, context);
+                    context = engine.getDefaultContext();
+                    if (context != null)
+                    {
+                        context = context.deriveContext(ssrc, 0, 0);
+                        context.deriveSrtpKeys(deriveSrtpKeysIndex);
+                        contexts.put(ssrc, context);
+                    }
                 }
             }
         }
@@ -174,6 +171,37 @@ private SRTPCryptoContext getContext(
         return context;
     }
 
+    /**
+     * Gets the number of SRTP packets which the crypto contexts of this
+     * transformer have rejected because they had been received already.
+     *
+     * @return the number of SRTP packets rejected as replays
+     */
+    public long getReplayedPacketCount()
+    {
+        long count = 0;
+
+        for (SRTPCryptoContext context : contexts.values())
+            count += context.getReplayedPacketCount();
+        return count;
+    }
+
+    /**
+     * Gets the number of SRTP packets which the crypto contexts of this
+     * transformer have rejected because they were older than the replay check
+     * window.
+     *
+     * @return the number of SRTP packets rejected as too old
+     */
+    public long getTooOldPacketCount()
+    {
+        long count = 0;
+
+        for (SRTPCryptoContext context : contexts.values())
+            count += context.getTooOldPacketCount();
+        return count;
+    }
+
     /**
      * Reverse-transforms a specific packet (i.e. transforms a transformed
      * packet back).
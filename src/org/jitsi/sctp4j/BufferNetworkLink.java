@@ -0,0 +1,56 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.sctp4j;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * A {@link NetworkLink} which sends the network packets of
+ * <tt>SctpSocket</tt> from <tt>ByteBuffer</tt>s. The packets are given to the
+ * link without copying them into new <tt>byte</tt> arrays and, when they are
+ * generated while a <tt>SctpSocket</tt> sends a message or processes a
+ * received network packet, in batches. The buffers are valid only until the
+ * methods return.
+ */
+public interface BufferNetworkLink
+    extends NetworkLink
+{
+    /**
+     * Callback triggered by <tt>SctpSocket</tt> whenever it wants to send some
+     * network packet.
+     * @param s source <tt>SctpSocket</tt> instance.
+     * @param packet the buffer which holds the network packet between its
+     * position and its limit. Valid only until the method returns.
+     *
+     * @throws java.io.IOException in case of transport error.
+     */
+    public void onConnOut(SctpSocket s, ByteBuffer packet)
+        throws IOException;
+
+    /**
+     * Callback triggered by <tt>SctpSocket</tt> whenever it wants to send
+     * multiple network packets at once.
+     * @param s source <tt>SctpSocket</tt> instance.
+     * @param packets the buffers which hold the network packets between their
+     * positions and their limits. Valid only until the method returns.
+     * @param count the number of network packets in <tt>packets</tt>.
+     *
+     * @throws java.io.IOException in case of transport error.
+     */
+    public void onConnOut(SctpSocket s, ByteBuffer[] packets, int count)
+        throws IOException;
+}
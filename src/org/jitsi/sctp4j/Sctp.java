@@ -16,6 +16,7 @@
 package org.jitsi.sctp4j;
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -28,6 +29,16 @@
  */
 public class Sctp
 {
+    /**
+     * The indicator which determines whether the native counterpart implements
+     * the methods which take direct <tt>ByteBuffer</tt>s. Becomes
+     * <tt>false</tt> upon the first <tt>UnsatisfiedLinkError</tt> (i.e. with a
+     * native library built before these methods were introduced) after which
+     * the data of direct <tt>ByteBuffer</tt>s is copied into <tt>byte</tt>
+     * arrays.
+     */
+    private static volatile boolean directBuffers = true;
+
     /**
      * FIXME Remove once usrsctp_finish is fixed
      */
@@ -116,6 +127,24 @@ public static SctpSocket createSocket(int localPort)
         return socket;
     }
 
+    /**
+     * Notes that the native counterpart does not implement the methods which
+     * take direct <tt>ByteBuffer</tt>s.
+     *
+     * @param ule the <tt>UnsatisfiedLinkError</tt> thrown by the invocation of
+     * such a method.
+     */
+    private static void disableDirectBuffers(UnsatisfiedLinkError ule)
+    {
+        if (directBuffers)
+        {
+            directBuffers = false;
+            logger.warn(
+                    "The native library does not support direct ByteBuffers,"
+                        + " their data will be copied: " + ule);
+        }
+    }
+
     /**
      * Disposes of the resources held by native counterpart.
      *
@@ -191,6 +220,18 @@ private static native void on_network_in(
             long ptr,
             byte[] pkt, int off, int len);
 
+    /**
+     * Passes network packet to native SCTP stack counterpart without copying
+     * it.
+     * @param ptr native socket pointer.
+     * @param pkt direct buffer holding network packet data.
+     * @param off the position in the buffer where packet data starts.
+     * @param len packet data length.
+     */
+    private static native void on_network_in_direct(
+            long ptr,
+            ByteBuffer pkt, int off, int len);
+
     /**
      * Used by {@link SctpSocket} to pass received network packet to native
      * counterpart.
@@ -205,6 +246,53 @@ static void onConnIn(long socketPtr, byte[] packet, int offset, int len)
         on_network_in(socketPtr, packet, offset, len);
     }
 
+    /**
+     * Used by {@link SctpSocket} to pass received network packet to native
+     * counterpart. The data of a direct buffer is not copied if the native
+     * counterpart supports it.
+     *
+     * @param socketPtr native socket pointer.
+     * @param packet network packet data.
+     * @param offset position in the buffer where packet data starts.
+     * @param len length of packet data in the buffer.
+     */
+    static void onConnIn(
+            long socketPtr,
+            ByteBuffer packet, int offset, int len)
+    {
+        if (packet.isDirect() && directBuffers)
+        {
+            try
+            {
+                on_network_in_direct(socketPtr, packet, offset, len);
+                return;
+            }
+            catch (UnsatisfiedLinkError ule)
+            {
+                disableDirectBuffers(ule);
+            }
+        }
+        if (packet.hasArray())
+        {
+            on_network_in(
+                    socketPtr,
+                    packet.array(), packet.arrayOffset() + offset, len);
+        }
+        else
+        {
+            byte[] array = toArray(packet, offset, len, true);
+
+            try
+            {
+                on_network_in(socketPtr, array, 0, len);
+            }
+            finally
+            {
+                ByteArrayPool.release(array);
+            }
+        }
+    }
+
     /**
      * Method fired by native counterpart to notify about incoming data.
      *
@@ -234,6 +322,36 @@ public static void onSctpInboundPacket(
         }
     }
 
+    /**
+     * Method fired by native counterpart to notify about incoming data.
+     *
+     * @param socketAddr native socket pointer
+     * @param data direct buffer which wraps the received data in the memory
+     * of the native counterpart and is valid only until the method returns
+     * @param sid stream id
+     * @param ssn
+     * @param tsn
+     * @param ppid payload protocol identifier
+     * @param context
+     * @param flags
+     */
+    public static void onSctpInboundPacketDirect(
+            long socketAddr, ByteBuffer data, int sid, int ssn, int tsn,
+            long ppid, int context, int flags)
+    {
+        SctpSocket socket = sockets.get(Long.valueOf(socketAddr));
+
+        if(socket == null)
+        {
+            logger.error("No SctpSocket found for ptr: " + socketAddr);
+        }
+        else
+        {
+            socket.onSctpInboundPacket(
+                    data, sid, ssn, tsn, ppid, context, flags);
+        }
+    }
+
     /**
      * Method fired by native counterpart when SCTP stack wants to send
      * network packet.
@@ -263,6 +381,118 @@ public static int onSctpOutboundPacket(
         return ret;
     }
 
+    /**
+     * Method fired by native counterpart when SCTP stack wants to send
+     * network packet.
+     * @param socketAddr native socket pointer
+     * @param data direct buffer which wraps the packet data in the memory of
+     * the native counterpart and is valid only until the method returns
+     * @param tos type of service???
+     * @param set_df use IP don't fragment option
+     * @return 0 if the packet has been successfully sent or -1 otherwise.
+     */
+    public static int onSctpOutboundPacketDirect(
+            long socketAddr, ByteBuffer data, int tos, int set_df)
+    {
+        // FIXME handle tos and set_df
+
+        SctpSocket socket = sockets.get(Long.valueOf(socketAddr));
+        int ret;
+
+        if(socket == null)
+        {
+            ret = -1;
+            logger.error("No SctpSocket found for ptr: " + socketAddr);
+        }
+        else
+        {
+            ret = socket.onSctpOut(data, tos, set_df);
+        }
+        return ret;
+    }
+
+    /**
+     * Sends the data of a buffer on selected SCTP stream using given payload
+     * protocol identifier. The data of a direct buffer is not copied if the
+     * native counterpart supports it.
+     *
+     * @param ptr native socket pointer.
+     * @param data the buffer which holds the data to send.
+     * @param off the position of the data inside the buffer
+     * @param len data length.
+     * @param ordered should we care about message order ?
+     * @param sid SCTP stream identifier
+     * @param ppid payload protocol identifier
+     * @return sent bytes count or <tt>-1</tt> in case of an error.
+     */
+    static int send(
+            long ptr,
+            ByteBuffer data, int off, int len,
+            boolean ordered,
+            int sid,
+            int ppid)
+    {
+        if (data.isDirect() && directBuffers)
+        {
+            try
+            {
+                return
+                    usrsctp_send_direct(
+                            ptr,
+                            data, off, len,
+                            ordered, sid, ppid);
+            }
+            catch (UnsatisfiedLinkError ule)
+            {
+                disableDirectBuffers(ule);
+            }
+        }
+        if (data.hasArray())
+        {
+            return
+                usrsctp_send(
+                        ptr,
+                        data.array(), data.arrayOffset() + off, len,
+                        ordered, sid, ppid);
+        }
+        else
+        {
+            byte[] array = toArray(data, off, len, true);
+
+            try
+            {
+                return usrsctp_send(ptr, array, 0, len, ordered, sid, ppid);
+            }
+            finally
+            {
+                ByteArrayPool.release(array);
+            }
+        }
+    }
+
+    /**
+     * Copies data from a buffer into a <tt>byte</tt> array. Does not change
+     * the position of the buffer.
+     *
+     * @param buffer the buffer to copy the data from.
+     * @param off the position of the data inside the buffer.
+     * @param len data length.
+     * @param pooled <tt>true</tt> to copy the data into an array acquired from
+     * {@link ByteArrayPool} which may be longer than <tt>len</tt> and is to
+     * be released by the caller; <tt>false</tt> to copy the data into a new
+     * array of length <tt>len</tt>.
+     * @return the array into which the data has been copied.
+     */
+    static byte[] toArray(ByteBuffer buffer, int off, int len, boolean pooled)
+    {
+        byte[] array = pooled ? ByteArrayPool.acquire(len) : new byte[len];
+        ByteBuffer src = buffer.duplicate();
+
+        src.position(off);
+        src.get(array, 0, len);
+        return array;
+    }
+
     /**
      * Waits for incoming connection.
      * @param ptr native socket pointer.
@@ -322,6 +552,25 @@ static native int usrsctp_send(
             int sid,
             int ppid);
 
+    /**
+     * Sends data held by a direct buffer without copying it on selected SCTP
+     * stream using given payload protocol identifier.
+     * @param ptr native socket pointer.
+     * @param data the direct buffer which holds the data to send.
+     * @param off the position of the data inside the buffer
+     * @param len data length.
+     * @param ordered should we care about message order ?
+     * @param sid SCTP stream identifier
+     * @param ppid payload protocol identifier
+     * @return sent bytes count or <tt>-1</tt> in case of an error.
+     */
+    private static native int usrsctp_send_direct(
+            long ptr,
+            ByteBuffer data, int off, int len,
+            boolean ordered,
+            int sid,
+            int ppid);
+
     /**
      * Creates native SCTP socket and returns pointer to it.
      * @param localPort local SCTP socket port.
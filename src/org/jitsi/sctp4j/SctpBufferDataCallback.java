@@ -0,0 +1,40 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.sctp4j;
+
+import java.nio.*;
+
+/**
+ * Callback used to listen for incoming data on SCTP socket without copying it
+ * into new <tt>byte</tt> arrays.
+ */
+public interface SctpBufferDataCallback
+{
+    /**
+     * Callback fired by <tt>SctpSocket</tt> to notify about incoming data.
+     * @param data the buffer which holds the received data between its
+     * position and its limit. Valid only until the method returns, the data
+     * has to be copied if it is needed afterwards.
+     * @param sid SCTP stream identifier.
+     * @param ssn
+     * @param tsn
+     * @param ppid payload protocol identifier.
+     * @param context
+     * @param flags
+     */
+    void onSctpPacket(ByteBuffer data, int sid, int ssn, int tsn, long ppid,
+                      int context, int flags);
+}
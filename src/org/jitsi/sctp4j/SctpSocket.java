@@ -16,6 +16,7 @@
 package org.jitsi.sctp4j;
 
 import java.io.*;
+import java.nio.*;
 
 import org.jitsi.util.*;
 
@@ -33,6 +34,21 @@
      */
     private final static Logger logger = Logger.getLogger(SctpSocket.class);
 
+    /**
+     * The <tt>OutboundBatch</tt>es of the threads which collect the network
+     * packets generated for a <tt>SctpSocket</tt> with a
+     * <tt>BufferNetworkLink</tt>.
+     */
+    private static final ThreadLocal<OutboundBatch> outboundBatches
+        = new ThreadLocal<OutboundBatch>()
+        {
+            @Override
+            protected OutboundBatch initialValue()
+            {
+                return new OutboundBatch();
+            }
+        };
+
     /**
      * Reads 32 bit unsigned int from the buffer at specified offset
      *
@@ -198,6 +214,12 @@ public static void debugSctpPacket(byte[] packet, String id)
         }
     }
 
+    /**
+     * Callback used to notify about received data without copying it. Takes
+     * precedence over {@link #dataCallback}.
+     */
+    private SctpBufferDataCallback bufferDataCallback;
+
     /**
      * The indicator which determines whether {@link #close()} has been invoked
      * on this <tt>SctpSocket</tt>. It does NOT indicate whether
@@ -331,6 +353,33 @@ public boolean accept()
         return r;
     }
 
+    /**
+     * Starts collecting the network packets which the SCTP stack generates for
+     * this socket on the current thread so that they are sent to the link in
+     * a batch by {@link #endOutboundBatch(OutboundBatch)}.
+     *
+     * @return the <tt>OutboundBatch</tt> which collects the network packets or
+     * <tt>null</tt> if the link of this socket is not a
+     * <tt>BufferNetworkLink</tt> or a batch is already being collected on the
+     * current thread.
+     */
+    private OutboundBatch beginOutboundBatch()
+    {
+        NetworkLink link = this.link;
+
+        if (!(link instanceof BufferNetworkLink))
+            return null;
+
+        OutboundBatch batch = outboundBatches.get();
+
+        if (batch.socket != null)
+            return null;
+
+        batch.link = (BufferNetworkLink) link;
+        batch.socket = this;
+        return batch;
+    }
+
     /**
      * Closes this socket. After call to this method this instance MUST NOT be
      * used.
@@ -389,6 +438,33 @@ public void connect(int remotePort)
         }
     }
 
+    /**
+     * Sends the network packets collected since
+     * {@link #beginOutboundBatch()} to the link and stops collecting them.
+     *
+     * @param batch the <tt>OutboundBatch</tt> returned by
+     * <tt>beginOutboundBatch()</tt>.
+     */
+    private void endOutboundBatch(OutboundBatch batch)
+    {
+        try
+        {
+            batch.flush();
+        }
+        catch (IOException e)
+        {
+            logger.error(
+                    "Error while sending packets trough the link: "
+                        + batch.link,
+                    e);
+        }
+        finally
+        {
+            batch.link = null;
+            batch.socket = null;
+        }
+    }
+
     /**
      * Returns SCTP port used by this socket.
      *
@@ -473,6 +549,7 @@ public void onConnIn(byte[] packet, int offset, int len)
         }
 
         long ptr = lockPtr();
+        OutboundBatch batch = beginOutboundBatch();
 
         try
         {
@@ -481,6 +558,46 @@ public void onConnIn(byte[] packet, int offset, int len)
         finally
         {
             unlockPtr();
+            if (batch != null)
+                endOutboundBatch(batch);
+        }
+    }
+
+    /**
+     * Call this method to pass network packets received on the link. The
+     * packet is not copied if it is held by a direct buffer.
+     *
+     * @param packet the buffer which holds the network packet received between
+     * its position and its limit. Its position is set to its limit.
+     */
+    public void onConnIn(ByteBuffer packet)
+        throws IOException
+    {
+        if(packet == null)
+        {
+            throw new NullPointerException("packet");
+        }
+
+        int len = packet.remaining();
+
+        if(len <= 0)
+        {
+            throw new IllegalArgumentException("packet l: " + len);
+        }
+
+        long ptr = lockPtr();
+        OutboundBatch batch = beginOutboundBatch();
+
+        try
+        {
+            Sctp.onConnIn(ptr, packet, packet.position(), len);
+            packet.position(packet.limit());
+        }
+        finally
+        {
+            unlockPtr();
+            if (batch != null)
+                endOutboundBatch(batch);
         }
     }
 
@@ -543,7 +660,53 @@ void onSctpInboundPacket(byte[] data, int sid, int ssn, int tsn, long ppid,
         }
         else
         {
-            onSctpIn(data, sid, ssn, tsn, ppid, context, flags);
+            SctpBufferDataCallback bufferDataCallback
+                = this.bufferDataCallback;
+
+            if (bufferDataCallback != null)
+            {
+                bufferDataCallback.onSctpPacket(
+                        ByteBuffer.wrap(data),
+                        sid, ssn, tsn, ppid, context, flags);
+            }
+            else
+            {
+                onSctpIn(data, sid, ssn, tsn, ppid, context, flags);
+            }
+        }
+    }
+
+    /**
+     * Notifies this <tt>SctpSocket</tt> about incoming data. The data is
+     * copied into a new array only if the (set) callback requires it.
+     *
+     * @param data the buffer which holds the received data between its
+     * position and its limit and is valid only until the method returns
+     * @param sid stream id
+     * @param ssn
+     * @param tsn
+     * @param ppid payload protocol identifier
+     * @param context
+     * @param flags
+     */
+    void onSctpInboundPacket(
+            ByteBuffer data, int sid, int ssn, int tsn, long ppid,
+            int context, int flags)
+    {
+        SctpBufferDataCallback bufferDataCallback = this.bufferDataCallback;
+
+        if((flags & Sctp.MSG_NOTIFICATION) == 0 && bufferDataCallback != null)
+        {
+            bufferDataCallback.onSctpPacket(
+                    data, sid, ssn, tsn, ppid, context, flags);
+        }
+        else
+        {
+            onSctpInboundPacket(
+                    Sctp.toArray(
+                            data, data.position(), data.remaining(),
+                            false),
+                    sid, ssn, tsn, ppid, context, flags);
         }
     }
     
@@ -559,6 +722,10 @@ void onSctpInboundPacket(byte[] data, int sid, int ssn, int tsn, long ppid,
     int onSctpOut(byte[] packet, int tos, int set_df)
     {
         NetworkLink link = this.link;
+
+        if (link instanceof BufferNetworkLink)
+            return onSctpOut(ByteBuffer.wrap(packet), tos, set_df);
+
         int ret = -1;
 
         if(link != null)
@@ -578,6 +745,57 @@ int onSctpOut(byte[] packet, int tos, int set_df)
         return ret;
     }
 
+    /**
+     * Callback triggered by Sctp stack whenever it wants to send some network
+     * packet. If the link is a <tt>BufferNetworkLink</tt>, the packet is not
+     * copied into a new array and, while a batch is being collected for this
+     * socket on the current thread, is added to the batch.
+     *
+     * @param packet the buffer which holds the network packet between its
+     * position and its limit and is valid only until the method returns.
+     * @param tos type of service???
+     * @param set_df use IP don't fragment option
+     * @return 0 if the packet was successfully sent or -1 otherwise.
+     */
+    int onSctpOut(ByteBuffer packet, int tos, int set_df)
+    {
+        NetworkLink link = this.link;
+        int ret = -1;
+
+        if(link != null)
+        {
+            try
+            {
+                if (link instanceof BufferNetworkLink)
+                {
+                    OutboundBatch batch = outboundBatches.get();
+
+                    if (batch.socket == this)
+                        batch.add(packet);
+                    else
+                        ((BufferNetworkLink) link).onConnOut(this, packet);
+                }
+                else
+                {
+                    link.onConnOut(
+                            this,
+                            Sctp.toArray(
+                                    packet,
+                                    packet.position(), packet.remaining(),
+                                    false));
+                }
+                ret = 0;
+            }
+            catch (IOException e)
+            {
+                logger.error(
+                        "Error while sending packet trough the link: " + link,
+                        e);
+            }
+        }
+        return ret;
+    }
+
     /**
      * Sends given <tt>data</tt> on selected SCTP stream using given payload
      * protocol identifier.
@@ -623,6 +841,7 @@ public int send(
         }
 
         long ptr = lockPtr();
+        OutboundBatch batch = beginOutboundBatch();
         int r;
 
         try
@@ -632,10 +851,71 @@ public int send(
         finally
         {
             unlockPtr();
+            if (batch != null)
+                endOutboundBatch(batch);
+        }
+        return r;
+    }
+
+    /**
+     * Sends the data of a buffer on selected SCTP stream using given payload
+     * protocol identifier. The data is not copied if it is held by a direct
+     * buffer.
+     *
+     * @param data the buffer which holds the data to send between its position
+     * and its limit. Its position is advanced by the number of bytes sent.
+     * @param ordered should we care about message order ?
+     * @param sid SCTP stream identifier
+     * @param ppid payload protocol identifier
+     * @return sent bytes count or <tt>-1</tt> in case of an error.
+     */
+    public int send(ByteBuffer data, boolean ordered, int sid, int ppid)
+        throws IOException
+    {
+        if(data == null)
+        {
+            throw new NullPointerException("data");
+        }
+
+        int len = data.remaining();
+
+        if(len <= 0)
+        {
+            throw new IllegalArgumentException("data l: " + len);
+        }
+
+        long ptr = lockPtr();
+        OutboundBatch batch = beginOutboundBatch();
+        int r;
+
+        try
+        {
+            r = Sctp.send(ptr, data, data.position(), len, ordered, sid, ppid);
+            if (r > 0)
+                data.position(data.position() + r);
+        }
+        finally
+        {
+            unlockPtr();
+            if (batch != null)
+                endOutboundBatch(batch);
         }
         return r;
     }
 
+    /**
+     * Sets the callback that will be fired when new data is received without
+     * copying the data into a new array. Takes precedence over the callback
+     * set with {@link #setDataCallback(SctpDataCallback)}.
+     *
+     * @param callback the callback that will be fired when new data is
+     * received or <tt>null</tt> to fire the <tt>SctpDataCallback</tt>.
+     */
+    public void setBufferDataCallback(SctpBufferDataCallback callback)
+    {
+        this.bufferDataCallback = callback;
+    }
+
     /**
      * Sets the callback that will be fired when new data is received.
      *
@@ -724,4 +1004,97 @@ public void onSctpNotification(
                 SctpSocket socket,
                 SctpNotification notification);
     }
+
+    /**
+     * The network packets which the SCTP stack generates for a
+     * <tt>SctpSocket</tt> on a thread while the thread sends a message or
+     * passes a received network packet to the SCTP stack. The packets are
+     * copied into direct buffers which the thread reuses for its subsequent
+     * batches.
+     */
+    private static class OutboundBatch
+    {
+        /**
+         * The maximum number of network packets in a batch. More packets are
+         * sent in multiple batches.
+         */
+        private static final int CAPACITY = 32;
+
+        /**
+         * The minimum capacity of the buffers into which the network packets
+         * are copied.
+         */
+        private static final int PACKET_CAPACITY = 2048;
+
+        /**
+         * The number of network packets in {@link #packets}.
+         */
+        private int count;
+
+        /**
+         * The link to send the network packets to.
+         */
+        BufferNetworkLink link;
+
+        /**
+         * The buffers which hold the network packets.
+         */
+        private final ByteBuffer[] packets = new ByteBuffer[CAPACITY];
+
+        /**
+         * The <tt>SctpSocket</tt> for which the network packets are collected
+         * or <tt>null</tt> if no batch is being collected.
+         */
+        SctpSocket socket;
+
+        /**
+         * Adds a copy of a network packet to this batch. If this batch is
+         * full, sends its network packets first.
+         *
+         * @param packet the buffer which holds the network packet between its
+         * position and its limit.
+         * @throws IOException if this batch is full and sending it fails.
+         */
+        void add(ByteBuffer packet)
+            throws IOException
+        {
+            if (count == CAPACITY)
+                flush();
+
+            int len = packet.remaining();
+            ByteBuffer buffer = packets[count];
+
+            if (buffer == null || buffer.capacity() < len)
+            {
+                buffer = ByteBuffer.allocateDirect(
+                        Math.max(len, PACKET_CAPACITY));
+                packets[count] = buffer;
+            }
+            buffer.clear();
+            buffer.put(packet.duplicate());
+            buffer.flip();
+            count++;
+        }
+
+        /**
+         * Sends the network packets of this batch to the link.
+         *
+         * @throws IOException if the link fails to send the network packets.
+         */
+        void flush()
+            throws IOException
+        {
+            if (count != 0)
+            {
+                try
+                {
+                    link.onConnOut(socket, packets, count);
+                }
+                finally
+                {
+                    count = 0;
+                }
+            }
+        }
+    }
 }
@@ -19,6 +19,8 @@
 
 import java.net.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 
 /**
  * Class used in code samples to send SCTP packets through UDP sockets.
@@ -28,7 +30,7 @@
  * @author Pawel Domas
  */
 public class UdpLink
-    implements NetworkLink
+    implements BufferNetworkLink
 {
     /**
      * The logger
@@ -41,19 +43,14 @@
     private final SctpSocket sctpSocket;
 
     /**
-     * Udp socket used for transport.
+     * Udp channel used for transport.
      */
-    private final DatagramSocket udpSocket;
+    private final DatagramChannel udpChannel;
 
     /**
-     * Destination UDP port.
+     * Destination UDP address.
      */
-    private final int remotePort;
-
-    /**
-     * Destination <tt>InetAddress</tt>.
-     */
-    private final InetAddress remoteIp;
+    private final InetSocketAddress remoteAddress;
 
     /**
      * Creates new instance of <tt>UdpConnection</tt>.
@@ -73,11 +70,16 @@ public UdpLink(SctpSocket sctpSocket,
     {
         this.sctpSocket = sctpSocket;
         
-        this.udpSocket
-            = new DatagramSocket(localPort, InetAddress.getByName(localIp));
+        this.udpChannel = DatagramChannel.open();
+        this.udpChannel.bind(
+                new InetSocketAddress(
+                        InetAddress.getByName(localIp),
+                        localPort));
 
-        this.remotePort = remotePort;
-        this.remoteIp = InetAddress.getByName(remoteIp);
+        this.remoteAddress
+            = new InetSocketAddress(
+                    InetAddress.getByName(remoteIp),
+                    remotePort);
         
         // Listening thread
         new Thread(
@@ -87,13 +89,14 @@ public void run()
                 {
                     try
                     {
-                        byte[] buff = new byte[2048];
-                        DatagramPacket p = new DatagramPacket(buff, 2048);
+                        ByteBuffer buff = ByteBuffer.allocateDirect(2048);
                         while(true)
                         {
-                            udpSocket.receive(p);
-                            UdpLink.this.sctpSocket.onConnIn(
-                                p.getData(), p.getOffset(), p.getLength());
+                            buff.clear();
+                            udpChannel.receive(buff);
+                            buff.flip();
+                            if (buff.hasRemaining())
+                                UdpLink.this.sctpSocket.onConnIn(buff);
                         }
                     }
                     catch(IOException e)
@@ -112,11 +115,27 @@ public void run()
     public void onConnOut(final SctpSocket s, final byte[] packetData)
         throws IOException
     {
-        DatagramPacket packet
-            = new DatagramPacket( packetData,
-                                  packetData.length,
-                                  remoteIp,
-                                  remotePort);
-        udpSocket.send(packet);
+        udpChannel.send(ByteBuffer.wrap(packetData), remoteAddress);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onConnOut(SctpSocket s, ByteBuffer packet)
+        throws IOException
+    {
+        udpChannel.send(packet, remoteAddress);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onConnOut(SctpSocket s, ByteBuffer[] packets, int count)
+        throws IOException
+    {
+        for (int i = 0; i < count; i++)
+            udpChannel.send(packets[i], remoteAddress);
     }
 }
@@ -103,6 +103,28 @@ protected ActiveSpeakerChangedListener[] getActiveSpeakerChangedListeners()
         }
     }
 
+    /**
+     * Notifies this <tt>ActiveSpeakerDetector</tt> about the latest/current
+     * audio levels of multiple streams/speakers at once e.g. the levels
+     * carried by a batch of received packets.
+     * <p>
+     * Notifies this instance about the specified levels one at a time through
+     * {@link #levelChanged(long, int)}. Implementations which are able to
+     * process multiple levels more efficiently should override the method.
+     * </p>
+     *
+     * @param levels a <tt>long</tt> array in which the elements at the even
+     * indices specify the SSRCs of the streams/speakers and the elements at
+     * the odd indices specify the respective audio levels (in the format of
+     * {@link CsrcAudioLevelListener}). The array is not retained after the
+     * method returns.
+     */
+    public void levelsChanged(long[] levels)
+    {
+        for (int i = 0; i < levels.length - 1; i += 2)
+            levelChanged(levels[i], (int) levels[i + 1]);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -65,6 +65,15 @@
     public static final String ORIGINAL_HEADER_BLOCK_URN
         = "urn:ietf:params:rtp-hdrext:ohb";
 
+    /**
+     * The URN which identifies the transport-wide sequence number RTP
+     * extension defined in {@link
+     * "https://tools.ietf.org/html/draft-holmer-rmcat-transport-wide-cc-extensions-01"}.
+     */
+    public static final String TRANSPORT_CC_URN
+        = "http://www.ietf.org/id/"
+            + "draft-holmer-rmcat-transport-wide-cc-extensions-01";
+
     /**
      * The direction that this extension will be transmitted in.
      */
@@ -54,6 +54,21 @@
      */
     public static final int FIXED_HEADER_SIZE = 12;
 
+    /**
+     * The number of bytes reserved in front of the packet data in the buffers
+     * acquired by {@link #acquireBuffer(int)} so that a header extension may
+     * be added without moving the payload or reallocating the buffer.
+     */
+    public static final int HEADROOM = 32;
+
+    /**
+     * The number of bytes reserved after the packet data in the buffers
+     * acquired by {@link #acquireBuffer(int)} so that an SRTP/SRTCP
+     * authentication tag (and the SRTCP index) may be appended without
+     * reallocating the buffer.
+     */
+    public static final int TAILROOM = 32;
+
     /**
      * Byte array storing the content of this Packet
      */
@@ -79,6 +94,15 @@
      */
     private int offset;
 
+    /**
+     * The buffer acquired from {@link ByteArrayPool} by
+     * {@link #setPooledBuffer(int)} which is owned by this <tt>RawPacket</tt>
+     * and is to be released by {@link #releasePooledBuffer()}, or
+     * <tt>null</tt>. Unlike {@link #buffer}, it is not changed when a
+     * transformer replaces the buffer of this <tt>RawPacket</tt>.
+     */
+    private byte[] pooledBuffer;
+
     /**
      * A {@link HeaderExtensions} instance, used to iterate over the RTP header
      * extensions of this {@link RawPacket}.
@@ -112,6 +136,65 @@ public RawPacket(byte[] buffer, int offset, int length)
         headerExtensions = new HeaderExtensions();
     }
 
+    /**
+     * Acquires from {@link ByteArrayPool} a buffer for packet data of a
+     * specific length with {@link #HEADROOM} bytes in front and
+     * {@link #TAILROOM} bytes after the data. The data is to be written at
+     * offset {@link #HEADROOM}.
+     *
+     * @param length the length of the packet data.
+     * @return a buffer of at least <tt>HEADROOM + length + TAILROOM</tt>
+     * bytes.
+     */
+    public static byte[] acquireBuffer(int length)
+    {
+        return ByteArrayPool.acquire(HEADROOM + length + TAILROOM);
+    }
+
+    /**
+     * Releases to {@link ByteArrayPool} the buffer acquired by
+     * {@link #setPooledBuffer(int)}, if any. Arrays which were set on this
+     * <tt>RawPacket</tt> by other means (e.g. by a transformer through
+     * {@link #setBuffer(byte[])} or {@link #grow(int)}) are not released
+     * because they may still be referenced elsewhere.
+     */
+    public void releasePooledBuffer()
+    {
+        byte[] pooledBuffer = this.pooledBuffer;
+
+        if (pooledBuffer != null)
+        {
+            this.pooledBuffer = null;
+            // Do not let this instance reference a buffer which is about to
+            // be reused.
+            setBuffer(null);
+            ByteArrayPool.release(pooledBuffer);
+        }
+    }
+
+    /**
+     * Sets the buffer of this <tt>RawPacket</tt> to one acquired from
+     * {@link ByteArrayPool} for packet data of a specific length (i.e. by
+     * {@link #acquireBuffer(int)}) and sets the offset to {@link #HEADROOM}
+     * and the length to <tt>length</tt>. The buffer is owned by this
+     * <tt>RawPacket</tt> until it is released by
+     * {@link #releasePooledBuffer()}. A previously acquired buffer is released
+     * first.
+     *
+     * @param length the length of the packet data.
+     */
+    public void setPooledBuffer(int length)
+    {
+        releasePooledBuffer();
+
+        byte[] buffer = acquireBuffer(length);
+
+        pooledBuffer = buffer;
+        setBuffer(buffer);
+        this.offset = HEADROOM;
+        this.length = length;
+    }
+
     /**
      * Makes a new RTP {@code RawPacket} filled with padding with the specified
      * parameters. Note that because we're creating a packet filled with
@@ -294,8 +377,10 @@ public void addExtension(byte id, byte[] data, int len)
             else
             {
                 // Otherwise, we have to use region D. To do so, move the
-                // payload to the right.
-                newPayloadOffset = buffer.length - payloadLength;
+                // payload to the right but keep the tailroom if possible.
+                newPayloadOffset
+                    = Math.max(maxRequiredLength, buffer.length - TAILROOM)
+                        - payloadLength;
                 System.arraycopy(buffer, getPayloadOffset(),
                                  buffer, newPayloadOffset,
                                  payloadLength);
@@ -303,9 +388,10 @@ public void addExtension(byte id, byte[] data, int len)
         }
         else
         {
-            // We need a new buffer. We will place the payload to the very right.
-            newBuffer = new byte[maxRequiredLength];
-            newPayloadOffset = newBuffer.length - payloadLength;
+            // We need a new buffer. We will place the payload to the right,
+            // before the tailroom.
+            newBuffer = ByteArrayPool.acquire(maxRequiredLength + TAILROOM);
+            newPayloadOffset = newBuffer.length - TAILROOM - payloadLength;
             System.arraycopy(buffer, getPayloadOffset(),
                              newBuffer, newPayloadOffset,
                              payloadLength);
@@ -1260,10 +1346,11 @@ public void grow(int howMuch) {
         int newLength = length + howMuch;
 
         if (newLength > buffer.length - offset) {
-            byte[] newBuffer = new byte[newLength];
+            // The previous buffer is not released because it may be shared.
+            byte[] newBuffer = acquireBuffer(newLength);
 
-            System.arraycopy(buffer, offset, newBuffer, 0, length);
-            offset = 0;
+            System.arraycopy(buffer, offset, newBuffer, HEADROOM, length);
+            offset = HEADROOM;
             buffer = newBuffer;
         }
     }
@@ -1414,7 +1501,8 @@ public void removeExtension()
     public void setBuffer(byte[] buffer)
     {
         this.buffer = buffer;
-        headerExtensions = new HeaderExtensions();
+        // The HeaderExtensions are initialized lazily if there is no buffer.
+        headerExtensions = (buffer == null) ? null : new HeaderExtensions();
     }
 
     /**
@@ -237,6 +237,11 @@
      */
     public static final String TELEPHONE_EVENT = "telephone-event";
 
+    /**
+     * The name of the FlexFEC RTP format (RFC 8627)
+     */
+    public static final String FLEXFEC = "flexfec";
+
     /**
      * The name of the ulpfec RTP format (RFC5109)
      */
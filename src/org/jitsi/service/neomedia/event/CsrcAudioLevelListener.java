@@ -33,7 +33,9 @@
      *
      * @param audioLevels a <tt>long</tt> array in which the elements at the
      * even indices specify the CSRC IDs and the elements at the odd indices
-     * specify the respective audio levels
+     * specify the respective audio levels. The array may be reused by the
+     * media service implementation after the method returns and is not to be
+     * retained by the listener.
      */
     public void audioLevelsReceived(long[] audioLevels);
 }
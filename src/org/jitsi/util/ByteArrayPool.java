@@ -0,0 +1,623 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.util;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Implements a pool of <tt>byte</tt> arrays which is shared by the whole media
+ * stack (connectors, caches, the RTP translator and the transformers) instead
+ * of each of them keeping a separate pool.
+ *
+ * The arrays are pooled in size classes of powers of two between
+ * {@link #MIN_CLASS_LENGTH} and {@link #MAX_CLASS_LENGTH}: an array acquired
+ * with a specific length may be longer than requested. Each thread keeps a
+ * small cache of arrays per size class in front of a bounded stack per size
+ * class which is shared by all threads, so that most acquisitions and releases
+ * do not contend. Longer arrays are neither pooled nor cached.
+ *
+ * An array has to be explicitly released with {@link #release(byte[])} once it
+ * is no longer referenced in order to be reused. Releasing an array which is
+ * still referenced elsewhere corrupts the data of its other users. Leaks and
+ * double releases are reported when leak detection is enabled through
+ * {@link #LEAK_DETECTION_PNAME}.
+ */
+public class ByteArrayPool
+{
+    /**
+     * The maximum number of arrays per size class cached by each thread.
+     */
+    private static final int LOCAL_CAPACITY = 16;
+
+    /**
+     * The name of the <tt>boolean</tt> property which enables the detection of
+     * arrays which are acquired but never released and of arrays which are
+     * released more than once. Read from the system properties because the
+     * pool may be used before the <tt>ConfigurationService</tt> is available.
+     * Leak detection records the stack of each acquisition and is meant for
+     * debugging only.
+     */
+    public static final String LEAK_DETECTION_PNAME
+        = ByteArrayPool.class.getName() + ".LEAK_DETECTION";
+
+    /**
+     * Whether leak detection is enabled.
+     */
+    private static final boolean LEAK_DETECTION
+        = ConfigUtils.getBoolean(null, LEAK_DETECTION_PNAME, false);
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>ByteArrayPool</tt> class to print
+     * debug information.
+     */
+    private static final Logger logger = Logger.getLogger(ByteArrayPool.class);
+
+    /**
+     * The length of the arrays of the largest size class.
+     */
+    public static final int MAX_CLASS_LENGTH = 1 << 16;
+
+    /**
+     * The length of the arrays of the smallest size class.
+     */
+    public static final int MIN_CLASS_LENGTH = 1 << 8;
+
+    /**
+     * The base two logarithm of {@link #MIN_CLASS_LENGTH}.
+     */
+    private static final int MIN_CLASS_SHIFT
+        = Integer.numberOfTrailingZeros(MIN_CLASS_LENGTH);
+
+    /**
+     * The number of size classes.
+     */
+    private static final int CLASS_COUNT
+        = Integer.numberOfTrailingZeros(MAX_CLASS_LENGTH) - MIN_CLASS_SHIFT + 1;
+
+    /**
+     * The stacks of arrays per size class shared by all threads. Larger size
+     * classes keep fewer arrays so that the pool does not hold more than a few
+     * megabytes.
+     */
+    private static final SharedStack[] shared = new SharedStack[CLASS_COUNT];
+
+    /**
+     * The caches of arrays per size class of the threads.
+     */
+    private static final ThreadLocal<LocalCache> localCaches
+        = new ThreadLocal<LocalCache>()
+        {
+            @Override
+            protected LocalCache initialValue()
+            {
+                return new LocalCache();
+            }
+        };
+
+    /**
+     * The number of arrays which have been acquired.
+     */
+    private static final AtomicLong acquisitions = new AtomicLong();
+
+    /**
+     * The number of arrays which have been allocated because no pooled array
+     * was available.
+     */
+    private static final AtomicLong allocations = new AtomicLong();
+
+    /**
+     * The number of arrays which have been acquired from the cache of the
+     * acquiring thread.
+     */
+    private static final AtomicLong localHits = new AtomicLong();
+
+    /**
+     * The number of arrays which have been released.
+     */
+    private static final AtomicLong releases = new AtomicLong();
+
+    /**
+     * The number of released arrays which have been dropped because they did
+     * not match a size class or because the pool was full.
+     */
+    private static final AtomicLong drops = new AtomicLong();
+
+    /**
+     * The <tt>LeakRef</tt>s of the arrays which are acquired and not released
+     * yet if leak detection is enabled.
+     */
+    private static final Map<byte[], LeakRef> leakRefs
+        = LEAK_DETECTION ? new WeakHashMap<byte[], LeakRef>() : null;
+
+    /**
+     * Keeps the <tt>LeakRef</tt>s in {@link #leakRefs} strongly reachable until
+     * their arrays are released or collected.
+     */
+    private static final Set<LeakRef> leakRefSet
+        = LEAK_DETECTION ? new HashSet<LeakRef>() : null;
+
+    /**
+     * The queue to which the <tt>LeakRef</tt>s of collected arrays are
+     * enqueued.
+     */
+    private static final ReferenceQueue<byte[]> leakQueue
+        = LEAK_DETECTION ? new ReferenceQueue<byte[]>() : null;
+
+    static
+    {
+        for (int i = 0; i < CLASS_COUNT; i++)
+        {
+            // 256 arrays up to 2 KiB (the size classes of typical packets),
+            // then half as many with each doubling of the length.
+            int length = Math.max(2048, MIN_CLASS_LENGTH << i);
+
+            shared[i] = new SharedStack(Math.max(8, 256 * 2048 / length));
+        }
+    }
+
+    /**
+     * Acquires an array of at least a specific length. The contents of the
+     * returned array are undefined.
+     *
+     * @param length the minimum length of the array to acquire.
+     * @return an array of at least <tt>length</tt> bytes.
+     */
+    public static byte[] acquire(int length)
+    {
+        if (length < 0)
+            throw new IllegalArgumentException("length");
+
+        acquisitions.incrementAndGet();
+
+        int sizeClass = getSizeClass(length);
+        byte[] array;
+
+        if (sizeClass < 0)
+        {
+            allocations.incrementAndGet();
+            array = new byte[length];
+        }
+        else
+        {
+            array = localCaches.get().pop(sizeClass);
+            if (array == null)
+            {
+                array = shared[sizeClass].pop();
+                if (array == null)
+                {
+                    allocations.incrementAndGet();
+                    array = new byte[MIN_CLASS_LENGTH << sizeClass];
+                }
+            }
+            else
+            {
+                localHits.incrementAndGet();
+            }
+        }
+
+        if (LEAK_DETECTION)
+            trackAcquire(array);
+
+        return array;
+    }
+
+    /**
+     * Gets the number of arrays which have been acquired.
+     *
+     * @return the number of arrays which have been acquired.
+     */
+    public static long getAcquisitionCount()
+    {
+        return acquisitions.get();
+    }
+
+    /**
+     * Gets the number of arrays which have been allocated because no pooled
+     * array was available.
+     *
+     * @return the number of arrays which have been allocated.
+     */
+    public static long getAllocationCount()
+    {
+        return allocations.get();
+    }
+
+    /**
+     * Gets the number of released arrays which have been dropped because they
+     * did not match a size class or because the pool was full.
+     *
+     * @return the number of released arrays which have been dropped.
+     */
+    public static long getDropCount()
+    {
+        return drops.get();
+    }
+
+    /**
+     * Gets the ratio of acquisitions which have been served by a pooled array.
+     *
+     * @return the ratio in the range [0, 1] of acquisitions which have been
+     * served by a pooled array.
+     */
+    public static double getHitRate()
+    {
+        long acquisitions = getAcquisitionCount();
+
+        return
+            (acquisitions == 0)
+                ? 0D
+                : (acquisitions - getAllocationCount())
+                    / (double) acquisitions;
+    }
+
+    /**
+     * Gets the number of arrays which have been acquired from the cache of the
+     * acquiring thread.
+     *
+     * @return the number of arrays which have been acquired from the cache of
+     * the acquiring thread.
+     */
+    public static long getLocalHitCount()
+    {
+        return localHits.get();
+    }
+
+    /**
+     * Gets the number of arrays which have been released.
+     *
+     * @return the number of arrays which have been released.
+     */
+    public static long getReleaseCount()
+    {
+        return releases.get();
+    }
+
+    /**
+     * Gets the size class of the arrays of a specific minimum length.
+     *
+     * @param length the minimum length of the arrays.
+     * @return the size class of the arrays of at least <tt>length</tt> bytes
+     * or <tt>-1</tt> if such arrays are not pooled.
+     */
+    private static int getSizeClass(int length)
+    {
+        if (length <= MIN_CLASS_LENGTH)
+            return 0;
+        if (length > MAX_CLASS_LENGTH)
+            return -1;
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Gets a <tt>String</tt> which describes the statistics of this pool.
+     *
+     * @return a <tt>String</tt> which describes the statistics of this pool.
+     */
+    public static String getStats()
+    {
+        return
+            "acquisitions=" + getAcquisitionCount()
+                + ", allocations=" + getAllocationCount()
+                + ", local_hits=" + getLocalHitCount()
+                + ", releases=" + getReleaseCount()
+                + ", drops=" + getDropCount()
+                + ", hit_rate=" + getHitRate();
+    }
+
+    /**
+     * Reports the arrays which have been collected without being released and
+     * forgets about them.
+     */
+    private static void pollLeaks()
+    {
+        Reference<? extends byte[]> ref;
+
+        while ((ref = leakQueue.poll()) != null)
+        {
+            boolean leaked;
+
+            synchronized (leakRefs)
+            {
+                leaked = leakRefSet.remove(ref);
+            }
+            if (leaked)
+            {
+                logger.warn(
+                        "A pooled byte array was not released.",
+                        ((LeakRef) ref).acquisition);
+            }
+        }
+    }
+
+    /**
+     * Releases an array so that it may be reused. Only the owner of an array
+     * acquired from this pool may release it and nobody may access it after it
+     * has been released. For example, {@link
+     * org.jitsi.service.neomedia.RawPacket#releasePooledBuffer()} releases the
+     * array a <tt>RawPacket</tt> acquired rather than the buffer it happens to
+     * have. Arrays which have not been acquired from this pool must not be
+     * released; if {@link #LEAK_DETECTION_PNAME} is set, such releases are
+     * reported and ignored.
+     *
+     * @param array the array to release. If <tt>null</tt>, the method does
+     * nothing.
+     */
+    public static void release(byte[] array)
+    {
+        if (array == null)
+            return;
+
+        releases.incrementAndGet();
+
+        if (LEAK_DETECTION && !trackRelease(array))
+            return;
+
+        int length = array.length;
+
+        if (length < MIN_CLASS_LENGTH
+                || length > MAX_CLASS_LENGTH
+                || (length & (length - 1)) != 0)
+        {
+            drops.incrementAndGet();
+            return;
+        }
+
+        int sizeClass = getSizeClass(length);
+
+        if (!localCaches.get().push(sizeClass, array)
+                && !shared[sizeClass].push(array))
+        {
+            drops.incrementAndGet();
+        }
+    }
+
+    /**
+     * Starts tracking an acquired array for the purposes of leak detection.
+     *
+     * @param array the acquired array.
+     */
+    private static void trackAcquire(byte[] array)
+    {
+        pollLeaks();
+
+        LeakRef ref
+            = new LeakRef(
+                    array,
+                    leakQueue,
+                    new Throwable("Acquired " + array.length + " bytes"));
+
+        synchronized (leakRefs)
+        {
+            leakRefs.put(array, ref);
+            leakRefSet.add(ref);
+        }
+    }
+
+    /**
+     * Stops tracking a released array for the purposes of leak detection.
+     *
+     * @param array the released array.
+     * @return <tt>false</tt> if <tt>array</tt> has already been released or
+     * has not been acquired from this pool and, consequently, must not be
+     * pooled; otherwise, <tt>true</tt>.
+     */
+    private static boolean trackRelease(byte[] array)
+    {
+        LeakRef ref;
+
+        synchronized (leakRefs)
+        {
+            ref = leakRefs.remove(array);
+            if (ref != null)
+            {
+                leakRefSet.remove(ref);
+                return true;
+            }
+        }
+
+        // The array has already been released or it has not been acquired
+        // from this pool (and may still be referenced by its actual owner).
+        int sizeClass = getSizeClass(array.length);
+
+        if (sizeClass >= 0
+                && (localCaches.get().contains(sizeClass, array)
+                    || shared[sizeClass].contains(array)))
+        {
+            logger.warn(
+                    "A pooled byte array was released twice.",
+                    new Throwable("Released " + array.length + " bytes"));
+        }
+        else
+        {
+            logger.warn(
+                    "A byte array which was not acquired from the pool was"
+                        + " released.",
+                    new Throwable("Released " + array.length + " bytes"));
+        }
+        return false;
+    }
+
+    /**
+     * Prevents the initialization of <tt>ByteArrayPool</tt> instances.
+     */
+    private ByteArrayPool()
+    {
+    }
+
+    /**
+     * Remembers where an array has been acquired for the purposes of leak
+     * detection.
+     */
+    private static class LeakRef
+        extends WeakReference<byte[]>
+    {
+        /**
+         * The <tt>Throwable</tt> which records the stack of the acquisition of
+         * the array.
+         */
+        final Throwable acquisition;
+
+        LeakRef(
+                byte[] array,
+                ReferenceQueue<byte[]> queue,
+                Throwable acquisition)
+        {
+            super(array, queue);
+
+            this.acquisition = acquisition;
+        }
+    }
+
+    /**
+     * The cache of arrays per size class of a thread. Accessed by its thread
+     * only.
+     */
+    private static class LocalCache
+    {
+        /**
+         * The numbers of arrays per size class in {@link #stacks}.
+         */
+        private final int[] counts = new int[CLASS_COUNT];
+
+        /**
+         * The arrays per size class.
+         */
+        private final byte[][][] stacks = new byte[CLASS_COUNT][][];
+
+        boolean contains(int sizeClass, byte[] array)
+        {
+            byte[][] stack = stacks[sizeClass];
+
+            for (int i = counts[sizeClass] - 1; i >= 0; i--)
+            {
+                if (stack[i] == array)
+                    return true;
+            }
+            return false;
+        }
+
+        byte[] pop(int sizeClass)
+        {
+            int count = counts[sizeClass];
+
+            if (count == 0)
+                return null;
+
+            byte[][] stack = stacks[sizeClass];
+            byte[] array = stack[--count];
+
+            stack[count] = null;
+            counts[sizeClass] = count;
+            return array;
+        }
+
+        boolean push(int sizeClass, byte[] array)
+        {
+            byte[][] stack = stacks[sizeClass];
+
+            if (stack == null)
+                stacks[sizeClass] = stack = new byte[LOCAL_CAPACITY][];
+
+            int count = counts[sizeClass];
+
+            if (count == LOCAL_CAPACITY)
+            {
+                // Hand half of the cache over to the other threads. Threads
+                // which release more than they acquire (e.g. the sending
+                // threads) would otherwise never make their arrays available.
+                int half = LOCAL_CAPACITY / 2;
+
+                shared[sizeClass].pushAll(stack, half, count);
+                Arrays.fill(stack, half, count, null);
+                count = half;
+            }
+            stack[count++] = array;
+            counts[sizeClass] = count;
+            return true;
+        }
+    }
+
+    /**
+     * A bounded stack of arrays of a size class which is shared by all threads.
+     */
+    private static class SharedStack
+    {
+        /**
+         * The number of arrays in {@link #stack}.
+         */
+        private int count;
+
+        /**
+         * The arrays of this stack.
+         */
+        private final byte[][] stack;
+
+        SharedStack(int capacity)
+        {
+            stack = new byte[capacity][];
+        }
+
+        synchronized boolean contains(byte[] array)
+        {
+            for (int i = count - 1; i >= 0; i--)
+            {
+                if (stack[i] == array)
+                    return true;
+            }
+            return false;
+        }
+
+        synchronized byte[] pop()
+        {
+            if (count == 0)
+                return null;
+
+            byte[] array = stack[--count];
+
+            stack[count] = null;
+            return array;
+        }
+
+        synchronized boolean push(byte[] array)
+        {
+            if (count == stack.length)
+                return false;
+
+            stack[count++] = array;
+            return true;
+        }
+
+        /**
+         * Pushes a range of arrays onto this stack. The arrays which do not
+         * fit are dropped.
+         *
+         * @param arrays the arrays to push.
+         * @param from the index of the first array to push.
+         * @param to the index after the last array to push.
+         */
+        synchronized void pushAll(byte[][] arrays, int from, int to)
+        {
+            int n = Math.min(to - from, stack.length - count);
+
+            System.arraycopy(arrays, from, stack, count, n);
+            count += n;
+            if (n < to - from)
+                drops.addAndGet(to - from - n);
+        }
+    }
+}
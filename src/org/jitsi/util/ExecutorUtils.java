@@ -42,44 +42,85 @@ public static ExecutorService newCachedThreadPool(
             final String baseName)
     {
         return
-            Executors.newCachedThreadPool(
-                    new ThreadFactory()
-                    {
-                        /**
-                         * The default <tt>ThreadFactory</tt> implementation
-                         * which is augmented by this instance to create daemon
-                         * <tt>Thread</tt>s.
-                         */
-                        private final ThreadFactory defaultThreadFactory
-                            = Executors.defaultThreadFactory();
+            Executors.newCachedThreadPool(newThreadFactory(daemon, baseName));
+    }
 
-                        @Override
-                        public Thread newThread(Runnable r)
-                        {
-                            Thread t = defaultThreadFactory.newThread(r);
+    /**
+     * Creates a thread pool that can schedule commands to run after a given
+     * delay, or to execute periodically. Optionally, the new threads are
+     * created as daemon threads and their names are based on a specific
+     * (prefix) string.
+     *
+     * @param corePoolSize the number of threads to keep in the pool, even if
+     * they are idle
+     * @param daemon <tt>true</tt> to create the new threads as daemon threads
+     * or <tt>false</tt> to create the new threads as user threads
+     * @param baseName the base/prefix to use for the names of the new threads
+     * or <tt>null</tt> to leave them with their default names
+     * @return the newly created thread pool
+     */
+    public static ScheduledExecutorService newScheduledThreadPool(
+            int corePoolSize,
+            boolean daemon,
+            String baseName)
+    {
+        return
+            Executors.newScheduledThreadPool(
+                    corePoolSize,
+                    newThreadFactory(daemon, baseName));
+    }
 
-                            if (t != null)
-                            {
-                                t.setDaemon(daemon);
+    /**
+     * Creates a <tt>ThreadFactory</tt> which augments the default one to
+     * optionally create daemon threads with names based on a specific
+     * (prefix) string.
+     *
+     * @param daemon <tt>true</tt> to create the new threads as daemon threads
+     * or <tt>false</tt> to create the new threads as user threads
+     * @param baseName the base/prefix to use for the names of the new threads
+     * or <tt>null</tt> to leave them with their default names
+     * @return the newly created <tt>ThreadFactory</tt>
+     */
+    private static ThreadFactory newThreadFactory(
+            final boolean daemon,
+            final String baseName)
+    {
+        return
+            new ThreadFactory()
+            {
+                /**
+                 * The default <tt>ThreadFactory</tt> implementation which is
+                 * augmented by this instance to create daemon
+                 * <tt>Thread</tt>s.
+                 */
+                private final ThreadFactory defaultThreadFactory
+                    = Executors.defaultThreadFactory();
 
-                                /*
-                                 * Additionally, make it known through the name
-                                 * of the Thread that it is associated with the
-                                 * specified class for debugging/informational
-                                 * purposes.
-                                 */
-                                if ((baseName != null)
-                                        && (baseName.length() != 0))
-                                {
-                                    String name = t.getName();
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = defaultThreadFactory.newThread(r);
+
+                    if (t != null)
+                    {
+                        t.setDaemon(daemon);
+
+                        /*
+                         * Additionally, make it known through the name of the
+                         * Thread that it is associated with the specified
+                         * class for debugging/informational purposes.
+                         */
+                        if ((baseName != null) && (baseName.length() != 0))
+                        {
+                            String name = t.getName();
 
-                                    if (name == null)
-                                        name = "";
-                                    t.setName(baseName + "-" + name);
-                                }
-                            }
-                            return t;
+                            if (name == null)
+                                name = "";
+                            t.setName(baseName + "-" + name);
                         }
-                    });
+                    }
+                    return t;
+                }
+            };
     }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.util.concurrent;
+
+import java.util.*;
+
+/**
+ * A map from primitive <tt>int</tt> keys (e.g. SSRCs) to non-<tt>null</tt>
+ * values which is optimized for the case of many more reads than writes. Reads
+ * do not lock, do not box their keys and do not allocate: they probe an
+ * immutable open-addressing table published through a <tt>volatile</tt> field.
+ * Writes are serialized and replace the whole table.
+ *
+ * @param <V> the type of the values of the map
+ */
+public class CopyOnWriteIntMap<V>
+{
+    /**
+     * The capacity of the table of an empty map. Must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Gets the index in a table with a specific mask at which the probing for
+     * a specific key starts.
+     *
+     * @param key the key to get the start index of
+     * @param mask the capacity of the table minus one
+     * @return the index in the table at which the probing for <tt>key</tt>
+     * starts
+     */
+    private static int indexOf(int key, int mask)
+    {
+        // SSRCs are random but other keys may not be so scramble the bits.
+        int h = key * 0x9E3779B9;
+
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * The current table of this map. Never modified after it is published.
+     */
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public synchronized void clear()
+    {
+        if (table.size != 0)
+            table = new Table(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Determines whether this map contains a mapping for a specific key.
+     *
+     * @param key the key to check
+     * @return <tt>true</tt> if this map contains a mapping for <tt>key</tt>;
+     * otherwise, <tt>false</tt>
+     */
+    public boolean containsKey(int key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Gets the value to which a specific key is mapped.
+     *
+     * @param key the key whose value is to be returned
+     * @return the value to which <tt>key</tt> is mapped or <tt>null</tt> if
+     * this map contains no mapping for <tt>key</tt>
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key)
+    {
+        Table table = this.table;
+        int[] keys = table.keys;
+        Object[] values = table.values;
+        int mask = keys.length - 1;
+        Object value;
+
+        for (int i = indexOf(key, mask);
+                (value = values[i]) != null;
+                i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+                return (V) value;
+        }
+        return null;
+    }
+
+    /**
+     * Determines whether this map contains no mappings.
+     *
+     * @return <tt>true</tt> if this map contains no mappings; otherwise,
+     * <tt>false</tt>
+     */
+    public boolean isEmpty()
+    {
+        return table.size == 0;
+    }
+
+    /**
+     * Maps a specific key to a specific value.
+     *
+     * @param key the key to map
+     * @param value the value to map <tt>key</tt> to
+     * @return the value to which <tt>key</tt> was previously mapped or
+     * <tt>null</tt> if there was no mapping for <tt>key</tt>
+     * @throws NullPointerException if <tt>value</tt> is <tt>null</tt>
+     */
+    public synchronized V put(int key, V value)
+    {
+        if (value == null)
+            throw new NullPointerException("value");
+
+        V oldValue = get(key);
+
+        if (oldValue != value)
+            table = table.copy(key, value, (oldValue == null) ? 1 : 0);
+        return oldValue;
+    }
+
+    /**
+     * Maps a specific key to a specific value unless the key is mapped to a
+     * value already.
+     *
+     * @param key the key to map
+     * @param value the value to map <tt>key</tt> to
+     * @return the value to which <tt>key</tt> is already mapped or
+     * <tt>null</tt> if <tt>key</tt> has been mapped to <tt>value</tt>
+     * @throws NullPointerException if <tt>value</tt> is <tt>null</tt>
+     */
+    public synchronized V putIfAbsent(int key, V value)
+    {
+        if (value == null)
+            throw new NullPointerException("value");
+
+        V oldValue = get(key);
+
+        if (oldValue == null)
+            table = table.copy(key, value, 1);
+        return oldValue;
+    }
+
+    /**
+     * Removes the mapping for a specific key.
+     *
+     * @param key the key whose mapping is to be removed
+     * @return the value to which <tt>key</tt> was mapped or <tt>null</tt> if
+     * there was no mapping for <tt>key</tt>
+     */
+    public synchronized V remove(int key)
+    {
+        V oldValue = get(key);
+
+        if (oldValue != null)
+            table = table.copy(key, null, -1);
+        return oldValue;
+    }
+
+    /**
+     * Gets the number of mappings in this map.
+     *
+     * @return the number of mappings in this map
+     */
+    public int size()
+    {
+        return table.size;
+    }
+
+    /**
+     * Gets a snapshot of the values of this map. Later modifications of this
+     * map are not reflected in the returned list and vice versa.
+     *
+     * @return a list of the values of this map at the time of the call
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values()
+    {
+        Object[] values = table.values;
+        List<V> list = new ArrayList<>(values.length);
+
+        for (Object value : values)
+        {
+            if (value != null)
+                list.add((V) value);
+        }
+        return list;
+    }
+
+    /**
+     * An open-addressing (linear probing) hash table which is not modified
+     * once it is published. An empty slot has a <tt>null</tt> value.
+     */
+    private static class Table
+    {
+        /**
+         * The keys of the mappings in this table.
+         */
+        final int[] keys;
+
+        /**
+         * The number of mappings in this table.
+         */
+        final int size;
+
+        /**
+         * The values of the mappings in this table.
+         */
+        final Object[] values;
+
+        /**
+         * Initializes a new empty <tt>Table</tt> instance.
+         *
+         * @param capacity the number of slots of the new instance. Must be a
+         * power of two.
+         */
+        Table(int capacity)
+        {
+            this(capacity, 0);
+        }
+
+        /**
+         * Initializes a new <tt>Table</tt> instance with no slots in use.
+         *
+         * @param capacity the number of slots of the new instance. Must be a
+         * power of two.
+         * @param size the number of mappings the new instance will hold
+         */
+        private Table(int capacity, int size)
+        {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            this.size = size;
+        }
+
+        /**
+         * Copies this table into a new table in which a specific key is mapped
+         * to a specific value. The load factor of the new table does not
+         * exceed one half.
+         *
+         * @param key the key to map or to remove
+         * @param value the value to map <tt>key</tt> to or <tt>null</tt> to
+         * remove the mapping of <tt>key</tt>
+         * @param sizeDelta the difference between the number of mappings of
+         * the new table and this table
+         * @return a new <tt>Table</tt> which holds the mappings of this table
+         * with <tt>key</tt> mapped to <tt>value</tt>
+         */
+        Table copy(int key, Object value, int sizeDelta)
+        {
+            int newSize = size + sizeDelta;
+            int capacity = INITIAL_CAPACITY;
+
+            while (capacity < 2 * newSize)
+                capacity <<= 1;
+
+            Table table = new Table(capacity, newSize);
+
+            for (int i = 0; i < values.length; i++)
+            {
+                Object v = values[i];
+
+                if (v != null && keys[i] != key)
+                    table.insert(keys[i], v);
+            }
+            if (value != null)
+                table.insert(key, value);
+            return table;
+        }
+
+        /**
+         * Inserts a mapping into this table before it is published. The key
+         * must not be in this table already.
+         *
+         * @param key the key to map
+         * @param value the value to map <tt>key</tt> to
+         */
+        private void insert(int key, Object value)
+        {
+            int mask = keys.length - 1;
+            int i = indexOf(key, mask);
+
+            while (values[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.util.concurrent;
+
+import org.jitsi.util.*;
+
+/**
+ * Implements a hashed timing wheel which runs a large number of short,
+ * frequently (re)scheduled and cancelled tasks on a single thread. The wheel
+ * is divided into a fixed number of buckets of one tick each and a
+ * {@link Timeout} is linked into the bucket of its deadline, so scheduling
+ * and cancelling are constant time and allocation-free. Deadlines are only
+ * honored with the granularity of a tick.
+ *
+ * The thread of the wheel is started when the first <tt>Timeout</tt> is
+ * scheduled and waits without ticking while no <tt>Timeout</tt> is scheduled.
+ * The tasks are run on the thread of the wheel and must not block.
+ */
+public class HashedWheelTimer
+{
+    /**
+     * The value of {@link Timeout#bucket} of a <tt>Timeout</tt> which has
+     * expired and the task of which is about to be run.
+     */
+    private static final int EXPIRED = -2;
+
+    /**
+     * The value of {@link Timeout#bucket} of a <tt>Timeout</tt> which is not
+     * scheduled.
+     */
+    private static final int IDLE = -1;
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>HashedWheelTimer</tt> class and its
+     * instances to print debug information.
+     */
+    private static final Logger logger
+        = Logger.getLogger(HashedWheelTimer.class);
+
+    /**
+     * The heads of the doubly-linked lists of the <tt>Timeout</tt>s in each
+     * bucket of this wheel.
+     */
+    private final Timeout[] buckets;
+
+    /**
+     * The number of <tt>Timeout</tt>s which are currently scheduled.
+     */
+    private int count;
+
+    /**
+     * The tick which has been processed last.
+     */
+    private long lastTick = -1L;
+
+    /**
+     * <tt>buckets.length - 1</tt>.
+     */
+    private final int mask;
+
+    /**
+     * The name of the thread of this wheel.
+     */
+    private final String name;
+
+    /**
+     * The thread of this wheel or <tt>null</tt> if it has not been started.
+     */
+    private Thread thread;
+
+    /**
+     * The duration of a tick in milliseconds.
+     */
+    private final long tickMs;
+
+    /**
+     * Initializes a new <tt>HashedWheelTimer</tt> instance.
+     *
+     * @param name the name of the thread of the new instance.
+     * @param tickMs the duration of a tick in milliseconds.
+     * @param bucketCount the number of buckets of the new instance. Rounded
+     * up to a power of two.
+     */
+    public HashedWheelTimer(String name, long tickMs, int bucketCount)
+    {
+        if (tickMs <= 0)
+            throw new IllegalArgumentException("tickMs");
+        if (bucketCount <= 0 || bucketCount > (1 << 30))
+            throw new IllegalArgumentException("bucketCount");
+
+        int length = Integer.highestOneBit(bucketCount);
+
+        if (length < bucketCount)
+            length <<= 1;
+
+        this.name = name;
+        this.tickMs = tickMs;
+        buckets = new Timeout[length];
+        mask = length - 1;
+    }
+
+    /**
+     * Cancels a <tt>Timeout</tt> if it is scheduled.
+     *
+     * @param timeout the <tt>Timeout</tt> to cancel.
+     * @return <tt>true</tt> if <tt>timeout</tt> was scheduled; otherwise,
+     * <tt>false</tt>.
+     */
+    public synchronized boolean cancel(Timeout timeout)
+    {
+        if (timeout.bucket == IDLE)
+            return false;
+
+        if (timeout.bucket == EXPIRED)
+            timeout.bucket = IDLE;
+        else
+            unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Determines whether a specific <tt>Timeout</tt> is scheduled.
+     *
+     * @param timeout the <tt>Timeout</tt> to check.
+     * @return <tt>true</tt> if <tt>timeout</tt> is scheduled; otherwise,
+     * <tt>false</tt>.
+     */
+    public synchronized boolean isScheduled(Timeout timeout)
+    {
+        return timeout.bucket != IDLE;
+    }
+
+    /**
+     * Gets the current time in milliseconds as measured by this wheel.
+     *
+     * @return the current time in milliseconds as measured by this wheel.
+     */
+    private static long now()
+    {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /**
+     * Runs the tasks of the <tt>Timeout</tt>s which have expired until the
+     * tick which corresponds to a specific time.
+     *
+     * @param nowMs the current time in milliseconds.
+     */
+    private void processTicks(long nowMs)
+    {
+        long tick = nowMs / tickMs;
+
+        while (true)
+        {
+            Timeout expired = null;
+
+            synchronized (this)
+            {
+                if (lastTick == -1L)
+                    lastTick = tick - 1;
+                else if (tick - lastTick > buckets.length)
+                    lastTick = tick - buckets.length;
+
+                // Collect the expired Timeouts of the buckets up to the current
+                // tick into a list linked through their nextExpired fields.
+                while (lastTick < tick && expired == null)
+                {
+                    lastTick++;
+
+                    Timeout timeout = buckets[(int) (lastTick & mask)];
+
+                    while (timeout != null)
+                    {
+                        Timeout next = timeout.next;
+
+                        if (timeout.deadlineMs <= nowMs)
+                        {
+                            unlink(timeout);
+                            timeout.bucket = EXPIRED;
+                            timeout.nextExpired = expired;
+                            expired = timeout;
+                        }
+                        timeout = next;
+                    }
+                }
+                if (expired == null)
+                    return;
+            }
+
+            // Run the tasks outside the lock so that they may reschedule. A
+            // Timeout which has been cancelled or rescheduled in the meantime
+            // is skipped.
+            while (expired != null)
+            {
+                Timeout next = expired.nextExpired;
+                boolean run;
+
+                expired.nextExpired = null;
+                synchronized (this)
+                {
+                    run = expired.bucket == EXPIRED;
+                    if (run)
+                        expired.bucket = IDLE;
+                }
+                try
+                {
+                    if (run)
+                        expired.task.run();
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error("Failed to run a timer task.", t);
+                }
+                expired = next;
+            }
+        }
+    }
+
+    /**
+     * Runs the loop of the thread of this wheel.
+     */
+    private void runInThread()
+    {
+        while (true)
+        {
+            long nowMs = now();
+
+            processTicks(nowMs);
+
+            synchronized (this)
+            {
+                try
+                {
+                    if (count == 0)
+                    {
+                        // Ticks are not processed while the wheel is empty.
+                        lastTick = -1L;
+                        wait();
+                    }
+                    else
+                    {
+                        long waitMs = (nowMs / tickMs + 1) * tickMs - now();
+
+                        if (waitMs > 0)
+                            wait(waitMs);
+                    }
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules a <tt>Timeout</tt> to expire after a specific delay. A
+     * <tt>Timeout</tt> which is already scheduled is rescheduled.
+     *
+     * @param timeout the <tt>Timeout</tt> to schedule.
+     * @param delayMs the delay in milliseconds after which <tt>timeout</tt>
+     * is to expire.
+     */
+    public synchronized void schedule(Timeout timeout, long delayMs)
+    {
+        long nowMs = now();
+        long deadlineMs = nowMs + Math.max(0L, delayMs);
+
+        if (timeout.bucket >= 0)
+        {
+            if (timeout.deadlineMs == deadlineMs)
+                return;
+            unlink(timeout);
+        }
+
+        // The tick of the deadline is rounded up so that a Timeout never
+        // expires early.
+        long tick = (deadlineMs + tickMs - 1) / tickMs;
+
+        if (lastTick == -1L)
+            lastTick = nowMs / tickMs - 1;
+        if (tick <= lastTick)
+            tick = lastTick + 1;
+
+        int bucket = (int) (tick & mask);
+        Timeout head = buckets[bucket];
+
+        timeout.deadlineMs = deadlineMs;
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null)
+            head.prev = timeout;
+        buckets[bucket] = timeout;
+
+        if (count++ == 0)
+        {
+            if (thread == null)
+            {
+                thread
+                    = new Thread(name)
+                    {
+                        @Override
+                        public void run()
+                        {
+                            runInThread();
+                        }
+                    };
+                thread.setDaemon(true);
+                thread.start();
+            }
+            else
+            {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Removes a scheduled <tt>Timeout</tt> from its bucket.
+     *
+     * @param timeout the <tt>Timeout</tt> to remove.
+     */
+    private void unlink(Timeout timeout)
+    {
+        if (timeout.prev == null)
+            buckets[timeout.bucket] = timeout.next;
+        else
+            timeout.prev.next = timeout.next;
+        if (timeout.next != null)
+            timeout.next.prev = timeout.prev;
+
+        timeout.bucket = IDLE;
+        timeout.next = null;
+        timeout.prev = null;
+        count--;
+    }
+
+    /**
+     * A task which is run by a <tt>HashedWheelTimer</tt> when it expires.
+     * Instances are meant to be reused i.e. rescheduled after they expire.
+     */
+    public static class Timeout
+    {
+        /**
+         * The index of the bucket into which this instance is linked,
+         * {@link #IDLE} or {@link #EXPIRED}.
+         */
+        private int bucket = IDLE;
+
+        /**
+         * The time in milliseconds at which this instance expires.
+         */
+        private long deadlineMs;
+
+        /**
+         * The next <tt>Timeout</tt> in the bucket of this instance.
+         */
+        private Timeout next;
+
+        /**
+         * The next <tt>Timeout</tt> in the list of expired <tt>Timeout</tt>s
+         * which are about to be run.
+         */
+        private Timeout nextExpired;
+
+        /**
+         * The previous <tt>Timeout</tt> in the bucket of this instance.
+         */
+        private Timeout prev;
+
+        /**
+         * The task to run when this instance expires.
+         */
+        private final Runnable task;
+
+        /**
+         * Initializes a new <tt>Timeout</tt> instance.
+         *
+         * @param task the task to run when the new instance expires.
+         */
+        public Timeout(Runnable task)
+        {
+            if (task == null)
+                throw new NullPointerException("task");
+
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.configuration;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class PropertyIndexTest
+{
+    private static PropertyIndex createIndex()
+    {
+        PropertyIndex index = new PropertyIndex();
+
+        index.add("a.b", PropertyIndex.STORE);
+        index.add("a.b.c", PropertyIndex.STORE);
+        index.add("a.b.d", PropertyIndex.DEFAULT);
+        index.add("a.b.d.e", PropertyIndex.IMMUTABLE_DEFAULT);
+        index.add("a.bc", PropertyIndex.STORE);
+        index.add("a.c", PropertyIndex.STORE);
+        return index;
+    }
+
+    @Test
+    public void testPrefix()
+    {
+        PropertyIndex index = createIndex();
+
+        assertEquals(
+                Arrays.asList("a.b", "a.b.c", "a.b.d", "a.b.d.e", "a.bc"),
+                index.getNamesByPrefix("a.b", false));
+        assertEquals(
+                Arrays.asList("a.b.c", "a.b.d"),
+                index.getNamesByPrefix("a.b", true));
+        assertEquals(
+                Collections.emptyList(),
+                index.getNamesByPrefix("a.x", false));
+    }
+
+    @Test
+    public void testLayers()
+    {
+        PropertyIndex index = createIndex();
+
+        index.add("a.b.d", PropertyIndex.STORE);
+        assertEquals(
+                PropertyIndex.STORE | PropertyIndex.DEFAULT,
+                index.getLayers("a.b.d"));
+
+        index.remove("a.b.d", PropertyIndex.DEFAULT);
+        assertEquals(PropertyIndex.STORE, index.getLayers("a.b.d"));
+
+        index.clear(PropertyIndex.STORE);
+        assertEquals(0, index.getLayers("a.b.d"));
+        assertEquals(
+                Arrays.asList("a.b.d.e"),
+                index.getNamesByPrefix("a", false));
+        assertEquals(
+                Arrays.asList("a.b.d.e"),
+                index.getNames(PropertyIndex.IMMUTABLE_DEFAULT));
+    }
+
+    @Test
+    public void testStaleValueIsNotCached()
+    {
+        PropertyIndex index = new PropertyIndex();
+        long generation = index.getGeneration();
+
+        // The property changes while its old value is being computed.
+        index.invalidate("a");
+        index.putValue("a", new PropertyIndex.Value("old"), generation);
+        assertNull(index.getValue("a"));
+
+        generation = index.getGeneration();
+        index.putValue("a", new PropertyIndex.Value("new"), generation);
+        assertEquals("new", index.getValue("a").string);
+
+        index.invalidateAll();
+        assertNull(index.getValue("a"));
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.jitsi.service.neomedia.event.*;
+import org.junit.Test;
+
+public class DominantSpeakerIdentificationTest
+{
+    /**
+     * The SSRCs of the speakers of the conference in the order in which they
+     * take turns talking.
+     */
+    private static final long[] SSRCS = { 0x1234L, 0xCAFEBABEL, 7L };
+
+    /**
+     * The time in milliseconds during which each speaker talks.
+     */
+    private static final int TURN_DURATION = 6000;
+
+    /**
+     * The SSRCs of the speakers of the conference of
+     * {@link #createRecordedTrace()}.
+     */
+    private static final long[] RECORDED_SSRCS
+        = { 0x1111L, 0x2222L, 0x3333L, 0x4444L, 0x5555L };
+
+    /**
+     * The frames at which the speakers of {@link #RECORDED_SSRCS} join the
+     * conference of {@link #createRecordedTrace()}. The first speaker is
+     * alone for a while so that the first dominant speaker does not depend on
+     * which speaker is nominated when there is none.
+     */
+    private static final int[] RECORDED_JOIN_FRAMES = { 0, 100, 110, 400, 900 };
+
+    /**
+     * The dominant speakers identified in {@link #createRecordedTrace()} by
+     * the implementation of <tt>DominantSpeakerIdentification</tt> which
+     * locked the conference for every level and ran a thread per conference
+     * (as of commit 6f7c388) as <tt>{ frame, SSRC }</tt>.
+     */
+    private static final long[][] RECORDED_DOMINANT_SPEAKERS
+        = {
+            { 15, 0x1111L },
+            { 315, 0x3333L },
+            { 510, 0x4444L },
+            { 1050, 0x2222L },
+            { 1080, 0x4444L },
+            { 1275, 0x3333L },
+            { 1380, 0x2222L },
+            { 1575, 0x5555L },
+            { 1740, 0x1111L },
+            { 2445, 0x3333L },
+            { 2625, 0x2222L },
+            { 2820, 0x5555L },
+            { 2925, 0x1111L },
+            { 2985, 0x3333L }
+        };
+
+    /**
+     * Generates the audio levels of a conference in which the speakers take
+     * turns talking while the others produce background noise. Every 20
+     * milliseconds, the levels of all speakers are reported together.
+     *
+     * @return the reported levels in the format of
+     * {@link DominantSpeakerIdentification#levelsChanged(long[])} indexed by
+     * the number of 20 millisecond frames since the start of the conference
+     */
+    private static long[][] createTrace()
+    {
+        Random random = new Random(0);
+        long[][] trace = new long[SSRCS.length * TURN_DURATION / 20][];
+
+        for (int frame = 0; frame < trace.length; frame++)
+        {
+            int talker = frame * 20 / TURN_DURATION;
+            long[] levels = new long[2 * SSRCS.length];
+
+            for (int i = 0; i < SSRCS.length; i++)
+            {
+                levels[2 * i] = SSRCS[i];
+                levels[2 * i + 1]
+                    = (i == talker)
+                        ? 80 + random.nextInt(40)
+                        : 10 + random.nextInt(15);
+            }
+            trace[frame] = levels;
+        }
+        return trace;
+    }
+
+    /**
+     * Generates the audio levels of a conference of five speakers over one
+     * minute from a fixed seed. The speakers join at different times, talk in
+     * turns of random lengths (sometimes two at once, sometimes nobody) with
+     * pauses within their turns, miss reports at random, report levels out
+     * of range which are clamped and one of them stops reporting for four
+     * seconds.
+     *
+     * @return the reported levels in the format of
+     * {@link DominantSpeakerIdentification#levelsChanged(long[])} indexed by
+     * the number of 20 millisecond frames since the start of the conference
+     */
+    private static long[][] createRecordedTrace()
+    {
+        Random random = new Random(42);
+        long[][] trace = new long[3000][];
+        int segmentEnd = 0;
+        int talker = 0;
+        int secondTalker = -1;
+
+        for (int frame = 0; frame < trace.length; frame++)
+        {
+            if (frame == segmentEnd)
+            {
+                segmentEnd = frame + 50 + random.nextInt(250);
+                talker
+                    = (random.nextInt(10) == 0)
+                        ? -1
+                        : random.nextInt(RECORDED_SSRCS.length);
+                secondTalker
+                    = (random.nextInt(5) == 0)
+                        ? random.nextInt(RECORDED_SSRCS.length)
+                        : -1;
+            }
+
+            long[] levels = new long[2 * RECORDED_SSRCS.length];
+            int count = 0;
+
+            for (int i = 0; i < RECORDED_SSRCS.length; i++)
+            {
+                boolean muted = (i == 3 && frame >= 1500 && frame < 1700);
+
+                if (frame < RECORDED_JOIN_FRAMES[i]
+                        || muted
+                        || random.nextInt(30) == 0)
+                {
+                    continue;
+                }
+
+                int level;
+                int r = random.nextInt(100);
+
+                if (r == 0)
+                    level = -5;
+                else if (r == 1)
+                    level = 140;
+                else if ((i == talker || i == secondTalker) && r >= 15)
+                    level = 60 + random.nextInt(60);
+                else
+                    level = random.nextInt(30);
+
+                levels[count++] = RECORDED_SSRCS[i];
+                levels[count++] = level;
+            }
+            trace[frame] = Arrays.copyOf(levels, count);
+        }
+        return trace;
+    }
+
+    /**
+     * Reports the levels of a trace to a new
+     * <tt>DominantSpeakerIdentification</tt> and runs its decisions at the
+     * times of the trace.
+     *
+     * @param trace the trace to report
+     * @param batch <tt>true</tt> to report the levels of a frame at once or
+     * <tt>false</tt> to report them one by one
+     * @return the dominant speakers identified in order
+     */
+    private static List<Long> identify(long[][] trace, boolean batch)
+    {
+        return identify(trace, batch, null);
+    }
+
+    /**
+     * Reports the levels of a trace to a new
+     * <tt>DominantSpeakerIdentification</tt> and runs its decisions at the
+     * times of the trace.
+     *
+     * @param trace the trace to report
+     * @param batch <tt>true</tt> to report the levels of a frame at once or
+     * <tt>false</tt> to report them one by one
+     * @param frames the list to add the frames at which the dominant speakers
+     * are identified to or <tt>null</tt>
+     * @return the dominant speakers identified in order
+     */
+    private static List<Long> identify(
+            long[][] trace,
+            boolean batch,
+            final List<Integer> frames)
+    {
+        DominantSpeakerIdentification dsi = new DominantSpeakerIdentification();
+        final List<Long> dominantSpeakers = new ArrayList<>();
+        final int[] currentFrame = new int[1];
+
+        dsi.addActiveSpeakerChangedListener(
+                new ActiveSpeakerChangedListener()
+                {
+                    @Override
+                    public void activeSpeakerChanged(long ssrc)
+                    {
+                        dominantSpeakers.add(ssrc);
+                        if (frames != null)
+                            frames.add(currentFrame[0]);
+                    }
+                });
+
+        // The times are not allowed to precede the creation of the speakers.
+        long start = System.currentTimeMillis() + 1000;
+
+        for (int frame = 0; frame < trace.length; frame++)
+        {
+            long time = start + frame * 20;
+            long[] levels = trace[frame];
+
+            currentFrame[0] = frame;
+            if (batch)
+            {
+                dsi.levelsChanged(levels, time);
+            }
+            else
+            {
+                for (int i = 0; i < levels.length; i += 2)
+                    dsi.levelChanged(levels[i], (int) levels[i + 1], time);
+            }
+            dsi.runInDecisionMaker(time);
+        }
+        return dominantSpeakers;
+    }
+
+    @Test
+    public void testBatchMatchesSingleLevels()
+    {
+        long[][] trace = createTrace();
+
+        assertEquals(identify(trace, false), identify(trace, true));
+    }
+
+    @Test
+    public void testSpeakerSwitches()
+    {
+        List<Long> expected = new ArrayList<>();
+
+        for (long ssrc : SSRCS)
+            expected.add(ssrc);
+        assertEquals(expected, identify(createTrace(), true));
+    }
+
+    @Test
+    public void testRecordedTrace()
+    {
+        long[][] trace = createRecordedTrace();
+        List<Long> expected = new ArrayList<>();
+        List<Integer> expectedFrames = new ArrayList<>();
+
+        for (long[] dominantSpeaker : RECORDED_DOMINANT_SPEAKERS)
+        {
+            expectedFrames.add((int) dominantSpeaker[0]);
+            expected.add(dominantSpeaker[1]);
+        }
+        for (boolean batch : new boolean[] { false, true })
+        {
+            List<Integer> frames = new ArrayList<>();
+
+            assertEquals(expected, identify(trace, batch, frames));
+            assertEquals(expectedFrames, frames);
+        }
+    }
+
+    @Test
+    public void testSpeakerStopsReporting()
+    {
+        long[][] trace = createTrace();
+
+        // The first speaker talks and then falls silent without any more
+        // reports. The idle timeouts should let the second speaker, who is
+        // talking then, take over.
+        for (int frame = TURN_DURATION / 20; frame < trace.length; frame++)
+        {
+            long[] levels = trace[frame];
+
+            trace[frame] = Arrays.copyOfRange(levels, 2, levels.length);
+        }
+
+        List<Long> dominantSpeakers = identify(trace, false);
+
+        assertEquals(Long.valueOf(SSRCS[0]), dominantSpeakers.get(0));
+        assertEquals(Long.valueOf(SSRCS[1]), dominantSpeakers.get(1));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia;
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import org.jitsi.impl.neomedia.transform.*;
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+import org.junit.*;
+
+public class SelectorReceiveEngineTest
+{
+    /**
+     * A <tt>PacketTransformer</tt> which records the sizes of the batches it
+     * reverse-transforms and the sequence numbers written into the first four
+     * bytes of their packets.
+     */
+    private static class RecordingTransformer
+        implements PacketTransformer
+    {
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        final List<Integer> seqs = new ArrayList<>();
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public synchronized RawPacket[] reverseTransform(RawPacket[] pkts)
+        {
+            batchSizes.add(pkts.length);
+            for (RawPacket pkt : pkts)
+            {
+                seqs.add(RTPUtils.readInt(pkt.getBuffer(), pkt.getOffset()));
+            }
+            notifyAll();
+            return pkts;
+        }
+
+        @Override
+        public RawPacket[] transform(RawPacket[] pkts)
+        {
+            return pkts;
+        }
+
+        synchronized void await(int count)
+            throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (seqs.size() < count)
+            {
+                long timeout = deadline - System.currentTimeMillis();
+
+                assertTrue("timed out", timeout > 0);
+                wait(timeout);
+            }
+        }
+    }
+
+    @BeforeClass
+    public static void setUp()
+    {
+        LibJitsi.start();
+    }
+
+    /**
+     * Sends a specific number of datagrams to a channel, registers it with a
+     * new <tt>SelectorReceiveEngine</tt> and records how the datagrams are
+     * reverse-transformed.
+     */
+    private static RecordingTransformer receive(
+            int count,
+            int maxReadsPerChannel)
+        throws Exception
+    {
+        DatagramChannel channel = DatagramChannel.open();
+        DatagramSocket sender = new DatagramSocket();
+        RTPConnectorUDPInputStream stream = null;
+
+        try
+        {
+            channel.socket().bind(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            // The datagrams wait in the receive buffer of the socket so that
+            // they are read in batches.
+            for (int i = 0; i < count; i++)
+            {
+                byte[] buf = new byte[100];
+
+                RTPUtils.writeInt(buf, 0, i);
+                sender.send(
+                        new DatagramPacket(
+                                buf, buf.length,
+                                channel.socket().getLocalSocketAddress()));
+            }
+
+            RecordingTransformer transformer = new RecordingTransformer();
+
+            stream = new RTPConnectorUDPInputStream(channel.socket());
+            stream.setTransformer(transformer);
+            assertNotNull(
+                    new SelectorReceiveEngine(1, maxReadsPerChannel)
+                        .register(channel, stream));
+            transformer.await(count);
+            return transformer;
+        }
+        finally
+        {
+            if (stream != null)
+                stream.close();
+            channel.close();
+            sender.close();
+        }
+    }
+
+    @Test
+    public void testBatches()
+        throws Exception
+    {
+        RecordingTransformer transformer = receive(10, 16);
+
+        // The whole backlog is reverse-transformed with a single invocation.
+        assertEquals(Arrays.asList(10), transformer.batchSizes);
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, (int) transformer.seqs.get(i));
+    }
+
+    @Test
+    public void testMaxReadsPerChannel()
+        throws Exception
+    {
+        RecordingTransformer transformer = receive(10, 4);
+
+        assertEquals(Arrays.asList(4, 4, 2), transformer.batchSizes);
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, (int) transformer.seqs.get(i));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+import org.junit.*;
+
+public class SendSchedulerTest
+{
+    /**
+     * An <tt>RTPConnectorOutputStream</tt> which records the sequence numbers
+     * written into the first four bytes of its packets and the times at which
+     * they are sent instead of sending them.
+     */
+    private static class RecordingOutputStream
+        extends RTPConnectorOutputStream
+    {
+        final CountDownLatch latch;
+
+        final List<Integer> seqs = new ArrayList<>();
+
+        final List<Long> timesNanos = new ArrayList<>();
+
+        RecordingOutputStream(int count)
+        {
+            latch = new CountDownLatch(count);
+            addTarget(InetAddress.getLoopbackAddress(), 5000);
+        }
+
+        @Override
+        protected void doLogPacket(RawPacket packet, InetSocketAddress target)
+        {
+        }
+
+        @Override
+        protected boolean isSocketValid()
+        {
+            return true;
+        }
+
+        @Override
+        protected void sendToTarget(RawPacket packet, InetSocketAddress target)
+            throws IOException
+        {
+            long time = System.nanoTime();
+
+            synchronized (this)
+            {
+                seqs.add(
+                        RTPUtils.readInt(
+                                packet.getBuffer(), packet.getOffset()));
+                timesNanos.add(time);
+            }
+            latch.countDown();
+        }
+
+        void write(int seq)
+        {
+            byte[] buf = new byte[100];
+
+            RTPUtils.writeInt(buf, 0, seq);
+            write(buf, 0, buf.length);
+        }
+    }
+
+    @BeforeClass
+    public static void setUp()
+    {
+        System.setProperty(
+                RTPConnectorOutputStream.class.getName()
+                    + ".USE_SEND_SCHEDULER",
+                "true");
+        LibJitsi.start();
+    }
+
+    @Test
+    public void testOrder()
+        throws Exception
+    {
+        SendScheduler scheduler = SendScheduler.getInstance();
+        long sentPackets = scheduler.getSentPackets();
+        // More than a quantum so that the queue is rescheduled.
+        int count = 10 * SendScheduler.QUANTUM + 3;
+        RecordingOutputStream stream = new RecordingOutputStream(count);
+
+        for (int i = 0; i < count; i++)
+            stream.write(i);
+
+        assertTrue(stream.latch.await(5, TimeUnit.SECONDS));
+        synchronized (stream)
+        {
+            for (int i = 0; i < count; i++)
+                assertEquals(i, (int) stream.seqs.get(i));
+        }
+        assertEquals(0, stream.getQueueSize());
+        assertEquals(0, stream.getNumberOfDroppedPackets());
+        assertTrue(scheduler.getSentPackets() - sentPackets >= count);
+        stream.close();
+    }
+
+    @Test
+    public void testPacing()
+        throws Exception
+    {
+        int maxPackets = 5;
+        long perMillis = 50;
+        int intervals = 4;
+        RecordingOutputStream stream
+            = new RecordingOutputStream(intervals * maxPackets);
+
+        stream.setMaxPacketsPerMillis(maxPackets, perMillis);
+
+        long startNanos = System.nanoTime();
+
+        for (int i = 0; i < intervals * maxPackets; i++)
+            stream.write(i);
+
+        assertTrue(stream.latch.await(5, TimeUnit.SECONDS));
+        synchronized (stream)
+        {
+            long perNanos = TimeUnit.MILLISECONDS.toNanos(perMillis);
+
+            // The first interval starts no earlier than the first write and
+            // the packets of the k-th interval are not sent before its start.
+            for (int i = 0; i < intervals * maxPackets; i++)
+            {
+                long interval = i / maxPackets;
+
+                assertEquals(i, (int) stream.seqs.get(i));
+                assertTrue(
+                        "packet " + i + " was sent too early",
+                        stream.timesNanos.get(i) - startNanos
+                            >= interval * perNanos);
+            }
+        }
+        stream.close();
+    }
+
+    @Test
+    public void testPacedQueueDoesNotBlockOthers()
+        throws Exception
+    {
+        RecordingOutputStream paced = new RecordingOutputStream(5);
+        int count = 100;
+        RecordingOutputStream unpaced = new RecordingOutputStream(count);
+
+        // One packet per minute: a paced queue which parked a thread of the
+        // scheduler would starve the other queues on a machine with a single
+        // core.
+        paced.setMaxPacketsPerMillis(1, 60 * 1000);
+        for (int i = 0; i < 5; i++)
+            paced.write(i);
+        for (int i = 0; i < count; i++)
+            unpaced.write(i);
+
+        assertTrue(unpaced.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(paced.latch.getCount() >= 4);
+        paced.close();
+        unpaced.close();
+    }
+
+    @Test
+    public void testCloseReleasesQueuedBuffers()
+        throws Exception
+    {
+        RecordingOutputStream paced = new RecordingOutputStream(1);
+
+        // Only the first packet is sent before the stream is closed.
+        paced.setMaxPacketsPerMillis(1, 60 * 1000);
+        for (int i = 0; i < 5; i++)
+            paced.write(i);
+        assertTrue(paced.latch.await(5, TimeUnit.SECONDS));
+
+        long releaseCount = ByteArrayPool.getReleaseCount();
+
+        paced.close();
+        assertEquals(0, paced.getQueueSize());
+        assertTrue(ByteArrayPool.getReleaseCount() - releaseCount >= 4);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.audiolevel;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class AudioLevelCalculatorTest
+{
+    /**
+     * Calculates the audio level of a signal with <tt>Math.log10</tt> the way
+     * <tt>AudioLevelCalculator</tt> used to.
+     */
+    private static byte calculateReferenceAudioLevel(short[] samples)
+    {
+        double sumOfSquares = 0;
+
+        for (short s : samples)
+        {
+            double sample = s / (double) Short.MAX_VALUE;
+
+            sumOfSquares += sample * sample;
+        }
+
+        double rms = Math.sqrt(sumOfSquares / samples.length);
+
+        if (rms <= 0)
+            return AudioLevelCalculator.MIN_AUDIO_LEVEL;
+
+        double db = -20 * Math.log10(rms);
+
+        if (db > AudioLevelCalculator.MIN_AUDIO_LEVEL)
+            db = AudioLevelCalculator.MIN_AUDIO_LEVEL;
+        else if (db < AudioLevelCalculator.MAX_AUDIO_LEVEL)
+            db = AudioLevelCalculator.MAX_AUDIO_LEVEL;
+        return (byte) db;
+    }
+
+    private static byte[] toBytes(short[] samples, int offset)
+    {
+        byte[] bytes = new byte[offset + 2 * samples.length];
+
+        for (int i = 0; i < samples.length; i++)
+        {
+            bytes[offset + 2 * i] = (byte) samples[i];
+            bytes[offset + 2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testEdgeCases()
+    {
+        short[] silence = new short[960];
+        short[] fullScale = new short[960];
+
+        Arrays.fill(fullScale, Short.MIN_VALUE);
+
+        assertEquals(
+                AudioLevelCalculator.MIN_AUDIO_LEVEL,
+                AudioLevelCalculator.calculateAudioLevel(silence, 0, 960));
+        assertEquals(
+                AudioLevelCalculator.MAX_AUDIO_LEVEL,
+                AudioLevelCalculator.calculateAudioLevel(fullScale, 0, 960));
+        assertEquals(
+                AudioLevelCalculator.MIN_AUDIO_LEVEL,
+                AudioLevelCalculator.calculateAudioLevel(new short[0], 0, 0));
+    }
+
+    @Test
+    public void testMatchesReference()
+    {
+        Random random = new Random(0);
+
+        for (int i = 0; i < 10000; i++)
+        {
+            short[] samples = new short[160 + random.nextInt(800)];
+            int amplitude = random.nextInt(1 << random.nextInt(16));
+
+            for (int j = 0; j < samples.length; j++)
+            {
+                samples[j]
+                    = (short)
+                        (random.nextInt(2 * amplitude + 1) - amplitude);
+            }
+
+            byte expected = calculateReferenceAudioLevel(samples);
+            int offset = random.nextInt(8);
+
+            assertEquals(
+                    expected,
+                    AudioLevelCalculator.calculateAudioLevel(
+                            samples, 0, samples.length));
+            // The byte representation does not start at the beginning of the
+            // array.
+            assertEquals(
+                    expected,
+                    AudioLevelCalculator.calculateAudioLevel(
+                            toBytes(samples, offset),
+                            offset,
+                            2 * samples.length));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.conference;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class SharedSumMixerTest
+{
+    private static short[][] createInSamples(int inCount, int sampleCount)
+    {
+        Random random = new Random(0);
+        short[][] inSamples = new short[inCount][sampleCount];
+
+        for (int in = 0; in < inCount; in++)
+        {
+            // The higher the index, the more quiet the input.
+            int amplitude = Short.MAX_VALUE >> in;
+
+            for (int i = 0; i < sampleCount; i++)
+            {
+                inSamples[in][i]
+                    = (short) (random.nextInt(2 * amplitude + 1) - amplitude);
+            }
+        }
+        return inSamples;
+    }
+
+    @Test
+    public void testMixEqualsSumOfOthers()
+    {
+        int sampleCount = 160;
+        short[][] inSamples = createInSamples(5, sampleCount);
+        SharedSumMixer mixer = new SharedSumMixer(0);
+
+        mixer.sum(inSamples, sampleCount);
+        assertEquals(5, mixer.getMixedCount());
+
+        short[] outSamples = new short[sampleCount];
+
+        for (int out = 0; out < inSamples.length; out++)
+        {
+            mixer.mix(
+                    inSamples,
+                    new int[] { out }, 1,
+                    null,
+                    outSamples, sampleCount);
+            for (int i = 0; i < sampleCount; i++)
+            {
+                int expected = 0;
+
+                for (int in = 0; in < inSamples.length; in++)
+                {
+                    if (in != out)
+                        expected += inSamples[in][i];
+                }
+                expected
+                    = Math.max(
+                            Short.MIN_VALUE,
+                            Math.min(Short.MAX_VALUE, expected));
+                assertEquals(expected, outSamples[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testLoudest()
+    {
+        int sampleCount = 160;
+        short[][] inSamples = createInSamples(6, sampleCount);
+
+        // Silence and missing input are not mixed.
+        inSamples[0] = new short[sampleCount];
+        inSamples[1] = null;
+
+        SharedSumMixer mixer = new SharedSumMixer(2);
+
+        mixer.sum(inSamples, sampleCount);
+        assertEquals(2, mixer.getMixedCount());
+        assertTrue(mixer.isMixed(2));
+        assertTrue(mixer.isMixed(3));
+        assertFalse(mixer.isMixed(0));
+        assertFalse(mixer.isMixed(4));
+
+        // The mix of a participant who is not mixed is the total mix.
+        short[] outSamples = new short[sampleCount];
+
+        mixer.mix(inSamples, new int[] { 5 }, 1, null, outSamples, sampleCount);
+        for (int i = 0; i < sampleCount; i++)
+            assertEquals(inSamples[2][i] + inSamples[3][i], outSamples[i]);
+
+        mixer.mix(inSamples, new int[] { 3 }, 1, null, outSamples, sampleCount);
+        for (int i = 0; i < sampleCount; i++)
+            assertEquals(inSamples[2][i], outSamples[i]);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.jmfext.media.protocol.rtpdumpfile;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.jitsi.service.neomedia.*;
+import org.junit.Test;
+
+public class CaptureFileReaderTest
+{
+    static byte[] createRtp(int ssrc, int seq, long ts, int payloadLength)
+    {
+        byte[] buf = new byte[12 + payloadLength];
+
+        buf[0] = (byte) 0x80;
+        buf[1] = (byte) 100;
+        buf[2] = (byte) (seq >> 8);
+        buf[3] = (byte) seq;
+        buf[4] = (byte) (ts >> 24);
+        buf[5] = (byte) (ts >> 16);
+        buf[6] = (byte) (ts >> 8);
+        buf[7] = (byte) ts;
+        buf[8] = (byte) (ssrc >> 24);
+        buf[9] = (byte) (ssrc >> 16);
+        buf[10] = (byte) (ssrc >> 8);
+        buf[11] = (byte) ssrc;
+        for (int i = 12; i < buf.length; i++)
+            buf[i] = (byte) (seq + i);
+        return buf;
+    }
+
+    static File createRtpdump(byte[][] pkts, int[] offsets)
+        throws IOException
+    {
+        File file = File.createTempFile("capture", ".rtpdump");
+        DataOutputStream out
+            = new DataOutputStream(new FileOutputStream(file));
+
+        file.deleteOnExit();
+        try
+        {
+            out.writeBytes("#!rtpplay1.0 127.0.0.1/5000\n");
+            out.write(new byte[RtpdumpFileReader.FILE_HEADER_LENGTH]);
+            for (int i = 0; i < pkts.length; i++)
+            {
+                out.writeShort(8 + pkts[i].length);
+                // RTCP is dumped with a packet length of zero.
+                boolean rtcp = (pkts[i][1] & 0xff) == 200;
+
+                out.writeShort(rtcp ? 0 : pkts[i].length);
+                out.writeInt(offsets[i]);
+                out.write(pkts[i]);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void writeIntLE(OutputStream out, int v)
+        throws IOException
+    {
+        out.write(v);
+        out.write(v >> 8);
+        out.write(v >> 16);
+        out.write(v >> 24);
+    }
+
+    private static byte[] udpOverIPv4(byte[] payload)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.write(new byte[12]); // MAC addresses
+        out.writeShort(0x8100); // VLAN tag
+        out.writeShort(42);
+        out.writeShort(0x0800);
+        out.writeByte(0x45);
+        out.writeByte(0);
+        out.writeShort(20 + 8 + payload.length);
+        out.writeInt(0);
+        out.writeByte(64);
+        out.writeByte(17);
+        out.writeShort(0);
+        out.writeInt(0x7f000001);
+        out.writeInt(0x7f000001);
+        out.writeShort(10000);
+        out.writeShort(10001);
+        out.writeShort(8 + payload.length);
+        out.writeShort(0);
+        out.write(payload);
+        // Ethernet trailer
+        out.write(new byte[4]);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] udpOverIPv6(byte[] payload)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0x60000000);
+        out.writeShort(8 + 8 + payload.length);
+        out.writeByte(60); // destination options
+        out.writeByte(64);
+        out.write(new byte[32]);
+        out.writeByte(17);
+        out.writeByte(0);
+        out.write(new byte[6]);
+        out.writeShort(10000);
+        out.writeShort(10001);
+        out.writeShort(8 + payload.length);
+        out.writeShort(0);
+        out.write(payload);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testPcap()
+        throws IOException
+    {
+        byte[][] payloads
+            = {
+                createRtp(0x11111111, 65535, 1000, 100),
+                // A STUN binding request
+                { 0, 1, 0, 0, 0x21, 0x12, (byte) 0xa4, 0x42, 0, 0, 0, 0 },
+                createRtp(0x22222222, 7, 0xfffffff0L, 20)
+            };
+        File file = File.createTempFile("capture", ".pcap");
+        OutputStream out = new FileOutputStream(file);
+
+        file.deleteOnExit();
+        try
+        {
+            // Little endian with microseconds
+            writeIntLE(out, 0xa1b2c3d4);
+            writeIntLE(out, 0x00040002);
+            writeIntLE(out, 0);
+            writeIntLE(out, 0);
+            writeIntLE(out, 65535);
+            writeIntLE(out, 1);
+            for (int i = 0; i < payloads.length; i++)
+            {
+                byte[] frame = udpOverIPv4(payloads[i]);
+
+                writeIntLE(out, 100);
+                writeIntLE(out, i * 20000);
+                writeIntLE(out, frame.length);
+                writeIntLE(out, frame.length);
+                out.write(frame);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        CaptureFileReader reader = new CaptureFileReader(file.getPath());
+
+        assertEquals(CaptureFileReader.FORMAT_PCAP, reader.getFormat());
+        assertEquals(2, reader.getPacketCount());
+        assertEquals(1, reader.getSkippedRecordCount());
+        assertEquals(0x11111111, reader.getSSRC(0));
+        assertEquals(65535, reader.getSequenceNumber(0));
+        assertEquals(1000, reader.getTimestamp(0));
+        assertEquals(0xfffffff0L, reader.getTimestamp(1));
+        assertEquals(40000000L, reader.getCaptureTime(1));
+        assertArrayEquals(
+                new int[] { 0x11111111, 0x22222222 },
+                reader.getSSRCs());
+
+        RawPacket pkt = reader.readPacket(0, null);
+        byte[] buf = pkt.getBuffer();
+
+        assertEquals(payloads[0].length, pkt.getLength());
+        assertArrayEquals(payloads[0], buf);
+
+        // The buffer is reused for a packet which fits into it.
+        pkt = reader.readPacket(1, pkt);
+        assertSame(buf, pkt.getBuffer());
+        assertEquals(payloads[2].length, pkt.getLength());
+        assertEquals(0x22222222, pkt.getSSRC());
+        assertEquals(7, pkt.getSequenceNumber());
+        reader.close();
+    }
+
+    @Test
+    public void testPcapng()
+        throws IOException
+    {
+        byte[] rtp = createRtp(0x33333333, 1, 2, 30);
+        byte[] packet = udpOverIPv6(rtp);
+        int paddedLength = (packet.length + 3) & ~3;
+        File file = File.createTempFile("capture", ".pcapng");
+        DataOutputStream out
+            = new DataOutputStream(new FileOutputStream(file));
+
+        file.deleteOnExit();
+        try
+        {
+            // Big endian section header block
+            out.writeInt(0x0a0d0d0a);
+            out.writeInt(28);
+            out.writeInt(0x1a2b3c4d);
+            out.writeShort(1);
+            out.writeShort(0);
+            out.writeLong(-1);
+            out.writeInt(28);
+            // Interface description block of raw IP with nanoseconds
+            out.writeInt(1);
+            out.writeInt(32);
+            out.writeShort(101);
+            out.writeShort(0);
+            out.writeInt(65535);
+            out.writeShort(9);
+            out.writeShort(1);
+            out.writeInt(0x09000000);
+            out.writeInt(0);
+            out.writeInt(32);
+            for (int i = 0; i < 2; i++)
+            {
+                long ts = 5000000000L + i * 1500;
+
+                out.writeInt(6);
+                out.writeInt(32 + paddedLength);
+                out.writeInt(0);
+                out.writeInt((int) (ts >>> 32));
+                out.writeInt((int) ts);
+                out.writeInt(packet.length);
+                out.writeInt(packet.length);
+                out.write(packet);
+                out.write(new byte[paddedLength - packet.length]);
+                out.writeInt(32 + paddedLength);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        CaptureFileReader reader = new CaptureFileReader(file.getPath());
+
+        assertEquals(CaptureFileReader.FORMAT_PCAPNG, reader.getFormat());
+        assertEquals(2, reader.getPacketCount());
+        assertEquals(0x33333333, reader.getSSRC(1));
+        assertEquals(rtp.length, reader.getLength(1));
+        assertEquals(1500, reader.getCaptureTime(1));
+        reader.close();
+    }
+
+    @Test
+    public void testRtpdump()
+        throws IOException
+    {
+        byte[] rtcp = new byte[8];
+
+        rtcp[0] = (byte) 0x80;
+        rtcp[1] = (byte) 200;
+
+        File file
+            = createRtpdump(
+                    new byte[][]
+                    {
+                        createRtp(1, 10, 100, 50),
+                        rtcp,
+                        createRtp(1, 11, 3100, 60)
+                    },
+                    new int[] { 0, 10, 20 });
+        CaptureFileReader reader = new CaptureFileReader(file.getPath());
+
+        assertEquals(CaptureFileReader.FORMAT_RTPDUMP, reader.getFormat());
+        assertEquals(2, reader.getPacketCount());
+        assertEquals(1, reader.getSkippedRecordCount());
+        assertEquals(11, reader.getSequenceNumber(1));
+        assertEquals(72, reader.getLength(1));
+        assertEquals(20000000L, reader.getCaptureTime(1));
+        reader.close();
+
+        RtpdumpFileReader rtpdumpReader
+            = new RtpdumpFileReader(file.getPath());
+
+        assertEquals(10, rtpdumpReader.getNextPacket(true).getSequenceNumber());
+        assertEquals(11, rtpdumpReader.getNextPacket(true).getSequenceNumber());
+        assertEquals(10, rtpdumpReader.getNextPacket(true).getSequenceNumber());
+    }
+}
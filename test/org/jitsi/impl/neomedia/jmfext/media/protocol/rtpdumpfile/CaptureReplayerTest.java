@@ -0,0 +1,127 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.jmfext.media.protocol.rtpdumpfile;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.jitsi.service.neomedia.*;
+import org.junit.Test;
+
+public class CaptureReplayerTest
+{
+    @Test
+    public void testLoopsAndFilter()
+        throws IOException
+    {
+        File file
+            = CaptureFileReaderTest.createRtpdump(
+                    new byte[][]
+                    {
+                        CaptureFileReaderTest.createRtp(1, 65534, 0, 10),
+                        CaptureFileReaderTest.createRtp(2, 100, 0, 10),
+                        CaptureFileReaderTest.createRtp(1, 65535, 3000, 10),
+                        CaptureFileReaderTest.createRtp(1, 0, 6000, 10)
+                    },
+                    new int[] { 0, 10, 20, 40 });
+        CaptureFileReader reader = new CaptureFileReader(file.getPath());
+        final List<Long> received = new ArrayList<>();
+        CaptureReplayer replayer
+            = new CaptureReplayer(
+                    reader,
+                    new CaptureReplayer.PacketSink()
+                    {
+                        @Override
+                        public void write(RawPacket[] pkts)
+                        {
+                            for (RawPacket pkt : pkts)
+                            {
+                                if (pkt != null)
+                                {
+                                    assertEquals(1, pkt.getSSRC());
+                                    received.add(
+                                            ((long) pkt.getSequenceNumber()
+                                                    << 32)
+                                                | pkt.getTimestamp());
+                                }
+                            }
+                        }
+                    });
+
+        replayer.setBatchSize(2);
+        replayer.setLoopCount(2);
+        replayer.setRecyclePackets(true);
+        replayer.setSpeed(CaptureReplayer.AS_FAST_AS_POSSIBLE);
+        replayer.setSSRCs(1);
+        replayer.run();
+
+        // The second loop continues the sequence numbers and timestamps.
+        long[] expected
+            = {
+                (65534L << 32) | 0,
+                (65535L << 32) | 3000,
+                (0L << 32) | 6000,
+                (1L << 32) | 9000,
+                (2L << 32) | 12000,
+                (3L << 32) | 15000
+            };
+
+        assertEquals(expected.length, received.size());
+        for (int i = 0; i < expected.length; i++)
+            assertEquals((long) expected[i], (long) received.get(i));
+        assertEquals(6, replayer.getPacketCount());
+        assertEquals(6 * 22, replayer.getByteCount());
+    }
+
+    @Test
+    public void testScaledSpeed()
+        throws IOException
+    {
+        File file
+            = CaptureFileReaderTest.createRtpdump(
+                    new byte[][]
+                    {
+                        CaptureFileReaderTest.createRtp(1, 1, 0, 10),
+                        CaptureFileReaderTest.createRtp(1, 2, 0, 10)
+                    },
+                    new int[] { 0, 200 });
+        CaptureFileReader reader = new CaptureFileReader(file.getPath());
+        CaptureReplayer replayer
+            = new CaptureReplayer(
+                    reader,
+                    new CaptureReplayer.PacketSink()
+                    {
+                        @Override
+                        public void write(RawPacket[] pkts)
+                        {
+                        }
+                    });
+
+        replayer.setSpeed(4);
+
+        long start = System.nanoTime();
+
+        replayer.run();
+
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue(elapsedMillis >= 45);
+        assertTrue(elapsedMillis < 190);
+        assertEquals(2, replayer.getPacketCount());
+    }
+}
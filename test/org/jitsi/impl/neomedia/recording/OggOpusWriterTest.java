@@ -0,0 +1,118 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.recording;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Test;
+
+public class OggOpusWriterTest
+{
+    private static int crc(byte[] buf, int off, int len)
+    {
+        int crc = 0;
+
+        for (int i = off; i < off + len; i++)
+        {
+            // The CRC is computed with zeros in its field.
+            int b = (i - off >= 22 && i - off < 26) ? 0 : buf[i] & 0xff;
+
+            crc ^= b << 24;
+            for (int j = 0; j < 8; j++)
+            {
+                crc
+                    = ((crc & 0x80000000) != 0)
+                        ? (crc << 1) ^ 0x04c11db7
+                        : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    private static long readLong(byte[] buf, int off, int len)
+    {
+        long value = 0;
+
+        for (int i = len - 1; i >= 0; i--)
+            value = (value << 8) | (buf[off + i] & 0xff);
+        return value;
+    }
+
+    @Test
+    public void testGetSampleCount()
+    {
+        // CELT 20 ms, one frame
+        byte[] celt20 = { (byte) 0xf8 };
+        // SILK 60 ms, two frames
+        byte[] silk60x2 = { 0x19 };
+        // CELT 2.5 ms, code 3 with 5 frames
+        byte[] celt2_5x5 = { (byte) 0x83, 5 };
+
+        assertEquals(960, OggOpusWriter.getSampleCount(celt20, 0, 1));
+        assertEquals(5760, OggOpusWriter.getSampleCount(silk60x2, 0, 1));
+        assertEquals(600, OggOpusWriter.getSampleCount(celt2_5x5, 0, 2));
+        assertEquals(0, OggOpusWriter.getSampleCount(celt2_5x5, 0, 0));
+    }
+
+    @Test
+    public void testPages()
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OggOpusWriter writer = new OggOpusWriter(out, 1234, 2);
+        byte[] packet = new byte[300];
+
+        Arrays.fill(packet, (byte) 0xf8);
+        for (int i = 1; i <= 60; i++)
+            writer.writePacket(packet, 0, packet.length, 960 * i);
+        writer.close();
+
+        byte[] file = out.toByteArray();
+        List<int[]> pages = new ArrayList<>();
+
+        for (int off = 0; off < file.length; )
+        {
+            assertEquals("OggS", new String(file, off, 4, "US-ASCII"));
+            assertEquals(1234, readLong(file, off + 14, 4));
+            assertEquals(pages.size(), readLong(file, off + 18, 4));
+
+            int segmentCount = file[off + 26] & 0xff;
+            int length = 27 + segmentCount;
+
+            for (int i = 0; i < segmentCount; i++)
+                length += file[off + 27 + i] & 0xff;
+            assertEquals(
+                    crc(file, off, length),
+                    (int) readLong(file, off + 22, 4));
+            pages.add(new int[] { off, file[off + 5], segmentCount });
+            off += length;
+        }
+
+        assertEquals(4, pages.size());
+        assertEquals(0x02, pages.get(0)[1]);
+        assertEquals("OpusHead", new String(file, 28, 8, "US-ASCII"));
+        assertEquals(2, file[28 + 9]);
+        assertEquals(0, pages.get(1)[1]);
+        // 50 packets of two segments each fit on the first audio page.
+        assertEquals(100, pages.get(2)[2]);
+        assertEquals(960 * 50, readLong(file, pages.get(2)[0] + 6, 8));
+        assertEquals(0x04, pages.get(3)[1]);
+        assertEquals(960 * 60, readLong(file, pages.get(3)[0] + 6, 8));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.recording;
+
+import static org.junit.Assert.*;
+
+import org.jitsi.service.neomedia.*;
+import org.junit.Test;
+
+public class RtpReorderBufferTest
+{
+    private static RawPacket createPacket(int seq)
+    {
+        byte[] buf = new byte[12 + 1];
+
+        buf[0] = (byte) 0x80;
+        buf[2] = (byte) (seq >> 8);
+        buf[3] = (byte) seq;
+        buf[12] = (byte) seq;
+        return new RawPacket(buf, 0, buf.length);
+    }
+
+    @Test
+    public void testReorder()
+    {
+        RtpReorderBuffer buffer = new RtpReorderBuffer(8);
+
+        assertEquals(
+                RtpReorderBuffer.ACCEPTED,
+                buffer.add(createPacket(65534)));
+        assertEquals(65534, buffer.poll().getSequenceNumber());
+        assertNull(buffer.poll());
+
+        // 65535 is late and wraps around to 0.
+        assertEquals(RtpReorderBuffer.ACCEPTED, buffer.add(createPacket(0)));
+        assertNull(buffer.poll());
+        assertEquals(
+                RtpReorderBuffer.ACCEPTED,
+                buffer.add(createPacket(65535)));
+        assertEquals(65535, buffer.poll().getSequenceNumber());
+        assertEquals(0, buffer.getLost());
+
+        RawPacket pkt = buffer.poll();
+
+        assertEquals(0, pkt.getSequenceNumber());
+        assertEquals(0, pkt.getBuffer()[pkt.getOffset() + 12]);
+        assertNull(buffer.poll());
+
+        assertEquals(RtpReorderBuffer.LATE, buffer.add(createPacket(65535)));
+        assertEquals(RtpReorderBuffer.ACCEPTED, buffer.add(createPacket(2)));
+        assertEquals(RtpReorderBuffer.DUPLICATE, buffer.add(createPacket(2)));
+    }
+
+    @Test
+    public void testSkip()
+    {
+        RtpReorderBuffer buffer = new RtpReorderBuffer(8);
+
+        assertEquals(RtpReorderBuffer.ACCEPTED, buffer.add(createPacket(100)));
+        assertEquals(100, buffer.poll().getSequenceNumber());
+        assertEquals(RtpReorderBuffer.ACCEPTED, buffer.add(createPacket(103)));
+        assertEquals(RtpReorderBuffer.ACCEPTED, buffer.add(createPacket(108)));
+        assertEquals(RtpReorderBuffer.FULL, buffer.add(createPacket(109)));
+
+        // 101 and 102 are given up on to make room for 109.
+        assertNull(buffer.skip());
+        assertNull(buffer.skip());
+        assertEquals(103, buffer.skip().getSequenceNumber());
+        assertEquals(2, buffer.getLost());
+        assertEquals(RtpReorderBuffer.ACCEPTED, buffer.add(createPacket(109)));
+        assertNull(buffer.poll());
+        assertEquals(2, buffer.size());
+
+        buffer.reset();
+        assertEquals(0, buffer.size());
+        assertEquals(RtpReorderBuffer.ACCEPTED, buffer.add(createPacket(5000)));
+        assertEquals(5000, buffer.poll().getSequenceNumber());
+        assertTrue(buffer.getLost() > 0);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtcp;
+
+import static org.junit.Assert.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+import org.junit.Test;
+
+public class RTCPPacketViewTest
+{
+    private static final int SENDER_SSRC = 0x1A2B3C4D;
+
+    private static final int SOURCE_SSRC = 0x5E6F7081;
+
+    private static int writeHeader(
+            byte[] buf, int off, int count, int pt, int length)
+    {
+        buf[off] = (byte) (0x80 | count);
+        buf[off + 1] = (byte) pt;
+        RTPUtils.writeShort(buf, off + 2, (short) (length / 4 - 1));
+        return off + 4;
+    }
+
+    private static int writeInt(byte[] buf, int off, int i)
+    {
+        RTPUtils.writeInt(buf, off, i);
+        return off + 4;
+    }
+
+    /**
+     * Builds a compound packet of an SR with one report block, an SDES with a
+     * CNAME, a NACK, a REMB and a PLI.
+     */
+    private static byte[] createCompoundPacket()
+    {
+        byte[] buf = new byte[52 + 20 + 16 + 24 + 12];
+        int off = 0;
+
+        off = writeHeader(buf, off, 1, RTCPPacketView.SR, 52);
+        off = writeInt(buf, off, SENDER_SSRC);
+        off = writeInt(buf, off, 0xDEADBEEF); // NTP MSW
+        off = writeInt(buf, off, 0x80000000); // NTP LSW
+        off = writeInt(buf, off, 123456); // RTP timestamp
+        off = writeInt(buf, off, 1000); // packet count
+        off = writeInt(buf, off, 160000); // octet count
+        off = writeInt(buf, off, SOURCE_SSRC);
+        off = writeInt(buf, off, 0x40FFFFFE); // fraction 64, cumulative -2
+        off = writeInt(buf, off, 0x00012345);
+        off = writeInt(buf, off, 42); // jitter
+        off = writeInt(buf, off, 0x11112222); // LSR
+        off = writeInt(buf, off, 0x33334444); // DLSR
+
+        off = writeHeader(buf, off, 1, RTCPPacketView.SDES, 20);
+        off = writeInt(buf, off, SENDER_SSRC);
+        buf[off++] = 1; // CNAME
+        buf[off++] = 5;
+        for (char c : "jitsi".toCharArray())
+            buf[off++] = (byte) c;
+        off += 5; // null item and padding
+
+        off = writeHeader(buf, off, 1, RTCPPacketView.RTPFB, 16);
+        off = writeInt(buf, off, SENDER_SSRC);
+        off = writeInt(buf, off, SOURCE_SSRC);
+        off = writeInt(buf, off, 0xFFFE8001); // PID 65534, BLP 1 and 16
+
+        off = writeHeader(buf, off, 15, RTCPPacketView.PSFB, 24);
+        off = writeInt(buf, off, SENDER_SSRC);
+        off = writeInt(buf, off, 0);
+        off = writeInt(buf, off, 0x52454D42); // "REMB"
+        off = writeInt(buf, off, 0x010BD090); // 1 SSRC, 250000 << 2 bps
+        off = writeInt(buf, off, SOURCE_SSRC);
+
+        off = writeHeader(buf, off, 1, RTCPPacketView.PSFB, 12);
+        off = writeInt(buf, off, SENDER_SSRC);
+        writeInt(buf, off, SOURCE_SSRC);
+
+        return buf;
+    }
+
+    @Test
+    public void testAccept()
+    {
+        byte[] buf = createCompoundPacket();
+        final StringBuilder visited = new StringBuilder();
+        RTCPPacketView view = new RTCPPacketView();
+
+        boolean wellFormed
+            = view.wrap(buf, 0, buf.length).accept(
+                    new RTCPPacketVisitorAdapter()
+                    {
+                        @Override
+                        public void visitNACK(RTCPPacketView view)
+                        {
+                            visited.append("NACK ");
+                            assertEquals(
+                                SOURCE_SSRC, (int) view.getSourceSSRC());
+                            assertEquals(1, view.getNACKCount());
+                            assertEquals(65534, view.getNACKPacketID(0));
+                            assertEquals(0x8001, view.getNACKBitmask(0));
+                        }
+
+                        @Override
+                        public void visitPLI(RTCPPacketView view)
+                        {
+                            visited.append("PLI ");
+                        }
+
+                        @Override
+                        public void visitREMB(RTCPPacketView view)
+                        {
+                            visited.append("REMB ");
+                            assertEquals(1000000, view.getREMBBitrate());
+                            assertEquals(1, view.getREMBSSRCCount());
+                            assertEquals(
+                                SOURCE_SSRC, (int) view.getREMBSSRC(0));
+                        }
+
+                        @Override
+                        public void visitSDES(RTCPPacketView view)
+                        {
+                            visited.append("SDES ");
+
+                            int off = view.getSDESItemOffset(0, 1);
+
+                            assertEquals(5, view.getBuffer()[off - 1]);
+                            assertEquals('j', view.getBuffer()[off]);
+                            assertEquals(-1, view.getSDESItemOffset(0, 2));
+                        }
+
+                        @Override
+                        public void visitSR(RTCPPacketView view)
+                        {
+                            visited.append("SR ");
+                            assertEquals(
+                                SENDER_SSRC, (int) view.getSenderSSRC());
+                            assertEquals(
+                                0xDEADBEEFL, view.getNtpTimestampMSW());
+                            assertEquals(
+                                0x80000000L, view.getNtpTimestampLSW());
+                            assertEquals(123456, view.getRtpTimestamp());
+                            assertEquals(1000, view.getSenderPacketCount());
+                            assertEquals(160000, view.getSenderOctetCount());
+                            assertEquals(1, view.getReportBlockCount());
+                            assertEquals(
+                                SOURCE_SSRC, (int) view.getReportBlockSSRC(0));
+                            assertEquals(64, view.getFractionLost(0));
+                            assertEquals(-2, view.getCumulativePacketsLost(0));
+                            assertEquals(
+                                0x12345,
+                                view.getExtendedHighestSequenceNumber(0));
+                            assertEquals(42, view.getInterarrivalJitter(0));
+                            assertEquals(0x11112222, view.getLastSR(0));
+                            assertEquals(
+                                0x33334444, view.getDelaySinceLastSR(0));
+                        }
+                    });
+
+        assertTrue(wellFormed);
+        assertEquals("SR SDES NACK REMB PLI ", visited.toString());
+    }
+
+    @Test
+    public void testRemove()
+    {
+        byte[] buf = createCompoundPacket();
+        ByteArrayBuffer baf = new RawPacket(buf, 0, buf.length);
+        RTCPPacketView view = new RTCPPacketView();
+
+        view.wrap(baf);
+        while (view.next())
+        {
+            if (view.getPacketType() == RTCPPacketView.PSFB)
+                view.remove();
+        }
+        assertEquals(buf.length - 24 - 12, baf.getLength());
+
+        StringBuilder types = new StringBuilder();
+
+        view.wrap(baf);
+        while (view.next())
+            types.append(view.getPacketType()).append(' ');
+        assertFalse(view.isMalformed());
+        assertEquals("200 202 205 ", types.toString());
+    }
+
+    @Test
+    public void testMalformed()
+    {
+        byte[] buf = createCompoundPacket();
+        int count = 0;
+        RTCPPacketView view = new RTCPPacketView();
+
+        // Claim that the SDES is longer than the rest of the compound packet.
+        buf[52 + 3] = (byte) 0xff;
+
+        assertFalse(view.wrap(buf, 0, buf.length).accept(
+                new RTCPPacketVisitorAdapter()));
+
+        view.wrap(buf, 0, buf.length);
+        while (view.next())
+            count++;
+        assertEquals(1, count);
+        assertTrue(view.isMalformed());
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtcp;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class RTCPTCCPacketTest
+{
+    private static final long SENDER_SSRC = 0x1A2B3C4DL;
+
+    private static final long SOURCE_SSRC = 0xFE6F7081L;
+
+    @Test
+    public void testRoundTrip()
+    {
+        long t0 = 1000000123L;
+        // The arrival times of the packets or -1 for lost packets. Covers
+        // small, large and negative deltas as well as long runs.
+        List<Long> arrivals = new ArrayList<>();
+
+        arrivals.add(t0);
+        arrivals.add(t0 + 1000);
+        arrivals.add(-1L);
+        arrivals.add(t0 + 101000);
+        arrivals.add(t0 + 96000);
+        for (int i = 1; i <= 20; i++)
+            arrivals.add(t0 + 96000 + i * 250);
+        for (int i = 0; i < 30; i++)
+            arrivals.add(-1L);
+        arrivals.add(t0 + 200000);
+
+        RTCPTCCPacket.Builder builder = new RTCPTCCPacket.Builder(400);
+
+        builder.reset(65530);
+        for (long arrival : arrivals)
+        {
+            if (arrival == -1)
+                assertTrue(builder.addNotReceived());
+            else
+                assertTrue(builder.addReceived(arrival));
+        }
+        assertEquals(arrivals.size(), builder.getStatusCount());
+
+        byte[] buf = new byte[8 + RTCPTCCPacket.getMaxLength(400)];
+        int len = builder.write(buf, 8, SENDER_SSRC, SOURCE_SSRC, 300);
+
+        assertEquals(0, len % 4);
+        assertTrue(len <= RTCPTCCPacket.getMaxLength(arrivals.size()));
+
+        final List<RTCPPacketView> views = new ArrayList<>();
+        final int[] fci = new int[2];
+        RTCPPacketView view = new RTCPPacketView();
+
+        assertTrue(
+                view.wrap(buf, 8, len).accept(
+                        new RTCPPacketVisitorAdapter()
+                        {
+                            @Override
+                            public void visitTCC(RTCPPacketView view)
+                            {
+                                views.add(view);
+                                fci[0] = view.getFCIOffset();
+                                fci[1] = view.getFCILength();
+                            }
+                        }));
+        assertEquals(1, views.size());
+        assertEquals(SENDER_SSRC, views.get(0).getSenderSSRC());
+        assertEquals(SOURCE_SSRC, views.get(0).getSourceSSRC());
+        assertEquals(
+                65530, RTCPTCCPacket.getBaseSequenceNumber(buf, fci[0]));
+        assertEquals(
+                arrivals.size(),
+                RTCPTCCPacket.getPacketStatusCount(buf, fci[0]));
+        assertEquals(44, RTCPTCCPacket.getFeedbackPacketCount(buf, fci[0]));
+
+        final long referenceTimeUs
+            = RTCPTCCPacket.getReferenceTime(buf, fci[0])
+                * RTCPTCCPacket.REFERENCE_TIME_UNIT_US;
+        final List<Integer> seqs = new ArrayList<>();
+        final List<Long> parsed = new ArrayList<>();
+
+        assertTrue(
+                RTCPTCCPacket.parse(
+                        buf, fci[0], fci[1],
+                        new RTCPTCCPacket.PacketHandler()
+                        {
+                            @Override
+                            public void packetReported(
+                                    int seq, boolean received, long timeUs)
+                            {
+                                seqs.add(seq);
+                                parsed.add(
+                                        received
+                                            ? referenceTimeUs + timeUs
+                                            : -1L);
+                            }
+                        }));
+        assertEquals(arrivals.size(), parsed.size());
+        for (int i = 0; i < arrivals.size(); i++)
+        {
+            long expected = arrivals.get(i);
+            long actual = parsed.get(i);
+
+            assertEquals((65530 + i) & 0xffff, (int) seqs.get(i));
+            if (expected == -1)
+            {
+                assertEquals(-1L, actual);
+            }
+            else
+            {
+                assertTrue(
+                        Math.abs(expected - actual)
+                            <= RTCPTCCPacket.DELTA_UNIT_US / 2);
+            }
+        }
+
+        // A truncated FCI is rejected.
+        parsed.clear();
+        assertFalse(
+                RTCPTCCPacket.parse(
+                        buf, fci[0], 10,
+                        new RTCPTCCPacket.PacketHandler()
+                        {
+                            @Override
+                            public void packetReported(
+                                    int seq, boolean received, long timeUs)
+                            {
+                                parsed.add(timeUs);
+                            }
+                        }));
+        assertTrue(parsed.isEmpty());
+    }
+
+    @Test
+    public void testLimits()
+    {
+        RTCPTCCPacket.Builder builder = new RTCPTCCPacket.Builder(3);
+
+        builder.reset(1);
+        assertTrue(builder.addReceived(0));
+        // A delta which does not fit into 16 bits.
+        assertFalse(builder.addReceived(10000000L));
+        assertTrue(builder.addNotReceived());
+        assertTrue(builder.addReceived(1000));
+        // The builder is full.
+        assertFalse(builder.addNotReceived());
+        assertEquals(3, builder.getStatusCount());
+        assertEquals(2, builder.getReceivedCount());
+
+        builder.reset(2);
+        assertEquals(0, builder.getStatusCount());
+        assertEquals(2, builder.getBaseSequenceNumber());
+    }
+}
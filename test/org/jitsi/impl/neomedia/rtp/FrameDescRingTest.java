@@ -0,0 +1,81 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class FrameDescRingTest
+{
+    @Test
+    public void testGetAndEvict()
+    {
+        FrameDescRing ring = new FrameDescRing();
+        int frameCount = 3 * FrameDescRing.CAPACITY;
+
+        for (int i = 0; i < frameCount; i++)
+        {
+            // 30 fps with the 90 kHz clock, wrapping around 2^32.
+            long ts = (0xFFFFF000L + 3000L * i) & 0xFFFFFFFFL;
+
+            assertNull(ring.get(ts));
+            ring.add(new FrameDesc(null, ts, i));
+            assertEquals(ts, ring.get(ts).getTimestamp());
+        }
+
+        int found = 0;
+
+        for (int i = 0; i < frameCount; i++)
+        {
+            long ts = (0xFFFFF000L + 3000L * i) & 0xFFFFFFFFL;
+            FrameDesc frame = ring.get(ts);
+
+            if (i < frameCount - FrameDescRing.CAPACITY)
+            {
+                assertNull(frame);
+            }
+            else if (frame != null)
+            {
+                assertEquals(i, frame.getReceivedMs());
+                found++;
+            }
+        }
+
+        // The index may drop a few frames on collisions but not many.
+        assertTrue(found > FrameDescRing.CAPACITY * 9 / 10);
+    }
+
+    @Test
+    public void testNeighbors()
+    {
+        FrameDescRing ring = new FrameDescRing();
+
+        // The frame with timestamp 6000 arrives late.
+        ring.add(new FrameDesc(null, 0, 0));
+        ring.add(new FrameDesc(null, 3000, 1));
+        ring.add(new FrameDesc(null, 9000, 2));
+        ring.add(new FrameDesc(null, 6000, 3));
+
+        assertEquals(9000, ring.findNext(6000).getTimestamp());
+        assertEquals(3000, ring.findPrevious(6000).getTimestamp());
+        assertEquals(6000, ring.findNext(3000).getTimestamp());
+        assertEquals(6000, ring.findPrevious(9000).getTimestamp());
+        assertNull(ring.findPrevious(0));
+        assertNull(ring.findNext(9000));
+        assertNull(ring.findNext(12000));
+    }
+}
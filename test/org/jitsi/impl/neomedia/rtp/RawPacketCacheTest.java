@@ -0,0 +1,220 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp;
+
+import java.util.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class RawPacketCacheTest
+{
+    private static final long SSRC = 0xcafebabeL;
+
+    /**
+     * The default of {@link RawPacketCache#NACK_CACHE_SIZE_PACKETS}.
+     */
+    private static final int MAX_SIZE_PACKETS = 200;
+
+    private static final int LENGTH = 100;
+
+    /**
+     * The offset of the byte which marks the packets of the tests (the first
+     * byte of the payload).
+     */
+    private static final int MARK_OFFSET = RawPacket.FIXED_HEADER_SIZE;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        LibJitsi.start();
+    }
+
+    private static RawPacket makePacket(int seq, int mark)
+    {
+        RawPacket pkt
+            = RawPacket.makeRTP(SSRC, 100, seq & 0xffff, 0, LENGTH);
+
+        pkt.getBuffer()[pkt.getOffset() + MARK_OFFSET] = (byte) mark;
+        return pkt;
+    }
+
+    private static int getMark(RawPacket pkt)
+    {
+        return pkt.getBuffer()[pkt.getOffset() + MARK_OFFSET] & 0xff;
+    }
+
+    @Test
+    public void testWrapAround()
+        throws Exception
+    {
+        RawPacketCache cache = new RawPacketCache(0);
+        int first = 0xfff0;
+        int count = 0x20;
+
+        for (int i = 0; i < count; i++)
+            cache.cachePacket(makePacket(first + i, i));
+
+        for (int i = 0; i < count; i++)
+        {
+            int seq = (first + i) & 0xffff;
+            RawPacket pkt = cache.get(SSRC, seq);
+
+            assertNotNull("seq " + seq, pkt);
+            assertEquals(seq, pkt.getSequenceNumber());
+            assertEquals(LENGTH, pkt.getLength());
+            assertEquals(i, getMark(pkt));
+        }
+        assertNull(cache.get(SSRC, (first + count) & 0xffff));
+        cache.close();
+    }
+
+    @Test
+    public void testEviction()
+        throws Exception
+    {
+        RawPacketCache cache = new RawPacketCache(0);
+        // Wrap around the ring (and the sequence numbers) a few times.
+        int first = 0xff00;
+        int count = 3 * MAX_SIZE_PACKETS + 7;
+
+        for (int i = 0; i < count; i++)
+            cache.cachePacket(makePacket(first + i, i));
+
+        for (int i = 0; i < count; i++)
+        {
+            RawPacket pkt = cache.get(SSRC, (first + i) & 0xffff);
+
+            if (i < count - MAX_SIZE_PACKETS)
+            {
+                assertNull("seq " + (first + i), pkt);
+            }
+            else
+            {
+                assertNotNull("seq " + (first + i), pkt);
+                assertEquals(i & 0xff, getMark(pkt));
+            }
+        }
+
+        // A packet older than the window of the cache is not inserted.
+        cache.cachePacket(makePacket(first, 0));
+        assertNull(cache.get(SSRC, first));
+
+        // getMany returns the most recent packets within the byte limit.
+        Set<RawPacketCache.Container> containers
+            = cache.getMany(SSRC, 5 * LENGTH);
+
+        assertEquals(5, containers.size());
+        for (RawPacketCache.Container container : containers)
+        {
+            assertTrue(
+                    ((container.pkt.getSequenceNumber() - first) & 0xffff)
+                        >= count - 5);
+        }
+        cache.releaseContainers(containers);
+        cache.close();
+    }
+
+    @Test
+    public void testAcquireContainer()
+        throws Exception
+    {
+        RawPacketCache cache = new RawPacketCache(0);
+
+        cache.cachePacket(makePacket(1, 1));
+        assertNull(cache.acquireContainer(SSRC, 2));
+        assertNull(cache.acquireContainer(SSRC + 1, 1));
+
+        RawPacketCache.Container container = cache.acquireContainer(SSRC, 1);
+
+        assertNotNull(container);
+        assertEquals(1, container.pkt.getSequenceNumber());
+        assertEquals(1, getMark(container.pkt));
+
+        // Two leases of the same packet share its container.
+        RawPacketCache.Container container2
+            = cache.acquireContainer(SSRC, 1);
+
+        assertSame(container, container2);
+        cache.releaseContainer(container2);
+        cache.releaseContainer(container);
+
+        // Once released, the slot is reused when the packet is replaced.
+        cache.cachePacket(makePacket(1, 2));
+        assertSame(container, cache.acquireContainer(SSRC, 1));
+        assertEquals(2, getMark(container.pkt));
+        cache.releaseContainer(container);
+
+        // getContainer copies.
+        RawPacketCache.Container copy = cache.getContainer(SSRC, 1);
+
+        assertNotSame(container, copy);
+        assertNotSame(container.pkt.getBuffer(), copy.pkt.getBuffer());
+        assertEquals(2, getMark(copy.pkt));
+        cache.close();
+    }
+
+    @Test
+    public void testReplaceLeasedSlot()
+        throws Exception
+    {
+        RawPacketCache cache = new RawPacketCache(0);
+
+        cache.cachePacket(makePacket(1, 1));
+        cache.cachePacket(makePacket(2, 1));
+
+        RawPacketCache.Container leased = cache.acquireContainer(SSRC, 1);
+        Set<RawPacketCache.Container> many
+            = cache.getMany(SSRC, 2 * LENGTH);
+
+        assertEquals(2, many.size());
+        assertTrue(many.contains(leased));
+
+        // Replacing the packets of the leased slots must not modify the
+        // packets of the leaseholders.
+        cache.cachePacket(makePacket(1, 2));
+        cache.cachePacket(makePacket(2, 2));
+        assertEquals(1, getMark(leased.pkt));
+        assertEquals(1, leased.pkt.getSequenceNumber());
+        for (RawPacketCache.Container container : many)
+            assertEquals(1, getMark(container.pkt));
+
+        RawPacketCache.Container replacement
+            = cache.acquireContainer(SSRC, 1);
+
+        assertNotSame(leased, replacement);
+        assertEquals(2, getMark(replacement.pkt));
+        cache.releaseContainer(replacement);
+
+        // Emptying the cache must not modify the packets of the leaseholders
+        // either.
+        cache.releaseContainer(leased);
+        cache.close();
+        for (RawPacketCache.Container container : many)
+        {
+            assertNotNull(container.pkt);
+            assertEquals(1, getMark(container.pkt));
+        }
+        cache.releaseContainers(many);
+
+        // The last leases return the buffers of the detached containers.
+        for (RawPacketCache.Container container : many)
+            assertNull(container.pkt);
+    }
+}
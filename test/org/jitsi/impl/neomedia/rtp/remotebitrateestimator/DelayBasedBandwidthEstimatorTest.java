@@ -0,0 +1,150 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp.remotebitrateestimator;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class DelayBasedBandwidthEstimatorTest
+{
+    /**
+     * Simulates a sender which follows the estimate of a
+     * <tt>DelayBasedBandwidthEstimator</tt> over a bottleneck link with a
+     * drop-tail queue and transport-cc feedback every 100 ms.
+     *
+     * @param capacityBps the capacity of the bottleneck link.
+     * @param durationMs the simulated time.
+     * @return the average estimate over the last third of the simulation.
+     */
+    private static long simulate(long capacityBps, long durationMs)
+    {
+        final int packetSize = 1200;
+        final long propagationDelayUs = 20000;
+        final long maxQueueDelayUs = 300000;
+        final long feedbackIntervalUs = 100000;
+
+        DelayBasedBandwidthEstimator estimator
+            = new DelayBasedBandwidthEstimator(300000);
+        // The packets in flight from the sender to the receiver as
+        // { send time, arrival time }.
+        Deque<long[]> inFlight = new ArrayDeque<>();
+        // The feedback in flight from the receiver to the sender as
+        // { delivery time, send time, arrival time, ... }.
+        Deque<long[]> feedback = new ArrayDeque<>();
+        long rateBps = 300000;
+        long nextSendUs = 0;
+        long linkFreeUs = 0;
+        long nextFeedbackUs = feedbackIntervalUs;
+        long estimateSum = 0;
+        long estimateCount = 0;
+
+        for (long nowUs = 0; nowUs < durationMs * 1000; nowUs += 1000)
+        {
+            long nowMs = nowUs / 1000;
+
+            while (nextSendUs <= nowUs)
+            {
+                long startUs = Math.max(nextSendUs, linkFreeUs);
+
+                if (startUs - nextSendUs <= maxQueueDelayUs)
+                {
+                    linkFreeUs
+                        = startUs + packetSize * 8 * 1000000L / capacityBps;
+                    inFlight.add(
+                            new long[]
+                            {
+                                nextSendUs,
+                                linkFreeUs + propagationDelayUs
+                            });
+                }
+                nextSendUs += packetSize * 8 * 1000000L / rateBps;
+            }
+
+            if (nowUs >= nextFeedbackUs)
+            {
+                List<Long> reported = new ArrayList<>();
+
+                reported.add(nowUs + propagationDelayUs);
+                while (!inFlight.isEmpty() && inFlight.peek()[1] <= nowUs)
+                {
+                    long[] pkt = inFlight.poll();
+
+                    reported.add(pkt[0]);
+                    reported.add(pkt[1]);
+                }
+
+                long[] fb = new long[reported.size()];
+
+                for (int i = 0; i < fb.length; i++)
+                    fb[i] = reported.get(i);
+                feedback.add(fb);
+                nextFeedbackUs += feedbackIntervalUs;
+            }
+
+            while (!feedback.isEmpty() && feedback.peek()[0] <= nowUs)
+            {
+                long[] fb = feedback.poll();
+
+                for (int i = 1; i < fb.length; i += 2)
+                {
+                    estimator.incomingPacketFeedback(
+                            fb[i] / 1000, fb[i + 1] / 1000,
+                            packetSize,
+                            nowMs);
+                }
+
+                long estimateBps = estimator.update(nowMs);
+
+                if (estimateBps > 0)
+                    rateBps = estimateBps;
+            }
+
+            if (nowMs >= durationMs * 2 / 3 && nowMs % 100 == 0)
+            {
+                estimateSum += rateBps;
+                estimateCount++;
+            }
+        }
+        return estimateSum / estimateCount;
+    }
+
+    @Test
+    public void testConvergesToCapacity()
+    {
+        long capacityBps = 1500000;
+        long averageBps = simulate(capacityBps, 60000);
+
+        assertTrue(
+                "average " + averageBps,
+                averageBps > capacityBps * 6 / 10
+                    && averageBps < capacityBps * 11 / 10);
+    }
+
+    @Test
+    public void testBacksOffFromLowCapacity()
+    {
+        long capacityBps = 150000;
+        long averageBps = simulate(capacityBps, 30000);
+
+        assertTrue(
+                "average " + averageBps,
+                averageBps > capacityBps * 5 / 10
+                    && averageBps < capacityBps * 13 / 10);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.rtp.translator;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.media.rtp.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.util.*;
+import org.junit.*;
+
+public class FanOutExecutorTest
+{
+    /**
+     * An <tt>OutputDataStream</tt> which records the sequence numbers written
+     * into the first four bytes of its packets. The writes on the threads of
+     * a <tt>FanOutExecutor</tt> block while {@link #gate} is closed.
+     */
+    private static class RecordingStream
+        implements OutputDataStream
+    {
+        final List<Integer> seqs = new ArrayList<>();
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final Thread testThread = Thread.currentThread();
+
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public int write(byte[] buf, int off, int len)
+        {
+            if (Thread.currentThread() != testThread)
+            {
+                entered.countDown();
+                try
+                {
+                    gate.await();
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this)
+            {
+                seqs.add(RTPUtils.readInt(buf, off));
+                notifyAll();
+            }
+            return len;
+        }
+
+        synchronized void await(int count)
+            throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (seqs.size() < count)
+            {
+                long timeout = deadline - System.currentTimeMillis();
+
+                assertTrue("timed out", timeout > 0);
+                wait(timeout);
+            }
+        }
+    }
+
+    @BeforeClass
+    public static void setUp()
+    {
+        LibJitsi.start();
+    }
+
+    /**
+     * Writes a packet into the stream of a specific
+     * <tt>OutputDataStreamDesc</tt> in the way
+     * <tt>OutputDataStreamImpl</tt> does.
+     */
+    private static FanOutExecutor.FanOut write(
+            FanOutExecutor executor,
+            OutputDataStreamDesc desc,
+            int seq,
+            boolean aboveThreshold)
+    {
+        byte[] buf = new byte[100];
+
+        RTPUtils.writeInt(buf, 0, seq);
+
+        FanOutExecutor.Queue queue = desc.getFanOutQueue(aboveThreshold);
+
+        if (queue == null)
+        {
+            desc.stream.write(buf, 0, buf.length);
+            return null;
+        }
+        else
+        {
+            FanOutExecutor.FanOut fanOut = executor.createFanOut();
+            byte[] b = queue.acquireBuffer(buf.length);
+
+            System.arraycopy(buf, 0, b, 0, buf.length);
+            queue.add(b, buf.length, fanOut);
+            fanOut.scheduled();
+            return fanOut;
+        }
+    }
+
+    @Test
+    public void testOrderAcrossThreshold()
+        throws Exception
+    {
+        FanOutExecutor executor = new FanOutExecutor(4);
+        RecordingStream stream = new RecordingStream();
+        OutputDataStreamDesc desc
+            = new OutputDataStreamDesc(null, stream, executor);
+        int count = 300;
+
+        for (int i = 0; i < count; i++)
+        {
+            // Crosses the threshold in both directions a few times.
+            boolean aboveThreshold = (i / 50) % 2 == 1;
+
+            if (i == 50)
+            {
+                // Keep the packets in the queue so that a packet written
+                // directly below the threshold would overtake them.
+                stream.gate = new CountDownLatch(1);
+            }
+            else if (i == 110)
+            {
+                stream.gate.countDown();
+            }
+
+            if (i <= 50)
+                assertNull(desc.getFanOutQueue(false));
+            else
+                assertNotNull(desc.getFanOutQueue(false));
+
+            write(executor, desc, i, aboveThreshold);
+        }
+
+        stream.await(count);
+        synchronized (stream)
+        {
+            for (int i = 0; i < count; i++)
+                assertEquals(i, (int) stream.seqs.get(i));
+        }
+    }
+
+    @Test
+    public void testCloseDiscardsWaitingPackets()
+        throws Exception
+    {
+        FanOutExecutor executor = new FanOutExecutor(1);
+        RecordingStream stream = new RecordingStream();
+        OutputDataStreamDesc desc
+            = new OutputDataStreamDesc(null, stream, executor);
+        int count = 10;
+        List<FanOutExecutor.FanOut> fanOuts = new ArrayList<>();
+
+        stream.gate = new CountDownLatch(1);
+        for (int i = 0; i < count; i++)
+            fanOuts.add(write(executor, desc, i, true));
+        assertTrue(stream.entered.await(5, TimeUnit.SECONDS));
+
+        // The first packet is being written, the others are waiting.
+        long releases = ByteArrayPool.getReleaseCount();
+
+        desc.closeFanOutQueue();
+        assertEquals(releases + count - 1, ByteArrayPool.getReleaseCount());
+        assertFalse(fanOuts.get(0).isCompleted());
+        for (int i = 1; i < count; i++)
+            assertTrue(fanOuts.get(i).isCompleted());
+
+        // A closed queue releases the packets added to it.
+        assertTrue(write(executor, desc, count, true).isCompleted());
+        assertEquals(releases + count, ByteArrayPool.getReleaseCount());
+
+        stream.gate.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!fanOuts.get(0).isCompleted())
+        {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        // Only the fan-out which was actually written is measured.
+        assertEquals(1, executor.getFanOutCount());
+        assertEquals(releases + count + 1, ByteArrayPool.getReleaseCount());
+        synchronized (stream)
+        {
+            assertEquals(Arrays.asList(0), stream.seqs);
+        }
+    }
+}
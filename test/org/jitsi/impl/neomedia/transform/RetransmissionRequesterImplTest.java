@@ -0,0 +1,195 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.jitsi.service.neomedia.format.*;
+import org.jitsi.util.*;
+import org.junit.*;
+
+public class RetransmissionRequesterImplTest
+{
+    private static final long SENDER_SSRC = 1;
+
+    private static final long MEDIA_SSRC = 0x12345678L;
+
+    /**
+     * The NACK packets injected by the <tt>RetransmissionRequesterImpl</tt>
+     * under test.
+     */
+    private final BlockingQueue<byte[]> nacks = new LinkedBlockingQueue<>();
+
+    private RetransmissionRequesterImpl requester;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        LibJitsi.start();
+    }
+
+    @Before
+    public void setUp()
+    {
+        // Only the methods of MediaStream which RetransmissionRequesterImpl
+        // invokes are implemented.
+        final MediaFormat format
+            = (MediaFormat) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { MediaFormat.class },
+                    new InvocationHandler()
+                    {
+                        @Override
+                        public Object invoke(
+                                Object proxy, Method method, Object[] args)
+                        {
+                            return
+                                "getEncoding".equals(method.getName())
+                                    ? "VP8"
+                                    : null;
+                        }
+                    });
+        MediaStream stream
+            = (MediaStream) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { MediaStream.class },
+                    new InvocationHandler()
+                    {
+                        @Override
+                        public Object invoke(
+                                Object proxy, Method method, Object[] args)
+                        {
+                            String name = method.getName();
+
+                            if ("getFormat".equals(name))
+                            {
+                                return format;
+                            }
+                            else if ("injectPacket".equals(name))
+                            {
+                                RawPacket pkt = (RawPacket) args[0];
+
+                                nacks.add(
+                                        Arrays.copyOfRange(
+                                                pkt.getBuffer(),
+                                                pkt.getOffset(),
+                                                pkt.getOffset()
+                                                    + pkt.getLength()));
+                            }
+                            else if ("hashCode".equals(name))
+                            {
+                                return System.identityHashCode(proxy);
+                            }
+                            return null;
+                        }
+                    });
+
+        requester = new RetransmissionRequesterImpl(stream);
+        requester.setSenderSsrc(SENDER_SSRC);
+    }
+
+    @After
+    public void tearDown()
+    {
+        requester.close();
+    }
+
+    private void receive(int... seqs)
+    {
+        for (int seq : seqs)
+        {
+            requester.reverseTransform(
+                    RawPacket.makeRTP(MEDIA_SSRC, 100, seq, 0, 20));
+        }
+    }
+
+    /**
+     * Waits for the next NACK and checks that it requests the packets of
+     * {@link #MEDIA_SSRC} with specific PIDs and BLPs.
+     *
+     * @param fcis the expected PIDs and BLPs in turn.
+     */
+    private void assertNack(int... fcis)
+        throws InterruptedException
+    {
+        byte[] nack = nacks.poll(5, TimeUnit.SECONDS);
+
+        assertNotNull("timed out", nack);
+        assertEquals(12 + 2 * fcis.length, nack.length);
+        assertEquals(0x81, nack[0] & 0xff);
+        assertEquals(205, nack[1] & 0xff);
+        assertEquals(nack.length / 4 - 1, RTPUtils.readUint16AsInt(nack, 2));
+        assertEquals(SENDER_SSRC, RTPUtils.readUint32AsLong(nack, 4));
+        assertEquals(MEDIA_SSRC, RTPUtils.readUint32AsLong(nack, 8));
+        for (int i = 0; i < fcis.length; i += 2)
+        {
+            int off = 12 + 2 * i;
+
+            assertEquals(
+                    "PID " + i / 2,
+                    fcis[i],
+                    RTPUtils.readUint16AsInt(nack, off));
+            assertEquals(
+                    "BLP " + i / 2,
+                    fcis[i + 1],
+                    RTPUtils.readUint16AsInt(nack, off + 2));
+        }
+    }
+
+    @Test
+    public void testNack()
+        throws Exception
+    {
+        receive(100, 103);
+        assertNack(101, 0x0001);
+    }
+
+    @Test
+    public void testNackOfMoreThan17Packets()
+        throws Exception
+    {
+        // 201 to 217 fit in the first FCI, 218 to 229 in the second.
+        receive(200, 230);
+        assertNack(201, 0xffff, 218, 0x07ff);
+    }
+
+    @Test
+    public void testNackAcrossWrap()
+        throws Exception
+    {
+        // 0xfff9 to 0x0004 are missing.
+        receive(0xfff8, 0x0005);
+        assertNack(0xfff9, 0x07ff);
+    }
+
+    @Test
+    public void testReceivedPacketIsNotRequested()
+        throws Exception
+    {
+        receive(0xfffe, 0x0003);
+        assertNack(0xffff, 0x0007);
+
+        // 0x0000 and 0x0002 arrive, the others are requested again.
+        receive(0x0000, 0x0002);
+        assertNack(0xffff, 0x0002);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.junit.*;
+
+public class TransformEngineChainTest
+{
+    /**
+     * A <tt>TransformEngine</tt> which records its name in a list shared by
+     * the engines of a chain when its RTP transformer is invoked and
+     * optionally drops the packets. It does not implement
+     * <tt>ConditionalTransformEngine</tt> and is, consequently, never skipped
+     * unless there are no packets left.
+     */
+    private static class RecordingEngine
+        implements TransformEngine, PacketTransformer
+    {
+        final String name;
+
+        final List<String> log;
+
+        boolean drop = false;
+
+        RecordingEngine(String name, List<String> log)
+        {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public PacketTransformer getRTCPTransformer()
+        {
+            return null;
+        }
+
+        @Override
+        public PacketTransformer getRTPTransformer()
+        {
+            return this;
+        }
+
+        private RawPacket[] record(RawPacket[] pkts)
+        {
+            log.add(name);
+            return drop ? new RawPacket[pkts.length] : pkts;
+        }
+
+        @Override
+        public RawPacket[] reverseTransform(RawPacket[] pkts)
+        {
+            return record(pkts);
+        }
+
+        @Override
+        public RawPacket[] transform(RawPacket[] pkts)
+        {
+            return record(pkts);
+        }
+    }
+
+    /**
+     * A <tt>RecordingEngine</tt> which may be deactivated.
+     */
+    private static class ConditionalEngine
+        extends RecordingEngine
+        implements ConditionalTransformEngine
+    {
+        boolean active = true;
+
+        ConditionalEngine(String name, List<String> log)
+        {
+            super(name, log);
+        }
+
+        @Override
+        public boolean isActive()
+        {
+            return active;
+        }
+    }
+
+    @BeforeClass
+    public static void setUp()
+    {
+        // The name is spelled out because referring to the constant would
+        // initialize the class before the property is set.
+        System.setProperty(
+                "org.jitsi.impl.neomedia.transform.TransformEngineChain"
+                    + ".SKIP_INACTIVE_ENGINES",
+                "true");
+        LibJitsi.start();
+    }
+
+    private final List<String> log = new ArrayList<>();
+
+    private final ConditionalEngine a = new ConditionalEngine("a", log);
+
+    private final ConditionalEngine b = new ConditionalEngine("b", log);
+
+    private final ConditionalEngine c = new ConditionalEngine("c", log);
+
+    private final TransformEngineChain chain
+        = new TransformEngineChain(new TransformEngine[] { a, b, c });
+
+    private static RawPacket[] makePackets()
+    {
+        return new RawPacket[] { RawPacket.makeRTP(1, 100, 1, 0, 100) };
+    }
+
+    @Test
+    public void testAllActive()
+    {
+        RawPacket[] pkts = makePackets();
+
+        assertSame(pkts, chain.getRTPTransformer().transform(pkts));
+        assertEquals(Arrays.asList("a", "b", "c"), log);
+        log.clear();
+        assertSame(pkts, chain.getRTPTransformer().reverseTransform(pkts));
+        assertEquals(Arrays.asList("c", "b", "a"), log);
+    }
+
+    @Test
+    public void testSkipsInactiveEngines()
+    {
+        b.active = false;
+        chain.getRTPTransformer().transform(makePackets());
+        assertEquals(Arrays.asList("a", "c"), log);
+        log.clear();
+        chain.getRTPTransformer().reverseTransform(makePackets());
+        assertEquals(Arrays.asList("c", "a"), log);
+
+        // Engines are consulted for every packet.
+        b.active = true;
+        log.clear();
+        chain.getRTPTransformer().transform(makePackets());
+        assertEquals(Arrays.asList("a", "b", "c"), log);
+    }
+
+    @Test
+    public void testStopsWhenNoPacketsLeft()
+    {
+        b.drop = true;
+
+        RawPacket[] pkts = chain.getRTPTransformer().transform(makePackets());
+
+        assertNull(pkts[0]);
+        assertEquals(Arrays.asList("a", "b"), log);
+        log.clear();
+        chain.getRTPTransformer().reverseTransform(makePackets());
+        assertEquals(Arrays.asList("c", "b"), log);
+    }
+
+    @Test
+    public void testTransformAfter()
+    {
+        TransformEngineChain.PacketTransformerChain transformer
+            = (TransformEngineChain.PacketTransformerChain)
+                chain.getRTPTransformer();
+
+        transformer.transform(makePackets(), a);
+        assertEquals(Arrays.asList("b", "c"), log);
+        log.clear();
+        transformer.transform(makePackets(), c);
+        assertEquals(Collections.<String>emptyList(), log);
+        log.clear();
+
+        // An engine which is not in the chain is ignored.
+        transformer.transform(makePackets(), new RecordingEngine("d", log));
+        assertEquals(Arrays.asList("a", "b", "c"), log);
+    }
+
+    @Test
+    public void testPlainEnginesAreNotSkipped()
+    {
+        RecordingEngine plain = new RecordingEngine("p", log);
+        TransformEngineChain chain
+            = new TransformEngineChain(new TransformEngine[] { a, plain });
+
+        a.active = false;
+        chain.getRTPTransformer().transform(makePackets());
+        assertEquals(Arrays.asList("p"), log);
+    }
+
+    @Test
+    public void testHeaderExtensionEnginesAreActiveWhenEnabled()
+    {
+        AbsSendTimeEngine absSendTime = new AbsSendTimeEngine();
+        OriginalHeaderBlockTransformEngine ohb
+            = new OriginalHeaderBlockTransformEngine();
+
+        assertFalse(absSendTime.isActive());
+        assertFalse(ohb.isActive());
+
+        absSendTime.setExtensionID(3);
+        ohb.setExtensionID((byte) 4);
+        assertTrue(absSendTime.isActive());
+        assertTrue(ohb.isActive());
+
+        absSendTime.setExtensionID(-1);
+        ohb.setExtensionID((byte) -1);
+        assertFalse(absSendTime.isActive());
+        assertFalse(ohb.isActive());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.dtls;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.security.*;
+import java.security.cert.*;
+
+import org.bouncycastle.asn1.*;
+import org.bouncycastle.asn1.sec.*;
+import org.bouncycastle.asn1.x509.*;
+import org.bouncycastle.asn1.x9.*;
+import org.jitsi.service.libjitsi.*;
+import org.junit.*;
+
+public class DtlsControlImplTest
+{
+    @BeforeClass
+    public static void setUp()
+    {
+        // KEY_TYPE_PNAME is a compile-time constant so referring to it does
+        // not initialize DtlsControlImpl before the property is set.
+        System.setProperty(
+                DtlsControlImpl.KEY_TYPE_PNAME,
+                DtlsControlImpl.KEY_TYPE_ECDSA);
+        LibJitsi.start();
+    }
+
+    /**
+     * Checks that a specific certificate generated by <tt>DtlsControlImpl</tt>
+     * is a self-signed ECDSA P-256 certificate and that its fingerprint is the
+     * SHA-256 hash of its DER encoding in the format of RFC 4572.
+     */
+    private static void checkCertificate(CertificateInfo certificateInfo)
+        throws Exception
+    {
+        assertTrue(certificateInfo.isECDSA());
+
+        org.bouncycastle.asn1.x509.Certificate certificate
+            = certificateInfo.getCertificate().getCertificateAt(0);
+        AlgorithmIdentifier keyAlgorithm
+            = certificate.getSubjectPublicKeyInfo().getAlgorithm();
+
+        // WebRTC endpoints reject explicit curve parameters.
+        assertEquals(
+                X9ObjectIdentifiers.id_ecPublicKey,
+                keyAlgorithm.getAlgorithm());
+        assertEquals(
+                SECObjectIdentifiers.secp256r1,
+                keyAlgorithm.getParameters());
+        assertEquals(
+                X9ObjectIdentifiers.ecdsa_with_SHA256,
+                certificate.getSignatureAlgorithm().getAlgorithm());
+
+        byte[] encoded = certificate.getEncoded(ASN1Encoding.DER);
+        X509Certificate x509Certificate
+            = (X509Certificate)
+                CertificateFactory.getInstance("X.509").generateCertificate(
+                        new ByteArrayInputStream(encoded));
+
+        x509Certificate.verify(x509Certificate.getPublicKey());
+        x509Certificate.checkValidity();
+
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(encoded);
+        StringBuilder fingerprint = new StringBuilder();
+
+        for (byte b : digest)
+        {
+            if (fingerprint.length() != 0)
+                fingerprint.append(':');
+            fingerprint.append(String.format("%02X", b & 0xff));
+        }
+        assertEquals("sha-256", certificateInfo.localFingerprintHashFunction);
+        assertEquals(fingerprint.toString(), certificateInfo.localFingerprint);
+    }
+
+    @Test
+    public void testECDSACertificateRotation()
+        throws Exception
+    {
+        assertEquals(DtlsControlImpl.KEY_TYPE_ECDSA, DtlsControlImpl.KEY_TYPE);
+
+        DtlsControlImpl dtlsControl = new DtlsControlImpl();
+        CertificateInfo certificateInfo = dtlsControl.getCertificateInfo();
+
+        checkCertificate(certificateInfo);
+        assertEquals(
+                certificateInfo.localFingerprint,
+                dtlsControl.getLocalFingerprint());
+        assertEquals(
+                certificateInfo.localFingerprintHashFunction,
+                dtlsControl.getLocalFingerprintHashFunction());
+
+        // Until the certificate is rotated, it is shared by new instances.
+        DtlsControlImpl dtlsControl2 = new DtlsControlImpl();
+
+        assertSame(certificateInfo, dtlsControl2.getCertificateInfo());
+
+        new DtlsControlImpl.CertificateRotator(certificateInfo).run();
+
+        DtlsControlImpl dtlsControl3 = new DtlsControlImpl();
+        CertificateInfo rotatedCertificateInfo
+            = dtlsControl3.getCertificateInfo();
+
+        assertNotSame(certificateInfo, rotatedCertificateInfo);
+        checkCertificate(rotatedCertificateInfo);
+        assertFalse(
+                certificateInfo.localFingerprint.equals(
+                        rotatedCertificateInfo.localFingerprint));
+        assertEquals(
+                rotatedCertificateInfo.localFingerprint,
+                dtlsControl3.getLocalFingerprint());
+
+        // The existing instances keep the certificate which they have
+        // advertised.
+        assertSame(certificateInfo, dtlsControl.getCertificateInfo());
+        assertEquals(
+                certificateInfo.localFingerprint,
+                dtlsControl.getLocalFingerprint());
+
+        dtlsControl.cleanup(null);
+        dtlsControl2.cleanup(null);
+        dtlsControl3.cleanup(null);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.dtls;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.Test;
+
+public class DtlsHandshakeExecutorTest
+{
+    @Test
+    public void testBoundedQueue()
+        throws Exception
+    {
+        DtlsHandshakeExecutor executor = new DtlsHandshakeExecutor(1, 1, 1);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable handshake
+            = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runs.incrementAndGet();
+                    running.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+        Future<?> first = executor.submit(handshake);
+
+        running.await();
+
+        Future<?> queued = executor.submit(handshake);
+
+        assertEquals(1, executor.getActiveHandshakeCount());
+        assertEquals(1, executor.getQueuedHandshakeCount());
+
+        // The single thread is busy and the queue is full but a handshake
+        // still completes (on a dedicated thread).
+        final AtomicReference<Thread> overflowThread = new AtomicReference<>();
+        Future<?> overflow
+            = executor.submit(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            overflowThread.set(Thread.currentThread());
+                            runs.incrementAndGet();
+                        }
+                    });
+
+        overflow.get(5, TimeUnit.SECONDS);
+        assertEquals(1, executor.getRejectedHandshakeCount());
+        assertEquals(1, executor.getActiveHandshakeCount());
+        assertEquals(1, executor.getQueuedHandshakeCount());
+        assertTrue(overflowThread.get().isDaemon());
+
+        // A cancelled handshake leaves the queue and never runs.
+        executor.cancel(queued);
+        assertEquals(0, executor.getQueuedHandshakeCount());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        Future<?> next = executor.submit(handshake);
+
+        next.get(5, TimeUnit.SECONDS);
+        assertEquals(3, runs.get());
+        assertEquals(3, executor.getHandshakeCount());
+        assertTrue(executor.getMaxHandshakeNanos() > 0);
+        assertTrue(
+                executor.getMaxHandshakeNanos()
+                    >= executor.getAverageHandshakeNanos());
+    }
+
+    @Test
+    public void testBoundedOverflowThreads()
+        throws Exception
+    {
+        DtlsHandshakeExecutor executor = new DtlsHandshakeExecutor(1, 1, 1);
+        final CountDownLatch running = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable handshake
+            = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runs.incrementAndGet();
+                    running.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+        // The single thread of the pool and the single dedicated thread are
+        // busy and the queue is full.
+        Future<?> first = executor.submit(handshake);
+        Future<?> queued = executor.submit(handshake);
+        Future<?> overflow = executor.submit(handshake);
+
+        running.await();
+
+        // Past the bounds a handshake fails right away and never runs.
+        Future<?> dropped = executor.submit(handshake);
+
+        assertTrue(dropped.isCancelled());
+        assertEquals(2, executor.getRejectedHandshakeCount());
+        assertEquals(1, executor.getDroppedHandshakeCount());
+        assertEquals(1, executor.getFailedHandshakeCount());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        overflow.get(5, TimeUnit.SECONDS);
+        assertEquals(3, runs.get());
+
+        // The dropped handshake does not keep later ones from running.
+        Future<?> queuedAgain = executor.submit(handshake);
+
+        queuedAgain.get(5, TimeUnit.SECONDS);
+        assertEquals(4, runs.get());
+        assertEquals(1, executor.getDroppedHandshakeCount());
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.fec;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.jitsi.service.libjitsi.*;
+import org.jitsi.service.neomedia.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FlexFECTest
+{
+    private static final long MEDIA_SSRC = 0x11223344L;
+
+    private static final long REPAIR_SSRC = 0x55667788L;
+
+    private static final byte REPAIR_PT = 112;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        LibJitsi.start();
+    }
+
+    private static RawPacket createMedia(int seq, Random random)
+    {
+        int len = RawPacket.FIXED_HEADER_SIZE + 20 + random.nextInt(1000);
+        byte[] buf = new byte[len];
+
+        random.nextBytes(buf);
+        buf[0] = (byte) 0x80;
+        buf[1] = (byte) (100 | (random.nextBoolean() ? 0x80 : 0));
+
+        RawPacket pkt = new RawPacket(buf, 0, len);
+
+        pkt.setSequenceNumber(seq);
+        pkt.setSSRC((int) MEDIA_SSRC);
+        return pkt;
+    }
+
+    private static byte[] toArray(RawPacket pkt)
+    {
+        return Arrays.copyOfRange(
+                pkt.getBuffer(),
+                pkt.getOffset(),
+                pkt.getOffset() + pkt.getLength());
+    }
+
+    /**
+     * Sends 200 media packets with a specific protection, drops the media
+     * packets with the specified indices and checks that exactly the dropped
+     * packets are recovered unchanged.
+     */
+    private static void roundTrip(
+            int columns, int rows, boolean rowRepairs,
+            int[] dropped)
+    {
+        Random random = new Random(columns * 31 + rows);
+        FlexFECSender sender
+            = new FlexFECSender(
+                    MEDIA_SSRC,
+                    REPAIR_SSRC,
+                    new AtomicInteger(1000),
+                    REPAIR_PT);
+        FlexFECReceiver receiver
+            = new FlexFECReceiver(MEDIA_SSRC, REPAIR_PT);
+        Map<Integer, byte[]> sent = new HashMap<>();
+        Set<Integer> drop = new HashSet<>();
+        Map<Integer, byte[]> recovered = new HashMap<>();
+        int repairs = 0;
+
+        for (int i : dropped)
+            drop.add(65500 + i & 0xffff);
+        sender.setProtection(columns, rows, rowRepairs);
+
+        for (int i = 0; i < 200; i++)
+        {
+            int seq = (65500 + i) & 0xffff;
+            RawPacket media = createMedia(seq, random);
+
+            sent.put(seq, toArray(media));
+
+            RawPacket[] pkts = sender.transform(new RawPacket[] { media });
+
+            for (RawPacket pkt : pkts)
+            {
+                if (pkt.getSSRCAsLong() == REPAIR_SSRC)
+                    repairs++;
+                else if (drop.contains(pkt.getSequenceNumber()))
+                    continue;
+
+                RawPacket[] out
+                    = receiver.reverseTransform(new RawPacket[] { pkt });
+
+                for (RawPacket o : out)
+                {
+                    if (o == null || o == pkt)
+                        continue;
+                    recovered.put(o.getSequenceNumber(), toArray(o));
+                }
+            }
+        }
+
+        assertTrue(repairs > 0);
+        assertEquals(drop, recovered.keySet());
+        for (Map.Entry<Integer, byte[]> e : recovered.entrySet())
+            assertArrayEquals(sent.get(e.getKey()), e.getValue());
+        assertEquals(drop.size(), receiver.getRecoveredCount());
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testRowRecovery()
+    {
+        // One loss per row of 10.
+        roundTrip(10, 0, true, new int[] { 3, 15, 36, 40, 199 });
+    }
+
+    @Test
+    public void testColumnRecovery()
+    {
+        // A burst of 5 in a block of 5 columns and 4 rows.
+        roundTrip(5, 4, false, new int[] { 20, 21, 22, 23, 24, 61 });
+    }
+
+    @Test
+    public void test2DRecovery()
+    {
+        // Three losses in a row and two in a column of the same 4x4 block,
+        // which neither the rows nor the columns alone can recover.
+        roundTrip(4, 4, true, new int[] { 0, 1, 2, 4, 40 });
+    }
+
+    @Test
+    public void testClosedSenderAddsNoRepairs()
+    {
+        FlexFECSender sender
+            = new FlexFECSender(
+                    MEDIA_SSRC,
+                    REPAIR_SSRC,
+                    new AtomicInteger(1000),
+                    REPAIR_PT);
+        Random random = new Random(2);
+
+        sender.setProtection(2, 0, true);
+        sender.transform(new RawPacket[] { createMedia(1, random) });
+        sender.close();
+
+        // The packet would complete the row.
+        RawPacket[] pkts = new RawPacket[] { createMedia(2, random) };
+
+        assertSame(pkts, sender.transform(pkts));
+        sender.close();
+    }
+
+    @Test
+    public void testFlexFecSSRCChangeAndClose()
+    {
+        FECTransformEngine engine = new FECTransformEngine();
+        Random random = new Random(3);
+        int seq = 0;
+
+        engine.setFlexFecOutgoingPT(REPAIR_PT);
+        engine.setFlexFecProtection(2, 0, true);
+
+        // No repair packets are sent until the SSRC is set.
+        assertEquals(
+                1,
+                engine.transform(
+                        new RawPacket[] { createMedia(seq++, random) })
+                    .length);
+        assertEquals(
+                1,
+                engine.transform(
+                        new RawPacket[] { createMedia(seq++, random) })
+                    .length);
+
+        engine.setFlexFecSSRC(REPAIR_SSRC);
+        engine.transform(new RawPacket[] { createMedia(seq++, random) });
+
+        RawPacket[] pkts
+            = engine.transform(new RawPacket[] { createMedia(seq++, random) });
+
+        assertEquals(2, pkts.length);
+        assertEquals(REPAIR_SSRC, pkts[1].getSSRCAsLong());
+
+        // The repair packets are sent with the new SSRC.
+        engine.setFlexFecSSRC(REPAIR_SSRC + 1);
+        engine.transform(new RawPacket[] { createMedia(seq++, random) });
+        pkts = engine.transform(new RawPacket[] { createMedia(seq++, random) });
+        assertEquals(2, pkts.length);
+        assertEquals(REPAIR_SSRC + 1, pkts[1].getSSRCAsLong());
+
+        // A closed engine leaves the packets unchanged.
+        engine.transform(new RawPacket[] { createMedia(seq++, random) });
+        engine.close();
+        pkts = new RawPacket[] { createMedia(seq++, random) };
+        assertSame(pkts, engine.transform(pkts));
+    }
+
+    @Test
+    public void testXor()
+    {
+        Random random = new Random(1);
+
+        for (int len = 0; len < 40; len++)
+        {
+            byte[] src = new byte[len + 3];
+            byte[] dst = new byte[len + 5];
+
+            random.nextBytes(src);
+            random.nextBytes(dst);
+
+            byte[] expected = dst.clone();
+
+            for (int i = 0; i < len; i++)
+                expected[5 + i] ^= src[3 + i];
+            FlexFECPacket.xor(src, 3, dst, 5, len);
+            assertArrayEquals(expected, dst);
+        }
+    }
+
+    @Test
+    public void testUnsupportedRepairIsDropped()
+    {
+        FlexFECReceiver receiver
+            = new FlexFECReceiver(MEDIA_SSRC, REPAIR_PT);
+        byte[] buf = new byte[FlexFECPacket.PAYLOAD_OFFSET + 10];
+        RawPacket repair = new RawPacket(buf, 0, buf.length);
+
+        buf[0] = (byte) 0x81;
+        buf[1] = REPAIR_PT;
+        repair.setSSRC((int) REPAIR_SSRC);
+        buf[RawPacket.FIXED_HEADER_SIZE] = 0x11;
+        buf[RawPacket.FIXED_HEADER_SIZE + 1] = 0x22;
+        buf[RawPacket.FIXED_HEADER_SIZE + 2] = 0x33;
+        buf[RawPacket.FIXED_HEADER_SIZE + 3] = 0x44;
+        // F = 0 (flexible mask).
+        buf[FlexFECPacket.RTP_HEADER_LENGTH] = 0;
+
+        RawPacket[] out
+            = receiver.reverseTransform(new RawPacket[] { repair });
+
+        assertNull(out[0]);
+        assertEquals(1, receiver.getUnsupportedCount());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ReplayWindowTest
+{
+    @Test
+    public void testReplayedAndTooOld()
+    {
+        ReplayWindow window = new ReplayWindow(1024);
+
+        for (long index = 0; index < 2000; index += 2)
+        {
+            assertEquals(ReplayWindow.ACCEPTED, window.check(index));
+            window.update(index);
+        }
+
+        // Late packets inside the window are accepted once.
+        assertEquals(ReplayWindow.ACCEPTED, window.check(1997));
+        window.update(1997);
+        assertEquals(ReplayWindow.REPLAYED, window.check(1997));
+        assertEquals(ReplayWindow.REPLAYED, window.check(1998));
+        assertEquals(ReplayWindow.ACCEPTED, window.check(1998 - 1023));
+        assertEquals(ReplayWindow.TOO_OLD, window.check(1998 - 1024));
+
+        assertEquals(2, window.getReplayedPacketCount());
+        assertEquals(1, window.getTooOldPacketCount());
+    }
+
+    @Test
+    public void testJump()
+    {
+        ReplayWindow window = new ReplayWindow(128);
+
+        window.update(5);
+        window.update(70);
+
+        // Jumping further than the window forgets all the packets before it.
+        window.update(100000);
+        assertEquals(ReplayWindow.TOO_OLD, window.check(70));
+        assertEquals(ReplayWindow.ACCEPTED, window.check(100000 - 64));
+        assertEquals(ReplayWindow.ACCEPTED, window.check(100000 - 127));
+        assertEquals(ReplayWindow.REPLAYED, window.check(100000));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.util.*;
+import org.junit.Test;
+
+/**
+ * Checks that the crypto contexts drop the packets which they are asked to
+ * transform after they have been closed (and their session keys zeroed)
+ * rather than emit them protected with zeroed keys.
+ */
+public class SRTPCryptoContextCloseTest
+{
+    private static final int SSRC = 0x10000;
+
+    private static SRTPContextFactory createFactory()
+    {
+        byte[] masterKey = new byte[16];
+        byte[] masterSalt = new byte[14];
+
+        for (int i = 0; i < masterKey.length; i++)
+            masterKey[i] = (byte) i;
+        for (int i = 0; i < masterSalt.length; i++)
+            masterSalt[i] = (byte) (0xA0 + i);
+
+        SRTPPolicy policy
+            = new SRTPPolicy(
+                    SRTPPolicy.AESCM_ENCRYPTION, 16,
+                    SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10,
+                    14);
+
+        return
+            new SRTPContextFactory(
+                    true,
+                    masterKey, masterSalt,
+                    policy, policy);
+    }
+
+    private static RawPacket createRTPPacket(int seq)
+    {
+        byte[] buf = new byte[12 + 20 + 32];
+
+        buf[0] = (byte) 0x80;
+        buf[1] = (byte) 111;
+        buf[2] = (byte) (seq >> 8);
+        buf[3] = (byte) seq;
+        RTPUtils.writeInt(buf, 8, SSRC);
+        for (int i = 12; i < 32; i++)
+            buf[i] = (byte) i;
+        return new RawPacket(buf, 0, 32);
+    }
+
+    private static RawPacket createRTCPPacket()
+    {
+        // An empty receiver report.
+        byte[] buf = new byte[8 + 32];
+
+        buf[0] = (byte) 0x80;
+        buf[1] = (byte) 201;
+        buf[3] = 1;
+        RTPUtils.writeInt(buf, 4, SSRC);
+        return new RawPacket(buf, 0, 8);
+    }
+
+    private static byte[] getData(RawPacket pkt)
+    {
+        return
+            Arrays.copyOfRange(
+                    pkt.getBuffer(),
+                    pkt.getOffset(),
+                    pkt.getOffset() + pkt.getLength());
+    }
+
+    @Test
+    public void testSRTPTransformAfterClose()
+    {
+        SRTPContextFactory factory = createFactory();
+        SRTPCryptoContext context
+            = factory.getDefaultContext().deriveContext(SSRC, 0, 0);
+
+        context.deriveSrtpKeys(0);
+        assertTrue(context.transformPacket(createRTPPacket(0)));
+
+        context.close();
+
+        RawPacket pkt = createRTPPacket(1);
+        byte[] data = getData(pkt);
+
+        assertFalse(context.transformPacket(pkt));
+        assertArrayEquals(data, getData(pkt));
+        assertFalse(context.reverseTransformPacket(pkt));
+        factory.close();
+    }
+
+    @Test
+    public void testSRTCPTransformAfterClose()
+    {
+        SRTPContextFactory factory = createFactory();
+        SRTCPCryptoContext context
+            = factory.getDefaultContextControl().deriveContext(SSRC);
+
+        context.deriveSrtcpKeys();
+        assertTrue(context.transformPacket(createRTCPPacket()));
+
+        context.close();
+
+        RawPacket pkt = createRTCPPacket();
+        byte[] data = getData(pkt);
+
+        assertFalse(context.transformPacket(pkt));
+        assertArrayEquals(data, getData(pkt));
+        factory.close();
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import javax.xml.bind.DatatypeConverter;
+import org.jitsi.service.libjitsi.LibJitsi;
+import org.jitsi.service.neomedia.RawPacket;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SRTPCryptoContextGCMTest
+{
+    // RFC 7714 section 16.1 and 17.1 (AEAD_AES_128_GCM) and 16.2 and 17.2
+    // (AEAD_AES_256_GCM) test vectors. The keys and the salt are session
+    // keys.
+    public static final byte[] TV_Key_128 =
+        DatatypeConverter.parseHexBinary("000102030405060708090A0B0C0D0E0F");
+
+    public static final byte[] TV_Key_256 =
+        DatatypeConverter.parseHexBinary("000102030405060708090A0B0C0D0E0F"
+            + "101112131415161718191A1B1C1D1E1F");
+
+    public static final byte[] TV_Salt =
+        DatatypeConverter.parseHexBinary("517569642070726F2071756F");
+
+    public static final byte[] TV_RTP =
+        DatatypeConverter.parseHexBinary("8040F17B8041F8D35501A0B2"
+            + "47616C6C696120657374206F6D6E6973"
+            + "2064697669736120696E207061727465"
+            + "732074726573");
+
+    // The IV of TV_RTP i.e. the salt XORed with its SSRC, ROC (zero) and
+    // sequence number.
+    public static final byte[] TV_RTP_IV =
+        DatatypeConverter.parseHexBinary("51753C6580C2726F20718414");
+
+    public static final byte[] TV_SRTP_128 =
+        DatatypeConverter.parseHexBinary("8040F17B8041F8D35501A0B2"
+            + "F24DE3A3FB34DE6CACBA861C9D7E4BCA"
+            + "BE633BD50D294E6F42A5F47A51C7D19B"
+            + "36DE3ADF8833899D7F27BEB16A9152CF"
+            + "765EE4390CCE");
+
+    public static final byte[] TV_SRTP_256 =
+        DatatypeConverter.parseHexBinary("8040F17B8041F8D35501A0B2"
+            + "32B1DE78A822FE12EF9F78FA332E33AA"
+            + "B18012389A58E2F3B50B2A0276FFAE0F"
+            + "1BA63799B87B7AA3DB36DFFFD6B0F9BB"
+            + "7878D7A76C13");
+
+    // The SRTCP index of TV_RTCP.
+    public static final int TV_RTCP_Index = 0x05D4;
+
+    public static final byte[] TV_RTCP =
+        DatatypeConverter.parseHexBinary("81C8000D4D617273"
+            + "4E5450314E545032525450200000042A"
+            + "0000E9304C756E61DEADBEEFDEADBEEF"
+            + "DEADBEEFDEADBEEFDEADBEEF");
+
+    // The IV of TV_RTCP i.e. the salt XORed with its SSRC and SRTCP index.
+    public static final byte[] TV_RTCP_IV =
+        DatatypeConverter.parseHexBinary("517524055203726F207170BB");
+
+    // The associated data of TV_RTCP i.e. its first 8 bytes followed by the E
+    // flag and the SRTCP index.
+    public static final byte[] TV_RTCP_AAD =
+        DatatypeConverter.parseHexBinary("81C8000D4D617273800005D4");
+
+    public static final byte[] TV_SRTCP_128 =
+        DatatypeConverter.parseHexBinary("81C8000D4D617273"
+            + "63E94885DCDAB67CA727D7662F6B7E99"
+            + "7FF5C0F76C06F32DC676A5F1730D6FDA"
+            + "4CE09B4686303DED0BB9275BC84AA458"
+            + "96CF4D2FC5ABF87245D9EADE800005D4");
+
+    public static final byte[] TV_SRTCP_256 =
+        DatatypeConverter.parseHexBinary("81C8000D4D617273"
+            + "D50AE4D1F5CE5D304BA297E47D470C28"
+            + "2C3ECE5DBFFE0A50A2EAA5C1110555BE"
+            + "8415F658C61DE0476F1B6FAD1D1EB30C"
+            + "4446839F57FF6F6CB26AC3BE800005D4");
+
+    @BeforeClass
+    public static void setUp()
+    {
+        LibJitsi.start();
+    }
+
+    private static SRTPPolicy createPolicy(int keyLength)
+    {
+        return
+            new SRTPPolicy(
+                    SRTPPolicy.AESGCM_ENCRYPTION, keyLength,
+                    SRTPPolicy.NULL_AUTHENTICATION, 0,
+                    SRTPCipherGCM.TAG_LENGTH,
+                    TV_Salt.length);
+    }
+
+    private static SRTPCryptoContext createSRTPContext(
+            boolean sender,
+            byte[] key)
+    {
+        SRTPPolicy policy = createPolicy(key.length);
+        SRTPCryptoContext context
+            = new SRTPCryptoContext(
+                    sender,
+                    0x5501A0B2, 0, 0,
+                    new byte[key.length], new byte[TV_Salt.length],
+                    policy);
+
+        context.setSessionKeys(key, TV_Salt);
+        return context;
+    }
+
+    private static SRTCPCryptoContext createSRTCPContext(byte[] key)
+    {
+        SRTPPolicy policy = createPolicy(key.length);
+        SRTCPCryptoContext context
+            = new SRTCPCryptoContext(
+                    0x4D617273,
+                    new byte[key.length], new byte[TV_Salt.length],
+                    policy);
+
+        context.setSessionKeys(key, TV_Salt);
+        return context;
+    }
+
+    private static RawPacket createPacket(byte[] data)
+    {
+        return new RawPacket(data.clone(), 0, data.length);
+    }
+
+    private static byte[] getData(RawPacket pkt)
+    {
+        return
+            Arrays.copyOfRange(
+                    pkt.getBuffer(),
+                    pkt.getOffset(),
+                    pkt.getOffset() + pkt.getLength());
+    }
+
+    private static void testCipher(SRTPCipherGCM cipher)
+    {
+        cipher.init(TV_Key_128);
+
+        // SRTP: the RTP header is the associated data.
+        byte[] data = Arrays.copyOf(TV_RTP, TV_SRTP_128.length);
+
+        cipher.encrypt(TV_RTP_IV, data, 0, 12, data, 12, TV_RTP.length - 12);
+        assertArrayEquals(TV_SRTP_128, data);
+        assertTrue(
+                cipher.decrypt(
+                        TV_RTP_IV,
+                        data, 0, 12,
+                        data, 12, TV_SRTP_128.length - 12));
+        assertArrayEquals(
+                TV_RTP,
+                Arrays.copyOf(data, TV_RTP.length));
+
+        // SRTCP: the first 8 bytes, the E flag and the SRTCP index are the
+        // associated data.
+        data = Arrays.copyOf(TV_RTCP, TV_SRTCP_128.length - 4);
+        cipher.encrypt(
+                TV_RTCP_IV,
+                TV_RTCP_AAD, 0, TV_RTCP_AAD.length,
+                data, 8, TV_RTCP.length - 8);
+        assertArrayEquals(
+                Arrays.copyOf(TV_SRTCP_128, TV_SRTCP_128.length - 4),
+                data);
+
+        // The associated data is authenticated.
+        byte[] aad = TV_RTCP_AAD.clone();
+
+        aad[11] ^= 1;
+        assertFalse(
+                cipher.decrypt(
+                        TV_RTCP_IV,
+                        aad, 0, aad.length,
+                        data, 8, data.length - 8));
+    }
+
+    @Test
+    public void testJavaGCM()
+    {
+        testCipher(new SRTPCipherGCMJava());
+    }
+
+    @Test
+    public void testJCEGCM()
+        throws Exception
+    {
+        testCipher(new SRTPCipherGCMJCE());
+    }
+
+    private static void testSRTP(byte[] key, byte[] srtp)
+    {
+        SRTPCryptoContext sender = createSRTPContext(true, key);
+        RawPacket pkt = createPacket(TV_RTP);
+
+        assertTrue(sender.transformPacket(pkt));
+        assertArrayEquals(srtp, getData(pkt));
+
+        SRTPCryptoContext receiver = createSRTPContext(false, key);
+
+        pkt = createPacket(srtp);
+        assertTrue(receiver.reverseTransformPacket(pkt));
+        assertArrayEquals(TV_RTP, getData(pkt));
+
+        // The header is authenticated as the associated data, the payload and
+        // the tag as the ciphertext.
+        for (int i : new int[] { 3, 12, srtp.length - 1 })
+        {
+            byte[] tampered = srtp.clone();
+
+            tampered[i] ^= 1;
+            pkt = createPacket(tampered);
+            assertFalse(
+                    "byte " + i,
+                    createSRTPContext(false, key).reverseTransformPacket(pkt));
+        }
+    }
+
+    @Test
+    public void testSRTP128()
+    {
+        testSRTP(TV_Key_128, TV_SRTP_128);
+    }
+
+    @Test
+    public void testSRTP256()
+    {
+        testSRTP(TV_Key_256, TV_SRTP_256);
+    }
+
+    private static void testSRTCP(byte[] key, byte[] srtcp)
+    {
+        SRTCPCryptoContext sender = createSRTCPContext(key);
+
+        // Advance the SRTCP index of the sender to that of the test vector.
+        for (int i = 0; i < TV_RTCP_Index; i++)
+            sender.transformPacket(createPacket(TV_RTCP));
+
+        RawPacket pkt = createPacket(TV_RTCP);
+
+        sender.transformPacket(pkt);
+        assertArrayEquals(srtcp, getData(pkt));
+
+        SRTCPCryptoContext receiver = createSRTCPContext(key);
+
+        pkt = createPacket(srtcp);
+        assertTrue(receiver.reverseTransformPacket(pkt));
+        assertArrayEquals(TV_RTCP, getData(pkt));
+
+        // The first 8 bytes and the SRTCP index are authenticated as the
+        // associated data, the payload and the tag as the ciphertext.
+        for (int i : new int[] { 7, 8, srtcp.length - 5, srtcp.length - 1 })
+        {
+            byte[] tampered = srtcp.clone();
+
+            tampered[i] ^= 1;
+            pkt = createPacket(tampered);
+            assertFalse(
+                    "byte " + i,
+                    createSRTCPContext(key).reverseTransformPacket(pkt));
+        }
+    }
+
+    @Test
+    public void testSRTCP128()
+    {
+        testSRTCP(TV_Key_128, TV_SRTCP_128);
+    }
+
+    @Test
+    public void testSRTCP256()
+    {
+        testSRTCP(TV_Key_256, TV_SRTCP_256);
+    }
+}
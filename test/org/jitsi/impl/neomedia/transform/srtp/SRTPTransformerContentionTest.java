@@ -0,0 +1,267 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.neomedia.transform.srtp;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jitsi.service.neomedia.*;
+import org.junit.Test;
+
+/**
+ * Runs multiple threads through a single pair of <tt>SRTPTransformer</tt>s
+ * with packets of a single SSRC (so that the threads share one crypto context
+ * on each side and outnumber its <tt>Scratch</tt> instances) and checks that
+ * the packets are encrypted exactly as by a single thread and decrypted back
+ * to the originals.
+ */
+public class SRTPTransformerContentionTest
+{
+    private static final byte[] MASTER_KEY = new byte[16];
+
+    private static final byte[] MASTER_SALT = new byte[14];
+
+    /**
+     * The number of packets. Their sequence numbers do not wrap around so
+     * that the reordering of the threads cannot make the contexts guess a
+     * wrong rollover counter.
+     */
+    private static final int PACKET_COUNT = 30000;
+
+    private static final int PAYLOAD_LENGTH = 160;
+
+    private static final int SSRC = 0x10000;
+
+    private static final int THREAD_COUNT
+        = Math.max(8, Runtime.getRuntime().availableProcessors());
+
+    static
+    {
+        for (int i = 0; i < MASTER_KEY.length; i++)
+            MASTER_KEY[i] = (byte) i;
+        for (int i = 0; i < MASTER_SALT.length; i++)
+            MASTER_SALT[i] = (byte) (0xA0 + i);
+    }
+
+    private static SRTPContextFactory createFactory(boolean sender)
+    {
+        SRTPPolicy srtpPolicy
+            = new SRTPPolicy(
+                    SRTPPolicy.AESCM_ENCRYPTION, 16,
+                    SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10,
+                    14);
+        SRTPPolicy srtcpPolicy
+            = new SRTPPolicy(
+                    SRTPPolicy.AESCM_ENCRYPTION, 16,
+                    SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10,
+                    14);
+
+        return
+            new SRTPContextFactory(
+                    sender,
+                    MASTER_KEY, MASTER_SALT,
+                    srtpPolicy, srtcpPolicy);
+    }
+
+    private static RawPacket createPacket(int seq)
+    {
+        // Leave room for the authentication tag.
+        byte[] buf = new byte[12 + PAYLOAD_LENGTH + 32];
+
+        buf[0] = (byte) 0x80;
+        buf[1] = (byte) 111;
+        buf[2] = (byte) (seq >> 8);
+        buf[3] = (byte) seq;
+        buf[8] = (byte) (SSRC >> 24);
+        buf[9] = (byte) (SSRC >> 16);
+        buf[10] = (byte) (SSRC >> 8);
+        buf[11] = (byte) SSRC;
+        for (int i = 0; i < PAYLOAD_LENGTH; i++)
+            buf[12 + i] = (byte) (seq + i);
+        return new RawPacket(buf, 0, 12 + PAYLOAD_LENGTH);
+    }
+
+    private static byte[] getData(RawPacket pkt)
+    {
+        return
+            Arrays.copyOfRange(
+                    pkt.getBuffer(),
+                    pkt.getOffset(),
+                    pkt.getOffset() + pkt.getLength());
+    }
+
+    /**
+     * Runs a specific task on {@link #THREAD_COUNT} threads which start at the
+     * same time and waits for them to finish.
+     */
+    private static void runConcurrently(final Runnable task)
+        throws Exception
+    {
+        final CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+        final AtomicReference<Throwable> error
+            = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>(THREAD_COUNT);
+
+        for (int t = 0; t < THREAD_COUNT; t++)
+        {
+            Thread thread
+                = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            barrier.await();
+                            task.run();
+                        }
+                        catch (Throwable t)
+                        {
+                            error.compareAndSet(null, t);
+                        }
+                    }
+                };
+
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(60000);
+            assertFalse("timed out", thread.isAlive());
+        }
+        if (error.get() != null)
+            throw new AssertionError(error.get());
+    }
+
+    @Test
+    public void testConcurrentPacketsOfOneSSRC()
+        throws Exception
+    {
+        final SRTPTransformer sender = new SRTPTransformer(createFactory(true));
+        final SRTPTransformer receiver
+            = new SRTPTransformer(createFactory(false));
+        final byte[][] srtp = new byte[PACKET_COUNT][];
+        final AtomicInteger nextSeq = new AtomicInteger();
+
+        // The threads take the sequence numbers in order but transform the
+        // packets in whatever order they are scheduled.
+        runConcurrently(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        int seq;
+
+                        while ((seq = nextSeq.getAndIncrement())
+                                < PACKET_COUNT)
+                        {
+                            RawPacket pkt = sender.transform(createPacket(seq));
+
+                            // The sender applies the replay check of the
+                            // receiver to its packets as a consistency check
+                            // so a thread which is delayed for too long may
+                            // have its packet dropped.
+                            if (pkt != null)
+                                srtp[seq] = getData(pkt);
+                        }
+                    }
+                });
+
+        // The packets are encrypted with their own indexes and keystreams.
+        SRTPTransformer reference = new SRTPTransformer(createFactory(true));
+        int sent = 0;
+
+        for (int seq = 0; seq < PACKET_COUNT; seq++)
+        {
+            byte[] expected = getData(reference.transform(createPacket(seq)));
+
+            if (srtp[seq] != null)
+            {
+                assertArrayEquals("seq " + seq, expected, srtp[seq]);
+                sent++;
+            }
+        }
+        assertEquals(PACKET_COUNT - sent, sender.getTooOldPacketCount());
+
+        final boolean[] decrypted = new boolean[PACKET_COUNT];
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+
+        nextSeq.set(0);
+        runConcurrently(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        int seq;
+
+                        while ((seq = nextSeq.getAndIncrement())
+                                < PACKET_COUNT)
+                        {
+                            if (srtp[seq] == null)
+                                continue;
+
+                            RawPacket pkt
+                                = receiver.reverseTransform(
+                                        new RawPacket(
+                                                srtp[seq].clone(),
+                                                0,
+                                                srtp[seq].length));
+
+                            if (pkt == null)
+                            {
+                                rejected.incrementAndGet();
+                            }
+                            else
+                            {
+                                assertArrayEquals(
+                                        "seq " + seq,
+                                        getData(createPacket(seq)),
+                                        getData(pkt));
+                                decrypted[seq] = true;
+                                received.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+
+        // Every packet is either decrypted or rejected as too old (if its
+        // thread is delayed for too long) but never as a replay or a forgery.
+        assertEquals(sent, received.get() + rejected.get());
+        assertEquals(rejected.get(), receiver.getTooOldPacketCount());
+        assertEquals(0, receiver.getReplayedPacketCount());
+
+        // The replay check works the same when the threads no longer contend.
+        int seq = PACKET_COUNT - 1;
+
+        while (!decrypted[seq])
+            seq--;
+        assertNull(
+                receiver.reverseTransform(
+                        new RawPacket(srtp[seq].clone(), 0, srtp[seq].length)));
+        assertEquals(1, receiver.getReplayedPacketCount());
+
+        sender.close();
+        receiver.close();
+        reference.close();
+    }
+}
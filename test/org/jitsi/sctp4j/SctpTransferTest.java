@@ -19,8 +19,10 @@
 import static org.junit.Assert.*;
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import static org.junit.Assert.assertArrayEquals;
 
@@ -92,6 +94,64 @@ public static byte[] createRandomData(int size)
         return dummy;
     }
 
+    /**
+     * Tests the transfer of data from and to direct <tt>ByteBuffer</tt>s
+     * through a <tt>BufferNetworkLink</tt>.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBufferTransfer()
+        throws Exception
+    {
+        BufferLink link = new BufferLink(peerA, peerB);
+
+        peerA.setLink(link);
+        peerB.setLink(link);
+
+        peerA.connect(portB);
+        peerB.connect(portA);
+
+        byte[] testData = createRandomData(16 * 1024);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(testData.length);
+        final CountDownLatch dataReceivedLatch = new CountDownLatch(1);
+
+        buffer.put(testData).flip();
+        peerB.setBufferDataCallback(
+            new SctpBufferDataCallback()
+            {
+                @Override
+                public void onSctpPacket(
+                        ByteBuffer data,
+                        int sid,
+                        int ssn,
+                        int tsn,
+                        long ppid,
+                        int context,
+                        int flags)
+                {
+                    receivedData = new byte[data.remaining()];
+                    data.get(receivedData);
+                    dataReceivedLatch.countDown();
+                }
+            });
+
+        try
+        {
+            assertEquals(testData.length, peerA.send(buffer, true, 0, 0));
+            assertFalse(buffer.hasRemaining());
+            assertTrue(
+                    dataReceivedLatch.await(SECONDS_TO_WAIT, TimeUnit.SECONDS));
+            assertArrayEquals(testData, receivedData);
+            // The DATA chunks of the message are sent in batches.
+            assertTrue(link.batchCount.get() > 0);
+        }
+        finally
+        {
+            link.executor.shutdown();
+        }
+    }
+
     /**
      * Tests the transfer with random link failures and packet loss.
      *
@@ -174,4 +234,66 @@ public void onSctpPacket(
             throw ie;
         }
     }
+
+    /**
+     * Delivers the network packets of two <tt>SctpSocket</tt>s to each other
+     * from <tt>ByteBuffer</tt>s on a single thread.
+     */
+    private static class BufferLink
+        implements BufferNetworkLink
+    {
+        private final SctpSocket a;
+
+        private final SctpSocket b;
+
+        final AtomicInteger batchCount = new AtomicInteger();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        BufferLink(SctpSocket a, SctpSocket b)
+        {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public void onConnOut(SctpSocket s, byte[] packet)
+        {
+            onConnOut(s, ByteBuffer.wrap(packet));
+        }
+
+        @Override
+        public void onConnOut(SctpSocket s, ByteBuffer packet)
+        {
+            final SctpSocket dest = (s == a) ? b : a;
+            final ByteBuffer copy
+                = ByteBuffer.allocateDirect(packet.remaining());
+
+            copy.put(packet).flip();
+            executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            dest.onConnIn(copy);
+                        }
+                        catch (IOException e)
+                        {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+        }
+
+        @Override
+        public void onConnOut(SctpSocket s, ByteBuffer[] packets, int count)
+        {
+            batchCount.incrementAndGet();
+            for (int i = 0; i < count; i++)
+                onConnOut(s, packets[i]);
+        }
+    }
 }
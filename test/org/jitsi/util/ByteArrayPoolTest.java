@@ -0,0 +1,151 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.util;
+
+import static org.junit.Assert.*;
+
+import org.jitsi.service.neomedia.*;
+import org.junit.Test;
+
+public class ByteArrayPoolTest
+{
+    @Test
+    public void testSizeClasses()
+    {
+        assertEquals(
+                ByteArrayPool.MIN_CLASS_LENGTH,
+                ByteArrayPool.acquire(0).length);
+        assertEquals(
+                ByteArrayPool.MIN_CLASS_LENGTH,
+                ByteArrayPool.acquire(ByteArrayPool.MIN_CLASS_LENGTH).length);
+        assertEquals(2048, ByteArrayPool.acquire(1500).length);
+        assertEquals(2048, ByteArrayPool.acquire(2048).length);
+        assertEquals(4096, ByteArrayPool.acquire(2049).length);
+        assertEquals(
+                ByteArrayPool.MAX_CLASS_LENGTH + 1,
+                ByteArrayPool.acquire(ByteArrayPool.MAX_CLASS_LENGTH + 1)
+                    .length);
+    }
+
+    @Test
+    public void testReuse()
+    {
+        byte[] array = ByteArrayPool.acquire(1000);
+
+        ByteArrayPool.release(array);
+        assertSame(array, ByteArrayPool.acquire(600));
+
+        long allocations = ByteArrayPool.getAllocationCount();
+        long localHits = ByteArrayPool.getLocalHitCount();
+
+        ByteArrayPool.release(array);
+        assertSame(array, ByteArrayPool.acquire(1024));
+        assertEquals(allocations, ByteArrayPool.getAllocationCount());
+        assertEquals(localHits + 1, ByteArrayPool.getLocalHitCount());
+        assertTrue(ByteArrayPool.getHitRate() > 0D);
+    }
+
+    @Test
+    public void testDrops()
+    {
+        long drops = ByteArrayPool.getDropCount();
+
+        // Arrays which do not match a size class are not pooled.
+        ByteArrayPool.release(
+                ByteArrayPool.acquire(ByteArrayPool.MAX_CLASS_LENGTH + 1));
+        ByteArrayPool.release(
+                ByteArrayPool.acquire(ByteArrayPool.MAX_CLASS_LENGTH * 2));
+        assertEquals(drops + 2, ByteArrayPool.getDropCount());
+    }
+
+    @Test
+    public void testRawPacketPooledBuffer()
+    {
+        RawPacket pkt = new RawPacket();
+
+        pkt.setPooledBuffer(100);
+
+        byte[] pooled = pkt.getBuffer();
+        // A transformer replaces the buffer with one it still references.
+        byte[] foreign = new byte[pooled.length];
+
+        assertEquals(RawPacket.HEADROOM, pkt.getOffset());
+        assertEquals(100, pkt.getLength());
+        pkt.setBuffer(foreign);
+
+        // Only the acquired buffer is released and only once.
+        pkt.releasePooledBuffer();
+        pkt.releasePooledBuffer();
+        assertNull(pkt.getBuffer());
+        assertSame(pooled, RawPacket.acquireBuffer(100));
+        assertNotSame(foreign, RawPacket.acquireBuffer(100));
+        assertNotSame(pooled, RawPacket.acquireBuffer(100));
+    }
+
+    @Test
+    public void testSharedBetweenThreads()
+        throws Exception
+    {
+        final byte[][] arrays = new byte[64][];
+
+        Thread releaser
+            = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < arrays.length; i++)
+                        arrays[i] = ByteArrayPool.acquire(8192);
+                    for (byte[] array : arrays)
+                        ByteArrayPool.release(array);
+                }
+            };
+
+        releaser.start();
+        releaser.join();
+
+        // The releasing thread caches some arrays itself and hands the rest
+        // over to the other threads.
+        byte[] array = ByteArrayPool.acquire(8192);
+        boolean found = false;
+
+        for (byte[] a : arrays)
+            found |= (a == array);
+        assertTrue(found);
+    }
+
+    @Test
+    public void testRawPacketRoom()
+    {
+        int len = 100;
+        byte[] buf = RawPacket.acquireBuffer(len);
+        RawPacket pkt = RawPacket.makeRTP(1, 96, 1, 1, len);
+        RawPacket pooled = new RawPacket(buf, RawPacket.HEADROOM, len);
+
+        System.arraycopy(
+                pkt.getBuffer(), 0,
+                buf, RawPacket.HEADROOM,
+                len);
+
+        // Adding a header extension or appending an authentication tag uses
+        // the reserved room instead of reallocating.
+        pooled.addExtension((byte) 1, new byte[] { 1, 2, 3 }, 3);
+        assertSame(buf, pooled.getBuffer());
+        pooled.append(new byte[16], 16);
+        assertSame(buf, pooled.getBuffer());
+        assertEquals(len + 16 + 8, pooled.getLength());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.util.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class HashedWheelTimerTest
+{
+    @Test
+    public void testOrderCancelAndReschedule()
+        throws InterruptedException
+    {
+        HashedWheelTimer timer = new HashedWheelTimer("test", 5, 8);
+        final List<Integer> fired
+            = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[4];
+
+        for (int i = 0; i < timeouts.length; i++)
+        {
+            final int id = i;
+
+            timeouts[i]
+                = new HashedWheelTimer.Timeout(
+                        new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                fired.add(id);
+                                latch.countDown();
+                            }
+                        });
+        }
+
+        long start = System.nanoTime();
+
+        // The delay of timeout 0 spans more than one revolution of the wheel.
+        timer.schedule(timeouts[0], 120);
+        timer.schedule(timeouts[1], 20);
+        timer.schedule(timeouts[2], 60);
+        timer.schedule(timeouts[3], 40);
+        assertTrue(timer.isScheduled(timeouts[3]));
+        assertTrue(timer.cancel(timeouts[3]));
+        assertFalse(timer.cancel(timeouts[3]));
+        // Rescheduling replaces the previous deadline.
+        timer.schedule(timeouts[2], 80);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(Arrays.asList(1, 2, 0), fired);
+        assertTrue(elapsedMs >= 120);
+        assertFalse(timer.isScheduled(timeouts[0]));
+
+        // The wheel keeps working after it has been idle.
+        final CountDownLatch again = new CountDownLatch(1);
+
+        timer.schedule(
+                new HashedWheelTimer.Timeout(
+                        new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                again.countDown();
+                            }
+                        }),
+                0);
+        assertTrue(again.await(5, TimeUnit.SECONDS));
+    }
+}